@@ -0,0 +1,105 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.action.bulk;
+
+import org.elasticsearch.action.bulk.BulkRequestParser;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BulkRequestParserBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int bodySizeInMb;
+
+    @Param({"4"})
+    private int threads;
+
+    private BytesReference data;
+    private ExecutorService executor;
+    private final BulkRequestParser parser = new BulkRequestParser(true);
+
+    @Setup
+    public void setup() {
+        final StringBuilder body = new StringBuilder();
+        int item = 0;
+        while (body.length() < bodySizeInMb * 1024 * 1024) {
+            if (item % 10 == 0) {
+                body.append("{ \"delete\" : { \"_id\" : \"").append(item - 1).append("\" } }\n");
+            } else {
+                body.append("{ \"index\" : { \"_id\" : \"").append(item).append("\", \"routing\" : \"r").append(item % 7)
+                    .append("\" } }\n");
+                body.append("{ \"@timestamp\" : \"2020-04-01T00:00:").append(item % 60).append("Z\", \"message\" : \"")
+                    .append("GET /search?q=").append(item).append(" HTTP/1.1\", \"status\" : 200, \"size\" : ").append(item)
+                    .append(" }\n");
+            }
+            item++;
+        }
+        data = new BytesArray(body.toString().getBytes(StandardCharsets.UTF_8));
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int parseSequentially() throws IOException {
+        final AtomicInteger items = new AtomicInteger();
+        parser.parse(data, "index", null, null, null, true, XContentType.JSON,
+            (indexRequest, type) -> items.incrementAndGet(), updateRequest -> items.incrementAndGet(),
+            deleteRequest -> items.incrementAndGet());
+        return items.get();
+    }
+
+    @Benchmark
+    public int parseInParallel() throws IOException {
+        final AtomicInteger items = new AtomicInteger();
+        parser.parse(data, "index", null, null, null, true, XContentType.JSON, executor,
+            (indexRequest, type) -> items.incrementAndGet(), updateRequest -> items.incrementAndGet(),
+            deleteRequest -> items.incrementAndGet());
+        return items.get();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.common.cache;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of concurrent reads and writes of a {@link Cache} that is large enough to hold the hot keys but not all
+ * keys, so that reads promote entries and writes evict them. The keys follow a skewed distribution like the keys of the request and
+ * query caches do.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1 << 16;
+
+    @Param({ "4096", "65536" })
+    public int maximumWeight;
+
+    private Cache<Integer, Integer> cache;
+
+    @Setup
+    public void setup() {
+        cache = CacheBuilder.<Integer, Integer>builder().setMaximumWeight(maximumWeight).build();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            cache.put(i, i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final Integer[] keys = new Integer[NUMBER_OF_KEYS];
+        private int index;
+
+        @Setup
+        public void setup() {
+            final Random random = new Random(ThreadLocalRandom.current().nextLong());
+            for (int i = 0; i < keys.length; i++) {
+                // half of the lookups go to 1/64th of the keys
+                final int key = random.nextBoolean() ? random.nextInt(NUMBER_OF_KEYS / 64) : random.nextInt(NUMBER_OF_KEYS);
+                keys[i] = key;
+            }
+        }
+
+        Integer next() {
+            return keys[index++ & (NUMBER_OF_KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Integer get(Keys keys) {
+        return cache.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void put(Keys keys) {
+        final Integer key = keys.next();
+        cache.put(key, key);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(24)
+    public Integer mixedGet(Keys keys) {
+        return cache.get(keys.next());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public void mixedPut(Keys keys) {
+        final Integer key = keys.next();
+        cache.put(key, key);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.index.codec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.codec.CodecService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stored fields codecs on a corpus of JSON log lines, similar to the {@code _source} of a logging index. The setup writes
+ * the corpus with the given codec and force merges it to a single segment. The benchmark measures how fast the {@code _source} of random
+ * documents is retrieved, which is what the fetch phase of a search does, and reports the compression ratio of the stored fields as
+ * the {@code compressionRatio} secondary result.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class StoredFieldsCompressionBenchmark {
+
+    private static final String[] HOSTS = new String[32];
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+    private static final String[] PATHS = {"/api/v1/orders/", "/api/v1/users/", "/api/v1/products/", "/static/img/", "/search?q="};
+    private static final int[] STATUSES = {200, 200, 200, 200, 201, 204, 301, 400, 404, 500, 503};
+    private static final String[] AGENTS = {
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/80.0.3987.149 Safari/537.36",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:74.0) Gecko/20100101 Firefox/74.0",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 13_3 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Mobile/15E148",
+        "curl/7.68.0",
+        "Apache-HttpClient/4.5.10 (Java/11.0.6)"};
+    private static final String[] MESSAGES = {
+        "request completed",
+        "cache miss for key [%d], loading from database",
+        "slow query took [%d]ms, exceeding the threshold",
+        "user [%d] authenticated successfully",
+        "connection reset by peer while reading response body of request [%d]"};
+
+    static {
+        for (int i = 0; i < HOSTS.length; i++) {
+            HOSTS[i] = "web-" + (i % 4 == 0 ? "eu" : "us") + "-" + i + ".prod.example.com";
+        }
+    }
+
+    @Param({"default", "best_compression", "dictionary_compression"})
+    private String codec;
+
+    @Param({"200000"})
+    private int numDocs;
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private Random random;
+    private double compressionRatio;
+
+    /**
+     * Reports the ratio of the size of the corpus to the size of its stored fields files.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Compression {
+        private double compressionRatio;
+
+        @Setup(Level.Trial)
+        public void setup(StoredFieldsCompressionBenchmark benchmark) {
+            compressionRatio = benchmark.compressionRatio;
+        }
+
+        public double compressionRatio() {
+            return compressionRatio;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        final CodecService codecService = new CodecService(null, LogManager.getLogger(StoredFieldsCompressionBenchmark.class));
+        directory = new ByteBuffersDirectory();
+        final IndexWriterConfig config = new IndexWriterConfig().setCodec(codecService.codec(codec)).setUseCompoundFile(false);
+        long rawBytes = 0;
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            final Random corpus = new Random(42);
+            long timestamp = 1585699200000L;
+            for (int i = 0; i < numDocs; i++) {
+                timestamp += corpus.nextInt(50);
+                final BytesRef source = new BytesRef(logLine(corpus, timestamp));
+                rawBytes += source.length;
+                final Document document = new Document();
+                document.add(new StoredField("_source", source));
+                writer.addDocument(document);
+            }
+            writer.forceMerge(1);
+        }
+        long storedBytes = 0;
+        for (String file : directory.listAll()) {
+            if (file.endsWith(".fdt") || file.endsWith(".fdx") || file.endsWith(".fdm")) {
+                storedBytes += directory.fileLength(file);
+            }
+        }
+        compressionRatio = (double) rawBytes / storedBytes;
+        reader = DirectoryReader.open(directory);
+        random = new Random(0);
+    }
+
+    private static String logLine(Random random, long timestamp) {
+        final int id = random.nextInt(1_000_000);
+        final String message = String.format(Locale.ROOT, MESSAGES[random.nextInt(MESSAGES.length)], id);
+        return String.format(Locale.ROOT,
+            "{\"@timestamp\":%d,\"host\":{\"name\":\"%s\"},\"log\":{\"level\":\"%s\",\"logger\":\"org.example.http.RequestLogger\"},"
+                + "\"http\":{\"request\":{\"method\":\"%s\"},\"response\":{\"status_code\":%d,\"body\":{\"bytes\":%d}}},"
+                + "\"url\":{\"path\":\"%s%d\"},\"client\":{\"ip\":\"10.%d.%d.%d\"},\"user_agent\":{\"original\":\"%s\"},"
+                + "\"event\":{\"duration\":%d},\"message\":\"%s\"}",
+            timestamp, HOSTS[random.nextInt(HOSTS.length)], LEVELS[random.nextInt(LEVELS.length)],
+            METHODS[random.nextInt(METHODS.length)], STATUSES[random.nextInt(STATUSES.length)], random.nextInt(100_000),
+            PATHS[random.nextInt(PATHS.length)], id, random.nextInt(256), random.nextInt(256), random.nextInt(256),
+            AGENTS[random.nextInt(AGENTS.length)], random.nextInt(5_000_000), message);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public Document fetchRandomDocument(Compression compression) throws IOException {
+        return reader.document(random.nextInt(numDocs));
+    }
+
+    @Benchmark
+    public int fetchTenRandomDocuments(Compression compression) throws IOException {
+        int length = 0;
+        for (int i = 0; i < 10; i++) {
+            length += reader.document(random.nextInt(numDocs)).getBinaryValue("_source").length;
+        }
+        return length;
+    }
+}
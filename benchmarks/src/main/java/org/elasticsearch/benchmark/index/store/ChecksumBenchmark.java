@@ -0,0 +1,160 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.index.store;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Measures the cost of verifying the checksums of a store. {@link Checksums} compares the raw throughput of the CRC32 that Lucene uses
+ * in its file footers with the CRC32C variant, both of which are intrinsified by the JVM. {@link StoreFiles} verifies a set of files that
+ * are in the page cache with {@link Store#checkIntegrity(java.util.Collection, Directory, java.util.concurrent.Executor, int)} using
+ * an increasing number of concurrently verified files.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChecksumBenchmark {
+
+    @State(Scope.Thread)
+    public static class Checksums {
+
+        @Param({"crc32", "crc32c"})
+        private String algorithm;
+
+        @Param({"1048576"})
+        private int bufferSize;
+
+        private byte[] buffer;
+        private Checksum checksum;
+
+        @Setup
+        public void setup() {
+            buffer = new byte[bufferSize];
+            new Random(42).nextBytes(buffer);
+            checksum = "crc32".equals(algorithm) ? new CRC32() : new CRC32C();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoreFiles {
+
+        @Param({"1", "2", "4", "8"})
+        private int maxConcurrentFiles;
+
+        @Param({"16"})
+        private int numFiles;
+
+        @Param({"67108864"})
+        private int fileSize;
+
+        private Path path;
+        private Directory directory;
+        private List<StoreFileMetadata> files;
+        private ExecutorService executor;
+
+        @Setup
+        public void setup() throws IOException {
+            path = Files.createTempDirectory("checksum-benchmark");
+            directory = FSDirectory.open(path);
+            files = new ArrayList<>(numFiles);
+            final Random random = new Random(42);
+            final byte[] chunk = new byte[1 << 16];
+            for (int i = 0; i < numFiles; i++) {
+                final String name = "file_" + i;
+                try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+                    for (long written = 0; written < fileSize; written += chunk.length) {
+                        random.nextBytes(chunk);
+                        output.writeBytes(chunk, chunk.length);
+                    }
+                    CodecUtil.writeFooter(output);
+                }
+                try (IndexInput input = directory.openInput(name, IOContext.READONCE)) {
+                    files.add(new StoreFileMetadata(name, input.length(), Store.digestToString(CodecUtil.retrieveChecksum(input)),
+                        org.apache.lucene.util.Version.LATEST));
+                }
+            }
+            executor = EsExecutors.newFixed("checksum-benchmark", maxConcurrentFiles, -1,
+                EsExecutors.daemonThreadFactory("checksum-benchmark"), new ThreadContext(Settings.EMPTY), false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            executor.shutdownNow();
+            directory.close();
+            IOUtils.rm(path);
+        }
+    }
+
+    @Benchmark
+    public long checksumBuffer(Checksums state) {
+        state.checksum.reset();
+        state.checksum.update(state.buffer, 0, state.buffer.length);
+        return state.checksum.getValue();
+    }
+
+    @Benchmark
+    public Map<String, Exception> verifyFiles(StoreFiles state) {
+        final Map<String, Exception> failures = Store.checkIntegrity(state.files, state.directory, state.executor,
+            state.maxConcurrentFiles);
+        if (failures.isEmpty() == false) {
+            throw new AssertionError("unexpected failures: " + failures);
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.index.translog.Translog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the concurrent hash maps and the paged maps that {@link LiveVersionMap} can keep versions in. This benchmark lives in the
+ * package of the engine since the version map is package-private.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(LiveVersionMapBenchmark.NUM_UIDS)
+public class LiveVersionMapBenchmark {
+
+    static final int NUM_UIDS = 100_000;
+
+    @Param({"concurrent_hash", "paged"})
+    private String mapType;
+
+    private BigArrays bigArrays;
+    private BytesRef[] uids;
+    private IndexVersionValue[] values;
+    private LiveVersionMap filledMap;
+
+    @Setup
+    public void setup() throws IOException {
+        bigArrays = new BigArrays(new PageCacheRecycler(Settings.EMPTY), null, "version_map");
+        final Random random = new Random(42);
+        uids = new BytesRef[NUM_UIDS];
+        values = new IndexVersionValue[NUM_UIDS];
+        for (int i = 0; i < NUM_UIDS; i++) {
+            // the size of auto-generated ids
+            final byte[] uid = new byte[15];
+            random.nextBytes(uid);
+            uids[i] = new BytesRef(uid);
+            values[i] = new IndexVersionValue(new Translog.Location(1, i * 100L, 100), 1, i, 1);
+        }
+        filledMap = newFilledMap();
+    }
+
+    private LiveVersionMap newMap() {
+        final LiveVersionMap map = "paged".equals(mapType) ? new LiveVersionMap(bigArrays) : new LiveVersionMap();
+        map.enforceSafeAccess();
+        return map;
+    }
+
+    private LiveVersionMap newFilledMap() {
+        final LiveVersionMap map = newMap();
+        for (int i = 0; i < NUM_UIDS; i++) {
+            try (Releasable ignored = map.acquireLock(uids[i])) {
+                map.putIndexUnderLock(uids[i], values[i]);
+            }
+        }
+        return map;
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyMap {
+        LiveVersionMap map;
+
+        @Setup(Level.Invocation)
+        public void setup(LiveVersionMapBenchmark benchmark) {
+            map = benchmark.newMap();
+        }
+    }
+
+    @Benchmark
+    public LiveVersionMap put(EmptyMap emptyMap) {
+        final LiveVersionMap map = emptyMap.map;
+        for (int i = 0; i < NUM_UIDS; i++) {
+            try (Releasable ignored = map.acquireLock(uids[i])) {
+                map.putIndexUnderLock(uids[i], values[i]);
+            }
+        }
+        return map;
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (int i = 0; i < NUM_UIDS; i++) {
+            try (Releasable ignored = filledMap.acquireLock(uids[i])) {
+                blackhole.consume(filledMap.getUnderLock(uids[i]));
+            }
+        }
+    }
+
+    /**
+     * Fills the map and swaps it out like a refresh does, which includes allocating and releasing the maps.
+     */
+    @Benchmark
+    public LiveVersionMap putAndRefresh(EmptyMap emptyMap) throws IOException {
+        final LiveVersionMap map = put(emptyMap);
+        map.beforeRefresh();
+        map.afterRefresh(true);
+        return map;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty4;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * Aggregates HTTP requests like {@link HttpObjectAggregator} except for bulk requests if these may be received incrementally, in which
+ * case the request and the chunks of its body are passed on as they are decoded. Such requests are not subject to the maximum content
+ * length since their body is never held in memory as a whole.
+ */
+class Netty4HttpAggregator extends HttpObjectAggregator {
+
+    private final boolean incrementalBulk;
+    private boolean streaming;
+
+    Netty4HttpAggregator(int maxContentLength, boolean incrementalBulk) {
+        super(maxContentLength);
+        this.incrementalBulk = incrementalBulk;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (streaming) {
+            assert msg instanceof HttpContent : "expected the content of the streamed request but got " + msg.getClass();
+            if (msg instanceof LastHttpContent) {
+                streaming = false;
+            }
+            ctx.fireChannelRead(msg);
+        } else if (incrementalBulk && msg instanceof HttpRequest && shouldStream((HttpRequest) msg)) {
+            final HttpRequest request = (HttpRequest) msg;
+            if (HttpUtil.is100ContinueExpected(request)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER));
+                HttpUtil.set100ContinueExpected(request, false);
+            }
+            streaming = true;
+            ctx.fireChannelRead(request);
+        } else {
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    static boolean shouldStream(HttpRequest request) {
+        if (request instanceof FullHttpRequest || request.decoderResult().isSuccess() == false) {
+            return false;
+        }
+        if (request.method() != HttpMethod.POST && request.method() != HttpMethod.PUT) {
+            return false;
+        }
+        final String uri = request.uri();
+        final int queryStart = uri.indexOf('?');
+        final String path = queryStart >= 0 ? uri.substring(0, queryStart) : uri;
+        return path.endsWith("/_bulk");
+    }
+}
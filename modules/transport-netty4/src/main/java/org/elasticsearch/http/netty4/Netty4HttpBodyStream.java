@@ -0,0 +1,159 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty4;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.http.HttpBodyStream;
+import org.elasticsearch.transport.netty4.Netty4Utils;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
+/**
+ * An {@link HttpBodyStream} that reads the body of a request from the channel on demand. Auto-read is disabled on the channel while the
+ * body is being received so that a chunk is only read from the network once the consumer asked for it. All state is only accessed on
+ * the event loop of the channel.
+ */
+class Netty4HttpBodyStream implements HttpBodyStream {
+
+    private final Channel channel;
+    private final ArrayDeque<HttpContent> chunks = new ArrayDeque<>();
+    private ChunkHandler handler;
+    private boolean requested;
+    private boolean lastReceived;
+    private boolean closed;
+    private Exception failure;
+
+    Netty4HttpBodyStream(Channel channel) {
+        assert channel.eventLoop().inEventLoop();
+        this.channel = channel;
+        channel.config().setAutoRead(false);
+    }
+
+    @Override
+    public void setHandler(ChunkHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void next() {
+        if (channel.eventLoop().inEventLoop()) {
+            doNext();
+        } else {
+            channel.eventLoop().execute(this::doNext);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel.eventLoop().inEventLoop()) {
+            doClose();
+        } else {
+            channel.eventLoop().execute(this::doClose);
+        }
+    }
+
+    /**
+     * Adds the next chunk of the body as it is decoded.
+     */
+    void onContent(HttpContent content) {
+        assert channel.eventLoop().inEventLoop();
+        assert lastReceived == false : "received content after the last chunk";
+        if (content instanceof LastHttpContent) {
+            lastReceived = true;
+            channel.config().setAutoRead(true);
+        }
+        if (closed || failure != null) {
+            content.release();
+            return;
+        }
+        if (content.decoderResult().isFailure()) {
+            content.release();
+            final Throwable cause = content.decoderResult().cause();
+            failure = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        } else {
+            chunks.add(content);
+        }
+        maybeDeliver();
+    }
+
+    /**
+     * Fails the stream if the channel is closed before the body was received completely.
+     */
+    void onChannelInactive() {
+        assert channel.eventLoop().inEventLoop();
+        if (lastReceived == false && closed == false && failure == null) {
+            failure = new ClosedChannelException();
+            maybeDeliver();
+        }
+    }
+
+    /**
+     * Whether the consumer is waiting for a chunk that has not been read from the network yet.
+     */
+    boolean isWaitingForContent() {
+        return requested && chunks.isEmpty() && failure == null && lastReceived == false;
+    }
+
+    private void doNext() {
+        assert requested == false : "the previous chunk has not been delivered yet";
+        if (closed) {
+            return;
+        }
+        requested = true;
+        maybeDeliver();
+        if (isWaitingForContent()) {
+            channel.read();
+        }
+    }
+
+    private void maybeDeliver() {
+        if (requested == false) {
+            return;
+        }
+        final HttpContent content = chunks.poll();
+        if (content != null) {
+            requested = false;
+            handler.onNext(new ReleasableBytesReference(Netty4Utils.toBytesReference(content.content()), content::release),
+                content instanceof LastHttpContent);
+        } else if (failure != null) {
+            requested = false;
+            handler.onFailure(failure);
+        }
+    }
+
+    private void doClose() {
+        if (closed == false) {
+            closed = true;
+            requested = false;
+            HttpContent content;
+            while ((content = chunks.poll()) != null) {
+                content.release();
+            }
+            if (lastReceived == false) {
+                // discard the rest of the body as it arrives
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+}
@@ -22,7 +22,8 @@ package org.elasticsearch.http.netty4;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
-import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.http.HttpPipelinedRequest;
@@ -53,9 +54,14 @@ public class Netty4HttpPipeliningHandler extends ChannelDuplexHandler {
 
     @Override
     public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-        assert msg instanceof FullHttpRequest : "Invalid message type: " + msg.getClass();
-        HttpPipelinedRequest<FullHttpRequest> pipelinedRequest = aggregator.read(((FullHttpRequest) msg));
-        ctx.fireChannelRead(pipelinedRequest);
+        if (msg instanceof HttpRequest) {
+            HttpPipelinedRequest<HttpRequest> pipelinedRequest = aggregator.read(((HttpRequest) msg));
+            ctx.fireChannelRead(pipelinedRequest);
+        } else {
+            // the body of a request that is received incrementally, which belongs to the last request that was read
+            assert msg instanceof HttpContent : "Invalid message type: " + msg.getClass();
+            ctx.fireChannelRead(msg);
+        }
     }
 
     @Override
@@ -30,7 +30,10 @@ import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.http.HttpBodyStream;
 import org.elasticsearch.http.HttpRequest;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestStatus;
@@ -52,20 +55,31 @@ public class Netty4HttpRequest implements HttpRequest {
     private final FullHttpRequest request;
     private final boolean pooled;
     private final BytesReference content;
+    @Nullable
+    private final Netty4HttpBodyStream contentStream;
 
     Netty4HttpRequest(FullHttpRequest request, int sequence) {
         this(request, new HttpHeadersMap(request.headers()), sequence, new AtomicBoolean(false), true,
-            Netty4Utils.toBytesReference(request.content()));
+            Netty4Utils.toBytesReference(request.content()), null);
+    }
+
+    /**
+     * Creates a request whose body is received incrementally through the given stream rather than being part of the request.
+     */
+    Netty4HttpRequest(FullHttpRequest request, Netty4HttpBodyStream contentStream, int sequence) {
+        this(request, new HttpHeadersMap(request.headers()), sequence, new AtomicBoolean(false), false, BytesArray.EMPTY,
+            contentStream);
     }
 
     private Netty4HttpRequest(FullHttpRequest request, HttpHeadersMap headers, int sequence, AtomicBoolean released, boolean pooled,
-                              BytesReference content) {
+                              BytesReference content, @Nullable Netty4HttpBodyStream contentStream) {
         this.request = request;
         this.sequence = sequence;
         this.headers = headers;
         this.content = content;
         this.pooled = pooled;
         this.released = released;
+        this.contentStream = contentStream;
     }
 
     @Override
@@ -117,11 +131,20 @@ public class Netty4HttpRequest implements HttpRequest {
         return content;
     }
 
+    @Override
+    public HttpBodyStream contentStream() {
+        return contentStream;
+    }
+
     @Override
     public void release() {
         if (pooled && released.compareAndSet(false, true)) {
             request.release();
         }
+        if (contentStream != null) {
+            // discards whatever part of the body the handler of the request did not consume
+            contentStream.close();
+        }
     }
 
     @Override
@@ -135,7 +158,7 @@ public class Netty4HttpRequest implements HttpRequest {
             return new Netty4HttpRequest(
                 new DefaultFullHttpRequest(request.protocolVersion(), request.method(), request.uri(), copiedContent, request.headers(),
                     request.trailingHeaders()),
-                headers, sequence, new AtomicBoolean(false), false, Netty4Utils.toBytesReference(copiedContent));
+                headers, sequence, new AtomicBoolean(false), false, Netty4Utils.toBytesReference(copiedContent), null);
         } finally {
             release();
         }
@@ -180,7 +203,7 @@ public class Netty4HttpRequest implements HttpRequest {
         FullHttpRequest requestWithoutHeader = new DefaultFullHttpRequest(request.protocolVersion(), request.method(), request.uri(),
             request.content(), headersWithoutContentTypeHeader, trailingHeaders);
         return new Netty4HttpRequest(requestWithoutHeader, new HttpHeadersMap(requestWithoutHeader.headers()), sequence, released,
-            pooled, content);
+            pooled, content, contentStream);
     }
 
     @Override
@@ -19,15 +19,24 @@
 
 package org.elasticsearch.http.netty4;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.http.HttpPipelinedRequest;
 
 @ChannelHandler.Sharable
-class Netty4HttpRequestHandler extends SimpleChannelInboundHandler<HttpPipelinedRequest<FullHttpRequest>> {
+class Netty4HttpRequestHandler extends ChannelInboundHandlerAdapter {
+
+    private static final AttributeKey<Netty4HttpBodyStream> BODY_STREAM_KEY = AttributeKey.newInstance("es-http-body-stream");
 
     private final Netty4HttpServerTransport serverTransport;
 
@@ -36,7 +45,27 @@ class Netty4HttpRequestHandler extends SimpleChannelInboundHandler<HttpPipelined
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, HttpPipelinedRequest<FullHttpRequest> msg) {
+    @SuppressWarnings("unchecked")
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpPipelinedRequest) {
+            final HttpPipelinedRequest<HttpRequest> pipelinedRequest = (HttpPipelinedRequest<HttpRequest>) msg;
+            if (pipelinedRequest.getRequest() instanceof FullHttpRequest) {
+                handleRequest(ctx, (HttpPipelinedRequest<FullHttpRequest>) msg);
+            } else {
+                handleStreamedRequest(ctx, pipelinedRequest);
+            }
+        } else {
+            assert msg instanceof HttpContent : "Invalid message type: " + msg.getClass();
+            final HttpContent content = (HttpContent) msg;
+            final Netty4HttpBodyStream stream = msg instanceof LastHttpContent
+                ? ctx.channel().attr(BODY_STREAM_KEY).getAndSet(null)
+                : ctx.channel().attr(BODY_STREAM_KEY).get();
+            assert stream != null : "received content without a streamed request";
+            stream.onContent(content);
+        }
+    }
+
+    private void handleRequest(ChannelHandlerContext ctx, HttpPipelinedRequest<FullHttpRequest> msg) {
         Netty4HttpChannel channel = ctx.channel().attr(Netty4HttpServerTransport.HTTP_CHANNEL_KEY).get();
         FullHttpRequest request = msg.getRequest();
         boolean success = false;
@@ -61,6 +90,45 @@ class Netty4HttpRequestHandler extends SimpleChannelInboundHandler<HttpPipelined
         }
     }
 
+    private void handleStreamedRequest(ChannelHandlerContext ctx, HttpPipelinedRequest<HttpRequest> msg) {
+        Netty4HttpChannel channel = ctx.channel().attr(Netty4HttpServerTransport.HTTP_CHANNEL_KEY).get();
+        HttpRequest request = msg.getRequest();
+        Netty4HttpBodyStream stream = new Netty4HttpBodyStream(ctx.channel());
+        ctx.channel().attr(BODY_STREAM_KEY).set(stream);
+        // the body is not part of the request but is pulled from the stream by the handler of the request
+        FullHttpRequest headers = new DefaultFullHttpRequest(request.protocolVersion(), request.method(), request.uri(),
+            Unpooled.EMPTY_BUFFER, request.headers(), EmptyHttpHeaders.INSTANCE);
+        Netty4HttpRequest httpRequest = new Netty4HttpRequest(headers, stream, msg.getSequence());
+        boolean success = false;
+        try {
+            serverTransport.incomingRequest(httpRequest, channel);
+            success = true;
+        } finally {
+            if (success == false) {
+                httpRequest.release();
+            }
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        final Netty4HttpBodyStream stream = ctx.channel().attr(BODY_STREAM_KEY).get();
+        if (stream != null && stream.isWaitingForContent()) {
+            // the last read did not complete the chunk the stream is waiting for
+            ctx.read();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        final Netty4HttpBodyStream stream = ctx.channel().attr(BODY_STREAM_KEY).getAndSet(null);
+        if (stream != null) {
+            stream.onChannelInactive();
+        }
+        ctx.fireChannelInactive();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         ExceptionsHelper.maybeDieOnAnotherThread(cause);
@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty4;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.elasticsearch.test.ESTestCase;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class Netty4HttpAggregatorTests extends ESTestCase {
+
+    private static final String BODY = "{\"index\":{\"_index\":\"test\"}}\n{\"field\":\"value\"}\n";
+
+    private static String request(String method, String uri, String... headers) {
+        final StringBuilder request = new StringBuilder(method).append(' ').append(uri).append(" HTTP/1.1\r\n");
+        request.append("Content-Type: application/json\r\n");
+        request.append("Content-Length: ").append(BODY.length()).append("\r\n");
+        for (String header : headers) {
+            request.append(header).append("\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+
+    private static void writeInbound(EmbeddedChannel channel, String data) {
+        channel.writeInbound(Unpooled.copiedBuffer(data, StandardCharsets.UTF_8));
+    }
+
+    private static String readBody(EmbeddedChannel channel) {
+        final StringBuilder body = new StringBuilder();
+        while (true) {
+            final HttpContent content = channel.readInbound();
+            assertThat(content, not(instanceOf(HttpRequest.class)));
+            try {
+                body.append(content.content().toString(StandardCharsets.UTF_8));
+            } finally {
+                content.release();
+            }
+            if (content instanceof LastHttpContent) {
+                return body.toString();
+            }
+        }
+    }
+
+    public void testStreamsBulkRequests() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestDecoder(), new Netty4HttpAggregator(1024, true));
+        final String uri = randomFrom("/_bulk", "/test/_bulk", "/_bulk?refresh=true");
+        writeInbound(channel, request(randomFrom("POST", "PUT"), uri));
+        final int split = randomIntBetween(0, BODY.length());
+        writeInbound(channel, BODY.substring(0, split));
+        writeInbound(channel, BODY.substring(split));
+
+        final HttpRequest request = channel.readInbound();
+        assertThat(request, not(instanceOf(FullHttpRequest.class)));
+        assertThat(request.uri(), equalTo(uri));
+        assertThat(readBody(channel), equalTo(BODY));
+        assertThat(channel.readInbound(), nullValue());
+
+        // the next request on the same connection is aggregated again
+        writeInbound(channel, request("POST", "/test/_search") + BODY);
+        final FullHttpRequest search = channel.readInbound();
+        try {
+            assertThat(search.content().toString(StandardCharsets.UTF_8), equalTo(BODY));
+        } finally {
+            search.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    public void testAggregatesOtherRequests() {
+        final boolean incrementalBulk = randomBoolean();
+        final EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestDecoder(), new Netty4HttpAggregator(1024, incrementalBulk));
+        final String uri = incrementalBulk ? randomFrom("/_search", "/test/_doc/_bulk_not", "/_bulk/other") : "/_bulk";
+        writeInbound(channel, request("POST", uri) + BODY);
+
+        final FullHttpRequest request = channel.readInbound();
+        try {
+            assertThat(request.uri(), equalTo(uri));
+            assertThat(request.content().toString(StandardCharsets.UTF_8), equalTo(BODY));
+        } finally {
+            request.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    public void testSendsContinueForStreamedRequests() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestDecoder(), new Netty4HttpAggregator(1024, true));
+        writeInbound(channel, request("POST", "/_bulk", "Expect: 100-continue"));
+
+        final FullHttpResponse response = channel.readOutbound();
+        try {
+            assertThat(response.status(), equalTo(HttpResponseStatus.CONTINUE));
+        } finally {
+            response.release();
+        }
+        final HttpRequest request = channel.readInbound();
+        assertFalse(request.headers().contains(HttpHeaderNames.EXPECT));
+
+        writeInbound(channel, BODY);
+        assertThat(readBody(channel), equalTo(BODY));
+        assertFalse(channel.finish());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allows pkg private access
+ */
+public final class ByteBufferIndexInputHelper {
+    private ByteBufferIndexInputHelper() {}
+
+    /**
+     * Returns the buffers backing the given input if it reads from memory-mapped files, or {@code null} otherwise.
+     */
+    public static ByteBuffer[] getBuffers(IndexInput input) {
+        if (input instanceof ByteBufferIndexInput) {
+            return ((ByteBufferIndexInput) input).buffers;
+        }
+        return null;
+    }
+}
@@ -30,6 +30,8 @@ import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.discovery.DiscoveryStats;
 import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.index.merge.NodeMergeStats;
+import org.elasticsearch.index.translog.TranslogSyncStats;
 import org.elasticsearch.indices.NodeIndicesStats;
 import org.elasticsearch.indices.breaker.AllCircuitBreakerStats;
 import org.elasticsearch.ingest.IngestStats;
@@ -95,6 +97,12 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
     @Nullable
     private AdaptiveSelectionStats adaptiveSelectionStats;
 
+    @Nullable
+    private TranslogSyncStats translogSyncStats;
+
+    @Nullable
+    private NodeMergeStats nodeMergeStats;
+
     public NodeStats(StreamInput in) throws IOException {
         super(in);
         timestamp = in.readVLong();
@@ -118,6 +126,13 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         } else {
             scriptCacheStats = null;
         }
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            translogSyncStats = in.readOptionalWriteable(TranslogSyncStats::new);
+            nodeMergeStats = in.readOptionalWriteable(NodeMergeStats::new);
+        } else {
+            translogSyncStats = null;
+            nodeMergeStats = null;
+        }
     }
 
     public NodeStats(DiscoveryNode node, long timestamp, @Nullable NodeIndicesStats indices,
@@ -128,7 +143,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
                      @Nullable DiscoveryStats discoveryStats,
                      @Nullable IngestStats ingestStats,
                      @Nullable AdaptiveSelectionStats adaptiveSelectionStats,
-                     @Nullable ScriptCacheStats scriptCacheStats) {
+                     @Nullable ScriptCacheStats scriptCacheStats,
+                     @Nullable TranslogSyncStats translogSyncStats,
+                     @Nullable NodeMergeStats nodeMergeStats) {
         super(node);
         this.timestamp = timestamp;
         this.indices = indices;
@@ -145,6 +162,8 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         this.ingestStats = ingestStats;
         this.adaptiveSelectionStats = adaptiveSelectionStats;
         this.scriptCacheStats = scriptCacheStats;
+        this.translogSyncStats = translogSyncStats;
+        this.nodeMergeStats = nodeMergeStats;
     }
 
     public long getTimestamp() {
@@ -244,6 +263,16 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         return scriptCacheStats;
     }
 
+    @Nullable
+    public TranslogSyncStats getTranslogSyncStats() {
+        return translogSyncStats;
+    }
+
+    @Nullable
+    public NodeMergeStats getNodeMergeStats() {
+        return nodeMergeStats;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
@@ -269,6 +298,10 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         if (out.getVersion().onOrAfter(Version.V_7_8_0)) {
             out.writeOptionalWriteable(scriptCacheStats);
         }
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeOptionalWriteable(translogSyncStats);
+            out.writeOptionalWriteable(nodeMergeStats);
+        }
     }
 
     @Override
@@ -335,6 +368,12 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         if (getScriptCacheStats() != null) {
             getScriptCacheStats().toXContent(builder, params);
         }
+        if (getTranslogSyncStats() != null) {
+            getTranslogSyncStats().toXContent(builder, params);
+        }
+        if (getNodeMergeStats() != null) {
+            getNodeMergeStats().toXContent(builder, params);
+        }
         return builder;
     }
 }
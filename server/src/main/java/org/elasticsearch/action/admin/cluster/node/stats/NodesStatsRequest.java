@@ -220,7 +220,9 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         DISCOVERY("discovery"),
         INGEST("ingest"),
         ADAPTIVE_SELECTION("adaptive_selection"),
-        SCRIPT_CACHE("script_cache");
+        SCRIPT_CACHE("script_cache"),
+        TRANSLOG_SYNC("translog_sync"),
+        MERGE_SCHEDULER("merge_scheduler");
 
         private String metricName;
 
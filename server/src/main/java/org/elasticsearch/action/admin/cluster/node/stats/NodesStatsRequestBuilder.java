@@ -157,6 +157,22 @@ public class NodesStatsRequestBuilder
         return this;
     }
 
+    /**
+     * Should translog group commit statistics be returned
+     */
+    public NodesStatsRequestBuilder setTranslogSync(boolean translogSync) {
+        addOrRemoveMetric(translogSync, NodesStatsRequest.Metric.TRANSLOG_SYNC);
+        return this;
+    }
+
+    /**
+     * Should node-level merge scheduler statistics be returned
+     */
+    public NodesStatsRequestBuilder setMergeScheduler(boolean mergeScheduler) {
+        addOrRemoveMetric(mergeScheduler, NodesStatsRequest.Metric.MERGE_SCHEDULER);
+        return this;
+    }
+
     /**
      * Helper method for adding metrics to a request
      */
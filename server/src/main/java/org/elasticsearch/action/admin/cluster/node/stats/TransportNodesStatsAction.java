@@ -84,7 +84,9 @@ public class TransportNodesStatsAction extends TransportNodesAction<NodesStatsRe
             NodesStatsRequest.Metric.DISCOVERY.containedIn(metrics),
             NodesStatsRequest.Metric.INGEST.containedIn(metrics),
             NodesStatsRequest.Metric.ADAPTIVE_SELECTION.containedIn(metrics),
-            NodesStatsRequest.Metric.SCRIPT_CACHE.containedIn(metrics));
+            NodesStatsRequest.Metric.SCRIPT_CACHE.containedIn(metrics),
+            NodesStatsRequest.Metric.TRANSLOG_SYNC.containedIn(metrics),
+            NodesStatsRequest.Metric.MERGE_SCHEDULER.containedIn(metrics));
     }
 
     public static class NodeStatsRequest extends TransportRequest {
@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.admin.indices.readonly;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionType;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.replication.ReplicationRequest;
+import org.elasticsearch.action.support.replication.ReplicationResponse;
+import org.elasticsearch.action.support.replication.TransportReplicationAction;
+import org.elasticsearch.cluster.action.shard.ShardStateAction;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.IndexTimestampRange;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+
+/**
+ * Waits for the write operations that are still in flight on all the copies of a shard of a write-blocked index to complete,
+ * by acquiring all the operation permits of each copy, and then refreshes the copy. Writes that got past the block before it
+ * was applied are visible to searches once this action completed.
+ */
+public class TransportVerifyShardWriteBlockAction extends TransportReplicationAction<
+    TransportVerifyShardWriteBlockAction.ShardRequest, TransportVerifyShardWriteBlockAction.ShardRequest, ReplicationResponse> {
+
+    public static final String NAME = "indices:admin/block/write/verify[s]";
+    public static final ActionType<ReplicationResponse> TYPE = new ActionType<>(NAME, ReplicationResponse::new);
+
+    @Inject
+    public TransportVerifyShardWriteBlockAction(final Settings settings, final TransportService transportService,
+                                                final ClusterService clusterService, final IndicesService indicesService,
+                                                final ThreadPool threadPool, final ShardStateAction stateAction,
+                                                final ActionFilters actionFilters) {
+        super(settings, NAME, transportService, clusterService, indicesService, threadPool, stateAction, actionFilters,
+            ShardRequest::new, ShardRequest::new, ThreadPool.Names.MANAGEMENT);
+    }
+
+    @Override
+    protected ReplicationResponse newResponseInstance(StreamInput in) throws IOException {
+        return new ReplicationResponse(in);
+    }
+
+    @Override
+    protected void acquirePrimaryOperationPermit(final IndexShard primary,
+                                                 final ShardRequest request,
+                                                 final ActionListener<Releasable> onAcquired) {
+        primary.acquireAllPrimaryOperationsPermits(onAcquired, request.timeout());
+    }
+
+    @Override
+    protected void acquireReplicaOperationPermit(final IndexShard replica,
+                                                 final ShardRequest request,
+                                                 final ActionListener<Releasable> onAcquired,
+                                                 final long primaryTerm,
+                                                 final long globalCheckpoint,
+                                                 final long maxSeqNoOfUpdateOrDeletes) {
+        replica.acquireAllReplicaOperationsPermits(primaryTerm, globalCheckpoint, maxSeqNoOfUpdateOrDeletes, onAcquired, request.timeout());
+    }
+
+    @Override
+    protected void shardOperationOnPrimary(final ShardRequest shardRequest, final IndexShard primary,
+            ActionListener<PrimaryResult<ShardRequest, ReplicationResponse>> listener) {
+        ActionListener.completeWith(listener, () -> {
+            executeShardOperation(primary);
+            return new PrimaryResult<>(shardRequest, new ReplicationResponse());
+        });
+    }
+
+    @Override
+    protected ReplicaResult shardOperationOnReplica(final ShardRequest shardRequest, final IndexShard replica) {
+        executeShardOperation(replica);
+        return new ReplicaResult();
+    }
+
+    private void executeShardOperation(final IndexShard indexShard) {
+        final ShardId shardId = indexShard.shardId();
+        if (indexShard.getActiveOperationsCount() != IndexShard.OPERATIONS_BLOCKED) {
+            throw new IllegalStateException("Index shard " + shardId + " is not blocking all operations while verifying its write block");
+        }
+        final IndexMetadata indexMetadata = clusterService.state().metadata().index(shardId.getIndex());
+        if (indexMetadata == null || IndexTimestampRange.isWriteBlocked(indexMetadata) == false) {
+            throw new IllegalStateException("Index shard " + shardId + " must be blocked for writes before verifying its write block");
+        }
+        indexShard.refresh("verify-write-block");
+    }
+
+    public static class ShardRequest extends ReplicationRequest<ShardRequest> {
+
+        ShardRequest(StreamInput in) throws IOException {
+            super(in);
+        }
+
+        public ShardRequest(final ShardId shardId) {
+            super(shardId);
+        }
+
+        @Override
+        public String toString() {
+            return "verify write block of shard " + shardId;
+        }
+    }
+}
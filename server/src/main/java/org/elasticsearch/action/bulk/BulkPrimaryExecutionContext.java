@@ -22,14 +22,19 @@ package org.elasticsearch.action.bulk;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.replication.ReplicationResponse;
 import org.elasticsearch.action.support.replication.TransportWriteAction;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.translog.Translog;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * This is a utility class that holds the per request state needed to perform bulk operations on the primary.
@@ -167,6 +172,35 @@ class BulkPrimaryExecutionContext {
     }
 
 
+    /**
+     * returns the index requests of the current item and of the items that directly follow it, up to the given number of
+     * requests, as long as they append a document with an auto-generated id that was not sent to the primary before. Such
+     * requests neither depend on nor conflict with existing documents, so they can be executed as a single batch.
+     */
+    public List<IndexRequest> getAppendOnlyRequests(int maxRequests) {
+        assert assertInvariants(ItemProcessingState.INITIAL);
+        final List<IndexRequest> requests = new ArrayList<>();
+        for (int i = currentIndex; i < request.items().length && requests.size() < maxRequests; i = findNextNonAborted(i + 1)) {
+            final DocWriteRequest<?> docWriteRequest = request.items()[i].request();
+            if (isAppendOnly(docWriteRequest) == false) {
+                break;
+            }
+            requests.add((IndexRequest) docWriteRequest);
+        }
+        return requests;
+    }
+
+    private static boolean isAppendOnly(DocWriteRequest<?> docWriteRequest) {
+        if (docWriteRequest instanceof IndexRequest == false) {
+            return false;
+        }
+        final IndexRequest indexRequest = (IndexRequest) docWriteRequest;
+        return indexRequest.getAutoGeneratedTimestamp() != IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP
+            && indexRequest.isRetry() == false
+            && indexRequest.versionType() == VersionType.INTERNAL
+            && (indexRequest.version() == Versions.MATCH_ANY || indexRequest.version() == Versions.MATCH_DELETED);
+    }
+
     /** returns the name of the index the current request used */
     public String getConcreteIndex() {
         return getCurrentItem().index();
@@ -45,6 +45,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static org.elasticsearch.action.ValidateActions.addValidationError;
 
@@ -253,6 +254,22 @@ public class BulkRequest extends ActionRequest implements CompositeIndicesReques
         return this;
     }
 
+    /**
+     * Adds a framed data in binary format, parsing large data in parallel on the given executor. The items are added in order and
+     * their sources are slices of {@code data}.
+     */
+    public BulkRequest add(BytesReference data, @Nullable String defaultIndex,
+                           @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+                           @Nullable String defaultPipeline, boolean allowExplicitIndex,
+                           XContentType xContentType, Executor executor) throws IOException {
+        String routing = valueOrDefault(defaultRouting, globalRouting);
+        String pipeline = valueOrDefault(defaultPipeline, globalPipeline);
+        new BulkRequestParser(true).parse(data, defaultIndex, routing, defaultFetchSourceContext, pipeline,
+                allowExplicitIndex, xContentType, executor, (indexRequest, type) -> internalAdd(indexRequest), this::internalAdd,
+                this::add);
+        return this;
+    }
+
     /**
      * Sets the number of shard copies that must be active before proceeding with the write.
      * See {@link ReplicationRequest#waitForActiveShards(ActiveShardCount)} for details.
@@ -37,6 +37,13 @@ import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -60,6 +67,11 @@ public final class BulkRequestParser {
     private static final ParseField IF_SEQ_NO = new ParseField("if_seq_no");
     private static final ParseField IF_PRIMARY_TERM = new ParseField("if_primary_term");
 
+    /**
+     * The size of the chunks that large bulk requests are split into when they are parsed in parallel.
+     */
+    public static final int PARALLEL_PARSE_CHUNK_SIZE_IN_BYTES = 1 << 20;
+
     // TODO: Remove this parameter once the BulkMonitoring endpoint has been removed
     private final boolean errorOnType;
 
@@ -111,8 +123,321 @@ public final class BulkRequestParser {
             BiConsumer<IndexRequest, String> indexRequestConsumer,
             Consumer<UpdateRequest> updateRequestConsumer,
             Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
+        parse(data, 0, defaultIndex, defaultRouting, defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType,
+            indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+    }
+
+    /**
+     * Parse the provided {@code data} like {@link #parse(BytesReference, String, String, FetchSourceContext, String, boolean,
+     * XContentType, BiConsumer, Consumer, Consumer)} does, but split it into chunks of roughly
+     * {@link #PARALLEL_PARSE_CHUNK_SIZE_IN_BYTES} bytes at item boundaries and parse the chunks in parallel on the given
+     * {@code executor}. The calling thread parses chunks too, so this never waits on tasks that are still queued. The consumers are
+     * always called on the calling thread and in the order of the items in {@code data}. If several chunks are malformed, the failure
+     * of the first one is thrown, so the outcome is the same as that of a sequential parse.
+     */
+    public void parse(
+            BytesReference data, @Nullable String defaultIndex,
+            @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+            @Nullable String defaultPipeline, boolean allowExplicitIndex,
+            XContentType xContentType, Executor executor,
+            BiConsumer<IndexRequest, String> indexRequestConsumer,
+            Consumer<UpdateRequest> updateRequestConsumer,
+            Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
+        parse(data, defaultIndex, defaultRouting, defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType,
+            executor, PARALLEL_PARSE_CHUNK_SIZE_IN_BYTES, indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+    }
+
+    // pkg private for testing
+    void parse(
+            BytesReference data, @Nullable String defaultIndex,
+            @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+            @Nullable String defaultPipeline, boolean allowExplicitIndex,
+            XContentType xContentType, Executor executor, int chunkSizeInBytes,
+            BiConsumer<IndexRequest, String> indexRequestConsumer,
+            Consumer<UpdateRequest> updateRequestConsumer,
+            Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
+        final List<Chunk> chunks = splitIntoChunks(data, xContentType, chunkSizeInBytes);
+        if (chunks.size() == 1) {
+            parse(data, 0, defaultIndex, defaultRouting, defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType,
+                indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+            return;
+        }
+
+        // every chunk records the calls to the consumers so that they can be replayed in order on the calling thread
+        final List<List<Runnable>> parsedItems = new ArrayList<>(chunks.size());
+        final Exception[] failures = new Exception[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            parsedItems.add(new ArrayList<>());
+        }
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch parsedChunks = new CountDownLatch(chunks.size());
+        final Runnable worker = () -> {
+            int chunkIndex;
+            while ((chunkIndex = nextChunk.getAndIncrement()) < chunks.size()) {
+                final Chunk chunk = chunks.get(chunkIndex);
+                final List<Runnable> items = parsedItems.get(chunkIndex);
+                try {
+                    parse(data.slice(chunk.from, chunk.to - chunk.from), chunk.firstLine, defaultIndex, defaultRouting,
+                        defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType,
+                        (indexRequest, type) -> items.add(() -> indexRequestConsumer.accept(indexRequest, type)),
+                        updateRequest -> items.add(() -> updateRequestConsumer.accept(updateRequest)),
+                        deleteRequest -> items.add(() -> deleteRequestConsumer.accept(deleteRequest)));
+                } catch (Exception e) {
+                    failures[chunkIndex] = e;
+                } finally {
+                    parsedChunks.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < chunks.size(); i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // the calling thread parses the remaining chunks
+                break;
+            }
+        }
+        worker.run();
+        try {
+            parsedChunks.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while parsing bulk request", e);
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            parsedItems.get(i).forEach(Runnable::run);
+            if (failures[i] != null) {
+                if (failures[i] instanceof IOException) {
+                    throw (IOException) failures[i];
+                }
+                throw (RuntimeException) failures[i];
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final int from;
+        private final int to;
+        private final int firstLine;
+
+        private Chunk(int from, int to, int firstLine) {
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+        }
+    }
+
+    /**
+     * Splits the data into chunks that start with an action line. Malformed lines are left to the parser of the chunk that contains them.
+     */
+    private static List<Chunk> splitIntoChunks(BytesReference data, XContentType xContentType, int chunkSizeInBytes) {
+        final List<Chunk> chunks = new ArrayList<>();
+        final ItemScanner scanner = new ItemScanner(data, xContentType);
+        int chunkStart = 0;
+        int chunkFirstLine = 0;
+        while (scanner.nextItem()) {
+            if (scanner.offset - chunkStart >= chunkSizeInBytes && scanner.offset < data.length()) {
+                chunks.add(new Chunk(chunkStart, scanner.offset, chunkFirstLine));
+                chunkStart = scanner.offset;
+                chunkFirstLine = scanner.lines;
+            }
+        }
+        chunks.add(new Chunk(chunkStart, data.length(), chunkFirstLine));
+        return chunks;
+    }
+
+    /**
+     * Walks over the complete items of the data. Lines can only be told apart by their position, since a source may look exactly like an
+     * action line, so this walks all lines and only looks at the name of the action of each item to know whether it is followed by a
+     * source line.
+     */
+    private static final class ItemScanner {
+        private final BytesReference data;
+        private final XContentType xContentType;
+        private final byte marker;
+        private int offset;
+        private int lines;
+
+        private ItemScanner(BytesReference data, XContentType xContentType) {
+            this.data = data;
+            this.xContentType = xContentType;
+            this.marker = xContentType.xContent().streamSeparator();
+        }
+
+        /**
+         * Moves past the next item if it is complete, returns false otherwise.
+         */
+        private boolean nextItem() {
+            if (offset >= data.length()) {
+                return false;
+            }
+            final int actionEnd = data.indexOf(marker, offset);
+            if (actionEnd == -1) {
+                return false;
+            }
+            if (hasSourceLine(data.slice(offset, actionEnd - offset), xContentType)) {
+                final int sourceEnd = data.indexOf(marker, actionEnd + 1);
+                if (sourceEnd == -1) {
+                    return false;
+                }
+                offset = sourceEnd + 1;
+                lines += 2;
+            } else {
+                offset = actionEnd + 1;
+                lines++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Creates a parser for data that is received in several parts, see {@link IncrementalParser}.
+     */
+    public IncrementalParser incrementalParser(
+            @Nullable String defaultIndex, @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+            @Nullable String defaultPipeline, boolean allowExplicitIndex, XContentType xContentType,
+            BiConsumer<IndexRequest, String> indexRequestConsumer,
+            Consumer<UpdateRequest> updateRequestConsumer,
+            Consumer<DeleteRequest> deleteRequestConsumer) {
+        return new IncrementalParser(defaultIndex, defaultRouting, defaultFetchSourceContext, defaultPipeline, allowExplicitIndex,
+            xContentType, indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+    }
+
+    /**
+     * Parses data that is received in several parts. Every call parses the complete items at the start of the data that has not been
+     * consumed yet and tells how much of it was consumed, so that the caller can append the next part to the rest. Line numbers in
+     * error messages are relative to the start of the whole data.
+     */
+    public final class IncrementalParser {
+        private final String defaultIndex;
+        private final String defaultRouting;
+        private final FetchSourceContext defaultFetchSourceContext;
+        private final String defaultPipeline;
+        private final boolean allowExplicitIndex;
+        private final XContentType xContentType;
+        private final BiConsumer<IndexRequest, String> indexRequestConsumer;
+        private final Consumer<UpdateRequest> updateRequestConsumer;
+        private final Consumer<DeleteRequest> deleteRequestConsumer;
+        private int line;
+
+        private IncrementalParser(String defaultIndex, String defaultRouting, FetchSourceContext defaultFetchSourceContext,
+                                  String defaultPipeline, boolean allowExplicitIndex, XContentType xContentType,
+                                  BiConsumer<IndexRequest, String> indexRequestConsumer,
+                                  Consumer<UpdateRequest> updateRequestConsumer,
+                                  Consumer<DeleteRequest> deleteRequestConsumer) {
+            this.defaultIndex = defaultIndex;
+            this.defaultRouting = defaultRouting;
+            this.defaultFetchSourceContext = defaultFetchSourceContext;
+            this.defaultPipeline = defaultPipeline;
+            this.allowExplicitIndex = allowExplicitIndex;
+            this.xContentType = xContentType;
+            this.indexRequestConsumer = indexRequestConsumer;
+            this.updateRequestConsumer = updateRequestConsumer;
+            this.deleteRequestConsumer = deleteRequestConsumer;
+        }
+
+        /**
+         * Parses the complete items at the start of the given data, or all of it if it is the last part.
+         *
+         * @param data     the data that has not been consumed yet
+         * @param lastPart whether no more data follows
+         * @return the number of bytes that were consumed
+         */
+        public int parse(BytesReference data, boolean lastPart) throws IOException {
+            if (lastPart) {
+                BulkRequestParser.this.parse(data, line, defaultIndex, defaultRouting, defaultFetchSourceContext, defaultPipeline,
+                    allowExplicitIndex, xContentType, indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+                return data.length();
+            }
+            final ItemScanner scanner = new ItemScanner(data, xContentType);
+            int consumed = 0;
+            while (scanner.nextItem()) {
+                consumed = scanner.offset;
+            }
+            if (consumed > 0) {
+                BulkRequestParser.this.parse(data.slice(0, consumed), line, defaultIndex, defaultRouting,
+                    defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType, indexRequestConsumer,
+                    updateRequestConsumer, deleteRequestConsumer);
+                line += scanner.lines;
+            }
+            return consumed;
+        }
+    }
+
+    private static final byte[] DELETE_ACTION = "delete".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Returns whether the given action line is followed by a source line, which is the case for all lines but empty lines and
+     * {@code delete} actions.
+     */
+    private static boolean hasSourceLine(BytesReference actionLine, XContentType xContentType) {
+        if (xContentType == XContentType.JSON) {
+            // fast path for the common {"action":{...}} shape, anything else goes through the parser
+            int i = skipWhitespace(actionLine, 0);
+            if (i == actionLine.length()) {
+                return false;
+            }
+            if (actionLine.get(i) == '{') {
+                i = skipWhitespace(actionLine, i + 1);
+                if (i < actionLine.length() && actionLine.get(i) == '"') {
+                    final int nameStart = i + 1;
+                    int nameEnd = nameStart;
+                    while (nameEnd < actionLine.length() && actionLine.get(nameEnd) != '"' && actionLine.get(nameEnd) != '\\') {
+                        nameEnd++;
+                    }
+                    if (nameEnd < actionLine.length() && actionLine.get(nameEnd) == '"') {
+                        if (nameEnd - nameStart != DELETE_ACTION.length) {
+                            return true;
+                        }
+                        for (int j = 0; j < DELETE_ACTION.length; j++) {
+                            if (actionLine.get(nameStart + j) != DELETE_ACTION[j]) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                }
+            }
+        }
+        try (InputStream stream = actionLine.streamInput();
+                XContentParser parser = xContentType.xContent()
+                    .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, stream)) {
+            final XContentParser.Token token = parser.nextToken();
+            if (token == null) {
+                return false;
+            }
+            return token != XContentParser.Token.START_OBJECT
+                || parser.nextToken() != XContentParser.Token.FIELD_NAME
+                || "delete".equals(parser.currentName()) == false;
+        } catch (Exception e) {
+            // the chunk parser reports the malformed line
+            return true;
+        }
+    }
+
+    private static int skipWhitespace(BytesReference bytes, int from) {
+        int i = from;
+        while (i < bytes.length()) {
+            final byte b = bytes.get(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private void parse(
+            BytesReference data, int firstLine, @Nullable String defaultIndex,
+            @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+            @Nullable String defaultPipeline, boolean allowExplicitIndex,
+            XContentType xContentType,
+            BiConsumer<IndexRequest, String> indexRequestConsumer,
+            Consumer<UpdateRequest> updateRequestConsumer,
+            Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
         XContent xContent = xContentType.xContent();
-        int line = 0;
+        int line = firstLine;
         int from = 0;
         byte marker = xContent.streamSeparator();
         while (true) {
@@ -73,6 +73,8 @@ import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
@@ -86,6 +88,9 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
 
     private static final Logger logger = LogManager.getLogger(TransportShardBulkAction.class);
 
+    // bounds the number of parsed documents that a batch of append-only items holds in memory
+    static final int MAX_APPEND_ONLY_BATCH_SIZE = 128;
+
     private final UpdateHelper updateHelper;
     private final MappingUpdatedAction mappingUpdatedAction;
 
@@ -156,6 +161,11 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             @Override
             protected void doRun() throws Exception {
                 while (context.hasMoreOperationsToExecute()) {
+                    if (executeAppendOnlyBulkItemRequests(context)) {
+                        // the current item is the first one that did not belong to the batch
+                        assert context.isInitial();
+                        continue;
+                    }
                     if (executeBulkItemRequest(context, updateHelper, nowInMillisSupplier, mappingUpdater, waitForMappingUpdate,
                         ActionListener.wrap(v -> executor.execute(this), this::onRejection)) == false) {
                         // We are waiting for a mapping update on another thread, that will invoke this action again once its done
@@ -204,6 +214,33 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         }.run();
     }
 
+    /**
+     * Executes the current item together with the items that directly follow it as a single batch if they all append a document
+     * with an auto-generated id, see {@link IndexShard#applyAppendOnlyIndexOperationsOnPrimary}.
+     * @return {@code true} if at least one item was executed and completed, {@code false} if the current item must be executed on
+     *                      its own by {@link #executeBulkItemRequest}
+     */
+    static boolean executeAppendOnlyBulkItemRequests(BulkPrimaryExecutionContext context) throws Exception {
+        final List<IndexRequest> requests = context.getAppendOnlyRequests(MAX_APPEND_ONLY_BATCH_SIZE);
+        if (requests.size() < 2) {
+            return false;
+        }
+        final List<SourceToParse> sourcesToParse = new ArrayList<>(requests.size());
+        final List<Long> autoGeneratedTimestamps = new ArrayList<>(requests.size());
+        for (IndexRequest request : requests) {
+            sourcesToParse.add(new SourceToParse(request.index(), request.id(), request.source(), request.getContentType(),
+                request.routing()));
+            autoGeneratedTimestamps.add(request.getAutoGeneratedTimestamp());
+        }
+        final List<Engine.IndexResult> results =
+            context.getPrimary().applyAppendOnlyIndexOperationsOnPrimary(sourcesToParse, autoGeneratedTimestamps);
+        for (Engine.IndexResult result : results) {
+            context.setRequestToExecute(context.getCurrent());
+            onComplete(result, context, null);
+        }
+        return results.isEmpty() == false;
+    }
+
     /**
      * Executes bulk item requests and handles request execution exceptions.
      * @return {@code true} if request completed on this thread and the listener was invoked, {@code false} if the request triggered
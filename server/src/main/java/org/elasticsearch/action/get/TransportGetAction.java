@@ -24,12 +24,14 @@ import org.elasticsearch.action.RoutingMissingException;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.single.shard.TransportSingleShardAction;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.get.GetResult;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
@@ -62,9 +64,23 @@ public class TransportGetAction extends TransportSingleShardAction<GetRequest, G
 
     @Override
     protected ShardIterator shards(ClusterState state, InternalRequest request) {
-        return clusterService.operationRouting()
+        final ShardIterator shards = clusterService.operationRouting()
                 .getShards(clusterService.state(), request.concreteIndex(), request.request().id(), request.request().routing(),
                     request.request().preference());
+        return request.request().realtime() ? realtimeShards(state, shards) : shards;
+    }
+
+    /**
+     * Returns the shards that realtime gets are executed on. The replicas of an index that uses segment replication only see the
+     * operations of the primary once they copied its segments, realtime gets are executed on the primary of such an index.
+     */
+    static ShardIterator realtimeShards(ClusterState state, ShardIterator shards) {
+        final IndexMetadata indexMetadata = state.metadata().index(shards.shardId().getIndex());
+        if (indexMetadata != null
+            && IndexSettings.INDEX_REPLICATION_TYPE_SETTING.get(indexMetadata.getSettings()) == IndexSettings.ReplicationType.SEGMENT) {
+            return state.routingTable().shardRoutingTable(shards.shardId()).primaryShardIt();
+        }
+        return shards;
     }
 
     @Override
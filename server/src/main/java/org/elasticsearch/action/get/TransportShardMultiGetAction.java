@@ -74,8 +74,9 @@ public class TransportShardMultiGetAction extends TransportSingleShardAction<Mul
 
     @Override
     protected ShardIterator shards(ClusterState state, InternalRequest request) {
-        return clusterService.operationRouting()
+        final ShardIterator shards = clusterService.operationRouting()
                 .getShards(state, request.request().index(), request.request().shardId(), request.request().preference());
+        return request.request().realtime() ? TransportGetAction.realtimeShards(state, shards) : shards;
     }
 
     @Override
@@ -615,6 +615,7 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         // than creating an empty response in the search thread pool.
         // Note that, we have to disable this shortcut for scroll queries.
         shardRequest.canReturnNullResponseIfMatchNoDocs(hasShardResponse.get() && request.scroll() == null);
+        shardRequest.readerId(shardIt.getSearchContextId(), shardIt.getSearchContextKeepAlive());
         return shardRequest;
     }
 
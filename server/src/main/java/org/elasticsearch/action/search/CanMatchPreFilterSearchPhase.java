@@ -20,18 +20,22 @@ package org.elasticsearch.action.search;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.search.SearchService.CanMatchResponse;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.MinAndMax;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.transport.Transport;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -53,11 +57,14 @@ import java.util.stream.Stream;
  * When the query primary sort is perform on a field, this phase extracts the min/max value in each shard and
  * sort them according to the provided order. This can be useful for instance to ensure that shards that contain recent
  * data are executed first when sorting by descending timestamp.
+ * The shards of a node are checked with a single request to that node unless the node doesn't support it, in which case
+ * every shard is checked with its own request.
  */
 final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMatchResponse> {
 
     private final Function<GroupShardsIterator<SearchShardIterator>, SearchPhase> phaseFactory;
     private final GroupShardsIterator<SearchShardIterator> shardsIts;
+    private final Map<String, NodeSearchRequestBatch<CanMatchResponse>> nodeBatches;
 
     CanMatchPreFilterSearchPhase(Logger logger, SearchTransportService searchTransportService,
                                  BiFunction<String, String, Transport.Connection> nodeIdToConnection,
@@ -74,11 +81,36 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
                 new CanMatchSearchPhaseResults(shardsIts.size()), shardsIts.size(), clusters);
         this.phaseFactory = phaseFactory;
         this.shardsIts = shardsIts;
+        // shards of remote clusters and of nodes before 8.0 are checked with a request per shard
+        this.nodeBatches = NodeSearchRequestBatch.groupByNode(shardsIts, shardIt -> {
+                if (shardIt.getClusterAlias() != null) {
+                    return false;
+                }
+                final DiscoveryNode node = clusterState.nodes().get(shardIt.getShardRoutings().get(0).currentNodeId());
+                return node != null && node.getVersion().onOrAfter(Version.V_8_0_0);
+            }, nodeId -> getConnection(null, nodeId), this::buildShardSearchRequest,
+            new NodeSearchRequestBatch.Sender<>() {
+                @Override
+                public void sendShardRequest(Transport.Connection connection, ShardSearchRequest request,
+                                             SearchActionListener<CanMatchResponse> listener) {
+                    getSearchTransport().sendCanMatch(connection, request, getTask(), listener);
+                }
+
+                @Override
+                public void sendNodeRequest(Transport.Connection connection, List<ShardSearchRequest> requests,
+                                            List<SearchActionListener<CanMatchResponse>> listeners) {
+                    getSearchTransport().sendCanMatch(connection, requests, getTask(), listeners);
+                }
+            });
     }
 
     @Override
     protected void executePhaseOnShard(SearchShardIterator shardIt, ShardRouting shard,
                                        SearchActionListener<CanMatchResponse> listener) {
+        final NodeSearchRequestBatch<CanMatchResponse> batch = nodeBatches.get(shard.currentNodeId());
+        if (batch != null && batch.add(shardIt, listener)) {
+            return;
+        }
         getSearchTransport().sendCanMatch(getConnection(shardIt.getClusterAlias(), shard.currentNodeId()),
             buildShardSearchRequest(shardIt), getTask(), listener);
     }
@@ -100,8 +132,11 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
             possibleMatches.set(0);
         }
         SearchSourceBuilder source = getRequest().source();
+        // the results are indexed by the position of the checked shards, the shards that were skipped before this phase (see
+        // TransportSearchAction#skipIndicesOutsideTimestampRange) were not checked and remain skipped
+        GroupShardsIterator<SearchShardIterator> checkedShardsIts = super.shardsIts;
         int i = 0;
-        for (SearchShardIterator iter : shardsIts) {
+        for (SearchShardIterator iter : checkedShardsIts) {
             if (possibleMatches.get(i++)) {
                 iter.reset();
             } else {
@@ -112,7 +147,9 @@ final class CanMatchPreFilterSearchPhase extends AbstractSearchAsyncAction<CanMa
             return shardsIts;
         }
         FieldSortBuilder fieldSort = FieldSortBuilder.getPrimaryFieldSortOrNull(source);
-        return new GroupShardsIterator<>(sortShards(shardsIts, results.minAndMaxes, fieldSort.order()));
+        List<SearchShardIterator> iterators = new ArrayList<>(sortShards(checkedShardsIts, results.minAndMaxes, fieldSort.order()));
+        toSkipShardsIts.forEach(iterators::add);
+        return new GroupShardsIterator<>(iterators);
     }
 
     private static List<SearchShardIterator> sortShards(GroupShardsIterator<SearchShardIterator> shardsIts,
@@ -52,13 +52,15 @@ final class ExpandSearchPhase extends SearchPhase {
     }
 
     /**
-     * Returns <code>true</code> iff the search request has inner hits and needs field collapsing
+     * Returns <code>true</code> iff the search request has inner hits and needs field collapsing. The shards already expanded the
+     * collapsed hits if {@link CollapseBuilder#isExpandOnShards()} is set.
      */
     private boolean isCollapseRequest() {
         final SearchRequest searchRequest = context.getRequest();
         return searchRequest.source() != null &&
             searchRequest.source().collapse() != null &&
-            searchRequest.source().collapse().getInnerHits().isEmpty() == false;
+            searchRequest.source().collapse().getInnerHits().isEmpty() == false &&
+            searchRequest.source().collapse().isExpandOnShards() == false;
     }
 
     @Override
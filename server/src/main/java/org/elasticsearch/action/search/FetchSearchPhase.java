@@ -137,12 +137,17 @@ final class FetchSearchPhase extends SearchPhase {
                 final ScoreDoc[] lastEmittedDocPerShard = isScrollSearch ?
                     searchPhaseController.getLastEmittedDocPerShard(reducedQueryPhase, numShards)
                     : null;
+                final Object[] collapseValues = isExpandOnShards() ? reducedQueryPhase.sortedTopDocs.collapseValues : null;
                 final CountedCollector<FetchSearchResult> counter = new CountedCollector<>(r -> fetchResults.set(r.getShardIndex(), r),
                     docIdsToLoad.length, // we count down every shard in the result no matter if we got any results or not
                     finishPhase, context);
                 for (int i = 0; i < docIdsToLoad.length; i++) {
                     IntArrayList entry = docIdsToLoad[i];
                     SearchPhaseResult queryResult = queryResults.get(i);
+                    if (entry == null && collapseValues != null && queryResult != null && queryResult.queryResult().hasSearchContext()) {
+                        // the shard has no hits to fetch but it can hold documents of the groups of the hits of other shards
+                        entry = new IntArrayList();
+                    }
                     if (entry == null) { // no results for this shard ID
                         if (queryResult != null) {
                             // if we got some hits from this shard we have to release the context there
@@ -158,7 +163,7 @@ final class FetchSearchPhase extends SearchPhase {
                         Transport.Connection connection = context.getConnection(searchShardTarget.getClusterAlias(),
                             searchShardTarget.getNodeId());
                         ShardFetchSearchRequest fetchSearchRequest = createFetchRequest(queryResult.queryResult().getContextId(), i, entry,
-                            lastEmittedDocPerShard, searchShardTarget.getOriginalIndices());
+                            lastEmittedDocPerShard, collapseValues, searchShardTarget.getOriginalIndices());
                         executeFetch(i, searchShardTarget, counter, fetchSearchRequest, queryResult.queryResult(),
                             connection);
                     }
@@ -168,9 +173,22 @@ final class FetchSearchPhase extends SearchPhase {
     }
 
     protected ShardFetchSearchRequest createFetchRequest(SearchContextId contextId, int index, IntArrayList entry,
-                                                         ScoreDoc[] lastEmittedDocPerShard, OriginalIndices originalIndices) {
+                                                         ScoreDoc[] lastEmittedDocPerShard, Object[] collapseValues,
+                                                         OriginalIndices originalIndices) {
         final ScoreDoc lastEmittedDoc = (lastEmittedDocPerShard != null) ? lastEmittedDocPerShard[index] : null;
-        return new ShardFetchSearchRequest(originalIndices, contextId, entry, lastEmittedDoc);
+        return new ShardFetchSearchRequest(originalIndices, contextId, entry, lastEmittedDoc, collapseValues);
+    }
+
+    /**
+     * Returns <code>true</code> iff the shards expand the collapsed hits of the search, in which case every shard that has a search
+     * context expands the groups of all the hits with the documents that it holds.
+     */
+    private boolean isExpandOnShards() {
+        final SearchRequest searchRequest = context.getRequest();
+        return searchRequest.source() != null &&
+            searchRequest.source().collapse() != null &&
+            searchRequest.source().collapse().getInnerHits().isEmpty() == false &&
+            searchRequest.source().collapse().isExpandOnShards();
     }
 
     private void executeFetch(final int shardIndex, final SearchShardTarget shardTarget,
@@ -0,0 +1,145 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.IndexTimestampRange;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.geo.ShapeRelation;
+import org.elasticsearch.common.time.DateFormatter;
+import org.elasticsearch.common.time.DateMathParser;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the indices that a search request does not need to hit because its query requires a range of their timestamp
+ * field that does not intersect with the {@link IndexTimestampRange} recorded in their metadata. This allows to skip
+ * whole indices on the coordinating node, without sending any can_match request to their shards.
+ */
+final class IndexTimestampRangeFilter {
+
+    private IndexTimestampRangeFilter() {}
+
+    /**
+     * Returns the indices among the provided ones that can not match the provided search source.
+     */
+    static Set<Index> findIndicesToSkip(ClusterState clusterState, @Nullable SearchSourceBuilder source, Index[] indices,
+                                        LongSupplier nowInMillis) {
+        if (SearchService.canRewriteToMatchNone(source) == false) {
+            return Collections.emptySet();
+        }
+        final Map<Tuple<String, String>, long[]> boundsPerFieldAndFormat = new HashMap<>();
+        final Set<Index> indicesToSkip = new HashSet<>();
+        for (Index index : indices) {
+            final IndexMetadata indexMetadata = clusterState.metadata().index(index);
+            if (indexMetadata == null) {
+                continue;
+            }
+            final IndexTimestampRange range = IndexTimestampRange.fromIndexMetadata(indexMetadata);
+            if (range == null || range.isCurrent(indexMetadata) == false) {
+                continue;
+            }
+            final long[] bounds = boundsPerFieldAndFormat.computeIfAbsent(Tuple.tuple(range.getField(), range.getFormat()),
+                key -> requiredBounds(source.query(), key.v1(), key.v2(), nowInMillis));
+            if (range.intersects(bounds[0], bounds[1]) == false) {
+                indicesToSkip.add(index);
+            }
+        }
+        return indicesToSkip;
+    }
+
+    /**
+     * Returns the inclusive bounds, in milliseconds since the epoch, that the values of the provided date field must be
+     * within in order to match the provided query. Only the range queries that are required by the query, directly or
+     * through the <code>must</code> and <code>filter</code> clauses of boolean queries, are taken into account.
+     *
+     * @param format the date format of the field or <code>null</code> if the field uses the default format
+     */
+    static long[] requiredBounds(QueryBuilder query, String field, @Nullable String format, LongSupplier nowInMillis) {
+        final long[] bounds = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        final DateMathParser parser = (format == null ? DateFieldMapper.DEFAULT_DATE_TIME_FORMATTER : DateFormatter.forPattern(format))
+            .toDateMathParser();
+        intersectBounds(query, field, parser, nowInMillis, bounds);
+        return bounds;
+    }
+
+    private static void intersectBounds(QueryBuilder query, String field, DateMathParser fieldParser, LongSupplier nowInMillis,
+                                        long[] bounds) {
+        if (query instanceof RangeQueryBuilder) {
+            final RangeQueryBuilder rangeQuery = (RangeQueryBuilder) query;
+            if (rangeQuery.fieldName().equals(field) == false
+                    || (rangeQuery.relation() != null && rangeQuery.relation() != ShapeRelation.INTERSECTS)) {
+                return;
+            }
+            try {
+                // mirrors the parsing of DateFieldMapper.DateFieldType#rangeQuery
+                final DateMathParser parser = rangeQuery.format() == null ? fieldParser
+                    : DateFormatter.forPattern(rangeQuery.format()).toDateMathParser();
+                final ZoneId timeZone = rangeQuery.timeZone() == null ? null : ZoneId.of(rangeQuery.timeZone());
+                if (rangeQuery.from() != null) {
+                    long from = parser.parse(rangeQuery.from().toString(), nowInMillis, rangeQuery.includeLower() == false, timeZone)
+                        .toEpochMilli();
+                    if (rangeQuery.includeLower() == false && from != Long.MAX_VALUE) {
+                        ++from;
+                    }
+                    bounds[0] = Math.max(bounds[0], from);
+                }
+                if (rangeQuery.to() != null) {
+                    long to = parser.parse(rangeQuery.to().toString(), nowInMillis, rangeQuery.includeUpper(), timeZone)
+                        .toEpochMilli();
+                    if (rangeQuery.includeUpper() == false && to != Long.MIN_VALUE) {
+                        --to;
+                    }
+                    bounds[1] = Math.min(bounds[1], to);
+                }
+            } catch (ElasticsearchParseException | IllegalArgumentException | DateTimeException | ArithmeticException e) {
+                // leave the bounds untouched, the shards will report the error
+            }
+        } else if (query instanceof BoolQueryBuilder) {
+            final BoolQueryBuilder boolQuery = (BoolQueryBuilder) query;
+            for (QueryBuilder clause : boolQuery.must()) {
+                intersectBounds(clause, field, fieldParser, nowInMillis, bounds);
+            }
+            for (QueryBuilder clause : boolQuery.filter()) {
+                intersectBounds(clause, field, fieldParser, nowInMillis, bounds);
+            }
+        } else if (query instanceof ConstantScoreQueryBuilder) {
+            intersectBounds(((ConstantScoreQueryBuilder) query).innerQuery(), field, fieldParser, nowInMillis, bounds);
+        }
+    }
+}
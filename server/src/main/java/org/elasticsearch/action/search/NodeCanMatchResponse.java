@@ -0,0 +1,123 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.SearchService.CanMatchResponse;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.sort.MinAndMax;
+import org.elasticsearch.transport.TransportResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The response to a {@link NodeSearchRequest} for the can_match phase. It holds a bitset of the shards that
+ * can match the request, the min/max values of the primary sort field of each shard and the failures of the
+ * shards that could not be checked.
+ */
+final class NodeCanMatchResponse extends TransportResponse {
+
+    private final FixedBitSet canMatch;
+    private final MinAndMax<?>[] minAndMaxes;
+    private final Exception[] failures;
+
+    NodeCanMatchResponse(FixedBitSet canMatch, MinAndMax<?>[] minAndMaxes, Exception[] failures) {
+        assert canMatch.length() == minAndMaxes.length && minAndMaxes.length == failures.length;
+        this.canMatch = canMatch;
+        this.minAndMaxes = minAndMaxes;
+        this.failures = failures;
+    }
+
+    NodeCanMatchResponse(StreamInput in) throws IOException {
+        super(in);
+        final int numShards = in.readVInt();
+        canMatch = new FixedBitSet(in.readLongArray(), numShards);
+        minAndMaxes = new MinAndMax<?>[numShards];
+        failures = new Exception[numShards];
+        for (int i = 0; i < numShards; i++) {
+            minAndMaxes[i] = in.readOptionalWriteable(MinAndMax::new);
+            failures[i] = in.readBoolean() ? in.readException() : null;
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(minAndMaxes.length);
+        out.writeLongArray(canMatch.getBits());
+        for (int i = 0; i < minAndMaxes.length; i++) {
+            out.writeOptionalWriteable(minAndMaxes[i]);
+            if (failures[i] == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                out.writeException(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * Checks all the provided shard requests of the local node in a single pass.
+     */
+    static NodeCanMatchResponse canMatch(SearchService searchService, List<ShardSearchRequest> shardRequests) {
+        final FixedBitSet canMatch = new FixedBitSet(shardRequests.size());
+        final MinAndMax<?>[] minAndMaxes = new MinAndMax<?>[shardRequests.size()];
+        final Exception[] failures = new Exception[shardRequests.size()];
+        for (int i = 0; i < shardRequests.size(); i++) {
+            try {
+                final CanMatchResponse response = searchService.canMatch(shardRequests.get(i));
+                if (response.canMatch()) {
+                    canMatch.set(i);
+                }
+                minAndMaxes[i] = response.minAndMax();
+            } catch (Exception e) {
+                failures[i] = e;
+            }
+        }
+        return new NodeCanMatchResponse(canMatch, minAndMaxes, failures);
+    }
+
+    /**
+     * Returns the number of shards in this response.
+     */
+    int size() {
+        return minAndMaxes.length;
+    }
+
+    /**
+     * Returns the failure of the shard at the given position or <code>null</code> if the shard could be checked.
+     */
+    @Nullable
+    Exception getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * Returns the can_match response of the shard at the given position.
+     */
+    CanMatchResponse getResponse(int index) {
+        assert failures[index] == null : "shard [" + index + "] failed";
+        return new CanMatchResponse(canMatch.get(index), minAndMaxes[index]);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Executes the query phase of all the shards of a {@link NodeSearchRequest} on the local node and partially
+ * reduces their results before they are sent back to the coordinating node:
+ * <ul>
+ *     <li>the top docs of each shard are trimmed to the hits that can make it into the top hits of this node</li>
+ *     <li>the aggregations of all shards are reduced into the result of a single shard, the other shards
+ *     return empty aggregations</li>
+ * </ul>
+ * Shard results are kept separate otherwise so that the coordinating node can track failures, retries and
+ * the fetch phase per shard as usual. At most one shard per search thread, and no more than the max concurrent
+ * shard requests of the search request, are executed concurrently. The memory needed by the partial reduction
+ * of the aggregations is accounted for in the request circuit breaker.
+ */
+final class NodeQueryPhaseExecutor {
+
+    private final SearchService searchService;
+    private final NodeSearchRequest request;
+    private final SearchShardTask task;
+    private final ActionListener<NodeQueryResponse> listener;
+    private final Executor executor;
+    private final int maxConcurrentShardRequests;
+    private final AtomicReferenceArray<Object> results;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final CountDown countDown;
+
+    NodeQueryPhaseExecutor(SearchService searchService, ThreadPool threadPool, NodeSearchRequest request, SearchShardTask task,
+                           ActionListener<NodeQueryResponse> listener) {
+        this.searchService = searchService;
+        this.request = request;
+        this.task = task;
+        this.listener = listener;
+        this.executor = threadPool.executor(ThreadPool.Names.SEARCH);
+        this.maxConcurrentShardRequests = Math.min(request.getMaxConcurrentShardRequests(),
+            Math.max(1, threadPool.info(ThreadPool.Names.SEARCH).getMax()));
+        final int numShards = request.getShardRequests().size();
+        this.results = new AtomicReferenceArray<>(numShards);
+        this.countDown = new CountDown(numShards);
+    }
+
+    void run() {
+        final int numShards = request.getShardRequests().size();
+        for (int i = 0; i < Math.min(numShards, maxConcurrentShardRequests); i++) {
+            executeNext();
+        }
+    }
+
+    private void executeNext() {
+        final int index = nextShard.getAndIncrement();
+        if (index >= results.length()) {
+            return;
+        }
+        final ShardSearchRequest shardRequest = request.getShardRequests().get(index);
+        final Thread thread = Thread.currentThread();
+        try {
+            searchService.executeQueryPhase(shardRequest, task, new ActionListener<SearchPhaseResult>() {
+                @Override
+                public void onResponse(SearchPhaseResult result) {
+                    onShardDone(index, result.queryResult(), thread);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    onShardDone(index, e, thread);
+                }
+            });
+        } catch (Exception e) {
+            onShardDone(index, e, thread);
+        }
+    }
+
+    private void onShardDone(int index, Object result, Thread originalThread) {
+        results.set(index, result);
+        if (countDown.countDown()) {
+            finish();
+        } else if (originalThread == Thread.currentThread()) {
+            // the shard completed without forking, execute the next one on another thread to prevent deep recursion
+            executor.execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() {
+                    executeNext();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    assert false : e;
+                }
+
+                @Override
+                public boolean isForceExecution() {
+                    // we can not allow a stuffed queue to reject execution here
+                    return true;
+                }
+            });
+        } else {
+            executeNext();
+        }
+    }
+
+    private void finish() {
+        final Object[] shardResults = new Object[results.length()];
+        final List<QuerySearchResult> querySearchResults = new ArrayList<>();
+        for (int i = 0; i < shardResults.length; i++) {
+            shardResults[i] = results.get(i);
+            if (shardResults[i] instanceof QuerySearchResult && ((QuerySearchResult) shardResults[i]).isNull() == false) {
+                querySearchResults.add((QuerySearchResult) shardResults[i]);
+            }
+        }
+        try {
+            final SearchSourceBuilder source = request.getShardRequests().get(0).source();
+            trimTopDocs(querySearchResults, SearchPhaseController.getTopDocsSize(source));
+            reduceAggs(querySearchResults, searchService.aggReduceContextBuilder(source).forPartialReduction(),
+                searchService.getCircuitBreakerService().getBreaker(CircuitBreaker.REQUEST));
+        } catch (Exception e) {
+            listener.onFailure(e);
+            return;
+        }
+        listener.onResponse(new NodeQueryResponse(shardResults));
+    }
+
+    /**
+     * Trims the top docs of the provided shard results to the hits that are part of the top <code>topN</code>
+     * hits of all these shards. Shards are tie-broken by their position in the provided list which must be the
+     * order that the coordinating node uses to tie-break them. Collapsed top docs are left untouched since
+     * the collapse key of a hit can be shared with the hits of other shards.
+     */
+    static void trimTopDocs(List<QuerySearchResult> results, int topN) {
+        if (results.size() < 2) {
+            return;
+        }
+        final List<TopDocs> topDocsList = new ArrayList<>(results.size());
+        for (QuerySearchResult result : results) {
+            final TopDocs topDocs = result.topDocs().topDocs;
+            if (topDocs instanceof CollapseTopFieldDocs) {
+                return;
+            }
+            topDocsList.add(topDocs);
+        }
+        final int[] numHitsPerShard = new int[results.size()];
+        try {
+            for (int i = 0; i < topDocsList.size(); i++) {
+                for (ScoreDoc scoreDoc : topDocsList.get(i).scoreDocs) {
+                    scoreDoc.shardIndex = i;
+                }
+            }
+            final TopDocs mergedTopDocs = SearchPhaseController.mergeTopDocs(topDocsList, topN, 0);
+            for (ScoreDoc scoreDoc : mergedTopDocs.scoreDocs) {
+                numHitsPerShard[scoreDoc.shardIndex]++;
+            }
+        } finally {
+            // the coordinating node sets the shard index of the hits again when it merges shard results
+            for (TopDocs topDocs : topDocsList) {
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    scoreDoc.shardIndex = -1;
+                }
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            final TopDocs topDocs = topDocsList.get(i);
+            if (numHitsPerShard[i] == topDocs.scoreDocs.length) {
+                continue;
+            }
+            // the merge preserves the order of the hits of a single shard so its remaining hits are a prefix of its top docs
+            final ScoreDoc[] scoreDocs = Arrays.copyOf(topDocs.scoreDocs, numHitsPerShard[i]);
+            final TopDocs trimmed;
+            if (topDocs instanceof TopFieldDocs) {
+                trimmed = new TopFieldDocs(topDocs.totalHits, scoreDocs, ((TopFieldDocs) topDocs).fields);
+            } else {
+                trimmed = new TopDocs(topDocs.totalHits, scoreDocs);
+            }
+            final QuerySearchResult result = results.get(i);
+            result.topDocs(new TopDocsAndMaxScore(trimmed, result.topDocs().maxScore), result.sortValueFormats());
+        }
+    }
+
+    /**
+     * Partially reduces the aggregations of the provided shard results into the result of the first shard
+     * that has aggregations. The other shards are left with empty aggregations so that the coordinating node
+     * still finds aggregations on every shard result. The serialized size of the shard aggregations and an estimate
+     * of the memory needed to reduce them are added to the provided circuit breaker for the duration of the reduction.
+     */
+    static void reduceAggs(List<QuerySearchResult> results, InternalAggregation.ReduceContext reduceContext,
+                           CircuitBreaker circuitBreaker) {
+        final List<QuerySearchResult> withAggs = new ArrayList<>(results.size());
+        for (QuerySearchResult result : results) {
+            if (result.hasAggs()) {
+                withAggs.add(result);
+            }
+        }
+        if (withAggs.size() < 2) {
+            return;
+        }
+        long aggsSize = 0;
+        for (QuerySearchResult result : withAggs) {
+            aggsSize += result.aggregations().getSerializedSize();
+        }
+        final long estimatedSize = aggsSize + estimateRamBytesUsedForReduce(aggsSize);
+        circuitBreaker.addEstimateBytesAndMaybeBreak(estimatedSize, "<reduce_aggs>");
+        final InternalAggregations reduced;
+        try {
+            final List<InternalAggregations> aggsList = new ArrayList<>(withAggs.size());
+            for (QuerySearchResult result : withAggs) {
+                aggsList.add(result.consumeAggs().get());
+            }
+            reduced = InternalAggregations.topLevelReduce(aggsList, reduceContext);
+        } finally {
+            circuitBreaker.addWithoutBreaking(-estimatedSize);
+        }
+        withAggs.get(0).aggregations(reduced);
+        for (int i = 1; i < withAggs.size(); i++) {
+            withAggs.get(i).aggregations(InternalAggregations.EMPTY);
+        }
+    }
+
+    /**
+     * Returns an estimation of the size that a reduction of the given aggregations size would take on memory.
+     * This size is estimated as roughly 1.5 times the size of the serialized aggregations that need to be reduced.
+     */
+    static long estimateRamBytesUsedForReduce(long size) {
+        return Math.round(1.5d * size - size);
+    }
+}
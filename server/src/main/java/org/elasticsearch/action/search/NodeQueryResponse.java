@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.transport.TransportResponse;
+
+import java.io.IOException;
+
+/**
+ * The response to a {@link NodeSearchRequest} for the query phase. It holds, for every shard request in the same order, either
+ * the {@link QuerySearchResult} of the shard or the {@link Exception} that made it fail.
+ */
+final class NodeQueryResponse extends TransportResponse {
+
+    private final Object[] results;
+
+    NodeQueryResponse(Object[] results) {
+        assert assertResults(results);
+        this.results = results;
+    }
+
+    NodeQueryResponse(StreamInput in) throws IOException {
+        super(in);
+        results = new Object[in.readVInt()];
+        for (int i = 0; i < results.length; i++) {
+            if (in.readBoolean()) {
+                results[i] = new QuerySearchResult(in);
+            } else {
+                results[i] = in.readException();
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(results.length);
+        for (Object result : results) {
+            if (result instanceof Exception) {
+                out.writeBoolean(false);
+                out.writeException((Exception) result);
+            } else {
+                out.writeBoolean(true);
+                ((QuerySearchResult) result).writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of shard results in this response.
+     */
+    int size() {
+        return results.length;
+    }
+
+    /**
+     * Returns <code>true</code> if the shard at the given position failed.
+     */
+    boolean isFailure(int index) {
+        return results[index] instanceof Exception;
+    }
+
+    /**
+     * Returns the result of the shard at the given position.
+     */
+    QuerySearchResult getResult(int index) {
+        return (QuerySearchResult) results[index];
+    }
+
+    /**
+     * Returns the failure of the shard at the given position.
+     */
+    Exception getFailure(int index) {
+        return (Exception) results[index];
+    }
+
+    private static boolean assertResults(Object[] results) {
+        for (Object result : results) {
+            assert result instanceof QuerySearchResult || result instanceof Exception : "unexpected shard result: " + result;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.IndicesRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A request that holds the shard level requests of a search request for all the shards of a single node
+ * that are targeted by that search request. It is used to execute the can_match phase and the query phase
+ * of these shards with a single round trip to the node, see {@link NodeQueryPhaseExecutor}.
+ */
+final class NodeSearchRequest extends TransportRequest implements IndicesRequest {
+
+    private final List<ShardSearchRequest> shardRequests;
+    private final int maxConcurrentShardRequests;
+
+    NodeSearchRequest(List<ShardSearchRequest> shardRequests) {
+        this(shardRequests, Integer.MAX_VALUE);
+    }
+
+    NodeSearchRequest(List<ShardSearchRequest> shardRequests, int maxConcurrentShardRequests) {
+        assert shardRequests.isEmpty() == false : "node search request must target at least one shard";
+        assert maxConcurrentShardRequests > 0 : "max concurrent shard requests must be positive";
+        this.shardRequests = shardRequests;
+        this.maxConcurrentShardRequests = maxConcurrentShardRequests;
+    }
+
+    NodeSearchRequest(StreamInput in) throws IOException {
+        super(in);
+        shardRequests = in.readList(ShardSearchRequest::new);
+        maxConcurrentShardRequests = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeList(shardRequests);
+        out.writeVInt(maxConcurrentShardRequests);
+    }
+
+    /**
+     * Returns the shard level requests, in the order the coordinating node expects their results.
+     */
+    List<ShardSearchRequest> getShardRequests() {
+        return shardRequests;
+    }
+
+    /**
+     * Returns the maximum number of shard requests of this node request that can be executed concurrently,
+     * see {@link SearchRequest#getMaxConcurrentShardRequests()}.
+     */
+    int getMaxConcurrentShardRequests() {
+        return maxConcurrentShardRequests;
+    }
+
+    @Override
+    public String[] indices() {
+        Set<String> indices = new LinkedHashSet<>();
+        for (ShardSearchRequest shardRequest : shardRequests) {
+            if (shardRequest.indices() != null) {
+                indices.addAll(Arrays.asList(shardRequest.indices()));
+            }
+        }
+        return indices.toArray(new String[0]);
+    }
+
+    @Override
+    public IndicesOptions indicesOptions() {
+        return shardRequests.get(0).indicesOptions();
+    }
+
+    @Override
+    public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+        return new SearchShardTask(id, type, action, getDescription(), parentTaskId, headers);
+    }
+
+    @Override
+    public String getDescription() {
+        // shard ids are enough here, the request itself can be found by looking at the parent task description
+        return "shardIds" + shardRequests.stream().map(ShardSearchRequest::shardId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.transport.Transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Buffers the initial shard requests of a search phase that target the same node until all of them are known and sends
+ * them in a single request. Retries on other shard copies are sent per shard.
+ */
+final class NodeSearchRequestBatch<Result extends SearchPhaseResult> {
+
+    /**
+     * Sends the requests of a batch to its node.
+     */
+    interface Sender<Result extends SearchPhaseResult> {
+
+        /**
+         * Sends the request of a single shard, used if only one shard of the batch could be added.
+         */
+        void sendShardRequest(Transport.Connection connection, ShardSearchRequest request, SearchActionListener<Result> listener);
+
+        /**
+         * Sends the requests of several shards in a single request, the listeners are in the same order as the requests.
+         */
+        void sendNodeRequest(Transport.Connection connection, List<ShardSearchRequest> requests,
+                             List<SearchActionListener<Result>> listeners);
+    }
+
+    private final String nodeId;
+    private final Function<String, Transport.Connection> nodeIdToConnection;
+    private final Function<SearchShardIterator, ShardSearchRequest> requestBuilder;
+    private final Sender<Result> sender;
+    private final Set<SearchShardIterator> pendingShards = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<ShardSearchRequest> requests = new ArrayList<>();
+    private final List<SearchActionListener<Result>> listeners = new ArrayList<>();
+
+    private NodeSearchRequestBatch(String nodeId, Function<String, Transport.Connection> nodeIdToConnection,
+                                   Function<SearchShardIterator, ShardSearchRequest> requestBuilder, Sender<Result> sender) {
+        this.nodeId = nodeId;
+        this.nodeIdToConnection = nodeIdToConnection;
+        this.requestBuilder = requestBuilder;
+        this.sender = sender;
+    }
+
+    /**
+     * Groups the provided shards by the node that holds their first copy, which is the copy that their initial request is sent
+     * to. Shards that are skipped, have no copy, or don't match the provided predicate are left out and sent per shard.
+     *
+     * @param nodeIdToConnection resolves the connection to the node of a batch once it is sent
+     * @param requestBuilder     builds the request of a shard once it is added to its batch
+     */
+    static <Result extends SearchPhaseResult> Map<String, NodeSearchRequestBatch<Result>> groupByNode(
+            GroupShardsIterator<SearchShardIterator> shardsIts, Predicate<SearchShardIterator> canBatch,
+            Function<String, Transport.Connection> nodeIdToConnection,
+            Function<SearchShardIterator, ShardSearchRequest> requestBuilder, Sender<Result> sender) {
+        final Map<String, NodeSearchRequestBatch<Result>> batches = new HashMap<>();
+        for (SearchShardIterator shardIt : shardsIts) {
+            if (shardIt.skip() || shardIt.getShardRoutings().isEmpty() || canBatch.test(shardIt) == false) {
+                continue;
+            }
+            final String nodeId = shardIt.getShardRoutings().get(0).currentNodeId();
+            batches.computeIfAbsent(nodeId, id -> new NodeSearchRequestBatch<>(id, nodeIdToConnection, requestBuilder, sender))
+                .pendingShards.add(shardIt);
+        }
+        return batches;
+    }
+
+    /**
+     * Adds the request of the provided shard to this batch and sends the batch once the requests of all its shards
+     * are added. Returns <code>false</code> if the shard isn't pending in this batch, e.g. because it is retried on this node.
+     */
+    boolean add(SearchShardIterator shardIt, SearchActionListener<Result> listener) {
+        Exception failure = null;
+        final boolean sendBatch;
+        synchronized (this) {
+            if (pendingShards.remove(shardIt) == false) {
+                return false;
+            }
+            try {
+                requests.add(requestBuilder.apply(shardIt));
+                listeners.add(listener);
+            } catch (Exception e) {
+                failure = e;
+            }
+            sendBatch = pendingShards.isEmpty();
+        }
+        if (failure != null) {
+            listener.onFailure(failure);
+        }
+        if (sendBatch) {
+            send();
+        }
+        return true;
+    }
+
+    private void send() {
+        if (requests.isEmpty()) {
+            return;
+        }
+        final Transport.Connection connection;
+        try {
+            connection = nodeIdToConnection.apply(nodeId);
+        } catch (Exception e) {
+            for (SearchActionListener<Result> listener : listeners) {
+                listener.onFailure(e);
+            }
+            return;
+        }
+        if (requests.size() == 1) {
+            sender.sendShardRequest(connection, requests.get(0), listeners.get(0));
+        } else {
+            sender.sendNodeRequest(connection, requests, listeners);
+        }
+    }
+}
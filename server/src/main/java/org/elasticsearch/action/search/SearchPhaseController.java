@@ -55,6 +55,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.ExpandedGroups;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -345,8 +346,12 @@ public final class SearchPhaseController {
             }
         }
         // clean the fetch counter
+        final List<FetchSearchResult> expandedResults = new ArrayList<>();
         for (SearchPhaseResult entry : fetchResults) {
             entry.fetchResult().initCounter();
+            if (entry.fetchResult().expandedGroups() != null) {
+                expandedResults.add(entry.fetchResult());
+            }
         }
         int from = ignoreFrom ? 0 : reducedQueryPhase.from;
         int numSearchHits = (int) Math.min(reducedQueryPhase.fetchHits - from, reducedQueryPhase.size);
@@ -380,6 +385,9 @@ public final class SearchPhaseController {
                 } else {
                     searchHit.score(shardDoc.score);
                 }
+                if (expandedResults.isEmpty() == false) {
+                    mergeExpandedGroups(searchHit, i, expandedResults);
+                }
                 hits.add(searchHit);
             }
         }
@@ -387,6 +395,57 @@ public final class SearchPhaseController {
             reducedQueryPhase.maxScore, sortedTopDocs.sortFields, sortedTopDocs.collapseField, sortedTopDocs.collapseValues);
     }
 
+    /**
+     * Sets the inner hits of the given collapsed hit to the merged groups that the shards computed for it when they expand the
+     * collapsed hits of the search.
+     *
+     * @param group the index of the collapsed hit in the merged top docs, which is the index of its group in the shard results
+     */
+    private static void mergeExpandedGroups(SearchHit searchHit, int group, List<FetchSearchResult> expandedResults) {
+        if (searchHit.getInnerHits() == null) {
+            searchHit.setInnerHits(new HashMap<>());
+        }
+        for (String name : expandedResults.get(0).expandedGroups().getInnerHits().keySet()) {
+            final int numShards = expandedResults.size();
+            final TopDocs[] shardTopDocs = new TopDocs[numShards];
+            final SearchHit[][] shardHits = new SearchHit[numShards][];
+            float maxScore = Float.NaN;
+            int from = 0;
+            int size = 0;
+            for (int i = 0; i < numShards; i++) {
+                ExpandedGroups.InnerHits innerHits = expandedResults.get(i).expandedGroups().getInnerHits().get(name);
+                TopDocsAndMaxScore topDocs = innerHits.getTopDocs()[group];
+                shardTopDocs[i] = topDocs.topDocs;
+                shardHits[i] = innerHits.getHits()[group].getHits();
+                if (Float.isNaN(maxScore) || topDocs.maxScore > maxScore) {
+                    maxScore = topDocs.maxScore;
+                }
+                from = innerHits.getFrom();
+                size = innerHits.getSize();
+            }
+            // the shards return their top from + size documents, the first from documents are skipped once they are merged
+            final TopDocs mergedTopDocs;
+            if (shardTopDocs[0] instanceof TopFieldDocs) {
+                final Sort sort = new Sort(((TopFieldDocs) shardTopDocs[0]).fields);
+                mergedTopDocs = TopDocs.merge(sort, 0, from + size, Arrays.copyOf(shardTopDocs, numShards, TopFieldDocs[].class), true);
+            } else {
+                mergedTopDocs = TopDocs.merge(0, from + size, shardTopDocs, true);
+            }
+            final int[] counters = new int[numShards];
+            final List<SearchHit> hits = new ArrayList<>();
+            for (int i = 0; i < mergedTopDocs.scoreDocs.length; i++) {
+                final int shardIndex = mergedTopDocs.scoreDocs[i].shardIndex;
+                final SearchHit hit = shardHits[shardIndex][counters[shardIndex]++];
+                if (i >= from) {
+                    hit.shard(expandedResults.get(shardIndex).getSearchShardTarget());
+                    hits.add(hit);
+                }
+            }
+            searchHit.getInnerHits().put(name,
+                new SearchHits(hits.toArray(new SearchHit[0]), mergedTopDocs.totalHits, maxScore));
+        }
+    }
+
     /**
      * Reduces the given query results and consumes all aggregations and profile results.
      * @param queryResults a list of non-null query shard results
@@ -541,10 +600,13 @@ public final class SearchPhaseController {
      * Returns the size of the requested top documents (from + size)
      */
     static int getTopDocsSize(SearchRequest request) {
-        if (request.source() == null) {
+        return getTopDocsSize(request.source());
+    }
+
+    static int getTopDocsSize(SearchSourceBuilder source) {
+        if (source == null) {
             return SearchService.DEFAULT_SIZE;
         }
-        SearchSourceBuilder source = request.source();
         return (source.size() == -1 ? SearchService.DEFAULT_SIZE : source.size()) +
             (source.from() == -1 ? SearchService.DEFAULT_FROM : source.from());
     }
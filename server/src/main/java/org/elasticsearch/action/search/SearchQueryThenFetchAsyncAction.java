@@ -21,8 +21,10 @@ package org.elasticsearch.action.search;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.TopFieldDocs;
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.search.SearchPhaseResult;
@@ -34,6 +36,7 @@ import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.transport.Transport;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -51,6 +54,9 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
     private final int trackTotalHitsUpTo;
     private volatile BottomSortValuesCollector bottomSortCollector;
 
+    // non-null if the initial shard requests are grouped per node, see SearchTransportService#sendExecuteNodeQuery
+    private final Map<String, NodeSearchRequestBatch<SearchPhaseResult>> nodeQueryBatches;
+
     SearchQueryThenFetchAsyncAction(final Logger logger, final SearchTransportService searchTransportService,
                                     final BiFunction<String, String, Transport.Connection> nodeIdToConnection,
                                     final Map<String, AliasFilter> aliasFilter,
@@ -59,22 +65,77 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
                                     final SearchRequest request, final ActionListener<SearchResponse> listener,
                                     final GroupShardsIterator<SearchShardIterator> shardsIts,
                                     final TransportSearchAction.SearchTimeProvider timeProvider,
-                                    ClusterState clusterState, SearchTask task, SearchResponse.Clusters clusters) {
+                                    ClusterState clusterState, SearchTask task, SearchResponse.Clusters clusters,
+                                    boolean batchQueryPhase) {
+        // requests grouped per node are not throttled here since a node receives a single request for all its shards,
+        // the node throttles the execution of these shards with the max concurrent shard requests of the search request
         super("query", logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts, indexRoutings,
                 executor, request, listener, shardsIts, timeProvider, clusterState, task,
                 searchPhaseController.newSearchPhaseResults(task.getProgressListener(), request, shardsIts.size()),
-                request.getMaxConcurrentShardRequests(), clusters);
+                batchQueryPhase ? Integer.MAX_VALUE : request.getMaxConcurrentShardRequests(), clusters);
+        assert batchQueryPhase == false || canBatchQueryPhase(request, shardsIts, clusterState);
         this.topDocsSize = getTopDocsSize(request);
         this.trackTotalHitsUpTo = request.resolveTrackTotalHitsUpTo();
         this.searchPhaseController = searchPhaseController;
         this.progressListener = task.getProgressListener();
+        this.nodeQueryBatches = batchQueryPhase ? NodeSearchRequestBatch.groupByNode(this.shardsIts, shardIt -> true,
+            nodeId -> getConnection(null, nodeId), shardIt -> rewriteShardSearchRequest(buildShardSearchRequest(shardIt)),
+            new NodeSearchRequestBatch.Sender<>() {
+                @Override
+                public void sendShardRequest(Transport.Connection connection, ShardSearchRequest request,
+                                             SearchActionListener<SearchPhaseResult> listener) {
+                    getSearchTransport().sendExecuteQuery(connection, request, getTask(), listener);
+                }
+
+                @Override
+                public void sendNodeRequest(Transport.Connection connection, List<ShardSearchRequest> requests,
+                                            List<SearchActionListener<SearchPhaseResult>> listeners) {
+                    getSearchTransport().sendExecuteNodeQuery(connection, requests,
+                        request.getMaxConcurrentShardRequests(), getTask(), listeners);
+                }
+            }) : null;
         final SearchSourceBuilder sourceBuilder = request.source();
         progressListener.notifyListShards(SearchProgressListener.buildSearchShards(this.shardsIts),
             SearchProgressListener.buildSearchShards(toSkipShardsIts), clusters, sourceBuilder == null || sourceBuilder.size() != 0);
     }
 
+    /**
+     * Returns <code>true</code> if the initial shard requests of the provided search request can be grouped per node.
+     * This is only the case for non-scroll requests that target more than one shard of the local cluster, and if all
+     * the nodes holding the first copy of these shards can handle {@link SearchTransportService#QUERY_NODE_ACTION_NAME}.
+     */
+    static boolean canBatchQueryPhase(SearchRequest request, GroupShardsIterator<SearchShardIterator> shardsIts,
+                                      ClusterState clusterState) {
+        if (request.scroll() != null) {
+            return false;
+        }
+        int numShards = 0;
+        for (SearchShardIterator shardIt : shardsIts) {
+            if (shardIt.skip()) {
+                continue;
+            }
+            numShards++;
+            if (shardIt.getClusterAlias() != null) {
+                return false;
+            }
+            if (shardIt.getShardRoutings().isEmpty() == false) {
+                final DiscoveryNode node = clusterState.nodes().get(shardIt.getShardRoutings().get(0).currentNodeId());
+                if (node == null || node.getVersion().before(Version.V_8_0_0)) {
+                    return false;
+                }
+            }
+        }
+        // single shard requests fetch documents in the query phase
+        return numShards > 1;
+    }
+
     protected void executePhaseOnShard(final SearchShardIterator shardIt, final ShardRouting shard,
                                        final SearchActionListener<SearchPhaseResult> listener) {
+        final NodeSearchRequestBatch<SearchPhaseResult> batch =
+            nodeQueryBatches == null ? null : nodeQueryBatches.get(shard.currentNodeId());
+        if (batch != null && batch.add(shardIt, listener)) {
+            return;
+        }
         ShardSearchRequest request = rewriteShardSearchRequest(super.buildShardSearchRequest(shardIt));
         getSearchTransport().sendExecuteQuery(getConnection(shardIt.getClusterAlias(), shard.currentNodeId()),
             request, getTask(), listener);
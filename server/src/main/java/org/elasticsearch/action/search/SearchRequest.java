@@ -31,6 +31,7 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.tasks.TaskId;
@@ -277,6 +278,20 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
                     addValidationError("[request_cache] cannot be used in a scroll context", validationException);
             }
         }
+        if (pointInTimeBuilder() != null) {
+            if (scroll) {
+                validationException = addValidationError("using [point in time] is not allowed in a scroll context", validationException);
+            }
+            if (indices.length > 0) {
+                validationException = addValidationError("[indices] cannot be used with point in time", validationException);
+            }
+            if (routing != null) {
+                validationException = addValidationError("[routing] cannot be used with point in time", validationException);
+            }
+            if (preference != null) {
+                validationException = addValidationError("[preference] cannot be used with point in time", validationException);
+            }
+        }
         if (source != null) {
             if (source.aggregations() != null) {
                 validationException = source.aggregations().validate(validationException);
@@ -431,6 +446,14 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
         return source;
     }
 
+    /**
+     * Returns the point in time that this request executes against, or <code>null</code> if it targets the latest view of its indices.
+     */
+    @Nullable
+    public PointInTimeBuilder pointInTimeBuilder() {
+        return source != null ? source.pointInTimeBuilder() : null;
+    }
+
     /**
      * The tye of search to execute.
      */
@@ -24,8 +24,10 @@ import org.elasticsearch.cluster.routing.PlainShardIterator;
 import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.internal.SearchContextId;
 
 import java.util.List;
 import java.util.Objects;
@@ -40,6 +42,8 @@ public final class SearchShardIterator extends PlainShardIterator {
 
     private final OriginalIndices originalIndices;
     private final String clusterAlias;
+    private final SearchContextId searchContextId;
+    private final TimeValue searchContextKeepAlive;
     private boolean skip = false;
 
     /**
@@ -52,9 +56,24 @@ public final class SearchShardIterator extends PlainShardIterator {
      * @param originalIndices the indices that the search request originally related to (before any rewriting happened)
      */
     public SearchShardIterator(@Nullable String clusterAlias, ShardId shardId, List<ShardRouting> shards, OriginalIndices originalIndices) {
+        this(clusterAlias, shardId, shards, originalIndices, null, null);
+    }
+
+    /**
+     * Creates a {@link PlainShardIterator} instance for a point in time search, which executes against the reader context with the
+     * given id on the shard copy that holds it.
+     *
+     * @param searchContextId the id of the reader context to search, or <code>null</code> to search a fresh searcher
+     * @param searchContextKeepAlive how long the reader context is kept alive after the search, or <code>null</code> to keep it
+     *                               unchanged
+     */
+    public SearchShardIterator(@Nullable String clusterAlias, ShardId shardId, List<ShardRouting> shards, OriginalIndices originalIndices,
+                               @Nullable SearchContextId searchContextId, @Nullable TimeValue searchContextKeepAlive) {
         super(shardId, shards);
         this.originalIndices = originalIndices;
         this.clusterAlias = clusterAlias;
+        this.searchContextId = searchContextId;
+        this.searchContextKeepAlive = searchContextKeepAlive;
     }
 
     /**
@@ -72,6 +91,19 @@ public final class SearchShardIterator extends PlainShardIterator {
         return clusterAlias;
     }
 
+    /**
+     * Returns the id of the reader context that a point in time search executes against on this shard.
+     */
+    @Nullable
+    SearchContextId getSearchContextId() {
+        return searchContextId;
+    }
+
+    @Nullable
+    TimeValue getSearchContextKeepAlive() {
+        return searchContextKeepAlive;
+    }
+
     /**
      * Creates a new shard target from this iterator, pointing at the node identified by the provided identifier.
      * @see SearchShardTarget
@@ -30,7 +30,9 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.dfs.DfsSearchResult;
@@ -39,12 +41,14 @@ import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ScrollQueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ShardFetchRequest;
 import org.elasticsearch.search.fetch.ShardFetchSearchRequest;
+import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
 import org.elasticsearch.search.internal.SearchContextId;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QuerySearchRequest;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.ScrollQuerySearchResult;
+import org.elasticsearch.tasks.Task;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteClusterService;
 import org.elasticsearch.transport.Transport;
@@ -56,7 +60,9 @@ import org.elasticsearch.transport.TransportResponse;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
 
@@ -69,14 +75,18 @@ public class SearchTransportService {
     public static final String FREE_CONTEXT_SCROLL_ACTION_NAME = "indices:data/read/search[free_context/scroll]";
     public static final String FREE_CONTEXT_ACTION_NAME = "indices:data/read/search[free_context]";
     public static final String CLEAR_SCROLL_CONTEXTS_ACTION_NAME = "indices:data/read/search[clear_scroll_contexts]";
+    public static final String OPEN_READER_CONTEXT_ACTION_NAME = "indices:data/read/search[open_reader_context]";
+    public static final String FREE_READER_CONTEXT_ACTION_NAME = "indices:data/read/search[free_context/reader]";
     public static final String DFS_ACTION_NAME = "indices:data/read/search[phase/dfs]";
     public static final String QUERY_ACTION_NAME = "indices:data/read/search[phase/query]";
+    public static final String QUERY_NODE_ACTION_NAME = "indices:data/read/search[phase/query/node]";
     public static final String QUERY_ID_ACTION_NAME = "indices:data/read/search[phase/query/id]";
     public static final String QUERY_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query/scroll]";
     public static final String QUERY_FETCH_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query+fetch/scroll]";
     public static final String FETCH_ID_SCROLL_ACTION_NAME = "indices:data/read/search[phase/fetch/id/scroll]";
     public static final String FETCH_ID_ACTION_NAME = "indices:data/read/search[phase/fetch/id]";
     public static final String QUERY_CAN_MATCH_NAME = "indices:data/read/search[can_match]";
+    public static final String QUERY_CAN_MATCH_NODE_NAME = "indices:data/read/search[can_match/node]";
 
     private final TransportService transportService;
     private final BiFunction<Transport.Connection, SearchActionListener, ActionListener> responseWrapper;
@@ -109,12 +119,57 @@ public class SearchTransportService {
             TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, SearchFreeContextResponse::new));
     }
 
+    /**
+     * Opens a point in time reader context on the shard of the given request.
+     */
+    void sendOpenReaderContext(Transport.Connection connection, OpenReaderContextRequest request, Task task,
+                               ActionListener<OpenReaderContextResponse> listener) {
+        transportService.sendChildRequest(connection, OPEN_READER_CONTEXT_ACTION_NAME, request, task,
+            TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, OpenReaderContextResponse::new));
+    }
+
+    void sendFreeReaderContext(Transport.Connection connection, SearchContextId readerId,
+                               ActionListener<SearchFreeContextResponse> listener) {
+        transportService.sendRequest(connection, FREE_READER_CONTEXT_ACTION_NAME, new ScrollFreeContextRequest(readerId),
+            TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, SearchFreeContextResponse::new));
+    }
+
     public void sendCanMatch(Transport.Connection connection, final ShardSearchRequest request, SearchTask task, final
                             ActionListener<SearchService.CanMatchResponse> listener) {
         transportService.sendChildRequest(connection, QUERY_CAN_MATCH_NAME, request, task,
             TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, SearchService.CanMatchResponse::new));
     }
 
+    /**
+     * Sends the can_match requests of several shards of the same node in a single request. The listeners must be in the same order
+     * as the shard requests and are notified individually with the response or the failure of their shard.
+     */
+    void sendCanMatch(Transport.Connection connection, final List<ShardSearchRequest> requests, SearchTask task,
+                      final List<? extends ActionListener<SearchService.CanMatchResponse>> listeners) {
+        assert requests.size() == listeners.size() : "expected one listener per shard request";
+        transportService.sendChildRequest(connection, QUERY_CAN_MATCH_NODE_NAME, new NodeSearchRequest(requests), task,
+            TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(new ActionListener<NodeCanMatchResponse>() {
+                @Override
+                public void onResponse(NodeCanMatchResponse response) {
+                    assert response.size() == listeners.size() : "expected one response per shard request";
+                    for (int i = 0; i < response.size(); i++) {
+                        if (response.getFailure(i) != null) {
+                            listeners.get(i).onFailure(response.getFailure(i));
+                        } else {
+                            listeners.get(i).onResponse(response.getResponse(i));
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    for (ActionListener<SearchService.CanMatchResponse> listener : listeners) {
+                        listener.onFailure(e);
+                    }
+                }
+            }, NodeCanMatchResponse::new));
+    }
+
     public void sendClearAllScrollContexts(Transport.Connection connection, final ActionListener<TransportResponse> listener) {
         transportService.sendRequest(connection, CLEAR_SCROLL_CONTEXTS_ACTION_NAME, TransportRequest.Empty.INSTANCE,
             TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, (in) -> TransportResponse.Empty.INSTANCE));
@@ -138,6 +193,42 @@ public class SearchTransportService {
                 new ConnectionCountingHandler<>(handler, reader, clientConnections, connection.getNode().getId()));
     }
 
+    /**
+     * Sends the query phase of several shards of the same node in a single request. The listeners must be in the same order
+     * as the shard requests and are notified individually with the (partially reduced) result or the failure of their shard.
+     */
+    void sendExecuteNodeQuery(Transport.Connection connection, final List<ShardSearchRequest> requests, int maxConcurrentShardRequests,
+                              SearchTask task, final List<SearchActionListener<SearchPhaseResult>> listeners) {
+        assert requests.size() == listeners.size() : "expected one listener per shard request";
+        final List<ActionListener> handlers = new ArrayList<>(listeners.size());
+        for (SearchActionListener<SearchPhaseResult> listener : listeners) {
+            handlers.add(responseWrapper.apply(connection, listener));
+        }
+        transportService.sendChildRequest(connection, QUERY_NODE_ACTION_NAME,
+            new NodeSearchRequest(requests, maxConcurrentShardRequests), task,
+            new ConnectionCountingHandler<>(new ActionListener<NodeQueryResponse>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void onResponse(NodeQueryResponse response) {
+                    assert response.size() == handlers.size() : "expected one result per shard request";
+                    for (int i = 0; i < response.size(); i++) {
+                        if (response.isFailure(i)) {
+                            handlers.get(i).onFailure(response.getFailure(i));
+                        } else {
+                            handlers.get(i).onResponse(response.getResult(i));
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    for (ActionListener handler : handlers) {
+                        handler.onFailure(e);
+                    }
+                }
+            }, NodeQueryResponse::new, clientConnections, connection.getNode().getId()));
+    }
+
     public void sendExecuteQuery(Transport.Connection connection, final QuerySearchRequest request, SearchTask task,
                                  final SearchActionListener<QuerySearchResult> listener) {
         transportService.sendChildRequest(connection, QUERY_ID_ACTION_NAME, request, task,
@@ -256,6 +347,81 @@ public class SearchTransportService {
 
         }
 
+    static class OpenReaderContextRequest extends TransportRequest implements IndicesRequest {
+        private final ShardId shardId;
+        private final OriginalIndices originalIndices;
+        private final AliasFilter aliasFilter;
+        private final TimeValue keepAlive;
+
+        OpenReaderContextRequest(ShardId shardId, OriginalIndices originalIndices, AliasFilter aliasFilter, TimeValue keepAlive) {
+            this.shardId = shardId;
+            this.originalIndices = originalIndices;
+            this.aliasFilter = aliasFilter;
+            this.keepAlive = keepAlive;
+        }
+
+        OpenReaderContextRequest(StreamInput in) throws IOException {
+            super(in);
+            shardId = new ShardId(in);
+            originalIndices = OriginalIndices.readOriginalIndices(in);
+            aliasFilter = new AliasFilter(in);
+            keepAlive = in.readTimeValue();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            shardId.writeTo(out);
+            OriginalIndices.writeOriginalIndices(originalIndices, out);
+            aliasFilter.writeTo(out);
+            out.writeTimeValue(keepAlive);
+        }
+
+        ShardId shardId() {
+            return shardId;
+        }
+
+        AliasFilter aliasFilter() {
+            return aliasFilter;
+        }
+
+        TimeValue keepAlive() {
+            return keepAlive;
+        }
+
+        @Override
+        public String[] indices() {
+            return originalIndices.indices();
+        }
+
+        @Override
+        public IndicesOptions indicesOptions() {
+            return originalIndices.indicesOptions();
+        }
+    }
+
+    static class OpenReaderContextResponse extends TransportResponse {
+        private final SearchContextId readerId;
+
+        OpenReaderContextResponse(SearchContextId readerId) {
+            this.readerId = readerId;
+        }
+
+        OpenReaderContextResponse(StreamInput in) throws IOException {
+            super(in);
+            readerId = new SearchContextId(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            readerId.writeTo(out);
+        }
+
+        SearchContextId readerId() {
+            return readerId;
+        }
+    }
+
     public static class SearchFreeContextResponse extends TransportResponse {
 
         private boolean freed;
@@ -300,6 +466,17 @@ public class SearchTransportService {
         TransportActionProxy.registerProxyAction(transportService, CLEAR_SCROLL_CONTEXTS_ACTION_NAME,
             (in) -> TransportResponse.Empty.INSTANCE);
 
+        transportService.registerRequestHandler(OPEN_READER_CONTEXT_ACTION_NAME, ThreadPool.Names.SAME, OpenReaderContextRequest::new,
+            (request, channel, task) ->
+                searchService.openReaderContext(request.shardId(), request.aliasFilter(), request.keepAlive(),
+                    ActionListener.map(new ChannelActionListener<>(channel, OPEN_READER_CONTEXT_ACTION_NAME, request),
+                        OpenReaderContextResponse::new)));
+        transportService.registerRequestHandler(FREE_READER_CONTEXT_ACTION_NAME, ThreadPool.Names.SAME, ScrollFreeContextRequest::new,
+            (request, channel, task) -> {
+                boolean freed = searchService.freeReaderContext(request.id(), request);
+                channel.sendResponse(new SearchFreeContextResponse(freed));
+        });
+
         transportService.registerRequestHandler(DFS_ACTION_NAME, ThreadPool.Names.SAME, ShardSearchRequest::new,
             (request, channel, task) ->
                 searchService.executeDfsPhase(request, (SearchShardTask) task,
@@ -316,6 +493,13 @@ public class SearchTransportService {
         TransportActionProxy.registerProxyActionWithDynamicResponseType(transportService, QUERY_ACTION_NAME,
             (request) -> ((ShardSearchRequest)request).numberOfShards() == 1 ? QueryFetchSearchResult::new : QuerySearchResult::new);
 
+        transportService.registerRequestHandler(QUERY_NODE_ACTION_NAME, ThreadPool.Names.SAME, NodeSearchRequest::new,
+            (request, channel, task) -> {
+                new NodeQueryPhaseExecutor(searchService, transportService.getThreadPool(), request, (SearchShardTask) task,
+                    new ChannelActionListener<>(channel, QUERY_NODE_ACTION_NAME, request)).run();
+            });
+        TransportActionProxy.registerProxyAction(transportService, QUERY_NODE_ACTION_NAME, NodeQueryResponse::new);
+
         transportService.registerRequestHandler(QUERY_ID_ACTION_NAME, ThreadPool.Names.SAME, QuerySearchRequest::new,
             (request, channel, task) -> {
                 searchService.executeQueryPhase(request, (SearchShardTask) task,
@@ -357,6 +541,14 @@ public class SearchTransportService {
                 searchService.canMatch(request, new ChannelActionListener<>(channel, QUERY_CAN_MATCH_NAME, request));
             });
         TransportActionProxy.registerProxyAction(transportService, QUERY_CAN_MATCH_NAME, SearchService.CanMatchResponse::new);
+
+        // this rewrites the requests of all the shards of the node, which is too much work for a networking thread, but like for a
+        // single shard it must not be rejected
+        transportService.registerRequestHandler(QUERY_CAN_MATCH_NODE_NAME, ThreadPool.Names.SEARCH, true, true, NodeSearchRequest::new,
+            (request, channel, task) -> {
+                channel.sendResponse(NodeCanMatchResponse.canMatch(searchService, request.getShardRequests()));
+            });
+        TransportActionProxy.registerProxyAction(transportService, QUERY_CAN_MATCH_NODE_NAME, NodeCanMatchResponse::new);
     }
 
 
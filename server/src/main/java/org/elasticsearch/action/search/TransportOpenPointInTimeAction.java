@@ -0,0 +1,186 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.NoShardAvailableActionException;
+import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.action.search.SearchTransportService.OpenReaderContextRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Opens a point in time: resolves the shards of the requested indices like a search does and opens a reader context on one copy of
+ * each of them. The returned id lists these reader contexts, and searches that carry it execute against them.
+ */
+public class TransportOpenPointInTimeAction extends HandledTransportAction<OpenPointInTimeRequest, OpenPointInTimeResponse> {
+
+    private final ClusterService clusterService;
+    private final SearchService searchService;
+    private final SearchTransportService searchTransportService;
+    private final IndexNameExpressionResolver indexNameExpressionResolver;
+
+    @Inject
+    public TransportOpenPointInTimeAction(TransportService transportService, ClusterService clusterService, ActionFilters actionFilters,
+                                          SearchService searchService, SearchTransportService searchTransportService,
+                                          IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(OpenPointInTimeAction.NAME, transportService, actionFilters, OpenPointInTimeRequest::new);
+        this.clusterService = clusterService;
+        this.searchService = searchService;
+        this.searchTransportService = searchTransportService;
+        this.indexNameExpressionResolver = indexNameExpressionResolver;
+    }
+
+    @Override
+    protected void doExecute(Task task, OpenPointInTimeRequest request, ActionListener<OpenPointInTimeResponse> listener) {
+        final ClusterState clusterState = clusterService.state();
+        clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.READ);
+        final Index[] indices = indexNameExpressionResolver.concreteIndices(clusterState, request.indicesOptions(), request.indices());
+        final Set<String> indicesAndAliases = indexNameExpressionResolver.resolveExpressions(clusterState, request.indices());
+        final Map<String, AliasFilter> aliasFilters = new HashMap<>();
+        final String[] concreteIndices = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            clusterState.blocks().indexBlockedRaiseException(ClusterBlockLevel.READ, indices[i].getName());
+            aliasFilters.put(indices[i].getUUID(), searchService.buildAliasFilter(clusterState, indices[i].getName(), indicesAndAliases));
+            concreteIndices[i] = indices[i].getName();
+        }
+        final Map<String, Set<String>> routingMap =
+            indexNameExpressionResolver.resolveSearchRouting(clusterState, request.routing(), request.indices());
+        final GroupShardsIterator<ShardIterator> shardIterators =
+            clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap, request.preference());
+        TransportSearchAction.failIfOverShardCountLimit(clusterService, shardIterators.size());
+        final OriginalIndices originalIndices = new OriginalIndices(request.indices(), request.indicesOptions());
+
+        final List<ShardIterator> shards = new ArrayList<>();
+        shardIterators.forEach(shards::add);
+        final AtomicArray<ScrollIdForNode> readers = new AtomicArray<>(shards.size());
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDown countDown = new CountDown(shards.size());
+        final Runnable onShardDone = () -> {
+            if (countDown.countDown()) {
+                onOpened(shards, readers, failure.get(), clusterState.nodes(), listener);
+            }
+        };
+        if (shards.isEmpty()) {
+            onOpened(shards, readers, null, clusterState.nodes(), listener);
+            return;
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            final int shardIndex = i;
+            final ShardIterator shardIt = shards.get(i);
+            final OpenReaderContextRequest shardRequest = new OpenReaderContextRequest(shardIt.shardId(), originalIndices,
+                aliasFilters.get(shardIt.shardId().getIndex().getUUID()), request.keepAlive());
+            openReaderContext(task, shardIt, shardRequest, clusterState.nodes(), null, ActionListener.wrap(
+                reader -> {
+                    readers.set(shardIndex, reader);
+                    onShardDone.run();
+                },
+                e -> {
+                    if (failure.compareAndSet(null, e) == false) {
+                        failure.accumulateAndGet(e, (previous, current) -> {
+                            previous.addSuppressed(current);
+                            return previous;
+                        });
+                    }
+                    onShardDone.run();
+                }));
+        }
+    }
+
+    /**
+     * Opens a reader context on the next copy of the shard, trying the following copies if it fails.
+     */
+    private void openReaderContext(Task task, ShardIterator shardIt, OpenReaderContextRequest shardRequest, DiscoveryNodes nodes,
+                                   @Nullable Exception lastFailure, ActionListener<ScrollIdForNode> listener) {
+        final ShardRouting shard = shardIt.nextOrNull();
+        if (shard == null) {
+            listener.onFailure(lastFailure != null ? lastFailure : new NoShardAvailableActionException(shardIt.shardId()));
+            return;
+        }
+        final DiscoveryNode node = nodes.get(shard.currentNodeId());
+        try {
+            if (node == null) {
+                throw new NoShardAvailableActionException(shardIt.shardId(), "no node found for id: " + shard.currentNodeId());
+            }
+            searchTransportService.sendOpenReaderContext(searchTransportService.getConnection(null, node), shardRequest, task,
+                ActionListener.wrap(
+                    response -> listener.onResponse(new ScrollIdForNode(null, node.getId(), response.readerId())),
+                    e -> {
+                        logger.trace(() -> new ParameterizedMessage("{} failed to open reader context on node [{}]",
+                            shardIt.shardId(), shard.currentNodeId()), e);
+                        openReaderContext(task, shardIt, shardRequest, nodes, e, listener);
+                    }));
+        } catch (Exception e) {
+            openReaderContext(task, shardIt, shardRequest, nodes, e, listener);
+        }
+    }
+
+    private void onOpened(List<ShardIterator> shards, AtomicArray<ScrollIdForNode> readers, @Nullable Exception failure,
+                          DiscoveryNodes nodes, ActionListener<OpenPointInTimeResponse> listener) {
+        if (failure != null) {
+            // a point in time must cover all shards, release the reader contexts that were opened
+            for (ScrollIdForNode reader : readers.asList()) {
+                final DiscoveryNode node = nodes.get(reader.getNode());
+                if (node != null) {
+                    try {
+                        searchTransportService.sendFreeReaderContext(searchTransportService.getConnection(null, node),
+                            reader.getContextId(), ActionListener.wrap(() -> {}));
+                    } catch (Exception e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            listener.onFailure(failure);
+            return;
+        }
+        final Map<ShardId, ScrollIdForNode> pointInTime = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            pointInTime.put(shards.get(i).shardId(), readers.get(i));
+        }
+        ActionListener.completeWith(listener, () -> new OpenPointInTimeResponse(TransportSearchHelper.buildPointInTimeId(pointInTime)));
+    }
+}
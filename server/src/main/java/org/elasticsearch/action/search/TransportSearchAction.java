@@ -35,7 +35,9 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
 import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
@@ -50,6 +52,7 @@ import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.InternalSearchResponse;
@@ -70,6 +73,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
@@ -91,6 +95,13 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     public static final Setting<Long> SHARD_COUNT_LIMIT_SETTING = Setting.longSetting(
             "action.search.shard_count.limit", Long.MAX_VALUE, 1L, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * Whether the query phase sends a single request per data node that partially reduces the results of the node's shards,
+     * rather than one request per shard.
+     */
+    public static final Setting<Boolean> BATCHED_QUERY_PHASE_SETTING = Setting.boolSetting(
+            "action.search.batched_query_phase", false, Property.Dynamic, Property.NodeScope);
+
     private final ThreadPool threadPool;
     private final ClusterService clusterService;
     private final SearchTransportService searchTransportService;
@@ -206,6 +217,10 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 searchRequest.source(source);
             }
             final ClusterState clusterState = clusterService.state();
+            if (searchRequest.pointInTimeBuilder() != null) {
+                executePointInTimeSearch((SearchTask) task, timeProvider, searchRequest, clusterState, listener);
+                return;
+            }
             final Map<String, OriginalIndices> remoteClusterIndices = remoteClusterService.groupIndices(searchRequest.indicesOptions(),
                 searchRequest.indices());
             OriginalIndices localIndices = remoteClusterIndices.remove(RemoteClusterAware.LOCAL_CLUSTER_GROUP_KEY);
@@ -485,6 +500,8 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 concreteIndices, routingMap, searchRequest.preference(), searchService.getResponseCollectorService(), nodeSearchCounts);
         GroupShardsIterator<SearchShardIterator> shardIterators = mergeShardsIterators(localShardsIterator, localIndices,
             searchRequest.getLocalClusterAlias(), remoteShardIterators);
+        skipIndicesOutsideTimestampRange(shardIterators, searchRequest.getLocalClusterAlias(), IndexTimestampRangeFilter
+            .findIndicesToSkip(clusterState, searchRequest.source(), indices, timeProvider::getAbsoluteStartMillis));
 
         failIfOverShardCountLimit(clusterService, shardIterators.size());
 
@@ -518,6 +535,59 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             Collections.unmodifiableMap(aliasFilter), concreteIndexBoosts, routingMap, listener, preFilterSearchShards, clusters).start();
     }
 
+    /**
+     * Executes a search against a point in time. The shards to search and the reader context to use on each of them come from the
+     * point in time id rather than from resolving the indices of the request, so all pages of the search see the same documents.
+     */
+    private void executePointInTimeSearch(SearchTask task, SearchTimeProvider timeProvider, SearchRequest searchRequest,
+                                          ClusterState clusterState, ActionListener<SearchResponse> listener) {
+        clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.READ);
+        final PointInTimeBuilder pointInTime = searchRequest.pointInTimeBuilder();
+        final Map<ShardId, ScrollIdForNode> readers = TransportSearchHelper.parsePointInTimeId(pointInTime.getId());
+        final Map<String, AliasFilter> aliasFilter = new HashMap<>();
+        final List<SearchShardIterator> shards = new ArrayList<>(readers.size());
+        for (Map.Entry<ShardId, ScrollIdForNode> entry : readers.entrySet()) {
+            final ShardId shardId = entry.getKey();
+            final ScrollIdForNode reader = entry.getValue();
+            // the alias filter was resolved when the point in time was opened, the shard applies the one of its reader context
+            aliasFilter.put(shardId.getIndex().getUUID(), AliasFilter.EMPTY);
+            final OriginalIndices originalIndices =
+                new OriginalIndices(new String[] { shardId.getIndexName() }, searchRequest.indicesOptions());
+            shards.add(new SearchShardIterator(null, shardId, findShardCopy(clusterState, shardId, reader.getNode()), originalIndices,
+                reader.getContextId(), pointInTime.getKeepAlive()));
+        }
+        final GroupShardsIterator<SearchShardIterator> shardIterators = GroupShardsIterator.sortAndCreate(shards);
+        failIfOverShardCountLimit(clusterService, shardIterators.size());
+        if (shardIterators.size() == 1) {
+            searchRequest.searchType(QUERY_THEN_FETCH);
+        }
+        if (searchRequest.allowPartialSearchResults() == null) {
+            searchRequest.allowPartialSearchResults(searchService.defaultAllowPartialSearchResults());
+        }
+        final DiscoveryNodes nodes = clusterState.nodes();
+        BiFunction<String, String, Transport.Connection> connectionLookup = buildConnectionLookup(null, nodes::get,
+            (clusterAlias, nodeId) -> null, searchTransportService::getConnection);
+        searchAsyncAction(task, searchRequest, shardIterators, timeProvider, connectionLookup, clusterState,
+            Collections.unmodifiableMap(aliasFilter), resolveIndexBoosts(searchRequest, clusterState), Collections.emptyMap(), listener,
+            false, SearchResponse.Clusters.EMPTY).start();
+    }
+
+    /**
+     * Returns the active copy of the given shard on the node that holds the reader context of a point in time, or an empty list if
+     * that copy no longer exists, in which case the search fails on the shard.
+     */
+    private static List<ShardRouting> findShardCopy(ClusterState clusterState, ShardId shardId, String nodeId) {
+        final IndexRoutingTable indexRoutingTable = clusterState.routingTable().index(shardId.getIndex());
+        if (indexRoutingTable != null && indexRoutingTable.shard(shardId.id()) != null) {
+            for (ShardRouting shardRouting : indexRoutingTable.shard(shardId.id()).activeShards()) {
+                if (nodeId.equals(shardRouting.currentNodeId())) {
+                    return Collections.singletonList(shardRouting);
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
     static BiFunction<String, String, Transport.Connection> buildConnectionLookup(String requestClusterAlias,
                                                               Function<String, DiscoveryNode> localNodes,
                                                               BiFunction<String, String, DiscoveryNode> remoteNodes,
@@ -578,6 +648,34 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         return GroupShardsIterator.sortAndCreate(shards);
     }
 
+    /**
+     * Marks the shards of the provided indices as skipped, they are reported as skipped in the response without being hit.
+     * At least one shard is always left so that the response contains all the aggregations etc.
+     */
+    static void skipIndicesOutsideTimestampRange(GroupShardsIterator<SearchShardIterator> shardIterators,
+                                                 @Nullable String localClusterAlias, Set<Index> indicesToSkip) {
+        if (indicesToSkip.isEmpty()) {
+            return;
+        }
+        SearchShardIterator firstSkipped = null;
+        boolean hasRemainingShards = false;
+        for (SearchShardIterator shardIterator : shardIterators) {
+            if (Objects.equals(shardIterator.getClusterAlias(), localClusterAlias)
+                    && indicesToSkip.contains(shardIterator.shardId().getIndex())) {
+                if (firstSkipped == null) {
+                    firstSkipped = shardIterator;
+                    continue;
+                }
+                shardIterator.resetAndSkip();
+            } else {
+                hasRemainingShards = true;
+            }
+        }
+        if (hasRemainingShards && firstSkipped != null) {
+            firstSkipped.resetAndSkip();
+        }
+    }
+
     private AbstractSearchAsyncAction<? extends SearchPhaseResult> searchAsyncAction(SearchTask task, SearchRequest searchRequest,
                                                         GroupShardsIterator<SearchShardIterator> shardIterators,
                                                         SearchTimeProvider timeProvider,
@@ -625,7 +723,9 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 case QUERY_THEN_FETCH:
                     searchAsyncAction = new SearchQueryThenFetchAsyncAction(logger, searchTransportService, connectionLookup,
                         aliasFilter, concreteIndexBoosts, indexRoutings, searchPhaseController, executor, searchRequest, listener,
-                        shardIterators, timeProvider, clusterState, task, clusters);
+                        shardIterators, timeProvider, clusterState, task, clusters,
+                        clusterService.getClusterSettings().get(BATCHED_QUERY_PHASE_SETTING)
+                            && SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest, shardIterators, clusterState));
                     break;
                 default:
                     throw new IllegalStateException("Unknown search type: [" + searchRequest.searchType() + "]");
@@ -634,7 +734,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         }
     }
 
-    private static void failIfOverShardCountLimit(ClusterService clusterService, int shardCount) {
+    static void failIfOverShardCountLimit(ClusterService clusterService, int shardCount) {
         final long shardCountLimit = clusterService.getClusterSettings().get(SHARD_COUNT_LIMIT_SETTING);
         if (shardCount > shardCountLimit) {
             throw new IllegalArgumentException("Trying to query " + shardCount + " shards, which is over the limit of "
@@ -21,7 +21,12 @@ package org.elasticsearch.action.search;
 
 import org.apache.lucene.store.ByteArrayDataInput;
 import org.apache.lucene.store.RAMOutputStream;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
@@ -30,6 +35,7 @@ import org.elasticsearch.transport.RemoteClusterAware;
 
 import java.io.IOException;
 import java.util.Base64;
+import java.util.Map;
 
 final class TransportSearchHelper {
 
@@ -104,6 +110,38 @@ final class TransportSearchHelper {
         }
     }
 
+    /**
+     * Builds the id of a point in time from the reader context that was opened on each of its shards.
+     */
+    static String buildPointInTimeId(Map<ShardId, ScrollIdForNode> readers) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(Version.CURRENT);
+            Version.writeVersion(Version.CURRENT, out);
+            out.writeMap(readers, (o, shardId) -> shardId.writeTo(o), (o, reader) -> {
+                o.writeString(reader.getNode());
+                reader.getContextId().writeTo(o);
+            });
+            return Base64.getUrlEncoder().encodeToString(BytesReference.toBytes(out.bytes()));
+        }
+    }
+
+    static Map<ShardId, ScrollIdForNode> parsePointInTimeId(String pointInTimeId) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(pointInTimeId);
+            try (StreamInput in = StreamInput.wrap(bytes)) {
+                in.setVersion(Version.readVersion(in));
+                final Map<ShardId, ScrollIdForNode> readers = in.readMap(ShardId::new,
+                    i -> new ScrollIdForNode(null, i.readString(), new SearchContextId(i)));
+                if (in.available() > 0) {
+                    throw new IllegalArgumentException("Not all bytes were read");
+                }
+                return readers;
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse point in time id", e);
+        }
+    }
+
     private TransportSearchHelper() {
 
     }
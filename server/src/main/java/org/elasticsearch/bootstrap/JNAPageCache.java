@@ -0,0 +1,186 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.bootstrap;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.Constants;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * java mapping to the libc functions used to advise the kernel about file access patterns and to inspect the page cache. These
+ * are only linked on 64 bits Linux, where {@code size_t} and {@code off_t} map to java longs.
+ */
+final class JNAPageCache {
+
+    private static final Logger logger = LogManager.getLogger(JNAPageCache.class);
+
+    static final int MADV_NORMAL = 0;
+    static final int MADV_RANDOM = 1;
+    static final int MADV_SEQUENTIAL = 2;
+
+    private static final int POSIX_FADV_DONTNEED = 4;
+    private static final int O_RDONLY = 0;
+    private static final int PROT_READ = 1;
+    private static final int MAP_SHARED = 1;
+
+    /** number of pages whose residency is checked by a single call to mincore */
+    private static final int MINCORE_WINDOW = 1 << 16;
+
+    static final boolean LINKED;
+    static final int PAGE_SIZE;
+
+    static {
+        boolean linked = false;
+        int pageSize = 4096;
+        if (Constants.LINUX && Constants.JRE_IS_64BIT) {
+            try {
+                Native.register("c");
+                pageSize = getpagesize();
+                linked = true;
+            } catch (UnsatisfiedLinkError e) {
+                logger.warn("unable to link C library. page cache hints and statistics will be disabled.", e);
+            }
+        }
+        LINKED = linked;
+        PAGE_SIZE = pageSize;
+    }
+
+    static native int getpagesize();
+
+    static native int madvise(Pointer addr, long length, int advice);
+
+    static native int mincore(Pointer addr, long length, byte[] vec);
+
+    static native Pointer mmap(Pointer addr, long length, int prot, int flags, int fd, long offset);
+
+    static native int munmap(Pointer addr, long length);
+
+    static native int posix_fadvise(int fd, long offset, long length, int advice);
+
+    static native int open(String path, int flags);
+
+    static native int close(int fd);
+
+    static native String strerror(int errno);
+
+    private JNAPageCache() {
+    }
+
+    static boolean madvise(ByteBuffer buffer, int advice) {
+        if (buffer.isDirect() == false || buffer.capacity() == 0) {
+            return false;
+        }
+        // madvise requires a page-aligned address, buffers of slices usually start in the middle of a page
+        final long address = Pointer.nativeValue(Native.getDirectBufferPointer(buffer));
+        final long alignedAddress = address & -PAGE_SIZE;
+        final int result = madvise(new Pointer(alignedAddress), buffer.capacity() + address - alignedAddress, advice);
+        if (result != 0) {
+            logger.trace("madvise failed: {}", strerror(Native.getLastError()));
+            return false;
+        }
+        return true;
+    }
+
+    static FixedBitSet residentPages(Path file) throws IOException {
+        final long length = Files.size(file);
+        final int numPages = Math.toIntExact((length + PAGE_SIZE - 1) / PAGE_SIZE);
+        final FixedBitSet resident = new FixedBitSet(numPages);
+        if (numPages == 0) {
+            return resident;
+        }
+        final int fd = open(file, "mincore");
+        try {
+            final Pointer addr = mmap(null, length, PROT_READ, MAP_SHARED, fd, 0);
+            if (Pointer.nativeValue(addr) == -1) {
+                throw new IOException("unable to map [" + file + "] for mincore: " + strerror(Native.getLastError()));
+            }
+            try {
+                final byte[] vec = new byte[Math.min(numPages, MINCORE_WINDOW)];
+                for (int page = 0; page < numPages; page += MINCORE_WINDOW) {
+                    final int count = Math.min(MINCORE_WINDOW, numPages - page);
+                    if (mincore(addr.share((long) page * PAGE_SIZE), (long) count * PAGE_SIZE, vec) != 0) {
+                        throw new IOException("mincore failed for [" + file + "]: " + strerror(Native.getLastError()));
+                    }
+                    for (int i = 0; i < count; i++) {
+                        if ((vec[i] & 1) != 0) {
+                            resident.set(page + i);
+                        }
+                    }
+                }
+            } finally {
+                munmap(addr, length);
+            }
+        } finally {
+            close(fd);
+        }
+        return resident;
+    }
+
+    static void evict(Path file, FixedBitSet keep) throws IOException {
+        final int fd = open(file, "posix_fadvise");
+        try {
+            final int numPages = keep.length();
+            int page = 0;
+            while (page < numPages) {
+                // pages that were resident before are left in the page cache
+                while (page < numPages && keep.get(page)) {
+                    page++;
+                }
+                int end = page;
+                while (end < numPages && keep.get(end) == false) {
+                    end++;
+                }
+                if (end > page) {
+                    fadviseDontNeed(fd, file, (long) page * PAGE_SIZE, (long) (end - page) * PAGE_SIZE);
+                }
+                page = end;
+            }
+            // the file may have grown since its residency was sampled, a length of 0 means up to the end of the file
+            fadviseDontNeed(fd, file, (long) keep.length() * PAGE_SIZE, 0L);
+        } finally {
+            close(fd);
+        }
+    }
+
+    private static void fadviseDontNeed(int fd, Path file, long offset, long length) throws IOException {
+        // posix_fadvise returns the error number rather than setting errno
+        final int result = posix_fadvise(fd, offset, length, POSIX_FADV_DONTNEED);
+        if (result != 0) {
+            throw new IOException("posix_fadvise failed for [" + file + "]: " + strerror(result));
+        }
+    }
+
+    private static int open(Path file, String operation) throws IOException {
+        final int fd = open(file.toString(), O_RDONLY);
+        if (fd < 0) {
+            throw new IOException("unable to open [" + file + "] for " + operation + ": " + strerror(Native.getLastError()));
+        }
+        return fd;
+    }
+}
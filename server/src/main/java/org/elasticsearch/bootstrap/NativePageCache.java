@@ -0,0 +1,105 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.bootstrap;
+
+import org.apache.lucene.util.Constants;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Gives the kernel hints about how files are going to be accessed and inspects which of their pages are in the page cache.
+ * Only supported on 64 bits Linux with JNA available, see {@link #isAvailable()}.
+ */
+public final class NativePageCache {
+
+    /** no instantiation */
+    private NativePageCache() {}
+
+    private static final boolean AVAILABLE =
+        Natives.JNA_AVAILABLE && Constants.LINUX && Constants.JRE_IS_64BIT && JNAPageCache.LINKED;
+
+    /**
+     * The expected access pattern of a memory-mapped region, see {@code madvise(2)}.
+     */
+    public enum Advice {
+        NORMAL,
+        RANDOM,
+        SEQUENTIAL
+    }
+
+    /**
+     * Returns true if hints and page cache statistics are supported on this system.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Returns the size of a page of the page cache, in bytes.
+     */
+    public static int pageSize() {
+        ensureAvailable();
+        return JNAPageCache.PAGE_SIZE;
+    }
+
+    /**
+     * Advises the kernel about the access pattern of the memory-mapped region backing the given direct buffer.
+     *
+     * @return whether the advice was applied
+     */
+    public static boolean advise(ByteBuffer buffer, Advice advice) {
+        ensureAvailable();
+        switch (advice) {
+            case NORMAL:
+                return JNAPageCache.madvise(buffer, JNAPageCache.MADV_NORMAL);
+            case RANDOM:
+                return JNAPageCache.madvise(buffer, JNAPageCache.MADV_RANDOM);
+            case SEQUENTIAL:
+                return JNAPageCache.madvise(buffer, JNAPageCache.MADV_SEQUENTIAL);
+            default:
+                throw new AssertionError("unknown advice [" + advice + "]");
+        }
+    }
+
+    /**
+     * Returns the pages of the given file that are currently in the page cache. This doesn't read the file.
+     */
+    public static FixedBitSet residentPages(Path file) throws IOException {
+        ensureAvailable();
+        return JNAPageCache.residentPages(file);
+    }
+
+    /**
+     * Drops the pages of the given file from the page cache, except for the pages that are set in {@code keep}.
+     */
+    public static void evict(Path file, FixedBitSet keep) throws IOException {
+        ensureAvailable();
+        JNAPageCache.evict(file, keep);
+    }
+
+    private static void ensureAvailable() {
+        if (AVAILABLE == false) {
+            throw new UnsupportedOperationException("page cache hints are only supported on 64 bits Linux with native access");
+        }
+    }
+}
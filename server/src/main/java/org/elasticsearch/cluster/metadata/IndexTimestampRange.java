@@ -0,0 +1,198 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster.metadata;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The min and max values of the timestamp field of an index, see
+ * {@link org.elasticsearch.index.IndexSettings#INDEX_SEARCH_TIMESTAMP_FIELD_SETTING}. The range is recorded in the custom
+ * data of the {@link IndexMetadata} under {@link #CUSTOM_KEY} once the index is blocked for writes. It remembers the
+ * settings and mapping versions of the index at the time it was computed: since adding or removing a write block bumps the
+ * settings version, a range is only trusted while the index is still blocked for writes and neither its settings nor its
+ * mapping changed.
+ */
+public final class IndexTimestampRange {
+
+    public static final String CUSTOM_KEY = "timestamp_range";
+
+    private static final String FIELD = "field";
+    private static final String FORMAT = "format";
+    private static final String MIN = "min";
+    private static final String MAX = "max";
+    private static final String SETTINGS_VERSION = "settings_version";
+    private static final String MAPPING_VERSION = "mapping_version";
+
+    private final String field;
+    @Nullable
+    private final String format;
+    private final long min;
+    private final long max;
+    private final long settingsVersion;
+    private final long mappingVersion;
+
+    /**
+     * @param field the name of the timestamp field
+     * @param format the date format of the field or <code>null</code> if the field uses the default format
+     * @param min the minimum value of the field in milliseconds since the epoch
+     * @param max the maximum value of the field in milliseconds since the epoch, a range whose max is lower than its min
+     *            means that the index has no value for the field
+     * @param settingsVersion the settings version of the index when the range was computed
+     * @param mappingVersion the mapping version of the index when the range was computed
+     */
+    public IndexTimestampRange(String field, @Nullable String format, long min, long max, long settingsVersion, long mappingVersion) {
+        this.field = Objects.requireNonNull(field);
+        this.format = format;
+        this.min = min;
+        this.max = max;
+        this.settingsVersion = settingsVersion;
+        this.mappingVersion = mappingVersion;
+    }
+
+    /**
+     * Returns an empty range, for indices that have no value for the timestamp field.
+     */
+    public static IndexTimestampRange empty(String field, @Nullable String format, long settingsVersion, long mappingVersion) {
+        return new IndexTimestampRange(field, format, Long.MAX_VALUE, Long.MIN_VALUE, settingsVersion, mappingVersion);
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    @Nullable
+    public String getFormat() {
+        return format;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getSettingsVersion() {
+        return settingsVersion;
+    }
+
+    public long getMappingVersion() {
+        return mappingVersion;
+    }
+
+    /**
+     * Returns <code>true</code> if the index has no value for the timestamp field.
+     */
+    public boolean isEmpty() {
+        return min > max;
+    }
+
+    /**
+     * Returns <code>true</code> if the provided inclusive range of milliseconds since the epoch intersects with this range.
+     */
+    public boolean intersects(long from, long to) {
+        return from <= max && to >= min;
+    }
+
+    /**
+     * Returns <code>true</code> if this range still describes the provided index, that is if the index is blocked for writes
+     * and neither its settings nor its mapping changed since the range was computed.
+     */
+    public boolean isCurrent(IndexMetadata indexMetadata) {
+        return settingsVersion == indexMetadata.getSettingsVersion() && mappingVersion == indexMetadata.getMappingVersion()
+            && isWriteBlocked(indexMetadata);
+    }
+
+    /**
+     * Returns <code>true</code> if the provided index is open and blocked for writes by one of its settings. Global blocks are
+     * not taken into account since they can be lifted without changing the settings version of the index.
+     */
+    public static boolean isWriteBlocked(IndexMetadata indexMetadata) {
+        final Settings settings = indexMetadata.getSettings();
+        return indexMetadata.getState() == IndexMetadata.State.OPEN
+            && (IndexMetadata.INDEX_BLOCKS_WRITE_SETTING.get(settings)
+                || IndexMetadata.INDEX_READ_ONLY_SETTING.get(settings)
+                || IndexMetadata.INDEX_BLOCKS_READ_ONLY_ALLOW_DELETE_SETTING.get(settings));
+    }
+
+    public Map<String, String> toCustomData() {
+        final Map<String, String> customData = new HashMap<>();
+        customData.put(FIELD, field);
+        if (format != null) {
+            customData.put(FORMAT, format);
+        }
+        customData.put(MIN, Long.toString(min));
+        customData.put(MAX, Long.toString(max));
+        customData.put(SETTINGS_VERSION, Long.toString(settingsVersion));
+        customData.put(MAPPING_VERSION, Long.toString(mappingVersion));
+        return customData;
+    }
+
+    /**
+     * Returns the range recorded in the provided index metadata or <code>null</code> if there is none. The returned range
+     * might be stale, see {@link #isCurrent(IndexMetadata)}.
+     */
+    @Nullable
+    public static IndexTimestampRange fromIndexMetadata(IndexMetadata indexMetadata) {
+        final Map<String, String> customData = indexMetadata.getCustomData(CUSTOM_KEY);
+        if (customData == null) {
+            return null;
+        }
+        // ranges that were recorded without a mapping version are never current, so they get computed again
+        final String mappingVersion = customData.get(MAPPING_VERSION);
+        return new IndexTimestampRange(customData.get(FIELD), customData.get(FORMAT), Long.parseLong(customData.get(MIN)),
+            Long.parseLong(customData.get(MAX)), Long.parseLong(customData.get(SETTINGS_VERSION)),
+            mappingVersion == null ? -1L : Long.parseLong(mappingVersion));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        IndexTimestampRange that = (IndexTimestampRange) o;
+        return min == that.min &&
+            max == that.max &&
+            settingsVersion == that.settingsVersion &&
+            mappingVersion == that.mappingVersion &&
+            field.equals(that.field) &&
+            Objects.equals(format, that.format);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, format, min, max, settingsVersion, mappingVersion);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexTimestampRange{field=" + field + ", format=" + format + ", min=" + min + ", max=" + max
+            + ", settingsVersion=" + settingsVersion + ", mappingVersion=" + mappingVersion + "}";
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster.metadata;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.readonly.TransportVerifyShardWriteBlockAction;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.GroupedActionListener;
+import org.elasticsearch.action.support.replication.ReplicationResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.ClusterStateUpdateTask;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.gateway.GatewayService;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.Max;
+import org.elasticsearch.search.aggregations.metrics.Min;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the {@link IndexTimestampRange} of the indices that have a timestamp field configured once they are blocked for
+ * writes, typically after they have been rolled over and made read-only, and removes it when the write block is lifted.
+ * The range is computed by the elected master with a search that aggregates the min and max values of the timestamp field,
+ * once the writes that got past the block before it was applied completed on all the shard copies and were refreshed.
+ */
+public class IndexTimestampRangeService implements ClusterStateListener {
+
+    private static final Logger logger = LogManager.getLogger(IndexTimestampRangeService.class);
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+
+    // indices whose range is being computed or removed
+    private final Set<Index> pendingIndices = ConcurrentCollections.newConcurrentSet();
+    // the settings and mapping versions of the indices whose range could not be computed, these are not retried until their
+    // settings or mapping change
+    private final Map<Index, Tuple<Long, Long>> failedIndices = ConcurrentCollections.newConcurrentMap();
+
+    public IndexTimestampRangeService(Client client, ClusterService clusterService, ThreadPool threadPool) {
+        this.client = client;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        clusterService.addListener(this);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        final ClusterState state = event.state();
+        if (state.blocks().hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK)) {
+            return;
+        }
+        if (event.localNodeMaster() == false) {
+            failedIndices.clear();
+            return;
+        }
+        if (event.metadataChanged() == false) {
+            return;
+        }
+        failedIndices.keySet().removeIf(index -> state.metadata().index(index) == null);
+
+        final List<Index> staleIndices = new ArrayList<>();
+        for (IndexMetadata indexMetadata : state.metadata()) {
+            final Index index = indexMetadata.getIndex();
+            final String field = IndexSettings.INDEX_SEARCH_TIMESTAMP_FIELD_SETTING.get(indexMetadata.getSettings());
+            final IndexTimestampRange range = IndexTimestampRange.fromIndexMetadata(indexMetadata);
+            if (field.isEmpty() || IndexTimestampRange.isWriteBlocked(indexMetadata) == false) {
+                if (range != null && pendingIndices.add(index)) {
+                    staleIndices.add(index);
+                }
+            } else if (range == null || range.isCurrent(indexMetadata) == false) {
+                final Tuple<Long, Long> failedVersions = failedIndices.get(index);
+                if ((failedVersions == null || failedVersions.v1() != indexMetadata.getSettingsVersion()
+                        || failedVersions.v2() != indexMetadata.getMappingVersion()) && pendingIndices.add(index)) {
+                    computeRange(indexMetadata, field);
+                }
+            }
+        }
+        if (staleIndices.isEmpty() == false) {
+            removeRanges(staleIndices);
+        }
+    }
+
+    private void computeRange(IndexMetadata indexMetadata, String field) {
+        final Index index = indexMetadata.getIndex();
+        final long settingsVersion = indexMetadata.getSettingsVersion();
+        final long mappingVersion = indexMetadata.getMappingVersion();
+        final Map<String, Object> fieldMapping;
+        try {
+            fieldMapping = findFieldMapping(indexMetadata.mapping() == null ? null : indexMetadata.mapping().sourceAsMap(), field);
+        } catch (Exception e) {
+            onComputeFailure(index, settingsVersion, mappingVersion, e);
+            return;
+        }
+        final String format;
+        if (fieldMapping == null) {
+            // the field is not mapped so the index has no value for it
+            format = null;
+        } else if (DateFieldMapper.CONTENT_TYPE.equals(fieldMapping.get("type")) && fieldMapping.containsKey("locale") == false) {
+            format = (String) fieldMapping.get("format");
+        } else {
+            onComputeFailure(index, settingsVersion, mappingVersion, new IllegalArgumentException("timestamp field [" + field
+                + "] of index [" + index.getName() + "] must be a [" + DateFieldMapper.CONTENT_TYPE + "] field with the default locale"));
+            return;
+        }
+
+        final IndexRoutingTable indexRoutingTable = clusterService.state().routingTable().index(index);
+        if (indexRoutingTable == null) {
+            onComputeFailure(index, settingsVersion, mappingVersion, new IndexNotFoundException(index));
+            return;
+        }
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        try (ThreadContext.StoredContext ignore = threadContext.stashContext()) {
+            threadContext.markAsSystemContext();
+            final ActionListener<Collection<ReplicationResponse>> onWritesDrained = ActionListener.wrap(responses -> {
+                final SearchRequest searchRequest = new SearchRequest(index.getName())
+                    .allowPartialSearchResults(false)
+                    .requestCache(false)
+                    .source(new SearchSourceBuilder()
+                        .size(0)
+                        .trackTotalHits(false)
+                        .aggregation(AggregationBuilders.min("min").field(field))
+                        .aggregation(AggregationBuilders.max("max").field(field)));
+                client.search(searchRequest, ActionListener.wrap(searchResponse -> {
+                    final IndexTimestampRange range = toRange(searchResponse, field, format, settingsVersion, mappingVersion);
+                    recordRange(index, range);
+                }, e -> onComputeFailure(index, settingsVersion, mappingVersion, e)));
+            }, e -> onComputeFailure(index, settingsVersion, mappingVersion, e));
+            // writes that got past the write block before it was applied might still be in flight, they must be visible to the search
+            final GroupedActionListener<ReplicationResponse> listener =
+                new GroupedActionListener<>(onWritesDrained, indexRoutingTable.shards().size());
+            threadPool.generic().execute(() -> {
+                for (IndexShardRoutingTable shardRoutingTable : indexRoutingTable) {
+                    client.execute(TransportVerifyShardWriteBlockAction.TYPE,
+                        new TransportVerifyShardWriteBlockAction.ShardRequest(shardRoutingTable.shardId()), listener);
+                }
+            });
+        }
+    }
+
+    private static IndexTimestampRange toRange(SearchResponse searchResponse, String field, @Nullable String format,
+                                               long settingsVersion, long mappingVersion) {
+        if (searchResponse.getFailedShards() > 0 || searchResponse.getSuccessfulShards() != searchResponse.getTotalShards()) {
+            throw new ElasticsearchException("failed to compute the timestamp range, [{}] out of [{}] shards were searched",
+                searchResponse.getSuccessfulShards(), searchResponse.getTotalShards());
+        }
+        final double min = ((Min) searchResponse.getAggregations().get("min")).getValue();
+        final double max = ((Max) searchResponse.getAggregations().get("max")).getValue();
+        if (Double.isInfinite(min) || Double.isInfinite(max)) {
+            return IndexTimestampRange.empty(field, format, settingsVersion, mappingVersion);
+        }
+        return new IndexTimestampRange(field, format, (long) min, (long) max, settingsVersion, mappingVersion);
+    }
+
+    private void recordRange(Index index, IndexTimestampRange range) {
+        clusterService.submitStateUpdateTask("record-timestamp-range [" + index.getName() + "]", new ClusterStateUpdateTask() {
+            @Override
+            public ClusterState execute(ClusterState currentState) {
+                final IndexMetadata indexMetadata = currentState.metadata().index(index);
+                if (indexMetadata == null || range.isCurrent(indexMetadata) == false) {
+                    // the index was deleted or its settings or mapping changed in the meantime, the range will be computed again if needed
+                    return currentState;
+                }
+                return ClusterState.builder(currentState)
+                    .metadata(Metadata.builder(currentState.metadata())
+                        .put(IndexMetadata.builder(indexMetadata).putCustom(IndexTimestampRange.CUSTOM_KEY, range.toCustomData())))
+                    .build();
+            }
+
+            @Override
+            public void onFailure(String source, Exception e) {
+                pendingIndices.remove(index);
+                logger.debug(() -> new ParameterizedMessage("failed to record the timestamp range of index [{}]", index), e);
+            }
+
+            @Override
+            public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
+                pendingIndices.remove(index);
+            }
+        });
+    }
+
+    private void onComputeFailure(Index index, long settingsVersion, long mappingVersion, Exception e) {
+        logger.debug(() -> new ParameterizedMessage("failed to compute the timestamp range of index [{}]", index), e);
+        failedIndices.put(index, Tuple.tuple(settingsVersion, mappingVersion));
+        pendingIndices.remove(index);
+    }
+
+    private void removeRanges(List<Index> indices) {
+        clusterService.submitStateUpdateTask("remove-timestamp-ranges " + indices, new ClusterStateUpdateTask() {
+            @Override
+            public ClusterState execute(ClusterState currentState) {
+                Metadata.Builder metadata = null;
+                for (Index index : indices) {
+                    final IndexMetadata indexMetadata = currentState.metadata().index(index);
+                    if (indexMetadata != null && indexMetadata.getCustomData(IndexTimestampRange.CUSTOM_KEY) != null
+                            && IndexTimestampRange.isWriteBlocked(indexMetadata) == false) {
+                        if (metadata == null) {
+                            metadata = Metadata.builder(currentState.metadata());
+                        }
+                        final IndexMetadata.Builder builder = IndexMetadata.builder(indexMetadata);
+                        builder.removeCustom(IndexTimestampRange.CUSTOM_KEY);
+                        metadata.put(builder);
+                    }
+                }
+                return metadata == null ? currentState : ClusterState.builder(currentState).metadata(metadata).build();
+            }
+
+            @Override
+            public void onFailure(String source, Exception e) {
+                pendingIndices.removeAll(indices);
+                logger.debug(() -> new ParameterizedMessage("failed to remove the timestamp ranges of indices {}", indices), e);
+            }
+
+            @Override
+            public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
+                pendingIndices.removeAll(indices);
+            }
+        });
+    }
+
+    /**
+     * Returns the mapping of the provided field in the provided index mapping or <code>null</code> if the field is not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    static Map<String, Object> findFieldMapping(@Nullable Map<String, Object> mapping, String field) {
+        Map<String, Object> current = mapping;
+        for (String part : field.split("\\.")) {
+            if (current == null || current.get("properties") instanceof Map == false) {
+                return null;
+            }
+            final Object child = ((Map<String, Object>) current.get("properties")).get(part);
+            current = child instanceof Map ? (Map<String, Object>) child : null;
+        }
+        return current;
+    }
+}
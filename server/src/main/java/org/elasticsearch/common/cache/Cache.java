@@ -20,6 +20,7 @@
 package org.elasticsearch.common.cache;
 
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.util.concurrent.ReleasableLock;
 
 import java.util.Arrays;
@@ -27,8 +28,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -52,17 +58,16 @@ import java.util.function.ToLongBiFunction;
  * if they are reading a segment that a writer is writing to).
  * <p>
  * The LRU functionality is backed by a single doubly-linked list chaining the entries in order of insertion. This
- * LRU list is protected by a lock that serializes all writes to it. There are opportunities for improvements
- * here if write throughput is a concern.
- * <ol>
- * <li>LRU list mutations could be inserted into a blocking queue that a single thread is reading from
- * and applying to the LRU list.</li>
- * <li>Promotions could be deferred for entries that were "recently" promoted.</li>
- * <li>Locks on the list could be taken per node being modified instead of globally.</li>
- * </ol>
+ * LRU list is protected by a lock that serializes all mutations to it, but neither reads nor writes wait for this lock.
+ * Reads record the entries to promote in striped, lossy read buffers, and writes queue their mutations in a write
+ * buffer. Whichever thread holds the lock applies the buffered mutations in batches: writes are applied in order,
+ * and promotions may be dropped when a read buffer is full, so the LRU order is approximate under contention. A
+ * thread applies a bounded batch of writes and leaves the rest to the next thread that gets the lock, and writers
+ * wait for the lock rather than buffer more writes once the write buffer is full.
+ * Invalidations still apply their mutations under the lock before returning.
  * <p>
- * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
- * invalidation) or an explicit call to {@link #refresh()}.
+ * Evictions only occur after the buffered mutations are applied, which happens after enough reads, after every
+ * write or invalidation, or on an explicit call to {@link #refresh()}.
  *
  * @param <K> The type of the keys
  * @param <V> The type of the values
@@ -316,6 +321,30 @@ public class Cache<K, V> {
             }
         }
 
+        /**
+         * remove the given entry from the segment iff the segment still maps its key to it
+         *
+         * @param entry the entry to remove from the cache
+         */
+        void remove(Entry<K, V> entry) {
+            boolean removed = false;
+            try (ReleasableLock ignored = writeLock.acquire()) {
+                CompletableFuture<Entry<K, V>> future = map.get(entry.key);
+                try {
+                    // compares entries rather than values, a newer entry with an equal value might have replaced the given one
+                    if (future != null && future.isDone() && future.isCompletedExceptionally() == false && future.get() == entry) {
+                        removed = map.remove(entry.key, future);
+                    }
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            if (removed) {
+                segmentStats.eviction();
+            }
+        }
+
         private static class SegmentStats {
             private final LongAdder hits = new LongAdder();
             private final LongAdder misses = new LongAdder();
@@ -349,7 +378,191 @@ public class Cache<K, V> {
     Entry<K, V> tail;
 
     // lock protecting mutations to the LRU list
-    private final ReleasableLock lruLock = new ReleasableLock(new ReentrantLock());
+    private final ReentrantLock lruLock = new ReentrantLock();
+
+    // true while the buffered mutations are applied, guarded by the LRU lock
+    private boolean draining;
+
+    // the mutations of the LRU list by writes that are not applied yet
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+
+    // the number of mutations in the write buffer, which is not exact while writers race with the thread that drains it
+    private final AtomicInteger bufferedWrites = new AtomicInteger();
+
+    // the number of buffered writes above which writers wait for the LRU lock and apply them rather than buffering more
+    static final int WRITE_BUFFER_SIZE = 1024;
+
+    // the maximum number of buffered writes that a thread applies when it happens to get the LRU lock on a read or write, the
+    // remaining ones are left to the next thread that gets the lock
+    static final int WRITE_DRAIN_BATCH_SIZE = 256;
+
+    static final int NUMBER_OF_READ_BUFFERS = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    // the entries to promote in the LRU list per stripe of reading threads, created on first use
+    private final AtomicReferenceArray<ReadBuffer<K, V>> readBuffers = new AtomicReferenceArray<>(NUMBER_OF_READ_BUFFERS);
+
+    /**
+     * A ring buffer of the entries that were read by a stripe of threads and still need to be promoted in the LRU list. Readers
+     * append to it without locking, and it is drained under the LRU lock. Reads are dropped rather than waited for when the
+     * buffer is full or when readers of the same stripe append concurrently.
+     */
+    static final class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+        static final int MASK = SIZE - 1;
+        // the number of buffered reads after which readers try to drain the buffers
+        static final int DRAIN_THRESHOLD = SIZE / 2;
+
+        private final AtomicReferenceArray<Entry<K, V>> entries = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        // only written under the LRU lock
+        private volatile long reads;
+
+        /**
+         * Records a read of the given entry.
+         *
+         * @return whether the buffer should be drained
+         */
+        boolean offer(Entry<K, V> entry) {
+            final long head = reads;
+            final long tail = writes.get();
+            final long size = tail - head;
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writes.compareAndSet(tail, tail + 1)) {
+                entries.lazySet((int) (tail & MASK), entry);
+                return size + 1 >= DRAIN_THRESHOLD;
+            }
+            return false;
+        }
+
+        void drain(Consumer<Entry<K, V>> consumer) {
+            long head = reads;
+            final long tail = writes.get();
+            for (; head < tail; head++) {
+                final int index = (int) (head & MASK);
+                final Entry<K, V> entry = entries.get(index);
+                if (entry == null) {
+                    // the reader that claimed this slot has not published its entry yet
+                    break;
+                }
+                entries.lazySet(index, null);
+                consumer.accept(entry);
+            }
+            reads = head;
+        }
+    }
+
+    private void afterRead(Entry<K, V> entry) {
+        final int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & (NUMBER_OF_READ_BUFFERS - 1);
+        ReadBuffer<K, V> buffer = readBuffers.get(stripe);
+        if (buffer == null) {
+            readBuffers.compareAndSet(stripe, null, new ReadBuffer<>());
+            buffer = readBuffers.get(stripe);
+        }
+        if (buffer.offer(entry)) {
+            tryDrainBuffers(now());
+        }
+    }
+
+    private void afterWrite(Runnable mutation, long now) {
+        writeBuffer.add(mutation);
+        if (bufferedWrites.incrementAndGet() > WRITE_BUFFER_SIZE && lruLock.isHeldByCurrentThread() == false) {
+            // the writes are buffered faster than they are applied, wait for the lock so that the buffer can't grow without bounds
+            lruLock.lock();
+            try {
+                drainBuffers(now, WRITE_DRAIN_BATCH_SIZE);
+            } finally {
+                lruLock.unlock();
+            }
+        } else {
+            tryDrainBuffers(now);
+        }
+    }
+
+    /**
+     * Applies up to {@link #WRITE_DRAIN_BATCH_SIZE} buffered writes if the LRU lock is free, otherwise leaves them to the thread
+     * that holds it.
+     */
+    private void tryDrainBuffers(long now) {
+        if (lruLock.isHeldByCurrentThread()) {
+            // the buffers are drained when this thread releases the lock
+            return;
+        }
+        int remaining = WRITE_DRAIN_BATCH_SIZE;
+        do {
+            if (lruLock.tryLock() == false) {
+                return;
+            }
+            try {
+                remaining -= drainBuffers(now, remaining);
+            } finally {
+                lruLock.unlock();
+            }
+            // a write might have been buffered after the buffers were drained but before the lock was released
+        } while (remaining > 0 && writeBuffer.isEmpty() == false);
+    }
+
+    /**
+     * Applies the buffered reads and up to the given number of buffered writes, then evicts.
+     *
+     * @return the number of buffered writes that were applied
+     */
+    private int drainBuffers(long now, int maxWrites) {
+        assert lruLock.isHeldByCurrentThread();
+
+        if (draining) {
+            return 0;
+        }
+        draining = true;
+        int applied = 0;
+        try {
+            do {
+                // reads are applied first as the buffered writes happened after most of them
+                for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
+                    final ReadBuffer<K, V> buffer = readBuffers.get(i);
+                    if (buffer != null) {
+                        buffer.drain(entry -> {
+                            if (entry.state == State.EXISTING) {
+                                relinkAtHead(entry);
+                            }
+                        });
+                    }
+                }
+                Runnable mutation;
+                while (applied < maxWrites && (mutation = writeBuffer.poll()) != null) {
+                    bufferedWrites.decrementAndGet();
+                    applied++;
+                    mutation.run();
+                }
+                evict(now);
+                // removal listeners might have written to the cache
+            } while (applied < maxWrites && writeBuffer.isEmpty() == false);
+        } finally {
+            draining = false;
+        }
+        return applied;
+    }
+
+    /**
+     * Acquires the LRU lock and applies the mutations that were buffered before it got the lock, but not the ones that concurrent
+     * writers keep buffering. Releasing the lock applies the writes that were buffered while it was held.
+     */
+    private Releasable acquireLruLock(long now) {
+        lruLock.lock();
+        try {
+            drainBuffers(now, bufferedWrites.get());
+        } catch (RuntimeException e) {
+            lruLock.unlock();
+            throw e;
+        }
+        return () -> {
+            lruLock.unlock();
+            if (writeBuffer.isEmpty() == false) {
+                tryDrainBuffers(now());
+            }
+        };
+    }
 
     /**
      * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
@@ -367,7 +580,7 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            afterRead(entry);
             return entry.value;
         }
     }
@@ -390,7 +603,7 @@ public class Cache<K, V> {
         long now = now();
         // we have to eagerly evict expired entries or our putIfAbsent call below will fail
         V value = get(key, now, e -> {
-            try (ReleasableLock ignored = lruLock.acquire()) {
+            try (Releasable ignored = acquireLruLock(now)) {
                 evictEntry(e);
             }
         });
@@ -410,9 +623,7 @@ public class Cache<K, V> {
 
             BiFunction<? super Entry<K, V>, Throwable, ? extends V> handler = (ok, ex) -> {
                 if (ok != null) {
-                    try (ReleasableLock ignored = lruLock.acquire()) {
-                        promote(ok, now);
-                    }
+                    afterWrite(() -> promote(ok), now);
                     return ok.value;
                 } else {
                     try (ReleasableLock ignored = segment.writeLock.acquire()) {
@@ -476,25 +687,20 @@ public class Cache<K, V> {
     private void put(K key, V value, long now) {
         CacheSegment<K, V> segment = getCacheSegment(key);
         Tuple<Entry<K, V>, Entry<K, V>> tuple = segment.put(key, value, now);
-        boolean replaced = false;
-        try (ReleasableLock ignored = lruLock.acquire()) {
-            if (tuple.v2() != null && tuple.v2().state == State.EXISTING) {
-                if (unlink(tuple.v2())) {
-                    replaced = true;
-                }
+        afterWrite(() -> {
+            if (tuple.v2() != null && discard(tuple.v2())) {
+                removalListener.onRemoval(new RemovalNotification<>(tuple.v2().key, tuple.v2().value,
+                    RemovalNotification.RemovalReason.REPLACED));
             }
-            promote(tuple.v1(), now);
-        }
-        if (replaced) {
-            removalListener.onRemoval(new RemovalNotification<>(tuple.v2().key, tuple.v2().value,
-                RemovalNotification.RemovalReason.REPLACED));
-        }
+            // does not link the entry if it was replaced or invalidated already
+            promote(tuple.v1());
+        }, now);
     }
 
     private final Consumer<CompletableFuture<Entry<K, V>>> invalidationConsumer = f -> {
         try {
             Entry<K, V> entry = f.get();
-            try (ReleasableLock ignored = lruLock.acquire()) {
+            try (Releasable ignored = acquireLruLock(now())) {
                 delete(entry, RemovalNotification.RemovalReason.INVALIDATED);
             }
         } catch (ExecutionException e) {
@@ -541,7 +747,7 @@ public class Cache<K, V> {
                 segments[i].segmentLock.writeLock().lock();
                 haveSegmentLock[i] = true;
             }
-            try (ReleasableLock ignored = lruLock.acquire()) {
+            try (Releasable ignored = acquireLruLock(now())) {
                 h = head;
                 Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
                 Entry<K, V> current = head;
@@ -571,7 +777,7 @@ public class Cache<K, V> {
      */
     public void refresh() {
         long now = now();
-        try (ReleasableLock ignored = lruLock.acquire()) {
+        try (Releasable ignored = acquireLruLock(now)) {
             evict(now);
         }
     }
@@ -676,8 +882,8 @@ public class Cache<K, V> {
             Entry<K, V> entry = current;
             if (entry != null) {
                 CacheSegment<K, V> segment = getCacheSegment(entry.key);
-                segment.remove(entry.key, entry.value, f -> {});
-                try (ReleasableLock ignored = lruLock.acquire()) {
+                segment.remove(entry);
+                try (Releasable ignored = acquireLruLock(now())) {
                     current = null;
                     delete(entry, RemovalNotification.RemovalReason.INVALIDATED);
                 }
@@ -727,25 +933,19 @@ public class Cache<K, V> {
         }
     }
 
-    private boolean promote(Entry<K, V> entry, long now) {
-        boolean promoted = true;
-        try (ReleasableLock ignored = lruLock.acquire()) {
-            switch (entry.state) {
-                case DELETED:
-                    promoted = false;
-                    break;
-                case EXISTING:
-                    relinkAtHead(entry);
-                    break;
-                case NEW:
-                    linkAtHead(entry);
-                    break;
-            }
-            if (promoted) {
-                evict(now);
-            }
+    private void promote(Entry<K, V> entry) {
+        assert lruLock.isHeldByCurrentThread();
+
+        switch (entry.state) {
+            case DELETED:
+                break;
+            case EXISTING:
+                relinkAtHead(entry);
+                break;
+            case NEW:
+                linkAtHead(entry);
+                break;
         }
-        return promoted;
     }
 
     private void evict(long now) {
@@ -761,7 +961,7 @@ public class Cache<K, V> {
 
         CacheSegment<K, V> segment = getCacheSegment(entry.key);
         if (segment != null) {
-            segment.remove(entry.key, entry.value, f -> {});
+            segment.remove(entry);
         }
         delete(entry, RemovalNotification.RemovalReason.EVICTED);
     }
@@ -769,7 +969,7 @@ public class Cache<K, V> {
     private void delete(Entry<K, V> entry, RemovalNotification.RemovalReason removalReason) {
         assert lruLock.isHeldByCurrentThread();
 
-        if (unlink(entry)) {
+        if (discard(entry)) {
             removalListener.onRemoval(new RemovalNotification<>(entry.key, entry.value, removalReason));
         }
     }
@@ -787,6 +987,22 @@ public class Cache<K, V> {
                 (entriesExpireAfterWrite && now - entry.writeTime > expireAfterWriteNanos);
     }
 
+    /**
+     * Removes an entry that its segment no longer maps from the LRU list. The entry is not linked yet if the buffered mutation of the
+     * write that added it did not run yet, in which case it is marked as deleted so that this mutation does not link it.
+     *
+     * @return whether the entry was part of the cache until now
+     */
+    private boolean discard(Entry<K, V> entry) {
+        assert lruLock.isHeldByCurrentThread();
+
+        if (entry.state == State.NEW) {
+            entry.state = State.DELETED;
+            return true;
+        }
+        return unlink(entry);
+    }
+
     private boolean unlink(Entry<K, V> entry) {
         assert lruLock.isHeldByCurrentThread();
 
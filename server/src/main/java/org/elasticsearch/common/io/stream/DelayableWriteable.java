@@ -20,6 +20,7 @@
 package org.elasticsearch.common.io.stream;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.function.Supplier;
 
 import org.elasticsearch.Version;
@@ -50,6 +51,25 @@ public abstract class DelayableWriteable<T extends Writeable> implements Supplie
 
     public abstract boolean isDelayed();
 
+    /**
+     * Returns the number of bytes that the wrapped {@linkplain Writeable} takes once serialized.
+     */
+    public abstract long getSerializedSize();
+
+    /**
+     * Returns the number of bytes that the provided {@linkplain Writeable} takes once serialized
+     * with the current version, without buffering the serialized bytes.
+     */
+    public static long getSerializedSize(Writeable ref) {
+        try (CountingStreamOutput out = new CountingStreamOutput()) {
+            out.setVersion(Version.CURRENT);
+            ref.writeTo(out);
+            return out.size;
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
     private static class Referencing<T extends Writeable> extends DelayableWriteable<T> {
         private T reference;
 
@@ -75,6 +95,11 @@ public abstract class DelayableWriteable<T extends Writeable> implements Supplie
         public boolean isDelayed() {
             return false;
         }
+
+        @Override
+        public long getSerializedSize() {
+            return DelayableWriteable.getSerializedSize(reference);
+        }
     }
 
     private static class Delayed<T extends Writeable> extends DelayableWriteable<T> {
@@ -128,5 +153,35 @@ public abstract class DelayableWriteable<T extends Writeable> implements Supplie
         public boolean isDelayed() {
             return true;
         }
+
+        @Override
+        public long getSerializedSize() {
+            return serialized.length();
+        }
+    }
+
+    private static class CountingStreamOutput extends StreamOutput {
+        long size = 0;
+
+        @Override
+        public void writeByte(byte b) {
+            size++;
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int length) {
+            size += length;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+
+        @Override
+        public void reset() {
+            size = 0;
+        }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.uid;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.util.CuckooFilter;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-segment membership filters over the terms of the uid field. {@link VersionsAndSeqNoResolver} consults the filter of a segment
+ * before seeking its terms dictionary, which turns most probes of segments that don't contain a uid into a constant-time negative
+ * check. A filter is built once per segment core, shared by all readers of the core and dropped when the core is closed.
+ */
+public final class IdFilters {
+
+    /**
+     * The false positive probability of the filters, which costs about a byte and a half per uid.
+     */
+    static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    static final ConcurrentMap<IndexReader.CacheKey, Filter> filters = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+
+    private static final IndexReader.ClosedListener removeFilter = filters::remove;
+
+    private static final ThreadLocal<MurmurHash3.Hash128> SCRATCH_HASH = ThreadLocal.withInitial(MurmurHash3.Hash128::new);
+
+    private IdFilters() {
+    }
+
+    /**
+     * Builds the filter of the provided segment unless it already has one.
+     *
+     * @param counters the counters of the shard the segment belongs to, incremented by lookups that consult the filter
+     * @return the size of the filter in bytes if one was built, {@code 0} otherwise
+     */
+    public static long build(LeafReader reader, String uidField, Counters counters) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null || filters.containsKey(cacheHelper.getKey())) {
+            return 0;
+        }
+        final Terms terms = reader.terms(uidField);
+        if (terms == null) {
+            // segments with no-ops only have no uids
+            return 0;
+        }
+        final long numTerms = terms.size() == -1 ? reader.maxDoc() : terms.size();
+        // leave some headroom since filters can saturate before they reach their load factor, especially small ones
+        long capacity = numTerms + numTerms / 8 + 1;
+        CuckooFilter filter;
+        while ((filter = buildFilter(terms, capacity)) == null) {
+            if (capacity > numTerms * 4 + 64) {
+                // the segment will always be searched
+                return 0;
+            }
+            capacity *= 2;
+        }
+        if (filters.putIfAbsent(cacheHelper.getKey(), new Filter(filter, uidField, counters)) != null) {
+            return 0;
+        }
+        cacheHelper.addClosedListener(removeFilter);
+        return filter.getSizeInBytes();
+    }
+
+    /**
+     * Adds all terms to a new filter of the provided capacity, returns {@code null} if the filter saturated.
+     */
+    @Nullable
+    private static CuckooFilter buildFilter(Terms terms, long capacity) throws IOException {
+        final CuckooFilter filter = new CuckooFilter(capacity, FALSE_POSITIVE_PROBABILITY, new Random(0));
+        final MurmurHash3.Hash128 scratch = new MurmurHash3.Hash128();
+        final TermsEnum termsEnum = terms.iterator();
+        for (BytesRef uid = termsEnum.next(); uid != null; uid = termsEnum.next()) {
+            if (filter.add(hash(uid, scratch)) == false) {
+                // a saturated filter would have false negatives
+                return null;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the filter of the provided segment, or {@code null} if it has none.
+     */
+    @Nullable
+    static Filter getFilter(LeafReader reader, String uidField) {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+        final Filter filter = filters.get(cacheHelper.getKey());
+        assert filter == null || filter.uidField.equals(uidField) :
+            "filter was built on [" + filter.uidField + "] but is looked up for [" + uidField + "]";
+        return filter;
+    }
+
+    /**
+     * Hashes a uid for {@link Filter#mightContain(long)}. Uses a scratch hash of the current thread, so that hashing does not allocate
+     * on the indexing path.
+     */
+    static long hash(BytesRef uid) {
+        return hash(uid, SCRATCH_HASH.get());
+    }
+
+    private static long hash(BytesRef uid, MurmurHash3.Hash128 scratch) {
+        return MurmurHash3.hash128(uid.bytes, uid.offset, uid.length, 0, scratch).h1;
+    }
+
+    static final class Filter {
+        private final CuckooFilter filter;
+        private final String uidField;
+        private final Counters counters;
+
+        private Filter(CuckooFilter filter, String uidField, Counters counters) {
+            this.filter = filter;
+            this.uidField = uidField;
+            this.counters = counters;
+        }
+
+        /**
+         * Returns false if the segment does not contain the uid with the provided hash, true if it might contain it.
+         */
+        boolean mightContain(long hash) {
+            if (filter.mightContain(hash)) {
+                counters.hits.inc();
+                return true;
+            } else {
+                counters.misses.inc();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Counts how often the filters of a shard could not rule out a segment, and how often they could.
+     */
+    public static final class Counters {
+        private final CounterMetric hits = new CounterMetric();
+        private final CounterMetric misses = new CounterMetric();
+
+        /**
+         * The number of segment lookups for which the filter said the segment might contain the uid, so its terms dictionary was searched.
+         */
+        public long hits() {
+            return hits.count();
+        }
+
+        /**
+         * The number of segment lookups that the filter ruled out without searching the terms dictionary of the segment.
+         */
+        public long misses() {
+            return misses.count();
+        }
+    }
+}
@@ -58,6 +58,9 @@ final class PerThreadIDVersionAndSeqNoLookup {
     final String uidField;
     private final TermsEnum termsEnum;
 
+    /** membership filter over the uids of the segment, null if the segment has none */
+    private final IdFilters.Filter idFilter;
+
     /** Reused for iteration (when the term exists) */
     private PostingsEnum docsEnum;
 
@@ -84,6 +87,7 @@ final class PerThreadIDVersionAndSeqNoLookup {
         } else {
             termsEnum = terms.iterator();
         }
+        idFilter = IdFilters.getFilter(reader, uidField);
         if (reader.getNumericDocValues(VersionFieldMapper.NAME) == null) {
             throw new IllegalArgumentException("reader misses the [" + VersionFieldMapper.NAME + "] field; _uid terms [" + terms + "]");
         }
@@ -99,10 +103,26 @@ final class PerThreadIDVersionAndSeqNoLookup {
      * entirely for these readers.
      */
     public DocIdAndVersion lookupVersion(BytesRef id, boolean loadSeqNo, LeafReaderContext context)
+        throws IOException {
+        return lookupVersion(id, hasIdFilter() ? IdFilters.hash(id) : 0L, loadSeqNo, context);
+    }
+
+    /**
+     * Whether the segment has an id filter, in which case lookups need the {@link IdFilters#hash(BytesRef) hash} of the id.
+     */
+    boolean hasIdFilter() {
+        return idFilter != null;
+    }
+
+    /**
+     * Same as {@link #lookupVersion(BytesRef, boolean, LeafReaderContext)} with the {@link IdFilters#hash(BytesRef) hash} of the id,
+     * which is ignored if the segment has no {@link #hasIdFilter() id filter}.
+     */
+    DocIdAndVersion lookupVersion(BytesRef id, long idHash, boolean loadSeqNo, LeafReaderContext context)
         throws IOException {
         assert context.reader().getCoreCacheHelper().getKey().equals(readerKey) :
             "context's reader is not the same as the reader class was initialized on.";
-        int docID = getDocID(id, context);
+        int docID = getDocID(id, idHash, context);
 
         if (docID != DocIdSetIterator.NO_MORE_DOCS) {
             final long seqNo;
@@ -125,9 +145,9 @@ final class PerThreadIDVersionAndSeqNoLookup {
      * returns the internal lucene doc id for the given id bytes.
      * {@link DocIdSetIterator#NO_MORE_DOCS} is returned if not found
      * */
-    private int getDocID(BytesRef id, LeafReaderContext context) throws IOException {
+    private int getDocID(BytesRef id, long idHash, LeafReaderContext context) throws IOException {
         // termsEnum can possibly be null here if this leaf contains only no-ops.
-        if (termsEnum != null && termsEnum.seekExact(id)) {
+        if (termsEnum != null && (idFilter == null || idFilter.mightContain(idHash)) && termsEnum.seekExact(id)) {
             final Bits liveDocs = context.reader().getLiveDocs();
             int docID = DocIdSetIterator.NO_MORE_DOCS;
             // there may be more than one matching docID, in the case of nested docs, so we want the last one:
@@ -154,10 +174,10 @@ final class PerThreadIDVersionAndSeqNoLookup {
     }
 
     /** Return null if id is not found. */
-    DocIdAndSeqNo lookupSeqNo(BytesRef id, LeafReaderContext context) throws IOException {
+    DocIdAndSeqNo lookupSeqNo(BytesRef id, long idHash, LeafReaderContext context) throws IOException {
         assert context.reader().getCoreCacheHelper().getKey().equals(readerKey) :
             "context's reader is not the same as the reader class was initialized on.";
-        final int docID = getDocID(id, context);
+        final int docID = getDocID(id, idHash, context);
         if (docID != DocIdSetIterator.NO_MORE_DOCS) {
             final long seqNo = readNumericDocValues(context.reader(), SeqNoFieldMapper.NAME, docID);
             return new DocIdAndSeqNo(docID, seqNo, context);
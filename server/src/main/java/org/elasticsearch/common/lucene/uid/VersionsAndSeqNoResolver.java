@@ -132,12 +132,19 @@ public final class VersionsAndSeqNoResolver {
     public static DocIdAndVersion loadDocIdAndVersion(IndexReader reader, Term term, boolean loadSeqNo) throws IOException {
         PerThreadIDVersionAndSeqNoLookup[] lookups = getLookupState(reader, term.field());
         List<LeafReaderContext> leaves = reader.leaves();
+        // only hashed once a segment has an id filter
+        long idHash = 0L;
+        boolean hashed = false;
         // iterate backwards to optimize for the frequently updated documents
         // which are likely to be in the last segments
         for (int i = leaves.size() - 1; i >= 0; i--) {
             final LeafReaderContext leaf = leaves.get(i);
             PerThreadIDVersionAndSeqNoLookup lookup = lookups[leaf.ord];
-            DocIdAndVersion result = lookup.lookupVersion(term.bytes(), loadSeqNo, leaf);
+            if (hashed == false && lookup.hasIdFilter()) {
+                idHash = IdFilters.hash(term.bytes());
+                hashed = true;
+            }
+            DocIdAndVersion result = lookup.lookupVersion(term.bytes(), idHash, loadSeqNo, leaf);
             if (result != null) {
                 return result;
             }
@@ -152,12 +159,19 @@ public final class VersionsAndSeqNoResolver {
     public static DocIdAndSeqNo loadDocIdAndSeqNo(IndexReader reader, Term term) throws IOException {
         final PerThreadIDVersionAndSeqNoLookup[] lookups = getLookupState(reader, term.field());
         final List<LeafReaderContext> leaves = reader.leaves();
+        // only hashed once a segment has an id filter
+        long idHash = 0L;
+        boolean hashed = false;
         // iterate backwards to optimize for the frequently updated documents
         // which are likely to be in the last segments
         for (int i = leaves.size() - 1; i >= 0; i--) {
             final LeafReaderContext leaf = leaves.get(i);
             final PerThreadIDVersionAndSeqNoLookup lookup = lookups[leaf.ord];
-            final DocIdAndSeqNo result = lookup.lookupSeqNo(term.bytes(), leaf);
+            if (hashed == false && lookup.hasIdFilter()) {
+                idHash = IdFilters.hash(term.bytes());
+                hashed = true;
+            }
+            final DocIdAndSeqNo result = lookup.lookupSeqNo(term.bytes(), idHash, leaf);
             if (result != null) {
                 return result;
             }
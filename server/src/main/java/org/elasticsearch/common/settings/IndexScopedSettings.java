@@ -43,6 +43,7 @@ import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.index.store.FsDirectoryFactory;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.indices.IndicesRequestCache;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache;
 
 import java.util.Collections;
 import java.util.Map;
@@ -110,8 +111,12 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
             IndexSortConfig.INDEX_SORT_MISSING_SETTING,
             IndexSortConfig.INDEX_SORT_MODE_SETTING,
             IndexSettings.INDEX_TRANSLOG_DURABILITY_SETTING,
+            IndexSettings.INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING,
             IndexSettings.INDEX_WARMER_ENABLED_SETTING,
             IndexSettings.INDEX_REFRESH_INTERVAL_SETTING,
+            IndexSettings.INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING,
+            IndexSettings.INDEX_REFRESH_ADAPTIVE_MIN_INTERVAL_SETTING,
+            IndexSettings.INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING,
             IndexSettings.MAX_RESULT_WINDOW_SETTING,
             IndexSettings.MAX_INNER_RESULT_WINDOW_SETTING,
             IndexSettings.MAX_TOKEN_COUNT_SETTING,
@@ -127,15 +132,20 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
             IndexSettings.QUERY_STRING_LENIENT_SETTING,
             IndexSettings.ALLOW_UNMAPPED,
             IndexSettings.INDEX_CHECK_ON_STARTUP,
+            IndexSettings.INDEX_VERIFY_CHECKSUMS_MAX_CONCURRENT_FILES_SETTING,
             IndexSettings.MAX_REFRESH_LISTENERS_PER_SHARD,
             IndexSettings.MAX_SLICES_PER_SCROLL,
             IndexSettings.MAX_REGEX_LENGTH_SETTING,
             ShardsLimitAllocationDecider.INDEX_TOTAL_SHARDS_PER_NODE_SETTING,
             IndexSettings.INDEX_GC_DELETES_SETTING,
             IndexSettings.INDEX_SOFT_DELETES_SETTING,
+            IndexSettings.INDEX_REPLICATION_TYPE_SETTING,
+            IndexSettings.INDEX_COMPACT_VERSION_MAP_SETTING,
+            IndexSettings.INDEX_ID_FILTER_SETTING,
             IndexSettings.INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING,
             IndexSettings.INDEX_SOFT_DELETES_RETENTION_LEASE_PERIOD_SETTING,
             IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING,
+            IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING,
             UnassignedInfo.INDEX_DELAYED_NODE_LEFT_TIMEOUT_SETTING,
             EnableAllocationDecider.INDEX_ROUTING_REBALANCE_ENABLE_SETTING,
             EnableAllocationDecider.INDEX_ROUTING_ALLOCATION_ENABLE_SETTING,
@@ -146,6 +156,8 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
             IndexSettings.INDEX_TRANSLOG_RETENTION_SIZE_SETTING,
             IndexSettings.INDEX_SEARCH_IDLE_AFTER,
             IndexSettings.INDEX_SEARCH_THROTTLED,
+            IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING,
+            IndexSettings.INDEX_SEARCH_TIMESTAMP_FIELD_SETTING,
             IndexFieldDataService.INDEX_FIELDDATA_CACHE_KEY,
             FieldMapper.IGNORE_MALFORMED_SETTING,
             FieldMapper.COERCE_SETTING,
@@ -158,6 +170,7 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
             BitsetFilterCache.INDEX_LOAD_RANDOM_ACCESS_FILTERS_EAGERLY_SETTING,
             IndexModule.INDEX_STORE_TYPE_SETTING,
             IndexModule.INDEX_STORE_PRE_LOAD_SETTING,
+            IndexModule.INDEX_STORE_PAGE_CACHE_ADVICE_SETTING,
             IndexModule.INDEX_QUERY_CACHE_ENABLED_SETTING,
             FsDirectoryFactory.INDEX_LOCK_FACTOR_SETTING,
             EngineConfig.INDEX_CODEC_SETTING,
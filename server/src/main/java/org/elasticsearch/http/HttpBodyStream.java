@@ -0,0 +1,62 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http;
+
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+
+/**
+ * The body of an HTTP request that is received incrementally rather than being aggregated before the request is dispatched. The
+ * consumer pulls the body chunk by chunk, so the transport does not read more from the network than the consumer asked for.
+ */
+public interface HttpBodyStream {
+
+    /**
+     * Sets the handler that receives the chunks of the body. Must be called before the first call to {@link #next()}.
+     */
+    void setHandler(ChunkHandler handler);
+
+    /**
+     * Requests the next chunk of the body. The handler is notified exactly once per call, possibly on another thread, either with the
+     * next chunk or with a failure if the body can not be received completely. Must not be called again before the handler has been
+     * notified, nor after the last chunk has been received.
+     */
+    void next();
+
+    /**
+     * Signals that the consumer is not interested in the rest of the body, which is then discarded as it arrives.
+     */
+    void close();
+
+    interface ChunkHandler {
+
+        /**
+         * Receives the next chunk of the body. The handler takes ownership of the chunk and must release it.
+         *
+         * @param chunk  the chunk, possibly empty
+         * @param isLast whether this is the last chunk of the body
+         */
+        void onNext(ReleasableBytesReference chunk, boolean isLast);
+
+        /**
+         * Called if the body can not be received completely, for instance because the channel was closed.
+         */
+        void onFailure(Exception e);
+    }
+}
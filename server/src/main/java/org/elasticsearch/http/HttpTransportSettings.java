@@ -107,6 +107,10 @@ public final class HttpTransportSettings {
     public static final Setting<TimeValue> SETTING_HTTP_READ_TIMEOUT =
         Setting.timeSetting("http.read_timeout", new TimeValue(0), new TimeValue(0), Property.NodeScope);
 
+    // Whether the bodies of bulk requests are handed to the bulk handler as they arrive instead of being aggregated first
+    public static final Setting<Boolean> SETTING_HTTP_INCREMENTAL_BULK =
+        Setting.boolSetting("http.incremental_bulk.enabled", false, Property.NodeScope);
+
     // Tcp socket settings
 
     public static final Setting<Boolean> SETTING_HTTP_TCP_NO_DELAY =
@@ -90,6 +90,18 @@ final class CompositeIndexEventListener implements IndexEventListener {
         }
     }
 
+    @Override
+    public void afterIndexShardRefreshed(IndexShard indexShard) {
+        for (IndexEventListener listener : listeners) {
+            try {
+                listener.afterIndexShardRefreshed(indexShard);
+            } catch (Exception e) {
+                logger.warn(() -> new ParameterizedMessage("[{}] failed to invoke after shard refreshed callback",
+                    indexShard.shardId().getId()), e);
+            }
+        }
+    }
+
     @Override
     public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard,
                                        Settings indexSettings) {
@@ -70,6 +70,13 @@ public final class IndexSettings {
     public static final Setting<Translog.Durability> INDEX_TRANSLOG_DURABILITY_SETTING =
         new Setting<>("index.translog.durability", Translog.Durability.REQUEST.name(),
             (value) -> Translog.Durability.valueOf(value.toUpperCase(Locale.ROOT)), Property.Dynamic, Property.IndexScope);
+    /**
+     * Controls whether the engine keeps the translog location of every indexed document until it is refreshed, so that
+     * realtime gets of unrefreshed documents are served from the translog instead of triggering a refresh. When disabled,
+     * locations are only tracked after the first realtime get that had to refresh.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING =
+        Setting.boolSetting("index.translog.track_locations", false, Property.Dynamic, Property.IndexScope);
     public static final Setting<Boolean> INDEX_WARMER_ENABLED_SETTING =
         Setting.boolSetting("index.warmer.enabled", true, Property.Dynamic, Property.IndexScope);
     public static final Setting<String> INDEX_CHECK_ON_STARTUP =
@@ -84,6 +91,11 @@ public final class IndexSettings {
                         "[true, false, checksum] but was: " + s);
             }
         }, Property.IndexScope);
+    /**
+     * The maximum number of files whose checksums are verified concurrently when checking the integrity of a shard.
+     */
+    public static final Setting<Integer> INDEX_VERIFY_CHECKSUMS_MAX_CONCURRENT_FILES_SETTING =
+        Setting.intSetting("index.shard.verify_checksums.max_concurrent_files", 4, 1, Property.IndexScope);
     // This setting is undocumented as it is considered as an escape hatch.
     public static final Setting<Boolean> ON_HEAP_ID_TERMS_INDEX =
             Setting.boolSetting("index.force_memory_id_terms_dictionary", false, Property.IndexScope);
@@ -181,6 +193,19 @@ public final class IndexSettings {
     public static final Setting<TimeValue> INDEX_REFRESH_INTERVAL_SETTING =
         Setting.timeSetting("index.refresh_interval", DEFAULT_REFRESH_INTERVAL, new TimeValue(-1, TimeUnit.MILLISECONDS),
             Property.Dynamic, Property.IndexScope);
+    /**
+     * If enabled, every shard of the index picks its own refresh interval between {@link #INDEX_REFRESH_ADAPTIVE_MIN_INTERVAL_SETTING}
+     * and {@link #INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING} based on how often it is searched and written to, instead of using
+     * {@link #INDEX_REFRESH_INTERVAL_SETTING}.
+     */
+    public static final Setting<Boolean> INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING =
+        Setting.boolSetting("index.refresh.adaptive.enabled", false, Property.Dynamic, Property.IndexScope);
+    public static final Setting<TimeValue> INDEX_REFRESH_ADAPTIVE_MIN_INTERVAL_SETTING =
+        Setting.timeSetting("index.refresh.adaptive.min_interval", DEFAULT_REFRESH_INTERVAL, TimeValue.timeValueMillis(100),
+            Property.Dynamic, Property.IndexScope);
+    public static final Setting<TimeValue> INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING =
+        Setting.timeSetting("index.refresh.adaptive.max_interval", TimeValue.timeValueSeconds(30), TimeValue.timeValueMillis(100),
+            Property.Dynamic, Property.IndexScope);
     public static final Setting<ByteSizeValue> INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING =
         Setting.byteSizeSetting("index.translog.flush_threshold_size", new ByteSizeValue(512, ByteSizeUnit.MB),
             /*
@@ -235,6 +260,29 @@ public final class IndexSettings {
     public static final Setting<Boolean> INDEX_SOFT_DELETES_SETTING =
         Setting.boolSetting("index.soft_deletes.enabled", true, Property.IndexScope, Property.Final);
 
+    /**
+     * How the changes made on the primary are applied to the replicas of the index. With {@link ReplicationType#DOCUMENT} every
+     * replica re-indexes the operations of the primary, while with {@link ReplicationType#SEGMENT} replicas only append the
+     * operations to their translog and copy the segment files that the primary produced on refresh.
+     */
+    public static final Setting<ReplicationType> INDEX_REPLICATION_TYPE_SETTING =
+        new Setting<>("index.replication.type", ReplicationType.DOCUMENT.name(),
+            (value) -> ReplicationType.valueOf(value.toUpperCase(Locale.ROOT)), Property.IndexScope, Property.Final);
+
+    /**
+     * Whether the engine keeps the versions of recently indexed documents in compact paged maps rather than in concurrent hash maps.
+     * This reduces the heap that is used between refreshes on update-heavy shards at the cost of some extra work per operation.
+     */
+    public static final Setting<Boolean> INDEX_COMPACT_VERSION_MAP_SETTING =
+        Setting.boolSetting("index.version_map.compact", false, Property.IndexScope);
+
+    /**
+     * Whether the engine builds a membership filter over the ids of each segment, which lets lookups of updates and deletes skip the
+     * terms dictionary of segments that don't contain the id.
+     */
+    public static final Setting<Boolean> INDEX_ID_FILTER_SETTING =
+        Setting.boolSetting("index.id_filter.enabled", false, Property.IndexScope);
+
     /**
      * Controls how many soft-deleted documents will be kept around before being merged away. Keeping more deleted
      * documents increases the chance of operation-based recoveries and allows querying a longer history of documents.
@@ -312,6 +360,23 @@ public final class IndexSettings {
     public static final Setting<Boolean> INDEX_SEARCH_THROTTLED = Setting.boolSetting("index.search.throttled", false,
         Property.IndexScope, Property.PrivateIndex, Property.Dynamic);
 
+    /**
+     * Marks an index to be searched concurrently across segment slices using the
+     * {@link org.elasticsearch.threadpool.ThreadPool.Names#SEARCH_WORKER} thread-pool. Each slice collects its own top hits and
+     * aggregations, searches with scroll, collapse or aggregations that cannot be reduced from partial results are collected on a
+     * single thread.
+     */
+    public static final Setting<Boolean> INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING =
+        Setting.boolSetting("index.search.concurrent_segment_search", false, Property.IndexScope, Property.Dynamic);
+
+    /**
+     * The name of a date field whose min and max values are recorded in the index metadata once the index stops accepting writes,
+     * so that the coordinating node can skip the whole index for searches that filter on a range of this field outside of these
+     * values. Empty by default, which disables the recording.
+     */
+    public static final Setting<String> INDEX_SEARCH_TIMESTAMP_FIELD_SETTING =
+        Setting.simpleString("index.search.timestamp_field", Property.IndexScope, Property.Dynamic);
+
     /**
      * Determines a balance between file-based and operations-based peer recoveries. The number of operations that will be used in an
      * operations-based peer recovery is limited to this proportion of the total number of documents in the shard (including deleted
@@ -340,8 +405,12 @@ public final class IndexSettings {
     private final boolean queryStringAllowLeadingWildcard;
     private final boolean defaultAllowUnmappedFields;
     private volatile Translog.Durability durability;
+    private volatile boolean trackTranslogLocations;
     private volatile TimeValue syncInterval;
     private volatile TimeValue refreshInterval;
+    private volatile boolean adaptiveRefresh;
+    private volatile TimeValue adaptiveRefreshMinInterval;
+    private volatile TimeValue adaptiveRefreshMaxInterval;
     private volatile ByteSizeValue flushThresholdSize;
     private volatile ByteSizeValue generationThresholdSize;
     private volatile ByteSizeValue flushAfterMergeThresholdSize;
@@ -351,6 +420,9 @@ public final class IndexSettings {
     private final IndexScopedSettings scopedSettings;
     private long gcDeletesInMillis = DEFAULT_GC_DELETES.millis();
     private final boolean softDeleteEnabled;
+    private final ReplicationType replicationType;
+    private final boolean compactVersionMap;
+    private final boolean idFilterEnabled;
     private volatile long softDeleteRetentionOperations;
 
     private volatile long retentionLeaseMillis;
@@ -383,6 +455,7 @@ public final class IndexSettings {
     private volatile String defaultPipeline;
     private volatile String requiredPipeline;
     private volatile boolean searchThrottled;
+    private volatile boolean concurrentSegmentSearch;
 
     /**
      * The maximum number of refresh listeners allows on this shard.
@@ -467,20 +540,28 @@ public final class IndexSettings {
         numberOfShards = settings.getAsInt(IndexMetadata.SETTING_NUMBER_OF_SHARDS, null);
 
         this.searchThrottled = INDEX_SEARCH_THROTTLED.get(settings);
+        this.concurrentSegmentSearch = scopedSettings.get(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING);
         this.queryStringLenient = QUERY_STRING_LENIENT_SETTING.get(settings);
         this.queryStringAnalyzeWildcard = QUERY_STRING_ANALYZE_WILDCARD.get(nodeSettings);
         this.queryStringAllowLeadingWildcard = QUERY_STRING_ALLOW_LEADING_WILDCARD.get(nodeSettings);
         this.defaultAllowUnmappedFields = scopedSettings.get(ALLOW_UNMAPPED);
         this.durability = scopedSettings.get(INDEX_TRANSLOG_DURABILITY_SETTING);
+        this.trackTranslogLocations = scopedSettings.get(INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING);
         defaultFields = scopedSettings.get(DEFAULT_FIELD_SETTING);
         syncInterval = INDEX_TRANSLOG_SYNC_INTERVAL_SETTING.get(settings);
         refreshInterval = scopedSettings.get(INDEX_REFRESH_INTERVAL_SETTING);
+        adaptiveRefresh = scopedSettings.get(INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING);
+        adaptiveRefreshMinInterval = scopedSettings.get(INDEX_REFRESH_ADAPTIVE_MIN_INTERVAL_SETTING);
+        adaptiveRefreshMaxInterval = scopedSettings.get(INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING);
         flushThresholdSize = scopedSettings.get(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING);
         generationThresholdSize = scopedSettings.get(INDEX_TRANSLOG_GENERATION_THRESHOLD_SIZE_SETTING);
         flushAfterMergeThresholdSize = scopedSettings.get(INDEX_FLUSH_AFTER_MERGE_THRESHOLD_SIZE_SETTING);
         mergeSchedulerConfig = new MergeSchedulerConfig(this);
         gcDeletesInMillis = scopedSettings.get(INDEX_GC_DELETES_SETTING).getMillis();
         softDeleteEnabled = scopedSettings.get(INDEX_SOFT_DELETES_SETTING);
+        replicationType = scopedSettings.get(INDEX_REPLICATION_TYPE_SETTING);
+        compactVersionMap = scopedSettings.get(INDEX_COMPACT_VERSION_MAP_SETTING);
+        idFilterEnabled = scopedSettings.get(INDEX_ID_FILTER_SETTING);
         assert softDeleteEnabled || version.before(Version.V_8_0_0) : "soft deletes must be enabled in version " + version;
         softDeleteRetentionOperations = scopedSettings.get(INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING);
         retentionLeaseMillis = scopedSettings.get(INDEX_SOFT_DELETES_RETENTION_LEASE_PERIOD_SETTING).millis();
@@ -523,6 +604,7 @@ public final class IndexSettings {
             MergeSchedulerConfig.MAX_MERGE_COUNT_SETTING, mergeSchedulerConfig::setMaxThreadAndMergeCount);
         scopedSettings.addSettingsUpdateConsumer(MergeSchedulerConfig.AUTO_THROTTLE_SETTING, mergeSchedulerConfig::setAutoThrottle);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_DURABILITY_SETTING, this::setTranslogDurability);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING, this::setTrackTranslogLocations);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_SYNC_INTERVAL_SETTING, this::setTranslogSyncInterval);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESULT_WINDOW_SETTING, this::setMaxResultWindow);
         scopedSettings.addSettingsUpdateConsumer(MAX_INNER_RESULT_WINDOW_SETTING, this::setMaxInnerResultWindow);
@@ -540,6 +622,9 @@ public final class IndexSettings {
                 INDEX_TRANSLOG_GENERATION_THRESHOLD_SIZE_SETTING,
                 this::setGenerationThresholdSize);
         scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_INTERVAL_SETTING, this::setRefreshInterval);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING, this::setAdaptiveRefresh);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_ADAPTIVE_MIN_INTERVAL_SETTING, this::setAdaptiveRefreshMinInterval);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING, this::setAdaptiveRefreshMaxInterval);
         scopedSettings.addSettingsUpdateConsumer(MAX_REFRESH_LISTENERS_PER_SHARD, this::setMaxRefreshListeners);
         scopedSettings.addSettingsUpdateConsumer(MAX_ANALYZED_OFFSET_SETTING, this::setHighlightMaxAnalyzedOffset);
         scopedSettings.addSettingsUpdateConsumer(MAX_TERMS_COUNT_SETTING, this::setMaxTermsCount);
@@ -551,6 +636,7 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(FINAL_PIPELINE, this::setRequiredPipeline);
         scopedSettings.addSettingsUpdateConsumer(INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING, this::setSoftDeleteRetentionOperations);
         scopedSettings.addSettingsUpdateConsumer(INDEX_SEARCH_THROTTLED, this::setSearchThrottled);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING, this::setConcurrentSegmentSearch);
         scopedSettings.addSettingsUpdateConsumer(INDEX_SOFT_DELETES_RETENTION_LEASE_PERIOD_SETTING, this::setRetentionLeaseMillis);
     }
 
@@ -576,6 +662,18 @@ public final class IndexSettings {
         this.refreshInterval = timeValue;
     }
 
+    private void setAdaptiveRefresh(boolean adaptiveRefresh) {
+        this.adaptiveRefresh = adaptiveRefresh;
+    }
+
+    private void setAdaptiveRefreshMinInterval(TimeValue timeValue) {
+        this.adaptiveRefreshMinInterval = timeValue;
+    }
+
+    private void setAdaptiveRefreshMaxInterval(TimeValue timeValue) {
+        this.adaptiveRefreshMaxInterval = timeValue;
+    }
+
     /**
      * Returns the settings for this index. These settings contain the node and index level settings where
      * settings that are specified on both index and node level are overwritten by the index settings.
@@ -700,6 +798,18 @@ public final class IndexSettings {
         this.durability = durability;
     }
 
+    /**
+     * Returns <code>true</code> if the translog locations of unrefreshed documents should be tracked eagerly, see
+     * {@link #INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING}
+     */
+    public boolean isTrackTranslogLocations() {
+        return trackTranslogLocations;
+    }
+
+    private void setTrackTranslogLocations(boolean trackTranslogLocations) {
+        this.trackTranslogLocations = trackTranslogLocations;
+    }
+
     /**
      * Returns true if index warmers are enabled, otherwise <code>false</code>
      */
@@ -730,6 +840,36 @@ public final class IndexSettings {
         return refreshInterval;
     }
 
+    /**
+     * Returns <code>true</code> if the shards of this index pick their own refresh interval, see
+     * {@link #INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING}
+     */
+    public boolean isAdaptiveRefresh() {
+        return adaptiveRefresh;
+    }
+
+    /**
+     * Returns the shortest interval between two scheduled refreshes of a shard if adaptive refresh is enabled.
+     */
+    public TimeValue getAdaptiveRefreshMinInterval() {
+        return adaptiveRefreshMinInterval;
+    }
+
+    /**
+     * Returns the longest interval between two scheduled refreshes of a shard if adaptive refresh is enabled.
+     */
+    public TimeValue getAdaptiveRefreshMaxInterval() {
+        return adaptiveRefreshMaxInterval;
+    }
+
+    /**
+     * Returns the interval in which the refresh task of this index runs. If adaptive refresh is enabled the task runs every
+     * {@link #getAdaptiveRefreshMinInterval()} and each shard decides whether it is due for a refresh.
+     */
+    public TimeValue getRefreshTaskInterval() {
+        return adaptiveRefresh ? adaptiveRefreshMinInterval : refreshInterval;
+    }
+
     /**
      * Returns the transaction log threshold size when to forcefully flush the index and clear the transaction log.
      */
@@ -948,6 +1088,28 @@ public final class IndexSettings {
         return softDeleteEnabled;
     }
 
+    /**
+     * Returns <code>true</code> if the replicas of this index copy the segments of their primary instead of indexing the
+     * operations themselves, see {@link #INDEX_REPLICATION_TYPE_SETTING}
+     */
+    public boolean isSegmentReplication() {
+        return replicationType == ReplicationType.SEGMENT;
+    }
+
+    /**
+     * Returns <code>true</code> if the engine should keep versions in compact paged maps, see {@link #INDEX_COMPACT_VERSION_MAP_SETTING}
+     */
+    public boolean isCompactVersionMap() {
+        return compactVersionMap;
+    }
+
+    /**
+     * Returns <code>true</code> if the engine should build per-segment id filters, see {@link #INDEX_ID_FILTER_SETTING}
+     */
+    public boolean isIdFilterEnabled() {
+        return idFilterEnabled;
+    }
+
     private void setSoftDeleteRetentionOperations(long ops) {
         this.softDeleteRetentionOperations = ops;
     }
@@ -970,4 +1132,30 @@ public final class IndexSettings {
     private void setSearchThrottled(boolean searchThrottled) {
         this.searchThrottled = searchThrottled;
     }
+
+    /**
+     * Returns true if searches on this index should collect the top hits of segment slices concurrently on the
+     * {@link org.elasticsearch.threadpool.ThreadPool.Names#SEARCH_WORKER} thread-pool
+     */
+    public boolean isConcurrentSegmentSearchEnabled() {
+        return concurrentSegmentSearch;
+    }
+
+    private void setConcurrentSegmentSearch(boolean concurrentSegmentSearch) {
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
+    }
+
+    /**
+     * The ways the changes made on a primary can be applied to its replicas.
+     */
+    public enum ReplicationType {
+        /**
+         * Replicas index every operation of the primary, like the primary itself.
+         */
+        DOCUMENT,
+        /**
+         * Replicas append the operations of the primary to their translog and copy the segments of the primary.
+         */
+        SEGMENT
+    }
 }
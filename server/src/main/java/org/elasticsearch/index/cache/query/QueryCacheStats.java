@@ -20,6 +20,8 @@
 package org.elasticsearch.index.cache.query;
 
 import org.apache.lucene.search.DocIdSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -29,6 +31,9 @@ import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public class QueryCacheStats implements Writeable, ToXContentFragment {
 
@@ -37,6 +42,8 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
     private long missCount;
     private long cacheCount;
     private long cacheSize;
+    @Nullable
+    private Map<String, TypeStats> typeStats;
 
     public QueryCacheStats() {
     }
@@ -47,6 +54,9 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         missCount = in.readLong();
         cacheCount = in.readLong();
         cacheSize = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_8_0_0) && in.readBoolean()) {
+            typeStats = in.readMap(StreamInput::readString, TypeStats::new);
+        }
     }
 
     public QueryCacheStats(long ramBytesUsed, long hitCount, long missCount, long cacheCount, long cacheSize) {
@@ -57,12 +67,27 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * Creates stats that only hold the node-level statistics per type of query.
+     */
+    public QueryCacheStats(Map<String, TypeStats> typeStats) {
+        this.typeStats = typeStats;
+    }
+
     public void add(QueryCacheStats stats) {
         ramBytesUsed += stats.ramBytesUsed;
         hitCount += stats.hitCount;
         missCount += stats.missCount;
         cacheCount += stats.cacheCount;
         cacheSize += stats.cacheSize;
+        if (stats.typeStats != null && stats.typeStats.isEmpty() == false) {
+            if (typeStats == null) {
+                typeStats = new HashMap<>(stats.typeStats.size());
+            }
+            for (Map.Entry<String, TypeStats> entry : stats.typeStats.entrySet()) {
+                typeStats.computeIfAbsent(entry.getKey(), k -> new TypeStats()).add(entry.getValue());
+            }
+        }
     }
 
     public long getMemorySizeInBytes() {
@@ -115,6 +140,14 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         return cacheCount - cacheSize;
     }
 
+    /**
+     * The statistics of the node-level query cache per type of query, if available.
+     */
+    @Nullable
+    public Map<String, TypeStats> getTypeStats() {
+        return typeStats != null ? Collections.unmodifiableMap(typeStats) : null;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeLong(ramBytesUsed);
@@ -122,6 +155,14 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         out.writeLong(missCount);
         out.writeLong(cacheCount);
         out.writeLong(cacheSize);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            if (typeStats == null || typeStats.isEmpty()) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                out.writeMap(typeStats, StreamOutput::writeString, (stream, stats) -> stats.writeTo(stream));
+            }
+        }
     }
 
     @Override
@@ -134,10 +175,100 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         builder.field(Fields.CACHE_SIZE, getCacheSize());
         builder.field(Fields.CACHE_COUNT, getCacheCount());
         builder.field(Fields.EVICTIONS, getEvictions());
+        if (typeStats != null && typeStats.isEmpty() == false) {
+            builder.startObject(Fields.TYPES);
+            for (Map.Entry<String, TypeStats> entry : typeStats.entrySet()) {
+                builder.startObject(entry.getKey());
+                entry.getValue().toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
 
+    /**
+     * Statistics of the queries of a given type in the node-level query cache. Hits and misses are counted per segment while
+     * queries are cached and evicted for all segments at once.
+     */
+    public static class TypeStats implements Writeable, ToXContentFragment {
+
+        private long hitCount;
+        private long missCount;
+        private long cacheCount;
+        private long evictions;
+
+        public TypeStats() {
+        }
+
+        public TypeStats(long hitCount, long missCount, long cacheCount, long evictions) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.cacheCount = cacheCount;
+            this.evictions = evictions;
+        }
+
+        public TypeStats(StreamInput in) throws IOException {
+            hitCount = in.readVLong();
+            missCount = in.readVLong();
+            cacheCount = in.readVLong();
+            evictions = in.readVLong();
+        }
+
+        public void add(TypeStats stats) {
+            hitCount += stats.hitCount;
+            missCount += stats.missCount;
+            cacheCount += stats.cacheCount;
+            evictions += stats.evictions;
+        }
+
+        /**
+         * The number of lookups of queries of this type that found a cached {@link DocIdSet}.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * The number of lookups of queries of this type that did not find a cached {@link DocIdSet}.
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * The number of queries of this type that have been added to the cache.
+         */
+        public long getCacheCount() {
+            return cacheCount;
+        }
+
+        /**
+         * The number of queries of this type that have been evicted from the cache.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(hitCount);
+            out.writeVLong(missCount);
+            out.writeVLong(cacheCount);
+            out.writeVLong(evictions);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
+            builder.field(Fields.HIT_COUNT, hitCount);
+            builder.field(Fields.MISS_COUNT, missCount);
+            builder.field(Fields.CACHE_COUNT, cacheCount);
+            builder.field(Fields.EVICTIONS, evictions);
+            return builder;
+        }
+    }
+
     static final class Fields {
         static final String QUERY_CACHE = "query_cache";
         static final String MEMORY_SIZE = "memory_size";
@@ -148,6 +279,7 @@ public class QueryCacheStats implements Writeable, ToXContentFragment {
         static final String CACHE_SIZE = "cache_size";
         static final String CACHE_COUNT = "cache_count";
         static final String EVICTIONS = "evictions";
+        static final String TYPES = "types";
     }
 
 }
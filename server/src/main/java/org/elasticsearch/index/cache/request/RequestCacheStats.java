@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.cache.request;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -34,6 +35,10 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
     private long evictions;
     private long hitCount;
     private long missCount;
+    private long segmentAggregationsMemorySize;
+    private long segmentAggregationsEvictions;
+    private long segmentAggregationsHitCount;
+    private long segmentAggregationsMissCount;
 
     public RequestCacheStats() {
     }
@@ -43,13 +48,28 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         evictions = in.readVLong();
         hitCount = in.readVLong();
         missCount = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            segmentAggregationsMemorySize = in.readVLong();
+            segmentAggregationsEvictions = in.readVLong();
+            segmentAggregationsHitCount = in.readVLong();
+            segmentAggregationsMissCount = in.readVLong();
+        }
     }
 
     public RequestCacheStats(long memorySize, long evictions, long hitCount, long missCount) {
+        this(memorySize, evictions, hitCount, missCount, 0, 0, 0, 0);
+    }
+
+    public RequestCacheStats(long memorySize, long evictions, long hitCount, long missCount, long segmentAggregationsMemorySize,
+                             long segmentAggregationsEvictions, long segmentAggregationsHitCount, long segmentAggregationsMissCount) {
         this.memorySize = memorySize;
         this.evictions = evictions;
         this.hitCount = hitCount;
         this.missCount = missCount;
+        this.segmentAggregationsMemorySize = segmentAggregationsMemorySize;
+        this.segmentAggregationsEvictions = segmentAggregationsEvictions;
+        this.segmentAggregationsHitCount = segmentAggregationsHitCount;
+        this.segmentAggregationsMissCount = segmentAggregationsMissCount;
     }
 
     public void add(RequestCacheStats stats) {
@@ -57,6 +77,10 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         this.evictions += stats.evictions;
         this.hitCount += stats.hitCount;
         this.missCount += stats.missCount;
+        this.segmentAggregationsMemorySize += stats.segmentAggregationsMemorySize;
+        this.segmentAggregationsEvictions += stats.segmentAggregationsEvictions;
+        this.segmentAggregationsHitCount += stats.segmentAggregationsHitCount;
+        this.segmentAggregationsMissCount += stats.segmentAggregationsMissCount;
     }
 
     public long getMemorySizeInBytes() {
@@ -79,12 +103,43 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         return this.missCount;
     }
 
+    /**
+     * The memory held by the aggregation results that are cached per segment.
+     */
+    public ByteSizeValue getSegmentAggregationsMemorySize() {
+        return new ByteSizeValue(segmentAggregationsMemorySize);
+    }
+
+    public long getSegmentAggregationsEvictions() {
+        return segmentAggregationsEvictions;
+    }
+
+    /**
+     * The number of segments whose aggregation results were served from the cache.
+     */
+    public long getSegmentAggregationsHitCount() {
+        return segmentAggregationsHitCount;
+    }
+
+    /**
+     * The number of segments whose aggregation results had to be computed.
+     */
+    public long getSegmentAggregationsMissCount() {
+        return segmentAggregationsMissCount;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
         out.writeVLong(hitCount);
         out.writeVLong(missCount);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeVLong(segmentAggregationsMemorySize);
+            out.writeVLong(segmentAggregationsEvictions);
+            out.writeVLong(segmentAggregationsHitCount);
+            out.writeVLong(segmentAggregationsMissCount);
+        }
     }
 
     @Override
@@ -94,6 +149,12 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         builder.field(Fields.EVICTIONS, getEvictions());
         builder.field(Fields.HIT_COUNT, getHitCount());
         builder.field(Fields.MISS_COUNT, getMissCount());
+        builder.startObject(Fields.SEGMENT_AGGREGATIONS);
+        builder.humanReadableField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, getSegmentAggregationsMemorySize());
+        builder.field(Fields.EVICTIONS, getSegmentAggregationsEvictions());
+        builder.field(Fields.HIT_COUNT, getSegmentAggregationsHitCount());
+        builder.field(Fields.MISS_COUNT, getSegmentAggregationsMissCount());
+        builder.endObject();
         builder.endObject();
         return builder;
     }
@@ -105,5 +166,6 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         static final String EVICTIONS = "evictions";
         static final String HIT_COUNT = "hit_count";
         static final String MISS_COUNT = "miss_count";
+        static final String SEGMENT_AGGREGATIONS = "segment_aggregations";
     }
 }
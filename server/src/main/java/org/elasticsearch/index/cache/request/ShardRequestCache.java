@@ -32,9 +32,15 @@ public final class ShardRequestCache {
     final CounterMetric totalMetric = new CounterMetric();
     final CounterMetric hitCount = new CounterMetric();
     final CounterMetric missCount = new CounterMetric();
+    final CounterMetric segmentAggregationsMemory = new CounterMetric();
+    final CounterMetric segmentAggregationsEvictions = new CounterMetric();
+    final CounterMetric segmentAggregationsHitCount = new CounterMetric();
+    final CounterMetric segmentAggregationsMissCount = new CounterMetric();
 
     public RequestCacheStats stats() {
-        return new RequestCacheStats(totalMetric.count(), evictionsMetric.count(), hitCount.count(), missCount.count());
+        return new RequestCacheStats(totalMetric.count(), evictionsMetric.count(), hitCount.count(), missCount.count(),
+            segmentAggregationsMemory.count(), segmentAggregationsEvictions.count(), segmentAggregationsHitCount.count(),
+            segmentAggregationsMissCount.count());
     }
 
     public void onHit() {
@@ -62,4 +68,23 @@ public final class ShardRequestCache {
         }
         totalMetric.dec(dec);
     }
+
+    public void onSegmentAggregationsHit() {
+        segmentAggregationsHitCount.inc();
+    }
+
+    public void onSegmentAggregationsMiss() {
+        segmentAggregationsMissCount.inc();
+    }
+
+    public void onSegmentAggregationsCached(long sizeInBytes) {
+        segmentAggregationsMemory.inc(sizeInBytes);
+    }
+
+    public void onSegmentAggregationsRemoval(long sizeInBytes, boolean evicted) {
+        if (evicted) {
+            segmentAggregationsEvictions.inc();
+        }
+        segmentAggregationsMemory.dec(sizeInBytes);
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.StoredFieldsFormat;
+import org.apache.lucene.codecs.compressing.CompressingStoredFieldsFormat;
+import org.apache.lucene.codecs.lucene84.Lucene84Codec;
+
+/**
+ * A codec that stores fields in large chunks that are compressed with LZ4 and a preset dictionary, see
+ * {@link LZ4WithDictionaryCompressionMode}. All other formats are those of the codec it wraps.
+ */
+public final class DictionaryCompressionCodec extends FilterCodec {
+
+    public static final String CODEC_NAME = "ES85DictionaryCompression";
+
+    static final int CHUNK_SIZE = LZ4WithDictionaryCompressionMode.NUM_SUB_BLOCKS * 16 * 1024;
+    static final int MAX_DOCS_PER_CHUNK = 1024;
+
+    private final StoredFieldsFormat storedFieldsFormat = new CompressingStoredFieldsFormat("ES85DictionaryStoredFields",
+        LZ4WithDictionaryCompressionMode.INSTANCE, CHUNK_SIZE, MAX_DOCS_PER_CHUNK, 10);
+
+    /**
+     * Public no-arg constructor, needed for SPI loading at read-time.
+     */
+    public DictionaryCompressionCodec() {
+        this(new Lucene84Codec());
+    }
+
+    public DictionaryCompressionCodec(Codec delegate) {
+        super(CODEC_NAME, delegate);
+    }
+
+    @Override
+    public StoredFieldsFormat storedFieldsFormat() {
+        return storedFieldsFormat;
+    }
+}
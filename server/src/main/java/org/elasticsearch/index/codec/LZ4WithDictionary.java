@@ -0,0 +1,213 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.store.DataOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A pure Java implementation of the LZ4 block format that can reference a preset dictionary. The bytes that precede the data in the
+ * compression buffer act as the dictionary: matches may point into them, and the decompressor expects the same bytes to precede the
+ * position it decompresses to. Matches are found through hash chains, which makes compression slower than a plain LZ4 hash table
+ * lookup but finds longer matches while keeping decompression as fast as regular LZ4.
+ */
+final class LZ4WithDictionary {
+
+    static final int MIN_MATCH = 4;
+    static final int MAX_DISTANCE = (1 << 16) - 1;
+    static final int LAST_LITERALS = 5;
+
+    private static final int HASH_LOG = 15;
+    private static final int MASK = MAX_DISTANCE;
+    private static final int MAX_ATTEMPTS = 32;
+
+    private LZ4WithDictionary() {}
+
+    /**
+     * Decompresses {@code decompressedLen} bytes from {@code src[srcOff:]} into {@code dest} starting at {@code dOff}. The dictionary
+     * that the data was compressed with must be stored right before {@code dOff}. Decompression stops at the first sequence boundary
+     * after {@code decompressedLen} bytes, so {@code dest} must be able to hold the entire data that was compressed.
+     */
+    static void decompress(byte[] src, int srcOff, byte[] dest, int dOff, int decompressedLen) {
+        final int destEnd = dOff + decompressedLen;
+        while (dOff < destEnd) {
+            final int token = src[srcOff++] & 0xFF;
+            int literalLen = token >>> 4;
+            if (literalLen != 0) {
+                if (literalLen == 0x0F) {
+                    byte len;
+                    while ((len = src[srcOff++]) == (byte) 0xFF) {
+                        literalLen += 0xFF;
+                    }
+                    literalLen += len & 0xFF;
+                }
+                System.arraycopy(src, srcOff, dest, dOff, literalLen);
+                srcOff += literalLen;
+                dOff += literalLen;
+            }
+            if (dOff >= destEnd) {
+                break;
+            }
+
+            final int matchDec = (src[srcOff++] & 0xFF) | ((src[srcOff++] & 0xFF) << 8);
+            assert matchDec > 0 : "invalid match distance " + matchDec;
+            int matchLen = token & 0x0F;
+            if (matchLen == 0x0F) {
+                byte len;
+                while ((len = src[srcOff++]) == (byte) 0xFF) {
+                    matchLen += 0xFF;
+                }
+                matchLen += len & 0xFF;
+            }
+            matchLen += MIN_MATCH;
+
+            if (matchDec >= matchLen) {
+                System.arraycopy(dest, dOff - matchDec, dest, dOff, matchLen);
+                dOff += matchLen;
+            } else {
+                // overlapping copy, e.g. for runs of the same byte
+                for (int ref = dOff - matchDec, end = dOff + matchLen; dOff < end; ++ref, ++dOff) {
+                    dest[dOff] = dest[ref];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses data with a preset dictionary. Instances keep their hash tables between calls and are not thread-safe.
+     */
+    static final class Compressor {
+
+        private final int[] hashTable = new int[1 << HASH_LOG];
+        private final short[] chainTable = new short[MASK + 1];
+
+        /**
+         * Compresses {@code buffer[dictLen, dictLen + len)} using {@code buffer[0, dictLen)} as a dictionary.
+         */
+        void compress(byte[] buffer, int dictLen, int len, DataOutput out) throws IOException {
+            Arrays.fill(hashTable, 0);
+            final int end = dictLen + len;
+            for (int off = Math.max(0, dictLen - MAX_DISTANCE); off < dictLen && off + MIN_MATCH <= end; ++off) {
+                insert(buffer, off);
+            }
+
+            final int matchLimit = end - LAST_LITERALS;
+            int anchor = dictLen;
+            int off = dictLen;
+            while (off + MIN_MATCH <= matchLimit) {
+                final int sequence = readInt(buffer, off);
+                int bestLen = 0;
+                int bestRef = -1;
+                int ref = hashTable[hash(sequence)] - 1;
+                for (int attempts = 0; ref >= 0 && off - ref <= MAX_DISTANCE && attempts < MAX_ATTEMPTS; ++attempts) {
+                    if (readInt(buffer, ref) == sequence) {
+                        final int matchLen = MIN_MATCH + commonBytes(buffer, ref + MIN_MATCH, off + MIN_MATCH, matchLimit);
+                        if (matchLen > bestLen) {
+                            bestLen = matchLen;
+                            bestRef = ref;
+                        }
+                    }
+                    final int delta = chainTable[ref & MASK] & 0xFFFF;
+                    if (delta == 0) {
+                        break;
+                    }
+                    ref -= delta;
+                }
+                insert(buffer, off);
+                if (bestLen == 0) {
+                    ++off;
+                    continue;
+                }
+                encodeSequence(buffer, anchor, off - anchor, off - bestRef, bestLen, out);
+                for (int i = off + 1, matchEnd = off + bestLen; i < matchEnd; ++i) {
+                    insert(buffer, i);
+                }
+                off += bestLen;
+                anchor = off;
+            }
+            if (end > anchor) {
+                encodeLastLiterals(buffer, anchor, end - anchor, out);
+            }
+        }
+
+        private void insert(byte[] buffer, int off) {
+            final int h = hash(readInt(buffer, off));
+            final int previous = hashTable[h] - 1;
+            int delta = previous < 0 ? 0 : off - previous;
+            if (delta > MAX_DISTANCE) {
+                delta = 0;
+            }
+            chainTable[off & MASK] = (short) delta;
+            hashTable[h] = off + 1;
+        }
+    }
+
+    private static int hash(int i) {
+        return (i * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] buf, int i) {
+        return ((buf[i] & 0xFF) << 24) | ((buf[i + 1] & 0xFF) << 16) | ((buf[i + 2] & 0xFF) << 8) | (buf[i + 3] & 0xFF);
+    }
+
+    private static int commonBytes(byte[] b, int o1, int o2, int limit) {
+        int count = 0;
+        while (o2 < limit && b[o1++] == b[o2++]) {
+            ++count;
+        }
+        return count;
+    }
+
+    private static void encodeLen(int l, DataOutput out) throws IOException {
+        while (l >= 0xFF) {
+            out.writeByte((byte) 0xFF);
+            l -= 0xFF;
+        }
+        out.writeByte((byte) l);
+    }
+
+    private static void encodeLiterals(byte[] bytes, int token, int anchor, int literalLen, DataOutput out) throws IOException {
+        out.writeByte((byte) token);
+        if (literalLen >= 0x0F) {
+            encodeLen(literalLen - 0x0F, out);
+        }
+        out.writeBytes(bytes, anchor, literalLen);
+    }
+
+    private static void encodeLastLiterals(byte[] bytes, int anchor, int literalLen, DataOutput out) throws IOException {
+        final int token = Math.min(literalLen, 0x0F) << 4;
+        encodeLiterals(bytes, token, anchor, literalLen, out);
+    }
+
+    private static void encodeSequence(byte[] bytes, int anchor, int literalLen, int matchDec, int matchLen,
+                                       DataOutput out) throws IOException {
+        assert matchDec > 0 && matchDec <= MAX_DISTANCE : "invalid match distance " + matchDec;
+        final int matchLenMinusMin = matchLen - MIN_MATCH;
+        final int token = (Math.min(literalLen, 0x0F) << 4) | Math.min(matchLenMinusMin, 0x0F);
+        encodeLiterals(bytes, token, anchor, literalLen, out);
+        out.writeByte((byte) matchDec);
+        out.writeByte((byte) (matchDec >>> 8));
+        if (matchLenMinusMin >= 0x0F) {
+            encodeLen(matchLenMinusMin - 0x0F, out);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+
+/**
+ * A {@link CompressionMode} that compresses each chunk of stored fields with LZ4 and a preset dictionary. The first bytes of the chunk
+ * are used as the dictionary and compressed on their own, the rest of the chunk is split into {@link #NUM_SUB_BLOCKS} blocks that are
+ * each compressed independently with the dictionary as a prefix. Large chunks give LZ4 enough context to compress repetitive
+ * documents like logs almost as well as DEFLATE, while retrieving a document only needs to decompress the dictionary and the blocks
+ * that the document overlaps with.
+ */
+final class LZ4WithDictionaryCompressionMode extends CompressionMode {
+
+    static final int NUM_SUB_BLOCKS = 10;
+    // the dictionary is half as large as a block, it needs to be decompressed for every document that is retrieved
+    static final int DICT_SIZE_FACTOR = 2;
+
+    static final LZ4WithDictionaryCompressionMode INSTANCE = new LZ4WithDictionaryCompressionMode();
+
+    private LZ4WithDictionaryCompressionMode() {}
+
+    @Override
+    public Compressor newCompressor() {
+        return new LZ4WithDictionaryCompressor();
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        return new LZ4WithDictionaryDecompressor();
+    }
+
+    @Override
+    public String toString() {
+        return "LZ4_WITH_DICTIONARY";
+    }
+
+    static int dictionaryLength(int len) {
+        return len / (NUM_SUB_BLOCKS * DICT_SIZE_FACTOR);
+    }
+
+    static int blockLength(int len, int dictLength) {
+        return Math.max(1, (len - dictLength + NUM_SUB_BLOCKS - 1) / NUM_SUB_BLOCKS);
+    }
+
+    private static final class LZ4WithDictionaryCompressor extends Compressor {
+
+        private final LZ4WithDictionary.Compressor compressor = new LZ4WithDictionary.Compressor();
+        private final ByteBuffersDataOutput compressed = ByteBuffersDataOutput.newResettableInstance();
+        private int[] compressedLengths = new int[NUM_SUB_BLOCKS + 1];
+        private byte[] buffer = BytesRef.EMPTY_BYTES;
+
+        @Override
+        public void compress(byte[] bytes, int off, int len, DataOutput out) throws IOException {
+            final int dictLength = dictionaryLength(len);
+            final int blockLength = blockLength(len, dictLength);
+            out.writeVInt(dictLength);
+            out.writeVInt(blockLength);
+
+            buffer = ArrayUtil.grow(buffer, dictLength + blockLength);
+            System.arraycopy(bytes, off, buffer, 0, dictLength);
+            compressed.reset();
+            int numCompressed = 0;
+            // the dictionary itself is compressed without a dictionary
+            compressor.compress(buffer, 0, dictLength, compressed);
+            compressedLengths[numCompressed++] = Math.toIntExact(compressed.size());
+            for (int start = dictLength; start < len; start += blockLength) {
+                final int length = Math.min(blockLength, len - start);
+                System.arraycopy(bytes, off + start, buffer, dictLength, length);
+                final long before = compressed.size();
+                compressor.compress(buffer, dictLength, length, compressed);
+                compressedLengths = ArrayUtil.grow(compressedLengths, numCompressed + 1);
+                compressedLengths[numCompressed++] = Math.toIntExact(compressed.size() - before);
+            }
+            for (int i = 0; i < numCompressed; i++) {
+                out.writeVInt(compressedLengths[i]);
+            }
+            compressed.copyTo(out);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static final class LZ4WithDictionaryDecompressor extends Decompressor {
+
+        private int[] compressedLengths = new int[NUM_SUB_BLOCKS + 1];
+        private byte[] compressed = BytesRef.EMPTY_BYTES;
+        private byte[] buffer = BytesRef.EMPTY_BYTES;
+
+        @Override
+        public void decompress(DataInput in, int originalLength, int offset, int length, BytesRef bytes) throws IOException {
+            assert offset + length <= originalLength;
+            if (length == 0) {
+                bytes.length = 0;
+                return;
+            }
+            final int dictLength = in.readVInt();
+            final int blockLength = in.readVInt();
+            final int numBlocks = originalLength > dictLength ? (originalLength - dictLength + blockLength - 1) / blockLength : 0;
+            compressedLengths = ArrayUtil.grow(compressedLengths, numBlocks + 1);
+            for (int i = 0; i <= numBlocks; i++) {
+                compressedLengths[i] = in.readVInt();
+            }
+
+            // the dictionary is needed to decompress every block, plus room for the largest block
+            buffer = ArrayUtil.grow(buffer, dictLength + blockLength);
+            decompressBlock(in, compressedLengths[0], 0, dictLength);
+
+            bytes.bytes = ArrayUtil.grow(bytes.bytes, length);
+            bytes.offset = 0;
+            bytes.length = 0;
+            final int end = offset + length;
+            if (offset < dictLength) {
+                final int toCopy = Math.min(dictLength, end) - offset;
+                System.arraycopy(buffer, offset, bytes.bytes, 0, toCopy);
+                bytes.length = toCopy;
+            }
+            int blockStart = dictLength;
+            for (int block = 0; block < numBlocks && blockStart < end; block++, blockStart += blockLength) {
+                final int blockEnd = Math.min(blockStart + blockLength, originalLength);
+                if (blockEnd <= offset) {
+                    in.skipBytes(compressedLengths[block + 1]);
+                    continue;
+                }
+                // the last block that is needed doesn't need to be decompressed entirely
+                final int toDecompress = Math.min(blockEnd, end) - blockStart;
+                decompressBlock(in, compressedLengths[block + 1], dictLength, toDecompress);
+                final int from = Math.max(offset, blockStart);
+                final int toCopy = Math.min(blockEnd, end) - from;
+                System.arraycopy(buffer, dictLength + from - blockStart, bytes.bytes, bytes.length, toCopy);
+                bytes.length += toCopy;
+            }
+            assert bytes.length == length : bytes.length + " != " + length;
+        }
+
+        private void decompressBlock(DataInput in, int compressedLength, int dOff, int decompressedLength) throws IOException {
+            compressed = ArrayUtil.grow(compressed, compressedLength);
+            in.readBytes(compressed, 0, compressedLength);
+            LZ4WithDictionary.decompress(compressed, 0, buffer, dOff, decompressedLength);
+        }
+
+        @Override
+        public Decompressor clone() {
+            return new LZ4WithDictionaryDecompressor();
+        }
+    }
+}
@@ -25,6 +25,10 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.MergeScheduler;
 import org.apache.lucene.index.OneMergeHelper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
@@ -36,6 +40,7 @@ import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.MergeSchedulerConfig;
 import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.merge.NodeMergeScheduler;
 import org.elasticsearch.index.merge.OnGoingMerge;
 import org.elasticsearch.index.shard.ShardId;
 
@@ -46,7 +51,9 @@ import java.util.Set;
 
 /**
  * An extension to the {@link ConcurrentMergeScheduler} that provides tracking on merge times, total
- * and current merges.
+ * and current merges. If a {@link NodeMergeScheduler.ShardScheduler} is provided, merges additionally
+ * wait for a slot of the node-wide merge budget before they start, and the time they wait counts as
+ * stopped time.
  */
 class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
 
@@ -66,15 +73,31 @@ class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
     private final Set<OnGoingMerge> onGoingMerges = ConcurrentCollections.newConcurrentSet();
     private final Set<OnGoingMerge> readOnlyOnGoingMerges = Collections.unmodifiableSet(onGoingMerges);
     private final MergeSchedulerConfig config;
+    @Nullable
+    private final NodeMergeScheduler.ShardScheduler nodeScheduler;
+    private volatile boolean closed;
 
-    ElasticsearchConcurrentMergeScheduler(ShardId shardId, IndexSettings indexSettings) {
+    ElasticsearchConcurrentMergeScheduler(ShardId shardId, IndexSettings indexSettings,
+                                          @Nullable NodeMergeScheduler.ShardScheduler nodeScheduler) {
         this.config = indexSettings.getMergeSchedulerConfig();
         this.shardId = shardId;
+        this.nodeScheduler = nodeScheduler;
         this.indexSettings = indexSettings.getSettings();
         this.logger = Loggers.getLogger(getClass(), shardId);
         refreshConfig();
     }
 
+    /**
+     * Aborts the merges that wait for a slot of the node-wide merge budget, which would otherwise keep the writer from rolling back
+     * until they got a slot. Must only be called right before the writer gets rolled back.
+     */
+    void abortQueuedMerges() {
+        closed = true;
+        if (nodeScheduler != null) {
+            nodeScheduler.abortQueuedMerges();
+        }
+    }
+
     public Set<OnGoingMerge> onGoingMerges() {
         return readOnlyOnGoingMerges;
     }
@@ -84,6 +107,7 @@ class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
         int totalNumDocs = merge.totalNumDocs();
         long totalSizeInBytes = merge.totalBytesSize();
         long timeNS = System.nanoTime();
+        long queuedNS = 0;
         currentMerges.inc();
         currentMergesNumDocs.inc(totalNumDocs);
         currentMergesSizeInBytes.inc(totalSizeInBytes);
@@ -98,7 +122,26 @@ class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
         }
         try {
             beforeMerge(onGoingMerge);
-            super.doMerge(writer, merge);
+            if (nodeScheduler != null) {
+                final long queuedStartNS = System.nanoTime();
+                final Releasable slot;
+                try {
+                    slot = nodeScheduler.acquire(totalSizeInBytes, () -> closed || merge.isAborted());
+                } catch (InterruptedException e) {
+                    throw new ThreadInterruptedException(e);
+                } finally {
+                    queuedNS = System.nanoTime() - queuedStartNS;
+                }
+                if (closed) {
+                    // the writer aborts this merge as it gets rolled back anyway, make sure it bails out rather than merging
+                    merge.setAborted();
+                }
+                try (slot) {
+                    super.doMerge(writer, merge);
+                }
+            } else {
+                super.doMerge(writer, merge);
+            }
         } finally {
             long tookMS = TimeValue.nsecToMSec(System.nanoTime() - timeNS);
 
@@ -113,7 +156,7 @@ class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
             totalMergesSizeInBytes.inc(totalSizeInBytes);
             totalMerges.inc(tookMS);
             long stoppedMS = TimeValue.nsecToMSec(
-                merge.getMergeProgress().getPauseTimes().get(MergePolicy.OneMergeProgress.PauseReason.STOPPED)
+                merge.getMergeProgress().getPauseTimes().get(MergePolicy.OneMergeProgress.PauseReason.STOPPED) + queuedNS
             );
             long throttledMS = TimeValue.nsecToMSec(
                 merge.getMergeProgress().getPauseTimes().get(MergePolicy.OneMergeProgress.PauseReason.PAUSED)
@@ -161,6 +204,12 @@ class ElasticsearchConcurrentMergeScheduler extends ConcurrentMergeScheduler {
         return this;
     }
 
+    @Override
+    public Directory wrapForMerge(MergePolicy.OneMerge merge, Directory in) {
+        final Directory wrapped = super.wrapForMerge(merge, in);
+        return nodeScheduler == null ? wrapped : nodeScheduler.wrapForMerge(wrapped);
+    }
+
     @Override
     protected boolean maybeStall(IndexWriter writer) {
         // Don't stall here, because we do our own index throttling (in InternalEngine.IndexThrottle) when merges can't keep up
@@ -52,12 +52,14 @@ import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.uid.IdFilters;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndVersion;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ReleasableLock;
+import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Mapping;
@@ -78,6 +80,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -290,6 +293,14 @@ public abstract class Engine implements Closeable {
      */
     public abstract boolean isThrottled();
 
+    /**
+     * Returns the counters of the per-segment id filters of this engine, or <code>null</code> if it doesn't build them.
+     */
+    @Nullable
+    public IdFilters.Counters getIdFilterCounters() {
+        return null;
+    }
+
     /**
      * Trims translog for terms below <code>belowTerm</code> and seq# above <code>aboveSeqNo</code>
      * @see Translog#trimOperations(long, long)
@@ -337,6 +348,22 @@ public abstract class Engine implements Closeable {
      */
     public abstract IndexResult index(Index index) throws IOException;
 
+    /**
+     * Perform a batch of document index operations on the engine. The default implementation performs the operations one by one,
+     * engines may index them in fewer calls to Lucene as long as every operation gets its own result.
+     * @param operations operations to perform
+     * @return one {@link IndexResult} per operation, in the same order as the operations
+     *
+     * Note: engine level failures (i.e. persistent engine failures) are thrown
+     */
+    public List<IndexResult> indexBatch(List<Index> operations) throws IOException {
+        final List<IndexResult> results = new ArrayList<>(operations.size());
+        for (Index operation : operations) {
+            results.add(index(operation));
+        }
+        return results;
+    }
+
     /**
      * Perform document delete operation on the engine
      * @param delete operation to perform
@@ -708,6 +735,14 @@ public abstract class Engine implements Closeable {
      */
     public abstract Translog.Location getTranslogLastWriteLocation();
 
+    /**
+     * Returns the last location of the translog whose operation, and all operations before it, become visible on the next refresh.
+     * Refresh listeners are notified of the locations up to this location.
+     */
+    public Translog.Location getTranslogLastRefreshableLocation() {
+        return getTranslogLastWriteLocation();
+    }
+
     protected final void ensureOpen(Exception suppressed) {
         if (isClosed.get()) {
             AlreadyClosedException ace = new AlreadyClosedException(shardId + " engine is closed", failedEngine.get());
@@ -1061,6 +1096,29 @@ public abstract class Engine implements Closeable {
      */
     public abstract SafeCommitInfo getSafeCommitInfo();
 
+    /**
+     * Acquires the segments of the last internal refresh, which segment-based replication copies to the replicas. The user data
+     * of the returned segment infos records the sequence numbers that these segments account for, like the user data of a commit.
+     * Defaults to the segments of the last commit, which is all that engines that never write segments on their own expose to
+     * searches.
+     */
+    public SegmentInfosRef acquireLastRefreshedSegmentInfos() throws EngineException {
+        final IndexCommitRef commitRef = acquireLastIndexCommit(false);
+        boolean success = false;
+        try {
+            final SegmentInfos segmentInfos = Lucene.readSegmentInfos(commitRef.getIndexCommit());
+            final SegmentInfosRef segmentInfosRef = new SegmentInfosRef(segmentInfos, commitRef::close);
+            success = true;
+            return segmentInfosRef;
+        } catch (IOException e) {
+            throw new EngineException(shardId, "failed to read the segments of the last commit", e);
+        } finally {
+            if (success == false) {
+                IOUtils.closeWhileHandlingException(commitRef);
+            }
+        }
+    }
+
     /**
      * If the specified throwable contains a fatal error in the throwable graph, such a fatal error will be thrown. Callers should ensure
      * that there are no catch statements that would catch an error in the stack as the fatal error here should go uncaught and be handled
@@ -1672,6 +1730,31 @@ public abstract class Engine implements Closeable {
         }
     }
 
+    /**
+     * A reference to the segments of a point-in-time reader, whose files are not deleted until the reference is closed.
+     */
+    public static class SegmentInfosRef implements Closeable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final CheckedRunnable<IOException> onClose;
+        private final SegmentInfos segmentInfos;
+
+        public SegmentInfosRef(SegmentInfos segmentInfos, CheckedRunnable<IOException> onClose) {
+            this.segmentInfos = segmentInfos;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                onClose.run();
+            }
+        }
+
+        public SegmentInfos getSegmentInfos() {
+            return segmentInfos;
+        }
+    }
+
     public void onSettingsChanged() {
 
     }
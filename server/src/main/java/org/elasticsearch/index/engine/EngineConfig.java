@@ -35,6 +35,7 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.codec.CodecService;
 import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.merge.NodeMergeScheduler;
 import org.elasticsearch.index.seqno.RetentionLeases;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.store.Store;
@@ -94,6 +95,8 @@ public final class EngineConfig {
 
     private final LongSupplier primaryTermSupplier;
     private final TombstoneDocSupplier tombstoneDocSupplier;
+    @Nullable
+    private final NodeMergeScheduler.ShardScheduler nodeMergeScheduler;
 
     /**
      * Index setting to change the low level lucene codec used for writing new segments.
@@ -105,12 +108,13 @@ public final class EngineConfig {
         switch (s) {
             case "default":
             case "best_compression":
+            case "dictionary_compression":
             case "lucene_default":
                 return s;
             default:
                 if (Codec.availableCodecs().contains(s) == false) { // we don't error message the not officially supported ones
                     throw new IllegalArgumentException(
-                        "unknown value for [index.codec] must be one of [default, best_compression] but was: " + s);
+                        "unknown value for [index.codec] must be one of [default, best_compression, dictionary_compression] but was: " + s);
                 }
                 return s;
         }
@@ -133,6 +137,29 @@ public final class EngineConfig {
                         Supplier<RetentionLeases> retentionLeasesSupplier,
                         LongSupplier primaryTermSupplier,
                         TombstoneDocSupplier tombstoneDocSupplier) {
+        this(shardId, allocationId, threadPool, indexSettings, warmer, store, mergePolicy, analyzer, similarity, codecService,
+            eventListener, queryCache, queryCachingPolicy, translogConfig, flushMergesAfter, externalRefreshListener,
+            internalRefreshListener, indexSort, circuitBreakerService, globalCheckpointSupplier, retentionLeasesSupplier,
+            primaryTermSupplier, tombstoneDocSupplier, null);
+    }
+
+    /**
+     * Creates a new {@link org.elasticsearch.index.engine.EngineConfig} whose merges are scheduled through the node-wide
+     * merge scheduler if the given shard scheduler is not null
+     */
+    public EngineConfig(ShardId shardId, String allocationId, ThreadPool threadPool,
+                        IndexSettings indexSettings, Engine.Warmer warmer, Store store,
+                        MergePolicy mergePolicy, Analyzer analyzer,
+                        Similarity similarity, CodecService codecService, Engine.EventListener eventListener,
+                        QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
+                        TranslogConfig translogConfig, TimeValue flushMergesAfter,
+                        List<ReferenceManager.RefreshListener> externalRefreshListener,
+                        List<ReferenceManager.RefreshListener> internalRefreshListener, Sort indexSort,
+                        CircuitBreakerService circuitBreakerService, LongSupplier globalCheckpointSupplier,
+                        Supplier<RetentionLeases> retentionLeasesSupplier,
+                        LongSupplier primaryTermSupplier,
+                        TombstoneDocSupplier tombstoneDocSupplier,
+                        @Nullable NodeMergeScheduler.ShardScheduler nodeMergeScheduler) {
         this.shardId = shardId;
         this.allocationId = allocationId;
         this.indexSettings = indexSettings;
@@ -171,6 +198,7 @@ public final class EngineConfig {
         this.retentionLeasesSupplier = Objects.requireNonNull(retentionLeasesSupplier);
         this.primaryTermSupplier = primaryTermSupplier;
         this.tombstoneDocSupplier = tombstoneDocSupplier;
+        this.nodeMergeScheduler = nodeMergeScheduler;
     }
 
     /**
@@ -381,4 +409,13 @@ public final class EngineConfig {
     public TombstoneDocSupplier getTombstoneDocSupplier() {
         return tombstoneDocSupplier;
     }
+
+    /**
+     * Returns the scheduler that the merges of this shard go through under the node-wide merge budget, or <code>null</code>
+     * if the shard schedules its merges on its own.
+     */
+    @Nullable
+    public NodeMergeScheduler.ShardScheduler getNodeMergeScheduler() {
+        return nodeMergeScheduler;
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.uid.IdFilters;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Builds the {@link IdFilters id filters} of new segments. Merged segments get their filter while they are warmed on the merge thread,
+ * flushed segments when the internal reader that first contains them is opened. The memory of the filters is accounted like the memory
+ * of the segments themselves.
+ */
+final class IdFilterWarmer
+    implements IndexWriter.IndexReaderWarmer, BiConsumer<ElasticsearchDirectoryReader, ElasticsearchDirectoryReader> {
+
+    private final CircuitBreakerService breakerService;
+    private final IdFilters.Counters counters = new IdFilters.Counters();
+
+    IdFilterWarmer(CircuitBreakerService breakerService) {
+        this.breakerService = breakerService;
+    }
+
+    IdFilters.Counters getCounters() {
+        return counters;
+    }
+
+    @Override
+    public void warm(LeafReader reader) throws IOException {
+        final long bytes = IdFilters.build(reader, IdFieldMapper.NAME, counters);
+        if (bytes > 0) {
+            final CircuitBreaker breaker = breakerService.getBreaker(CircuitBreaker.ACCOUNTING);
+            breaker.addWithoutBreaking(bytes);
+            reader.getCoreCacheHelper().addClosedListener(k -> breaker.addWithoutBreaking(-bytes));
+        }
+    }
+
+    @Override
+    public void accept(ElasticsearchDirectoryReader reader, ElasticsearchDirectoryReader previousReader) {
+        for (LeafReaderContext leaf : reader.leaves()) {
+            try {
+                warm(leaf.reader());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
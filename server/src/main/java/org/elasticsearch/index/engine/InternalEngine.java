@@ -25,6 +25,7 @@ import org.apache.lucene.codecs.blocktree.BlockTreeTermsReader.FSTLoadMode;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
@@ -37,6 +38,7 @@ import org.apache.lucene.index.SegmentCommitInfo;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.ShuffleForcedMergePolicy;
 import org.apache.lucene.index.SoftDeletesRetentionMergePolicy;
+import org.apache.lucene.index.StandardDirectoryReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -62,14 +64,17 @@ import org.elasticsearch.common.Booleans;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.LoggerInfoStream;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
 import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.lucene.uid.IdFilters;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndSeqNo;
 import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.KeyedLock;
 import org.elasticsearch.common.util.concurrent.ReleasableLock;
@@ -85,6 +90,7 @@ import org.elasticsearch.index.mapper.SeqNoFieldMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.merge.NodeMergeScheduler;
 import org.elasticsearch.index.merge.OnGoingMerge;
 import org.elasticsearch.index.seqno.LocalCheckpointTracker;
 import org.elasticsearch.index.seqno.SeqNoStats;
@@ -102,8 +108,10 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -144,7 +152,9 @@ public class InternalEngine extends Engine {
 
     // A uid (in the form of BytesRef) to the version map
     // we use the hashed variant since we iterate over it and check removal and additions on existing keys
-    private final LiveVersionMap versionMap = new LiveVersionMap();
+    private final LiveVersionMap versionMap;
+    @Nullable
+    private final IdFilterWarmer idFilterWarmer;
 
     private volatile SegmentInfos lastCommittedSegmentInfos;
 
@@ -198,6 +208,10 @@ public class InternalEngine extends Engine {
             final EngineConfig engineConfig,
             final BiFunction<Long, Long, LocalCheckpointTracker> localCheckpointTrackerSupplier) {
         super(engineConfig);
+        // the memory of the version map is accounted as part of the indexing buffer, it must not be charged to a breaker too
+        versionMap = new LiveVersionMap(engineConfig.getIndexSettings().isCompactVersionMap() ? BigArrays.NON_RECYCLING_INSTANCE : null);
+        idFilterWarmer = engineConfig.getIndexSettings().isIdFilterEnabled()
+            ? new IdFilterWarmer(engineConfig.getCircuitBreakerService()) : null;
         final TranslogDeletionPolicy translogDeletionPolicy = new TranslogDeletionPolicy();
         store.incRef();
         IndexWriter writer = null;
@@ -208,7 +222,8 @@ public class InternalEngine extends Engine {
         boolean success = false;
         try {
             this.lastDeleteVersionPruneTimeMSec = engineConfig.getThreadPool().relativeTimeInMillis();
-            mergeScheduler = scheduler = new EngineMergeScheduler(engineConfig.getShardId(), engineConfig.getIndexSettings());
+            mergeScheduler = scheduler = new EngineMergeScheduler(engineConfig.getShardId(), engineConfig.getIndexSettings(),
+                engineConfig.getNodeMergeScheduler());
             throttle = new IndexThrottle();
             try {
                 store.trimUnsafeCommits(config().getTranslogConfig().getTranslogPath());
@@ -271,6 +286,9 @@ public class InternalEngine extends Engine {
             }
             completionStatsCache = new CompletionStatsCache(() -> acquireSearcher("completion_stats"));
             this.externalReaderManager.addListener(completionStatsCache);
+            if (engineConfig.getIndexSettings().isTrackTranslogLocations()) {
+                trackTranslogLocation.set(true);
+            }
             success = true;
         } finally {
             if (success == false) {
@@ -594,10 +612,16 @@ public class InternalEngine extends Engine {
         ElasticsearchReaderManager internalReaderManager = null;
         try {
             try {
+                // segment-based replication copies the files of refreshed segments, so deletes must be written to disk on refresh
+                final boolean writeAllDeletes = engineConfig.getIndexSettings().isSegmentReplication();
                 final ElasticsearchDirectoryReader directoryReader =
-                    ElasticsearchDirectoryReader.wrap(DirectoryReader.open(indexWriter), shardId);
-                internalReaderManager = new ElasticsearchReaderManager(directoryReader,
-                       new RamAccountingRefreshListener(engineConfig.getCircuitBreakerService()));
+                    ElasticsearchDirectoryReader.wrap(DirectoryReader.open(indexWriter, true, writeAllDeletes), shardId);
+                BiConsumer<ElasticsearchDirectoryReader, ElasticsearchDirectoryReader> internalRefreshListener =
+                    new RamAccountingRefreshListener(engineConfig.getCircuitBreakerService());
+                if (idFilterWarmer != null) {
+                    internalRefreshListener = internalRefreshListener.andThen(idFilterWarmer);
+                }
+                internalReaderManager = new ElasticsearchReaderManager(directoryReader, internalRefreshListener);
                 lastCommittedSegmentInfos = store.readLastCommittedSegmentsInfo();
                 ExternalReaderManager externalReaderManager = new ExternalReaderManager(internalReaderManager, externalRefreshListener);
                 success = true;
@@ -645,8 +669,8 @@ public class InternalEngine extends Engine {
                             get.getIfSeqNo(), get.getIfPrimaryTerm(), versionValue.seqNo, versionValue.term);
                     }
                     if (get.isReadFromTranslog()) {
-                        // this is only used for updates - API _GET calls will always read form a reader for consistency
-                        // the update call doesn't need the consistency since it's source only + _parent but parent can go away in 7.0
+                        // serve the document from the translog if its location is known in order to avoid a refresh. locations
+                        // are tracked from the start if index.translog.track_locations is set, or after the first realtime get
                         if (versionValue.getLocation() != null) {
                             try {
                                 Translog.Operation operation = translog.readOperation(versionValue.getLocation());
@@ -876,63 +900,7 @@ public class InternalEngine extends Engine {
                  *  or calls updateDocument.
                  */
                 final IndexingStrategy plan = indexingStrategyForOperation(index);
-
-                final IndexResult indexResult;
-                if (plan.earlyResultOnPreFlightError.isPresent()) {
-                    indexResult = plan.earlyResultOnPreFlightError.get();
-                    assert indexResult.getResultType() == Result.Type.FAILURE : indexResult.getResultType();
-                } else {
-                    // generate or register sequence number
-                    if (index.origin() == Operation.Origin.PRIMARY) {
-                        index = new Index(index.uid(), index.parsedDoc(), generateSeqNoForOperationOnPrimary(index), index.primaryTerm(),
-                            index.version(), index.versionType(), index.origin(), index.startTime(), index.getAutoGeneratedIdTimestamp(),
-                            index.isRetry(), index.getIfSeqNo(), index.getIfPrimaryTerm());
-
-                        final boolean toAppend = plan.indexIntoLucene && plan.useLuceneUpdateDocument == false;
-                        if (toAppend == false) {
-                            advanceMaxSeqNoOfUpdatesOrDeletesOnPrimary(index.seqNo());
-                        }
-                    } else {
-                        markSeqNoAsSeen(index.seqNo());
-                    }
-
-                    assert index.seqNo() >= 0 : "ops should have an assigned seq no.; origin: " + index.origin();
-
-                    if (plan.indexIntoLucene || plan.addStaleOpToLucene) {
-                        indexResult = indexIntoLucene(index, plan);
-                    } else {
-                        indexResult = new IndexResult(
-                            plan.versionForIndexing, index.primaryTerm(), index.seqNo(), plan.currentNotFoundOrDeleted);
-                    }
-                }
-                if (index.origin().isFromTranslog() == false) {
-                    final Translog.Location location;
-                    if (indexResult.getResultType() == Result.Type.SUCCESS) {
-                        location = translog.add(new Translog.Index(index, indexResult));
-                    } else if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
-                        // if we have document failure, record it as a no-op in the translog and Lucene with the generated seq_no
-                        final NoOp noOp = new NoOp(indexResult.getSeqNo(), index.primaryTerm(), index.origin(),
-                            index.startTime(), indexResult.getFailure().toString());
-                        location = innerNoOp(noOp).getTranslogLocation();
-                    } else {
-                        location = null;
-                    }
-                    indexResult.setTranslogLocation(location);
-                }
-                if (plan.indexIntoLucene && indexResult.getResultType() == Result.Type.SUCCESS) {
-                    final Translog.Location translogLocation = trackTranslogLocation.get() ? indexResult.getTranslogLocation() : null;
-                    versionMap.maybePutIndexUnderLock(index.uid().bytes(),
-                        new IndexVersionValue(translogLocation, plan.versionForIndexing, index.seqNo(), index.primaryTerm()));
-                }
-                localCheckpointTracker.markSeqNoAsProcessed(indexResult.getSeqNo());
-                if (indexResult.getTranslogLocation() == null) {
-                    // the op is coming from the translog (and is hence persisted already) or it does not have a sequence number
-                    assert index.origin().isFromTranslog() || indexResult.getSeqNo() == SequenceNumbers.UNASSIGNED_SEQ_NO;
-                    localCheckpointTracker.markSeqNoAsPersisted(indexResult.getSeqNo());
-                }
-                indexResult.setTook(System.nanoTime() - index.startTime());
-                indexResult.freeze();
-                return indexResult;
+                return indexWithStrategy(index, plan);
             }
         } catch (RuntimeException | IOException e) {
             try {
@@ -948,6 +916,173 @@ public class InternalEngine extends Engine {
         }
     }
 
+    @Override
+    public List<IndexResult> indexBatch(List<Index> operations) throws IOException {
+        if (operations.size() < 2 || operations.stream().allMatch(this::canIndexInBatch) == false) {
+            return super.indexBatch(operations);
+        }
+        final boolean doThrottle = operations.get(0).origin().isRecovery() == false;
+        try (ReleasableLock releasableLock = readLock.acquire()) {
+            ensureOpen();
+            // acquire the uid locks in a consistent order so that concurrent batches cannot deadlock
+            final List<Index> sortedByUid = new ArrayList<>(operations);
+            sortedByUid.sort(Comparator.comparing(operation -> operation.uid().bytes()));
+            final List<Releasable> uidLocks = new ArrayList<>(sortedByUid.size());
+            try (Releasable ignored = () -> Releasables.close(uidLocks);
+                Releasable indexThrottle = doThrottle ? () -> {} : throttle.acquireThrottle()) {
+                for (Index operation : sortedByUid) {
+                    uidLocks.add(versionMap.acquireLock(operation.uid().bytes()));
+                }
+                return indexBatchUnderLock(operations);
+            }
+        } catch (RuntimeException | IOException e) {
+            try {
+                maybeFailEngine("index batch of [" + operations.size() + "] operations", e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the operation can be part of a batch that is added to Lucene with a single call, which requires it to be an operation
+     * on the primary that appends a document with an auto-generated id that has never been sent to this shard before.
+     */
+    private boolean canIndexInBatch(Index index) {
+        return index.origin() == Operation.Origin.PRIMARY
+            && index.seqNo() == SequenceNumbers.UNASSIGNED_SEQ_NO
+            && index.isRetry() == false
+            && canOptimizeAddDocument(index);
+    }
+
+    private List<IndexResult> indexBatchUnderLock(List<Index> operations) throws IOException {
+        final IndexResult[] results = new IndexResult[operations.size()];
+        final IndexingStrategy[] plans = new IndexingStrategy[operations.size()];
+        final List<Integer> appends = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final Index index = operations.get(i);
+            assert assertIncomingSequenceNumber(index.origin(), index.seqNo());
+            lastWriteNanos = index.startTime();
+            plans[i] = indexingStrategyForOperation(index);
+            if (plans[i].indexIntoLucene && plans[i].useLuceneUpdateDocument == false) {
+                appends.add(i);
+            } else {
+                // the document may have been indexed before, no need to optimize this rare case
+                results[i] = indexWithStrategy(index, plans[i]);
+            }
+        }
+        if (appends.isEmpty() == false) {
+            // assign a single range of sequence numbers to all appends, none of them advances the max seq no of updates
+            final long firstSeqNo = localCheckpointTracker.generateSeqNos(appends.size());
+            final Index[] appendOperations = new Index[appends.size()];
+            final List<ParseContext.Document> docs = new ArrayList<>(appends.size());
+            for (int j = 0; j < appends.size(); j++) {
+                final int i = appends.get(j);
+                final Index index = operations.get(i);
+                appendOperations[j] = new Index(index.uid(), index.parsedDoc(), firstSeqNo + j, index.primaryTerm(),
+                    index.version(), index.versionType(), index.origin(), index.startTime(), index.getAutoGeneratedIdTimestamp(),
+                    index.isRetry(), index.getIfSeqNo(), index.getIfPrimaryTerm());
+                appendOperations[j].parsedDoc().updateSeqID(appendOperations[j].seqNo(), appendOperations[j].primaryTerm());
+                appendOperations[j].parsedDoc().version().setLongValue(plans[i].versionForIndexing);
+                assert assertDocDoesNotExist(appendOperations[j], canOptimizeAddDocument(appendOperations[j]) == false);
+                docs.addAll(appendOperations[j].docs());
+            }
+            try {
+                indexWriter.addDocuments(docs);
+                numDocAppends.inc(docs.size());
+                for (int j = 0; j < appends.size(); j++) {
+                    final IndexingStrategy plan = plans[appends.get(j)];
+                    results[appends.get(j)] = new IndexResult(plan.versionForIndexing, appendOperations[j].primaryTerm(),
+                        appendOperations[j].seqNo(), plan.currentNotFoundOrDeleted);
+                }
+            } catch (Exception ex) {
+                if (ex instanceof AlreadyClosedException == false && indexWriter.getTragicException() == null) {
+                    /* A document failure aborts the whole batch and IW marks the documents that it already added as deleted. We
+                     * index the documents one by one again with their sequence numbers so that only the failing ones fail, see
+                     * #indexIntoLucene for how document failures are told apart from tragic events. */
+                    for (int j = 0; j < appends.size(); j++) {
+                        results[appends.get(j)] = indexIntoLucene(appendOperations[j], plans[appends.get(j)]);
+                    }
+                } else {
+                    throw ex;
+                }
+            }
+            for (int j = 0; j < appends.size(); j++) {
+                final int i = appends.get(j);
+                results[i] = completeIndexOperation(appendOperations[j], plans[i], results[i]);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private IndexResult indexWithStrategy(Index index, IndexingStrategy plan) throws IOException {
+        final IndexResult indexResult;
+        if (plan.earlyResultOnPreFlightError.isPresent()) {
+            indexResult = plan.earlyResultOnPreFlightError.get();
+            assert indexResult.getResultType() == Result.Type.FAILURE : indexResult.getResultType();
+        } else {
+            // generate or register sequence number
+            if (index.origin() == Operation.Origin.PRIMARY) {
+                index = new Index(index.uid(), index.parsedDoc(), generateSeqNoForOperationOnPrimary(index), index.primaryTerm(),
+                    index.version(), index.versionType(), index.origin(), index.startTime(), index.getAutoGeneratedIdTimestamp(),
+                    index.isRetry(), index.getIfSeqNo(), index.getIfPrimaryTerm());
+
+                final boolean toAppend = plan.indexIntoLucene && plan.useLuceneUpdateDocument == false;
+                if (toAppend == false) {
+                    advanceMaxSeqNoOfUpdatesOrDeletesOnPrimary(index.seqNo());
+                }
+            } else {
+                markSeqNoAsSeen(index.seqNo());
+            }
+
+            assert index.seqNo() >= 0 : "ops should have an assigned seq no.; origin: " + index.origin();
+
+            if (plan.indexIntoLucene || plan.addStaleOpToLucene) {
+                indexResult = indexIntoLucene(index, plan);
+            } else {
+                indexResult = new IndexResult(
+                    plan.versionForIndexing, index.primaryTerm(), index.seqNo(), plan.currentNotFoundOrDeleted);
+            }
+        }
+        return completeIndexOperation(index, plan, indexResult);
+    }
+
+    /**
+     * Records an index operation that was applied to Lucene, or that failed, in the translog, the version map and the local checkpoint
+     * tracker. Must be called while holding the lock on the uid of the operation.
+     */
+    private IndexResult completeIndexOperation(Index index, IndexingStrategy plan, IndexResult indexResult) throws IOException {
+        if (index.origin().isFromTranslog() == false) {
+            final Translog.Location location;
+            if (indexResult.getResultType() == Result.Type.SUCCESS) {
+                location = translog.add(new Translog.Index(index, indexResult));
+            } else if (indexResult.getSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
+                // if we have document failure, record it as a no-op in the translog and Lucene with the generated seq_no
+                final NoOp noOp = new NoOp(indexResult.getSeqNo(), index.primaryTerm(), index.origin(),
+                    index.startTime(), indexResult.getFailure().toString());
+                location = innerNoOp(noOp).getTranslogLocation();
+            } else {
+                location = null;
+            }
+            indexResult.setTranslogLocation(location);
+        }
+        if (plan.indexIntoLucene && indexResult.getResultType() == Result.Type.SUCCESS) {
+            final Translog.Location translogLocation = trackTranslogLocation.get() ? indexResult.getTranslogLocation() : null;
+            versionMap.maybePutIndexUnderLock(index.uid().bytes(),
+                new IndexVersionValue(translogLocation, plan.versionForIndexing, index.seqNo(), index.primaryTerm()));
+        }
+        localCheckpointTracker.markSeqNoAsProcessed(indexResult.getSeqNo());
+        if (indexResult.getTranslogLocation() == null) {
+            // the op is coming from the translog (and is hence persisted already) or it does not have a sequence number
+            assert index.origin().isFromTranslog() || indexResult.getSeqNo() == SequenceNumbers.UNASSIGNED_SEQ_NO;
+            localCheckpointTracker.markSeqNoAsPersisted(indexResult.getSeqNo());
+        }
+        indexResult.setTook(System.nanoTime() - index.startTime());
+        indexResult.freeze();
+        return indexResult;
+    }
+
     protected final IndexingStrategy planIndexingAsNonPrimary(Index index) throws IOException {
         assert assertNonPrimaryOrigin(index);
         // needs to maintain the auto_id timestamp in case this replica becomes primary
@@ -1935,6 +2070,35 @@ public class InternalEngine extends Engine {
         return combinedDeletionPolicy.getSafeCommitInfo();
     }
 
+    @Override
+    public SegmentInfosRef acquireLastRefreshedSegmentInfos() throws EngineException {
+        // the reader of the last refresh contains all the operations up to the refreshed checkpoint, and possibly more
+        final long refreshedCheckpoint = lastRefreshedCheckpoint();
+        final Searcher searcher = acquireSearcher("segment_replication", SearcherScope.INTERNAL);
+        boolean success = false;
+        try {
+            final DirectoryReader reader = FilterDirectoryReader.unwrap(searcher.getDirectoryReader());
+            assert reader instanceof StandardDirectoryReader : "unexpected reader " + reader;
+            final SegmentInfos segmentInfos = ((StandardDirectoryReader) reader).getSegmentInfos().clone();
+            final Map<String, String> userData = new HashMap<>(segmentInfos.getUserData());
+            // a copy must never claim operations that could still be rolled back by a primary failover
+            final long checkpoint = Math.max(SequenceNumbers.NO_OPS_PERFORMED,
+                Math.min(refreshedCheckpoint, translog.getLastSyncedGlobalCheckpoint()));
+            userData.put(SequenceNumbers.LOCAL_CHECKPOINT_KEY, Long.toString(checkpoint));
+            userData.put(SegmentReplicaEngine.REFRESHED_CHECKPOINT_KEY, Long.toString(refreshedCheckpoint));
+            userData.put(SequenceNumbers.MAX_SEQ_NO, Long.toString(localCheckpointTracker.getMaxSeqNo()));
+            userData.put(MAX_UNSAFE_AUTO_ID_TIMESTAMP_COMMIT_ID, Long.toString(maxUnsafeAutoIdTimestamp.get()));
+            segmentInfos.setUserData(userData, false);
+            final SegmentInfosRef segmentInfosRef = new SegmentInfosRef(segmentInfos, searcher::close);
+            success = true;
+            return segmentInfosRef;
+        } finally {
+            if (success == false) {
+                searcher.close();
+            }
+        }
+    }
+
     private boolean failOnTragicEvent(AlreadyClosedException ex) {
         final boolean engineFailed;
         // if we are already closed due to some tragic exception
@@ -2050,6 +2214,7 @@ public class InternalEngine extends Engine {
                 }
                 // no need to commit in this case!, we snapshot before we close the shard, so translog and all sync'ed
                 logger.trace("rollback indexWriter");
+                mergeScheduler.abortQueuedMerges();
                 try {
                     indexWriter.rollback();
                 } catch (AlreadyClosedException ex) {
@@ -2128,6 +2293,9 @@ public class InternalEngine extends Engine {
         }
         iwc.setInfoStream(verbose ? InfoStream.getDefault() : new LoggerInfoStream(logger));
         iwc.setMergeScheduler(mergeScheduler);
+        if (idFilterWarmer != null) {
+            iwc.setMergedSegmentWarmer(idFilterWarmer);
+        }
         // Give us the opportunity to upgrade old segments while performing
         // background merges
         MergePolicy mergePolicy = config().getMergePolicy();
@@ -2203,6 +2371,11 @@ public class InternalEngine extends Engine {
         return throttle.isThrottled();
     }
 
+    @Override
+    public IdFilters.Counters getIdFilterCounters() {
+        return idFilterWarmer == null ? null : idFilterWarmer.getCounters();
+    }
+
     @Override
     public long getIndexThrottleTimeInMillis() {
         return throttle.getThrottleTimeInMillis();
@@ -2220,8 +2393,9 @@ public class InternalEngine extends Engine {
         private final AtomicInteger numMergesInFlight = new AtomicInteger(0);
         private final AtomicBoolean isThrottling = new AtomicBoolean();
 
-        EngineMergeScheduler(ShardId shardId, IndexSettings indexSettings) {
-            super(shardId, indexSettings);
+        EngineMergeScheduler(ShardId shardId, IndexSettings indexSettings,
+                             @Nullable NodeMergeScheduler.ShardScheduler nodeMergeScheduler) {
+            super(shardId, indexSettings, nodeMergeScheduler);
         }
 
         @Override
@@ -2371,6 +2545,9 @@ public class InternalEngine extends Engine {
         // config().isEnableGcDeletes() or config.getGcDeletesInMillis() may have changed:
         maybePruneDeletes();
         softDeletesPolicy.setRetentionOperations(config().getIndexSettings().getSoftDeleteRetentionOperations());
+        if (config().getIndexSettings().isTrackTranslogLocations()) {
+            trackTranslogLocation.set(true);
+        }
     }
 
     public MergeStats getMergeStats() {
@@ -0,0 +1,372 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.translog.Translog;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map from _uid to {@link VersionValue} that stores the uids and versions inline in paged arrays rather than as a {@link BytesRef}
+ * and a {@link VersionValue} object per entry, which is what makes up most of the heap used by {@link LiveVersionMap} on update-heavy
+ * shards. Lookups materialize a new {@link VersionValue} every time.
+ *
+ * The map is split into segments that each hold a {@link BytesRefHash} and are guarded by their own lock, so that concurrent
+ * operations on different uids rarely contend. Removed uids stay in their segment's hash and are only marked as absent, so the map
+ * only ever grows until it is cleared or released, which {@link LiveVersionMap} does on the refresh after the one that retired it.
+ * Once released, the map behaves as if it was empty.
+ */
+final class PagedVersionMap implements Map<BytesRef, VersionValue>, Accountable, Releasable {
+
+    private static final int SEGMENT_BITS = 4;
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(PagedVersionMap.class)
+        + RamUsageEstimator.shallowSizeOfInstance(Segment.class) * (1 << SEGMENT_BITS)
+        + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+            + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * (1 << SEGMENT_BITS));
+
+    private final Segment[] segments;
+
+    PagedVersionMap(BigArrays bigArrays) {
+        segments = new Segment[1 << SEGMENT_BITS];
+        boolean success = false;
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment(bigArrays);
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                Releasables.close(segments);
+            }
+        }
+    }
+
+    private Segment segment(int hash) {
+        // the hash table of the segment uses the lower bits
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    @Override
+    public VersionValue get(Object key) {
+        if (key instanceof BytesRef == false) {
+            return null;
+        }
+        final BytesRef uid = (BytesRef) key;
+        final int hash = uid.hashCode();
+        return segment(hash).get(uid, hash);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return snapshot().containsValue(value);
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue value) {
+        final int hash = uid.hashCode();
+        return segment(hash).put(uid, hash, value);
+    }
+
+    @Override
+    public VersionValue remove(Object key) {
+        if (key instanceof BytesRef == false) {
+            return null;
+        }
+        final BytesRef uid = (BytesRef) key;
+        final int hash = uid.hashCode();
+        return segment(hash).remove(uid, hash);
+    }
+
+    @Override
+    public void putAll(Map<? extends BytesRef, ? extends VersionValue> map) {
+        map.forEach(this::put);
+    }
+
+    /**
+     * Releases the pages of the map and allocates new ones, unless the map is released already.
+     */
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a point in time copy of the keys of this map.
+     */
+    @Override
+    public Set<BytesRef> keySet() {
+        return snapshot().keySet();
+    }
+
+    /**
+     * Returns a point in time copy of the values of this map.
+     */
+    @Override
+    public Collection<VersionValue> values() {
+        return snapshot().values();
+    }
+
+    /**
+     * Returns a point in time copy of the entries of this map.
+     */
+    @Override
+    public Set<Entry<BytesRef, VersionValue>> entrySet() {
+        return snapshot().entrySet();
+    }
+
+    private Map<BytesRef, VersionValue> snapshot() {
+        final Map<BytesRef, VersionValue> copy = new HashMap<>();
+        for (Segment segment : segments) {
+            segment.copyTo(copy);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = BASE_RAM_BYTES_USED;
+        for (Segment segment : segments) {
+            ramBytesUsed += segment.ramBytesUsed;
+        }
+        return ramBytesUsed;
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(segments);
+    }
+
+    private static final class Segment implements Releasable {
+
+        /** the versions of a uid are stored in {@code VALUE_LONGS} consecutive longs at {@code ord * VALUE_LONGS} */
+        private static final int VALUE_LONGS = 6;
+        // the first long holds the type in its lower bits and the size of the translog location in its upper bits
+        private static final int TYPE_AND_SIZE = 0;
+        private static final int VERSION = 1;
+        private static final int SEQ_NO = 2;
+        private static final int TERM = 3;
+        // the translog generation for index operations and the timestamp for deletes
+        private static final int GENERATION_OR_TIME = 4;
+        private static final int TRANSLOG_LOCATION = 5;
+
+        private static final long ABSENT = 0;
+        private static final long INDEX = 1;
+        private static final long INDEX_WITH_LOCATION = 2;
+        private static final long DELETE = 3;
+
+        private final BigArrays bigArrays;
+        private BytesRefHash uids;
+        private LongArray values;
+        private volatile int size;
+        private volatile long ramBytesUsed;
+
+        Segment(BigArrays bigArrays) {
+            this.bigArrays = bigArrays;
+            boolean success = false;
+            try {
+                uids = new BytesRefHash(1, bigArrays);
+                values = bigArrays.newLongArray(VALUE_LONGS, false);
+                success = true;
+            } finally {
+                if (success == false) {
+                    Releasables.close(uids, values);
+                }
+            }
+            updateRamBytesUsed();
+        }
+
+        synchronized VersionValue get(BytesRef uid, int hash) {
+            if (uids == null) {
+                return null;
+            }
+            final long ord = uids.find(uid, hash);
+            return ord < 0 ? null : value(ord);
+        }
+
+        synchronized VersionValue put(BytesRef uid, int hash, VersionValue value) {
+            if (uids == null) {
+                // released, the value would not be visible anyway
+                return null;
+            }
+            long ord = uids.add(uid, hash);
+            final VersionValue previous;
+            if (ord < 0) {
+                ord = -1 - ord;
+                previous = value(ord);
+            } else {
+                values = bigArrays.grow(values, (ord + 1) * VALUE_LONGS);
+                previous = null;
+            }
+            // the hash might also have grown if the uid was present already
+            updateRamBytesUsed();
+            if (previous == null) {
+                size++;
+            }
+            final long start = ord * VALUE_LONGS;
+            values.set(start + VERSION, value.version);
+            values.set(start + SEQ_NO, value.seqNo);
+            values.set(start + TERM, value.term);
+            if (value.isDelete()) {
+                values.set(start + TYPE_AND_SIZE, DELETE);
+                values.set(start + GENERATION_OR_TIME, ((DeleteVersionValue) value).time);
+            } else {
+                final Translog.Location location = value.getLocation();
+                if (location == null) {
+                    values.set(start + TYPE_AND_SIZE, INDEX);
+                } else {
+                    values.set(start + TYPE_AND_SIZE, INDEX_WITH_LOCATION | ((long) location.size << Integer.SIZE));
+                    values.set(start + GENERATION_OR_TIME, location.generation);
+                    values.set(start + TRANSLOG_LOCATION, location.translogLocation);
+                }
+            }
+            return previous;
+        }
+
+        synchronized VersionValue remove(BytesRef uid, int hash) {
+            if (uids == null) {
+                return null;
+            }
+            final long ord = uids.find(uid, hash);
+            if (ord < 0) {
+                return null;
+            }
+            final VersionValue previous = value(ord);
+            if (previous != null) {
+                values.set(ord * VALUE_LONGS + TYPE_AND_SIZE, ABSENT);
+                size--;
+            }
+            return previous;
+        }
+
+        synchronized void clear() {
+            if (uids == null) {
+                return;
+            }
+            BytesRefHash newUids = null;
+            LongArray newValues = null;
+            boolean success = false;
+            try {
+                newUids = new BytesRefHash(1, bigArrays);
+                newValues = bigArrays.newLongArray(VALUE_LONGS, false);
+                success = true;
+            } finally {
+                if (success == false) {
+                    Releasables.close(newUids, newValues);
+                }
+            }
+            Releasables.close(uids, values);
+            uids = newUids;
+            values = newValues;
+            size = 0;
+            updateRamBytesUsed();
+        }
+
+        synchronized void copyTo(Map<BytesRef, VersionValue> map) {
+            if (uids == null) {
+                return;
+            }
+            for (long ord = 0; ord < uids.size(); ord++) {
+                final VersionValue value = value(ord);
+                if (value != null) {
+                    map.put(BytesRef.deepCopyOf(uids.get(ord, new BytesRef())), value);
+                }
+            }
+        }
+
+        private VersionValue value(long ord) {
+            final long start = ord * VALUE_LONGS;
+            final long typeAndSize = values.get(start + TYPE_AND_SIZE);
+            final long type = typeAndSize & 0xFFFFFFFFL;
+            if (type == ABSENT) {
+                return null;
+            }
+            final long version = values.get(start + VERSION);
+            final long seqNo = values.get(start + SEQ_NO);
+            final long term = values.get(start + TERM);
+            if (type == DELETE) {
+                return new DeleteVersionValue(version, seqNo, term, values.get(start + GENERATION_OR_TIME));
+            } else if (type == INDEX_WITH_LOCATION) {
+                final Translog.Location location = new Translog.Location(values.get(start + GENERATION_OR_TIME),
+                    values.get(start + TRANSLOG_LOCATION), (int) (typeAndSize >>> Integer.SIZE));
+                return new IndexVersionValue(location, version, seqNo, term);
+            } else {
+                assert type == INDEX : "unexpected type " + type;
+                return new IndexVersionValue(null, version, seqNo, term);
+            }
+        }
+
+        private void updateRamBytesUsed() {
+            ramBytesUsed = uids.ramBytesUsed() + values.ramBytesUsed();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (uids != null) {
+                try {
+                    Releasables.close(uids, values);
+                } finally {
+                    uids = null;
+                    values = null;
+                    size = 0;
+                    ramBytesUsed = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,799 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.engine;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SoftDeletesDirectoryReaderWrapper;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.Lock;
+import org.elasticsearch.common.SuppressForbidden;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.util.concurrent.ReleasableLock;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.seqno.LocalCheckpointTracker;
+import org.elasticsearch.index.seqno.SeqNoStats;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.index.translog.TranslogDeletionPolicy;
+import org.elasticsearch.index.translog.TranslogStats;
+import org.elasticsearch.search.suggest.completion.CompletionStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The engine of the replicas of an index that uses segment replication, see {@code index.replication.type}. Operations that
+ * are replicated from the primary are only appended to the translog, which is what the local checkpoint of this engine is
+ * based on, while the segments are copied from the primary once it refreshed and installed with
+ * {@link #installSegments(SegmentInfos)}. This engine never writes segments on its own: each copy is committed as is,
+ * pointing to the translog of this engine, and becomes visible to searches.
+ * <p>
+ * Note: gets are never realtime on this engine since the operations of the translog only become visible once the segments that
+ * contain them have been copied from the primary, realtime gets are executed on the primary instead. For the same reason refresh
+ * listeners are only notified of the operations that the installed segments contain, see {@link #getTranslogLastRefreshableLocation()}.
+ */
+public class SegmentReplicaEngine extends Engine {
+
+    /**
+     * The key of the user data of copied segments that holds the checkpoint of the refresh of the primary: all operations up to
+     * this checkpoint are visible in the segments, even though the local checkpoint that the segments claim may be lower.
+     */
+    public static final String REFRESHED_CHECKPOINT_KEY = "refreshed_checkpoint";
+
+    private final Translog translog;
+    private final TranslogDeletionPolicy translogDeletionPolicy;
+    private final LocalCheckpointTracker localCheckpointTracker;
+    private final SegmentReplicaReaderManager readerManager;
+    private final CompletionStatsCache completionStatsCache;
+    private final AtomicLong maxSeqNoOfUpdatesOrDeletes;
+    private final Object installMutex = new Object();
+    // the number of times each of the installed segment infos is referenced by an acquired index commit, guarded by this
+    private final Map<SegmentInfos, Integer> acquiredSegmentInfos = new IdentityHashMap<>();
+
+    // the translog locations of the operations that the installed segments don't contain yet, with their sequence numbers
+    private final TreeMap<Translog.Location, Long> pendingLocations = new TreeMap<>();
+    // the refreshed checkpoint of the installed segments, guarded by pendingLocations
+    private long installedCheckpoint;
+
+    private volatile SegmentInfos lastCommittedSegmentInfos;
+
+    public SegmentReplicaEngine(EngineConfig engineConfig) {
+        super(engineConfig);
+        store.incRef();
+        Translog translog = null;
+        SegmentReplicaReaderManager readerManager = null;
+        boolean success = false;
+        try {
+            this.lastCommittedSegmentInfos = store.readLastCommittedSegmentsInfo();
+            final SequenceNumbers.CommitInfo commitInfo =
+                SequenceNumbers.loadSeqNoInfoFromLuceneCommit(lastCommittedSegmentInfos.userData.entrySet());
+            this.localCheckpointTracker = new LocalCheckpointTracker(commitInfo.maxSeqNo, commitInfo.localCheckpoint);
+            this.installedCheckpoint = Long.parseLong(lastCommittedSegmentInfos.userData.getOrDefault(REFRESHED_CHECKPOINT_KEY,
+                Long.toString(commitInfo.localCheckpoint)));
+            this.translogDeletionPolicy = new TranslogDeletionPolicy();
+            translogDeletionPolicy.setLocalCheckpointOfSafeCommit(commitInfo.localCheckpoint);
+            final String translogUUID = Objects.requireNonNull(lastCommittedSegmentInfos.getUserData().get(Translog.TRANSLOG_UUID_KEY));
+            translog = new Translog(engineConfig.getTranslogConfig(), translogUUID, translogDeletionPolicy,
+                engineConfig.getGlobalCheckpointSupplier(), engineConfig.getPrimaryTermSupplier(),
+                localCheckpointTracker::markSeqNoAsPersisted);
+            this.translog = translog;
+            this.maxSeqNoOfUpdatesOrDeletes = new AtomicLong(SequenceNumbers.UNASSIGNED_SEQ_NO);
+
+            final RamAccountingRefreshListener ramAccountingListener =
+                new RamAccountingRefreshListener(engineConfig.getCircuitBreakerService());
+            final InternalEngine.RefreshWarmerListener warmerListener =
+                new InternalEngine.RefreshWarmerListener(logger, isClosed, engineConfig);
+            readerManager = new SegmentReplicaReaderManager(store.directory(), shardId, lastCommittedSegmentInfos, () ->
+                lastCommittedSegmentInfos, (reader, previousReader) -> {
+                    ramAccountingListener.accept(reader, previousReader);
+                    warmerListener.accept(reader, previousReader);
+                });
+            this.readerManager = readerManager;
+            for (ReferenceManager.RefreshListener listener : engineConfig.getExternalRefreshListener()) {
+                readerManager.addListener(listener);
+            }
+            for (ReferenceManager.RefreshListener listener : engineConfig.getInternalRefreshListener()) {
+                readerManager.addListener(listener);
+            }
+            this.completionStatsCache = new CompletionStatsCache(() -> acquireSearcher("completion_stats"));
+            readerManager.addListener(completionStatsCache);
+            success = true;
+        } catch (IOException e) {
+            throw new EngineCreationFailureException(shardId, "failed to create engine", e);
+        } finally {
+            if (success == false) {
+                IOUtils.closeWhileHandlingException(readerManager, translog);
+                if (isClosed.get() == false) {
+                    // failure, we need to dec the store reference
+                    store.decRef();
+                }
+            }
+        }
+        logger.trace("created new SegmentReplicaEngine");
+    }
+
+    /**
+     * Installs a copy of the segments of the primary whose files have all been copied to the store of this shard already. The
+     * copy is committed, pointing to the translog of this engine, and becomes visible to searches. The files that are no longer
+     * referenced by the installed segments, nor by an acquired index commit, are deleted. If files of the segments are missing,
+     * e.g. because the copy failed, the segments are not installed and the previously installed segments remain visible.
+     *
+     * @param segmentInfos the segments of the primary, see {@link Engine#acquireLastRefreshedSegmentInfos()}
+     */
+    public void installSegments(SegmentInfos segmentInfos) throws IOException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            synchronized (installMutex) {
+                final Set<String> missingFiles = new HashSet<>(segmentInfos.files(false));
+                missingFiles.removeAll(Arrays.asList(store.directory().listAll()));
+                if (missingFiles.isEmpty() == false) {
+                    throw new IllegalStateException("cannot install segments with version [" + segmentInfos.getVersion()
+                        + "], files " + new TreeSet<>(missingFiles) + " are missing");
+                }
+                final Map<String, String> userData = new HashMap<>(segmentInfos.getUserData());
+                userData.put(Translog.TRANSLOG_UUID_KEY, translog.getTranslogUUID());
+                segmentInfos.setUserData(userData, false);
+                final SegmentInfos previous = lastCommittedSegmentInfos;
+                if (segmentInfos.getGeneration() <= previous.getGeneration()) {
+                    // the generation of the primary is not related to ours, make sure we never overwrite an existing commit
+                    segmentInfos.updateGeneration(previous);
+                }
+                final Directory directory = store.directory();
+                try (Lock writeLock = directory.obtainLock(IndexWriter.WRITE_LOCK_NAME)) {
+                    // like IndexWriter#commit, the commit must only point to durable files
+                    directory.sync(segmentInfos.files(false));
+                    segmentInfos.commit(directory);
+                }
+                lastCommittedSegmentInfos = segmentInfos;
+                logger.trace("installed segments with generation [{}] and version [{}]", segmentInfos.getGeneration(),
+                    segmentInfos.getVersion());
+
+                final long localCheckpoint = Long.parseLong(userData.get(SequenceNumbers.LOCAL_CHECKPOINT_KEY));
+                final long refreshedCheckpoint =
+                    Long.parseLong(userData.getOrDefault(REFRESHED_CHECKPOINT_KEY, Long.toString(localCheckpoint)));
+                synchronized (pendingLocations) {
+                    // the operations up to the refreshed checkpoint of the primary are visible once the segments are refreshed
+                    installedCheckpoint = Math.max(installedCheckpoint, refreshedCheckpoint);
+                    pendingLocations.values().removeIf(seqNo -> seqNo <= installedCheckpoint);
+                }
+                readerManager.maybeRefreshBlocking();
+                deleteUnreferencedFiles();
+
+                if (localCheckpoint > translogDeletionPolicy.getLocalCheckpointOfSafeCommit()) {
+                    translogDeletionPolicy.setLocalCheckpointOfSafeCommit(localCheckpoint);
+                }
+                translog.trimUnreferencedReaders();
+            }
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        }
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        final Set<String> referencedFiles = new HashSet<>(lastCommittedSegmentInfos.files(true));
+        synchronized (this) {
+            for (SegmentInfos acquired : acquiredSegmentInfos.keySet()) {
+                referencedFiles.addAll(acquired.files(true));
+            }
+        }
+        final Directory directory = store.directory();
+        try (Lock writeLock = directory.obtainLock(IndexWriter.WRITE_LOCK_NAME)) {
+            for (String file : directory.listAll()) {
+                if (referencedFiles.contains(file) == false
+                    && (file.startsWith(IndexFileNames.SEGMENTS) || IndexFileNames.CODEC_FILE_PATTERN.matcher(file).matches())) {
+                    try {
+                        directory.deleteFile(file);
+                    } catch (IOException e) {
+                        // the file is still open on some platforms, we will try again after the next installation
+                        logger.debug(() -> new ParameterizedMessage("failed to delete unreferenced file [{}]", file), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void releaseSegmentInfos(SegmentInfos segmentInfos) {
+        final Integer refCount = acquiredSegmentInfos.get(segmentInfos);
+        assert refCount != null && refCount > 0 : "segment infos released more often than acquired";
+        if (refCount == 1) {
+            acquiredSegmentInfos.remove(segmentInfos);
+        } else {
+            acquiredSegmentInfos.put(segmentInfos, refCount - 1);
+        }
+    }
+
+    private <R extends Result> R addToTranslog(Operation operation, R result,
+                                              Supplier<Translog.Operation> translogOperation) throws IOException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            assert operation.origin() != Operation.Origin.PRIMARY : "segment replicas never execute operations as primary";
+            if (operation.origin().isFromTranslog() == false) {
+                // the location must be pending before the translog returns it as the last write location, see
+                // getTranslogLastRefreshableLocation
+                synchronized (pendingLocations) {
+                    final Translog.Location location = translog.add(translogOperation.get());
+                    if (result.getSeqNo() > installedCheckpoint) {
+                        pendingLocations.put(location, result.getSeqNo());
+                    }
+                    result.setTranslogLocation(location);
+                }
+            }
+            localCheckpointTracker.markSeqNoAsProcessed(result.getSeqNo());
+            if (result.getTranslogLocation() == null) {
+                // the operation is already in the translog, nothing to persist
+                localCheckpointTracker.markSeqNoAsPersisted(result.getSeqNo());
+            }
+            result.setTook(System.nanoTime() - operation.startTime());
+            result.freeze();
+            return result;
+        } catch (RuntimeException | IOException e) {
+            try {
+                maybeFailEngine(operation.operationType().name().toLowerCase(Locale.ROOT), e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public IndexResult index(Index index) throws IOException {
+        final IndexResult result = new IndexResult(index.version(), index.primaryTerm(), index.seqNo(), true);
+        return addToTranslog(index, result, () -> new Translog.Index(index, result));
+    }
+
+    @Override
+    public DeleteResult delete(Delete delete) throws IOException {
+        final DeleteResult result = new DeleteResult(delete.version(), delete.primaryTerm(), delete.seqNo(), true);
+        return addToTranslog(delete, result, () -> new Translog.Delete(delete, result));
+    }
+
+    @Override
+    public NoOpResult noOp(NoOp noOp) throws IOException {
+        final NoOpResult result = new NoOpResult(noOp.primaryTerm(), noOp.seqNo());
+        return addToTranslog(noOp, result, () -> new Translog.NoOp(noOp.seqNo(), noOp.primaryTerm(), noOp.reason()));
+    }
+
+    @Override
+    public GetResult get(Get get, BiFunction<String, SearcherScope, Searcher> searcherFactory) throws EngineException {
+        return getFromSearcher(get, searcherFactory, SearcherScope.EXTERNAL);
+    }
+
+    @Override
+    protected ReferenceManager<ElasticsearchDirectoryReader> getReferenceManager(SearcherScope scope) {
+        return readerManager;
+    }
+
+    @Override
+    protected SegmentInfos getLastCommittedSegmentInfos() {
+        return lastCommittedSegmentInfos;
+    }
+
+    @Override
+    public String getHistoryUUID() {
+        return lastCommittedSegmentInfos.userData.get(Engine.HISTORY_UUID_KEY);
+    }
+
+    @Override
+    public long getWritingBytes() {
+        return 0;
+    }
+
+    @Override
+    public CompletionStats completionStats(String... fieldNamePatterns) {
+        return completionStatsCache.get(fieldNamePatterns);
+    }
+
+    @Override
+    public long getIndexThrottleTimeInMillis() {
+        return 0;
+    }
+
+    @Override
+    public boolean isThrottled() {
+        return false;
+    }
+
+    @Override
+    public void trimOperationsFromTranslog(long belowTerm, long aboveSeqNo) throws EngineException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            translog.trimOperations(belowTerm, aboveSeqNo);
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        } catch (Exception e) {
+            try {
+                failEngine("translog operations trimming failed", e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw new EngineException(shardId, "failed to trim translog operations", e);
+        }
+    }
+
+    @Override
+    public boolean isTranslogSyncNeeded() {
+        return translog.syncNeeded();
+    }
+
+    @Override
+    public boolean ensureTranslogSynced(Stream<Translog.Location> locations) throws IOException {
+        final boolean synced = translog.ensureSynced(locations);
+        if (synced) {
+            translog.trimUnreferencedReaders();
+        }
+        return synced;
+    }
+
+    @Override
+    public void syncTranslog() throws IOException {
+        translog.sync();
+        translog.trimUnreferencedReaders();
+    }
+
+    @Override
+    public Closeable acquireHistoryRetentionLock() {
+        return translog.acquireRetentionLock();
+    }
+
+    @Override
+    public Translog.Snapshot newChangesSnapshot(String source, MapperService mapperService, long fromSeqNo, long toSeqNo,
+                                                boolean requiredFullRange) throws IOException {
+        ensureOpen();
+        return translog.newSnapshot(fromSeqNo, toSeqNo);
+    }
+
+    @Override
+    public boolean hasCompleteOperationHistory(String reason, long startingSeqNo) {
+        return startingSeqNo >= getMinRetainedSeqNo();
+    }
+
+    @Override
+    public long getMinRetainedSeqNo() {
+        // the operations above the local checkpoint of the last installed commit are all retained in the translog
+        return Long.parseLong(lastCommittedSegmentInfos.userData.get(SequenceNumbers.LOCAL_CHECKPOINT_KEY)) + 1;
+    }
+
+    @Override
+    public TranslogStats getTranslogStats() {
+        return translog.stats();
+    }
+
+    @Override
+    public Translog.Location getTranslogLastWriteLocation() {
+        return translog.getLastWriteLocation();
+    }
+
+    /**
+     * Returns the location right before the first operation of the translog that the installed segments don't contain: refreshes
+     * of this engine only make the operations visible once the segments of the primary that contain them have been installed.
+     */
+    @Override
+    public Translog.Location getTranslogLastRefreshableLocation() {
+        synchronized (pendingLocations) {
+            if (pendingLocations.isEmpty()) {
+                return translog.getLastWriteLocation();
+            }
+            final Translog.Location first = pendingLocations.firstKey();
+            return new Translog.Location(first.generation, first.translogLocation - 1, 0);
+        }
+    }
+
+    @Override
+    public long getPersistedLocalCheckpoint() {
+        return localCheckpointTracker.getPersistedCheckpoint();
+    }
+
+    public long getProcessedLocalCheckpoint() {
+        return localCheckpointTracker.getProcessedCheckpoint();
+    }
+
+    @Override
+    public SeqNoStats getSeqNoStats(long globalCheckpoint) {
+        return localCheckpointTracker.getStats(globalCheckpoint);
+    }
+
+    @Override
+    public long getLastSyncedGlobalCheckpoint() {
+        return translog.getLastSyncedGlobalCheckpoint();
+    }
+
+    @Override
+    public long getIndexBufferRAMBytesUsed() {
+        return 0;
+    }
+
+    @Override
+    public List<Segment> segments(boolean verbose) {
+        return Arrays.asList(getSegmentInfo(lastCommittedSegmentInfos, verbose));
+    }
+
+    @Override
+    public void refresh(String source) throws EngineException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            readerManager.maybeRefreshBlocking();
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        } catch (Exception e) {
+            throw new RefreshFailedEngineException(shardId, e);
+        }
+    }
+
+    @Override
+    public boolean maybeRefresh(String source) throws EngineException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            return readerManager.maybeRefresh();
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        } catch (Exception e) {
+            throw new RefreshFailedEngineException(shardId, e);
+        }
+    }
+
+    @Override
+    public void writeIndexingBuffer() throws EngineException {
+        // nothing is buffered, the segments are written by the primary
+    }
+
+    @Override
+    public boolean shouldPeriodicallyFlush() {
+        return false;
+    }
+
+    @Override
+    public void flush(boolean force, boolean waitIfOngoing) throws EngineException {
+        // the copies of the segments are committed when they are installed, there is only the translog to trim
+        rollTranslogGeneration();
+    }
+
+    @Override
+    public void trimUnreferencedTranslogFiles() throws EngineException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            translog.trimUnreferencedReaders();
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        } catch (Exception e) {
+            try {
+                failEngine("translog trimming failed", e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw new EngineException(shardId, "failed to trim translog", e);
+        }
+    }
+
+    @Override
+    public boolean shouldRollTranslogGeneration() {
+        return translog.shouldRollGeneration();
+    }
+
+    @Override
+    public void rollTranslogGeneration() throws EngineException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            translog.rollGeneration();
+            translog.trimUnreferencedReaders();
+        } catch (AlreadyClosedException e) {
+            failOnTragicEvent(e);
+            throw e;
+        } catch (Exception e) {
+            try {
+                failEngine("translog trimming failed", e);
+            } catch (Exception inner) {
+                e.addSuppressed(inner);
+            }
+            throw new EngineException(shardId, "failed to roll translog", e);
+        }
+    }
+
+    @Override
+    public void forceMerge(boolean flush, int maxNumSegments, boolean onlyExpungeDeletes,
+                           boolean upgrade, boolean upgradeOnlyAncientSegments, String forceMergeUUID) {
+        // the segments are merged on the primary and copied over
+    }
+
+    @Override
+    public IndexCommitRef acquireLastIndexCommit(boolean flushFirst) throws EngineException {
+        final SegmentInfos segmentInfos;
+        synchronized (this) {
+            ensureOpen();
+            segmentInfos = lastCommittedSegmentInfos;
+            acquiredSegmentInfos.merge(segmentInfos, 1, Integer::sum);
+        }
+        store.incRef();
+        boolean success = false;
+        try {
+            final IndexCommitRef commitRef = new IndexCommitRef(Lucene.getIndexCommit(segmentInfos, store.directory()), () -> {
+                releaseSegmentInfos(segmentInfos);
+                store.decRef();
+            });
+            success = true;
+            return commitRef;
+        } catch (IOException e) {
+            throw new EngineException(shardId, "failed to acquire the last index commit", e);
+        } finally {
+            if (success == false) {
+                releaseSegmentInfos(segmentInfos);
+                store.decRef();
+            }
+        }
+    }
+
+    @Override
+    public IndexCommitRef acquireSafeIndexCommit() throws EngineException {
+        // every installed commit is safe since the translog is trimmed according to the commit that was installed last
+        return acquireLastIndexCommit(false);
+    }
+
+    @Override
+    public SafeCommitInfo getSafeCommitInfo() {
+        final SegmentInfos segmentInfos = lastCommittedSegmentInfos;
+        return new SafeCommitInfo(Long.parseLong(segmentInfos.userData.get(SequenceNumbers.LOCAL_CHECKPOINT_KEY)),
+            segmentInfos.totalMaxDoc());
+    }
+
+    @Override
+    protected boolean maybeFailEngine(String source, Exception e) {
+        if (super.maybeFailEngine(source, e)) {
+            return true;
+        }
+        if (e instanceof AlreadyClosedException) {
+            return failOnTragicEvent((AlreadyClosedException) e);
+        } else if (e != null && translog.isOpen() == false && translog.getTragicException() == e) {
+            failEngine(source, e);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean failOnTragicEvent(AlreadyClosedException ex) {
+        if (translog.isOpen() == false && translog.getTragicException() != null) {
+            failEngine("already closed by tragic event on the translog", translog.getTragicException());
+            return true;
+        } else if (failedEngine.get() == null && isClosed.get() == false) {
+            // we are closed but the engine is not failed yet, this should never happen
+            throw new AssertionError("Unexpected AlreadyClosedException", ex);
+        }
+        return false;
+    }
+
+    @Override
+    protected void closeNoLock(String reason, CountDownLatch closedLatch) {
+        if (isClosed.compareAndSet(false, true)) {
+            assert rwl.isWriteLockedByCurrentThread() || failEngineLock.isHeldByCurrentThread() :
+                "Either the write lock must be held or the engine must be currently be failing itself";
+            try {
+                IOUtils.close(readerManager, translog);
+            } catch (Exception e) {
+                logger.warn("failed to close engine", e);
+            } finally {
+                try {
+                    store.decRef();
+                    logger.debug("engine closed [{}]", reason);
+                } finally {
+                    closedLatch.countDown();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void activateThrottling() {
+    }
+
+    @Override
+    public void deactivateThrottling() {
+    }
+
+    @Override
+    public int restoreLocalHistoryFromTranslog(TranslogRecoveryRunner translogRecoveryRunner) throws IOException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            final long localCheckpoint = localCheckpointTracker.getProcessedCheckpoint();
+            try (Translog.Snapshot snapshot = translog.newSnapshot(localCheckpoint + 1, Long.MAX_VALUE)) {
+                return translogRecoveryRunner.run(this, snapshot);
+            }
+        }
+    }
+
+    /**
+     * Fills the gaps with no-ops in the translog only. Shards reset their segment replica engine to a writable engine when
+     * promoted, before filling gaps, so the no-ops are only indexed once the operations of the translog are replayed.
+     */
+    @Override
+    public int fillSeqNoGaps(long primaryTerm) throws IOException {
+        try (ReleasableLock ignored = writeLock.acquire()) {
+            ensureOpen();
+            final long maxSeqNo = localCheckpointTracker.getMaxSeqNo();
+            int numNoOpsAdded = 0;
+            for (long seqNo = localCheckpointTracker.getProcessedCheckpoint() + 1; seqNo <= maxSeqNo;
+                 seqNo = localCheckpointTracker.getProcessedCheckpoint() + 1 /* leap-frog the local checkpoint */) {
+                translog.add(new Translog.NoOp(seqNo, primaryTerm, "filling gaps"));
+                localCheckpointTracker.markSeqNoAsProcessed(seqNo);
+                numNoOpsAdded++;
+            }
+            syncTranslog(); // to persist noops associated with the advancement of the local checkpoint
+            return numNoOpsAdded;
+        }
+    }
+
+    @Override
+    public SegmentReplicaEngine recoverFromTranslog(TranslogRecoveryRunner translogRecoveryRunner,
+                                                    long recoverUpToSeqNo) throws IOException {
+        try (ReleasableLock ignored = readLock.acquire()) {
+            ensureOpen();
+            final long localCheckpoint = localCheckpointTracker.getProcessedCheckpoint();
+            if (localCheckpoint < recoverUpToSeqNo) {
+                try (Translog.Snapshot snapshot = translog.newSnapshot(localCheckpoint + 1, recoverUpToSeqNo)) {
+                    final int opsRecovered = translogRecoveryRunner.run(this, snapshot);
+                    logger.trace("recovered [{}] operations from the translog", opsRecovered);
+                } catch (Exception e) {
+                    throw new EngineException(shardId, "failed to recover from translog", e);
+                }
+            }
+            translog.trimUnreferencedReaders();
+        }
+        return this;
+    }
+
+    @Override
+    public void skipTranslogRecovery() {
+    }
+
+    @Override
+    public void maybePruneDeletes() {
+    }
+
+    @Override
+    public void updateMaxUnsafeAutoIdTimestamp(long newTimestamp) {
+        // the timestamp is part of the segments that are copied from the primary
+    }
+
+    @Override
+    public long getMaxSeqNoOfUpdatesOrDeletes() {
+        return maxSeqNoOfUpdatesOrDeletes.get();
+    }
+
+    @Override
+    public void advanceMaxSeqNoOfUpdatesOrDeletes(long maxSeqNoOfUpdatesOnPrimary) {
+        maxSeqNoOfUpdatesOrDeletes.updateAndGet(curr -> Math.max(curr, maxSeqNoOfUpdatesOnPrimary));
+    }
+
+    /**
+     * Opens readers on the segments that are installed last, reusing the segment readers of the previous reader when the
+     * segments did not change.
+     */
+    @SuppressForbidden(reason = "reference counting is required here")
+    private static final class SegmentReplicaReaderManager extends ReferenceManager<ElasticsearchDirectoryReader> {
+
+        private final Directory directory;
+        private final ShardId shardId;
+        private final Supplier<SegmentInfos> segmentInfosSupplier;
+        private final BiConsumer<ElasticsearchDirectoryReader, ElasticsearchDirectoryReader> refreshListener;
+
+        SegmentReplicaReaderManager(Directory directory, ShardId shardId, SegmentInfos initialSegmentInfos,
+                                    Supplier<SegmentInfos> segmentInfosSupplier,
+                                    BiConsumer<ElasticsearchDirectoryReader, ElasticsearchDirectoryReader> refreshListener)
+            throws IOException {
+            this.directory = directory;
+            this.shardId = shardId;
+            this.segmentInfosSupplier = segmentInfosSupplier;
+            this.refreshListener = refreshListener;
+            this.current = open(initialSegmentInfos, Collections.emptyList());
+            refreshListener.accept(current, null);
+        }
+
+        private ElasticsearchDirectoryReader open(SegmentInfos segmentInfos, List<LeafReader> oldReaders) throws IOException {
+            final DirectoryReader reader = StandardDirectoryReader.open(directory, segmentInfos, oldReaders, Collections.emptyMap());
+            boolean success = false;
+            try {
+                final ElasticsearchDirectoryReader wrapped = ElasticsearchDirectoryReader.wrap(
+                    new SoftDeletesDirectoryReaderWrapper(reader, Lucene.SOFT_DELETES_FIELD), shardId);
+                success = true;
+                return wrapped;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(reader);
+                }
+            }
+        }
+
+        @Override
+        protected ElasticsearchDirectoryReader refreshIfNeeded(ElasticsearchDirectoryReader referenceToRefresh) throws IOException {
+            final SegmentInfos segmentInfos = segmentInfosSupplier.get();
+            final StandardDirectoryReader previous = (StandardDirectoryReader) FilterDirectoryReader.unwrap(referenceToRefresh);
+            if (previous.getSegmentInfos() == segmentInfos) {
+                return null;
+            }
+            // only reuse the segment readers of segments that are identical, a new primary can reuse segment names
+            final Map<String, SegmentCommitInfo> segments = new HashMap<>();
+            for (SegmentCommitInfo info : segmentInfos) {
+                segments.put(info.info.name, info);
+            }
+            final List<LeafReader> oldReaders = new ArrayList<>();
+            for (LeafReaderContext context : previous.leaves()) {
+                final SegmentReader segmentReader = (SegmentReader) context.reader();
+                final SegmentCommitInfo info = segments.get(segmentReader.getSegmentName());
+                if (info != null && Arrays.equals(info.info.getId(), segmentReader.getSegmentInfo().info.getId())) {
+                    oldReaders.add(segmentReader);
+                }
+            }
+            final ElasticsearchDirectoryReader reader = open(segmentInfos, oldReaders);
+            refreshListener.accept(reader, referenceToRefresh);
+            return reader;
+        }
+
+        @Override
+        protected void decRef(ElasticsearchDirectoryReader reference) throws IOException {
+            reference.decRef();
+        }
+
+        @Override
+        protected boolean tryIncRef(ElasticsearchDirectoryReader reference) {
+            return reference.tryIncRef();
+        }
+
+        @Override
+        protected int getRefCount(ElasticsearchDirectoryReader reference) {
+            return reference.getRefCount();
+        }
+    }
+}
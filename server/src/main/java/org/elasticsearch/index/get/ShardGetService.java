@@ -24,8 +24,10 @@ import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.IndexableFieldType;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -224,24 +226,36 @@ public final class ShardGetService extends AbstractIndexShardComponent {
                 throw new ElasticsearchException("Failed to get id [" + id + "]", e);
             }
             source = fieldVisitor.source();
+            final boolean syntheticSource = docMapper.sourceMapper().isSynthetic();
+            if (source == null && syntheticSource && get.isFromTranslog() == false && fetchSourceContext.fetchSource()) {
+                try {
+                    source = docMapper.syntheticSourceLoader().load(docIdAndVersion.reader, docIdAndVersion.docId);
+                } catch (IOException e) {
+                    throw new ElasticsearchException("Failed to rebuild the _source of id [" + id + "]", e);
+                }
+            }
 
             // in case we read from translog, some extra steps are needed to make _source consistent and to load stored fields
             if (get.isFromTranslog()) {
                 // Fast path: if only asked for the source or stored fields that have been already provided by TranslogLeafReader,
                 // just make source consistent by reapplying source filters from mapping (possibly also nulling the source)
                 if (forceSourceForComputingTranslogStoredFields == false) {
-                    try {
-                        source = indexShard.mapperService().documentMapper().sourceMapper().applyFilters(source, null);
-                    } catch (IOException e) {
-                        throw new ElasticsearchException("Failed to reapply filters for [" + id + "] after reading from translog", e);
+                    if (syntheticSource) {
+                        // rebuild the synthetic source from the parsed document so that it matches the source returned after a refresh
+                        if (source != null) {
+                            source = loadSyntheticSource(id, docMapper, parseTranslogSource(id, source, fieldVisitor.routing()));
+                        }
+                    } else {
+                        try {
+                            source = indexShard.mapperService().documentMapper().sourceMapper().applyFilters(source, null);
+                        } catch (IOException e) {
+                            throw new ElasticsearchException("Failed to reapply filters for [" + id + "] after reading from translog", e);
+                        }
                     }
                 } else {
                     // Slow path: recreate stored fields from original source
                     assert source != null : "original source in translog must exist";
-                    SourceToParse sourceToParse = new SourceToParse(shardId.getIndexName(), id, source, XContentHelper.xContentType(source),
-                        fieldVisitor.routing());
-                    ParsedDocument doc = indexShard.mapperService().documentMapper().parse(sourceToParse);
-                    assert doc.dynamicMappingsUpdate() == null : "mapping updates should not be required on already-indexed doc";
+                    ParsedDocument doc = parseTranslogSource(id, source, fieldVisitor.routing());
                     // update special fields
                     doc.updateSeqID(docIdAndVersion.seqNo, docIdAndVersion.primaryTerm);
                     doc.version().setLongValue(docIdAndVersion.version);
@@ -268,7 +282,11 @@ public final class ShardGetService extends AbstractIndexShardComponent {
                         }
                     }
                     // retrieve source (with possible transformations, e.g. source filters
-                    source = fieldVisitor.source();
+                    if (syntheticSource) {
+                        source = fetchSourceContext.fetchSource() ? loadSyntheticSource(id, docMapper, doc) : null;
+                    } else {
+                        source = fieldVisitor.source();
+                    }
                 }
             }
 
@@ -311,6 +329,27 @@ public final class ShardGetService extends AbstractIndexShardComponent {
             get.version(), get.exists(), source, documentFields, metadataFields);
     }
 
+    private ParsedDocument parseTranslogSource(String id, BytesReference source, String routing) {
+        SourceToParse sourceToParse = new SourceToParse(shardId.getIndexName(), id, source, XContentHelper.xContentType(source), routing);
+        ParsedDocument doc = indexShard.mapperService().documentMapper().parse(sourceToParse);
+        assert doc.dynamicMappingsUpdate() == null : "mapping updates should not be required on already-indexed doc";
+        return doc;
+    }
+
+    /**
+     * Rebuilds the synthetic {@code _source} of a document that was read from the translog from the doc values of its parsed
+     * fields, the same way it is rebuilt for documents that are read from the index.
+     */
+    private BytesReference loadSyntheticSource(String id, DocumentMapper docMapper, ParsedDocument doc) {
+        try {
+            MemoryIndex memoryIndex = MemoryIndex.fromDocument(doc.rootDoc(), indexShard.mapperService().indexAnalyzer());
+            LeafReader reader = memoryIndex.createSearcher().getIndexReader().leaves().get(0).reader();
+            return docMapper.syntheticSourceLoader().load(reader, 0);
+        } catch (IOException e) {
+            throw new ElasticsearchException("Failed to rebuild the _source of id [" + id + "] after reading from translog", e);
+        }
+    }
+
     private static FieldsVisitor buildFieldsVisitors(String[] fields, FetchSourceContext fetchSourceContext) {
         if (fields == null || fields.length == 0) {
             return fetchSourceContext.fetchSource() ? new FieldsVisitor(true) : null;
@@ -584,6 +584,10 @@ public final class DateFieldMapper extends FieldMapper {
         return (DateFieldType) super.fieldType();
     }
 
+    public Explicit<Boolean> ignoreMalformed() {
+        return ignoreMalformed;
+    }
+
     @Override
     protected String contentType() {
         return fieldType.typeName();
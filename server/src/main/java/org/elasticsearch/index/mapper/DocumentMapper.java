@@ -28,6 +28,7 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchGenerationException;
 import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.compress.CompressedXContent;
 import org.elasticsearch.common.settings.Settings;
@@ -130,6 +131,7 @@ public class DocumentMapper implements ToXContentFragment {
     private final Map<String, ObjectMapper> objectMappers;
 
     private final boolean hasNestedObjects;
+    private final SyntheticSourceLoader syntheticSourceLoader;
     private final MetadataFieldMapper[] deleteTombstoneMetadataFieldMappers;
     private final MetadataFieldMapper[] noopTombstoneMetadataFieldMappers;
 
@@ -176,6 +178,8 @@ public class DocumentMapper implements ToXContentFragment {
             }
         }
         this.hasNestedObjects = hasNestedObjects;
+        // fails if the mapping contains fields that can't be rebuilt from doc values
+        this.syntheticSourceLoader = sourceMapper().isSynthetic() ? new SyntheticSourceLoader(mapping.root) : null;
 
         try {
             mappingSource = new CompressedXContent(this, XContentType.JSON, ToXContent.EMPTY_PARAMS);
@@ -225,6 +229,14 @@ public class DocumentMapper implements ToXContentFragment {
         return metadataMapper(SourceFieldMapper.class);
     }
 
+    /**
+     * Returns the loader that rebuilds the {@code _source} from doc values, or {@code null} if the {@code _source} is stored.
+     */
+    @Nullable
+    public SyntheticSourceLoader syntheticSourceLoader() {
+        return syntheticSourceLoader;
+    }
+
     public IdFieldMapper idFieldMapper() {
         return metadataMapper(IdFieldMapper.class);
     }
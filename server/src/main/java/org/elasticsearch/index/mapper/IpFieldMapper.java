@@ -341,6 +341,10 @@ public class IpFieldMapper extends FieldMapper {
         return (IpFieldType) super.fieldType();
     }
 
+    public Explicit<Boolean> ignoreMalformed() {
+        return ignoreMalformed;
+    }
+
     @Override
     protected String contentType() {
         return fieldType.typeName();
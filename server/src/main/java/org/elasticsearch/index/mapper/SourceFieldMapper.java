@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -56,9 +57,34 @@ public class SourceFieldMapper extends MetadataFieldMapper {
     public static final String CONTENT_TYPE = "_source";
     private final Function<Map<String, ?>, Map<String, Object>> filter;
 
+    /**
+     * How the {@code _source} is made available at fetch time.
+     */
+    public enum Mode {
+        /** The original source is stored as-is, possibly filtered by {@code includes}/{@code excludes}. */
+        STORED,
+        /** The source is not stored but rebuilt from the doc values of the mapped fields, see {@link SyntheticSourceLoader}. */
+        SYNTHETIC;
+
+        public static Mode fromString(String mode) {
+            for (Mode value : values()) {
+                if (value.toString().equals(mode)) {
+                    return value;
+                }
+            }
+            throw new MapperParsingException("Unknown mode [" + mode + "] for [_source], must be one of " + Arrays.toString(values()));
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
     public static class Defaults {
         public static final String NAME = SourceFieldMapper.NAME;
         public static final boolean ENABLED = true;
+        public static final Mode MODE = Mode.STORED;
 
         public static final MappedFieldType FIELD_TYPE = new SourceFieldType();
 
@@ -78,6 +104,8 @@ public class SourceFieldMapper extends MetadataFieldMapper {
 
         private boolean enabled = Defaults.ENABLED;
 
+        private Mode mode = Defaults.MODE;
+
         private String[] includes = null;
         private String[] excludes = null;
 
@@ -90,6 +118,11 @@ public class SourceFieldMapper extends MetadataFieldMapper {
             return this;
         }
 
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
         public Builder includes(String[] includes) {
             this.includes = includes;
             return this;
@@ -102,7 +135,15 @@ public class SourceFieldMapper extends MetadataFieldMapper {
 
         @Override
         public SourceFieldMapper build(BuilderContext context) {
-            return new SourceFieldMapper(enabled, includes, excludes, context.indexSettings());
+            if (mode == Mode.SYNTHETIC) {
+                if (enabled == false) {
+                    throw new MapperParsingException("[_source] can't be disabled when using mode [" + mode + "]");
+                }
+                if (includes != null || excludes != null) {
+                    throw new MapperParsingException("[_source] can't define includes or excludes when using mode [" + mode + "]");
+                }
+            }
+            return new SourceFieldMapper(enabled, mode, includes, excludes, context.indexSettings());
         }
     }
 
@@ -119,6 +160,9 @@ public class SourceFieldMapper extends MetadataFieldMapper {
                 if (fieldName.equals("enabled")) {
                     builder.enabled(XContentMapValues.nodeBooleanValue(fieldNode, name + ".enabled"));
                     iterator.remove();
+                } else if (fieldName.equals("mode")) {
+                    builder.mode(Mode.fromString(fieldNode.toString()));
+                    iterator.remove();
                 } else if (fieldName.equals("includes")) {
                     List<Object> values = (List<Object>) fieldNode;
                     String[] includes = new String[values.size()];
@@ -178,6 +222,8 @@ public class SourceFieldMapper extends MetadataFieldMapper {
 
     private final boolean enabled;
 
+    private final Mode mode;
+
     /** indicates whether the source will always exist and be complete, for use by features like the update API */
     private final boolean complete;
 
@@ -185,12 +231,13 @@ public class SourceFieldMapper extends MetadataFieldMapper {
     private final String[] excludes;
 
     private SourceFieldMapper(Settings indexSettings) {
-        this(Defaults.ENABLED, null, null, indexSettings);
+        this(Defaults.ENABLED, Defaults.MODE, null, null, indexSettings);
     }
 
-    private SourceFieldMapper(boolean enabled, String[] includes, String[] excludes, Settings indexSettings) {
+    private SourceFieldMapper(boolean enabled, Mode mode, String[] includes, String[] excludes, Settings indexSettings) {
         super(NAME, Defaults.FIELD_TYPE.clone(), Defaults.FIELD_TYPE, indexSettings); // Only stored.
         this.enabled = enabled;
+        this.mode = mode;
         this.includes = includes;
         this.excludes = excludes;
         final boolean filtered = (includes != null && includes.length > 0) || (excludes != null && excludes.length > 0);
@@ -202,6 +249,17 @@ public class SourceFieldMapper extends MetadataFieldMapper {
         return enabled;
     }
 
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Returns {@code true} if the source isn't stored but rebuilt from doc values at fetch time.
+     */
+    public boolean isSynthetic() {
+        return mode == Mode.SYNTHETIC;
+    }
+
     public String[] excludes() {
         return this.excludes != null ? this.excludes : Strings.EMPTY_ARRAY;
 
@@ -246,7 +304,7 @@ public class SourceFieldMapper extends MetadataFieldMapper {
 
     @Nullable
     public BytesReference applyFilters(@Nullable BytesReference originalSource, @Nullable XContentType contentType) throws IOException {
-        if (enabled && fieldType().stored() && originalSource != null) {
+        if (enabled && mode == Mode.STORED && fieldType().stored() && originalSource != null) {
             // Percolate and tv APIs may not set the source and that is ok, because these APIs will not index any data
             if (filter != null) {
                 // we don't update the context source if we filter, we want to keep it as is...
@@ -276,13 +334,16 @@ public class SourceFieldMapper extends MetadataFieldMapper {
         boolean includeDefaults = params.paramAsBoolean("include_defaults", false);
 
         // all are defaults, no need to write it at all
-        if (!includeDefaults && enabled == Defaults.ENABLED && includes == null && excludes == null) {
+        if (!includeDefaults && enabled == Defaults.ENABLED && mode == Defaults.MODE && includes == null && excludes == null) {
             return builder;
         }
         builder.startObject(contentType());
         if (includeDefaults || enabled != Defaults.ENABLED) {
             builder.field("enabled", enabled);
         }
+        if (includeDefaults || mode != Defaults.MODE) {
+            builder.field("mode", mode.toString());
+        }
 
         if (includes != null) {
             builder.array("includes", includes);
@@ -307,6 +368,9 @@ public class SourceFieldMapper extends MetadataFieldMapper {
         if (this.enabled != sourceMergeWith.enabled) {
             conflicts.add("Cannot update enabled setting for [_source]");
         }
+        if (this.mode != sourceMergeWith.mode) {
+            conflicts.add("Cannot update mode setting for [_source]");
+        }
         if (Arrays.equals(includes(), sourceMergeWith.includes()) == false) {
             conflicts.add("Cannot update includes setting for [_source]");
         }
@@ -0,0 +1,291 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.document.HalfFloatPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.time.DateFormatter;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.search.DocValueFormat;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Rebuilds the {@code _source} of a document from the doc values of its mapped fields, for indices whose {@code _source} uses
+ * {@link SourceFieldMapper.Mode#SYNTHETIC}. Building a loader validates the mapping: fields whose values can't be read back from
+ * doc values (no doc values, {@code copy_to}, {@code ignore_above}, normalizers, {@code null_value}, {@code ignore_malformed},
+ * custom date formats, nested or disabled objects and unsupported field types) are rejected with an {@link IllegalArgumentException}.
+ * So are objects that set {@code dynamic} to {@code false}, since the unmapped fields they accept would only be kept in the
+ * {@code _source}, which synthetic mode doesn't store.
+ * <p>
+ * The rebuilt source is equivalent to, but not identical with, the original one: fields are sorted by name, arrays of objects are
+ * flattened into their leaf fields, keyword and ip values are sorted and deduplicated, numbers are sorted and single-element arrays
+ * are written as single values.
+ */
+public final class SyntheticSourceLoader {
+
+    private static final DateFormatter MILLIS_FORMATTER = DateFormatter.forPattern("strict_date_optional_time");
+    private static final DateFormatter NANOS_FORMATTER = DateFormatter.forPattern("strict_date_optional_time_nanos");
+
+    private final ObjectLoader root;
+
+    SyntheticSourceLoader(RootObjectMapper root) {
+        ObjectMapper.Dynamic dynamic = root.dynamic() == null ? ObjectMapper.Dynamic.TRUE : root.dynamic();
+        if (dynamic == ObjectMapper.Dynamic.FALSE) {
+            throw new IllegalArgumentException("[dynamic] can't be [false] with a synthetic [_source] because unmapped fields would "
+                + "only be kept in the [_source], use [true] or [strict] instead");
+        }
+        this.root = new ObjectLoader(root, dynamic);
+    }
+
+    /**
+     * Rebuilds the source of the document {@code docId} of the given segment as JSON. Use {@link #leaf(LeafReader)} to rebuild the
+     * source of several documents of the same segment.
+     */
+    public BytesReference load(LeafReader reader, int docId) throws IOException {
+        return leaf(reader).load(docId);
+    }
+
+    /**
+     * Returns a loader for the documents of the given segment, that reuses the doc values iterators of the segment across documents.
+     */
+    public Leaf leaf(LeafReader reader) throws IOException {
+        return new Leaf(reader);
+    }
+
+    /**
+     * Rebuilds the source of the documents of a single segment. Documents are best loaded in increasing doc id order since the
+     * doc values iterators of the segment can only move forward and are recreated when an earlier document is loaded.
+     */
+    public final class Leaf {
+
+        private final LeafReader reader;
+        private LeafFieldLoader loader;
+        private int lastDocId = -1;
+
+        private Leaf(LeafReader reader) throws IOException {
+            this.reader = reader;
+            this.loader = root.leaf(reader);
+        }
+
+        /**
+         * Rebuilds the source of the document {@code docId} of the segment as JSON.
+         */
+        public BytesReference load(int docId) throws IOException {
+            if (docId < lastDocId) {
+                loader = root.leaf(reader);
+            }
+            lastDocId = docId;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> source = (Map<String, Object>) loader.load(docId);
+            XContentBuilder builder = XContentFactory.jsonBuilder().map(source == null ? Collections.emptyMap() : source);
+            return BytesReference.bytes(builder);
+        }
+    }
+
+    private interface FieldLoader {
+        /**
+         * Returns a loader for the values of the documents of the given segment.
+         */
+        LeafFieldLoader leaf(LeafReader reader) throws IOException;
+    }
+
+    private interface LeafFieldLoader {
+        /**
+         * Returns the value(s) of the document, or {@code null} if the document doesn't have any. Documents must be loaded in
+         * increasing doc id order.
+         */
+        Object load(int docId) throws IOException;
+    }
+
+    private static final class ObjectLoader implements FieldLoader {
+
+        private final Map<String, FieldLoader> children = new TreeMap<>();
+
+        /**
+         * @param dynamic the {@code dynamic} setting of the object, inherited from its parent if the object doesn't set it
+         */
+        ObjectLoader(ObjectMapper objectMapper, ObjectMapper.Dynamic dynamic) {
+            for (Mapper mapper : objectMapper) {
+                if (mapper instanceof ObjectMapper) {
+                    ObjectMapper child = (ObjectMapper) mapper;
+                    if (child.nested().isNested()) {
+                        throw unsupported(child.name(), "nested objects can't be rebuilt from doc values");
+                    }
+                    if (child.isEnabled() == false) {
+                        throw unsupported(child.name(), "the values of disabled objects aren't indexed");
+                    }
+                    ObjectMapper.Dynamic childDynamic = child.dynamic() == null ? dynamic : child.dynamic();
+                    if (childDynamic == ObjectMapper.Dynamic.FALSE) {
+                        throw unsupported(child.name(),
+                            "it sets [dynamic] to [false], unmapped fields would only be kept in the [_source]");
+                    }
+                    children.put(child.simpleName(), new ObjectLoader(child, childDynamic));
+                } else if (mapper instanceof FieldMapper) {
+                    children.put(mapper.simpleName(), fieldLoader((FieldMapper) mapper));
+                } else if (mapper instanceof FieldAliasMapper == false) {
+                    throw unsupported(mapper.name(), "fields of type [" + mapper.typeName() + "] can't be rebuilt from doc values");
+                }
+            }
+        }
+
+        @Override
+        public LeafFieldLoader leaf(LeafReader reader) throws IOException {
+            String[] names = new String[children.size()];
+            LeafFieldLoader[] loaders = new LeafFieldLoader[children.size()];
+            int i = 0;
+            for (Map.Entry<String, FieldLoader> child : children.entrySet()) {
+                names[i] = child.getKey();
+                loaders[i] = child.getValue().leaf(reader);
+                i++;
+            }
+            return docId -> {
+                Map<String, Object> values = null;
+                for (int j = 0; j < loaders.length; j++) {
+                    Object value = loaders[j].load(docId);
+                    if (value != null) {
+                        if (values == null) {
+                            values = new LinkedHashMap<>();
+                        }
+                        values.put(names[j], value);
+                    }
+                }
+                return values;
+            };
+        }
+    }
+
+    private static FieldLoader fieldLoader(FieldMapper mapper) {
+        final String name = mapper.name();
+        final MappedFieldType fieldType = mapper.fieldType();
+        if (fieldType.hasDocValues() == false) {
+            throw unsupported(name, "it doesn't have doc values");
+        }
+        if (mapper.copyTo() != null && mapper.copyTo().copyToFields().isEmpty() == false) {
+            throw unsupported(name, "it uses [copy_to]");
+        }
+        if (fieldType.nullValue() != null) {
+            throw unsupported(name, "it defines a [null_value]");
+        }
+        if (mapper instanceof KeywordFieldMapper) {
+            KeywordFieldMapper keywordMapper = (KeywordFieldMapper) mapper;
+            if (keywordMapper.ignoreAbove() != KeywordFieldMapper.Defaults.IGNORE_ABOVE) {
+                throw unsupported(name, "it uses [ignore_above]");
+            }
+            if (keywordMapper.fieldType().normalizer() != null) {
+                throw unsupported(name, "it uses a [normalizer]");
+            }
+            return sortedSet(name, BytesRef::utf8ToString);
+        } else if (mapper instanceof NumberFieldMapper) {
+            NumberFieldMapper numberMapper = (NumberFieldMapper) mapper;
+            if (numberMapper.ignoreMalformed().value()) {
+                throw unsupported(name, "it uses [ignore_malformed]");
+            }
+            switch (numberMapper.fieldType().numericType()) {
+                case HALF_FLOAT:
+                    return sortedNumeric(name, value -> HalfFloatPoint.sortableShortToHalfFloat((short) value));
+                case FLOAT:
+                    return sortedNumeric(name, value -> NumericUtils.sortableIntToFloat((int) value));
+                case DOUBLE:
+                    return sortedNumeric(name, NumericUtils::sortableLongToDouble);
+                default:
+                    return sortedNumeric(name, Long::valueOf);
+            }
+        } else if (mapper instanceof DateFieldMapper) {
+            DateFieldMapper dateMapper = (DateFieldMapper) mapper;
+            if (dateMapper.ignoreMalformed().value()) {
+                throw unsupported(name, "it uses [ignore_malformed]");
+            }
+            DateFieldMapper.DateFieldType dateFieldType = dateMapper.fieldType();
+            if (dateFieldType.dateTimeFormatter().pattern().equals(DateFieldMapper.DEFAULT_DATE_TIME_FORMATTER.pattern()) == false) {
+                throw unsupported(name, "it uses a custom [format]");
+            }
+            // print the full precision of the field, the default format only prints milliseconds
+            DateFormatter formatter = dateFieldType.resolution() == DateFieldMapper.Resolution.NANOSECONDS
+                ? NANOS_FORMATTER : MILLIS_FORMATTER;
+            DocValueFormat format = new DocValueFormat.DateTime(formatter, ZoneOffset.UTC, dateFieldType.resolution());
+            return sortedNumeric(name, format::format);
+        } else if (mapper instanceof BooleanFieldMapper) {
+            return sortedNumeric(name, value -> value != 0);
+        } else if (mapper instanceof IpFieldMapper) {
+            if (((IpFieldMapper) mapper).ignoreMalformed().value()) {
+                throw unsupported(name, "it uses [ignore_malformed]");
+            }
+            return sortedSet(name, DocValueFormat.IP::format);
+        }
+        throw unsupported(name, "fields of type [" + fieldType.typeName() + "] can't be rebuilt from doc values");
+    }
+
+    private static FieldLoader sortedNumeric(String field, LongFunction<Object> converter) {
+        return reader -> {
+            SortedNumericDocValues docValues = DocValues.getSortedNumeric(reader, field);
+            return docId -> {
+                if (docValues.advanceExact(docId) == false) {
+                    return null;
+                }
+                int count = docValues.docValueCount();
+                if (count == 1) {
+                    return converter.apply(docValues.nextValue());
+                }
+                List<Object> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    values.add(converter.apply(docValues.nextValue()));
+                }
+                return values;
+            };
+        };
+    }
+
+    private static FieldLoader sortedSet(String field, Function<BytesRef, Object> converter) {
+        return reader -> {
+            SortedSetDocValues docValues = DocValues.getSortedSet(reader, field);
+            return docId -> {
+                if (docValues.advanceExact(docId) == false) {
+                    return null;
+                }
+                List<Object> values = new ArrayList<>();
+                for (long ord = docValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docValues.nextOrd()) {
+                    values.add(converter.apply(docValues.lookupOrd(ord)));
+                }
+                return values.size() == 1 ? values.get(0) : values;
+            };
+        };
+    }
+
+    private static IllegalArgumentException unsupported(String field, String reason) {
+        return new IllegalArgumentException("field [" + field + "] can't be used with a synthetic [_source] because " + reason);
+    }
+}
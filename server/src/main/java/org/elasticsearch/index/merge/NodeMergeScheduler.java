@@ -0,0 +1,404 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.merge;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimitedIndexOutput;
+import org.apache.lucene.store.RateLimiter;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules the merges of all the shards of a node under a node-wide budget. Each shard still merges through its own
+ * {@link org.apache.lucene.index.ConcurrentMergeScheduler}, but before a merge thread starts merging it has to acquire a slot
+ * from the data path that the shard is stored on. The {@link #MAX_THREAD_COUNT_SETTING node-wide number of slots} and the
+ * {@link #MAX_BYTES_PER_SEC_SETTING node-wide write rate} are split evenly across the data paths, so that shards sharing the
+ * same disks don't merge independently of each other. Each data path gets at least one slot, but no more merges than the
+ * node-wide number of slots run at once. Waiting merges are granted slots in the following order: merges of shards that are
+ * actively searched first, then smaller merges first, then in the order they were submitted. Merges age while they wait so
+ * that they can't be starved by a steady flow of merges that have a higher priority: every minute a merge waits halves the
+ * size it competes with, and a merge of an idle shard competes like the merges of active shards once it waited for a minute.
+ */
+public class NodeMergeScheduler {
+
+    /**
+     * Whether the merges of the shards of this node are scheduled under the node-wide budget rather than per shard only.
+     */
+    public static final Setting<Boolean> ENABLED_SETTING =
+        Setting.boolSetting("indices.merge.node_scheduler.enabled", false, Property.NodeScope);
+
+    /**
+     * The maximum number of merges that may run at once on this node, split evenly across the data paths.
+     */
+    public static final Setting<Integer> MAX_THREAD_COUNT_SETTING =
+        new Setting<>("indices.merge.node_scheduler.max_thread_count",
+            (s) -> Integer.toString(Math.max(1, Math.min(4, EsExecutors.numberOfProcessors(s) / 2))),
+            (s) -> Setting.parseInt(s, 1, "indices.merge.node_scheduler.max_thread_count"), Property.NodeScope, Property.Dynamic);
+
+    /**
+     * The maximum rate at which the merges of this node may write, split evenly across the data paths. Unlimited if zero.
+     */
+    public static final Setting<ByteSizeValue> MAX_BYTES_PER_SEC_SETTING =
+        Setting.byteSizeSetting("indices.merge.node_scheduler.max_bytes_per_sec", new ByteSizeValue(0),
+            Property.NodeScope, Property.Dynamic);
+
+    /**
+     * How long a merge has to wait for its priority to be raised by one step.
+     */
+    static final long AGING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Orders the waiting merges at the given time, the merge that should be granted a slot first comes first.
+     */
+    private static Comparator<PendingMerge> priority(long nowInNanos) {
+        return Comparator.comparing((PendingMerge merge) -> merge.searchActive == false && merge.age(nowInNanos) == 0)
+            .thenComparingLong(merge -> merge.sizeInBytes >>> Math.min(Long.SIZE - 1, merge.age(nowInNanos)))
+            .thenComparingLong(merge -> merge.seqNo);
+    }
+
+    private final boolean enabled;
+    private final int numDataPaths;
+    private final LongSupplier relativeTimeInNanosSupplier;
+    private final ConcurrentMap<Path, PathScheduler> pathSchedulers = ConcurrentCollections.newConcurrentMap();
+    private final AtomicLong seqNoGenerator = new AtomicLong();
+    // the number of merges that run on all the data paths, never more than maxThreadCount
+    private final AtomicInteger runningMerges = new AtomicInteger();
+    private volatile int maxThreadCount;
+    private volatile double mbPerSecPerPath;
+
+    private final CounterMetric totalMerges = new CounterMetric();
+    private final CounterMetric totalQueuedTimeInNanos = new CounterMetric();
+
+    public NodeMergeScheduler(Settings settings, ClusterSettings clusterSettings, int numDataPaths) {
+        this(settings, clusterSettings, numDataPaths, System::nanoTime);
+    }
+
+    NodeMergeScheduler(Settings settings, ClusterSettings clusterSettings, int numDataPaths, LongSupplier relativeTimeInNanosSupplier) {
+        if (numDataPaths < 1) {
+            throw new IllegalArgumentException("at least one data path is required but got [" + numDataPaths + "]");
+        }
+        this.enabled = ENABLED_SETTING.get(settings);
+        this.numDataPaths = numDataPaths;
+        this.relativeTimeInNanosSupplier = relativeTimeInNanosSupplier;
+        setMaxThreadCount(MAX_THREAD_COUNT_SETTING.get(settings));
+        setMaxBytesPerSec(MAX_BYTES_PER_SEC_SETTING.get(settings));
+        clusterSettings.addSettingsUpdateConsumer(MAX_THREAD_COUNT_SETTING, this::setMaxThreadCount);
+        clusterSettings.addSettingsUpdateConsumer(MAX_BYTES_PER_SEC_SETTING, this::setMaxBytesPerSec);
+    }
+
+    private void setMaxThreadCount(int maxThreadCount) {
+        this.maxThreadCount = maxThreadCount;
+        // more merges might be allowed to run now
+        grantSlots();
+    }
+
+    private void grantSlots() {
+        pathSchedulers.values().forEach(PathScheduler::grantSlots);
+    }
+
+    private void setMaxBytesPerSec(ByteSizeValue maxBytesPerSec) {
+        if (maxBytesPerSec.getBytes() <= 0) {
+            mbPerSecPerPath = Double.POSITIVE_INFINITY;
+        } else {
+            mbPerSecPerPath = maxBytesPerSec.getBytes() / (double) numDataPaths / ByteSizeUnit.MB.toBytes(1);
+        }
+        for (PathScheduler pathScheduler : pathSchedulers.values()) {
+            pathScheduler.rateLimiter.setMBPerSec(mbPerSecPerPath);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if shards should schedule their merges through this scheduler.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the scheduler for the merges of a shard that is stored on the provided data path.
+     *
+     * @param searchActive whether the shard is currently searched, which gives its merges priority over the merges of idle shards
+     */
+    public ShardScheduler newShardScheduler(Path dataPath, ShardId shardId, BooleanSupplier searchActive) {
+        return new ShardScheduler(pathSchedulers.computeIfAbsent(dataPath, p -> new PathScheduler()), shardId, searchActive);
+    }
+
+    private int maxThreadCountPerPath() {
+        return Math.max(1, maxThreadCount / numDataPaths);
+    }
+
+    /**
+     * Takes one of the node-wide slots if any is left. Data paths get at least one slot each, so there may be more data paths
+     * that want to merge than slots.
+     */
+    private boolean tryAcquireNodeSlot() {
+        int running;
+        do {
+            running = runningMerges.get();
+            if (running >= maxThreadCount) {
+                return false;
+            }
+        } while (runningMerges.compareAndSet(running, running + 1) == false);
+        return true;
+    }
+
+    public NodeMergeStats stats() {
+        long running = 0;
+        long queued = 0;
+        long queuedSizeInBytes = 0;
+        final Map<ShardId, long[]> backlogs = new TreeMap<>();
+        for (PathScheduler pathScheduler : pathSchedulers.values()) {
+            pathScheduler.lock.lock();
+            try {
+                for (PendingMerge merge : pathScheduler.running) {
+                    running++;
+                    backlogs.computeIfAbsent(merge.shardId, k -> new long[3])[0]++;
+                }
+                for (PendingMerge merge : pathScheduler.queue) {
+                    queued++;
+                    queuedSizeInBytes += merge.sizeInBytes;
+                    final long[] backlog = backlogs.computeIfAbsent(merge.shardId, k -> new long[3]);
+                    backlog[1]++;
+                    backlog[2] += merge.sizeInBytes;
+                }
+            } finally {
+                pathScheduler.lock.unlock();
+            }
+        }
+        final List<NodeMergeStats.ShardBacklog> shards = new ArrayList<>(backlogs.size());
+        for (Map.Entry<ShardId, long[]> entry : backlogs.entrySet()) {
+            final long[] backlog = entry.getValue();
+            shards.add(new NodeMergeStats.ShardBacklog(entry.getKey(), backlog[0], backlog[1], backlog[2]));
+        }
+        return new NodeMergeStats(running, queued, queuedSizeInBytes, totalMerges.count(),
+            TimeUnit.NANOSECONDS.toMillis(totalQueuedTimeInNanos.count()), shards);
+    }
+
+    /**
+     * Schedules the merges of a single shard through the node-wide scheduler.
+     */
+    public final class ShardScheduler {
+
+        private final PathScheduler pathScheduler;
+        private final ShardId shardId;
+        private final BooleanSupplier searchActive;
+
+        private ShardScheduler(PathScheduler pathScheduler, ShardId shardId, BooleanSupplier searchActive) {
+            this.pathScheduler = pathScheduler;
+            this.shardId = shardId;
+            this.searchActive = searchActive;
+        }
+
+        /**
+         * Blocks until the merge is allowed to run and returns the slot that must be released once the merge is done. Merges
+         * that get aborted while waiting stop waiting and get an empty slot, since they bail out as soon as they start anyway.
+         * Waiting merges only re-check whether they got aborted when {@link #abortQueuedMerges()} is called.
+         *
+         * @param sizeInBytes the size of the segments to merge
+         * @param aborted     whether the merge got aborted
+         */
+        public Releasable acquire(long sizeInBytes, BooleanSupplier aborted) throws InterruptedException {
+            final PendingMerge merge = pathScheduler.newPendingMerge(shardId, sizeInBytes, searchActive.getAsBoolean());
+            final boolean acquired = pathScheduler.acquire(merge, aborted);
+            totalQueuedTimeInNanos.inc(relativeTimeInNanosSupplier.getAsLong() - merge.queuedAtNanos);
+            if (acquired == false) {
+                return () -> {};
+            }
+            totalMerges.inc();
+            return Releasables.releaseOnce(() -> pathScheduler.release(merge));
+        }
+
+        /**
+         * Wakes up the merges of this shard that wait for a slot so that they check whether they got aborted.
+         */
+        public void abortQueuedMerges() {
+            pathScheduler.abortQueuedMerges(shardId);
+        }
+
+        /**
+         * Wraps the directory that a merge writes to so that its writes are rate limited under the budget of the data path.
+         */
+        public Directory wrapForMerge(Directory in) {
+            final RateLimiter rateLimiter = pathScheduler.rateLimiter;
+            return new FilterDirectory(in) {
+                @Override
+                public IndexOutput createOutput(String name, IOContext context) throws IOException {
+                    final IndexOutput output = in.createOutput(name, context);
+                    if (rateLimiter.getMBPerSec() == Double.POSITIVE_INFINITY) {
+                        return output;
+                    }
+                    return new RateLimitedIndexOutput(rateLimiter, output);
+                }
+            };
+        }
+    }
+
+    private static final class PendingMerge {
+        final ShardId shardId;
+        final long sizeInBytes;
+        final boolean searchActive;
+        final long seqNo;
+        final long queuedAtNanos;
+        // signalled once the merge is granted a slot or should check whether it got aborted
+        final Condition condition;
+        boolean granted;
+
+        PendingMerge(ShardId shardId, long sizeInBytes, boolean searchActive, long seqNo, long queuedAtNanos, Condition condition) {
+            this.shardId = shardId;
+            this.sizeInBytes = sizeInBytes;
+            this.searchActive = searchActive;
+            this.seqNo = seqNo;
+            this.queuedAtNanos = queuedAtNanos;
+            this.condition = condition;
+        }
+
+        /**
+         * The number of aging intervals that this merge waited for at the given time.
+         */
+        long age(long nowInNanos) {
+            return Math.max(0L, nowInNanos - queuedAtNanos) / AGING_INTERVAL_NANOS;
+        }
+    }
+
+    /**
+     * Hands the slots of a data path to waiting merges. Slots are granted by the thread that frees them up, so that only the merges
+     * that may run now are woken up. The priorities of the waiting merges change as they age, so they are compared whenever a slot
+     * is granted rather than kept sorted. There are rarely more than a few of them per data path.
+     */
+    private final class PathScheduler {
+
+        private final RateLimiter.SimpleRateLimiter rateLimiter = new RateLimiter.SimpleRateLimiter(mbPerSecPerPath);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<PendingMerge> queue = new ArrayList<>();
+        private final Set<PendingMerge> running = new HashSet<>();
+
+        PendingMerge newPendingMerge(ShardId shardId, long sizeInBytes, boolean searchActive) {
+            return new PendingMerge(shardId, sizeInBytes, searchActive, seqNoGenerator.incrementAndGet(),
+                relativeTimeInNanosSupplier.getAsLong(), lock.newCondition());
+        }
+
+        boolean acquire(PendingMerge merge, BooleanSupplier aborted) throws InterruptedException {
+            InterruptedException interrupted = null;
+            lock.lock();
+            try {
+                queue.add(merge);
+                grantSlots();
+                try {
+                    while (merge.granted == false) {
+                        if (aborted.getAsBoolean()) {
+                            queue.remove(merge);
+                            return false;
+                        }
+                        merge.condition.await();
+                    }
+                } catch (InterruptedException e) {
+                    if (merge.granted == false) {
+                        queue.remove(merge);
+                        throw e;
+                    }
+                    // the slot is released once the lock is, since releasing it might grant slots on the other data paths
+                    interrupted = e;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (interrupted != null) {
+                release(merge);
+                throw interrupted;
+            }
+            return true;
+        }
+
+        void release(PendingMerge merge) {
+            assert lock.isHeldByCurrentThread() == false : "must not hold the lock of a data path while granting slots on the others";
+            lock.lock();
+            try {
+                final boolean removed = running.remove(merge);
+                assert removed : "merge was not running";
+            } finally {
+                lock.unlock();
+            }
+            runningMerges.decrementAndGet();
+            // the freed slot goes to this data path first, and to the other ones if this one has no merges waiting
+            grantSlots();
+            NodeMergeScheduler.this.grantSlots();
+        }
+
+        void grantSlots() {
+            lock.lock();
+            try {
+                while (queue.isEmpty() == false && running.size() < maxThreadCountPerPath() && tryAcquireNodeSlot()) {
+                    final PendingMerge merge = Collections.min(queue, priority(relativeTimeInNanosSupplier.getAsLong()));
+                    queue.remove(merge);
+                    merge.granted = true;
+                    running.add(merge);
+                    merge.condition.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void abortQueuedMerges(ShardId shardId) {
+            lock.lock();
+            try {
+                for (PendingMerge merge : queue) {
+                    if (merge.shardId.equals(shardId)) {
+                        merge.condition.signal();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
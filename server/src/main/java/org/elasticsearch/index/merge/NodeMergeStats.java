@@ -0,0 +1,251 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.merge;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Statistics about the merges that the {@link NodeMergeScheduler} of a node is running and holding back.
+ */
+public class NodeMergeStats implements Writeable, ToXContentFragment {
+
+    private final long running;
+    private final long queued;
+    private final long queuedSizeInBytes;
+    private final long total;
+    private final long totalQueuedTimeInMillis;
+    private final List<ShardBacklog> shards;
+
+    public NodeMergeStats(long running, long queued, long queuedSizeInBytes, long total, long totalQueuedTimeInMillis,
+                          List<ShardBacklog> shards) {
+        this.running = running;
+        this.queued = queued;
+        this.queuedSizeInBytes = queuedSizeInBytes;
+        this.total = total;
+        this.totalQueuedTimeInMillis = totalQueuedTimeInMillis;
+        this.shards = List.copyOf(shards);
+    }
+
+    public NodeMergeStats(StreamInput in) throws IOException {
+        running = in.readVLong();
+        queued = in.readVLong();
+        queuedSizeInBytes = in.readVLong();
+        total = in.readVLong();
+        totalQueuedTimeInMillis = in.readVLong();
+        shards = in.readList(ShardBacklog::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(running);
+        out.writeVLong(queued);
+        out.writeVLong(queuedSizeInBytes);
+        out.writeVLong(total);
+        out.writeVLong(totalQueuedTimeInMillis);
+        out.writeList(shards);
+    }
+
+    /**
+     * The number of merges that currently hold a slot of the node-wide budget.
+     */
+    public long getRunning() {
+        return running;
+    }
+
+    /**
+     * The number of merges that are waiting for a slot, i.e. the depth of the merge queue.
+     */
+    public long getQueued() {
+        return queued;
+    }
+
+    /**
+     * The total size of the segments that the queued merges are going to merge.
+     */
+    public ByteSizeValue getQueuedSize() {
+        return new ByteSizeValue(queuedSizeInBytes);
+    }
+
+    /**
+     * The number of merges that have been granted a slot.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * The total time merges spent waiting for a slot.
+     */
+    public TimeValue getTotalQueuedTime() {
+        return new TimeValue(totalQueuedTimeInMillis);
+    }
+
+    /**
+     * The merge backlog of every shard that has running or queued merges.
+     */
+    public List<ShardBacklog> getShards() {
+        return shards;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.MERGE_SCHEDULER);
+        builder.field(Fields.RUNNING, running);
+        builder.field(Fields.QUEUED, queued);
+        builder.humanReadableField(Fields.QUEUED_SIZE_IN_BYTES, Fields.QUEUED_SIZE, getQueuedSize());
+        builder.field(Fields.TOTAL, total);
+        builder.humanReadableField(Fields.TOTAL_QUEUED_TIME_IN_MILLIS, Fields.TOTAL_QUEUED_TIME, getTotalQueuedTime());
+        builder.startArray(Fields.SHARDS);
+        for (ShardBacklog shard : shards) {
+            shard.toXContent(builder, params);
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final String MERGE_SCHEDULER = "merge_scheduler";
+        static final String RUNNING = "running";
+        static final String QUEUED = "queued";
+        static final String QUEUED_SIZE = "queued_size";
+        static final String QUEUED_SIZE_IN_BYTES = "queued_size_in_bytes";
+        static final String TOTAL = "total";
+        static final String TOTAL_QUEUED_TIME = "total_queued_time";
+        static final String TOTAL_QUEUED_TIME_IN_MILLIS = "total_queued_time_in_millis";
+        static final String SHARDS = "shards";
+        static final String INDEX = "index";
+        static final String SHARD = "shard";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        NodeMergeStats that = (NodeMergeStats) o;
+        return running == that.running &&
+            queued == that.queued &&
+            queuedSizeInBytes == that.queuedSizeInBytes &&
+            total == that.total &&
+            totalQueuedTimeInMillis == that.totalQueuedTimeInMillis &&
+            shards.equals(that.shards);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(running, queued, queuedSizeInBytes, total, totalQueuedTimeInMillis, shards);
+    }
+
+    /**
+     * The running and queued merges of a single shard.
+     */
+    public static class ShardBacklog implements Writeable, ToXContentObject {
+
+        private final ShardId shardId;
+        private final long running;
+        private final long queued;
+        private final long queuedSizeInBytes;
+
+        public ShardBacklog(ShardId shardId, long running, long queued, long queuedSizeInBytes) {
+            this.shardId = Objects.requireNonNull(shardId);
+            this.running = running;
+            this.queued = queued;
+            this.queuedSizeInBytes = queuedSizeInBytes;
+        }
+
+        public ShardBacklog(StreamInput in) throws IOException {
+            shardId = new ShardId(in);
+            running = in.readVLong();
+            queued = in.readVLong();
+            queuedSizeInBytes = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            shardId.writeTo(out);
+            out.writeVLong(running);
+            out.writeVLong(queued);
+            out.writeVLong(queuedSizeInBytes);
+        }
+
+        public ShardId getShardId() {
+            return shardId;
+        }
+
+        public long getRunning() {
+            return running;
+        }
+
+        public long getQueued() {
+            return queued;
+        }
+
+        public ByteSizeValue getQueuedSize() {
+            return new ByteSizeValue(queuedSizeInBytes);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(Fields.INDEX, shardId.getIndexName());
+            builder.field(Fields.SHARD, shardId.id());
+            builder.field(Fields.RUNNING, running);
+            builder.field(Fields.QUEUED, queued);
+            builder.humanReadableField(Fields.QUEUED_SIZE_IN_BYTES, Fields.QUEUED_SIZE, getQueuedSize());
+            return builder.endObject();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ShardBacklog that = (ShardBacklog) o;
+            return shardId.equals(that.shardId) &&
+                running == that.running &&
+                queued == that.queued &&
+                queuedSizeInBytes == that.queuedSizeInBytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shardId, running, queued, queuedSizeInBytes);
+        }
+    }
+}
@@ -19,14 +19,20 @@
 
 package org.elasticsearch.index.seqno;
 
-import com.carrotsearch.hppc.LongObjectHashMap;
 import org.elasticsearch.common.SuppressForbidden;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class generates sequences numbers and keeps track of the so-called "local checkpoint" which is the highest number for which all
  * previous sequence numbers have been processed (inclusive).
+ * <p>
+ * Sequence numbers are marked without taking a lock: each one sets its bit with a compare-and-set and the thread that finds the bit
+ * following the checkpoint set advances the checkpoint with a compare-and-set over all consecutively set bits. Any thread that sets a bit
+ * re-reads the checkpoint afterwards, so a bit is never set without either its own thread or the thread that lost the race advancing the
+ * checkpoint over it.
  */
 public class LocalCheckpointTracker {
 
@@ -36,17 +42,19 @@ public class LocalCheckpointTracker {
      */
     static final short BIT_SET_SIZE = 1024;
 
+    private static final int WORDS_PER_BIT_SET = BIT_SET_SIZE / Long.SIZE;
+
     /**
      * A collection of bit sets representing processed sequence numbers. Each sequence number is mapped to a bit set by dividing by the
      * bit set size.
      */
-    final LongObjectHashMap<CountedBitSet> processedSeqNo = new LongObjectHashMap<>();
+    final ConcurrentHashMap<Long, AtomicLongArray> processedSeqNo = new ConcurrentHashMap<>();
 
     /**
      * A collection of bit sets representing durably persisted sequence numbers. Each sequence number is mapped to a bit set by dividing by
      * the bit set size.
      */
-    final LongObjectHashMap<CountedBitSet> persistedSeqNo = new LongObjectHashMap<>();
+    final ConcurrentHashMap<Long, AtomicLongArray> persistedSeqNo = new ConcurrentHashMap<>();
 
     /**
      * The current local checkpoint, i.e., all sequence numbers no more than this number have been processed.
@@ -63,6 +71,12 @@ public class LocalCheckpointTracker {
      */
     final AtomicLong nextSeqNo = new AtomicLong();
 
+    /**
+     * The number of threads in {@link #waitForProcessedOpsToComplete(long)}, only modified while holding the monitor of this tracker. It
+     * allows advancing the processed checkpoint without taking the monitor when nobody needs to be notified.
+     */
+    private volatile int waiters;
+
     /**
      * Initialize the local checkpoint service. The {@code maxSeqNo} should be set to the last sequence number assigned, or
      * {@link SequenceNumbers#NO_OPS_PERFORMED} and {@code localCheckpoint} should be set to the last known local checkpoint,
@@ -95,6 +109,17 @@ public class LocalCheckpointTracker {
         return nextSeqNo.getAndIncrement();
     }
 
+    /**
+     * Issue a range of consecutive sequence numbers.
+     *
+     * @param count the number of sequence numbers to issue
+     * @return the first sequence number of the assigned range
+     */
+    public long generateSeqNos(int count) {
+        assert count > 0 : "count must be positive but was [" + count + "]";
+        return nextSeqNo.getAndAdd(count);
+    }
+
     /**
      * Marks the provided sequence number as seen and updates the max_seq_no if needed.
      */
@@ -107,8 +132,10 @@ public class LocalCheckpointTracker {
      *
      * @param seqNo the sequence number to mark as processed
      */
-    public synchronized void markSeqNoAsProcessed(final long seqNo) {
-        markSeqNo(seqNo, processedCheckpoint, processedSeqNo);
+    public void markSeqNoAsProcessed(final long seqNo) {
+        if (markSeqNo(seqNo, processedCheckpoint, processedSeqNo) && waiters > 0) {
+            notifyWaiters();
+        }
     }
 
     /**
@@ -116,26 +143,40 @@ public class LocalCheckpointTracker {
      *
      * @param seqNo the sequence number to mark as persisted
      */
-    public synchronized void markSeqNoAsPersisted(final long seqNo) {
+    public void markSeqNoAsPersisted(final long seqNo) {
         markSeqNo(seqNo, persistedCheckpoint, persistedSeqNo);
     }
 
-    private void markSeqNo(final long seqNo, final AtomicLong checkPoint, final LongObjectHashMap<CountedBitSet> bitSetMap) {
-        assert Thread.holdsLock(this);
+    /**
+     * Sets the bit of the provided sequence number and advances the checkpoint over all consecutively set bits.
+     *
+     * @return whether this call advanced the checkpoint
+     */
+    private boolean markSeqNo(final long seqNo, final AtomicLong checkPoint, final ConcurrentHashMap<Long, AtomicLongArray> bitSetMap) {
         // make sure we track highest seen sequence number
         advanceMaxSeqNo(seqNo);
         if (seqNo <= checkPoint.get()) {
             // this is possible during recovery where we might replay an operation that was also replicated
-            return;
+            return false;
         }
-        final CountedBitSet bitSet = getBitSetForSeqNo(bitSetMap, seqNo);
+        final long bitSetKey = getBitSetKey(seqNo);
+        final AtomicLongArray bitSet = getBitSetForSeqNo(bitSetMap, bitSetKey);
         final int offset = seqNoToBitSetOffset(seqNo);
-        bitSet.set(offset);
-        if (seqNo == checkPoint.get() + 1) {
-            updateCheckpoint(checkPoint, bitSetMap);
+        final int wordIndex = offset / Long.SIZE;
+        final long mask = 1L << offset;
+        long word;
+        do {
+            word = bitSet.get(wordIndex);
+        } while ((word & mask) == 0 && bitSet.compareAndSet(wordIndex, word, word | mask) == false);
+        if (bitSetKey < getBitSetKey(checkPoint.get() + 1)) {
+            /*
+             * The checkpoint moved past the whole bit set while we were marking a sequence number that was marked concurrently, so we
+             * might have recreated a bit set that was already cleaned up.
+             */
+            bitSetMap.remove(bitSetKey, bitSet);
         }
+        return updateCheckpoint(checkPoint, bitSetMap);
     }
-
     /**
      * The current checkpoint which can be advanced by {@link #markSeqNoAsProcessed(long)}.
      *
@@ -169,8 +210,10 @@ public class LocalCheckpointTracker {
      *
      * This is needed to make sure the persisted local checkpoint and max seq no are consistent
      */
-    public synchronized SeqNoStats getStats(final long globalCheckpoint) {
-        return new SeqNoStats(getMaxSeqNo(), getPersistedCheckpoint(), globalCheckpoint);
+    public SeqNoStats getStats(final long globalCheckpoint) {
+        // the max seq no is advanced before the checkpoint, so reading the checkpoint first never yields a checkpoint above the max seq no
+        final long persistedCheckpoint = getPersistedCheckpoint();
+        return new SeqNoStats(getMaxSeqNo(), persistedCheckpoint, globalCheckpoint);
     }
 
     /**
@@ -181,12 +224,23 @@ public class LocalCheckpointTracker {
      */
     @SuppressForbidden(reason = "Object#wait")
     public synchronized void waitForProcessedOpsToComplete(final long seqNo) throws InterruptedException {
-        while (processedCheckpoint.get() < seqNo) {
-            // notified by updateCheckpoint
-            this.wait();
+        // registered before checking the checkpoint so that the thread advancing the checkpoint past seqNo sees us
+        waiters++;
+        try {
+            while (processedCheckpoint.get() < seqNo) {
+                // notified by markSeqNoAsProcessed
+                this.wait();
+            }
+        } finally {
+            waiters--;
         }
     }
 
+    @SuppressForbidden(reason = "Object#notifyAll")
+    private synchronized void notifyWaiters() {
+        this.notifyAll();
+    }
+
     /**
      * Checks if the given sequence number was marked as processed in this tracker.
      */
@@ -198,86 +252,86 @@ public class LocalCheckpointTracker {
         if (seqNo <= processedCheckpoint.get()) {
             return true;
         }
-        final long bitSetKey = getBitSetKey(seqNo);
-        final int bitSetOffset = seqNoToBitSetOffset(seqNo);
-        synchronized (this) {
-            // check again under lock
-            if (seqNo <= processedCheckpoint.get()) {
-                return true;
-            }
-            final CountedBitSet bitSet = processedSeqNo.get(bitSetKey);
-            return bitSet != null && bitSet.get(bitSetOffset);
+        final AtomicLongArray bitSet = processedSeqNo.get(getBitSetKey(seqNo));
+        final int offset = seqNoToBitSetOffset(seqNo);
+        if (bitSet != null && (bitSet.get(offset / Long.SIZE) & (1L << offset)) != 0) {
+            return true;
         }
+        // the bit set might have been cleaned up since the checkpoint moved past it
+        return seqNo <= processedCheckpoint.get();
     }
 
     /**
-     * Moves the checkpoint to the last consecutively processed sequence number. This method assumes that the sequence number
-     * following the current checkpoint is processed.
+     * Moves the checkpoint to the last consecutively processed sequence number, cleaning up the bit sets the checkpoint moves past. Gives
+     * up as soon as the bit following the checkpoint is not set and the checkpoint did not change in the meantime, in which case the
+     * thread that sets that bit will see the checkpoint and move it further.
+     *
+     * @return whether this call advanced the checkpoint
      */
-    @SuppressForbidden(reason = "Object#notifyAll")
-    private void updateCheckpoint(AtomicLong checkPoint, LongObjectHashMap<CountedBitSet> bitSetMap) {
-        assert Thread.holdsLock(this);
-        assert getBitSetForSeqNo(bitSetMap, checkPoint.get() + 1).get(seqNoToBitSetOffset(checkPoint.get() + 1)) :
-            "updateCheckpoint is called but the bit following the checkpoint is not set";
-        try {
-            // keep it simple for now, get the checkpoint one by one; in the future we can optimize and read words
-            long bitSetKey = getBitSetKey(checkPoint.get());
-            CountedBitSet current = bitSetMap.get(bitSetKey);
-            if (current == null) {
-                // the bit set corresponding to the checkpoint has already been removed, set ourselves up for the next bit set
-                assert checkPoint.get() % BIT_SET_SIZE == BIT_SET_SIZE - 1;
-                current = bitSetMap.get(++bitSetKey);
-            }
-            do {
-                checkPoint.incrementAndGet();
-                /*
-                 * The checkpoint always falls in the current bit set or we have already cleaned it; if it falls on the last bit of the
-                 * current bit set, we can clean it.
-                 */
-                if (checkPoint.get() == lastSeqNoInBitSet(bitSetKey)) {
-                    assert current != null;
-                    final CountedBitSet removed = bitSetMap.remove(bitSetKey);
-                    assert removed == current;
-                    current = bitSetMap.get(++bitSetKey);
+    private static boolean updateCheckpoint(final AtomicLong checkPoint, final ConcurrentHashMap<Long, AtomicLongArray> bitSetMap) {
+        boolean advanced = false;
+        while (true) {
+            final long current = checkPoint.get();
+            final long next = lastConsecutiveSeqNo(bitSetMap, current);
+            if (next == current) {
+                if (checkPoint.get() == current) {
+                    return advanced;
                 }
-            } while (current != null && current.get(seqNoToBitSetOffset(checkPoint.get() + 1)));
-        } finally {
-            // notifies waiters in waitForProcessedOpsToComplete
-            this.notifyAll();
+            } else if (checkPoint.compareAndSet(current, next)) {
+                advanced = true;
+                // the bit sets up to the one containing the new checkpoint are complete unless the checkpoint is its last bit
+                final long lastCompleteBitSetKey = getBitSetKey(next + 1) - 1;
+                for (long bitSetKey = getBitSetKey(current + 1); bitSetKey <= lastCompleteBitSetKey; bitSetKey++) {
+                    bitSetMap.remove(bitSetKey);
+                }
+            }
         }
     }
 
-    private static long lastSeqNoInBitSet(final long bitSetKey) {
-        return (1 + bitSetKey) * BIT_SET_SIZE - 1;
+    /**
+     * Finds the last sequence number of the run of set bits that starts right after the provided checkpoint, reading a word at a time.
+     */
+    private static long lastConsecutiveSeqNo(final ConcurrentHashMap<Long, AtomicLongArray> bitSetMap, final long checkPoint) {
+        long next = checkPoint + 1;
+        while (true) {
+            final AtomicLongArray bitSet = bitSetMap.get(getBitSetKey(next));
+            if (bitSet == null) {
+                return next - 1;
+            }
+            final int offset = seqNoToBitSetOffset(next);
+            final int bitInWord = offset % Long.SIZE;
+            final long word = bitSet.get(offset / Long.SIZE) >>> bitInWord;
+            final int setBits = Long.numberOfTrailingZeros(~word);
+            next += setBits;
+            if (setBits < Long.SIZE - bitInWord) {
+                return next - 1;
+            }
+        }
     }
 
     /**
-     * Return the bit set for the provided sequence number, possibly allocating a new set if needed.
+     * Return the key of the bit set for the provided sequence number.
      *
-     * @param seqNo the sequence number to obtain the bit set for
-     * @return the bit set corresponding to the provided sequence number
+     * @param seqNo the sequence number to obtain the bit set key for
+     * @return the key of the bit set corresponding to the provided sequence number
      */
     private static long getBitSetKey(final long seqNo) {
         return seqNo / BIT_SET_SIZE;
     }
 
-    private CountedBitSet getBitSetForSeqNo(final LongObjectHashMap<CountedBitSet> bitSetMap, final long seqNo) {
-        assert Thread.holdsLock(this);
-        final long bitSetKey = getBitSetKey(seqNo);
-        final int index = bitSetMap.indexOf(bitSetKey);
-        final CountedBitSet bitSet;
-        if (bitSetMap.indexExists(index)) {
-            bitSet = bitSetMap.indexGet(index);
-        } else {
-            bitSet = new CountedBitSet(BIT_SET_SIZE);
-            bitSetMap.indexInsert(index, bitSetKey, bitSet);
+    private static AtomicLongArray getBitSetForSeqNo(final ConcurrentHashMap<Long, AtomicLongArray> bitSetMap, final long bitSetKey) {
+        final AtomicLongArray bitSet = bitSetMap.get(bitSetKey);
+        if (bitSet != null) {
+            return bitSet;
         }
-        return bitSet;
+        final AtomicLongArray newBitSet = new AtomicLongArray(WORDS_PER_BIT_SET);
+        final AtomicLongArray existing = bitSetMap.putIfAbsent(bitSetKey, newBitSet);
+        return existing == null ? newBitSet : existing;
     }
 
     /**
      * Obtain the position in the bit set corresponding to the provided sequence number. The bit set corresponding to the sequence number
-     * can be obtained via {@link #getBitSetForSeqNo(LongObjectHashMap, long)}.
+     * can be obtained via {@link #getBitSetForSeqNo(ConcurrentHashMap, long)}.
      *
      * @param seqNo the sequence number to obtain the position for
      * @return the position in the bit set corresponding to the provided sequence number
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.shard;
+
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how often a shard is refreshed when adaptive refresh is enabled, see
+ * {@link org.elasticsearch.index.IndexSettings#INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING}.
+ *
+ * The policy keeps exponentially weighted rates of the searches that hit the shard and of the operations that are indexed into it.
+ * A refresh costs roughly the same no matter how often it happens while the documents that searches miss grow with the time since
+ * the last refresh, so the interval that balances both is {@code 1 / sqrt(searchRate * writeRate)} seconds. Shards that nobody
+ * searches are refreshed at the maximum interval, busy shards that are searched a lot are refreshed at the minimum interval. Pending
+ * refresh listeners (i.e. {@code wait_for} requests) are readers too: they count towards the search rate, so shards that receive many
+ * {@code wait_for} writes get a shorter interval, and they force a refresh on the next scheduled run, which happens every minimum
+ * interval.
+ */
+final class AdaptiveRefreshPolicy {
+
+    /**
+     * The time window over which the search and write rates are averaged.
+     */
+    static final long RATE_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final LongAdder searches = new LongAdder();
+    private long lastUpdateNanos;
+    private long lastSearches;
+    private long lastWrites;
+    private double searchRate;
+    private double writeRate;
+    private long lastRefreshNanos;
+
+    AdaptiveRefreshPolicy(long nowInNanos) {
+        this.lastUpdateNanos = nowInNanos;
+        this.lastRefreshNanos = nowInNanos;
+    }
+
+    /**
+     * Records that a search accessed the shard.
+     */
+    void onSearch() {
+        searches.increment();
+    }
+
+    /**
+     * Records that the shard was refreshed.
+     */
+    synchronized void onRefresh(long nowInNanos) {
+        lastRefreshNanos = nowInNanos;
+    }
+
+    /**
+     * Updates the search and write rates and returns whether the shard needs to be refreshed, either because refresh listeners are
+     * pending or because enough time passed since the last refresh.
+     *
+     * @param nowInNanos       the current relative time
+     * @param totalWrites      the number of operations that were indexed into the shard so far
+     * @param pendingListeners the number of refresh listeners that wait for the next refresh, they are released by the refresh that
+     *                         this call triggers so each of them is counted once
+     * @param minInterval      the shortest interval between two refreshes
+     * @param maxInterval      the longest interval between two refreshes
+     */
+    synchronized boolean isRefreshDue(long nowInNanos, long totalWrites, int pendingListeners, TimeValue minInterval,
+                                      TimeValue maxInterval) {
+        searches.add(pendingListeners);
+        final long elapsed = nowInNanos - lastUpdateNanos;
+        if (elapsed > 0) {
+            final long totalSearches = searches.sum();
+            final double alpha = 1.0d - Math.exp(-(double) elapsed / RATE_WINDOW_NANOS);
+            final double seconds = (double) elapsed / TimeUnit.SECONDS.toNanos(1);
+            searchRate += alpha * ((totalSearches - lastSearches) / seconds - searchRate);
+            writeRate += alpha * ((totalWrites - lastWrites) / seconds - writeRate);
+            lastSearches = totalSearches;
+            lastWrites = totalWrites;
+            lastUpdateNanos = nowInNanos;
+        }
+        return pendingListeners > 0 || nowInNanos - lastRefreshNanos >= intervalInNanos(searchRate, writeRate, minInterval, maxInterval);
+    }
+
+    /**
+     * Returns the refresh interval of the shard based on the rates that were observed so far.
+     */
+    synchronized TimeValue getInterval(TimeValue minInterval, TimeValue maxInterval) {
+        return TimeValue.timeValueNanos(intervalInNanos(searchRate, writeRate, minInterval, maxInterval));
+    }
+
+    static long intervalInNanos(double searchRate, double writeRate, TimeValue minInterval, TimeValue maxInterval) {
+        final long min = minInterval.nanos();
+        final long max = Math.max(min, maxInterval.nanos());
+        final double product = searchRate * writeRate;
+        if (product <= 0.0d) {
+            return max;
+        }
+        final double interval = TimeUnit.SECONDS.toNanos(1) / Math.sqrt(product);
+        return Math.max(min, (long) Math.min(max, interval));
+    }
+}
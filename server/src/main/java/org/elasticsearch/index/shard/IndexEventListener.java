@@ -58,6 +58,14 @@ public interface IndexEventListener {
      */
     default void afterIndexShardStarted(IndexShard indexShard) {}
 
+    /**
+     * Called after a refresh of a primary shard of an index that uses segment replication made new segments visible to searches.
+     * Note: this method is called on the thread that refreshed the shard.
+     *
+     * @param indexShard The primary shard that was refreshed
+     */
+    default void afterIndexShardRefreshed(IndexShard indexShard) {}
+
     /**
      * Called before the index shard gets closed.
      *
@@ -64,6 +64,8 @@ import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.uid.IdFilters;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
@@ -95,6 +97,7 @@ import org.elasticsearch.index.engine.EngineFactory;
 import org.elasticsearch.index.engine.ReadOnlyEngine;
 import org.elasticsearch.index.engine.RefreshFailedEngineException;
 import org.elasticsearch.index.engine.SafeCommitInfo;
+import org.elasticsearch.index.engine.SegmentReplicaEngine;
 import org.elasticsearch.index.engine.Segment;
 import org.elasticsearch.index.engine.SegmentsStats;
 import org.elasticsearch.index.fielddata.FieldDataStats;
@@ -112,6 +115,7 @@ import org.elasticsearch.index.mapper.RootObjectMapper;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.merge.NodeMergeScheduler;
 import org.elasticsearch.index.recovery.RecoveryStats;
 import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.search.stats.SearchStats;
@@ -127,11 +131,11 @@ import org.elasticsearch.index.shard.PrimaryReplicaSyncer.ResyncTask;
 import org.elasticsearch.index.similarity.SimilarityService;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.Store.MetadataSnapshot;
-import org.elasticsearch.index.store.StoreFileMetadata;
 import org.elasticsearch.index.store.StoreStats;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogConfig;
 import org.elasticsearch.index.translog.TranslogStats;
+import org.elasticsearch.index.translog.TranslogSyncCoordinator;
 import org.elasticsearch.index.warmer.ShardIndexWarmerService;
 import org.elasticsearch.index.warmer.WarmerStats;
 import org.elasticsearch.indices.IndexingMemoryController;
@@ -154,6 +158,7 @@ import java.io.PrintStream;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -176,9 +181,11 @@ import java.util.function.Function;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.seqno.RetentionLeaseActions.RETAIN_ALL;
+import static org.elasticsearch.index.seqno.SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
 import static org.elasticsearch.index.seqno.SequenceNumbers.UNASSIGNED_SEQ_NO;
 
 public class IndexShard extends AbstractIndexShardComponent implements IndicesClusterStateService.Shard {
@@ -205,6 +212,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final Supplier<Sort> indexSortSupplier;
     // Package visible for testing
     final CircuitBreakerService circuitBreakerService;
+    // schedules the merges under the node-wide merge budget if the node-level merge scheduler is enabled
+    @Nullable
+    private final NodeMergeScheduler.ShardScheduler nodeMergeShardScheduler;
+    // the share of the node indexing buffer that the IndexingMemoryController assigns to this shard, if it allocates by indexing rate
+    private volatile long indexBufferTargetBytes;
 
     private final SearchOperationListener searchOperationListener;
 
@@ -268,6 +280,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     private final AtomicLong lastSearcherAccess = new AtomicLong();
     private final AtomicReference<Translog.Location> pendingRefreshLocation = new AtomicReference<>();
+    private final AdaptiveRefreshPolicy adaptiveRefreshPolicy;
     private volatile boolean useRetentionLeasesInPeerRecovery;
 
     public IndexShard(
@@ -289,7 +302,9 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             final List<IndexingOperationListener> listeners,
             final Runnable globalCheckpointSyncer,
             final RetentionLeaseSyncer retentionLeaseSyncer,
-            final CircuitBreakerService circuitBreakerService) throws IOException {
+            final CircuitBreakerService circuitBreakerService,
+            final @Nullable TranslogSyncCoordinator translogSyncCoordinator,
+            final @Nullable NodeMergeScheduler nodeMergeScheduler) throws IOException {
         super(shardRouting.shardId(), indexSettings);
         assert shardRouting.initializing();
         this.shardRouting = shardRouting;
@@ -304,6 +319,19 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.indexEventListener = indexEventListener;
         this.threadPool = threadPool;
         this.translogSyncProcessor = createTranslogSyncProcessor(logger, threadPool.getThreadContext(), this::getEngine);
+        if (translogSyncCoordinator != null && translogSyncCoordinator.isEnabled()) {
+            final Supplier<Engine> engineSupplier = this::getEngine;
+            this.translogShardSyncer = translogSyncCoordinator.newShardSyncer(path.getRootDataPath(), shardId,
+                locations -> ensureTranslogSynced(logger, engineSupplier, locations));
+        } else {
+            this.translogShardSyncer = null;
+        }
+        if (nodeMergeScheduler != null && nodeMergeScheduler.isEnabled()) {
+            this.nodeMergeShardScheduler = nodeMergeScheduler.newShardScheduler(path.getRootDataPath(), shardId,
+                () -> isSearchIdle() == false);
+        } else {
+            this.nodeMergeShardScheduler = null;
+        }
         this.mapperService = mapperService;
         this.indexCache = indexCache;
         this.internalIndexingStats = new InternalIndexingStats();
@@ -357,6 +385,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                     return true;
                 }
             };
+        } else if (indexCache != null) {
+            cachingPolicy = indexCache.query().createCachingPolicy();
         } else {
             cachingPolicy = new UsageTrackingQueryCachingPolicy();
         }
@@ -364,6 +394,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         readerWrapper = indexReaderWrapper;
         refreshListeners = buildRefreshListeners();
         lastSearcherAccess.set(threadPool.relativeTimeInMillis());
+        adaptiveRefreshPolicy = new AdaptiveRefreshPolicy(TimeUnit.MILLISECONDS.toNanos(threadPool.relativeTimeInMillis()));
         persistMetadata(path, indexSettings, shardRouting, null, logger);
         this.useRetentionLeasesInPeerRecovery = replicationTracker.hasAllPeerRecoveryRetentionLeases();
     }
@@ -546,6 +577,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                                  * primary/replica re-sync completes successfully and we are now being promoted, we have to restore
                                  * the reverted operations on this shard by replaying the translog to avoid losing acknowledged writes.
                                  */
+                                if (getEngine() instanceof SegmentReplicaEngine) {
+                                    // the engine of a replica that copies segments cannot write, switch to a writable engine
+                                    // that replays all the operations of the translog on top of the copied segments
+                                    resetEngine(true);
+                                }
                                 final Engine engine = getEngine();
                                 engine.restoreLocalHistoryFromTranslog((resettingEngine, snapshot) ->
                                     runTranslogRecovery(resettingEngine, snapshot, Engine.Operation.Origin.LOCAL_RESET, () -> {}));
@@ -738,6 +774,51 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             ifPrimaryTerm, autoGeneratedTimestamp, isRetry, Engine.Operation.Origin.PRIMARY, sourceToParse);
     }
 
+    /**
+     * Parses and indexes a batch of documents with auto-generated ids that are sent to this primary for the first time, so that the
+     * engine can append them to Lucene with a single call. Parsing stops at the first document that requires a mapping update: the
+     * returned list holds one result per document that was processed, in order, and is shorter than the given list if the remaining
+     * documents need to be indexed one by one.
+     */
+    public List<Engine.IndexResult> applyAppendOnlyIndexOperationsOnPrimary(List<SourceToParse> sourcesToParse,
+                                                                            List<Long> autoGeneratedTimestamps) throws IOException {
+        assert sourcesToParse.size() == autoGeneratedTimestamps.size();
+        final Engine engine = getEngine();
+        final long opPrimaryTerm = getOperationPrimaryTerm();
+        ensureWriteAllowed(Engine.Operation.Origin.PRIMARY);
+        final DocumentMapperForType docMapper = docMapper();
+        final List<Engine.IndexResult> results = new ArrayList<>(sourcesToParse.size());
+        final List<Engine.Index> operations = new ArrayList<>(sourcesToParse.size());
+        final List<Integer> operationSlots = new ArrayList<>(sourcesToParse.size());
+        for (int i = 0; i < sourcesToParse.size(); i++) {
+            final Engine.Index operation;
+            try {
+                operation = prepareIndex(docMapper, sourcesToParse.get(i), UNASSIGNED_SEQ_NO, opPrimaryTerm, Versions.MATCH_ANY,
+                    VersionType.INTERNAL, Engine.Operation.Origin.PRIMARY, autoGeneratedTimestamps.get(i), false,
+                    UNASSIGNED_SEQ_NO, UNASSIGNED_PRIMARY_TERM);
+            } catch (Exception e) {
+                // see #applyIndexOperation, parsing failures are document level failures
+                verifyNotClosed(e);
+                results.add(new Engine.IndexResult(e, Versions.MATCH_ANY, opPrimaryTerm, UNASSIGNED_SEQ_NO));
+                continue;
+            }
+            if (operation.parsedDoc().dynamicMappingsUpdate() != null) {
+                // the following documents must be parsed with the updated mapping
+                break;
+            }
+            operationSlots.add(results.size());
+            results.add(null);
+            operations.add(operation);
+        }
+        if (operations.isEmpty() == false) {
+            final List<Engine.IndexResult> indexResults = index(engine, operations);
+            for (int i = 0; i < indexResults.size(); i++) {
+                results.set(operationSlots.get(i), indexResults.get(i));
+            }
+        }
+        return results;
+    }
+
     public Engine.IndexResult applyIndexOperationOnReplica(long seqNo, long opPrimaryTerm, long version, long autoGeneratedTimeStamp,
         boolean isRetry, SourceToParse sourceToParse)
         throws IOException {
@@ -819,6 +900,36 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return result;
     }
 
+    private List<Engine.IndexResult> index(Engine engine, List<Engine.Index> operations) throws IOException {
+        active.set(true);
+        final List<Engine.Index> preIndexed = new ArrayList<>(operations.size());
+        for (Engine.Index operation : operations) {
+            preIndexed.add(indexingOperationListeners.preIndex(shardId, operation));
+        }
+        final List<Engine.IndexResult> results;
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("index batch of [{}] operations allocation-id [{}] operationPrimaryTerm [{}]",
+                    preIndexed.size(), routingEntry().allocationId(), getOperationPrimaryTerm());
+            }
+            results = engine.indexBatch(preIndexed);
+        } catch (Exception e) {
+            if (logger.isTraceEnabled()) {
+                logger.trace(new ParameterizedMessage("index-fail batch of [{}] operations allocation-id [{}] operationPrimaryTerm [{}]",
+                    preIndexed.size(), routingEntry().allocationId(), getOperationPrimaryTerm()), e);
+            }
+            for (Engine.Index operation : preIndexed) {
+                indexingOperationListeners.postIndex(shardId, operation, e);
+            }
+            throw e;
+        }
+        assert results.size() == preIndexed.size();
+        for (int i = 0; i < results.size(); i++) {
+            indexingOperationListeners.postIndex(shardId, preIndexed.get(i), results.get(i));
+        }
+        return results;
+    }
+
     public Engine.NoOpResult markSeqNoAsNoop(long seqNo, long opPrimaryTerm, String reason) throws IOException {
         return markSeqNoAsNoop(getEngine(), seqNo, opPrimaryTerm, reason, Engine.Operation.Origin.REPLICA);
     }
@@ -970,14 +1081,19 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         Engine engine = getEngineOrNull();
         final boolean throttled;
         final long throttleTimeInMillis;
+        final IdFilters.Counters idFilterCounters;
         if (engine == null) {
             throttled = false;
             throttleTimeInMillis = 0;
+            idFilterCounters = null;
         } else {
             throttled = engine.isThrottled();
             throttleTimeInMillis = engine.getIndexThrottleTimeInMillis();
+            idFilterCounters = engine.getIdFilterCounters();
         }
-        return internalIndexingStats.stats(throttled, throttleTimeInMillis);
+        return internalIndexingStats.stats(throttled, throttleTimeInMillis,
+            idFilterCounters == null ? 0 : idFilterCounters.hits(), idFilterCounters == null ? 0 : idFilterCounters.misses(),
+            indexBufferTargetBytes);
     }
 
     public SearchStats searchStats(String... groups) {
@@ -1124,6 +1240,33 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         }
     }
 
+    /**
+     * Acquires the segments that the last refresh of this primary shard made visible to searches, so that they can be copied to
+     * the replicas of an index that uses segment replication. The files of these segments won't be freed until the returned
+     * reference is closed.
+     */
+    public Engine.SegmentInfosRef acquireLastRefreshedSegmentInfos() throws EngineException {
+        final IndexShardState state = this.state; // one time volatile read
+        if (state == IndexShardState.STARTED || state == IndexShardState.POST_RECOVERY) {
+            return getEngine().acquireLastRefreshedSegmentInfos();
+        } else {
+            throw new IllegalIndexShardStateException(shardId, state, "copying segments is not allowed");
+        }
+    }
+
+    /**
+     * Installs segments whose files were copied from the primary to the store of this replica and makes them visible to searches.
+     *
+     * @see SegmentReplicaEngine#installSegments(SegmentInfos)
+     */
+    public void installSegments(SegmentInfos segmentInfos) throws IOException {
+        final Engine engine = getEngine();
+        if (engine instanceof SegmentReplicaEngine == false) {
+            throw new IllegalIndexShardStateException(shardId, state, "segments can only be installed on replicas that copy segments");
+        }
+        ((SegmentReplicaEngine) engine).installSegments(segmentInfos);
+    }
+
     /**
      * Snapshots the most recent safe index commit from the currently running engine.
      * All index files referenced by this index commit won't be freed until the commit/snapshot is closed.
@@ -1198,6 +1341,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     private void markSearcherAccessed() {
         lastSearcherAccess.lazySet(threadPool.relativeTimeInMillis());
+        adaptiveRefreshPolicy.onSearch();
     }
 
     private Engine.Searcher acquireSearcher(String source, Engine.SearcherScope scope) {
@@ -1208,7 +1352,22 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return wrapSearcher(searcher);
     }
 
-    private Engine.Searcher wrapSearcher(Engine.Searcher searcher) {
+    /**
+     * Acquires a searcher that is not wrapped by the reader wrapper of this shard. Point in time reader contexts keep such a searcher
+     * beyond the request that opened them and wrap it with {@link #wrapSearcher(Engine.Searcher)} for each search instead, so that
+     * the wrapper applies to the context of the search, e.g. its document and field level security.
+     */
+    public Engine.Searcher acquireUnwrappedSearcher(String source) {
+        readAllowed();
+        markSearcherAccessed();
+        return getEngine().acquireSearcher(source, Engine.SearcherScope.EXTERNAL);
+    }
+
+    /**
+     * Wraps the given searcher with the reader wrapper of this shard in the current context. The given searcher is closed if the
+     * wrapping fails, otherwise it is closed with the returned searcher.
+     */
+    public Engine.Searcher wrapSearcher(Engine.Searcher searcher) {
         assert ElasticsearchDirectoryReader.unwrap(searcher.getDirectoryReader())
             != null : "DirectoryReader must be an instance or ElasticsearchDirectoryReader";
         boolean success = false;
@@ -1587,7 +1746,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             assert currentEngineReference.get() == null : "engine is running";
             verifyNotClosed();
             // we must create a new engine under mutex (see IndexShard#snapshotStoreMetadata).
-            final Engine newEngine = engineFactory.newReadWriteEngine(config);
+            final Engine newEngine = newReadWriteEngine(config);
             onNewEngine(newEngine);
             currentEngineReference.set(newEngine);
             // We set active because we are now writing operations to the engine; this way,
@@ -1601,6 +1760,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         assert recoveryState.getStage() == RecoveryState.Stage.TRANSLOG : "TRANSLOG stage expected but was: " + recoveryState.getStage();
     }
 
+    private Engine newReadWriteEngine(EngineConfig config) {
+        if (indexSettings.isSegmentReplication() && shardRouting.primary() == false) {
+            // replicas copy the segments of their primary rather than indexing the documents
+            return new SegmentReplicaEngine(config);
+        }
+        return engineFactory.newReadWriteEngine(config);
+    }
+
     private boolean assertSequenceNumbersInCommit() throws IOException {
         final Map<String, String> userData = SegmentInfos.readLatestCommit(store.directory()).getUserData();
         assert userData.containsKey(SequenceNumbers.LOCAL_CHECKPOINT_KEY) : "commit point doesn't contains a local checkpoint";
@@ -1616,7 +1783,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     private void onNewEngine(Engine newEngine) {
         assert Thread.holdsLock(engineMutex);
-        refreshListeners.setCurrentRefreshLocationSupplier(newEngine::getTranslogLastWriteLocation);
+        refreshListeners.setCurrentRefreshLocationSupplier(newEngine::getTranslogLastRefreshableLocation);
     }
 
     /**
@@ -1765,6 +1932,22 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         }
     }
 
+    /**
+     * Sets the share of the node's indexing buffer that the {@link org.elasticsearch.indices.IndexingMemoryController} currently
+     * targets for this shard, based on its indexing rate
+     */
+    public void setIndexBufferTargetBytes(long indexBufferTargetBytes) {
+        this.indexBufferTargetBytes = indexBufferTargetBytes;
+    }
+
+    /**
+     * Returns the share of the node's indexing buffer that is currently targeted for this shard, or 0 if the indexing buffer is not
+     * allocated based on indexing rates
+     */
+    public long getIndexBufferTargetBytes() {
+        return indexBufferTargetBytes;
+    }
+
     public void addShardFailureCallback(Consumer<ShardFailure> onShardFailure) {
         this.shardEventListener.delegates.add(onShardFailure);
     }
@@ -2417,12 +2600,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             // physical verification only: verify all checksums for the latest commit
             IOException corrupt = null;
             MetadataSnapshot metadata = snapshotStoreMetadata();
-            for (Map.Entry<String, StoreFileMetadata> entry : metadata.asMap().entrySet()) {
-                try {
-                    Store.checkIntegrity(entry.getValue(), store.directory());
-                    out.println("checksum passed: " + entry.getKey());
-                } catch (IOException exc) {
-                    out.println("checksum failed: " + entry.getKey());
+            final Map<String, IOException> failures = Store.checkIntegrity(metadata.asMap().values(), store.directory(),
+                threadPool.generic(), indexSettings.getValue(IndexSettings.INDEX_VERIFY_CHECKSUMS_MAX_CONCURRENT_FILES_SETTING));
+            for (String file : metadata.asMap().keySet()) {
+                final IOException exc = failures.get(file);
+                if (exc == null) {
+                    out.println("checksum passed: " + file);
+                } else {
+                    out.println("checksum failed: " + file);
                     exc.printStackTrace(out);
                     corrupt = exc;
                 }
@@ -2673,10 +2858,12 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                 similarityService.similarity(mapperService), codecService, shardEventListener,
                 indexCache != null ? indexCache.query() : null, cachingPolicy, translogConfig,
                 IndexingMemoryController.SHARD_INACTIVE_TIME_SETTING.get(indexSettings.getSettings()),
-                Collections.singletonList(refreshListeners),
+                indexSettings.isSegmentReplication()
+                    ? Arrays.asList(refreshListeners, new SegmentsRefreshedListener())
+                    : Collections.singletonList(refreshListeners),
                 Collections.singletonList(new RefreshMetricUpdater(refreshMetric)),
                 indexSort, circuitBreakerService, globalCheckpointSupplier, replicationTracker::getRetentionLeases,
-                () -> getOperationPrimaryTerm(), tombstoneDocSupplier());
+                () -> getOperationPrimaryTerm(), tombstoneDocSupplier(), nodeMergeShardScheduler);
     }
 
     /**
@@ -2978,25 +3165,33 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     }
 
     private final AsyncIOProcessor<Translog.Location> translogSyncProcessor;
+    // syncs the translog through the node-wide coordinator if group commit is enabled
+    @Nullable
+    private final TranslogSyncCoordinator.ShardSyncer translogShardSyncer;
 
     private static AsyncIOProcessor<Translog.Location> createTranslogSyncProcessor(Logger logger, ThreadContext threadContext,
                                                                                    Supplier<Engine> engineSupplier) {
         return new AsyncIOProcessor<>(logger, 1024, threadContext) {
             @Override
             protected void write(List<Tuple<Translog.Location, Consumer<Exception>>> candidates) throws IOException {
-                try {
-                    engineSupplier.get().ensureTranslogSynced(candidates.stream().map(Tuple::v1));
-                } catch (AlreadyClosedException ex) {
-                    // that's fine since we already synced everything on engine close - this also is conform with the methods
-                    // documentation
-                } catch (IOException ex) { // if this fails we are in deep shit - fail the request
-                    logger.debug("failed to sync translog", ex);
-                    throw ex;
-                }
+                ensureTranslogSynced(logger, engineSupplier, candidates.stream().map(Tuple::v1));
             }
         };
     }
 
+    private static void ensureTranslogSynced(Logger logger, Supplier<Engine> engineSupplier,
+                                             Stream<Translog.Location> locations) throws IOException {
+        try {
+            engineSupplier.get().ensureTranslogSynced(locations);
+        } catch (AlreadyClosedException ex) {
+            // that's fine since we already synced everything on engine close - this also is conform with the methods
+            // documentation
+        } catch (IOException ex) { // if this fails we are in deep shit - fail the request
+            logger.debug("failed to sync translog", ex);
+            throw ex;
+        }
+    }
+
     /**
      * Syncs the given location with the underlying storage unless already synced. This method might return immediately without
      * actually fsyncing the location until the sync listener is called. Yet, unless there is already another thread fsyncing
@@ -3008,7 +3203,11 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      */
     public final void sync(Translog.Location location, Consumer<Exception> syncListener) {
         verifyNotClosed();
-        translogSyncProcessor.put(location, syncListener);
+        if (translogShardSyncer != null) {
+            translogShardSyncer.sync(location, syncListener);
+        } else {
+            translogSyncProcessor.put(location, syncListener);
+        }
     }
 
     public void sync() throws IOException {
@@ -3146,6 +3345,10 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     public boolean scheduledRefresh() {
         verifyNotClosed();
         boolean listenerNeedsRefresh = refreshListeners.refreshNeeded();
+        final boolean adaptiveRefreshDue = indexSettings.isAdaptiveRefresh() == false || adaptiveRefreshPolicy.isRefreshDue(
+            TimeUnit.MILLISECONDS.toNanos(threadPool.relativeTimeInMillis()), internalIndexingStats.totalOperations(),
+            listenerNeedsRefresh ? refreshListeners.pendingCount() : 0,
+            indexSettings.getAdaptiveRefreshMinInterval(), indexSettings.getAdaptiveRefreshMaxInterval());
         if (isReadAllowed() && (listenerNeedsRefresh || getEngine().refreshNeeded())) {
             if (listenerNeedsRefresh == false // if we have a listener that is waiting for a refresh we need to force it
                 && isSearchIdle()
@@ -3158,11 +3361,19 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                 engine.maybePruneDeletes(); // try to prune the deletes in the engine if we accumulated some
                 setRefreshPending(engine);
                 return false;
+            } else if (listenerNeedsRefresh == false && adaptiveRefreshDue == false) {
+                // the shard picked a longer interval than the refresh task's one, searches see the changes on a later run
+                getEngine().maybePruneDeletes();
+                return false;
             } else {
                 if (logger.isTraceEnabled()) {
                     logger.trace("refresh with source [schedule]");
                 }
-                return getEngine().maybeRefresh("schedule");
+                final boolean refreshed = getEngine().maybeRefresh("schedule");
+                if (indexSettings.isAdaptiveRefresh()) {
+                    adaptiveRefreshPolicy.onRefresh(TimeUnit.MILLISECONDS.toNanos(threadPool.relativeTimeInMillis()));
+                }
+                return refreshed;
             }
         }
         final Engine engine = getEngine();
@@ -3170,6 +3381,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return false;
     }
 
+    /**
+     * Returns the refresh interval that this shard picked based on its recent search and indexing rates if adaptive refresh is enabled.
+     */
+    public TimeValue getAdaptiveRefreshInterval() {
+        return adaptiveRefreshPolicy.getInterval(indexSettings.getAdaptiveRefreshMinInterval(),
+            indexSettings.getAdaptiveRefreshMaxInterval());
+    }
+
     /**
      * Returns true if this shards is search idle
      */
@@ -3242,6 +3461,24 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         }
     }
 
+    /**
+     * Notifies the index event listeners once the refresh of a primary made new segments visible, so that they can be copied
+     * to the replicas of an index that uses segment replication.
+     */
+    private final class SegmentsRefreshedListener implements ReferenceManager.RefreshListener {
+
+        @Override
+        public void beforeRefresh() {
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) {
+            if (didRefresh && shardRouting.primary()) {
+                indexEventListener.afterIndexShardRefreshed(IndexShard.this);
+            }
+        }
+    }
+
     private static class RefreshMetricUpdater implements ReferenceManager.RefreshListener {
 
         private final MeanMetric refreshMetric;
@@ -3295,6 +3532,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * Rollback the current engine to the safe commit, then replay local translog up to the global checkpoint.
      */
     void resetEngineToGlobalCheckpoint() throws IOException {
+        resetEngine(false);
+    }
+
+    /**
+     * Rollback the current engine to the safe commit, then replay local translog up to the global checkpoint, or entirely if
+     * <code>restoreLocalHistory</code> is set.
+     */
+    private void resetEngine(boolean restoreLocalHistory) throws IOException {
         assert Thread.holdsLock(mutex) == false : "resetting engine under mutex";
         assert getActiveOperationsCount() == OPERATIONS_BLOCKED
             : "resetting engine without blocking operations; active operations are [" + getActiveOperations() + ']';
@@ -3347,14 +3592,14 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                     }
                 };
             IOUtils.close(currentEngineReference.getAndSet(readOnlyEngine));
-            newEngineReference.set(engineFactory.newReadWriteEngine(newEngineConfig(replicationTracker)));
+            newEngineReference.set(newReadWriteEngine(newEngineConfig(replicationTracker)));
             onNewEngine(newEngineReference.get());
         }
         final Engine.TranslogRecoveryRunner translogRunner = (engine, snapshot) -> runTranslogRecovery(
             engine, snapshot, Engine.Operation.Origin.LOCAL_RESET, () -> {
                 // TODO: add a dedicate recovery stats for the reset translog
             });
-        newEngineReference.get().recoverFromTranslog(translogRunner, globalCheckpoint);
+        newEngineReference.get().recoverFromTranslog(translogRunner, restoreLocalHistory ? Long.MAX_VALUE : globalCheckpoint);
         newEngineReference.get().refresh("reset_engine");
         synchronized (engineMutex) {
             verifyNotClosed();
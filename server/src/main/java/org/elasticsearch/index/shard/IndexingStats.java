@@ -23,6 +23,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.ToXContentFragment;
@@ -46,6 +47,9 @@ public class IndexingStats implements Writeable, ToXContentFragment {
         private long noopUpdateCount;
         private long throttleTimeInMillis;
         private boolean isThrottled;
+        private long idFilterHits;
+        private long idFilterMisses;
+        private long indexBufferTargetInBytes;
 
         Stats() {}
 
@@ -60,10 +64,22 @@ public class IndexingStats implements Writeable, ToXContentFragment {
             noopUpdateCount = in.readVLong();
             isThrottled = in.readBoolean();
             throttleTimeInMillis = in.readLong();
+            if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+                idFilterHits = in.readVLong();
+                idFilterMisses = in.readVLong();
+                indexBufferTargetInBytes = in.readVLong();
+            }
         }
 
         public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long deleteCount,
                         long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis) {
+            this(indexCount, indexTimeInMillis, indexCurrent, indexFailedCount, deleteCount, deleteTimeInMillis, deleteCurrent,
+                noopUpdateCount, isThrottled, throttleTimeInMillis, 0, 0, 0);
+        }
+
+        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long deleteCount,
+                        long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis,
+                        long idFilterHits, long idFilterMisses, long indexBufferTargetInBytes) {
             this.indexCount = indexCount;
             this.indexTimeInMillis = indexTimeInMillis;
             this.indexCurrent = indexCurrent;
@@ -74,6 +90,9 @@ public class IndexingStats implements Writeable, ToXContentFragment {
             this.noopUpdateCount = noopUpdateCount;
             this.isThrottled = isThrottled;
             this.throttleTimeInMillis = throttleTimeInMillis;
+            this.idFilterHits = idFilterHits;
+            this.idFilterMisses = idFilterMisses;
+            this.indexBufferTargetInBytes = indexBufferTargetInBytes;
         }
 
         public void add(Stats stats) {
@@ -91,6 +110,9 @@ public class IndexingStats implements Writeable, ToXContentFragment {
             if (isThrottled != stats.isThrottled) {
                 isThrottled = true; //When combining if one is throttled set result to throttled.
             }
+            idFilterHits += stats.idFilterHits;
+            idFilterMisses += stats.idFilterMisses;
+            indexBufferTargetInBytes += stats.indexBufferTargetInBytes;
         }
 
         /**
@@ -148,6 +170,28 @@ public class IndexingStats implements Writeable, ToXContentFragment {
             return noopUpdateCount;
         }
 
+        /**
+         * Returns how often the id filter of a segment could not rule out that the segment contains an id, so its terms were searched
+         */
+        public long getIdFilterHits() {
+            return idFilterHits;
+        }
+
+        /**
+         * Returns how often the id filter of a segment ruled out that the segment contains an id, skipping the search of its terms
+         */
+        public long getIdFilterMisses() {
+            return idFilterMisses;
+        }
+
+        /**
+         * Returns the share of the node's indexing buffer that is targeted for the shard(s) based on their indexing rate, or 0 if the
+         * indexing buffer is not allocated based on indexing rates
+         */
+        public ByteSizeValue getIndexBufferTarget() {
+            return new ByteSizeValue(indexBufferTargetInBytes);
+        }
+
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             out.writeVLong(indexCount);
@@ -160,7 +204,11 @@ public class IndexingStats implements Writeable, ToXContentFragment {
             out.writeVLong(noopUpdateCount);
             out.writeBoolean(isThrottled);
             out.writeLong(throttleTimeInMillis);
-
+            if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+                out.writeVLong(idFilterHits);
+                out.writeVLong(idFilterMisses);
+                out.writeVLong(indexBufferTargetInBytes);
+            }
         }
 
         @Override
@@ -178,6 +226,9 @@ public class IndexingStats implements Writeable, ToXContentFragment {
 
             builder.field(Fields.IS_THROTTLED, isThrottled);
             builder.humanReadableField(Fields.THROTTLED_TIME_IN_MILLIS, Fields.THROTTLED_TIME, getThrottleTime());
+            builder.field(Fields.ID_FILTER_HITS, idFilterHits);
+            builder.field(Fields.ID_FILTER_MISSES, idFilterMisses);
+            builder.humanReadableField(Fields.INDEX_BUFFER_TARGET_IN_BYTES, Fields.INDEX_BUFFER_TARGET, getIndexBufferTarget());
             return builder;
         }
     }
@@ -244,6 +295,10 @@ public class IndexingStats implements Writeable, ToXContentFragment {
         static final String IS_THROTTLED = "is_throttled";
         static final String THROTTLED_TIME_IN_MILLIS = "throttle_time_in_millis";
         static final String THROTTLED_TIME = "throttle_time";
+        static final String ID_FILTER_HITS = "id_filter_hits";
+        static final String ID_FILTER_MISSES = "id_filter_misses";
+        static final String INDEX_BUFFER_TARGET = "index_buffer_target";
+        static final String INDEX_BUFFER_TARGET_IN_BYTES = "index_buffer_target_in_bytes";
     }
 
     @Override
@@ -38,11 +38,20 @@ final class InternalIndexingStats implements IndexingOperationListener {
      * is returned for them. If they are set, then only types provided will be returned, or
      * {@code _all} for all types.
      */
-    IndexingStats stats(boolean isThrottled, long currentThrottleInMillis) {
-        IndexingStats.Stats total = totalStats.stats(isThrottled, currentThrottleInMillis);
+    IndexingStats stats(boolean isThrottled, long currentThrottleInMillis, long idFilterHits, long idFilterMisses,
+                        long indexBufferTargetInBytes) {
+        IndexingStats.Stats total = totalStats.stats(isThrottled, currentThrottleInMillis, idFilterHits, idFilterMisses,
+            indexBufferTargetInBytes);
         return new IndexingStats(total);
     }
 
+    /**
+     * Returns the number of index and delete operations that completed so far.
+     */
+    long totalOperations() {
+        return totalStats.indexMetric.count() + totalStats.deleteMetric.count();
+    }
+
     @Override
     public Engine.Index preIndex(ShardId shardId, Engine.Index operation) {
         if (operation.origin().isRecovery() == false) {
@@ -123,11 +132,13 @@ final class InternalIndexingStats implements IndexingOperationListener {
         private final CounterMetric deleteCurrent = new CounterMetric();
         private final CounterMetric noopUpdates = new CounterMetric();
 
-        IndexingStats.Stats stats(boolean isThrottled, long currentThrottleMillis) {
+        IndexingStats.Stats stats(boolean isThrottled, long currentThrottleMillis, long idFilterHits, long idFilterMisses,
+                                  long indexBufferTargetInBytes) {
             return new IndexingStats.Stats(
                 indexMetric.count(), TimeUnit.NANOSECONDS.toMillis(indexMetric.sum()), indexCurrent.count(), indexFailed.count(),
                 deleteMetric.count(), TimeUnit.NANOSECONDS.toMillis(deleteMetric.sum()), deleteCurrent.count(),
-                noopUpdates.count(), isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis));
+                noopUpdates.count(), isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis), idFilterHits, idFilterMisses,
+                indexBufferTargetInBytes);
         }
     }
 }
@@ -19,6 +19,8 @@
 
 package org.elasticsearch.index.store;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.FileSwitchDirectory;
@@ -31,6 +33,7 @@ import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NativeFSLockFactory;
 import org.apache.lucene.store.SimpleFSDirectory;
 import org.apache.lucene.store.SimpleFSLockFactory;
+import org.elasticsearch.bootstrap.NativePageCache;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.core.internal.io.IOUtils;
@@ -47,6 +50,8 @@ import java.util.Set;
 
 public class FsDirectoryFactory implements IndexStorePlugin.DirectoryFactory {
 
+    private static final Logger logger = LogManager.getLogger(FsDirectoryFactory.class);
+
     public static final Setting<LockFactory> INDEX_LOCK_FACTOR_SETTING = new Setting<>("index.store.fs.fs_lock", "native", (s) -> {
         switch (s) {
             case "native":
@@ -64,7 +69,16 @@ public class FsDirectoryFactory implements IndexStorePlugin.DirectoryFactory {
         final Path location = path.resolveIndex();
         final LockFactory lockFactory = indexSettings.getValue(INDEX_LOCK_FACTOR_SETTING);
         Files.createDirectories(location);
-        return newFSDirectory(location, lockFactory, indexSettings);
+        final Directory directory = newFSDirectory(location, lockFactory, indexSettings);
+        if (indexSettings.getValue(IndexModule.INDEX_STORE_PAGE_CACHE_ADVICE_SETTING)) {
+            if (NativePageCache.isAvailable() && directory instanceof FSDirectory) {
+                return new PageCacheAdvisingDirectory((FSDirectory) directory,
+                    indexSettings.getValue(Store.INDEX_STORE_STATS_REFRESH_INTERVAL_SETTING));
+            }
+            logger.warn("[{}] is only supported on 64 bits Linux with native access, ignoring it for [{}]",
+                IndexModule.INDEX_STORE_PAGE_CACHE_ADVICE_SETTING.getKey(), location);
+        }
+        return directory;
     }
 
     protected Directory newFSDirectory(Path location, LockFactory lockFactory, IndexSettings indexSettings) throws IOException {
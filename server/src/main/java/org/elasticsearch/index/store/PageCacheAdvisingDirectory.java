@@ -0,0 +1,277 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.store.ByteBufferIndexInputHelper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.bootstrap.NativePageCache;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.SingleObjectCache;
+import org.elasticsearch.core.internal.io.IOUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * A directory that tells the kernel how the files it opens are going to be read, so that merges and recoveries don't evict the
+ * hot parts of the index from the page cache:
+ * <ul>
+ *     <li>memory-mapped terms and points files that are opened for searching are read randomly, so read-ahead is disabled</li>
+ *     <li>files that are opened for merging or read once (e.g. by recoveries) are read sequentially and the pages that they
+ *     bring into the page cache are dropped again when the file is closed</li>
+ * </ul>
+ * The hints are only applied on Linux, see {@link NativePageCache#isAvailable()}.
+ */
+final class PageCacheAdvisingDirectory extends FilterDirectory {
+
+    private static final Logger logger = LogManager.getLogger(PageCacheAdvisingDirectory.class);
+
+    private final Path location;
+    private final SingleObjectCache<Long> residentBytes;
+
+    PageCacheAdvisingDirectory(FSDirectory in, TimeValue statsRefreshInterval) {
+        super(in);
+        assert NativePageCache.isAvailable();
+        this.location = in.getDirectory();
+        this.residentBytes = new SingleObjectCache<>(statsRefreshInterval, 0L) {
+            @Override
+            protected Long refresh() {
+                try {
+                    return sampleResidentBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException {
+        final IndexInput input = super.openInput(name, context);
+        if (isReadSequentially(context)) {
+            boolean success = false;
+            try {
+                advise(input, NativePageCache.Advice.SEQUENTIAL);
+                final Path file = location.resolve(name);
+                final IndexInput dropBehindInput = new DropBehindIndexInput(input, file, NativePageCache.residentPages(file));
+                success = true;
+                return dropBehindInput;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(input);
+                }
+            }
+        } else if (isReadRandomly(name)) {
+            advise(input, NativePageCache.Advice.RANDOM);
+        }
+        return input;
+    }
+
+    /**
+     * Returns the number of bytes of the files of this directory that are in the page cache. The value is sampled at most once
+     * per refresh interval of the store stats.
+     */
+    long residentBytes() throws IOException {
+        try {
+            return residentBytes.getOrRefresh();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long sampleResidentBytes() throws IOException {
+        long residentPages = 0;
+        for (String file : listAll()) {
+            try {
+                residentPages += NativePageCache.residentPages(location.resolve(file)).cardinality();
+            } catch (NoSuchFileException e) {
+                // the file was deleted concurrently
+            }
+        }
+        return residentPages * NativePageCache.pageSize();
+    }
+
+    /**
+     * Returns the {@link PageCacheAdvisingDirectory} that the given directory wraps, or {@code null} if there is none.
+     */
+    static PageCacheAdvisingDirectory find(Directory directory) {
+        while (true) {
+            if (directory instanceof PageCacheAdvisingDirectory) {
+                return (PageCacheAdvisingDirectory) directory;
+            } else if (directory instanceof FilterDirectory) {
+                directory = ((FilterDirectory) directory).getDelegate();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    static boolean isReadSequentially(IOContext context) {
+        return context.context == IOContext.Context.MERGE || context == IOContext.READONCE;
+    }
+
+    static boolean isReadRandomly(String name) {
+        switch (FileSwitchDirectory.getExtension(name)) {
+            // terms dictionaries and indices
+            case "tim":
+            case "tip":
+            // KD-trees and their indices
+            case "dim":
+            case "dii":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void advise(IndexInput input, NativePageCache.Advice advice) {
+        // only memory-mapped files can be advised, other inputs are left alone
+        final ByteBuffer[] buffers = ByteBufferIndexInputHelper.getBuffers(input);
+        if (buffers != null) {
+            for (ByteBuffer buffer : buffers) {
+                NativePageCache.advise(buffer, advice);
+            }
+        }
+    }
+
+    /**
+     * An input that drops the pages that it brought into the page cache when it gets closed. Clones and slices are never
+     * closed, so they are returned unwrapped.
+     */
+    static final class DropBehindIndexInput extends IndexInput {
+
+        private final IndexInput in;
+        private final Path file;
+        private final FixedBitSet residentPages;
+
+        DropBehindIndexInput(IndexInput in, Path file, FixedBitSet residentPages) {
+            super("DropBehindIndexInput(" + in + ")");
+            this.in = in;
+            this.file = file;
+            this.residentPages = residentPages;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                try {
+                    NativePageCache.evict(file, residentPages);
+                } catch (IOException e) {
+                    logger.debug(() -> new ParameterizedMessage("failed to drop [{}] from the page cache", file), e);
+                }
+            }
+        }
+
+        @Override
+        public long getFilePointer() {
+            return in.getFilePointer();
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            in.seek(pos);
+        }
+
+        @Override
+        public long length() {
+            return in.length();
+        }
+
+        @Override
+        public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+            return in.slice(sliceDescription, offset, length);
+        }
+
+        @Override
+        public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+            return in.randomAccessSlice(offset, length);
+        }
+
+        @Override
+        public IndexInput clone() {
+            return in.clone();
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len) throws IOException {
+            in.readBytes(b, offset, len);
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len, boolean useBuffer) throws IOException {
+            in.readBytes(b, offset, len, useBuffer);
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            return in.readShort();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return in.readInt();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        @Override
+        public void readLELongs(long[] dst, int offset, int length) throws IOException {
+            in.readLELongs(dst, offset, length);
+        }
+
+        @Override
+        public int readVInt() throws IOException {
+            return in.readVInt();
+        }
+
+        @Override
+        public long readVLong() throws IOException {
+            return in.readVLong();
+        }
+
+        @Override
+        public void skipBytes(long numBytes) throws IOException {
+            in.skipBytes(numBytes);
+        }
+    }
+}
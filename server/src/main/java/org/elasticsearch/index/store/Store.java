@@ -51,6 +51,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.Version;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.Streams;
@@ -66,6 +67,8 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.util.concurrent.RefCounted;
 import org.elasticsearch.common.util.iterable.Iterables;
 import org.elasticsearch.core.internal.io.IOUtils;
@@ -91,14 +94,22 @@ import java.io.UncheckedIOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.zip.CRC32;
@@ -140,6 +151,8 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
     private final ReentrantReadWriteLock metadataLock = new ReentrantReadWriteLock();
     private final ShardLock shardLock;
     private final OnClose onClose;
+    @Nullable
+    private final PageCacheAdvisingDirectory pageCacheAdvisingDirectory;
 
     private final AbstractRefCounted refCounter = new AbstractRefCounted("store") {
         @Override
@@ -159,6 +172,7 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
         final TimeValue refreshInterval = indexSettings.getValue(INDEX_STORE_STATS_REFRESH_INTERVAL_SETTING);
         logger.debug("store stats are refreshed with refresh_interval [{}]", refreshInterval);
         ByteSizeCachingDirectory sizeCachingDir = new ByteSizeCachingDirectory(directory, refreshInterval);
+        this.pageCacheAdvisingDirectory = PageCacheAdvisingDirectory.find(directory);
         this.directory = new StoreDirectory(sizeCachingDir, Loggers.getLogger("index.store.deletes", shardId));
         this.shardLock = shardLock;
         this.onClose = onClose;
@@ -279,6 +293,26 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
         }
     }
 
+    /**
+     * Returns a new MetadataSnapshot for the files of the given segments, which do not need to be committed. The segments must be
+     * protected from deletion by the caller, for instance by holding a reader that was opened on them.
+     *
+     * @throws CorruptIndexException if the lucene index is corrupted. This can be caused by a checksum mismatch.
+     */
+    public MetadataSnapshot getSegmentsMetadata(SegmentInfos segmentInfos) throws IOException {
+        ensureOpen();
+        failIfCorrupted();
+        metadataLock.readLock().lock();
+        try {
+            return MetadataSnapshot.loadSegmentsMetadata(segmentInfos, directory, logger);
+        } catch (CorruptIndexException | IndexFormatTooOldException | IndexFormatTooNewException ex) {
+            markStoreCorrupted(ex);
+            throw ex;
+        } finally {
+            metadataLock.readLock().unlock();
+        }
+    }
+
     /**
      * Renames all the given files from the key of the map to the
      * value of the map. All successfully renamed files are removed from the map in-place.
@@ -342,7 +376,8 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
 
     public StoreStats stats() throws IOException {
         ensureOpen();
-        return new StoreStats(directory.estimateSize());
+        final long pageCacheResidentBytes = pageCacheAdvisingDirectory == null ? -1 : pageCacheAdvisingDirectory.residentBytes();
+        return new StoreStats(directory.estimateSize(), pageCacheResidentBytes);
     }
 
     /**
@@ -519,6 +554,72 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
         }
     }
 
+    /**
+     * Verifies the checksums of the given files like {@link #checkIntegrity(StoreFileMetadata, Directory)}, verifying up to
+     * {@code maxConcurrentFiles} files at once. The calling thread verifies files too, while the other files are verified on the
+     * given executor, so that the verification makes progress even if the executor is busy. Only {@link IOException}s mark a file
+     * as failed, any other exception stops the verification and is rethrown on the calling thread.
+     *
+     * @return the files that failed verification, along with the reason why
+     */
+    public static Map<String, IOException> checkIntegrity(Collection<StoreFileMetadata> files, Directory directory, Executor executor,
+                                                        int maxConcurrentFiles) {
+        if (maxConcurrentFiles < 1) {
+            throw new IllegalArgumentException("maxConcurrentFiles must be at least 1 but was [" + maxConcurrentFiles + "]");
+        }
+        final List<StoreFileMetadata> sortedFiles = new ArrayList<>(files);
+        // large files first, so that the concurrent verifications finish at about the same time
+        sortedFiles.sort(Comparator.comparingLong(StoreFileMetadata::length).reversed());
+        final Queue<StoreFileMetadata> queue = new ConcurrentLinkedQueue<>(sortedFiles);
+        final Map<String, IOException> failures = ConcurrentCollections.newConcurrentMap();
+        final AtomicReference<RuntimeException> unexpectedFailure = new AtomicReference<>();
+        // the calling thread is the first party, each helper that verifies files registers itself
+        final Phaser phaser = new Phaser(1);
+        final Runnable verifyFiles = () -> {
+            for (StoreFileMetadata md = queue.poll(); md != null; md = queue.poll()) {
+                try {
+                    checkIntegrity(md, directory);
+                } catch (IOException e) {
+                    failures.put(md.name(), e);
+                } catch (RuntimeException e) {
+                    // not a sign of corruption, stop verifying and let the caller handle it
+                    if (unexpectedFailure.compareAndSet(null, e) == false) {
+                        unexpectedFailure.get().addSuppressed(e);
+                    }
+                    queue.clear();
+                }
+            }
+        };
+        final int helpers = Math.min(maxConcurrentFiles, sortedFiles.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(() -> {
+                    phaser.register();
+                    try {
+                        verifyFiles.run();
+                    } finally {
+                        phaser.arriveAndDeregister();
+                    }
+                });
+            } catch (EsRejectedExecutionException e) {
+                // the calling thread verifies the files on its own
+                break;
+            }
+        }
+        verifyFiles.run();
+        try {
+            // helpers that registered after this point find no more files to verify
+            phaser.awaitAdvanceInterruptibly(phaser.arrive());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the verification of " + queue.size() + " files", e);
+        }
+        if (unexpectedFailure.get() != null) {
+            throw unexpectedFailure.get();
+        }
+        return new TreeMap<>(failures);
+    }
+
     public boolean isMarkedCorrupted() throws IOException {
         ensureOpen();
         /* marking a store as corrupted is basically adding a _corrupted to all
@@ -810,22 +911,7 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
                 final SegmentInfos segmentCommitInfos = Store.readSegmentsInfo(commit, directory);
                 numDocs = Lucene.getNumDocs(segmentCommitInfos);
                 commitUserDataBuilder.putAll(segmentCommitInfos.getUserData());
-                // we don't know which version was used to write so we take the max version.
-                Version maxVersion = segmentCommitInfos.getMinSegmentLuceneVersion();
-                for (SegmentCommitInfo info : segmentCommitInfos) {
-                    final Version version = info.info.getVersion();
-                    if (version == null) {
-                        // version is written since 3.1+: we should have already hit IndexFormatTooOld.
-                        throw new IllegalArgumentException("expected valid version value: " + info.info.toString());
-                    }
-                    if (version.onOrAfter(maxVersion)) {
-                        maxVersion = version;
-                    }
-                    for (String file : info.files()) {
-                        checksumFromLuceneFile(directory, file, builder, logger, version,
-                            SEGMENT_INFO_EXTENSION.equals(IndexFileNames.getExtension(file)));
-                    }
-                }
+                Version maxVersion = loadSegmentFilesMetadata(segmentCommitInfos, directory, builder, logger);
                 if (maxVersion == null) {
                     maxVersion = org.elasticsearch.Version.CURRENT.minimumIndexCompatibilityVersion().luceneVersion;
                 }
@@ -855,6 +941,42 @@ public class Store extends AbstractIndexShardComponent implements Closeable, Ref
             return new LoadedMetadata(unmodifiableMap(builder), unmodifiableMap(commitUserDataBuilder), numDocs);
         }
 
+        /**
+         * Loads the metadata of the files of the given segments, excluding the segments file, and returns the max version that
+         * was used to write them.
+         */
+        private static Version loadSegmentFilesMetadata(SegmentInfos segmentInfos, Directory directory,
+                                                        Map<String, StoreFileMetadata> builder, Logger logger) throws IOException {
+            // we don't know which version was used to write so we take the max version.
+            Version maxVersion = segmentInfos.getMinSegmentLuceneVersion();
+            for (SegmentCommitInfo info : segmentInfos) {
+                final Version version = info.info.getVersion();
+                if (version == null) {
+                    // version is written since 3.1+: we should have already hit IndexFormatTooOld.
+                    throw new IllegalArgumentException("expected valid version value: " + info.info.toString());
+                }
+                if (maxVersion == null || version.onOrAfter(maxVersion)) {
+                    maxVersion = version;
+                }
+                for (String file : info.files()) {
+                    checksumFromLuceneFile(directory, file, builder, logger, version,
+                        SEGMENT_INFO_EXTENSION.equals(IndexFileNames.getExtension(file)));
+                }
+            }
+            return maxVersion;
+        }
+
+        /**
+         * Loads the metadata of the files of segments that are not necessarily committed, for instance because they were
+         * obtained from a near real-time reader. The returned snapshot does not contain any segments file.
+         */
+        static MetadataSnapshot loadSegmentsMetadata(SegmentInfos segmentInfos, Directory directory, Logger logger) throws IOException {
+            final Map<String, StoreFileMetadata> builder = new HashMap<>();
+            loadSegmentFilesMetadata(segmentInfos, directory, builder, logger);
+            return new MetadataSnapshot(unmodifiableMap(builder), unmodifiableMap(new HashMap<>(segmentInfos.getUserData())),
+                Lucene.getNumDocs(segmentInfos));
+        }
+
         private static void checksumFromLuceneFile(Directory directory, String file, Map<String, StoreFileMetadata> builder,
                 Logger logger, Version version, boolean readFileAsHash) throws IOException {
             final String checksum;
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.store;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -31,6 +32,8 @@ import java.io.IOException;
 public class StoreStats implements Writeable, ToXContentFragment {
 
     private long sizeInBytes;
+    // -1 if the page cache residency isn't sampled
+    private long pageCacheResidentInBytes = -1;
 
     public StoreStats() {
 
@@ -38,10 +41,18 @@ public class StoreStats implements Writeable, ToXContentFragment {
 
     public StoreStats(StreamInput in) throws IOException {
         sizeInBytes = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            pageCacheResidentInBytes = in.readZLong();
+        }
     }
 
     public StoreStats(long sizeInBytes) {
+        this(sizeInBytes, -1);
+    }
+
+    public StoreStats(long sizeInBytes, long pageCacheResidentInBytes) {
         this.sizeInBytes = sizeInBytes;
+        this.pageCacheResidentInBytes = pageCacheResidentInBytes;
     }
 
     public void add(StoreStats stats) {
@@ -49,6 +60,9 @@ public class StoreStats implements Writeable, ToXContentFragment {
             return;
         }
         sizeInBytes += stats.sizeInBytes;
+        if (stats.pageCacheResidentInBytes >= 0) {
+            pageCacheResidentInBytes = Math.max(0, pageCacheResidentInBytes) + stats.pageCacheResidentInBytes;
+        }
     }
 
 
@@ -68,15 +82,30 @@ public class StoreStats implements Writeable, ToXContentFragment {
         return size();
     }
 
+    /**
+     * Returns the number of bytes of the store that are in the page cache, or {@code -1} if this isn't sampled, see
+     * {@code index.store.page_cache_advice}.
+     */
+    public long getPageCacheResidentInBytes() {
+        return pageCacheResidentInBytes;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(sizeInBytes);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeZLong(pageCacheResidentInBytes);
+        }
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.STORE);
         builder.humanReadableField(Fields.SIZE_IN_BYTES, Fields.SIZE, size());
+        if (pageCacheResidentInBytes >= 0) {
+            builder.humanReadableField(Fields.PAGE_CACHE_RESIDENT_IN_BYTES, Fields.PAGE_CACHE_RESIDENT,
+                new ByteSizeValue(pageCacheResidentInBytes));
+        }
         builder.endObject();
         return builder;
     }
@@ -85,5 +114,7 @@ public class StoreStats implements Writeable, ToXContentFragment {
         static final String STORE = "store";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
+        static final String PAGE_CACHE_RESIDENT = "page_cache_resident";
+        static final String PAGE_CACHE_RESIDENT_IN_BYTES = "page_cache_resident_in_bytes";
     }
 }
@@ -0,0 +1,363 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.AsyncIOProcessor;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Coordinates the translog syncs that the shards of a node issue for {@link Translog.Durability#REQUEST} durability. Instead
+ * of each shard fsyncing its translog on its own, sync requests are queued per data path and processed in rounds, one round
+ * at a time per data path, and every shard with pending requests is fsynced exactly once per round, for all of its requests.
+ * A round starts {@link #GROUP_COMMIT_MAX_WAIT_SETTING} after the first request that it syncs got queued, which trades a
+ * bounded amount of latency for fewer fsyncs on nodes with many active shards. The waiting is done by scheduling the round,
+ * so the threads that issue the sync requests never block waiting for more requests. The shards of a round are fsynced in
+ * parallel, by up to {@link #GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING} threads of the generic thread pool. If the rounds of a
+ * data path fall so far behind that its queue is full, new requests are fsynced right away by the thread that issued them, like
+ * without group commit, rather than waiting for the queue to make room.
+ */
+public class TranslogSyncCoordinator {
+
+    private static final Logger logger = LogManager.getLogger(TranslogSyncCoordinator.class);
+
+    /**
+     * Whether the shards of this node sync their translog through the node-wide coordinator rather than on their own.
+     */
+    public static final Setting<Boolean> GROUP_COMMIT_ENABLED_SETTING =
+        Setting.boolSetting("indices.translog.group_commit.enabled", false, Property.NodeScope);
+
+    /**
+     * How long a round waits for more sync requests before fsyncing the translogs. If zero, the round is processed right away by
+     * the thread that issued the first of its requests, like in {@link AsyncIOProcessor}.
+     */
+    public static final Setting<TimeValue> GROUP_COMMIT_MAX_WAIT_SETTING =
+        Setting.timeSetting("indices.translog.group_commit.max_wait", TimeValue.timeValueMillis(5), TimeValue.ZERO,
+            TimeValue.timeValueSeconds(1), Property.NodeScope, Property.Dynamic);
+
+    /**
+     * The maximum number of translogs of the same data path that a round fsyncs in parallel.
+     */
+    public static final Setting<Integer> GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING =
+        Setting.intSetting("indices.translog.group_commit.max_concurrent_syncs", 4, 1, Property.NodeScope, Property.Dynamic);
+
+    // same as the queue of the per-shard AsyncIOProcessor, callers sync on their own once that many requests are pending on a data path
+    static final int QUEUE_SIZE = 1024;
+
+    private final boolean enabled;
+    private final ThreadPool threadPool;
+    private final ConcurrentMap<Path, PathSyncer> pathSyncers = ConcurrentCollections.newConcurrentMap();
+    private volatile long maxWaitNanos;
+    private volatile int maxConcurrentSyncs;
+
+    private final CounterMetric rounds = new CounterMetric();
+    private final CounterMetric requests = new CounterMetric();
+    private final CounterMetric shardSyncs = new CounterMetric();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final CounterMetric syncTimeInNanos = new CounterMetric();
+    private final CounterMetric directSyncs = new CounterMetric();
+
+    public TranslogSyncCoordinator(Settings settings, ClusterSettings clusterSettings, ThreadPool threadPool) {
+        this.enabled = GROUP_COMMIT_ENABLED_SETTING.get(settings);
+        this.threadPool = threadPool;
+        setMaxWait(GROUP_COMMIT_MAX_WAIT_SETTING.get(settings));
+        setMaxConcurrentSyncs(GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING.get(settings));
+        clusterSettings.addSettingsUpdateConsumer(GROUP_COMMIT_MAX_WAIT_SETTING, this::setMaxWait);
+        clusterSettings.addSettingsUpdateConsumer(GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING, this::setMaxConcurrentSyncs);
+    }
+
+    private void setMaxWait(TimeValue maxWait) {
+        this.maxWaitNanos = maxWait.nanos();
+    }
+
+    private void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+        this.maxConcurrentSyncs = maxConcurrentSyncs;
+    }
+
+    /**
+     * Returns <code>true</code> if shards should sync their translog through this coordinator.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a syncer for a shard whose translog is stored on the provided data path.
+     *
+     * @param syncer the function that fsyncs the translog of the shard up to the given locations
+     */
+    public ShardSyncer newShardSyncer(Path dataPath, ShardId shardId,
+                                      CheckedConsumer<Stream<Translog.Location>, IOException> syncer) {
+        return new ShardSyncer(pathSyncers.computeIfAbsent(dataPath, PathSyncer::new), shardId, syncer);
+    }
+
+    public TranslogSyncStats stats() {
+        return new TranslogSyncStats(rounds.count(), requests.count(), shardSyncs.count(), maxBatchSize.get(),
+            TimeUnit.NANOSECONDS.toMillis(syncTimeInNanos.count()), directSyncs.count());
+    }
+
+    /**
+     * Syncs the translog of a single shard through the coordinator.
+     */
+    public final class ShardSyncer {
+
+        private final PathSyncer pathSyncer;
+        private final ShardId shardId;
+        private final CheckedConsumer<Stream<Translog.Location>, IOException> syncer;
+
+        private ShardSyncer(PathSyncer pathSyncer, ShardId shardId, CheckedConsumer<Stream<Translog.Location>, IOException> syncer) {
+            this.pathSyncer = pathSyncer;
+            this.shardId = shardId;
+            this.syncer = syncer;
+        }
+
+        /**
+         * Syncs the given location with the underlying storage. If {@link #GROUP_COMMIT_MAX_WAIT_SETTING} is zero, the caller
+         * thread might be hijacked to process the round that syncs the pending requests of all the shards of the same data
+         * path. If too many requests are pending on the data path, the caller thread syncs this shard on its own. The listener
+         * is notified once the location is synced, with the exception that prevented the sync of this shard, if any.
+         */
+        public void sync(Translog.Location location, Consumer<Exception> listener) {
+            pathSyncer.put(new SyncRequest(this, Objects.requireNonNull(location), preserveContext(Objects.requireNonNull(listener))));
+        }
+    }
+
+    private static final class SyncRequest {
+        final ShardSyncer shardSyncer;
+        final Translog.Location location;
+        final Consumer<Exception> listener;
+        Exception failure;
+
+        SyncRequest(ShardSyncer shardSyncer, Translog.Location location, Consumer<Exception> listener) {
+            this.shardSyncer = shardSyncer;
+            this.location = location;
+            this.listener = listener;
+        }
+    }
+
+    private final class PathSyncer {
+
+        private final Path dataPath;
+        private final ArrayBlockingQueue<SyncRequest> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        // set while a round is scheduled or in progress, the thread that completes a round starts the next one
+        private final AtomicBoolean roundPending = new AtomicBoolean();
+
+        PathSyncer(Path dataPath) {
+            this.dataPath = dataPath;
+        }
+
+        void put(SyncRequest request) {
+            if (queue.offer(request) == false) {
+                // the rounds can't keep up, sync the shard on this thread rather than parking it until a round makes room
+                directSyncs.inc();
+                requests.inc();
+                shardSyncs.inc();
+                syncShard(request.shardSyncer, Collections.singletonList(request));
+                notifyListeners(Collections.singletonList(request));
+                return;
+            }
+            maybeStartRound();
+        }
+
+        /**
+         * Fsyncs the translog of a shard up to the locations of the given requests, recording the failure on the requests if any.
+         */
+        private void syncShard(ShardSyncer shardSyncer, List<SyncRequest> shardRequests) {
+            final long startTime = System.nanoTime();
+            try {
+                shardSyncer.syncer.accept(shardRequests.stream().map(r -> r.location));
+            } catch (Exception e) {
+                // only fail the requests of the shard that could not be synced
+                logger.debug(() -> new ParameterizedMessage("{} failed to sync translog", shardSyncer.shardId), e);
+                for (SyncRequest request : shardRequests) {
+                    request.failure = e;
+                }
+            } finally {
+                syncTimeInNanos.inc(System.nanoTime() - startTime);
+            }
+        }
+
+        private void maybeStartRound() {
+            while (queue.isEmpty() == false && roundPending.compareAndSet(false, true)) {
+                final long maxWait = maxWaitNanos;
+                if (maxWait > 0) {
+                    threadPool.schedule(new AbstractRunnable() {
+                        @Override
+                        protected void doRun() {
+                            if (startRound()) {
+                                maybeStartRound();
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            failPendingRequests(e);
+                        }
+                    }, TimeValue.timeValueNanos(maxWait), ThreadPool.Names.GENERIC);
+                    return;
+                }
+                if (startRound() == false) {
+                    // the round is completed by a thread that it forked, which starts the next round
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Fsyncs the shards of all pending requests, forking to the generic thread pool to fsync up to
+         * {@link #GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING} shards in parallel. Returns <code>true</code> if the round got
+         * completed by the current thread.
+         */
+        private boolean startRound() {
+            final List<SyncRequest> candidates = new ArrayList<>();
+            queue.drainTo(candidates);
+            final Map<ShardSyncer, List<SyncRequest>> requestsPerShard = new IdentityHashMap<>();
+            for (SyncRequest candidate : candidates) {
+                requestsPerShard.computeIfAbsent(candidate.shardSyncer, k -> new ArrayList<>()).add(candidate);
+            }
+            final Round round = new Round(candidates, requestsPerShard.values());
+            if (requestsPerShard.isEmpty()) {
+                round.complete();
+                return true;
+            }
+            final int numForks = Math.min(maxConcurrentSyncs, requestsPerShard.size()) - 1;
+            for (int i = 0; i < numForks; i++) {
+                threadPool.generic().execute(new AbstractRunnable() {
+                    @Override
+                    protected void doRun() {
+                        if (round.syncShards()) {
+                            maybeStartRound();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        // the shards that this fork would have synced are synced by the other threads of the round
+                        logger.debug(() -> new ParameterizedMessage("failed to fork translog sync on data path [{}]", dataPath), e);
+                    }
+                });
+            }
+            return round.syncShards();
+        }
+
+        private void failPendingRequests(Exception e) {
+            final List<SyncRequest> candidates = new ArrayList<>();
+            queue.drainTo(candidates);
+            for (SyncRequest candidate : candidates) {
+                candidate.failure = e;
+            }
+            roundPending.set(false);
+            notifyListeners(candidates);
+        }
+
+        private final class Round {
+            private final List<SyncRequest> candidates;
+            private final int numShards;
+            private final ConcurrentLinkedQueue<List<SyncRequest>> pendingShards;
+            private final AtomicInteger remainingShards;
+
+            Round(List<SyncRequest> candidates, Collection<List<SyncRequest>> requestsPerShard) {
+                this.candidates = candidates;
+                this.numShards = requestsPerShard.size();
+                this.pendingShards = new ConcurrentLinkedQueue<>(requestsPerShard);
+                this.remainingShards = new AtomicInteger(numShards);
+            }
+
+            /**
+             * Fsyncs shards of this round until none is left. Returns <code>true</code> if the current thread synced the last
+             * shard, and therefore completed the round.
+             */
+            boolean syncShards() {
+                boolean completed = false;
+                List<SyncRequest> shardRequests;
+                while ((shardRequests = pendingShards.poll()) != null) {
+                    syncShard(shardRequests.get(0).shardSyncer, shardRequests);
+                    if (remainingShards.decrementAndGet() == 0) {
+                        complete();
+                        completed = true;
+                    }
+                }
+                return completed;
+            }
+
+            void complete() {
+                rounds.inc();
+                requests.inc(candidates.size());
+                shardSyncs.inc(numShards);
+                maxBatchSize.accumulateAndGet(candidates.size(), Math::max);
+                logger.trace("synced [{}] translogs for [{}] requests on data path [{}]", numShards, candidates.size(), dataPath);
+                roundPending.set(false);
+                notifyListeners(candidates);
+            }
+        }
+
+        private void notifyListeners(List<SyncRequest> candidates) {
+            for (SyncRequest candidate : candidates) {
+                try {
+                    candidate.listener.accept(candidate.failure);
+                } catch (Exception ex) {
+                    logger.warn("failed to notify callback", ex);
+                }
+            }
+        }
+    }
+
+    private Consumer<Exception> preserveContext(Consumer<Exception> consumer) {
+        final Supplier<ThreadContext.StoredContext> restorableContext = threadPool.getThreadContext().newRestorableContext(false);
+        return e -> {
+            try (ThreadContext.StoredContext ignore = restorableContext.get()) {
+                consumer.accept(e);
+            }
+        };
+    }
+}
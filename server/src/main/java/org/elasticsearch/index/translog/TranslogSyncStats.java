@@ -0,0 +1,162 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Statistics about the group commit rounds of the {@link TranslogSyncCoordinator} of a node.
+ */
+public class TranslogSyncStats implements Writeable, ToXContentFragment {
+
+    private final long rounds;
+    private final long requests;
+    private final long shardSyncs;
+    private final long maxBatchSize;
+    private final long syncTimeInMillis;
+    private final long directSyncs;
+
+    public TranslogSyncStats(long rounds, long requests, long shardSyncs, long maxBatchSize, long syncTimeInMillis,
+                             long directSyncs) {
+        this.rounds = rounds;
+        this.requests = requests;
+        this.shardSyncs = shardSyncs;
+        this.maxBatchSize = maxBatchSize;
+        this.syncTimeInMillis = syncTimeInMillis;
+        this.directSyncs = directSyncs;
+    }
+
+    public TranslogSyncStats(StreamInput in) throws IOException {
+        rounds = in.readVLong();
+        requests = in.readVLong();
+        shardSyncs = in.readVLong();
+        maxBatchSize = in.readVLong();
+        syncTimeInMillis = in.readVLong();
+        directSyncs = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(rounds);
+        out.writeVLong(requests);
+        out.writeVLong(shardSyncs);
+        out.writeVLong(maxBatchSize);
+        out.writeVLong(syncTimeInMillis);
+        out.writeVLong(directSyncs);
+    }
+
+    /**
+     * The number of sync rounds, each of them fsyncing every shard that had a pending sync request at most once.
+     */
+    public long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * The number of sync requests that have been processed, the average batch size is {@code requests / rounds}.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * The number of translog fsyncs that have been issued, the average is {@code shardSyncs / rounds} per round.
+     */
+    public long getShardSyncs() {
+        return shardSyncs;
+    }
+
+    /**
+     * The largest number of sync requests processed in a single round.
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * The time spent in translog fsyncs, summed over the shards, the average latency of an fsync is {@code syncTime / shardSyncs}.
+     */
+    public TimeValue getSyncTime() {
+        return new TimeValue(syncTimeInMillis);
+    }
+
+    /**
+     * The number of sync requests that were fsynced on their own by the thread that issued them because the queue of their data
+     * path was full. These syncs are included in {@link #getShardSyncs()} and {@link #getSyncTime()}, but not in the rounds and
+     * their requests.
+     */
+    public long getDirectSyncs() {
+        return directSyncs;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.TRANSLOG_SYNC);
+        builder.field(Fields.ROUNDS, rounds);
+        builder.field(Fields.REQUESTS, requests);
+        builder.field(Fields.SHARD_SYNCS, shardSyncs);
+        builder.field(Fields.MAX_BATCH_SIZE, maxBatchSize);
+        builder.humanReadableField(Fields.SYNC_TIME_IN_MILLIS, Fields.SYNC_TIME, getSyncTime());
+        builder.field(Fields.DIRECT_SYNCS, directSyncs);
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final String TRANSLOG_SYNC = "translog_sync";
+        static final String ROUNDS = "rounds";
+        static final String REQUESTS = "requests";
+        static final String SHARD_SYNCS = "shard_syncs";
+        static final String MAX_BATCH_SIZE = "max_batch_size";
+        static final String SYNC_TIME = "sync_time";
+        static final String SYNC_TIME_IN_MILLIS = "sync_time_in_millis";
+        static final String DIRECT_SYNCS = "direct_syncs";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TranslogSyncStats that = (TranslogSyncStats) o;
+        return rounds == that.rounds &&
+            requests == that.requests &&
+            shardSyncs == that.shardSyncs &&
+            maxBatchSize == that.maxBatchSize &&
+            syncTimeInMillis == that.syncTimeInMillis &&
+            directSyncs == that.directSyncs;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rounds, requests, shardSyncs, maxBatchSize, syncTimeInMillis, directSyncs);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+import org.elasticsearch.common.cache.FrequencySketch;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A {@link QueryCachingPolicy} that admits filters based on how often they were recently used, as estimated by a
+ * {@link FrequencySketch}, and on how expensive they are to recompute compared to the other filters of the node. Filters
+ * whose cost has not been measured yet need as many uses as with the {@link UsageTrackingQueryCachingPolicy}, measured
+ * filters need fewer uses the more costly they are to build per byte of cached result, and more uses the cheaper they are.
+ */
+public class CostAwareQueryCachingPolicy implements QueryCachingPolicy {
+
+    /** The number of uses after which a filter whose cost is average for the node is cached. */
+    static final int DEFAULT_MIN_FREQUENCY = 4;
+
+    private final FrequencySketch recentlyUsedFilters;
+    private final ToDoubleFunction<Query> relativeCost;
+
+    /**
+     * @param historySize  the number of distinct recently used filters to track
+     * @param relativeCost the cost to recompute the given filter per byte of cached result relative to the average of the node,
+     *                     or {@link Double#NaN} if it has not been measured yet
+     */
+    public CostAwareQueryCachingPolicy(int historySize, ToDoubleFunction<Query> relativeCost) {
+        this.recentlyUsedFilters = new FrequencySketch(historySize);
+        this.relativeCost = relativeCost;
+    }
+
+    @Override
+    public void onUse(Query query) {
+        assert query instanceof BoostQuery == false;
+        assert query instanceof ConstantScoreQuery == false;
+        if (shouldNeverCache(query)) {
+            return;
+        }
+        // call hashCode outside of the sync block in case it's somewhat expensive
+        final int hashCode = query.hashCode();
+        synchronized (this) {
+            recentlyUsedFilters.increment(hashCode);
+        }
+    }
+
+    int frequency(Query query) {
+        final int hashCode = query.hashCode();
+        synchronized (this) {
+            return recentlyUsedFilters.frequency(hashCode);
+        }
+    }
+
+    @Override
+    public boolean shouldCache(Query query) {
+        if (shouldNeverCache(query)) {
+            return false;
+        }
+        return frequency(query) >= minFrequencyToCache(query);
+    }
+
+    /**
+     * Returns how many times the given filter must have been recently used before it is cached.
+     */
+    int minFrequencyToCache(Query query) {
+        final double cost = relativeCost.applyAsDouble(query);
+        if (Double.isNaN(cost)) {
+            return defaultMinFrequencyToCache(query);
+        }
+        if (cost <= 0) {
+            return FrequencySketch.MAX_FREQUENCY;
+        }
+        // a filter that has been used only once is never cached, no matter how expensive it is
+        final double minFrequency = Math.ceil(DEFAULT_MIN_FREQUENCY / cost);
+        return (int) Math.max(2, Math.min(FrequencySketch.MAX_FREQUENCY, minFrequency));
+    }
+
+    /**
+     * The number of uses before caching a filter whose cost is unknown, which mirrors {@link UsageTrackingQueryCachingPolicy}.
+     */
+    private static int defaultMinFrequencyToCache(Query query) {
+        if (isCostly(query)) {
+            return 2;
+        } else if (query instanceof BooleanQuery || query instanceof DisjunctionMaxQuery) {
+            return 4;
+        } else {
+            return 5;
+        }
+    }
+
+    private static boolean isCostly(Query query) {
+        if (query instanceof MultiTermQuery || query instanceof TermInSetQuery) {
+            return true;
+        }
+        // anonymous subclasses of point queries are common, so we need to check super classes
+        for (Class<?> clazz = query.getClass(); clazz != Query.class; clazz = clazz.getSuperclass()) {
+            final String simpleName = clazz.getSimpleName();
+            if (simpleName.startsWith("Point") && simpleName.endsWith("Query")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean shouldNeverCache(Query query) {
+        // term queries are already plenty fast, and the others are cheap to notice that they match all or no documents
+        if (query instanceof TermQuery || query instanceof MatchAllDocsQuery || query instanceof MatchNoDocsQuery) {
+            return true;
+        }
+        if (query instanceof BooleanQuery) {
+            return ((BooleanQuery) query).clauses().isEmpty();
+        }
+        if (query instanceof DisjunctionMaxQuery) {
+            return ((DisjunctionMaxQuery) query).getDisjuncts().isEmpty();
+        }
+        return false;
+    }
+}
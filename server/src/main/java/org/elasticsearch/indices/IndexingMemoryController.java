@@ -30,6 +30,7 @@ import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardState;
@@ -41,12 +42,17 @@ import org.elasticsearch.threadpool.ThreadPool.Names;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class IndexingMemoryController implements IndexingOperationListener, Closeable {
@@ -89,6 +95,20 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
         TimeValue.timeValueSeconds(5),
         Property.NodeScope);
 
+    /** Whether the indexing buffer is shared across shards in proportion to their indexing rate, rather than by writing the
+     * largest buffers first once the budget is exceeded (default: false). */
+    public static final Setting<Boolean> RATE_AWARE_ALLOCATION_SETTING = Setting.boolSetting(
+        "indices.memory.rate_aware_allocation.enabled",
+        false,
+        Property.NodeScope);
+
+    /** Over how much time the indexing rate of a shard is averaged when the buffer is allocated by indexing rate. */
+    static final TimeValue INDEXING_RATE_WINDOW = TimeValue.timeValueSeconds(30);
+
+    /** Once all shards use more than this fraction of the budget, shards that use more than twice their target write their
+     * indexing buffer early, before the budget is exceeded. */
+    static final double EARLY_WRITE_THRESHOLD = 0.5;
+
     private final ThreadPool threadPool;
 
     private final Iterable<IndexShard> indexShards;
@@ -98,6 +118,11 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
     private final TimeValue inactiveTime;
     private final TimeValue interval;
 
+    private final boolean rateAwareAllocation;
+
+    /** Bytes indexed by each shard, used to compute its share of the indexing buffer if it is allocated by indexing rate */
+    private final Map<ShardId, ShardIndexingRate> indexingRates = ConcurrentCollections.newConcurrentMap();
+
     /** Contains shards currently being throttled because we can't write segments quickly enough */
     private final Set<IndexShard> throttled = new HashSet<>();
 
@@ -131,13 +156,15 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
         this.inactiveTime = SHARD_INACTIVE_TIME_SETTING.get(settings);
         // we need to have this relatively small to free up heap quickly enough
         this.interval = SHARD_MEMORY_INTERVAL_TIME_SETTING.get(settings);
+        this.rateAwareAllocation = RATE_AWARE_ALLOCATION_SETTING.get(settings);
 
         this.statusChecker = new ShardsIndicesStatusChecker();
 
-        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}]",
+        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}], {} [{}]",
                      this.indexingBuffer,
                      SHARD_INACTIVE_TIME_SETTING.getKey(), this.inactiveTime,
-                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval);
+                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval,
+                     RATE_AWARE_ALLOCATION_SETTING.getKey(), this.rateAwareAllocation);
         this.scheduler = scheduleTask(threadPool);
 
         // Need to save this so we can later launch async "write indexing buffer to disk" on shards:
@@ -202,6 +229,16 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
         statusChecker.run();
     }
 
+    /** sets the share of the indexing buffer that this shard is targeted to use */
+    protected void setIndexBufferTargetBytes(IndexShard shard, long targetBytes) {
+        shard.setIndexBufferTargetBytes(targetBytes);
+    }
+
+    /** returns the current relative time, used to compute the indexing rate of shards */
+    protected long relativeTimeInNanos() {
+        return System.nanoTime();
+    }
+
     /** Asks this shard to throttle indexing to one thread */
     protected void activateThrottling(IndexShard shard) {
         shard.activateThrottling();
@@ -214,34 +251,104 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
 
     @Override
     public void postIndex(ShardId shardId, Engine.Index index, Engine.IndexResult result) {
-        recordOperationBytes(index, result);
+        recordOperationBytes(shardId, index, result);
     }
 
     @Override
     public void postDelete(ShardId shardId, Engine.Delete delete, Engine.DeleteResult result) {
-        recordOperationBytes(delete, result);
+        recordOperationBytes(shardId, delete, result);
     }
 
     /** called by IndexShard to record estimated bytes written to translog for the operation */
-    private void recordOperationBytes(Engine.Operation operation, Engine.Result result) {
+    private void recordOperationBytes(ShardId shardId, Engine.Operation operation, Engine.Result result) {
         if (result.getResultType() == Engine.Result.Type.SUCCESS) {
+            if (rateAwareAllocation) {
+                recordIndexingBytes(shardId, operation.estimatedSizeInBytes());
+            }
             statusChecker.bytesWritten(operation.estimatedSizeInBytes());
         }
     }
 
+    /** records bytes indexed by a shard, from which its indexing rate is computed */
+    void recordIndexingBytes(ShardId shardId, long bytes) {
+        ShardIndexingRate rate = indexingRates.get(shardId);
+        if (rate == null) {
+            rate = indexingRates.computeIfAbsent(shardId, k -> new ShardIndexingRate(relativeTimeInNanos()));
+        }
+        rate.bytesSinceUpdate.add(bytes);
+    }
+
+    /**
+     * Updates the indexing rate of all the given shards and returns the share of the indexing buffer that each of them should use,
+     * in proportion to its rate. If no shard indexed recently, all shards get the same share.
+     */
+    Map<IndexShard, Long> allocateIndexingBuffer(List<IndexShard> shards) {
+        final long nowNanos = relativeTimeInNanos();
+        final Map<IndexShard, Double> rates = new HashMap<>();
+        final Set<ShardId> shardIds = new HashSet<>();
+        double totalRate = 0;
+        for (IndexShard shard : shards) {
+            shardIds.add(shard.shardId());
+            final ShardIndexingRate rate = indexingRates.get(shard.shardId());
+            final double bytesPerSec = rate == null ? 0 : rate.update(nowNanos);
+            rates.put(shard, bytesPerSec);
+            totalRate += bytesPerSec;
+        }
+        // forget about shards that were closed or relocated away
+        indexingRates.keySet().retainAll(shardIds);
+
+        final Map<IndexShard, Long> targets = new HashMap<>();
+        for (Map.Entry<IndexShard, Double> entry : rates.entrySet()) {
+            final double share = totalRate > 0 ? entry.getValue() / totalRate : 1.0 / shards.size();
+            final long targetBytes = (long) (share * indexingBuffer.getBytes());
+            targets.put(entry.getKey(), targetBytes);
+            setIndexBufferTargetBytes(entry.getKey(), targetBytes);
+        }
+        return targets;
+    }
+
+    /**
+     * The indexing rate of a shard, as an exponentially weighted moving average over {@link #INDEXING_RATE_WINDOW} that is updated
+     * each time the indexing buffer is checked.
+     */
+    private static final class ShardIndexingRate {
+        final LongAdder bytesSinceUpdate = new LongAdder();
+        long lastUpdateNanos;
+        double bytesPerSec;
+
+        ShardIndexingRate(long nowNanos) {
+            this.lastUpdateNanos = nowNanos;
+        }
+
+        /** only called under the lock of the status checker */
+        double update(long nowNanos) {
+            final long elapsedNanos = nowNanos - lastUpdateNanos;
+            if (elapsedNanos > 0) {
+                final double currentBytesPerSec = bytesSinceUpdate.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+                // the longer since the last update, the more weight the current rate gets
+                final double alpha = 1 - Math.exp(-elapsedNanos / (double) INDEXING_RATE_WINDOW.nanos());
+                bytesPerSec += alpha * (currentBytesPerSec - bytesPerSec);
+                lastUpdateNanos = nowNanos;
+            }
+            return bytesPerSec;
+        }
+    }
+
     private static final class ShardAndBytesUsed implements Comparable<ShardAndBytesUsed> {
         final long bytesUsed;
+        final long bytesOverTarget;
         final IndexShard shard;
 
-        ShardAndBytesUsed(long bytesUsed, IndexShard shard) {
+        ShardAndBytesUsed(long bytesUsed, long bytesOverTarget, IndexShard shard) {
             this.bytesUsed = bytesUsed;
+            this.bytesOverTarget = bytesOverTarget;
             this.shard = shard;
         }
 
         @Override
         public int compareTo(ShardAndBytesUsed other) {
-            // Sort larger shards first:
-            return Long.compare(other.bytesUsed, bytesUsed);
+            // Sort shards that use the most above their target first, which are the larger shards if there are no targets:
+            return Long.compare(other.bytesOverTarget, bytesOverTarget);
         }
     }
 
@@ -301,7 +408,9 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
             // to disk:
             long totalBytesUsed = 0;
             long totalBytesWriting = 0;
-            for (IndexShard shard : availableShards()) {
+            final List<IndexShard> availableShards = availableShards();
+            final Map<IndexShard, Long> targets = rateAwareAllocation ? allocateIndexingBuffer(availableShards) : Collections.emptyMap();
+            for (IndexShard shard : availableShards) {
 
                 // Give shard a chance to transition to inactive so we can flush
                 checkIdle(shard, inactiveTime.nanos());
@@ -338,7 +447,7 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
                 // OK we are now over-budget; fill the priority queue and ask largest shard(s) to refresh:
                 PriorityQueue<ShardAndBytesUsed> queue = new PriorityQueue<>();
 
-                for (IndexShard shard : availableShards()) {
+                for (IndexShard shard : availableShards) {
                     // How many bytes this shard is currently (async'd) moving from heap to disk:
                     long shardWritingBytes = getShardWritingBytes(shard);
 
@@ -363,7 +472,7 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
                                 logger.trace("shard [{}] is using [{}] heap, not writing any bytes", shard.shardId(), shardBytesUsed);
                             }
                         }
-                        queue.add(new ShardAndBytesUsed(shardBytesUsed, shard));
+                        queue.add(new ShardAndBytesUsed(shardBytesUsed, shardBytesUsed - targets.getOrDefault(shard, 0L), shard));
                     }
                 }
 
@@ -383,6 +492,21 @@ public class IndexingMemoryController implements IndexingOperationListener, Clos
                         activateThrottling(largest.shard);
                     }
                 }
+            } else if (rateAwareAllocation && totalBytesUsed > EARLY_WRITE_THRESHOLD * indexingBuffer.getBytes()) {
+                // Not over-budget yet, but getting there: have cold shards that hold much more than their share write their indexing
+                // buffer now, which leaves room for the shards that index the most to write larger segments
+                for (IndexShard shard : availableShards) {
+                    if (getShardWritingBytes(shard) > 0) {
+                        continue;
+                    }
+                    final long shardBytesUsed = getIndexBufferRAMBytesUsed(shard);
+                    final long targetBytes = targets.getOrDefault(shard, 0L);
+                    if (shardBytesUsed > 0 && shardBytesUsed > 2 * targetBytes) {
+                        logger.debug("write indexing buffer to disk for shard [{}] early, it uses [{}] of its [{}] target",
+                            shard.shardId(), new ByteSizeValue(shardBytesUsed), new ByteSizeValue(targetBytes));
+                        writeIndexingBufferAsync(shard);
+                    }
+                }
             }
 
             if (doThrottle == false) {
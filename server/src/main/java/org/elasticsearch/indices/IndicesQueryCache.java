@@ -24,6 +24,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.LRUQueryCache;
 import org.apache.lucene.search.Query;
@@ -31,7 +32,13 @@ import org.apache.lucene.search.QueryCache;
 import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
 import org.apache.lucene.search.Weight;
+import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.FrequencySketch;
 import org.elasticsearch.common.lucene.ShardCoreKeyMap;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
@@ -42,12 +49,17 @@ import org.elasticsearch.index.shard.ShardId;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
 public class IndicesQueryCache implements QueryCache, Closeable {
@@ -63,6 +75,40 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     // enables caching on all segments instead of only the larger ones, for testing only
     public static final Setting<Boolean> INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING = 
             Setting.boolSetting("indices.queries.cache.all_segments", false, Property.NodeScope);
+    public static final Setting<CachingPolicy> INDICES_QUERIES_CACHE_POLICY_SETTING =
+            new Setting<>("indices.queries.cache.policy", CachingPolicy.USAGE_TRACKING.name().toLowerCase(Locale.ROOT),
+                value -> CachingPolicy.valueOf(value.toUpperCase(Locale.ROOT)), Property.NodeScope);
+
+    /**
+     * The policies that decide which filters are cached.
+     */
+    public enum CachingPolicy {
+        /**
+         * Caches filters once they were used often enough, see {@link UsageTrackingQueryCachingPolicy}.
+         */
+        USAGE_TRACKING,
+        /**
+         * Caches filters depending on how often they are used and how expensive they are to recompute, see
+         * {@link CostAwareQueryCachingPolicy}, and evicts the filters that save the least time per byte first.
+         */
+        COST_AWARE
+    }
+
+    // the cost aware policy evicts filters once the cache is almost full, before the least recently used ones get evicted
+    private static final double EVICTION_THRESHOLD = 0.95;
+    private static final double EVICTION_TARGET = 0.9;
+
+    private static final ClassValue<String> QUERY_TYPES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            // anonymous sub classes, like those of point queries, are named after their super class
+            Class<?> clazz = type;
+            while (clazz.isAnonymousClass()) {
+                clazz = clazz.getSuperclass();
+            }
+            return clazz.getSimpleName();
+        }
+    };
 
     private final LRUQueryCache cache;
     private final ShardCoreKeyMap shardKeyMap = new ShardCoreKeyMap();
@@ -73,12 +119,34 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     // ShardCoreKeyMap will be called before onDocIdSetEviction
     // See onDocIdSetEviction for more info
     private final Map<Object, StatsAndCount> stats2 = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<String, QueryTypeStats> typeStats = new ConcurrentHashMap<>();
+
+    private final CachingPolicy cachingPolicy;
+    private final long maxRamBytesUsed;
+    private final int maxSize;
+    // the following are only used by the cost aware policy
+    private final Cache<Query, QueryCost> queryCosts;
+    private volatile ExponentiallyWeightedMovingAverage averageCostPerByte;
+    private final FrequencySketch recentlyUsedQueries;
+    private final Set<Query> cachedQueries = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ThreadLocal<DocIdSet> lastBuild = new ThreadLocal<>();
 
     public IndicesQueryCache(Settings settings) {
         final ByteSizeValue size = INDICES_CACHE_QUERY_SIZE_SETTING.get(settings);
         final int count = INDICES_CACHE_QUERY_COUNT_SETTING.get(settings);
-        logger.debug("using [node] query cache with size [{}] max filter count [{}]",
-                size, count);
+        cachingPolicy = INDICES_QUERIES_CACHE_POLICY_SETTING.get(settings);
+        logger.debug("using [node] query cache with size [{}] max filter count [{}] policy [{}]",
+                size, count, cachingPolicy);
+        maxRamBytesUsed = size.getBytes();
+        maxSize = count;
+        if (cachingPolicy == CachingPolicy.COST_AWARE) {
+            queryCosts = CacheBuilder.<Query, QueryCost>builder().setMaximumWeight(count).build();
+            recentlyUsedQueries = new FrequencySketch(count);
+        } else {
+            queryCosts = null;
+            recentlyUsedQueries = null;
+        }
         if (INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.get(settings)) {
             cache = new ElasticsearchLRUQueryCache(count, size.getBytes(), context -> true, 1f);
         } else {
@@ -87,6 +155,101 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         sharedRamBytesUsed = 0;
     }
 
+    /**
+     * Creates the policy that decides which filters a shard caches. Policies are per shard so that the most popular filters
+     * are computed on a per-shard basis.
+     */
+    public QueryCachingPolicy createCachingPolicy() {
+        if (cachingPolicy == CachingPolicy.COST_AWARE) {
+            return new CostAwareQueryCachingPolicy(256, this::relativeCost);
+        }
+        return new UsageTrackingQueryCachingPolicy();
+    }
+
+    /**
+     * Returns the cost to recompute the given filter per byte of cached result relative to the average of all measured
+     * filters, or {@link Double#NaN} if it is unknown.
+     */
+    double relativeCost(Query query) {
+        final QueryCost cost = queryCosts.get(query);
+        final ExponentiallyWeightedMovingAverage average = averageCostPerByte;
+        if (cost == null || average == null || average.getAverage() <= 0) {
+            return Double.NaN;
+        }
+        return cost.costPerByte() / average.getAverage();
+    }
+
+    private void onBuild(Query query, Build build) {
+        QueryCost cost = queryCosts.get(query);
+        if (cost == null) {
+            cost = new QueryCost();
+            queryCosts.put(query, cost);
+        }
+        cost.add(build);
+        final double costPerByte = build.costPerByte();
+        if (averageCostPerByte == null) {
+            synchronized (this) {
+                if (averageCostPerByte == null) {
+                    averageCostPerByte = new ExponentiallyWeightedMovingAverage(0.05, costPerByte);
+                    return;
+                }
+            }
+        }
+        averageCostPerByte.addValue(costPerByte);
+    }
+
+    /**
+     * Evicts the cached filters that save the least time per byte, based on their recent usage and their cost, once the cache
+     * is almost full. The least recently used filters are still evicted by the cache itself if a single filter fills it up.
+     */
+    private void maybeEvict() {
+        if (requiresEviction(EVICTION_THRESHOLD) == false || evicting.compareAndSet(false, true) == false) {
+            return;
+        }
+        try {
+            final List<Query> candidates = new ArrayList<>(cachedQueries);
+            final Map<Query, Double> values = new HashMap<>(candidates.size());
+            for (Query query : candidates) {
+                final QueryCost cost = queryCosts.get(query);
+                final int frequency;
+                synchronized (recentlyUsedQueries) {
+                    frequency = recentlyUsedQueries.frequency(query.hashCode());
+                }
+                values.put(query, cost == null ? 0d : frequency * cost.costPerByte());
+            }
+            candidates.sort(Comparator.comparingDouble(values::get));
+            for (Query query : candidates) {
+                if (requiresEviction(EVICTION_TARGET) == false) {
+                    break;
+                }
+                cache.clearQuery(query);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean requiresEviction(double ratio) {
+        return cache.ramBytesUsed() > ratio * maxRamBytesUsed || cachedQueries.size() > ratio * maxSize;
+    }
+
+    /**
+     * Measures the cost of building the {@link DocIdSet} of a filter, if the given operation caches it. This includes creating
+     * the scorer of the filter, which is where queries on points do most of their work.
+     */
+    private <T> T measureBuild(Query query, CheckedSupplier<T, IOException> operation) throws IOException {
+        lastBuild.remove();
+        final long start = System.nanoTime();
+        final T result = operation.get();
+        final DocIdSet docIdSet = lastBuild.get();
+        if (docIdSet != null) {
+            lastBuild.remove();
+            onBuild(query, new Build(System.nanoTime() - start, docIdSet.ramBytesUsed()));
+            maybeEvict();
+        }
+        return result;
+    }
+
     /** Get usage statistics for the given shard. */
     public QueryCacheStats getStats(ShardId shard) {
         final Map<ShardId, QueryCacheStats> stats = new HashMap<>();
@@ -114,6 +277,15 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         return shardStats;
     }
 
+    /** Get usage statistics of the node per type of query. */
+    public Map<String, QueryCacheStats.TypeStats> getStatsByQueryType() {
+        final Map<String, QueryCacheStats.TypeStats> stats = new HashMap<>(typeStats.size());
+        for (Map.Entry<String, QueryTypeStats> entry : typeStats.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().toTypeStats());
+        }
+        return stats;
+    }
+
     @Override
     public Weight doCache(Weight weight, QueryCachingPolicy policy) {
         while (weight instanceof CachingWeightWrapper) {
@@ -148,18 +320,38 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         @Override
         public Scorer scorer(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
+            if (cachingPolicy == CachingPolicy.COST_AWARE) {
+                return measureBuild(getQuery(), () -> in.scorer(context));
+            }
             return in.scorer(context);
         }
 
         @Override
         public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
-            return in.scorerSupplier(context);
+            final ScorerSupplier supplier = in.scorerSupplier(context);
+            if (supplier == null || cachingPolicy != CachingPolicy.COST_AWARE) {
+                return supplier;
+            }
+            return new ScorerSupplier() {
+                @Override
+                public Scorer get(long leadCost) throws IOException {
+                    return measureBuild(getQuery(), () -> supplier.get(leadCost));
+                }
+
+                @Override
+                public long cost() {
+                    return supplier.cost();
+                }
+            };
         }
 
         @Override
         public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
+            if (cachingPolicy == CachingPolicy.COST_AWARE) {
+                return measureBuild(getQuery(), () -> in.bulkScorer(context));
+            }
             return in.bulkScorer(context);
         }
 
@@ -195,6 +387,54 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         // we only know that there are no more doc id sets, but we still track
         // recently used queries, which we want to reclaim.
         cache.clear();
+        if (queryCosts != null) {
+            queryCosts.invalidateAll();
+        }
+    }
+
+    /** The time it took to build the {@link DocIdSet} of a filter on a segment and the memory that it uses. */
+    private static class Build {
+        final long nanos;
+        final long ramBytesUsed;
+
+        Build(long nanos, long ramBytesUsed) {
+            this.nanos = nanos;
+            this.ramBytesUsed = ramBytesUsed;
+        }
+
+        double costPerByte() {
+            return (double) nanos / Math.max(1, ramBytesUsed);
+        }
+    }
+
+    /** The cost of all builds of a filter. */
+    private static class QueryCost {
+        private long nanos;
+        private long ramBytesUsed;
+
+        synchronized void add(Build build) {
+            nanos += build.nanos;
+            ramBytesUsed += build.ramBytesUsed;
+        }
+
+        synchronized double costPerByte() {
+            return (double) nanos / Math.max(1, ramBytesUsed);
+        }
+    }
+
+    private static class QueryTypeStats {
+        volatile long hitCount;
+        volatile long missCount;
+        volatile long cacheCount;
+        volatile long evictions;
+
+        QueryCacheStats.TypeStats toTypeStats() {
+            return new QueryCacheStats.TypeStats(hitCount, missCount, cacheCount, evictions);
+        }
+    }
+
+    private QueryTypeStats getTypeStats(Query query) {
+        return typeStats.computeIfAbsent(QUERY_TYPES.get(query.getClass()), type -> new QueryTypeStats());
     }
 
     private static class Stats implements Cloneable {
@@ -278,6 +518,15 @@ public class IndicesQueryCache implements QueryCache, Closeable {
 
         // It's ok to not protect these callbacks by a lock since it is
         // done in LRUQueryCache
+        @Override
+        protected DocIdSet cacheImpl(BulkScorer scorer, int maxDoc) throws IOException {
+            final DocIdSet docIdSet = super.cacheImpl(scorer, maxDoc);
+            if (cachingPolicy == CachingPolicy.COST_AWARE) {
+                lastBuild.set(docIdSet);
+            }
+            return docIdSet;
+        }
+
         @Override
         protected void onClear() {
             super.onClear();
@@ -288,18 +537,25 @@ public class IndicesQueryCache implements QueryCache, Closeable {
             }
             stats2.clear();
             sharedRamBytesUsed = 0;
+            cachedQueries.clear();
         }
 
         @Override
         protected void onQueryCache(Query filter, long ramBytesUsed) {
             super.onQueryCache(filter, ramBytesUsed);
             sharedRamBytesUsed += ramBytesUsed;
+            getTypeStats(filter).cacheCount += 1;
+            if (cachingPolicy == CachingPolicy.COST_AWARE) {
+                cachedQueries.add(filter);
+            }
         }
 
         @Override
         protected void onQueryEviction(Query filter, long ramBytesUsed) {
             super.onQueryEviction(filter, ramBytesUsed);
             sharedRamBytesUsed -= ramBytesUsed;
+            getTypeStats(filter).evictions += 1;
+            cachedQueries.remove(filter);
         }
 
         @Override
@@ -346,6 +602,8 @@ public class IndicesQueryCache implements QueryCache, Closeable {
             super.onHit(readerCoreKey, filter);
             final Stats shardStats = getStats(readerCoreKey);
             shardStats.hitCount += 1;
+            getTypeStats(filter).hitCount += 1;
+            onLookup(filter);
         }
 
         @Override
@@ -353,6 +611,16 @@ public class IndicesQueryCache implements QueryCache, Closeable {
             super.onMiss(readerCoreKey, filter);
             final Stats shardStats = getOrCreateStats(readerCoreKey);
             shardStats.missCount += 1;
+            getTypeStats(filter).missCount += 1;
+            onLookup(filter);
+        }
+
+        private void onLookup(Query filter) {
+            if (recentlyUsedQueries != null) {
+                synchronized (recentlyUsedQueries) {
+                    recentlyUsedQueries.increment(filter.hashCode());
+                }
+            }
         }
     }
 }
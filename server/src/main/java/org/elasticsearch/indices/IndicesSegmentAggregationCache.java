@@ -0,0 +1,220 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalListener;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.IndexShard;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The segment aggregation cache keeps the aggregation results of shard level requests per segment. Unlike the
+ * {@link IndicesRequestCache}, whose entries are keyed on the reader of the whole shard and are lost on every refresh, its entries
+ * are keyed on the core of a segment and on the number of live docs of the segment, so they remain valid as long as the segment is
+ * neither merged away nor sees deletes. On append-only indices a request is then mostly served from the results of the segments it
+ * already saw, and only new segments are collected.
+ * <p>
+ * The cache is bounded in size and the memory it holds is accounted for in the {@link CircuitBreaker#ACCOUNTING accounting}
+ * circuit breaker; results that would trip the breaker are not cached. The entries of a segment are removed as soon as the
+ * segment is closed.
+ */
+public final class IndicesSegmentAggregationCache implements RemovalListener<IndicesSegmentAggregationCache.Key, BytesReference>,
+    Closeable {
+
+    private static final Logger logger = LogManager.getLogger(IndicesSegmentAggregationCache.class);
+
+    /**
+     * A setting to enable the caching of aggregation results per segment on an index level.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING =
+        Setting.boolSetting("index.requests.cache.segment_aggregations.enable", false, Property.Dynamic, Property.IndexScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_SEGMENT_AGGREGATIONS_SIZE =
+        Setting.memorySizeSetting("indices.requests.cache.segment_aggregations.size", "1%", Property.NodeScope);
+
+    private final ConcurrentMap<IndexReader.CacheKey, Set<Key>> keysBySegment = ConcurrentCollections.newConcurrentMap();
+    private final CircuitBreaker breaker;
+    private final Cache<Key, BytesReference> cache;
+
+    IndicesSegmentAggregationCache(Settings settings, CircuitBreaker breaker) {
+        this.breaker = breaker;
+        this.cache = CacheBuilder.<Key, BytesReference>builder()
+            .setMaximumWeight(INDICES_CACHE_SEGMENT_AGGREGATIONS_SIZE.get(settings).getBytes())
+            .weigher(IndicesSegmentAggregationCache::weight)
+            .removalListener(this)
+            .build();
+    }
+
+    private static long weight(Key key, BytesReference value) {
+        return key.ramBytesUsed() + value.length();
+    }
+
+    /**
+     * Returns the cached results of the given request on the given segment of the shard, or {@code null} if they are not cached.
+     */
+    @Nullable
+    BytesReference get(IndexShard shard, LeafReader segment, BytesReference requestKey) {
+        final Key key = key(shard, segment, requestKey);
+        if (key == null) {
+            return null;
+        }
+        final BytesReference value = cache.get(key);
+        if (value == null) {
+            shard.requestCache().onSegmentAggregationsMiss();
+        } else {
+            shard.requestCache().onSegmentAggregationsHit();
+        }
+        return value;
+    }
+
+    /**
+     * Caches the results of the given request on the given segment of the shard, unless they would trip the circuit breaker.
+     */
+    void put(IndexShard shard, LeafReader segment, BytesReference requestKey, BytesReference value) {
+        final Key key = key(shard, segment, requestKey);
+        if (key == null) {
+            return;
+        }
+        final long weight = weight(key, value);
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(weight, "<segment_aggregation_cache>");
+        } catch (CircuitBreakingException e) {
+            logger.trace("not caching segment aggregation results of [{}] bytes for shard [{}]: {}",
+                weight, shard.shardId(), e.getMessage());
+            return;
+        }
+        keysBySegment.computeIfAbsent(key.segmentKey, segmentKey -> {
+            segment.getCoreCacheHelper().addClosedListener(this::onSegmentClosed);
+            return ConcurrentCollections.newConcurrentSet();
+        }).add(key);
+        shard.requestCache().onSegmentAggregationsCached(weight);
+        cache.put(key, value);
+    }
+
+    @Nullable
+    private static Key key(IndexShard shard, LeafReader segment, BytesReference requestKey) {
+        final IndexReader.CacheHelper cacheHelper = segment.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+        return new Key(shard, cacheHelper.getKey(), segment.numDocs(), requestKey);
+    }
+
+    private void onSegmentClosed(IndexReader.CacheKey segmentKey) {
+        final Set<Key> keys = keysBySegment.remove(segmentKey);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, BytesReference> notification) {
+        final Set<Key> keys = keysBySegment.get(notification.getKey().segmentKey);
+        if (keys != null && notification.getRemovalReason() != RemovalNotification.RemovalReason.REPLACED) {
+            keys.remove(notification.getKey());
+        }
+        final long weight = weight(notification.getKey(), notification.getValue());
+        breaker.addWithoutBreaking(-weight);
+        notification.getKey().shard.requestCache()
+            .onSegmentAggregationsRemoval(weight, notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED);
+    }
+
+    /**
+     * Removes all the entries of the given shard.
+     */
+    void clear(IndexShard shard) {
+        for (Iterator<Key> iterator = cache.keys().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().shard == shard) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int count() {
+        return cache.count();
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    static final class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+        final IndexShard shard; // use as identity equality
+        final IndexReader.CacheKey segmentKey;
+        final int numDocs;
+        final BytesReference requestKey;
+
+        Key(IndexShard shard, IndexReader.CacheKey segmentKey, int numDocs, BytesReference requestKey) {
+            this.shard = shard;
+            this.segmentKey = Objects.requireNonNull(segmentKey);
+            this.numDocs = numDocs;
+            this.requestKey = requestKey;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + requestKey.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return shard == key.shard && segmentKey.equals(key.segmentKey) && numDocs == key.numDocs
+                && requestKey.equals(key.requestKey);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(shard);
+            result = 31 * result + segmentKey.hashCode();
+            result = 31 * result + numDocs;
+            result = 31 * result + requestKey.hashCode();
+            return result;
+        }
+    }
+}
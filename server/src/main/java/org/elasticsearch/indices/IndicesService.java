@@ -24,6 +24,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader.CacheHelper;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.CollectionUtil;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -48,6 +49,7 @@ import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.CheckedFunction;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.io.FileSystemUtils;
@@ -89,6 +91,7 @@ import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.analysis.AnalysisRegistry;
+import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.cache.request.ShardRequestCache;
 import org.elasticsearch.index.engine.CommitStats;
 import org.elasticsearch.index.engine.EngineFactory;
@@ -100,6 +103,8 @@ import org.elasticsearch.index.get.GetStats;
 import org.elasticsearch.index.mapper.IdFieldMapper;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.merge.NodeMergeScheduler;
+import org.elasticsearch.index.merge.NodeMergeStats;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.recovery.RecoveryStats;
@@ -115,6 +120,8 @@ import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.IndexingOperationListener;
 import org.elasticsearch.index.shard.IndexingStats;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.TranslogSyncCoordinator;
+import org.elasticsearch.index.translog.TranslogSyncStats;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
@@ -126,6 +133,9 @@ import org.elasticsearch.plugins.IndexStorePlugin;
 import org.elasticsearch.plugins.PluginsService;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.SegmentAggregationCache;
 import org.elasticsearch.search.aggregations.support.ValuesSourceRegistry;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.SearchContext;
@@ -213,8 +223,11 @@ public class IndicesService extends AbstractLifecycleComponent
     private final MapperRegistry mapperRegistry;
     private final NamedWriteableRegistry namedWriteableRegistry;
     private final IndexingMemoryController indexingMemoryController;
+    private final TranslogSyncCoordinator translogSyncCoordinator;
+    private final NodeMergeScheduler nodeMergeScheduler;
     private final TimeValue cleanInterval;
     final IndicesRequestCache indicesRequestCache; // pkg-private for testing
+    final IndicesSegmentAggregationCache indicesSegmentAggregationCache; // pkg-private for testing
     private final IndicesQueryCache indicesQueryCache;
     private final MetaStateService metaStateService;
     private final Collection<Function<IndexSettings, Optional<EngineFactory>>> engineFactoryProviders;
@@ -262,10 +275,15 @@ public class IndicesService extends AbstractLifecycleComponent
                                                                 () -> Iterables.flatten(this).iterator());
         this.indexScopedSettings = indexScopedSettings;
         this.circuitBreakerService = circuitBreakerService;
+        this.indicesSegmentAggregationCache =
+            new IndicesSegmentAggregationCache(settings, circuitBreakerService.getBreaker(CircuitBreaker.ACCOUNTING));
         this.bigArrays = bigArrays;
         this.scriptService = scriptService;
         this.clusterService = clusterService;
         this.client = client;
+        this.translogSyncCoordinator = new TranslogSyncCoordinator(settings, clusterService.getClusterSettings(), threadPool);
+        this.nodeMergeScheduler = new NodeMergeScheduler(settings, clusterService.getClusterSettings(),
+            nodeEnv.hasNodeFile() ? nodeEnv.nodeDataPaths().length : 1);
         this.idFieldDataEnabled = INDICES_ID_FIELD_DATA_ENABLED_SETTING.get(clusterService.getSettings());
         clusterService.getClusterSettings().addSettingsUpdateConsumer(INDICES_ID_FIELD_DATA_ENABLED_SETTING, this::setIdFieldDataEnabled);
         this.indicesFieldDataCache = new IndicesFieldDataCache(settings, new IndexFieldDataCache.Listener() {
@@ -304,6 +322,7 @@ public class IndicesService extends AbstractLifecycleComponent
                             indicesFieldDataCache,
                             cacheCleaner,
                             indicesRequestCache,
+                            indicesSegmentAggregationCache,
                             indicesQueryCache);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
@@ -401,6 +420,9 @@ public class IndicesService extends AbstractLifecycleComponent
                 case Flush:
                     commonStats.flush.add(oldShardsStats.flushStats);
                     break;
+                case QueryCache:
+                    commonStats.queryCache.add(new QueryCacheStats(indicesQueryCache.getStatsByQueryType()));
+                    break;
             }
         }
 
@@ -654,7 +676,9 @@ public class IndicesService extends AbstractLifecycleComponent
                 indicesFieldDataCache,
                 namedWriteableRegistry,
                 this::isIdFieldDataEnabled,
-                valuesSourceRegistry
+                valuesSourceRegistry,
+                translogSyncCoordinator,
+                nodeMergeScheduler
         );
     }
 
@@ -1403,10 +1427,84 @@ public class IndicesService extends AbstractLifecycleComponent
         }
     }
 
+    /**
+     * Can the aggregation results of the shard request be cached per segment? This requires the same conditions as the
+     * shard level cache, except for the size of the request since hits are still collected, and aggregations that
+     * {@link AggregatorFactories.Builder#supportsSegmentLevelResults() support it}.
+     */
+    public boolean canCacheSegmentAggregations(ShardSearchRequest request, SearchContext context) {
+        if (context.aggregations() == null || request.source() == null || request.source().aggregations() == null) {
+            return false;
+        }
+        if (context.indexShard().indexSettings().getValue(
+                IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING) == false) {
+            return false;
+        }
+        if (request.requestCache() != null && request.requestCache() == false) {
+            return false;
+        }
+        if (request.scroll() != null || SearchType.QUERY_THEN_FETCH != context.searchType() || request.source().profile()) {
+            return false;
+        }
+        // an early terminated search leaves the results of the last collected segment partial
+        if (context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return false;
+        }
+        if (context.getQueryShardContext().isCacheable() == false) {
+            return false;
+        }
+        return request.source().aggregations().supportsSegmentLevelResults();
+    }
+
+    /**
+     * Returns the cache of the aggregation results of the shard request per segment.
+     */
+    public SegmentAggregationCache segmentAggregationCache(ShardSearchRequest request, SearchContext context) throws IOException {
+        assert canCacheSegmentAggregations(request, context);
+        final IndexShard shard = context.indexShard();
+        final BytesReference requestKey = request.cacheKey();
+        return new SegmentAggregationCache() {
+            @Override
+            public InternalAggregations get(LeafReaderContext segment) throws IOException {
+                final BytesReference bytes = indicesSegmentAggregationCache.get(shard, segment.reader(), requestKey);
+                if (bytes == null) {
+                    return null;
+                }
+                try (StreamInput in = new NamedWriteableAwareStreamInput(bytes.streamInput(), namedWriteableRegistry)) {
+                    return new InternalAggregations(in);
+                }
+            }
+
+            @Override
+            public void put(LeafReaderContext segment, InternalAggregations aggregations) throws IOException {
+                try (BytesStreamOutput out = new BytesStreamOutput(512)) {
+                    aggregations.writeTo(out);
+                    // copy the bytes over so that the cache does not hold on to unused bytes of a page
+                    indicesSegmentAggregationCache.put(shard, segment.reader(), requestKey,
+                        new BytesArray(out.bytes().toBytesRef(), true));
+                }
+            }
+        };
+    }
+
     public ByteSizeValue getTotalIndexingBufferBytes() {
         return indexingMemoryController.indexingBufferSize();
     }
 
+    /**
+     * Returns the statistics of the node-wide translog group commit
+     */
+    public TranslogSyncStats getTranslogSyncStats() {
+        return translogSyncCoordinator.stats();
+    }
+
+    /**
+     * Returns the statistics of the node-level merge scheduler
+     */
+    public NodeMergeStats getNodeMergeStats() {
+        return nodeMergeScheduler.stats();
+    }
+
     /**
      * Cache something calculated at the shard level.
      * @param shard the shard this item is part of
@@ -1509,6 +1607,7 @@ public class IndicesService extends AbstractLifecycleComponent
             final boolean clearedAtLeastOne = service.clearCaches(queryCache, fieldDataCache, fields);
             if ((requestCache || (clearedAtLeastOne == false && fields.length == 0)) && shard != null) {
                 indicesRequestCache.clear(new IndexShardCacheEntity(shard));
+                indicesSegmentAggregationCache.clear(shard);
             }
         }
     }
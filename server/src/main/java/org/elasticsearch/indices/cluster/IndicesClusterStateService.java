@@ -72,6 +72,7 @@ import org.elasticsearch.indices.recovery.PeerRecoverySourceService;
 import org.elasticsearch.indices.recovery.PeerRecoveryTargetService;
 import org.elasticsearch.indices.recovery.RecoveryFailedException;
 import org.elasticsearch.indices.recovery.RecoveryState;
+import org.elasticsearch.indices.replication.SegmentReplicationService;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.snapshots.SnapshotShardsService;
@@ -136,6 +137,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
             final SearchService searchService,
             final PeerRecoverySourceService peerRecoverySourceService,
             final SnapshotShardsService snapshotShardsService,
+            final SegmentReplicationService segmentReplicationService,
             final PrimaryReplicaSyncer primaryReplicaSyncer,
             final RetentionLeaseSyncer retentionLeaseSyncer,
             final NodeClient client) {
@@ -151,6 +153,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
                 searchService,
                 peerRecoverySourceService,
                 snapshotShardsService,
+                segmentReplicationService,
                 primaryReplicaSyncer,
                 retentionLeaseSyncer,
                 client);
@@ -169,11 +172,13 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
             final SearchService searchService,
             final PeerRecoverySourceService peerRecoverySourceService,
             final SnapshotShardsService snapshotShardsService,
+            final SegmentReplicationService segmentReplicationService,
             final PrimaryReplicaSyncer primaryReplicaSyncer,
             final RetentionLeaseSyncer retentionLeaseSyncer,
             final NodeClient client) {
         this.settings = settings;
-        this.buildInIndexListener = Arrays.asList(peerRecoverySourceService, recoveryTargetService, searchService, snapshotShardsService);
+        this.buildInIndexListener = Arrays.asList(peerRecoverySourceService, recoveryTargetService, searchService, snapshotShardsService,
+            segmentReplicationService);
         this.indicesService = indicesService;
         this.clusterService = clusterService;
         this.threadPool = threadPool;
@@ -53,6 +53,7 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.CancellableThreads;
 import org.elasticsearch.common.util.concurrent.FutureUtils;
 import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.RecoveryEngineException;
 import org.elasticsearch.index.seqno.ReplicationTracker;
@@ -79,6 +80,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -923,10 +925,13 @@ public class RecoverySourceHandler {
         assert Transports.assertNotTransportThread(RecoverySourceHandler.this + "[handle error on send/clean files]");
         if (corruptIndexException != null) {
             Exception localException = null;
+            cancellableThreads.checkForCancel();
+            logger.debug("checking integrity for files {} after remove corruption exception", Arrays.toString(mds));
+            final Map<String, IOException> failures = Store.checkIntegrity(Arrays.asList(mds), store.directory(), threadPool.generic(),
+                store.indexSettings().getValue(IndexSettings.INDEX_VERIFY_CHECKSUMS_MAX_CONCURRENT_FILES_SETTING));
+            cancellableThreads.checkForCancel();
             for (StoreFileMetadata md : mds) {
-                cancellableThreads.checkForCancel();
-                logger.debug("checking integrity for file {} after remove corruption exception", md);
-                if (store.checkIntegrityNoException(md) == false) { // we are corrupted on the primary -- fail!
+                if (failures.containsKey(md.name())) { // we are corrupted on the primary -- fail!
                     logger.warn("{} Corrupted file detected {} checksum mismatch", shardId, md);
                     if (localException == null) {
                         localException = corruptIndexException;
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+
+/**
+ * Sent by a primary to its replicas after a refresh made new segments visible.
+ */
+final class PublishSegmentsRequest extends TransportRequest {
+
+    private final ShardId shardId;
+    private final long segmentInfosVersion;
+
+    PublishSegmentsRequest(ShardId shardId, long segmentInfosVersion) {
+        this.shardId = shardId;
+        this.segmentInfosVersion = segmentInfosVersion;
+    }
+
+    PublishSegmentsRequest(StreamInput in) throws IOException {
+        super(in);
+        shardId = new ShardId(in);
+        segmentInfosVersion = in.readLong();
+    }
+
+    public ShardId shardId() {
+        return shardId;
+    }
+
+    public long segmentInfosVersion() {
+        return segmentInfosVersion;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        shardId.writeTo(out);
+        out.writeLong(segmentInfosVersion);
+    }
+}
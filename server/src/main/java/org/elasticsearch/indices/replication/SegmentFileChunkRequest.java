@@ -0,0 +1,85 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+
+/**
+ * Requests a chunk of a file of the segments that a replica copies from its primary.
+ */
+final class SegmentFileChunkRequest extends TransportRequest {
+
+    private final ShardId shardId;
+    private final String sessionId;
+    private final String fileName;
+    private final long offset;
+    private final int length;
+
+    SegmentFileChunkRequest(ShardId shardId, String sessionId, String fileName, long offset, int length) {
+        this.shardId = shardId;
+        this.sessionId = sessionId;
+        this.fileName = fileName;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    SegmentFileChunkRequest(StreamInput in) throws IOException {
+        super(in);
+        shardId = new ShardId(in);
+        sessionId = in.readString();
+        fileName = in.readString();
+        offset = in.readVLong();
+        length = in.readVInt();
+    }
+
+    public ShardId shardId() {
+        return shardId;
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        shardId.writeTo(out);
+        out.writeString(sessionId);
+        out.writeString(fileName);
+        out.writeVLong(offset);
+        out.writeVInt(length);
+    }
+}
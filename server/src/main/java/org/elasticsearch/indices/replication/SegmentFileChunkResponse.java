@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.TransportResponse;
+
+import java.io.IOException;
+
+final class SegmentFileChunkResponse extends TransportResponse {
+
+    private final long offset;
+    private final BytesReference chunk;
+
+    SegmentFileChunkResponse(long offset, BytesReference chunk) {
+        this.offset = offset;
+        this.chunk = chunk;
+    }
+
+    SegmentFileChunkResponse(StreamInput in) throws IOException {
+        super(in);
+        offset = in.readVLong();
+        chunk = in.readBytesReference();
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public BytesReference chunk() {
+        return chunk;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(offset);
+        out.writeBytesReference(chunk);
+    }
+}
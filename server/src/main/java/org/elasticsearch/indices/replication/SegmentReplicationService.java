@@ -0,0 +1,688 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.BufferedChecksumIndexInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RateLimiter;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionListenerResponseHandler;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lucene.store.ByteArrayIndexInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.SegmentReplicaEngine;
+import org.elasticsearch.index.shard.IndexEventListener;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.recovery.MultiFileTransfer;
+import org.elasticsearch.indices.recovery.MultiFileWriter;
+import org.elasticsearch.indices.recovery.RecoverySettings;
+import org.elasticsearch.indices.recovery.RecoveryState;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.EmptyTransportResponseHandler;
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.TransportResponse;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Replicates the segments of the primaries of the indices that use segment replication to their replicas. After each refresh a
+ * primary publishes the version of its segments to its replicas, which then copy the files that they are missing from the
+ * primary and install the copied segments, see {@link SegmentReplicaEngine}. A replica copies at most once at a time, and
+ * copies the latest segments of the primary again if newer segments were published in the meantime.
+ */
+public class SegmentReplicationService implements IndexEventListener, ClusterStateListener {
+
+    private static final Logger logger = LogManager.getLogger(SegmentReplicationService.class);
+
+    public static class Actions {
+        public static final String PUBLISH_SEGMENTS = "internal:index/shard/replication/publish_segments";
+        public static final String START_COPY = "internal:index/shard/replication/start_copy";
+        public static final String FILE_CHUNK = "internal:index/shard/replication/file_chunk";
+        public static final String CLOSE_COPY = "internal:index/shard/replication/close_copy";
+    }
+
+    private static final long UNKNOWN_VERSION = -1L;
+
+    private final TransportService transportService;
+    private final IndicesService indicesService;
+    private final ClusterService clusterService;
+    private final RecoverySettings recoverySettings;
+    private final ThreadPool threadPool;
+
+    // the segments that the replicas are copying from the primaries of this node, by session id
+    private final ConcurrentMap<String, CopySession> sessions = ConcurrentCollections.newConcurrentMap();
+    // the copies of the replicas of this node
+    private final ConcurrentMap<ShardId, ReplicaCopyState> replicas = ConcurrentCollections.newConcurrentMap();
+
+    public SegmentReplicationService(TransportService transportService, IndicesService indicesService, ClusterService clusterService,
+                                     RecoverySettings recoverySettings) {
+        this.transportService = transportService;
+        this.indicesService = indicesService;
+        this.clusterService = clusterService;
+        this.recoverySettings = recoverySettings;
+        this.threadPool = transportService.getThreadPool();
+        transportService.registerRequestHandler(Actions.PUBLISH_SEGMENTS, ThreadPool.Names.GENERIC, PublishSegmentsRequest::new,
+            (request, channel, task) -> {
+                onSegmentsPublished(request);
+                channel.sendResponse(TransportResponse.Empty.INSTANCE);
+            });
+        transportService.registerRequestHandler(Actions.START_COPY, ThreadPool.Names.GENERIC, StartSegmentCopyRequest::new,
+            (request, channel, task) -> channel.sendResponse(startCopy(request)));
+        transportService.registerRequestHandler(Actions.FILE_CHUNK, ThreadPool.Names.GENERIC, SegmentFileChunkRequest::new,
+            (request, channel, task) -> channel.sendResponse(readFileChunk(request)));
+        transportService.registerRequestHandler(Actions.CLOSE_COPY, ThreadPool.Names.GENERIC, CloseSegmentCopyRequest::new,
+            (request, channel, task) -> {
+                closeSession(request.sessionId());
+                channel.sendResponse(TransportResponse.Empty.INSTANCE);
+            });
+        clusterService.addListener(this);
+    }
+
+    @Override
+    public void afterIndexShardRefreshed(IndexShard indexShard) {
+        final long version;
+        try (Engine.SegmentInfosRef segmentInfosRef = indexShard.acquireLastRefreshedSegmentInfos()) {
+            version = segmentInfosRef.getSegmentInfos().getVersion();
+        } catch (Exception e) {
+            logger.trace(() -> new ParameterizedMessage("{} not publishing segments", indexShard.shardId()), e);
+            return;
+        }
+        final ShardId shardId = indexShard.shardId();
+        final ClusterState state = clusterService.state();
+        final IndexShardRoutingTable shardRoutingTable = shardRoutingTable(state, shardId);
+        if (shardRoutingTable == null) {
+            return;
+        }
+        for (ShardRouting replica : shardRoutingTable.replicaShards()) {
+            final DiscoveryNode node = replica.assignedToNode() ? state.nodes().get(replica.currentNodeId()) : null;
+            if (node != null) {
+                transportService.sendRequest(node, Actions.PUBLISH_SEGMENTS, new PublishSegmentsRequest(shardId, version),
+                    new ActionListenerResponseHandler<>(ActionListener.wrap(r -> {}, e -> logger.debug(() ->
+                        new ParameterizedMessage("{} failed to publish segments to {}", shardId, replica), e)),
+                        in -> TransportResponse.Empty.INSTANCE, ThreadPool.Names.SAME));
+            }
+        }
+    }
+
+    @Override
+    public void afterIndexShardStarted(IndexShard indexShard) {
+        if (indexShard.indexSettings().isSegmentReplication() && indexShard.routingEntry().primary() == false) {
+            // catch up with the segments that the primary refreshed while this replica was recovering
+            maybeCopySegments(indexShard, UNKNOWN_VERSION);
+        }
+    }
+
+    @Override
+    public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+        replicas.remove(shardId);
+        for (CopySession session : sessions.values()) {
+            if (session.indexShard.shardId().equals(shardId)) {
+                closeSession(session.sessionId);
+            }
+        }
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.routingTableChanged() && sessions.isEmpty() == false) {
+            // release the segments of the copies whose replica is gone
+            for (CopySession session : sessions.values()) {
+                final IndexShardRoutingTable shardRoutingTable = shardRoutingTable(event.state(), session.indexShard.shardId());
+                if (shardRoutingTable == null || shardRoutingTable.getByAllocationId(session.targetAllocationId) == null) {
+                    closeSession(session.sessionId);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static IndexShardRoutingTable shardRoutingTable(ClusterState state, ShardId shardId) {
+        final IndexRoutingTable indexRoutingTable = state.routingTable().index(shardId.getIndex());
+        return indexRoutingTable == null ? null : indexRoutingTable.shard(shardId.id());
+    }
+
+    private IndexShard getShard(ShardId shardId) {
+        return indicesService.indexServiceSafe(shardId.getIndex()).getShard(shardId.id());
+    }
+
+    // exposed for testing
+    int numberOfOngoingCopies() {
+        return sessions.size();
+    }
+
+    // primary side
+
+    private StartSegmentCopyResponse startCopy(StartSegmentCopyRequest request) throws IOException {
+        final IndexShard indexShard = getShard(request.shardId());
+        final ShardRouting routingEntry = indexShard.routingEntry();
+        if (routingEntry.primary() == false || routingEntry.active() == false) {
+            throw new IllegalStateException("shard [" + routingEntry + "] is not an active primary");
+        }
+        final Engine.SegmentInfosRef segmentInfosRef = indexShard.acquireLastRefreshedSegmentInfos();
+        boolean success = false;
+        try {
+            final SegmentInfos segmentInfos = segmentInfosRef.getSegmentInfos();
+            final Store.MetadataSnapshot metadata = indexShard.store().getSegmentsMetadata(segmentInfos);
+            final ByteBuffersDataOutput buffer = new ByteBuffersDataOutput();
+            try (ByteBuffersIndexOutput output = new ByteBuffersIndexOutput(buffer, "segment infos", "segment infos")) {
+                segmentInfos.write(indexShard.store().directory(), output);
+            }
+            final CopySession session = new CopySession(UUIDs.randomBase64UUID(), indexShard, request.targetAllocationId(),
+                segmentInfosRef, metadata.asMap().keySet());
+            sessions.put(session.sessionId, session);
+            success = true;
+            logger.trace("{} started copy [{}] of segments with version [{}] to [{}]", indexShard.shardId(), session.sessionId,
+                segmentInfos.getVersion(), request.targetAllocationId());
+            return new StartSegmentCopyResponse(session.sessionId, segmentInfos.getGeneration(),
+                new BytesArray(buffer.toArrayCopy()), metadata);
+        } finally {
+            if (success == false) {
+                IOUtils.close(segmentInfosRef);
+            }
+        }
+    }
+
+    private SegmentFileChunkResponse readFileChunk(SegmentFileChunkRequest request) throws IOException {
+        final CopySession session = sessions.get(request.sessionId());
+        if (session == null) {
+            throw new IllegalStateException("copy [" + request.sessionId() + "] of shard " + request.shardId() + " is not running");
+        }
+        return new SegmentFileChunkResponse(request.offset(), session.readFileChunk(request.fileName(), request.offset(),
+            request.length()));
+    }
+
+    private void closeSession(String sessionId) {
+        final CopySession session = sessions.remove(sessionId);
+        if (session != null) {
+            try {
+                session.close();
+            } catch (Exception e) {
+                logger.warn(() -> new ParameterizedMessage("{} failed to close copy [{}]", session.indexShard.shardId(), sessionId), e);
+            }
+        }
+    }
+
+    /**
+     * The segments of a primary that a replica is copying, retained until the replica is done with them.
+     */
+    private static final class CopySession implements Closeable {
+
+        private final String sessionId;
+        private final IndexShard indexShard;
+        private final String targetAllocationId;
+        private final Engine.SegmentInfosRef segmentInfosRef;
+        private final Set<String> files;
+        private final Store store;
+        // guarded by this
+        private final Map<String, IndexInput> openInputs = new HashMap<>();
+        private boolean closed;
+
+        CopySession(String sessionId, IndexShard indexShard, String targetAllocationId, Engine.SegmentInfosRef segmentInfosRef,
+                    Set<String> files) {
+            this.sessionId = sessionId;
+            this.indexShard = indexShard;
+            this.targetAllocationId = targetAllocationId;
+            this.segmentInfosRef = segmentInfosRef;
+            this.files = files;
+            this.store = indexShard.store();
+            store.incRef();
+        }
+
+        synchronized BytesReference readFileChunk(String fileName, long offset, int length) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("copy [" + sessionId + "] is closed");
+            }
+            if (files.contains(fileName) == false) {
+                throw new IllegalArgumentException("file [" + fileName + "] is not part of copy [" + sessionId + "]");
+            }
+            IndexInput input = openInputs.get(fileName);
+            if (input == null) {
+                input = store.directory().openInput(fileName, IOContext.READ);
+                openInputs.put(fileName, input);
+            }
+            final byte[] bytes = new byte[length];
+            input.seek(offset);
+            input.readBytes(bytes, 0, length);
+            if (offset + length >= input.length()) {
+                // the replica is done with this file
+                openInputs.remove(fileName).close();
+            }
+            return new BytesArray(bytes);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed == false) {
+                closed = true;
+                try {
+                    IOUtils.close(openInputs.values());
+                } finally {
+                    IOUtils.close(segmentInfosRef, store::decRef);
+                }
+            }
+        }
+    }
+
+    // replica side
+
+    private void onSegmentsPublished(PublishSegmentsRequest request) {
+        final IndexService indexService = indicesService.indexService(request.shardId().getIndex());
+        final IndexShard indexShard = indexService == null ? null : indexService.getShardOrNull(request.shardId().id());
+        if (indexShard != null && indexShard.state() == IndexShardState.STARTED && indexShard.routingEntry().primary() == false) {
+            maybeCopySegments(indexShard, request.segmentInfosVersion());
+        }
+    }
+
+    private void maybeCopySegments(IndexShard indexShard, long version) {
+        final ReplicaCopyState copyState = replicas.computeIfAbsent(indexShard.shardId(), k -> new ReplicaCopyState());
+        synchronized (copyState) {
+            if (version != UNKNOWN_VERSION && version == copyState.installedVersion) {
+                return;
+            }
+            if (copyState.copying) {
+                copyState.copyRequested = true;
+                return;
+            }
+            copyState.copying = true;
+        }
+        threadPool.generic().execute(() -> copySegments(indexShard, copyState));
+    }
+
+    private void copySegments(IndexShard indexShard, ReplicaCopyState copyState) {
+        final ShardId shardId = indexShard.shardId();
+        copySegments(indexShard, copyState, ActionListener.wrap(version -> {
+            logger.trace("{} installed segments with version [{}]", shardId, version);
+            onCopyDone(indexShard, copyState, version);
+        }, e -> {
+            if (indexShard.state() != IndexShardState.CLOSED) {
+                logger.debug(() -> new ParameterizedMessage("{} failed to copy segments from the primary", shardId), e);
+            }
+            onCopyDone(indexShard, copyState, copyState.installedVersion);
+        }));
+    }
+
+    private void onCopyDone(IndexShard indexShard, ReplicaCopyState copyState, long installedVersion) {
+        synchronized (copyState) {
+            copyState.installedVersion = installedVersion;
+            if (copyState.copyRequested == false || replicas.get(indexShard.shardId()) != copyState) {
+                copyState.copying = false;
+                return;
+            }
+            copyState.copyRequested = false;
+        }
+        threadPool.generic().execute(() -> copySegments(indexShard, copyState));
+    }
+
+    private void copySegments(IndexShard indexShard, ReplicaCopyState copyState, ActionListener<Long> listener) {
+        final ShardId shardId = indexShard.shardId();
+        final ClusterState state = clusterService.state();
+        final IndexShardRoutingTable shardRoutingTable = shardRoutingTable(state, shardId);
+        final ShardRouting primary = shardRoutingTable == null ? null : shardRoutingTable.primaryShard();
+        final DiscoveryNode primaryNode = primary != null && primary.active() ? state.nodes().get(primary.currentNodeId()) : null;
+        if (primaryNode == null) {
+            listener.onFailure(new IllegalStateException("no active primary to copy segments from for " + shardId));
+            return;
+        }
+        transportService.sendRequest(primaryNode, Actions.START_COPY,
+            new StartSegmentCopyRequest(shardId, indexShard.routingEntry().allocationId().getId()), requestOptions(),
+            new ActionListenerResponseHandler<>(ActionListener.wrap(response -> {
+                final ActionListener<Long> closeSessionListener = ActionListener.runAfter(listener,
+                    () -> transportService.sendRequest(primaryNode, Actions.CLOSE_COPY,
+                        new CloseSegmentCopyRequest(shardId, response.sessionId()), requestOptions(),
+                        EmptyTransportResponseHandler.INSTANCE_SAME));
+                try {
+                    copyFiles(indexShard, copyState, primaryNode, response, closeSessionListener);
+                } catch (Exception e) {
+                    closeSessionListener.onFailure(e);
+                }
+            }, listener::onFailure), StartSegmentCopyResponse::new, ThreadPool.Names.GENERIC));
+    }
+
+    private void copyFiles(IndexShard indexShard, ReplicaCopyState copyState, DiscoveryNode primaryNode,
+                           StartSegmentCopyResponse response, ActionListener<Long> listener) throws IOException {
+        final ShardId shardId = indexShard.shardId();
+        final Store store = indexShard.store();
+        final CopyPlan plan = planCopy(response.metadataSnapshot(), indexShard.snapshotStoreMetadata(),
+            new HashSet<>(Arrays.asList(store.directory().listAll())), copyState.renamedSegments);
+        final List<StoreFileMetadata> filesToCopy = plan.filesToCopy;
+        final RecoveryState.Index index = new RecoveryState.Index();
+        for (StoreFileMetadata md : filesToCopy) {
+            index.addFileDetail(plan.localFileNames.get(md.name()), md.length(), false);
+        }
+        logger.trace("{} copying [{}] files of copy [{}], reusing [{}] files, renaming segments {}", shardId, filesToCopy.size(),
+            response.sessionId(), plan.reusedFiles, plan.renamedSegments);
+
+        final MultiFileWriter multiFileWriter = new MultiFileWriter(store, index, "replication." + UUIDs.randomBase64UUID() + ".",
+            logger, () -> {});
+        final ActionListener<Void> filesListener = ActionListener.runAfter(ActionListener.wrap(ignored -> {
+            // the copied files never replace existing files, see planCopy
+            multiFileWriter.renameAllTempFiles();
+            final SegmentInfos segmentInfos = readSegmentInfos(store.directory(), response.segmentInfos(),
+                response.segmentInfosGeneration(), plan.renamedSegments);
+            indexShard.installSegments(segmentInfos);
+            synchronized (copyState) {
+                copyState.renamedSegments = plan.renamedSegments;
+            }
+            listener.onResponse(segmentInfos.getVersion());
+        }, listener::onFailure), multiFileWriter::close);
+
+        final MultiFileTransfer<FileChunk> transfer = new MultiFileTransfer<>(logger, threadPool.getThreadContext(), filesListener,
+            recoverySettings.getMaxConcurrentFileChunks(), filesToCopy) {
+
+            long offset = 0;
+
+            @Override
+            protected void onNewFile(StoreFileMetadata md) {
+                offset = 0;
+            }
+
+            @Override
+            protected FileChunk nextChunkRequest(StoreFileMetadata md) {
+                final int length = Math.toIntExact(Math.min(recoverySettings.getChunkSize().getBytes(), md.length() - offset));
+                final FileChunk chunk = new FileChunk(md, offset, length, offset + length == md.length());
+                offset += length;
+                return chunk;
+            }
+
+            @Override
+            protected void executeChunkRequest(FileChunk request, ActionListener<Void> listener) {
+                transportService.sendRequest(primaryNode, Actions.FILE_CHUNK,
+                    new SegmentFileChunkRequest(shardId, response.sessionId(), request.md.name(), request.offset, request.length),
+                    requestOptions(), new ActionListenerResponseHandler<>(ActionListener.wrap(r -> {
+                        final StoreFileMetadata md = request.md;
+                        writeFileChunk(new StoreFileMetadata(plan.localFileNames.get(md.name()), md.length(), md.checksum(),
+                            md.writtenBy(), md.hash()), r);
+                        listener.onResponse(null);
+                    }, listener::onFailure), SegmentFileChunkResponse::new, ThreadPool.Names.GENERIC));
+            }
+
+            private void writeFileChunk(StoreFileMetadata md, SegmentFileChunkResponse r) throws Exception {
+                final RateLimiter rateLimiter = recoverySettings.rateLimiter();
+                if (rateLimiter != null) {
+                    rateLimiter.pause(r.chunk().length());
+                }
+                multiFileWriter.incRef();
+                try (Releasable ignored = multiFileWriter::decRef) {
+                    final boolean lastChunk = r.offset() + r.chunk().length() >= md.length();
+                    multiFileWriter.writeFileChunk(md, r.offset(), r.chunk(), lastChunk);
+                } catch (Exception e) {
+                    handleError(md, e);
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void handleError(StoreFileMetadata md, Exception e) throws Exception {
+                final IOException corruptIndexException;
+                if ((corruptIndexException = ExceptionsHelper.unwrapCorruption(e)) != null) {
+                    try {
+                        store.markStoreCorrupted(corruptIndexException);
+                    } catch (IOException ioe) {
+                        logger.warn("store cannot be marked as corrupted", e);
+                    }
+                    throw corruptIndexException;
+                }
+                throw e;
+            }
+
+            @Override
+            public void close() {
+                // the writer is closed once the copied files are renamed
+            }
+        };
+        transfer.start();
+    }
+
+    /**
+     * Plans the copy of the files of the segments of a primary, described by {@code primaryMetadata}, to the store of a replica.
+     * Files of the last commit of the replica that are identical to the files of the primary are reused, the other files are
+     * copied. A copied file never replaces an existing file of the replica since that file may belong to the segments that the
+     * replica searches, to its last commit or to an acquired commit, for instance if the replica and the primary wrote segments
+     * with the same name before. The segments that have such conflicting files are copied as a whole into files named after
+     * a fresh segment name instead, and the segment is renamed accordingly when it is installed, see {@link #readSegmentInfos}.
+     *
+     * @param replicaFiles     all the files of the directory of the replica
+     * @param renamedSegments  the local names of the segments that were renamed by the previous copy, by primary segment name
+     */
+    static CopyPlan planCopy(Store.MetadataSnapshot primaryMetadata, Store.MetadataSnapshot replicaMetadata, Set<String> replicaFiles,
+                             Map<String, String> renamedSegments) {
+        final Map<String, List<StoreFileMetadata>> primarySegments = new TreeMap<>();
+        for (StoreFileMetadata md : primaryMetadata) {
+            primarySegments.computeIfAbsent(IndexFileNames.parseSegmentName(md.name()), k -> new ArrayList<>()).add(md);
+        }
+        final Set<String> usedSegmentNames = new HashSet<>(primarySegments.keySet());
+        for (String file : replicaFiles) {
+            if (IndexFileNames.CODEC_FILE_PATTERN.matcher(file).matches()) {
+                usedSegmentNames.add(IndexFileNames.parseSegmentName(file));
+            }
+        }
+        long nextSegment = 0;
+        for (String segmentName : usedSegmentNames) {
+            nextSegment = Math.max(nextSegment, Long.parseLong(segmentName.substring(1), Character.MAX_RADIX) + 1);
+        }
+
+        final List<StoreFileMetadata> filesToCopy = new ArrayList<>();
+        final Map<String, String> localFileNames = new HashMap<>();
+        final Map<String, String> newRenamedSegments = new HashMap<>();
+        int reusedFiles = 0;
+        for (Map.Entry<String, List<StoreFileMetadata>> segment : primarySegments.entrySet()) {
+            final String segmentName = segment.getKey();
+            String localSegmentName = segmentName;
+            final String renamed = renamedSegments.get(segmentName);
+            if (renamed != null && isSameSegment(segment.getValue(), replicaMetadata, renamed)) {
+                // the replica already has a renamed copy of this segment, the primary may have written new deletes since then
+                localSegmentName = renamed;
+            }
+            final List<StoreFileMetadata> segmentFilesToCopy = new ArrayList<>();
+            boolean conflict = false;
+            for (StoreFileMetadata md : segment.getValue()) {
+                final String localFileName = localFileName(md.name(), segmentName, localSegmentName);
+                final StoreFileMetadata localMetadata = replicaMetadata.get(localFileName);
+                if (localMetadata != null && localMetadata.isSame(md)) {
+                    reusedFiles++;
+                } else {
+                    segmentFilesToCopy.add(md);
+                    conflict |= replicaFiles.contains(localFileName);
+                }
+            }
+            if (conflict) {
+                do {
+                    localSegmentName = "_" + Long.toString(nextSegment++, Character.MAX_RADIX);
+                } while (usedSegmentNames.contains(localSegmentName));
+                usedSegmentNames.add(localSegmentName);
+                reusedFiles -= segment.getValue().size() - segmentFilesToCopy.size();
+                segmentFilesToCopy.clear();
+                segmentFilesToCopy.addAll(segment.getValue());
+            }
+            if (localSegmentName.equals(segmentName) == false) {
+                newRenamedSegments.put(segmentName, localSegmentName);
+            }
+            for (StoreFileMetadata md : segmentFilesToCopy) {
+                filesToCopy.add(md);
+                localFileNames.put(md.name(), localFileName(md.name(), segmentName, localSegmentName));
+            }
+        }
+        return new CopyPlan(filesToCopy, localFileNames, newRenamedSegments, reusedFiles);
+    }
+
+    private static boolean isSameSegment(List<StoreFileMetadata> segmentFiles, Store.MetadataSnapshot replicaMetadata,
+                                         String localSegmentName) {
+        // the segment info file identifies the segment, its hash is compared too
+        for (StoreFileMetadata md : segmentFiles) {
+            if (IndexFileNames.matchesExtension(md.name(), "si")) {
+                final StoreFileMetadata localMetadata = replicaMetadata.get(localSegmentName + ".si");
+                return localMetadata != null && localMetadata.isSame(md);
+            }
+        }
+        return false;
+    }
+
+    private static String localFileName(String fileName, String segmentName, String localSegmentName) {
+        assert fileName.startsWith(segmentName) : fileName + " is not a file of segment " + segmentName;
+        return localSegmentName + fileName.substring(segmentName.length());
+    }
+
+    /**
+     * Reads the segments of a primary whose files have been copied to the given directory. The segments that were renamed
+     * by the copy, see {@link #planCopy}, are read from the files of their local copy and renamed after their local name:
+     * only the names of the files of a segment depend on the segment name, the files themselves are identified by the id of the
+     * segment.
+     */
+    static SegmentInfos readSegmentInfos(Directory directory, BytesReference segmentInfosBytes, long generation,
+                                         Map<String, String> renamedSegments) throws IOException {
+        final Directory localDirectory = renamedSegments.isEmpty() ? directory : new FilterDirectory(directory) {
+            @Override
+            public IndexInput openInput(String name, IOContext context) throws IOException {
+                final String segmentName = IndexFileNames.parseSegmentName(name);
+                final String localSegmentName = renamedSegments.get(segmentName);
+                return super.openInput(localSegmentName == null ? name : localFileName(name, segmentName, localSegmentName), context);
+            }
+        };
+        final BytesRef bytes = segmentInfosBytes.toBytesRef();
+        final SegmentInfos segmentInfos;
+        try (ChecksumIndexInput input = new BufferedChecksumIndexInput(
+                new ByteArrayIndexInput("segment infos", bytes.bytes, bytes.offset, bytes.length))) {
+            segmentInfos = SegmentInfos.readCommit(localDirectory, input, generation);
+        }
+        if (renamedSegments.isEmpty()) {
+            return segmentInfos;
+        }
+        final List<SegmentCommitInfo> localInfos = new ArrayList<>(segmentInfos.size());
+        for (SegmentCommitInfo info : segmentInfos) {
+            final SegmentInfo si = info.info;
+            final String localSegmentName = renamedSegments.getOrDefault(si.name, si.name);
+            final SegmentInfo localSi = new SegmentInfo(directory, si.getVersion(), si.getMinVersion(), localSegmentName, si.maxDoc(),
+                si.getUseCompoundFile(), si.getCodec(), si.getDiagnostics(), si.getId(), si.getAttributes(), si.getIndexSort());
+            // the files are renamed after the name of the segment
+            localSi.setFiles(si.files());
+            final SegmentCommitInfo localInfo = new SegmentCommitInfo(localSi, info.getDelCount(), info.getSoftDelCount(),
+                info.getDelGen(), info.getFieldInfosGen(), info.getDocValuesGen());
+            localInfo.setFieldInfosFiles(info.getFieldInfosFiles());
+            localInfo.setDocValuesUpdatesFiles(info.getDocValuesUpdatesFiles());
+            localInfos.add(localInfo);
+            // a writer that is opened on these segments once this replica is promoted must not reuse the local names
+            segmentInfos.counter = Math.max(segmentInfos.counter, Long.parseLong(localSegmentName.substring(1), Character.MAX_RADIX) + 1);
+        }
+        segmentInfos.clear();
+        segmentInfos.addAll(localInfos);
+        return segmentInfos;
+    }
+
+    private TransportRequestOptions requestOptions() {
+        return TransportRequestOptions.builder().withTimeout(recoverySettings.internalActionTimeout()).build();
+    }
+
+    /**
+     * Whether a replica is copying segments, and whether it has to copy again once done because newer segments were published.
+     */
+    private static final class ReplicaCopyState {
+        boolean copying;
+        boolean copyRequested;
+        long installedVersion = UNKNOWN_VERSION;
+        // the local names of the installed segments that were renamed, by primary segment name, see planCopy
+        Map<String, String> renamedSegments = Collections.emptyMap();
+    }
+
+    /**
+     * The files that a replica copies from the primary, see {@link #planCopy}.
+     */
+    static final class CopyPlan {
+        final List<StoreFileMetadata> filesToCopy;
+        // the local names of the files to copy, by primary file name
+        final Map<String, String> localFileNames;
+        // the local names of the segments of the primary that are renamed, by primary segment name
+        final Map<String, String> renamedSegments;
+        final int reusedFiles;
+
+        CopyPlan(List<StoreFileMetadata> filesToCopy, Map<String, String> localFileNames, Map<String, String> renamedSegments,
+                 int reusedFiles) {
+            this.filesToCopy = filesToCopy;
+            this.localFileNames = localFileNames;
+            this.renamedSegments = renamedSegments;
+            this.reusedFiles = reusedFiles;
+        }
+    }
+
+    private static final class FileChunk implements MultiFileTransfer.ChunkRequest {
+        final StoreFileMetadata md;
+        final long offset;
+        final int length;
+        final boolean lastChunk;
+
+        FileChunk(StoreFileMetadata md, long offset, int length, boolean lastChunk) {
+            this.md = md;
+            this.offset = offset;
+            this.length = length;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        public boolean lastChunk() {
+            return lastChunk;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.elasticsearch.transport.TransportResponse;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * The segments that a replica has to copy: the serialized segment infos of the primary and the metadata of their files.
+ */
+final class StartSegmentCopyResponse extends TransportResponse {
+
+    private final String sessionId;
+    private final long segmentInfosGeneration;
+    private final BytesReference segmentInfos;
+    private final Store.MetadataSnapshot metadataSnapshot;
+
+    StartSegmentCopyResponse(String sessionId, long segmentInfosGeneration, BytesReference segmentInfos,
+                             Store.MetadataSnapshot metadataSnapshot) {
+        this.sessionId = sessionId;
+        this.segmentInfosGeneration = segmentInfosGeneration;
+        this.segmentInfos = segmentInfos;
+        this.metadataSnapshot = metadataSnapshot;
+    }
+
+    StartSegmentCopyResponse(StreamInput in) throws IOException {
+        super(in);
+        sessionId = in.readString();
+        segmentInfosGeneration = in.readLong();
+        segmentInfos = in.readBytesReference();
+        // the metadata snapshot of uncommitted segments has no segments file, so it cannot be read with its own serialization
+        final Map<String, StoreFileMetadata> files = in.readMap(StreamInput::readString, StoreFileMetadata::new);
+        final Map<String, String> commitUserData = in.readMap(StreamInput::readString, StreamInput::readString);
+        metadataSnapshot = new Store.MetadataSnapshot(unmodifiableMap(files), unmodifiableMap(commitUserData), in.readLong());
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public long segmentInfosGeneration() {
+        return segmentInfosGeneration;
+    }
+
+    public BytesReference segmentInfos() {
+        return segmentInfos;
+    }
+
+    public Store.MetadataSnapshot metadataSnapshot() {
+        return metadataSnapshot;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(sessionId);
+        out.writeLong(segmentInfosGeneration);
+        out.writeBytesReference(segmentInfos);
+        out.writeMap(metadataSnapshot.asMap(), StreamOutput::writeString, (o, v) -> v.writeTo(o));
+        out.writeMap(metadataSnapshot.getCommitUserData(), StreamOutput::writeString, StreamOutput::writeString);
+        out.writeLong(metadataSnapshot.getNumDocs());
+    }
+}
@@ -103,7 +103,8 @@ public class NodeService implements Closeable {
 
     public NodeStats stats(CommonStatsFlags indices, boolean os, boolean process, boolean jvm, boolean threadPool,
                            boolean fs, boolean transport, boolean http, boolean circuitBreaker,
-                           boolean script, boolean discoveryStats, boolean ingest, boolean adaptiveSelection, boolean scriptCache) {
+                           boolean script, boolean discoveryStats, boolean ingest, boolean adaptiveSelection, boolean scriptCache,
+                           boolean translogSync, boolean mergeScheduler) {
         // for indices stats we want to include previous allocated shards stats as well (it will
         // only be applied to the sensible ones to use, like refresh/merge/flush/indexing stats)
         return new NodeStats(transportService.getLocalNode(), System.currentTimeMillis(),
@@ -120,7 +121,9 @@ public class NodeService implements Closeable {
                 discoveryStats ? discovery.stats() : null,
                 ingest ? ingestService.stats() : null,
                 adaptiveSelection ? responseCollectorService.getAdaptiveStats(searchTransportService.getPendingSearchRequests()) : null,
-                scriptCache ? scriptService.cacheStats() : null
+                scriptCache ? scriptService.cacheStats() : null,
+                translogSync ? indicesService.getTranslogSyncStats() : null,
+                mergeScheduler ? indicesService.getNodeMergeStats() : null
         );
     }
 
@@ -235,5 +235,10 @@ public abstract class BaseRestHandler implements RestHandler {
         public boolean allowsUnsafeBuffers() {
             return delegate.allowsUnsafeBuffers();
         }
+
+        @Override
+        public boolean supportsIncrementalContent() {
+            return delegate.supportsIncrementalContent();
+        }
     }
 }
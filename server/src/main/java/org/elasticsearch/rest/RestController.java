@@ -206,7 +206,12 @@ public class RestController implements HttpServerTransport.Dispatcher {
 
     private void dispatchRequest(RestRequest request, RestChannel channel, RestHandler handler) throws Exception {
         final int contentLength = request.contentLength();
-        if (contentLength > 0) {
+        if (request.hasContentStream() && handler.supportsIncrementalContent() == false) {
+            channel.sendResponse(BytesRestResponse.createSimpleErrorResponse(channel, BAD_REQUEST,
+                "[" + request.method() + " " + request.path() + "] does not support receiving the request body incrementally"));
+            return;
+        }
+        if (contentLength > 0 || request.hasContentStream()) {
             final XContentType xContentType = request.getXContentType();
             if (xContentType == null) {
                 sendContentTypeErrorMessage(request.getAllHeaderValues("Content-Type"), channel);
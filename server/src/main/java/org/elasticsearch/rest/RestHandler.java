@@ -64,6 +64,16 @@ public interface RestHandler {
         return false;
     }
 
+    /**
+     * Indicates if the RestHandler supports requests whose body is received incrementally, see {@link RestRequest#contentStream()}. Such
+     * requests are rejected if they are dispatched to handlers that do not support them.
+     *
+     * @return true iff the handler consumes the body of requests through {@link RestRequest#contentStream()} when it is present
+     */
+    default boolean supportsIncrementalContent() {
+        return false;
+    }
+
     /**
      * The list of {@link Route}s that this RestHandler is responsible for handling.
      */
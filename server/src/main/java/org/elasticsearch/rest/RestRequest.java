@@ -35,6 +35,7 @@ import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.http.HttpBodyStream;
 import org.elasticsearch.http.HttpChannel;
 import org.elasticsearch.http.HttpRequest;
 
@@ -221,6 +222,23 @@ public class RestRequest implements ToXContent.Params {
         return httpRequest.content();
     }
 
+    /**
+     * Returns whether the body of this request is received incrementally through {@link #contentStream()}.
+     */
+    public boolean hasContentStream() {
+        return httpRequest.contentStream() != null;
+    }
+
+    /**
+     * @return the stream of the body of this request if it is received incrementally, {@code null} otherwise
+     * @see RestHandler#supportsIncrementalContent()
+     */
+    @Nullable
+    public HttpBodyStream contentStream() {
+        this.contentConsumed = true;
+        return httpRequest.contentStream();
+    }
+
     /**
      * @return content of the request body or throw an exception if the body or content type is missing
      */
@@ -0,0 +1,297 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.document;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestParser;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.CompositeBytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.http.HttpBodyStream;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executes a bulk request whose body is received incrementally. The complete items are parsed as the chunks of the body arrive and are
+ * sent as bulk requests of about {@code batchSizeInBytes} each. The batches are executed one after the other so that the items are
+ * applied in the order of the request, but the next batch is received and parsed while the previous one executes.
+ * <p>
+ * The chunks of the body are accounted on the in-flight requests circuit breaker until all the batches that reference them completed.
+ * No more chunks are read from the network while the breaker is tripped and a batch is in flight, which pushes back on the client.
+ */
+final class IncrementalBulkRequestHandler implements HttpBodyStream.ChunkHandler {
+
+    static final int DEFAULT_BATCH_SIZE_IN_BYTES = (int) ByteSizeUnit.MB.toBytes(5);
+
+    private static final String BREAKER_LABEL = "<http_request>";
+
+    private final HttpBodyStream stream;
+    private final NodeClient client;
+    private final CircuitBreaker inFlightRequestsBreaker;
+    private final Supplier<BulkRequest> batchSupplier;
+    private final BulkRequestParser.IncrementalParser parser;
+    private final byte marker;
+    private final int batchSizeInBytes;
+    private final ActionListener<BulkResponse> listener;
+    private final long startTimeNanos = System.nanoTime();
+
+    // the chunks that batches in flight or the unparsed data still point into, in the order they were received
+    private final ArrayDeque<ReleasableBytesReference> chunks = new ArrayDeque<>();
+    private long releasedBytes;
+    private long receivedBytes;
+    private long parsedBytes;
+    private long inFlightBatchEnd;
+
+    private BulkRequest pending;
+    private int batches;
+    private final List<BulkItemResponse> responses = new ArrayList<>();
+    private BulkResponse lastResponse;
+    private long ingestTookInMillis = BulkResponse.NO_INGEST_TOOK;
+
+    private boolean awaitingChunk;
+    private boolean receivedLast;
+    private boolean batchInFlight;
+    private boolean completed;
+    private Exception failure;
+
+    IncrementalBulkRequestHandler(HttpBodyStream stream, NodeClient client, CircuitBreaker inFlightRequestsBreaker,
+                                  Supplier<BulkRequest> batchSupplier, @Nullable String defaultIndex, @Nullable String defaultRouting,
+                                  @Nullable FetchSourceContext defaultFetchSourceContext, @Nullable String defaultPipeline,
+                                  boolean allowExplicitIndex, XContentType xContentType, int batchSizeInBytes,
+                                  ActionListener<BulkResponse> listener) {
+        this.stream = stream;
+        this.client = client;
+        this.inFlightRequestsBreaker = inFlightRequestsBreaker;
+        this.batchSupplier = batchSupplier;
+        this.batchSizeInBytes = batchSizeInBytes;
+        this.listener = listener;
+        this.marker = xContentType.xContent().streamSeparator();
+        this.pending = batchSupplier.get();
+        this.parser = new BulkRequestParser(true).incrementalParser(defaultIndex, defaultRouting, defaultFetchSourceContext,
+            defaultPipeline, allowExplicitIndex, xContentType,
+            (indexRequest, type) -> pending.add(indexRequest), updateRequest -> pending.add(updateRequest),
+            deleteRequest -> pending.add(deleteRequest));
+    }
+
+    /**
+     * Starts receiving the body.
+     */
+    void start() {
+        stream.setHandler(this);
+        maybeProgress();
+    }
+
+    @Override
+    public void onNext(ReleasableBytesReference chunk, boolean isLast) {
+        synchronized (this) {
+            assert awaitingChunk;
+            awaitingChunk = false;
+            if (completed) {
+                chunk.close();
+                return;
+            }
+            inFlightRequestsBreaker.addWithoutBreaking(chunk.length());
+            chunks.add(chunk);
+            receivedBytes += chunk.length();
+            receivedLast = isLast;
+            // a chunk without a line separator can not complete an item
+            if (failure == null && (isLast || chunk.indexOf(marker, 0) != -1)) {
+                try {
+                    if (isLast && receivedBytes == 0) {
+                        throw new ElasticsearchParseException("request body is required");
+                    }
+                    parsedBytes += parser.parse(unparsedData(), isLast);
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        }
+        maybeProgress();
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        synchronized (this) {
+            awaitingChunk = false;
+            if (completed == false && failure == null) {
+                failure = e;
+            }
+        }
+        maybeProgress();
+    }
+
+    private void onBatchResponse(BulkResponse response) {
+        synchronized (this) {
+            batchInFlight = false;
+            final int offset = responses.size();
+            for (BulkItemResponse item : response.getItems()) {
+                responses.add(item.isFailed()
+                    ? new BulkItemResponse(offset + item.getItemId(), item.getOpType(), item.getFailure())
+                    : new BulkItemResponse(offset + item.getItemId(), item.getOpType(), item.getResponse()));
+            }
+            if (response.getIngestTookInMillis() != BulkResponse.NO_INGEST_TOOK) {
+                ingestTookInMillis = Math.max(0L, ingestTookInMillis) + response.getIngestTookInMillis();
+            }
+            lastResponse = response;
+            releaseChunks(inFlightBatchEnd);
+        }
+        maybeProgress();
+    }
+
+    private void onBatchFailure(Exception e) {
+        synchronized (this) {
+            batchInFlight = false;
+            if (failure == null) {
+                failure = e;
+            }
+            releaseChunks(inFlightBatchEnd);
+        }
+        maybeProgress();
+    }
+
+    /**
+     * Sends the next batch, requests the next chunk or completes the request, depending on the state.
+     */
+    private void maybeProgress() {
+        BulkRequest batch = null;
+        boolean requestChunk = false;
+        boolean complete = false;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            CircuitBreakingException breakerException = null;
+            if (failure == null && receivedLast == false && awaitingChunk == false) {
+                try {
+                    inFlightRequestsBreaker.addEstimateBytesAndMaybeBreak(0, BREAKER_LABEL);
+                } catch (CircuitBreakingException e) {
+                    breakerException = e;
+                }
+            }
+            if (batchInFlight == false) {
+                final boolean batchReady = receivedLast || breakerException != null
+                    || pending.estimatedSizeInBytes() >= batchSizeInBytes;
+                if (failure == null && batchReady && (pending.numberOfActions() > 0 || (receivedLast && batches == 0))) {
+                    batch = pending;
+                    pending = batchSupplier.get();
+                    batchInFlight = true;
+                    inFlightBatchEnd = parsedBytes;
+                    batches++;
+                } else if (failure != null || receivedLast || breakerException != null) {
+                    if (failure == null) {
+                        failure = breakerException;
+                    }
+                    completed = true;
+                    complete = true;
+                }
+            }
+            if (complete == false && failure == null && receivedLast == false && awaitingChunk == false && breakerException == null
+                    && (batchInFlight == false || pending.estimatedSizeInBytes() < batchSizeInBytes)) {
+                awaitingChunk = true;
+                requestChunk = true;
+            }
+        }
+
+        if (batch != null) {
+            client.bulk(batch, ActionListener.wrap(this::onBatchResponse, this::onBatchFailure));
+        }
+        if (requestChunk) {
+            stream.next();
+        }
+        if (complete) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        final boolean discardRest;
+        final Exception failure;
+        final BulkResponse response;
+        synchronized (this) {
+            assert completed && batchInFlight == false;
+            releaseChunks(Long.MAX_VALUE);
+            discardRest = receivedLast == false;
+            failure = this.failure;
+            if (failure != null) {
+                response = null;
+            } else if (batches == 1) {
+                response = lastResponse;
+            } else {
+                final long tookInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos);
+                response = new BulkResponse(responses.toArray(new BulkItemResponse[0]), tookInMillis, ingestTookInMillis);
+            }
+        }
+        if (discardRest) {
+            stream.close();
+        }
+        if (failure != null) {
+            listener.onFailure(failure);
+        } else {
+            listener.onResponse(response);
+        }
+    }
+
+    /**
+     * Releases the chunks that end before the given offset of the body.
+     */
+    private void releaseChunks(long upTo) {
+        assert Thread.holdsLock(this);
+        while (chunks.isEmpty() == false && releasedBytes + chunks.peekFirst().length() <= upTo) {
+            final ReleasableBytesReference chunk = chunks.pollFirst();
+            releasedBytes += chunk.length();
+            inFlightRequestsBreaker.addWithoutBreaking(-chunk.length());
+            chunk.close();
+        }
+    }
+
+    private BytesReference unparsedData() {
+        assert Thread.holdsLock(this);
+        final List<BytesReference> parts = new ArrayList<>();
+        long chunkStart = releasedBytes;
+        for (ReleasableBytesReference chunk : chunks) {
+            final long chunkEnd = chunkStart + chunk.length();
+            if (chunkEnd > parsedBytes) {
+                final int from = (int) Math.max(0L, parsedBytes - chunkStart);
+                parts.add(from == 0 ? chunk : chunk.slice(from, chunk.length() - from));
+            }
+            chunkStart = chunkEnd;
+        }
+        if (parts.isEmpty()) {
+            return BytesArray.EMPTY;
+        }
+        return parts.size() == 1 ? parts.get(0) : new CompositeBytesReference(parts.toArray(new BytesReference[0]));
+    }
+}
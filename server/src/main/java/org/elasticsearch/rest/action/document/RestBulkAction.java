@@ -19,19 +19,32 @@
 
 package org.elasticsearch.rest.action.document;
 
+import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestParser;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.bulk.BulkShardRequest;
 import org.elasticsearch.action.support.ActiveShardCount;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.http.HttpBodyStream;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.action.RestStatusToXContentListener;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 import static org.elasticsearch.rest.RestRequest.Method.POST;
 import static org.elasticsearch.rest.RestRequest.Method.PUT;
@@ -48,9 +61,15 @@ import static org.elasticsearch.rest.RestRequest.Method.PUT;
 public class RestBulkAction extends BaseRestHandler {
 
     private final boolean allowExplicitIndex;
+    private final CircuitBreakerService circuitBreakerService;
 
     public RestBulkAction(Settings settings) {
+        this(settings, new NoneCircuitBreakerService());
+    }
+
+    public RestBulkAction(Settings settings, CircuitBreakerService circuitBreakerService) {
         this.allowExplicitIndex = MULTI_ALLOW_EXPLICIT_INDEX.get(settings);
+        this.circuitBreakerService = circuitBreakerService;
     }
 
     @Override
@@ -69,21 +88,52 @@ public class RestBulkAction extends BaseRestHandler {
 
     @Override
     public RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
-        BulkRequest bulkRequest = Requests.bulkRequest();
         String defaultIndex = request.param("index");
         String defaultRouting = request.param("routing");
         FetchSourceContext defaultFetchSourceContext = FetchSourceContext.parseFromRestRequest(request);
         String defaultPipeline = request.param("pipeline");
         String waitForActiveShards = request.param("wait_for_active_shards");
-        if (waitForActiveShards != null) {
-            bulkRequest.waitForActiveShards(ActiveShardCount.parseString(waitForActiveShards));
+        TimeValue timeout = request.paramAsTime("timeout", BulkShardRequest.DEFAULT_TIMEOUT);
+        String refresh = request.param("refresh");
+        Supplier<BulkRequest> bulkRequestSupplier = () -> {
+            BulkRequest bulkRequest = Requests.bulkRequest();
+            if (waitForActiveShards != null) {
+                bulkRequest.waitForActiveShards(ActiveShardCount.parseString(waitForActiveShards));
+            }
+            bulkRequest.timeout(timeout);
+            bulkRequest.setRefreshPolicy(refresh);
+            return bulkRequest;
+        };
+        // fail early on invalid parameters
+        BulkRequest bulkRequest = bulkRequestSupplier.get();
+
+        if (request.hasContentStream()) {
+            final HttpBodyStream stream = request.contentStream();
+            final XContentType xContentType = request.getXContentType();
+            return channel -> new IncrementalBulkRequestHandler(stream, client,
+                circuitBreakerService.getBreaker(CircuitBreaker.IN_FLIGHT_REQUESTS), bulkRequestSupplier, defaultIndex, defaultRouting,
+                defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType,
+                IncrementalBulkRequestHandler.DEFAULT_BATCH_SIZE_IN_BYTES, new RestStatusToXContentListener<>(channel)).start();
+        }
+
+        final BytesReference content = request.requiredContent();
+        final XContentType xContentType = request.getXContentType();
+        if (content.length() < 2 * BulkRequestParser.PARALLEL_PARSE_CHUNK_SIZE_IN_BYTES) {
+            bulkRequest.add(content, defaultIndex, defaultRouting,
+                defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType);
+            return channel -> client.bulk(bulkRequest, new RestStatusToXContentListener<>(channel));
         }
-        bulkRequest.timeout(request.paramAsTime("timeout", BulkShardRequest.DEFAULT_TIMEOUT));
-        bulkRequest.setRefreshPolicy(request.param("refresh"));
-        bulkRequest.add(request.requiredContent(), defaultIndex, defaultRouting,
-            defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, request.getXContentType());
 
-        return channel -> client.bulk(bulkRequest, new RestStatusToXContentListener<>(channel));
+        // large requests are parsed in parallel on the write pool instead of on the network thread, the content is not
+        // released before the response is sent so the sources can keep pointing into it
+        return channel -> {
+            final ExecutorService executor = client.threadPool().executor(ThreadPool.Names.WRITE);
+            executor.execute(ActionRunnable.wrap(new RestStatusToXContentListener<BulkResponse>(channel), listener -> {
+                bulkRequest.add(content, defaultIndex, defaultRouting,
+                    defaultFetchSourceContext, defaultPipeline, allowExplicitIndex, xContentType, executor);
+                client.bulk(bulkRequest, listener);
+            }));
+        };
     }
 
     @Override
@@ -95,4 +145,9 @@ public class RestBulkAction extends BaseRestHandler {
     public boolean allowsUnsafeBuffers() {
         return true;
     }
+
+    @Override
+    public boolean supportsIncrementalContent() {
+        return true;
+    }
 }
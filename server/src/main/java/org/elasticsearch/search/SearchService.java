@@ -23,6 +23,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
@@ -34,6 +35,7 @@ import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.CheckedSupplier;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
@@ -62,6 +64,7 @@ import org.elasticsearch.index.query.Rewriteable;
 import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.SearchOperationListener;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
@@ -77,9 +80,11 @@ import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.collapse.CollapseContext;
+import org.elasticsearch.search.collapse.CollapseInnerHitContextBuilder;
 import org.elasticsearch.search.dfs.DfsPhase;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchPhase;
+import org.elasticsearch.search.fetch.FetchPhaseExecutionException;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ScrollQueryFetchSearchResult;
@@ -89,6 +94,7 @@ import org.elasticsearch.search.fetch.subphase.ScriptFieldsContext.ScriptField;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
+import org.elasticsearch.search.internal.ReaderContext;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.SearchContext.Lifetime;
@@ -114,6 +120,7 @@ import org.elasticsearch.transport.TransportRequest;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -162,6 +169,12 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     public static final Setting<Integer> MAX_OPEN_SCROLL_CONTEXT =
         Setting.intSetting("search.max_open_scroll_context", 500, 0, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The maximum number of point in time {@link ReaderContext}s that can be open on a node at the same time.
+     */
+    public static final Setting<Integer> MAX_OPEN_READER_CONTEXT =
+        Setting.intSetting("search.max_open_reader_context", 500, 0, Property.Dynamic, Property.NodeScope);
+
     public static final int DEFAULT_SIZE = 10;
     public static final int DEFAULT_FROM = 0;
 
@@ -177,6 +190,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private final BigArrays bigArrays;
 
+    private final CircuitBreakerService circuitBreakerService;
+
     private final DfsPhase dfsPhase = new DfsPhase();
 
     private final QueryPhase queryPhase;
@@ -195,8 +210,12 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private volatile int maxOpenScrollContext;
 
+    private volatile int maxOpenReaderContext;
+
     private final Cancellable keepAliveReaper;
 
+    private final Cancellable readerContextReaper;
+
     private final AtomicLong idGenerator = new AtomicLong();
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
@@ -205,6 +224,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private final AtomicInteger openScrollContexts = new AtomicInteger();
 
+    private final ConcurrentMapLong<ReaderContext> activeReaders = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
+
+    private final AtomicInteger openReaderContexts = new AtomicInteger();
+
     public SearchService(ClusterService clusterService, IndicesService indicesService,
                          ThreadPool threadPool, ScriptService scriptService, BigArrays bigArrays, FetchPhase fetchPhase,
                          ResponseCollectorService responseCollectorService, CircuitBreakerService circuitBreakerService) {
@@ -215,6 +238,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.scriptService = scriptService;
         this.responseCollectorService = responseCollectorService;
         this.bigArrays = bigArrays;
+        this.circuitBreakerService = circuitBreakerService;
         this.queryPhase = new QueryPhase();
         this.fetchPhase = fetchPhase;
         this.multiBucketConsumerService = new MultiBucketConsumerService(clusterService, settings,
@@ -227,6 +251,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             this::setKeepAlives, this::validateKeepAlives);
 
         this.keepAliveReaper = threadPool.scheduleWithFixedDelay(new Reaper(), keepAliveInterval, Names.SAME);
+        this.readerContextReaper = threadPool.scheduleWithFixedDelay(new ReaderContextReaper(), keepAliveInterval, Names.SAME);
 
         defaultSearchTimeout = DEFAULT_SEARCH_TIMEOUT_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(DEFAULT_SEARCH_TIMEOUT_SETTING, this::setDefaultSearchTimeout);
@@ -238,6 +263,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         maxOpenScrollContext = MAX_OPEN_SCROLL_CONTEXT.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(MAX_OPEN_SCROLL_CONTEXT, this::setMaxOpenScrollContext);
 
+        maxOpenReaderContext = MAX_OPEN_READER_CONTEXT.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(MAX_OPEN_READER_CONTEXT, this::setMaxOpenReaderContext);
+
         lowLevelCancellation = LOW_LEVEL_CANCELLATION_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(LOW_LEVEL_CANCELLATION_SETTING, this::setLowLevelCancellation);
     }
@@ -272,6 +300,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.maxOpenScrollContext = maxOpenScrollContext;
     }
 
+    private void setMaxOpenReaderContext(int maxOpenReaderContext) {
+        this.maxOpenReaderContext = maxOpenReaderContext;
+    }
+
     private void setLowLevelCancellation(Boolean lowLevelCancellation) {
         this.lowLevelCancellation = lowLevelCancellation;
     }
@@ -289,6 +321,17 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     }
 
+    @Override
+    public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+        // a point in time can only be searched on the shard copy it was opened on, so its reader is of no use once that copy is
+        // closed and would only keep the files of the shard from being deleted
+        for (ReaderContext readerContext : activeReaders.values()) {
+            if (shardId.equals(readerContext.indexShard().shardId())) {
+                freeReaderContext(readerContext.id());
+            }
+        }
+    }
+
     protected void putContext(SearchContext context) {
         final SearchContext previous = activeContexts.put(context.id().getId(), context);
         assert previous == null;
@@ -307,12 +350,119 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         for (final SearchContext context : activeContexts.values()) {
             freeContext(context.id());
         }
+        for (final ReaderContext readerContext : activeReaders.values()) {
+            freeReaderContext(readerContext.id());
+        }
     }
 
     @Override
     protected void doClose() {
         doStop();
         keepAliveReaper.cancel();
+        readerContextReaper.cancel();
+    }
+
+    /**
+     * Opens a {@link ReaderContext} on the given shard. Point in time searches that carry the returned id execute against the
+     * searcher acquired here, which sees the same documents until the reader context is freed or its keep alive expires.
+     */
+    public void openReaderContext(ShardId shardId, AliasFilter aliasFilter, TimeValue keepAlive,
+                                  ActionListener<SearchContextId> listener) {
+        final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        final IndexShard shard = indexService.getShard(shardId.id());
+        runAsync(shard, () -> {
+            final long keepAliveInMillis = checkReaderContextKeepAlive(keepAlive);
+            if (openReaderContexts.incrementAndGet() > maxOpenReaderContext) {
+                openReaderContexts.decrementAndGet();
+                throw new ElasticsearchException(
+                    "Trying to create too many point in time reader contexts. Must be less than or equal to: [" +
+                        maxOpenReaderContext + "]. " + "This limit can be set by changing the ["
+                        + MAX_OPEN_READER_CONTEXT.getKey() + "] setting.");
+            }
+            Engine.Searcher searcher = null;
+            boolean success = false;
+            try {
+                // the reader wrapper applies to each search, see ReaderContext#acquireSearcher
+                searcher = shard.acquireUnwrappedSearcher("point_in_time");
+                final ReaderContext readerContext = new ReaderContext(
+                    new SearchContextId(UUIDs.base64UUID(), idGenerator.incrementAndGet()),
+                    shard, aliasFilter, searcher, keepAliveInMillis, threadPool::relativeTimeInMillis);
+                shard.getSearchOperationListener().onNewReaderContext(readerContext);
+                final ReaderContext previous = activeReaders.put(readerContext.id().getId(), readerContext);
+                assert previous == null;
+                success = true;
+                return readerContext.id();
+            } finally {
+                if (success == false) {
+                    openReaderContexts.decrementAndGet();
+                    IOUtils.closeWhileHandlingException(searcher);
+                }
+            }
+        }, listener);
+    }
+
+    /**
+     * Frees the {@link ReaderContext} with the given id. Searches that are still using it complete on the point in time reader,
+     * which is released once the last of them is done.
+     *
+     * @return <code>true</code> if the reader context was found and freed
+     */
+    public boolean freeReaderContext(SearchContextId readerId) {
+        final ReaderContext readerContext = activeReaders.get(readerId.getId());
+        if (readerContext != null && readerContext.id().getReaderId().equals(readerId.getReaderId())
+                && activeReaders.remove(readerId.getId(), readerContext)) {
+            openReaderContexts.decrementAndGet();
+            readerContext.decRef();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Frees the {@link ReaderContext} with the given id on behalf of the given request, which is validated like the searches of the
+     * reader context are, see {@link SearchOperationListener#validateReaderContext}.
+     *
+     * @return <code>true</code> if the reader context was found and freed
+     */
+    public boolean freeReaderContext(SearchContextId readerId, TransportRequest request) {
+        final ReaderContext readerContext = activeReaders.get(readerId.getId());
+        if (readerContext != null && readerContext.id().getReaderId().equals(readerId.getReaderId())) {
+            readerContext.indexShard().getSearchOperationListener().validateReaderContext(readerContext, request);
+        }
+        return freeReaderContext(readerId);
+    }
+
+    private ReaderContext findReaderContext(SearchContextId readerId) {
+        final ReaderContext readerContext = activeReaders.get(readerId.getId());
+        if (readerContext == null || readerContext.id().getReaderId().equals(readerId.getReaderId()) == false) {
+            throw new SearchContextMissingException(readerId);
+        }
+        return readerContext;
+    }
+
+    private Engine.Searcher acquireReaderContextSearcher(ShardSearchRequest request, IndexShard indexShard, String source) {
+        final ReaderContext readerContext = findReaderContext(request.readerId());
+        if (readerContext.indexShard() != indexShard) {
+            throw new IllegalArgumentException("reader context " + request.readerId() + " was opened on shard ["
+                + readerContext.indexShard().shardId() + "] but the request targets shard [" + request.shardId() + "]");
+        }
+        indexShard.getSearchOperationListener().validateReaderContext(readerContext, request);
+        if (request.readerKeepAlive() != null) {
+            readerContext.keepAlive(checkReaderContextKeepAlive(request.readerKeepAlive()));
+        }
+        // the alias filter is resolved once when the point in time is opened so that all searches see the same documents
+        request.setAliasFilter(readerContext.aliasFilter());
+        return readerContext.acquireSearcher(source);
+    }
+
+    private long checkReaderContextKeepAlive(TimeValue keepAlive) {
+        if (keepAlive.millis() > maxKeepAlive) {
+            throw new IllegalArgumentException(
+                "Keep alive for point in time (" + keepAlive + ") is too large. " +
+                    "It must be less than (" + TimeValue.timeValueMillis(maxKeepAlive) + "). " +
+                    "This limit can be set by changing the [" + MAX_KEEPALIVE_SETTING.getKey() + "] cluster level setting.");
+        }
+        return keepAlive.millis();
     }
 
     public void executeDfsPhase(ShardSearchRequest request, SearchShardTask task, ActionListener<SearchPhaseResult> listener) {
@@ -354,6 +504,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
      */
     private void loadOrExecuteQueryPhase(final ShardSearchRequest request, final SearchContext context) throws Exception {
         final boolean canCache = indicesService.canCache(request, context);
+        if (indicesService.canCacheSegmentAggregations(request, context)) {
+            context.aggregations().segmentCache(indicesService.segmentAggregationCache(request, context));
+        }
         context.getQueryShardContext().freezeContext();
         if (canCache) {
             indicesService.loadIntoContext(request, context, queryPhase);
@@ -461,6 +614,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         try (SearchOperationListenerExecutor executor = new SearchOperationListenerExecutor(context, true, afterQueryTime)){
             shortcutDocIdsToLoad(context);
             fetchPhase.execute(context);
+            if (context.collapse() != null && context.collapse().getExpandInnerHits() != null) {
+                // the shard is the only one of the search, it expands the collapsed hits that it returns
+                final Object[] collapseValues = ((CollapseTopFieldDocs) context.queryResult().topDocs().topDocs).collapseValues;
+                final int from = Math.min(context.from(), collapseValues.length);
+                expandCollapsedHits(context, Arrays.copyOfRange(collapseValues, from,
+                    Math.min(from + context.size(), collapseValues.length)));
+            }
             if (fetchPhaseShouldFreeContext(context)) {
                 freeContext(context.id());
             } else {
@@ -582,6 +742,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 context.docIdsToLoad(request.docIds(), 0, request.docIdsSize());
                 try (SearchOperationListenerExecutor executor = new SearchOperationListenerExecutor(context, true, System.nanoTime())) {
                     fetchPhase.execute(context);
+                    if (request.collapseValues() != null) {
+                        expandCollapsedHits(context, request.collapseValues());
+                    }
                     if (fetchPhaseShouldFreeContext(context)) {
                         freeContext(request.contextId());
                     } else {
@@ -600,6 +763,17 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }, listener);
     }
 
+    /**
+     * Expands the collapsed hits with the given collapse values with the documents of the shard.
+     */
+    private void expandCollapsedHits(SearchContext context, Object[] collapseValues) {
+        try {
+            context.fetchResult().expandedGroups(CollapseInnerHitContextBuilder.expandGroups(context, collapseValues, fetchPhase));
+        } catch (IOException e) {
+            throw new FetchPhaseExecutionException(context.shardTarget(), "failed to expand collapsed hits", e);
+        }
+    }
+
     private SearchContext getContext(SearchContextId contextId) {
         final SearchContext context = activeContexts.get(contextId.getId());
         if (context == null) {
@@ -714,7 +888,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         IndexShard indexShard = indexService.getShard(request.shardId().getId());
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().getId(),
             indexShard.shardId(), request.getClusterAlias(), OriginalIndices.NONE);
-        Engine.Searcher searcher = indexShard.acquireSearcher(source);
+        Engine.Searcher searcher = request.readerId() == null
+            ? indexShard.acquireSearcher(source)
+            : acquireReaderContextSearcher(request, indexShard, source);
 
         boolean success = false;
         DefaultSearchContext searchContext = null;
@@ -755,6 +931,11 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 freeContext(ctx.id());
             }
         }
+        for (ReaderContext readerContext : activeReaders.values()) {
+            if (index.equals(readerContext.indexShard().shardId().getIndex())) {
+                freeReaderContext(readerContext.id());
+            }
+        }
     }
 
     public boolean freeContext(SearchContextId contextId) {
@@ -885,7 +1066,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         if (source.aggregations() != null) {
             try {
                 AggregatorFactories factories = source.aggregations().build(queryShardContext, null);
-                context.aggregations(new SearchContextAggregations(factories, multiBucketConsumerService.create()));
+                SearchContextAggregations aggregations = new SearchContextAggregations(factories, multiBucketConsumerService.create());
+                aggregations.reduceContextBuilder(aggReduceContextBuilder(source));
+                context.aggregations(aggregations);
             } catch (IOException e) {
                 throw new AggregationInitializationException("Failed to create aggregators", e);
             }
@@ -1009,6 +1192,14 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             }
             final CollapseContext collapseContext = source.collapse().build(queryShardContext);
             context.collapse(collapseContext);
+            if (source.collapse().isExpandOnShards()) {
+                try {
+                    collapseContext.setExpandInnerHits(
+                        CollapseInnerHitContextBuilder.buildInnerHits(context, collapseContext, source.query(), source.postFilter()));
+                } catch (IOException e) {
+                    throw new SearchException(shardTarget, "failed to build inner_hits", e);
+                }
+            }
         }
     }
 
@@ -1076,6 +1267,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         return this.activeContexts.size();
     }
 
+    /**
+     * Returns the number of open point in time {@link ReaderContext}s.
+     */
+    public int getActiveReaderContexts() {
+        return this.activeReaders.size();
+    }
+
     public ResponseCollectorService getResponseCollectorService() {
         return this.responseCollectorService;
     }
@@ -1100,6 +1298,19 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         }
     }
 
+    class ReaderContextReaper implements Runnable {
+        @Override
+        public void run() {
+            for (ReaderContext readerContext : activeReaders.values()) {
+                if (readerContext.isExpired()) {
+                    logger.debug("freeing reader context [{}], lastAccessTime [{}], keepAlive [{}]", readerContext.id(),
+                        readerContext.lastAccessTime(), readerContext.keepAlive());
+                    freeReaderContext(readerContext.id());
+                }
+            }
+        }
+    }
+
     public AliasFilter buildAliasFilter(ClusterState state, String index, Set<String> resolvedExpressions) {
         return indicesService.buildAliasFilter(state, index, resolvedExpressions);
     }
@@ -1173,6 +1384,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         return indicesService;
     }
 
+    public CircuitBreakerService getCircuitBreakerService() {
+        return circuitBreakerService;
+    }
+
     /**
      * Returns a builder for {@link InternalAggregation.ReduceContext}. This
      * builder retains a reference to the provided {@link SearchRequest}.
@@ -1194,11 +1409,36 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         };
     }
 
+    /**
+     * Returns a builder for {@link InternalAggregation.ReduceContext} that reduces the aggregations
+     * of the provided {@link SearchSourceBuilder}. This is used by data nodes to partially reduce
+     * the results of all shards they searched for a single request.
+     */
+    public InternalAggregation.ReduceContextBuilder aggReduceContextBuilder(@Nullable SearchSourceBuilder source) {
+        return new InternalAggregation.ReduceContextBuilder() {
+            @Override
+            public InternalAggregation.ReduceContext forPartialReduction() {
+                return InternalAggregation.ReduceContext.forPartialReduction(bigArrays, scriptService,
+                        () -> sourceToPipelineTree(source));
+            }
+
+            @Override
+            public ReduceContext forFinalReduction() {
+                return InternalAggregation.ReduceContext.forFinalReduction(
+                        bigArrays, scriptService, multiBucketConsumerService.create(), sourceToPipelineTree(source));
+            }
+        };
+    }
+
     private static PipelineTree requestToPipelineTree(SearchRequest request) {
-        if (request.source() == null || request.source().aggregations() == null) {
+        return sourceToPipelineTree(request.source());
+    }
+
+    private static PipelineTree sourceToPipelineTree(@Nullable SearchSourceBuilder source) {
+        if (source == null || source.aggregations() == null) {
             return PipelineTree.EMPTY;
         }
-        return request.source().aggregations().buildPipelineTree();
+        return source.aggregations().buildPipelineTree();
     }
 
     public static final class CanMatchResponse extends SearchPhaseResult {
@@ -167,6 +167,15 @@ public abstract class AggregationBuilder
      */
     public abstract BucketCardinality bucketCardinality();
 
+    /**
+     * Is the result of this aggregation the same when each segment of a shard is collected on its own and the per-segment
+     * results are then reduced as if they came from different shards? Only requests whose aggregations all support it can
+     * have their results cached per segment.
+     */
+    public boolean supportsSegmentLevelResults() {
+        return false;
+    }
+
     /** Common xcontent fields shared among aggregator builders */
     public static final class CommonFields extends ParseField.CommonFields {
         public static final ParseField VALUE_TYPE = new ParseField("value_type");
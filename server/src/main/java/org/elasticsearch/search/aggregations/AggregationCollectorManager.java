@@ -0,0 +1,145 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SliceCollectorManager;
+import org.elasticsearch.search.profile.query.CollectorResult;
+import org.elasticsearch.search.profile.query.InternalProfileCollector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link CollectorManager} that collects the top level aggregations of a request with a new set of aggregators for every
+ * slice of segments, so that slices can be collected concurrently by a {@link ContextIndexSearcher}. The first slice uses
+ * the aggregators created by {@link AggregationPhase#preProcess(SearchContext)}. The results of the slices are reduced into
+ * the result of the shard like the per-segment results of {@link SegmentCachingAggregationCollector}.
+ */
+public final class AggregationCollectorManager implements SliceCollectorManager<Collector, InternalAggregations> {
+
+    private final SearchContext context;
+    private final List<Slice> slices = new ArrayList<>();
+
+    public AggregationCollectorManager(SearchContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns true if the aggregations of the provided <code>context</code> can be collected in concurrent slices. Only the
+     * aggregations that {@link AggregatorFactories.Builder#supportsSegmentLevelResults() support partial results} can be
+     * collected per slice, the others, like <code>terms</code> or <code>global</code>, need a single collection per shard.
+     */
+    public static boolean canCollectSlices(SearchContext context) {
+        final SearchContextAggregations aggregations = context.aggregations();
+        return aggregations != null
+            && aggregations.reduceContextBuilder() != null
+            && aggregations.segmentCache() == null
+            && context.queryCollectors().containsKey(AggregationPhase.class)
+            && context.request().source().aggregations().supportsSegmentLevelResults();
+    }
+
+    @Override
+    public Collector newCollector() throws IOException {
+        final Aggregator[] aggregators;
+        final Collector collector;
+        if (slices.isEmpty()) {
+            aggregators = context.aggregations().aggregators();
+            collector = context.queryCollectors().get(AggregationPhase.class);
+        } else {
+            aggregators = context.aggregations().factories().createTopLevelAggregators(context);
+            final BucketCollector bucketCollector = MultiBucketCollector.wrap(Arrays.asList(aggregators));
+            bucketCollector.preCollection();
+            if (context.getProfilers() != null) {
+                collector = new InternalProfileCollector(bucketCollector, CollectorResult.REASON_AGGREGATION, Collections.emptyList());
+            } else {
+                collector = bucketCollector;
+            }
+        }
+        slices.add(new Slice(collector, aggregators));
+        return collector;
+    }
+
+    /**
+     * Finishes the collection of the slice of the provided <code>collector</code>. Some aggregators consume the doc values
+     * of the last collected segment in {@link Aggregator#postCollection()} so it must run on the thread that collected it.
+     */
+    @Override
+    public void finishSlice(Collector collector) throws IOException {
+        slice(collector).postCollection();
+    }
+
+    /**
+     * Builds the results of the slices of the provided <code>collectors</code> and reduces them into the result of the shard.
+     */
+    @Override
+    public InternalAggregations reduce(Collection<Collector> collectors) throws IOException {
+        final List<InternalAggregations> sliceResults = new ArrayList<>(collectors.size());
+        for (Collector collector : collectors) {
+            final Slice slice = slice(collector);
+            // a slice that was never searched is finished here
+            slice.postCollection();
+            // the bucket limit applies to each slice, the final reduction checks it again for the whole response
+            context.aggregations().resetBucketMultiConsumer();
+            final List<InternalAggregation> aggregations = new ArrayList<>(slice.aggregators.length);
+            for (Aggregator aggregator : slice.aggregators) {
+                aggregations.add(aggregator.buildAggregation(0));
+            }
+            sliceResults.add(new InternalAggregations(aggregations));
+        }
+        return InternalAggregations.topLevelReduce(sliceResults, context.aggregations().reduceContextBuilder().forPartialReduction());
+    }
+
+    private Slice slice(Collector collector) {
+        for (Slice slice : slices) {
+            if (slice.collector == collector) {
+                return slice;
+            }
+        }
+        throw new IllegalArgumentException("collector was not created by this manager");
+    }
+
+    private static final class Slice {
+        private final Collector collector;
+        private final Aggregator[] aggregators;
+        private boolean finished;
+
+        private Slice(Collector collector, Aggregator[] aggregators) {
+            this.collector = collector;
+            this.aggregators = aggregators;
+        }
+
+        private void postCollection() throws IOException {
+            if (finished == false) {
+                finished = true;
+                for (Aggregator aggregator : aggregators) {
+                    aggregator.postCollection();
+                }
+            }
+        }
+    }
+}
@@ -49,6 +49,11 @@ public class AggregationPhase implements SearchPhase {
             List<Aggregator> collectors = new ArrayList<>();
             Aggregator[] aggregators;
             try {
+                if (context.aggregations().segmentCache() != null) {
+                    context.queryCollectors().put(AggregationPhase.class,
+                        new SegmentCachingAggregationCollector(context, context.aggregations().segmentCache()));
+                    return;
+                }
                 AggregatorFactories factories = context.aggregations().factories();
                 aggregators = factories.createTopLevelAggregators(context);
                 for (int i = 0; i < aggregators.length; i++) {
@@ -82,6 +87,24 @@ public class AggregationPhase implements SearchPhase {
 
         if (context.queryResult().hasAggs()) {
             // no need to compute the aggs twice, they should be computed on a per context basis
+            // the query phase already reduced the aggs of the slices collected by an AggregationCollectorManager
+            context.aggregations(null);
+            context.queryCollectors().remove(AggregationPhase.class);
+            return;
+        }
+
+        Collector aggregationCollector = context.queryCollectors().get(AggregationPhase.class);
+        if (aggregationCollector instanceof SegmentCachingAggregationCollector) {
+            // the per-segment results of a timed out search are partial, so the last collected segment must not be cached
+            boolean cacheLastSegment = context.queryResult().searchTimedOut() == false;
+            try {
+                context.queryResult().aggregations(((SegmentCachingAggregationCollector) aggregationCollector).buildAggregations(
+                    context.aggregations().reduceContextBuilder().forPartialReduction(), cacheLastSegment));
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to build aggregations from segment results", e);
+            }
+            context.aggregations(null);
+            context.queryCollectors().remove(AggregationPhase.class);
             return;
         }
 
@@ -445,6 +445,19 @@ public class AggregatorFactories {
             return aggregationBuilders.size() + pipelineAggregatorBuilders.size();
         }
 
+        /**
+         * Do all the aggregations of this tree support building their results per segment?
+         * See {@link AggregationBuilder#supportsSegmentLevelResults()}.
+         */
+        public boolean supportsSegmentLevelResults() {
+            for (AggregationBuilder builder : aggregationBuilders) {
+                if (builder.supportsSegmentLevelResults() == false || builder.factoriesBuilder.supportsSegmentLevelResults() == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
             builder.startObject();
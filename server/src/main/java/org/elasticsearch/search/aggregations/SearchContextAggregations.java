@@ -28,6 +28,8 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private final MultiBucketConsumer multiBucketConsumer;
     private Aggregator[] aggregators;
+    private SegmentAggregationCache segmentCache;
+    private InternalAggregation.ReduceContextBuilder reduceContextBuilder;
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -62,6 +64,33 @@ public class SearchContextAggregations {
         return multiBucketConsumer;
     }
 
+    /**
+     * Sets the builder of the context of the partial reduction of the results of the shard when the aggregations are
+     * collected per segment or per slice of segments.
+     */
+    public void reduceContextBuilder(InternalAggregation.ReduceContextBuilder reduceContextBuilder) {
+        this.reduceContextBuilder = reduceContextBuilder;
+    }
+
+    /**
+     * Collects the aggregations per segment and caches their results in the given cache. The per-segment results are
+     * reduced with the context of {@link #reduceContextBuilder(InternalAggregation.ReduceContextBuilder)}.
+     */
+    public void segmentCache(SegmentAggregationCache segmentCache) {
+        this.segmentCache = segmentCache;
+    }
+
+    /**
+     * The cache of per-segment results, or {@code null} if the aggregations are collected for the whole shard at once.
+     */
+    public SegmentAggregationCache segmentCache() {
+        return segmentCache;
+    }
+
+    InternalAggregation.ReduceContextBuilder reduceContextBuilder() {
+        return reduceContextBuilder;
+    }
+
     void resetBucketMultiConsumer() {
         multiBucketConsumer.reset();
     }
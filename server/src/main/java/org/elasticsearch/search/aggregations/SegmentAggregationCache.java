@@ -0,0 +1,43 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Caches the aggregation results of a shard level request per segment. It is only used for requests whose aggregations
+ * {@link AggregatorFactories.Builder#supportsSegmentLevelResults() support it}.
+ */
+public interface SegmentAggregationCache {
+
+    /**
+     * Returns the cached results of the request on the given segment, or {@code null} if they are not cached.
+     */
+    @Nullable
+    InternalAggregations get(LeafReaderContext segment) throws IOException;
+
+    /**
+     * Caches the results of the request on the given segment.
+     */
+    void put(LeafReaderContext segment, InternalAggregations aggregations) throws IOException;
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.ScoreMode;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the top level aggregations of a request with a new set of aggregators for every segment, so that the results of each
+ * segment can be cached on their own. The segments whose results are already cached are not collected at all. The per-segment
+ * results are then reduced into the result of the shard.
+ */
+final class SegmentCachingAggregationCollector implements Collector {
+
+    private final SearchContext context;
+    private final SegmentAggregationCache cache;
+    private final ScoreMode scoreMode;
+    private final List<InternalAggregations> segmentResults = new ArrayList<>();
+
+    // created upfront to compute the score mode, then used to collect the first segment that is not cached
+    private Aggregator[] unusedAggregators;
+
+    private LeafReaderContext currentSegment;
+    private Aggregator[] currentAggregators;
+    private BucketCollector currentCollector;
+
+    SegmentCachingAggregationCollector(SearchContext context, SegmentAggregationCache cache) throws IOException {
+        this.context = context;
+        this.cache = cache;
+        this.unusedAggregators = context.aggregations().factories().createTopLevelAggregators(context);
+        this.scoreMode = MultiBucketCollector.wrap(Arrays.asList(unusedAggregators)).scoreMode();
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return scoreMode;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
+        finishSegment(true);
+        final InternalAggregations cached = cache.get(ctx);
+        if (cached != null) {
+            segmentResults.add(cached);
+            throw new CollectionTerminatedException();
+        }
+        currentSegment = ctx;
+        currentAggregators = takeAggregators();
+        currentCollector = MultiBucketCollector.wrap(Arrays.asList(currentAggregators));
+        currentCollector.preCollection();
+        return currentCollector.getLeafCollector(ctx);
+    }
+
+    /**
+     * Builds the results of the shard from the results of all the segments.
+     *
+     * @param cacheLastSegment whether the last collected segment was fully collected and its results can be cached
+     */
+    InternalAggregations buildAggregations(InternalAggregation.ReduceContext reduceContext, boolean cacheLastSegment)
+            throws IOException {
+        finishSegment(cacheLastSegment);
+        if (segmentResults.isEmpty()) {
+            // the shard has no segments, build the empty results
+            final Aggregator[] aggregators = takeAggregators();
+            final BucketCollector collector = MultiBucketCollector.wrap(Arrays.asList(aggregators));
+            collector.preCollection();
+            segmentResults.add(build(aggregators, collector));
+        }
+        return InternalAggregations.topLevelReduce(segmentResults, reduceContext);
+    }
+
+    private Aggregator[] takeAggregators() throws IOException {
+        if (unusedAggregators != null) {
+            final Aggregator[] aggregators = unusedAggregators;
+            unusedAggregators = null;
+            return aggregators;
+        }
+        return context.aggregations().factories().createTopLevelAggregators(context);
+    }
+
+    private void finishSegment(boolean cacheable) throws IOException {
+        if (currentSegment == null) {
+            return;
+        }
+        final InternalAggregations results = build(currentAggregators, currentCollector);
+        if (cacheable) {
+            cache.put(currentSegment, results);
+        }
+        segmentResults.add(results);
+        currentSegment = null;
+        currentAggregators = null;
+        currentCollector = null;
+    }
+
+    private InternalAggregations build(Aggregator[] aggregators, BucketCollector collector) throws IOException {
+        collector.postCollection();
+        // the bucket limit applies to each segment, the final reduction checks it again for the whole response
+        context.aggregations().resetBucketMultiConsumer();
+        final List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
+        for (Aggregator aggregator : aggregators) {
+            aggregations.add(aggregator.buildAggregation(0));
+        }
+        return new InternalAggregations(aggregations);
+    }
+}
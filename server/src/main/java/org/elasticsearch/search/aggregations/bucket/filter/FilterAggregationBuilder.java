@@ -88,6 +88,11 @@ public class FilterAggregationBuilder extends AbstractAggregationBuilder<FilterA
         return BucketCardinality.ONE;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     protected AggregationBuilder doRewrite(QueryRewriteContext queryShardContext) throws IOException {
         QueryBuilder result = Rewriteable.rewrite(filter, queryShardContext);
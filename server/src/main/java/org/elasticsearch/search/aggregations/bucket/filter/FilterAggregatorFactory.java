@@ -52,7 +52,9 @@ public class FilterAggregatorFactory extends AggregatorFactory {
      * aggregation in the case where no documents are collected.
      *
      * Note that as aggregations are initialsed and executed in a serial manner,
-     * no concurrency considerations are necessary here.
+     * no concurrency considerations are necessary here. Searchers that collect
+     * slices of segments concurrently create the weight upfront instead, see
+     * {@link #createInternal}.
      */
     public Weight getWeight() {
         if (weight == null) {
@@ -71,6 +73,10 @@ public class FilterAggregatorFactory extends AggregatorFactory {
                                         Aggregator parent,
                                         boolean collectsFromSingleBucket,
                                         Map<String, Object> metadata) throws IOException {
+        if (searchContext.searcher().hasConcurrentSlices()) {
+            // slices of segments are collected concurrently so the lazy initialization would race
+            getWeight();
+        }
         return new FilterAggregator(name, () -> this.getWeight(), factories, searchContext, parent, metadata);
     }
 
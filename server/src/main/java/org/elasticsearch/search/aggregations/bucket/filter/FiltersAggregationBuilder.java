@@ -201,6 +201,11 @@ public class FiltersAggregationBuilder extends AbstractAggregationBuilder<Filter
         return BucketCardinality.MANY;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     protected AggregationBuilder doRewrite(QueryRewriteContext queryShardContext) throws IOException {
         List<KeyedFilter> rewrittenFilters = new ArrayList<>(filters.size());
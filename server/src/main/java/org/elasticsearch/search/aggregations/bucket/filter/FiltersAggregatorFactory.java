@@ -67,7 +67,9 @@ public class FiltersAggregatorFactory extends AggregatorFactory {
      * the aggregation in the case where no documents are collected.
      *
      * Note that as aggregations are initialsed and executed in a serial manner,
-     * no concurrency considerations are necessary here.
+     * no concurrency considerations are necessary here. Searchers that collect
+     * slices of segments concurrently create the weights upfront instead, see
+     * {@link #createInternal}.
      */
     public Weight[] getWeights(SearchContext searchContext) {
         if (weights == null) {
@@ -89,6 +91,10 @@ public class FiltersAggregatorFactory extends AggregatorFactory {
                                         Aggregator parent,
                                         boolean collectsFromSingleBucket,
                                         Map<String, Object> metadata) throws IOException {
+        if (searchContext.searcher().hasConcurrentSlices()) {
+            // slices of segments are collected concurrently so the lazy initialization would race
+            getWeights(searchContext);
+        }
         return new FiltersAggregator(name, factories, keys, () -> getWeights(searchContext), keyed,
             otherBucket ? otherBucketKey : null, searchContext, parent, metadata);
     }
@@ -374,6 +374,11 @@ public class DateHistogramAggregationBuilder extends ValuesSourceAggregationBuil
         return BucketCardinality.MANY;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     protected XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
 
@@ -266,6 +266,11 @@ public class HistogramAggregationBuilder extends ValuesSourceAggregationBuilder<
         return BucketCardinality.MANY;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     protected XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
 
@@ -155,6 +155,11 @@ public final class CardinalityAggregationBuilder
         return Objects.equals(precisionThreshold, other.precisionThreshold);
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
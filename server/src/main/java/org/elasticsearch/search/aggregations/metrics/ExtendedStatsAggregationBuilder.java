@@ -125,6 +125,11 @@ public class ExtendedStatsAggregationBuilder
         return Objects.equals(sigma, other.sigma);
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
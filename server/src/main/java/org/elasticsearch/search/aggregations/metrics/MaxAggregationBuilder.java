@@ -90,6 +90,11 @@ public class MaxAggregationBuilder extends ValuesSourceAggregationBuilder.LeafOn
         return builder;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
@@ -92,6 +92,11 @@ public class StatsAggregationBuilder extends ValuesSourceAggregationBuilder.Leaf
         return builder;
     }
 
+    @Override
+    public boolean supportsSegmentLevelResults() {
+        return true;
+    }
+
     @Override
     public String getType() {
         return NAME;
@@ -19,6 +19,7 @@
 package org.elasticsearch.search.collapse;
 
 import org.apache.lucene.index.IndexOptions;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParsingException;
 import org.elasticsearch.common.Strings;
@@ -49,12 +50,14 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
     public static final ParseField FIELD_FIELD = new ParseField("field");
     public static final ParseField INNER_HITS_FIELD = new ParseField("inner_hits");
     public static final ParseField MAX_CONCURRENT_GROUP_REQUESTS_FIELD = new ParseField("max_concurrent_group_searches");
+    public static final ParseField EXPAND_ON_SHARDS_FIELD = new ParseField("expand_on_shards");
     private static final ObjectParser<CollapseBuilder, Void> PARSER =
         new ObjectParser<>("collapse", CollapseBuilder::new);
 
     static {
         PARSER.declareString(CollapseBuilder::setField, FIELD_FIELD);
         PARSER.declareInt(CollapseBuilder::setMaxConcurrentGroupRequests, MAX_CONCURRENT_GROUP_REQUESTS_FIELD);
+        PARSER.declareBoolean(CollapseBuilder::setExpandOnShards, EXPAND_ON_SHARDS_FIELD);
         PARSER.declareField((parser, builder, context) -> {
             XContentParser.Token currentToken = parser.currentToken();
             if (currentToken == XContentParser.Token.START_OBJECT) {
@@ -77,6 +80,7 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
     private String field;
     private List<InnerHitBuilder> innerHits = Collections.emptyList();
     private int maxConcurrentGroupRequests = 0;
+    private boolean expandOnShards = false;
 
     private CollapseBuilder() {}
 
@@ -93,6 +97,9 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
         this.field = in.readString();
         this.maxConcurrentGroupRequests = in.readVInt();
         this.innerHits = in.readList(InnerHitBuilder::new);
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            this.expandOnShards = in.readBoolean();
+        }
     }
 
     @Override
@@ -100,6 +107,12 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
         out.writeString(field);
         out.writeVInt(maxConcurrentGroupRequests);
         out.writeList(innerHits);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeBoolean(expandOnShards);
+        } else if (expandOnShards) {
+            throw new IllegalArgumentException("expanding collapsed hits on the shards is not supported on nodes before version ["
+                + Version.V_8_0_0 + "], node version [" + out.getVersion() + "]");
+        }
     }
 
     public static CollapseBuilder fromXContent(XContentParser parser) {
@@ -133,6 +146,24 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
         return this;
     }
 
+    /**
+     * Sets whether the shards expand the {@link #getInnerHits() inner hits} of the collapsed hits they return during the fetch
+     * phase, instead of the coordinating node running a search per collapsed hit and inner hit definition once all hits are fetched.
+     * Each shard expands the groups of all the collapsed hits of the search with the documents that it holds, and the coordinating
+     * node merges the groups of all shards.
+     */
+    public CollapseBuilder setExpandOnShards(boolean expandOnShards) {
+        this.expandOnShards = expandOnShards;
+        return this;
+    }
+
+    /**
+     * Returns whether the shards expand the inner hits of the collapsed hits they return.
+     */
+    public boolean isExpandOnShards() {
+        return expandOnShards;
+    }
+
     /**
      * The name of the field to collapse against
      */
@@ -167,6 +198,9 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
         if (maxConcurrentGroupRequests > 0) {
             builder.field(MAX_CONCURRENT_GROUP_REQUESTS_FIELD.getPreferredName(), maxConcurrentGroupRequests);
         }
+        if (expandOnShards) {
+            builder.field(EXPAND_ON_SHARDS_FIELD.getPreferredName(), expandOnShards);
+        }
         if (innerHits.isEmpty() == false) {
             if (innerHits.size() == 1) {
                 builder.field(INNER_HITS_FIELD.getPreferredName(), innerHits.get(0));
@@ -188,13 +222,14 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
         CollapseBuilder that = (CollapseBuilder) o;
 
         if (maxConcurrentGroupRequests != that.maxConcurrentGroupRequests) return false;
+        if (expandOnShards != that.expandOnShards) return false;
         if (!field.equals(that.field)) return false;
         return Objects.equals(innerHits, that.innerHits);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(field, innerHits);
+        int result = Objects.hash(field, innerHits, expandOnShards);
         result = 31 * result + maxConcurrentGroupRequests;
         return result;
     }
@@ -217,6 +252,10 @@ public class CollapseBuilder implements Writeable, ToXContentObject {
             throw new IllegalArgumentException("cannot expand `inner_hits` for collapse field `"
                 + field + "`, " + "only indexed field can retrieve `inner_hits`");
         }
+        if (expandOnShards && innerHits != null && innerHits.stream().anyMatch(innerHit -> innerHit.getInnerCollapseBuilder() != null)) {
+            throw new IllegalArgumentException("cannot collapse `inner_hits` of collapse field `" + field + "` when ["
+                + EXPAND_ON_SHARDS_FIELD.getPreferredName() + "] is set");
+        }
 
         return new CollapseContext(field, fieldType, innerHits);
     }
@@ -24,6 +24,7 @@ import org.elasticsearch.index.mapper.KeywordFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
 import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.search.fetch.subphase.InnerHitsContext;
 
 import java.util.List;
 
@@ -34,6 +35,7 @@ public class CollapseContext {
     private final String fieldName;
     private final MappedFieldType fieldType;
     private final List<InnerHitBuilder> innerHits;
+    private InnerHitsContext expandInnerHits;
 
     public CollapseContext(String fieldName,
                            MappedFieldType fieldType,
@@ -60,6 +62,17 @@ public class CollapseContext {
         return innerHits;
     }
 
+    /**
+     * The inner hits that the shard uses to expand the collapsed hits, or <code>null</code> if the coordinating node expands them.
+     */
+    public InnerHitsContext getExpandInnerHits() {
+        return expandInnerHits;
+    }
+
+    public void setExpandInnerHits(InnerHitsContext expandInnerHits) {
+        this.expandInnerHits = expandInnerHits;
+    }
+
     public CollapsingTopDocsCollector<?> createTopDocs(Sort sort, int topN) {
         if (fieldType instanceof KeywordFieldMapper.KeywordFieldType) {
             return CollapsingTopDocsCollector.createKeyword(fieldName, fieldType, sort, topN);
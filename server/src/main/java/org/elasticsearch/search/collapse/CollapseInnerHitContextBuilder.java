@@ -0,0 +1,246 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+import org.elasticsearch.action.search.MaxScoreCollector;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.InnerHitContextBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.fetch.FetchPhase;
+import org.elasticsearch.search.fetch.subphase.InnerHitsContext;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.search.fetch.subphase.InnerHitsContext.intersect;
+
+/**
+ * Builds the inner hits that expand the collapsed hits of a shard during its fetch phase, when
+ * {@link CollapseBuilder#isExpandOnShards()} is set. The inner hits of a collapsed hit are the documents of the shard that match the
+ * query and the post filter of the request and have the same collapse value as the collapsed hit, which are the hits that the
+ * coordinating node would otherwise retrieve from this shard with a dedicated search. Each shard returns the top docs of every group
+ * of the search, including the groups of collapsed hits returned by other shards, and the coordinating node merges them.
+ */
+public final class CollapseInnerHitContextBuilder extends InnerHitContextBuilder {
+    private final CollapseContext collapseContext;
+
+    private CollapseInnerHitContextBuilder(CollapseContext collapseContext, QueryBuilder query, InnerHitBuilder innerHitBuilder,
+                                           Map<String, InnerHitContextBuilder> children) {
+        super(query, innerHitBuilder, children);
+        this.collapseContext = collapseContext;
+    }
+
+    /**
+     * Builds the inner hits of the given collapse context, which are kept apart from the inner hits of the search context since they
+     * are computed per group rather than per fetched hit.
+     *
+     * @param query the query of the search request, or <code>null</code> to match all documents
+     * @param postFilter the post filter of the search request, or <code>null</code>
+     */
+    public static InnerHitsContext buildInnerHits(SearchContext context, CollapseContext collapseContext,
+                                                  QueryBuilder query, QueryBuilder postFilter) throws IOException {
+        // mirrors the query of the searches that expand the collapsed hits on the coordinating node
+        BoolQueryBuilder innerQuery = new BoolQueryBuilder();
+        Map<String, InnerHitContextBuilder> children = new HashMap<>();
+        if (query != null) {
+            innerQuery.must(query);
+            extractInnerHits(query, children);
+        } else {
+            innerQuery.filter(QueryBuilders.matchAllQuery());
+        }
+        if (postFilter != null) {
+            innerQuery.filter(postFilter);
+            extractInnerHits(postFilter, children);
+        }
+        InnerHitsContext innerHitsContext = new InnerHitsContext();
+        for (InnerHitBuilder innerHitBuilder : collapseContext.getInnerHit()) {
+            new CollapseInnerHitContextBuilder(collapseContext, innerQuery, innerHitBuilder, children).build(context, innerHitsContext);
+        }
+        return innerHitsContext;
+    }
+
+    /**
+     * Expands the groups with the given collapse values with the documents of the shard, using the inner hits of the collapse
+     * context of the search context.
+     *
+     * @param collapseValues the collapse values of the collapsed hits of the search, <code>null</code> for the group of the
+     *                       documents that have no value
+     */
+    public static ExpandedGroups expandGroups(SearchContext context, Object[] collapseValues, FetchPhase fetchPhase) throws IOException {
+        Map<String, ExpandedGroups.InnerHits> innerHits = new HashMap<>();
+        for (InnerHitsContext.InnerHitSubContext subContext : context.collapse().getExpandInnerHits().getInnerHits().values()) {
+            innerHits.put(subContext.getName(), ((CollapseInnerHitSubContext) subContext).expandGroups(collapseValues, fetchPhase));
+        }
+        return new ExpandedGroups(innerHits);
+    }
+
+    @Override
+    protected void doBuild(SearchContext parentSearchContext, InnerHitsContext innerHitsContext) throws IOException {
+        String name = innerHitBuilder.getName() != null ? innerHitBuilder.getName() : collapseContext.getFieldName();
+        CollapseInnerHitSubContext innerHits = new CollapseInnerHitSubContext(name, parentSearchContext, collapseContext);
+        setupInnerHitsContext(parentSearchContext.getQueryShardContext(), innerHits);
+        innerHitsContext.addInnerHitDefinition(innerHits);
+    }
+
+    static final class CollapseInnerHitSubContext extends InnerHitsContext.InnerHitSubContext {
+        private final CollapseContext collapseContext;
+
+        CollapseInnerHitSubContext(String name, SearchContext context, CollapseContext collapseContext) {
+            super(name, context);
+            this.collapseContext = collapseContext;
+        }
+
+        /**
+         * Returns the top docs and the fetched hits of the groups with the given collapse values.
+         */
+        ExpandedGroups.InnerHits expandGroups(Object[] collapseValues, FetchPhase fetchPhase) throws IOException {
+            Weight innerHitQueryWeight = createInnerHitQueryWeight();
+            TopDocsAndMaxScore[] topDocs = new TopDocsAndMaxScore[collapseValues.length];
+            SearchHits[] hits = new SearchHits[collapseValues.length];
+            for (int i = 0; i < collapseValues.length; i++) {
+                topDocs[i] = topDocs(innerHitQueryWeight, collapseValues[i]);
+                hits[i] = fetch(topDocs[i], fetchPhase);
+            }
+            return new ExpandedGroups.InnerHits(from(), size(), topDocs, hits);
+        }
+
+        /**
+         * Returns the top <code>from + size</code> documents of the groups of the given hits, without skipping the first
+         * <code>from</code> documents since the coordinating node merges them with the documents of other shards.
+         */
+        @Override
+        public TopDocsAndMaxScore[] topDocs(SearchHit[] hits) throws IOException {
+            Weight innerHitQueryWeight = createInnerHitQueryWeight();
+            TopDocsAndMaxScore[] result = new TopDocsAndMaxScore[hits.length];
+            for (int i = 0; i < hits.length; i++) {
+                // the fetch phase adds the collapse value to the fields of the hit
+                DocumentField field = hits[i].field(collapseContext.getFieldName());
+                result[i] = topDocs(innerHitQueryWeight, field != null ? field.getValue() : null);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the top <code>from + size</code> documents of the group with the given collapse value.
+         */
+        private TopDocsAndMaxScore topDocs(Weight innerHitQueryWeight, Object collapseValue) throws IOException {
+            Query q = groupQuery(collapseValue);
+            Weight weight = context.searcher().createWeight(context.searcher().rewrite(q), ScoreMode.COMPLETE_NO_SCORES, 1f);
+            if (size() == 0) {
+                TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
+                for (LeafReaderContext ctx : context.searcher().getIndexReader().leaves()) {
+                    intersect(weight, innerHitQueryWeight, totalHitCountCollector, ctx);
+                }
+                return new TopDocsAndMaxScore(
+                    new TopDocs(
+                        new TotalHits(totalHitCountCollector.getTotalHits(), TotalHits.Relation.EQUAL_TO),
+                        Lucene.EMPTY_SCORE_DOCS
+                    ), Float.NaN);
+            }
+            int topN = Math.min(from() + size(), context.searcher().getIndexReader().maxDoc());
+            TopDocsCollector<?> topDocsCollector;
+            MaxScoreCollector maxScoreCollector = null;
+            if (sort() != null) {
+                topDocsCollector = TopFieldCollector.create(sort().sort, topN, Integer.MAX_VALUE);
+                if (trackScores()) {
+                    maxScoreCollector = new MaxScoreCollector();
+                }
+            } else {
+                topDocsCollector = TopScoreDocCollector.create(topN, Integer.MAX_VALUE);
+                maxScoreCollector = new MaxScoreCollector();
+            }
+            try {
+                for (LeafReaderContext ctx : context.searcher().getIndexReader().leaves()) {
+                    intersect(weight, innerHitQueryWeight, MultiCollector.wrap(topDocsCollector, maxScoreCollector), ctx);
+                }
+            } finally {
+                clearReleasables(Lifetime.COLLECTION);
+            }
+            float maxScore = Float.NaN;
+            if (maxScoreCollector != null) {
+                maxScore = maxScoreCollector.getMaxScore();
+            }
+            return new TopDocsAndMaxScore(topDocsCollector.topDocs(), maxScore);
+        }
+
+        /**
+         * Fetches the documents of the given top docs, with their scores and sort values.
+         */
+        private SearchHits fetch(TopDocsAndMaxScore topDocs, FetchPhase fetchPhase) {
+            queryResult().topDocs(topDocs, sort() == null ? null : sort().formats);
+            int[] docIdsToLoad = new int[topDocs.topDocs.scoreDocs.length];
+            for (int i = 0; i < topDocs.topDocs.scoreDocs.length; i++) {
+                docIdsToLoad[i] = topDocs.topDocs.scoreDocs[i].doc;
+            }
+            docIdsToLoad(docIdsToLoad, 0, docIdsToLoad.length);
+            fetchPhase.execute(this);
+            SearchHits hits = fetchResult().hits();
+            SearchHit[] internalHits = hits.getHits();
+            for (int i = 0; i < internalHits.length; i++) {
+                ScoreDoc scoreDoc = topDocs.topDocs.scoreDocs[i];
+                internalHits[i].score(scoreDoc.score);
+                if (scoreDoc instanceof FieldDoc) {
+                    internalHits[i].sortValues(((FieldDoc) scoreDoc).fields, sort().formats);
+                }
+            }
+            return hits;
+        }
+
+        /**
+         * Returns a query that matches the documents that have the given collapse value.
+         */
+        private Query groupQuery(Object collapseValue) {
+            if (collapseValue != null) {
+                return collapseContext.getFieldType().termQuery(collapseValue, context.getQueryShardContext());
+            } else {
+                return new BooleanQuery.Builder()
+                    .add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER)
+                    .add(new DocValuesFieldExistsQuery(collapseContext.getFieldName()), BooleanClause.Occur.MUST_NOT)
+                    .build();
+            }
+        }
+    }
+}
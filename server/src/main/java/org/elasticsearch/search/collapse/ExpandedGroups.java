@@ -0,0 +1,121 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.search.SearchHits;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The inner hits that a shard computed for the collapsed hits of a search when {@link CollapseBuilder#isExpandOnShards()} is set.
+ * For each inner hit definition, a group holds the top <code>from + size</code> documents of the shard that have the collapse value
+ * of a collapsed hit, with the top docs that carry their sort values, so that the coordinating node can merge the groups of all
+ * shards.
+ */
+public final class ExpandedGroups implements Writeable {
+    private final Map<String, InnerHits> innerHits;
+
+    public ExpandedGroups(Map<String, InnerHits> innerHits) {
+        this.innerHits = innerHits;
+    }
+
+    public ExpandedGroups(StreamInput in) throws IOException {
+        this.innerHits = in.readMap(StreamInput::readString, InnerHits::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeMap(innerHits, StreamOutput::writeString, (o, value) -> value.writeTo(o));
+    }
+
+    /**
+     * The inner hits of the groups, by inner hit name.
+     */
+    public Map<String, InnerHits> getInnerHits() {
+        return innerHits;
+    }
+
+    /**
+     * The groups of an inner hit definition, in the order of the collapsed hits that they expand.
+     */
+    public static final class InnerHits implements Writeable {
+        private final int from;
+        private final int size;
+        private final TopDocsAndMaxScore[] topDocs;
+        private final SearchHits[] hits;
+
+        public InnerHits(int from, int size, TopDocsAndMaxScore[] topDocs, SearchHits[] hits) {
+            assert topDocs.length == hits.length : "expected as many top docs as hits but got [" + topDocs.length + "] and ["
+                + hits.length + "]";
+            this.from = from;
+            this.size = size;
+            this.topDocs = topDocs;
+            this.hits = hits;
+        }
+
+        InnerHits(StreamInput in) throws IOException {
+            from = in.readVInt();
+            size = in.readVInt();
+            topDocs = in.readArray(Lucene::readTopDocs, TopDocsAndMaxScore[]::new);
+            hits = in.readArray(SearchHits::new, SearchHits[]::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(from);
+            out.writeVInt(size);
+            out.writeArray(Lucene::writeTopDocs, topDocs);
+            out.writeArray(hits);
+        }
+
+        /**
+         * The number of hits to skip once the groups of all shards are merged.
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * The number of hits to return once the groups of all shards are merged.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * The top docs of each group, which hold the top <code>from + size</code> documents of the shard.
+         */
+        public TopDocsAndMaxScore[] getTopDocs() {
+            return topDocs;
+        }
+
+        /**
+         * The fetched hits of each group, in the order of the score docs of its top docs.
+         */
+        public SearchHits[] getHits() {
+            return hits;
+        }
+    }
+}
@@ -221,6 +221,16 @@ public class FetchPhase implements SearchPhase {
         sourceLookup.setSegmentAndDocument(subReaderContext, subDocId);
         if (fieldsVisitor.source() != null) {
             sourceLookup.setSource(fieldsVisitor.source());
+        } else if (context.sourceRequested()) {
+            try {
+                BytesReference syntheticSource = sourceLookup.loadSyntheticSource();
+                if (syntheticSource != null) {
+                    sourceLookup.setSource(syntheticSource);
+                }
+            } catch (IOException e) {
+                throw new FetchPhaseExecutionException(context.shardTarget(),
+                    "Failed to rebuild the _source of doc [" + docId + "]", e);
+            }
         }
         return searchHit;
     }
@@ -19,12 +19,14 @@
 
 package org.elasticsearch.search.fetch;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.collapse.ExpandedGroups;
 import org.elasticsearch.search.internal.SearchContextId;
 import org.elasticsearch.search.query.QuerySearchResult;
 
@@ -33,6 +35,7 @@ import java.io.IOException;
 public final class FetchSearchResult extends SearchPhaseResult {
 
     private SearchHits hits;
+    private ExpandedGroups expandedGroups;
     // client side counter
     private transient int counter;
 
@@ -43,6 +46,9 @@ public final class FetchSearchResult extends SearchPhaseResult {
         super(in);
         contextId = new SearchContextId(in);
         hits = new SearchHits(in);
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            expandedGroups = in.readOptionalWriteable(ExpandedGroups::new);
+        }
     }
 
     public FetchSearchResult(SearchContextId id, SearchShardTarget shardTarget) {
@@ -76,6 +82,17 @@ public final class FetchSearchResult extends SearchPhaseResult {
         return hits;
     }
 
+    public void expandedGroups(ExpandedGroups expandedGroups) {
+        this.expandedGroups = expandedGroups;
+    }
+
+    /**
+     * The inner hits that this shard computed for the collapsed hits of the search, or <code>null</code> if it did not expand them.
+     */
+    public ExpandedGroups expandedGroups() {
+        return expandedGroups;
+    }
+
     public FetchSearchResult initCounter() {
         counter = 0;
         return this;
@@ -89,5 +106,8 @@ public final class FetchSearchResult extends SearchPhaseResult {
     public void writeTo(StreamOutput out) throws IOException {
         contextId.writeTo(out);
         hits.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeOptionalWriteable(expandedGroups);
+        }
     }
 }
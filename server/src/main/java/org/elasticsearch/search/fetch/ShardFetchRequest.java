@@ -111,6 +111,14 @@ public class ShardFetchRequest extends TransportRequest {
         return lastEmittedDoc;
     }
 
+    /**
+     * The collapse values of the collapsed hits of the search that the shard expands, or <code>null</code> if the shard does not
+     * expand them.
+     */
+    public Object[] collapseValues() {
+        return null;
+    }
+
     @Override
     public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
         return new SearchShardTask(id, type, action, getDescription(), parentTaskId, headers);
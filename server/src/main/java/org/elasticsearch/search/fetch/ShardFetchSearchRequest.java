@@ -21,6 +21,7 @@ package org.elasticsearch.search.fetch;
 
 import com.carrotsearch.hppc.IntArrayList;
 import org.apache.lucene.search.ScoreDoc;
+import org.elasticsearch.Version;
 import org.elasticsearch.action.IndicesRequest;
 import org.elasticsearch.action.OriginalIndices;
 import org.elasticsearch.action.support.IndicesOptions;
@@ -37,25 +38,47 @@ import java.io.IOException;
 public class ShardFetchSearchRequest extends ShardFetchRequest implements IndicesRequest {
 
     private OriginalIndices originalIndices;
+    private Object[] collapseValues;
 
     public ShardFetchSearchRequest() {
 
     }
 
     public ShardFetchSearchRequest(OriginalIndices originalIndices, SearchContextId id, IntArrayList list, ScoreDoc lastEmittedDoc) {
+        this(originalIndices, id, list, lastEmittedDoc, null);
+    }
+
+    /**
+     * @param collapseValues the collapse values of the collapsed hits that the shard expands, or <code>null</code> if the coordinating
+     *                       node expands them
+     */
+    public ShardFetchSearchRequest(OriginalIndices originalIndices, SearchContextId id, IntArrayList list, ScoreDoc lastEmittedDoc,
+                                   Object[] collapseValues) {
         super(id, list, lastEmittedDoc);
         this.originalIndices = originalIndices;
+        this.collapseValues = collapseValues;
     }
 
     public ShardFetchSearchRequest(StreamInput in) throws IOException {
         super(in);
         originalIndices = OriginalIndices.readOriginalIndices(in);
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            collapseValues = in.readOptionalArray(StreamInput::readGenericValue, Object[]::new);
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         OriginalIndices.writeOriginalIndices(originalIndices, out);
+        if (out.getVersion().onOrAfter(Version.V_8_0_0)) {
+            out.writeOptionalArray(StreamOutput::writeGenericValue, collapseValues);
+        }
+    }
+
+    @Override
+    public Object[] collapseValues() {
+        return collapseValues;
     }
 
     @Override
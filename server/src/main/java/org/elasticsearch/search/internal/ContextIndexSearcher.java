@@ -49,6 +49,9 @@ import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.CombinedBitSet;
 import org.apache.lucene.util.SparseFixedBitSet;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.dfs.AggregatedDfs;
@@ -62,10 +65,16 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -77,6 +86,13 @@ public class ContextIndexSearcher extends IndexSearcher {
      */
     private static int CHECK_CANCELLED_SCORER_INTERVAL = 1 << 11;
 
+    /**
+     * The maximum number of documents and segments that are grouped in a single slice
+     * when segments are searched concurrently. See {@link #computeSlices}.
+     */
+    static final int MAX_DOCS_PER_SLICE = 250_000;
+    static final int MAX_SEGMENTS_PER_SLICE = 5;
+
     private AggregatedDfs aggregatedDfs;
     private QueryProfiler profiler;
     private MutableQueryTimeout cancellable;
@@ -84,14 +100,25 @@ public class ContextIndexSearcher extends IndexSearcher {
     public ContextIndexSearcher(IndexReader reader, Similarity similarity,
                                 QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
                                 boolean wrapWithExitableDirectoryReader) throws IOException {
-        this(reader, similarity, queryCache, queryCachingPolicy, new MutableQueryTimeout(), wrapWithExitableDirectoryReader);
+        this(reader, similarity, queryCache, queryCachingPolicy, wrapWithExitableDirectoryReader, null);
+    }
+
+    /**
+     * Creates a searcher that collects slices of segments concurrently on the provided <code>executor</code>
+     * when searching with a {@link CollectorManager}, or sequentially if <code>executor</code> is <code>null</code>.
+     */
+    public ContextIndexSearcher(IndexReader reader, Similarity similarity,
+                                QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
+                                boolean wrapWithExitableDirectoryReader, @Nullable Executor executor) throws IOException {
+        this(reader, similarity, queryCache, queryCachingPolicy, new MutableQueryTimeout(), wrapWithExitableDirectoryReader, executor);
     }
 
     private ContextIndexSearcher(IndexReader reader, Similarity similarity,
                                  QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
                                  MutableQueryTimeout cancellable,
-                                 boolean wrapWithExitableDirectoryReader) throws IOException {
-        super(wrapWithExitableDirectoryReader ? new ExitableDirectoryReader((DirectoryReader) reader, cancellable) : reader);
+                                 boolean wrapWithExitableDirectoryReader,
+                                 @Nullable Executor executor) throws IOException {
+        super(wrapWithExitableDirectoryReader ? new ExitableDirectoryReader((DirectoryReader) reader, cancellable) : reader, executor);
         setSimilarity(similarity);
         setQueryCache(queryCache);
         setQueryCachingPolicy(queryCachingPolicy);
@@ -159,6 +186,129 @@ public class ContextIndexSearcher extends IndexSearcher {
         }
     }
 
+    @Override
+    protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+        return computeSlices(leaves, MAX_DOCS_PER_SLICE, MAX_SEGMENTS_PER_SLICE);
+    }
+
+    /**
+     * Groups the provided <code>leaves</code> into slices that are collected by a single thread each.
+     * Segments with more than <code>maxDocsPerSlice</code> documents get their own slice, smaller segments
+     * are grouped until the slice reaches <code>maxDocsPerSlice</code> documents or <code>maxSegmentsPerSlice</code>
+     * segments.
+     */
+    static LeafSlice[] computeSlices(List<LeafReaderContext> leaves, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        // sort by descending size so that the biggest segments are collected first
+        final List<LeafReaderContext> sortedLeaves = new ArrayList<>(leaves);
+        sortedLeaves.sort(Collections.reverseOrder(Comparator.comparingInt(ctx -> ctx.reader().maxDoc())));
+        final List<List<LeafReaderContext>> groupedLeaves = new ArrayList<>();
+        List<LeafReaderContext> group = null;
+        long docsInGroup = 0;
+        for (LeafReaderContext ctx : sortedLeaves) {
+            if (ctx.reader().maxDoc() > maxDocsPerSlice) {
+                groupedLeaves.add(Collections.singletonList(ctx));
+                continue;
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                groupedLeaves.add(group);
+            }
+            group.add(ctx);
+            docsInGroup += ctx.reader().maxDoc();
+            if (group.size() >= maxSegmentsPerSlice || docsInGroup > maxDocsPerSlice) {
+                group = null;
+                docsInGroup = 0;
+            }
+        }
+        final LeafSlice[] slices = new LeafSlice[groupedLeaves.size()];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = new LeafSlice(groupedLeaves.get(i).toArray(new LeafReaderContext[0]));
+        }
+        return slices;
+    }
+
+    /**
+     * Returns true if this searcher collects slices of segments concurrently when searching with a {@link CollectorManager}.
+     */
+    public boolean hasConcurrentSlices() {
+        return getExecutor() != null && getSlices().length > 1;
+    }
+
+    /**
+     * Searches the provided <code>query</code> with the collectors created by the <code>collectorManager</code>.
+     * If this searcher has an executor, each slice of segments is collected on the executor (the last one on the
+     * calling thread). Unlike {@link IndexSearcher#search(Query, CollectorManager)} this method waits for all slices to
+     * complete, even if one of them failed, so that no collection is still running when the search context gets released,
+     * and rethrows the original exception of the first failed slice. The slices of a {@link SliceCollectorManager}
+     * are finished on the thread that collected them.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager) throws IOException {
+        if (hasConcurrentSlices() == false) {
+            return super.search(query, collectorManager);
+        }
+        final LeafSlice[] slices = getSlices();
+        final List<C> collectors = new ArrayList<>(slices.length);
+        ScoreMode scoreMode = null;
+        for (int i = 0; i < slices.length; i++) {
+            final C collector = collectorManager.newCollector();
+            collectors.add(collector);
+            if (scoreMode == null) {
+                scoreMode = collector.scoreMode();
+            } else if (scoreMode != collector.scoreMode()) {
+                throw new IllegalStateException("CollectorManager does not always produce collectors with the same score mode");
+            }
+        }
+        final Weight weight = createWeight(rewrite(query), scoreMode, 1);
+        final List<FutureTask<C>> tasks = new ArrayList<>(slices.length);
+        for (int i = 0; i < slices.length; i++) {
+            final List<LeafReaderContext> leaves = Arrays.asList(slices[i].leaves);
+            final C collector = collectors.get(i);
+            tasks.add(new FutureTask<>(() -> {
+                try {
+                    search(leaves, weight, collector);
+                } finally {
+                    if (collectorManager instanceof SliceCollectorManager) {
+                        ((SliceCollectorManager<C, T>) collectorManager).finishSlice(collector);
+                    }
+                }
+                return collector;
+            }));
+        }
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            try {
+                getExecutor().execute(tasks.get(i));
+            } catch (RejectedExecutionException e) {
+                // the executor is shutting down, collect this slice on the calling thread
+                tasks.get(i).run();
+            }
+        }
+        // collect the last slice on the calling thread
+        tasks.get(tasks.size() - 1).run();
+        Throwable failure = null;
+        for (FutureTask<C> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+            } catch (ExecutionException e) {
+                failure = ExceptionsHelper.useOrSuppress(failure, e.getCause());
+            }
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+        return collectorManager.reduce(collectors);
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     public void search(List<LeafReaderContext> leaves, Weight weight, CollectorManager manager,
             QuerySearchResult result, DocValueFormat[] formats, TotalHits totalHits) throws IOException {
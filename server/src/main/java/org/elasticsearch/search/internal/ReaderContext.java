@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.internal;
+
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.search.SearchContextMissingException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds a point in time view of a shard that any number of searches can execute against. Unlike a {@link SearchContext} it is not
+ * tied to a query, it only keeps the {@link Engine.Searcher} that was acquired when the reader context was opened and the alias filter
+ * that applies to it. Each search acquires a reference on the context for as long as it uses the searcher, so a context that is freed
+ * while searches are running only releases its searcher once the last of them completes.
+ * <p>
+ * The searcher is kept unwrapped, the reader wrapper of the shard is applied for each search in the context of that search, see
+ * {@link IndexShard#acquireUnwrappedSearcher(String)}. Listeners can attach state to the context when it is opened, like the
+ * authentication of the user that opened it, and validate it for each search, see
+ * {@link org.elasticsearch.index.shard.SearchOperationListener#validateReaderContext}.
+ */
+public final class ReaderContext extends AbstractRefCounted {
+
+    private final SearchContextId id;
+    private final IndexShard indexShard;
+    private final AliasFilter aliasFilter;
+    private final Engine.Searcher searcher;
+    private final LongSupplier relativeTimeInMillis;
+    private final Map<String, Object> context = ConcurrentCollections.newConcurrentMap();
+    private volatile long keepAlive;
+    private volatile long lastAccessTime;
+
+    public ReaderContext(SearchContextId id, IndexShard indexShard, AliasFilter aliasFilter, Engine.Searcher searcher,
+                         long keepAlive, LongSupplier relativeTimeInMillis) {
+        super("reader_context");
+        this.id = id;
+        this.indexShard = indexShard;
+        this.aliasFilter = aliasFilter;
+        this.searcher = searcher;
+        this.keepAlive = keepAlive;
+        this.relativeTimeInMillis = relativeTimeInMillis;
+        this.lastAccessTime = relativeTimeInMillis.getAsLong();
+    }
+
+    public SearchContextId id() {
+        return id;
+    }
+
+    public IndexShard indexShard() {
+        return indexShard;
+    }
+
+    /**
+     * The alias filter that was resolved when the reader context was opened.
+     */
+    public AliasFilter aliasFilter() {
+        return aliasFilter;
+    }
+
+    /**
+     * Returns the object or <code>null</code> if the given key does not have a value in the context
+     */
+    @SuppressWarnings("unchecked") // (T)object
+    public <T> T getFromContext(String key) {
+        return (T) context.get(key);
+    }
+
+    /**
+     * Puts the object into the context
+     */
+    public void putInContext(String key, Object value) {
+        context.put(key, value);
+    }
+
+    public long keepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Extends the keep alive of this reader context, it starts counting from the time the last search using it completes.
+     */
+    public void keepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public long lastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * Returns <code>true</code> if no search is using this reader context and it was not accessed within its keep alive.
+     */
+    public boolean isExpired() {
+        if (refCount() > 1) {
+            // in use by at least one search
+            return false;
+        }
+        return relativeTimeInMillis.getAsLong() - lastAccessTime > keepAlive;
+    }
+
+    /**
+     * Acquires a searcher over the point in time reader of this context, wrapped by the reader wrapper of the shard in the current
+     * context. The returned searcher must be closed once the search completes, which releases its reference on this context.
+     *
+     * @throws SearchContextMissingException if the context was freed concurrently
+     */
+    public Engine.Searcher acquireSearcher(String source) {
+        if (tryIncRef() == false) {
+            throw new SearchContextMissingException(id);
+        }
+        lastAccessTime = relativeTimeInMillis.getAsLong();
+        final AtomicBoolean released = new AtomicBoolean();
+        return indexShard.wrapSearcher(new Engine.Searcher(source, searcher.getIndexReader(), searcher.getSimilarity(),
+            searcher.getQueryCache(), searcher.getQueryCachingPolicy(), () -> {
+                if (released.compareAndSet(false, true)) {
+                    lastAccessTime = relativeTimeInMillis.getAsLong();
+                    decRef();
+                }
+            }));
+    }
+
+    @Override
+    protected void closeInternal() {
+        searcher.close();
+    }
+}
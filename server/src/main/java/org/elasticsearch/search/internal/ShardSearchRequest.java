@@ -37,6 +37,7 @@ import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MatchNoneQueryBuilder;
@@ -84,6 +85,8 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
 
     private boolean canReturnNullResponseIfMatchNoDocs;
     private SearchSortValuesAndFormats bottomSortValues;
+    private SearchContextId readerId;
+    private TimeValue readerKeepAlive;
 
     //these are the only mutable fields, as they are subject to rewriting
     private AliasFilter aliasFilter;
@@ -184,6 +187,10 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
             canReturnNullResponseIfMatchNoDocs = false;
             bottomSortValues = null;
         }
+        if (in.getVersion().onOrAfter(Version.V_8_0_0)) {
+            readerId = in.readOptionalWriteable(SearchContextId::new);
+            readerKeepAlive = in.readOptionalTimeValue();
+        }
         originalIndices = OriginalIndices.readOriginalIndices(in);
     }
 
@@ -203,6 +210,8 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         this.preference = clone.preference;
         this.canReturnNullResponseIfMatchNoDocs = clone.canReturnNullResponseIfMatchNoDocs;
         this.bottomSortValues = clone.bottomSortValues;
+        this.readerId = clone.readerId;
+        this.readerKeepAlive = clone.readerKeepAlive;
         this.originalIndices = clone.originalIndices;
     }
 
@@ -241,6 +250,10 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
             out.writeBoolean(canReturnNullResponseIfMatchNoDocs);
             out.writeOptionalWriteable(bottomSortValues);
         }
+        if (out.getVersion().onOrAfter(Version.V_8_0_0) && asKey == false) {
+            out.writeOptionalWriteable(readerId);
+            out.writeOptionalTimeValue(readerKeepAlive);
+        }
     }
 
     @Override
@@ -342,6 +355,29 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         this.canReturnNullResponseIfMatchNoDocs = value;
     }
 
+    /**
+     * Sets the id of the {@link ReaderContext} that this request executes against, and how long the reader context
+     * should be kept alive after the request completes.
+     */
+    public void readerId(@Nullable SearchContextId readerId, @Nullable TimeValue keepAlive) {
+        this.readerId = readerId;
+        this.readerKeepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the id of the {@link ReaderContext} of a point in time search or <code>null</code> if the search executes against
+     * a fresh searcher.
+     */
+    @Nullable
+    public SearchContextId readerId() {
+        return readerId;
+    }
+
+    @Nullable
+    public TimeValue readerKeepAlive() {
+        return readerKeepAlive;
+    }
+
     /**
      * Returns the cache key for this shard search request, based on its content
      */
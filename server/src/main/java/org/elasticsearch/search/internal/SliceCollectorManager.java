@@ -0,0 +1,38 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.internal;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+
+import java.io.IOException;
+
+/**
+ * A {@link CollectorManager} whose collectors must finish the collection of their slice of segments on the thread that
+ * collected it, for instance because they consume per-segment resources like doc values that are confined to this thread.
+ */
+public interface SliceCollectorManager<C extends Collector, T> extends CollectorManager<C, T> {
+
+    /**
+     * Called by {@link ContextIndexSearcher#search(org.apache.lucene.search.Query, CollectorManager)} on the thread that
+     * collected the slice of the provided <code>collector</code>, once the slice is collected or its collection failed.
+     */
+    void finishSlice(C collector) throws IOException;
+}
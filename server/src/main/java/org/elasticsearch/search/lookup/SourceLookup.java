@@ -21,14 +21,17 @@ package org.elasticsearch.search.lookup;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.mapper.SyntheticSourceLoader;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -38,14 +41,29 @@ import static java.util.Collections.emptyMap;
 
 public class SourceLookup implements Map<String, Object> {
 
+    private final SyntheticSourceLoader syntheticSourceLoader;
+
     private LeafReader reader;
 
+    private SyntheticSourceLoader.Leaf syntheticSourceLeaf;
+
     private int docId = -1;
 
     private BytesReference sourceAsBytes;
     private Map<String, Object> source;
     private XContentType sourceContentType;
 
+    public SourceLookup() {
+        this(null);
+    }
+
+    /**
+     * @param syntheticSourceLoader rebuilds the source of documents that don't have a stored {@code _source}, if not {@code null}
+     */
+    public SourceLookup(@Nullable SyntheticSourceLoader syntheticSourceLoader) {
+        this.syntheticSourceLoader = syntheticSourceLoader;
+    }
+
     public Map<String, Object> source() {
         return source;
     }
@@ -68,6 +86,9 @@ public class SourceLookup implements Map<String, Object> {
             FieldsVisitor sourceFieldVisitor = new FieldsVisitor(true);
             reader.document(docId, sourceFieldVisitor);
             BytesReference source = sourceFieldVisitor.source();
+            if (source == null) {
+                source = loadSyntheticSource();
+            }
             if (source == null) {
                 this.source = emptyMap();
                 this.sourceContentType = null;
@@ -90,11 +111,29 @@ public class SourceLookup implements Map<String, Object> {
         return sourceAsMapAndType(source).v2();
     }
 
+    /**
+     * Rebuilds the source of the current document from its doc values, or returns {@code null} if the mapping doesn't use a
+     * synthetic {@code _source}. The doc values iterators of the current segment are reused across the documents of the segment.
+     */
+    @Nullable
+    public BytesReference loadSyntheticSource() throws IOException {
+        if (syntheticSourceLoader == null) {
+            return null;
+        }
+        if (syntheticSourceLeaf == null) {
+            syntheticSourceLeaf = syntheticSourceLoader.leaf(reader);
+        }
+        return syntheticSourceLeaf.load(docId);
+    }
+
     public void setSegmentAndDocument(LeafReaderContext context, int docId) {
         if (this.reader == context.reader() && this.docId == docId) {
             // if we are called with the same document, don't invalidate source
             return;
         }
+        if (this.reader != context.reader()) {
+            this.syntheticSourceLeaf = null;
+        }
         this.reader = context.reader();
         this.source = null;
         this.sourceAsBytes = null;
@@ -19,9 +19,12 @@
 
 package org.elasticsearch.search.profile;
 
+import org.apache.lucene.index.LeafReaderContext;
+
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A record of timings for the various operations that may happen during query execution.
@@ -35,20 +38,38 @@ public abstract class AbstractProfileBreakdown<T extends Enum<T>> {
      */
     private final Timer[] timings;
     private final T[] timingTypes;
+    /**
+     * The accumulated timings of this node per segment
+     */
+    private final Map<LeafReaderContext, Timer[]> segmentTimings = new ConcurrentHashMap<>();
 
     /** Sole constructor. */
     public AbstractProfileBreakdown(Class<T> clazz) {
         this.timingTypes = clazz.getEnumConstants();
-        timings = new Timer[timingTypes.length];
-        for (int i = 0; i < timings.length; ++i) {
-            timings[i] = new Timer();
+        timings = newTimers();
+    }
+
+    private Timer[] newTimers() {
+        Timer[] timers = new Timer[timingTypes.length];
+        for (int i = 0; i < timers.length; ++i) {
+            timers[i] = new Timer();
         }
+        return timers;
     }
 
     public Timer getTimer(T timing) {
         return timings[timing.ordinal()];
     }
 
+    /**
+     * Returns the timer of the provided segment. Slices of segments can be collected concurrently and a {@link Timer}
+     * is not thread-safe, so the operations that run per segment use their own timers. They are summed with the
+     * other timings of this node in {@link #toTimingMap()}.
+     */
+    public Timer getTimer(T timing, LeafReaderContext leaf) {
+        return segmentTimings.computeIfAbsent(leaf, l -> newTimers())[timing.ordinal()];
+    }
+
     public void setTimer(T timing, Timer timer) {
         timings[timing.ordinal()] = timer;
     }
@@ -57,8 +78,14 @@ public abstract class AbstractProfileBreakdown<T extends Enum<T>> {
     public Map<String, Long> toTimingMap() {
         Map<String, Long> map = new HashMap<>();
         for (T timingType : timingTypes) {
-            map.put(timingType.toString(), timings[timingType.ordinal()].getApproximateTiming());
-            map.put(timingType.toString() + "_count", timings[timingType.ordinal()].getCount());
+            long timing = timings[timingType.ordinal()].getApproximateTiming();
+            long count = timings[timingType.ordinal()].getCount();
+            for (Timer[] segmentTimers : segmentTimings.values()) {
+                timing += segmentTimers[timingType.ordinal()].getApproximateTiming();
+                count += segmentTimers[timingType.ordinal()].getCount();
+            }
+            map.put(timingType.toString(), timing);
+            map.put(timingType.toString() + "_count", count);
         }
         return Collections.unmodifiableMap(map);
     }
@@ -103,7 +103,7 @@ public class ProfilingAggregator extends Aggregator {
 
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
-        return new ProfilingLeafBucketCollector(delegate.getLeafCollector(ctx), profileBreakdown);
+        return new ProfilingLeafBucketCollector(delegate.getLeafCollector(ctx), profileBreakdown, ctx);
     }
 
     @Override
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.profile.aggregation;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Scorable;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.profile.Timer;
@@ -30,9 +31,10 @@ public class ProfilingLeafBucketCollector extends LeafBucketCollector {
     private LeafBucketCollector delegate;
     private Timer collectTimer;
 
-    public ProfilingLeafBucketCollector(LeafBucketCollector delegate, AggregationProfileBreakdown profileBreakdown) {
+    public ProfilingLeafBucketCollector(LeafBucketCollector delegate, AggregationProfileBreakdown profileBreakdown,
+                                        LeafReaderContext ctx) {
         this.delegate = delegate;
-        this.collectTimer = profileBreakdown.getTimer(AggregationTimingType.COLLECT);
+        this.collectTimer = profileBreakdown.getTimer(AggregationTimingType.COLLECT, ctx);
     }
 
     @Override
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.profile.query;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TwoPhaseIterator;
@@ -40,17 +41,17 @@ final class ProfileScorer extends Scorer {
     private final Timer scoreTimer, nextDocTimer, advanceTimer, matchTimer, shallowAdvanceTimer, computeMaxScoreTimer,
         setMinCompetitiveScoreTimer;
 
-    ProfileScorer(ProfileWeight w, Scorer scorer, QueryProfileBreakdown profile) throws IOException {
+    ProfileScorer(ProfileWeight w, Scorer scorer, QueryProfileBreakdown profile, LeafReaderContext context) throws IOException {
         super(w);
         this.scorer = scorer;
         this.profileWeight = w;
-        scoreTimer = profile.getTimer(QueryTimingType.SCORE);
-        nextDocTimer = profile.getTimer(QueryTimingType.NEXT_DOC);
-        advanceTimer = profile.getTimer(QueryTimingType.ADVANCE);
-        matchTimer = profile.getTimer(QueryTimingType.MATCH);
-        shallowAdvanceTimer = profile.getTimer(QueryTimingType.SHALLOW_ADVANCE);
-        computeMaxScoreTimer = profile.getTimer(QueryTimingType.COMPUTE_MAX_SCORE);
-        setMinCompetitiveScoreTimer = profile.getTimer(QueryTimingType.SET_MIN_COMPETITIVE_SCORE);
+        scoreTimer = profile.getTimer(QueryTimingType.SCORE, context);
+        nextDocTimer = profile.getTimer(QueryTimingType.NEXT_DOC, context);
+        advanceTimer = profile.getTimer(QueryTimingType.ADVANCE, context);
+        matchTimer = profile.getTimer(QueryTimingType.MATCH, context);
+        shallowAdvanceTimer = profile.getTimer(QueryTimingType.SHALLOW_ADVANCE, context);
+        computeMaxScoreTimer = profile.getTimer(QueryTimingType.COMPUTE_MAX_SCORE, context);
+        setMinCompetitiveScoreTimer = profile.getTimer(QueryTimingType.SET_MIN_COMPETITIVE_SCORE, context);
     }
 
     @Override
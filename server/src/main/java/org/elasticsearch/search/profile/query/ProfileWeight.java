@@ -59,7 +59,7 @@ public final class ProfileWeight extends Weight {
 
     @Override
     public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
-        Timer timer = profile.getTimer(QueryTimingType.BUILD_SCORER);
+        Timer timer = profile.getTimer(QueryTimingType.BUILD_SCORER, context);
         timer.start();
         final ScorerSupplier subQueryScorerSupplier;
         try {
@@ -78,7 +78,7 @@ public final class ProfileWeight extends Weight {
             public Scorer get(long loadCost) throws IOException {
                 timer.start();
                 try {
-                    return new ProfileScorer(weight, subQueryScorerSupplier.get(loadCost), profile);
+                    return new ProfileScorer(weight, subQueryScorerSupplier.get(loadCost), profile, context);
                 } finally {
                     timer.stop();
                 }
@@ -19,9 +19,12 @@
 
 package org.elasticsearch.search.profile.query;
 
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.Query;
 import org.elasticsearch.search.profile.AbstractProfiler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -42,18 +45,36 @@ public final class QueryProfiler extends AbstractProfiler<QueryProfileBreakdown,
      */
     private InternalProfileCollector collector;
 
+    /**
+     * The name of the collector manager that collected the slices of segments concurrently and the root Collector of each slice
+     */
+    private String collectorManagerName;
+    private List<InternalProfileCollector> sliceCollectors;
+
     public QueryProfiler() {
         super(new InternalQueryProfileTree());
     }
 
     /** Set the collector that is associated with this profiler. */
     public void setCollector(InternalProfileCollector collector) {
-        if (this.collector != null) {
+        if (this.collector != null || this.sliceCollectors != null) {
             throw new IllegalStateException("The collector can only be set once.");
         }
         this.collector = Objects.requireNonNull(collector);
     }
 
+    /**
+     * Set the collector manager that collects the slices of segments of the search concurrently and the root collectors of
+     * its slices. The slices are reported as the children of a single collector whose time is the sum of the times of the slices.
+     */
+    public void setCollectorManager(CollectorManager<?, ?> collectorManager, List<InternalProfileCollector> sliceCollectors) {
+        if (this.collector != null || this.sliceCollectors != null) {
+            throw new IllegalStateException("The collector can only be set once.");
+        }
+        this.collectorManagerName = collectorManager.getClass().getSimpleName();
+        this.sliceCollectors = Objects.requireNonNull(sliceCollectors);
+    }
+
     /**
      * Begin timing the rewrite phase of a request.  All rewrites are accumulated together into a
      * single metric
@@ -83,6 +104,16 @@ public final class QueryProfiler extends AbstractProfiler<QueryProfileBreakdown,
      * Return the current root Collector for this search
      */
     public CollectorResult getCollector() {
+        if (sliceCollectors != null) {
+            List<CollectorResult> children = new ArrayList<>(sliceCollectors.size());
+            long time = 0;
+            for (InternalProfileCollector sliceCollector : sliceCollectors) {
+                CollectorResult child = sliceCollector.getCollectorTree();
+                time += child.getTime();
+                children.add(child);
+            }
+            return new CollectorResult(collectorManagerName, CollectorResult.REASON_SEARCH_SLICES, time, children);
+        }
         return collector.getCollectorTree();
     }
 
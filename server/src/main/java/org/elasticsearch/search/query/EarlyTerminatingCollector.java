@@ -27,6 +27,7 @@ import org.apache.lucene.search.FilterLeafCollector;
 import org.apache.lucene.search.LeafCollector;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@link Collector} that early terminates collection after <code>maxCountHits</code> docs have been collected.
@@ -39,6 +40,7 @@ public class EarlyTerminatingCollector extends FilterCollector {
     }
 
     private final int maxCountHits;
+    private final AtomicInteger sharedNumCollected;
     private int numCollected;
     private boolean forceTermination;
     private boolean earlyTerminated;
@@ -51,14 +53,36 @@ public class EarlyTerminatingCollector extends FilterCollector {
      *                         that is not caught by other {@link Collector} or with a {@link CollectionTerminatedException} otherwise.
      */
     EarlyTerminatingCollector(final Collector delegate, int maxCountHits, boolean forceTermination) {
+        this(delegate, maxCountHits, forceTermination, null);
+    }
+
+    /**
+     * Ctr
+     * @param delegate The delegated collector.
+     * @param maxCountHits The number of documents to collect before termination.
+     * @param forceTermination Whether the collection should be terminated with an exception ({@link EarlyTerminationException})
+     *                         that is not caught by other {@link Collector} or with a {@link CollectionTerminatedException} otherwise.
+     * @param sharedNumCollected The number of collected documents shared by all collectors that search slices of the same shard
+     *                           concurrently, or <code>null</code> to count the documents collected by this collector only.
+     */
+    EarlyTerminatingCollector(final Collector delegate, int maxCountHits, boolean forceTermination, AtomicInteger sharedNumCollected) {
         super(delegate);
         this.maxCountHits = maxCountHits;
         this.forceTermination = forceTermination;
+        this.sharedNumCollected = sharedNumCollected;
+    }
+
+    private int numCollected() {
+        return sharedNumCollected == null ? numCollected : sharedNumCollected.get();
+    }
+
+    private int incrementNumCollected() {
+        return sharedNumCollected == null ? ++numCollected : sharedNumCollected.incrementAndGet();
     }
 
     @Override
     public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
-        if (numCollected >= maxCountHits) {
+        if (numCollected() >= maxCountHits) {
             earlyTerminated = true;
             if (forceTermination) {
                 throw new EarlyTerminationException("early termination [CountBased]");
@@ -69,7 +93,7 @@ public class EarlyTerminatingCollector extends FilterCollector {
         return new FilterLeafCollector(super.getLeafCollector(context)) {
             @Override
             public void collect(int doc) throws IOException {
-                if (++numCollected > maxCountHits) {
+                if (incrementNumCollected() > maxCountHits) {
                     earlyTerminated = true;
                     if (forceTermination) {
                         throw new EarlyTerminationException("early termination [CountBased]");
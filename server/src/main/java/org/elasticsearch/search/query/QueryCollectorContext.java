@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.elasticsearch.search.profile.query.CollectorResult.REASON_SEARCH_MIN_SCORE;
 import static org.elasticsearch.search.profile.query.CollectorResult.REASON_SEARCH_MULTI;
@@ -118,6 +119,18 @@ abstract class QueryCollectorContext {
         };
     }
 
+    /**
+     * Filters documents based on the provided <code>filterWeight</code>, which can be shared by several collectors
+     */
+    static QueryCollectorContext createFilteredCollectorContext(Weight filterWeight) {
+        return new QueryCollectorContext(REASON_SEARCH_POST_FILTER) {
+            @Override
+            Collector create(Collector in) {
+                return new FilteredCollector(in, filterWeight);
+            }
+        };
+    }
+
     /**
      * Creates a multi collector from the provided <code>subs</code>
      */
@@ -162,4 +175,29 @@ abstract class QueryCollectorContext {
             }
         };
     }
+
+    /**
+     * Creates collector limiting the collection of a slice of segments to the first <code>numHits</code> documents
+     * collected by all slices that share the same <code>numCollected</code> counter. The collection of the remaining
+     * segments of the slice is skipped once the limit is reached so that the other slices can still be post-processed.
+     */
+    static QueryCollectorContext createSliceEarlyTerminationCollectorContext(int numHits, AtomicInteger numCollected) {
+        return new QueryCollectorContext(REASON_SEARCH_TERMINATE_AFTER_COUNT) {
+            private EarlyTerminatingCollector collector;
+
+            @Override
+            Collector create(Collector in) throws IOException {
+                assert collector == null;
+                this.collector = new EarlyTerminatingCollector(in, numHits, false, numCollected);
+                return collector;
+            }
+
+            @Override
+            void postProcess(QuerySearchResult result) {
+                if (collector.hasEarlyTerminated()) {
+                    result.terminatedEarly(true);
+                }
+            }
+        };
+    }
 }
@@ -295,6 +295,8 @@ public class QueryPhase implements SearchPhase {
                 // if we are optimizing sort and there are no other collectors
                 if (sortAndFormatsForRewrittenNumericSort != null && collectors.size() == 0 && searchContext.getProfilers() == null) {
                     shouldRescore = searchWithCollectorManager(searchContext, searcher, query, leafSorter, timeoutSet);
+                } else if (searcher.hasConcurrentSlices() && SliceQueryCollectorManager.canCollectSlices(searchContext)) {
+                    shouldRescore = searchSlicesConcurrently(searchContext, searcher, query, hasFilterCollector, timeoutSet);
                 } else {
                     shouldRescore = searchWithCollector(searchContext, searcher, query, collectors, hasFilterCollector, timeoutSet);
                 }
@@ -367,6 +369,37 @@ public class QueryPhase implements SearchPhase {
         return topDocsFactory.shouldRescore();
     }
 
+    /*
+     * Collects the slices of segments of the searcher concurrently, each slice with its own chain of collectors and,
+     * when profiling, its own profiled collector tree.
+     * The collectors that need a single instance per shard are excluded by SliceQueryCollectorManager#canCollectSlices.
+     */
+    private static boolean searchSlicesConcurrently(SearchContext searchContext, ContextIndexSearcher searcher, Query query,
+            boolean hasFilterCollector, boolean timeoutSet) throws IOException {
+        final SliceQueryCollectorManager collectorManager = new SliceQueryCollectorManager(searchContext, hasFilterCollector);
+        if (searchContext.getProfilers() != null) {
+            searchContext.getProfilers().getCurrentQueryProfiler().setCollectorManager(collectorManager,
+                collectorManager.profileCollectors());
+        }
+        QuerySearchResult queryResult = searchContext.queryResult();
+        try {
+            searcher.search(query, collectorManager);
+        } catch (TimeExceededException e) {
+            assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+            if (searchContext.request().allowPartialSearchResults() == false) {
+                // Can't rethrow TimeExceededException because not serializable
+                throw new QueryPhaseExecutionException(searchContext.shardTarget(), "Time exceeded");
+            }
+            queryResult.searchTimedOut(true);
+        } finally {
+            searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER && queryResult.terminatedEarly() == null) {
+            queryResult.terminatedEarly(false);
+        }
+        collectorManager.postProcess(queryResult);
+        return collectorManager.shouldRescore();
+    }
 
     /*
      * We use collectorManager during sort optimization, where
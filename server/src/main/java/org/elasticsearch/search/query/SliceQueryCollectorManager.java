@@ -0,0 +1,243 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationCollectorManager;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SliceCollectorManager;
+import org.elasticsearch.search.profile.query.InternalProfileCollector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.search.query.QueryCollectorContext.createFilteredCollectorContext;
+import static org.elasticsearch.search.query.QueryCollectorContext.createMinScoreCollectorContext;
+import static org.elasticsearch.search.query.QueryCollectorContext.createMultiCollectorContext;
+import static org.elasticsearch.search.query.QueryCollectorContext.createSliceEarlyTerminationCollectorContext;
+import static org.elasticsearch.search.query.TopDocsCollectorContext.createTopDocsCollectorContext;
+import static org.elasticsearch.search.query.TopDocsCollectorContext.shortcutTotalHitCount;
+
+/**
+ * A {@link CollectorManager} that creates a chain of {@link QueryCollectorContext} per slice of segments
+ * so that slices can be collected concurrently by a {@link org.elasticsearch.search.internal.ContextIndexSearcher}.
+ * The aggregations of each slice are collected by their own aggregators, see {@link AggregationCollectorManager}.
+ * The top docs and the aggregations of the slices are merged in {@link #postProcess(QuerySearchResult)} rather than in
+ * {@link #reduce(Collection)} so that partial results are also available when the search times out.
+ */
+final class SliceQueryCollectorManager implements SliceCollectorManager<Collector, Void> {
+    private final SearchContext searchContext;
+    private final int trackTotalHitsUpTo;
+    private final int shortcutTotalHitCount;
+    private final AtomicInteger numCollected = new AtomicInteger();
+    private final List<List<QueryCollectorContext>> slices = new ArrayList<>();
+    private final List<Collector> sliceCollectors = new ArrayList<>();
+    private final Weight postFilterWeight;
+    private final AggregationCollectorManager aggregationCollectorManager;
+    private final List<Collector> aggregationCollectors = new ArrayList<>();
+    private final List<InternalProfileCollector> profileCollectors = new ArrayList<>();
+
+    /**
+     * Ctr
+     * @param searchContext The search context
+     * @param hasFilterCollector True if the collector chain contains at least one collector that can filters document
+     */
+    SliceQueryCollectorManager(SearchContext searchContext, boolean hasFilterCollector) throws IOException {
+        this.searchContext = searchContext;
+        if (hasFilterCollector || searchContext.trackTotalHitsUpTo() == SearchContext.TRACK_TOTAL_HITS_DISABLED) {
+            this.shortcutTotalHitCount = -1;
+        } else {
+            // implicit total hit counts are computed on the whole reader so they cannot be used by slices
+            this.shortcutTotalHitCount = shortcutTotalHitCount(searchContext.searcher().getIndexReader(), searchContext.query());
+        }
+        this.trackTotalHitsUpTo = shortcutTotalHitCount == -1 ?
+            searchContext.trackTotalHitsUpTo() : SearchContext.TRACK_TOTAL_HITS_DISABLED;
+        if (searchContext.parsedPostFilter() != null) {
+            // the slices share the weight of the post filter, it is created once like in a sequential search
+            final IndexSearcher searcher = searchContext.searcher();
+            this.postFilterWeight = searcher.createWeight(searcher.rewrite(searchContext.parsedPostFilter().query()),
+                ScoreMode.COMPLETE_NO_SCORES, 1f);
+        } else {
+            this.postFilterWeight = null;
+        }
+        // canCollectSlices only accepts the collector of the aggregations
+        this.aggregationCollectorManager = searchContext.queryCollectors().isEmpty() ? null
+            : new AggregationCollectorManager(searchContext);
+    }
+
+    /**
+     * Returns true if the provided <code>searchContext</code> can be collected in concurrent slices. Scroll and
+     * collapse rely on a single collector per shard and are always collected sequentially. The aggregations are the only
+     * additional query collector that slices support, if {@link AggregationCollectorManager#canCollectSlices} and if
+     * <code>terminate_after</code> does not need to stop their collection.
+     */
+    static boolean canCollectSlices(SearchContext searchContext) {
+        if (searchContext.scrollContext() != null || searchContext.collapse() != null) {
+            return false;
+        }
+        if (searchContext.queryCollectors().isEmpty()) {
+            return true;
+        }
+        return searchContext.queryCollectors().size() == 1
+            && searchContext.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER
+            && AggregationCollectorManager.canCollectSlices(searchContext);
+    }
+
+    @Override
+    public Collector newCollector() throws IOException {
+        final List<QueryCollectorContext> contexts = new ArrayList<>();
+        // slices never use the implicit total hit counts, see the constructor
+        contexts.add(createTopDocsCollectorContext(searchContext, trackTotalHitsUpTo, true));
+        if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            contexts.add(createSliceEarlyTerminationCollectorContext(searchContext.terminateAfter(), numCollected));
+        }
+        if (postFilterWeight != null) {
+            contexts.add(createFilteredCollectorContext(postFilterWeight));
+        }
+        if (aggregationCollectorManager != null) {
+            final Collector aggregationCollector = aggregationCollectorManager.newCollector();
+            aggregationCollectors.add(aggregationCollector);
+            contexts.add(createMultiCollectorContext(Collections.singletonList(aggregationCollector)));
+        }
+        if (searchContext.minimumScore() != null) {
+            contexts.add(createMinScoreCollectorContext(searchContext.minimumScore()));
+        }
+        slices.add(contexts);
+        final Collector collector;
+        if (searchContext.getProfilers() != null) {
+            final InternalProfileCollector profileCollector = QueryCollectorContext.createQueryCollectorWithProfiler(contexts);
+            profileCollectors.add(profileCollector);
+            collector = profileCollector;
+        } else {
+            collector = QueryCollectorContext.createQueryCollector(contexts);
+        }
+        sliceCollectors.add(collector);
+        return collector;
+    }
+
+    @Override
+    public void finishSlice(Collector collector) throws IOException {
+        if (aggregationCollectorManager != null) {
+            aggregationCollectorManager.finishSlice(aggregationCollectors.get(sliceCollectors.indexOf(collector)));
+        }
+    }
+
+    @Override
+    public Void reduce(Collection<Collector> collectors) {
+        return null;
+    }
+
+    /**
+     * Returns the profiled root collector of each slice, populated as the slices are created
+     */
+    List<InternalProfileCollector> profileCollectors() {
+        return profileCollectors;
+    }
+
+    /**
+     * Returns true if the top docs should be re-scored after initial search
+     */
+    boolean shouldRescore() {
+        return slices.isEmpty() == false && topDocsContext(slices.get(0)).shouldRescore();
+    }
+
+    /**
+     * Merges the top docs and reduces the aggregations of all slices and post-processes <code>result</code>.
+     */
+    void postProcess(QuerySearchResult result) throws IOException {
+        if (slices.isEmpty()) {
+            // the search failed before any collector was created
+            newCollector();
+        }
+        final TopDocs[] sliceTopDocs = new TopDocs[slices.size()];
+        DocValueFormat[] sortValueFormats = null;
+        float maxScore = Float.NaN;
+        for (int i = 0; i < sliceTopDocs.length; i++) {
+            final QuerySearchResult sliceResult = new QuerySearchResult();
+            for (QueryCollectorContext ctx : slices.get(i)) {
+                ctx.postProcess(sliceResult);
+            }
+            if (sliceResult.terminatedEarly() != null && sliceResult.terminatedEarly()) {
+                result.terminatedEarly(true);
+            }
+            final TopDocsAndMaxScore topDocs = sliceResult.topDocs();
+            if (Float.isNaN(maxScore) || topDocs.maxScore > maxScore) {
+                maxScore = topDocs.maxScore;
+            }
+            sortValueFormats = sliceResult.sortValueFormats();
+            sliceTopDocs[i] = topDocs.topDocs;
+        }
+        final int numHits = topDocsContext(slices.get(0)).numHits();
+        TopDocs mergedTopDocs = mergeTopDocs(searchContext.sort() == null ? null : searchContext.sort().sort, numHits, sliceTopDocs);
+        if (shortcutTotalHitCount != -1) {
+            mergedTopDocs.totalHits = new TotalHits(shortcutTotalHitCount, TotalHits.Relation.EQUAL_TO);
+        }
+        result.topDocs(new TopDocsAndMaxScore(mergedTopDocs, maxScore), sortValueFormats);
+        if (aggregationCollectorManager != null) {
+            result.aggregations(aggregationCollectorManager.reduce(aggregationCollectors));
+        }
+    }
+
+    private static TopDocsCollectorContext topDocsContext(List<QueryCollectorContext> contexts) {
+        return (TopDocsCollectorContext) contexts.get(0);
+    }
+
+    /**
+     * Merges the top docs of the slices of a single shard, ties are broken on the doc id like a sequential collection would do.
+     */
+    static TopDocs mergeTopDocs(Sort sort, int numHits, TopDocs[] sliceTopDocs) {
+        // the merge breaks ties on the shard index so we use it to carry the doc id
+        for (TopDocs topDocs : sliceTopDocs) {
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                scoreDoc.shardIndex = scoreDoc.doc;
+            }
+        }
+        final TopDocs mergedTopDocs;
+        if (sort != null) {
+            final TopFieldDocs[] sliceTopFieldDocs = new TopFieldDocs[sliceTopDocs.length];
+            for (int i = 0; i < sliceTopDocs.length; i++) {
+                sliceTopFieldDocs[i] = (TopFieldDocs) sliceTopDocs[i];
+            }
+            mergedTopDocs = TopDocs.merge(sort, 0, numHits, sliceTopFieldDocs, false);
+        } else {
+            mergedTopDocs = TopDocs.merge(0, numHits, sliceTopDocs, false);
+        }
+        // ES sets the shard index later during the reduce stage
+        for (ScoreDoc scoreDoc : mergedTopDocs.scoreDocs) {
+            scoreDoc.shardIndex = -1;
+        }
+        return mergedTopDocs;
+    }
+}
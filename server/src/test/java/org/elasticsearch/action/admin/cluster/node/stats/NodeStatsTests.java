@@ -26,6 +26,9 @@ import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.discovery.DiscoveryStats;
 import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.index.merge.NodeMergeStats;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.translog.TranslogSyncStats;
 import org.elasticsearch.indices.breaker.AllCircuitBreakerStats;
 import org.elasticsearch.indices.breaker.CircuitBreakerStats;
 import org.elasticsearch.ingest.IngestStats;
@@ -340,6 +343,8 @@ public class NodeStatsTests extends ESTestCase {
                     assertEquals(limited, sum.getCompilationLimitTriggered());
                     assertEquals(compilations, sum.getCompilations());
                 }
+                assertEquals(nodeStats.getTranslogSyncStats(), deserializedNodeStats.getTranslogSyncStats());
+                assertEquals(nodeStats.getNodeMergeStats(), deserializedNodeStats.getNodeMergeStats());
             }
         }
     }
@@ -524,10 +529,23 @@ public class NodeStatsTests extends ESTestCase {
             }
             scriptCacheStats = new ScriptCacheStats(stats);
         }
+        TranslogSyncStats translogSyncStats = frequently() ? new TranslogSyncStats(randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong()) : null;
+        NodeMergeStats nodeMergeStats = null;
+        if (frequently()) {
+            List<NodeMergeStats.ShardBacklog> shards = new ArrayList<>();
+            int numShards = randomIntBetween(0, 10);
+            for (int i = 0; i < numShards; i++) {
+                shards.add(new NodeMergeStats.ShardBacklog(new ShardId(randomAlphaOfLength(10), randomAlphaOfLength(10), i),
+                    randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong()));
+            }
+            nodeMergeStats = new NodeMergeStats(randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(),
+                randomNonNegativeLong(), randomNonNegativeLong(), shards);
+        }
         //TODO NodeIndicesStats are not tested here, way too complicated to create, also they need to be migrated to Writeable yet
         return new NodeStats(node, randomNonNegativeLong(), null, osStats, processStats, jvmStats, threadPoolStats,
                 fsInfo, transportStats, httpStats, allCircuitBreakerStats, scriptStats, discoveryStats,
-                ingestStats, adaptiveSelectionStats, scriptCacheStats);
+                ingestStats, adaptiveSelectionStats, scriptCacheStats, translogSyncStats, nodeMergeStats);
     }
 
     private IngestStats.Stats getPipelineStats(List<IngestStats.PipelineStat> pipelineStats, String id) {
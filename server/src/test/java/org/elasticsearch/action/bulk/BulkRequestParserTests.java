@@ -24,7 +24,14 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.test.ESTestCase;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
 
 public class BulkRequestParserTests extends ESTestCase {
 
@@ -109,4 +116,88 @@ public class BulkRequestParserTests extends ESTestCase {
         assertTrue(parsed.get());
     }
 
+    public void testParallelParsingMatchesSequentialParsing() throws Exception {
+        final StringBuilder request = new StringBuilder();
+        final int numItems = randomIntBetween(1, 200);
+        for (int i = 0; i < numItems; i++) {
+            final String newline = randomBoolean() ? "\n" : "\r\n";
+            if (rarely()) {
+                request.append(newline);
+            }
+            switch (randomIntBetween(0, 3)) {
+                case 0:
+                    request.append("{ \"index\":{ \"_id\": \"").append(i).append("\" } }").append(newline);
+                    // a source that looks like an action line
+                    request.append(randomBoolean() ? "{ \"delete\": {} }" : "{ \"field\": " + i + " }").append(newline);
+                    break;
+                case 1:
+                    request.append("{\"create\":{}}").append(newline).append("{ \"field\": ").append(i).append(" }").append(newline);
+                    break;
+                case 2:
+                    request.append("{ \"update\":{ \"_id\": \"").append(i).append("\" } }").append(newline);
+                    request.append("{ \"doc\": { \"field\": ").append(i).append(" } }").append(newline);
+                    break;
+                default:
+                    request.append("{ \"delete\":{ \"_id\": \"").append(i).append("\" } }").append(newline);
+                    break;
+            }
+        }
+        final BytesArray data = new BytesArray(request.toString());
+
+        final List<String> sequential = new ArrayList<>();
+        final BulkRequestParser parser = new BulkRequestParser(randomBoolean());
+        parser.parse(data, "foo", null, null, null, false, XContentType.JSON,
+            (indexRequest, type) -> sequential.add(indexRequest.toString()), r -> sequential.add(r.toString()),
+            r -> sequential.add(r.toString()));
+        assertThat(sequential.size(), equalTo(numItems));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        try {
+            final List<String> parallel = new ArrayList<>();
+            parser.parse(data, "foo", null, null, null, false, XContentType.JSON, executor, randomIntBetween(1, 200),
+                (indexRequest, type) -> parallel.add(indexRequest.toString()), r -> parallel.add(r.toString()),
+                r -> parallel.add(r.toString()));
+            assertThat(parallel, equalTo(sequential));
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testParallelParsingReportsFirstFailure() throws Exception {
+        final StringBuilder request = new StringBuilder();
+        final int numItems = randomIntBetween(2, 50);
+        final int firstMalformed = randomIntBetween(0, numItems - 1);
+        for (int i = 0; i < numItems; i++) {
+            if (i >= firstMalformed && (i == firstMalformed || randomBoolean())) {
+                request.append("{ \"index\":{ \"_id\": \"").append(i).append("\", \"unknown\": 1 } }\n{}\n");
+            } else {
+                request.append("{ \"index\":{ \"_id\": \"").append(i).append("\" } }\n{}\n");
+            }
+        }
+        final BytesArray data = new BytesArray(request.toString());
+        final BulkRequestParser parser = new BulkRequestParser(randomBoolean());
+        final AtomicInteger parsed = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        try {
+            final IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> parser.parse(data, "foo", null, null, null, false, XContentType.JSON, executor, randomIntBetween(1, 100),
+                    (req, type) -> parsed.incrementAndGet(), req -> fail(), req -> fail()));
+            assertEquals("Action/metadata line [" + (2 * firstMalformed + 1) + "] contains an unknown parameter [unknown]",
+                e.getMessage());
+            // like a sequential parse, the items before the malformed line were consumed
+            assertThat(parsed.get(), equalTo(firstMalformed));
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testParallelParsingRequiresTrailingNewline() throws Exception {
+        final BytesArray request = new BytesArray("{ \"index\":{ \"_id\": \"foo\" } }\n{}\n{ \"index\":{ \"_id\": \"bar\" } }\n{}");
+        final BulkRequestParser parser = new BulkRequestParser(randomBoolean());
+        final IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> parser.parse(request, "foo", null, null, null, false, XContentType.JSON, Runnable::run, 1,
+                (req, type) -> {}, req -> fail(), req -> fail()));
+        assertEquals("The bulk request must be terminated by a newline [\\n]", e.getMessage());
+    }
+
 }
@@ -41,14 +41,17 @@ import org.elasticsearch.cluster.metadata.IndexMetadata;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.MetadataFieldMapper;
 import org.elasticsearch.index.mapper.RootObjectMapper;
+import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
 import org.elasticsearch.index.shard.ShardId;
@@ -71,6 +74,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.Matchers.arrayWithSize;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
@@ -230,6 +234,83 @@ public class TransportShardBulkActionTests extends IndexShardTestCase {
         latch.await();
     }
 
+    public void testExecuteAppendOnlyBulkItemRequests() throws Exception {
+        IndexShard shard = newStartedShard(true);
+
+        BulkItemRequest[] items = new BulkItemRequest[randomIntBetween(2, 20)];
+        // the batch ends at the first item that is not an append-only request, if any
+        final int batchSize = randomIntBetween(2, items.length);
+        for (int i = 0; i < items.length; i++) {
+            IndexRequest writeRequest = new IndexRequest("index").source(Requests.INDEX_CONTENT_TYPE);
+            if (i == batchSize) {
+                writeRequest.id("id");
+            }
+            writeRequest.process(Version.CURRENT, null, "index");
+            items[i] = new BulkItemRequest(i, writeRequest);
+        }
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(shardId, RefreshPolicy.NONE, items);
+
+        BulkPrimaryExecutionContext context = new BulkPrimaryExecutionContext(bulkShardRequest, shard);
+        assertTrue(TransportShardBulkAction.executeAppendOnlyBulkItemRequests(context));
+        assertTrue(context.isInitial());
+        assertThat(context.hasMoreOperationsToExecute(), equalTo(batchSize < items.length));
+        if (batchSize < items.length) {
+            assertThat(context.getCurrent(), sameInstance(items[batchSize].request()));
+            assertFalse(TransportShardBulkAction.executeAppendOnlyBulkItemRequests(context));
+        }
+
+        for (int i = 0; i < batchSize; i++) {
+            BulkItemResponse primaryResponse = items[i].getPrimaryResponse();
+            assertThat(primaryResponse.getItemId(), equalTo(i));
+            assertThat(primaryResponse.getId(), equalTo(items[i].request().id()));
+            assertFalse(primaryResponse.isFailed());
+            assertThat(primaryResponse.getResponse().getSeqNo(), equalTo((long) i));
+            assertThat(primaryResponse.getResponse().getResult(), equalTo(DocWriteResponse.Result.CREATED));
+        }
+        assertDocCount(shard, batchSize);
+        closeShards(shard);
+    }
+
+    public void testAppendOnlyBulkItemRequestsStopAtMappingUpdate() throws Exception {
+        IndexShard shard = newStartedShard(true);
+
+        BulkItemRequest[] items = new BulkItemRequest[5];
+        for (int i = 0; i < items.length; i++) {
+            final IndexRequest writeRequest;
+            if (i == 1) {
+                writeRequest = new IndexRequest("index").source("{", XContentType.JSON);
+            } else if (i == 3) {
+                writeRequest = new IndexRequest("index").source(Requests.INDEX_CONTENT_TYPE, "foo", "bar");
+            } else {
+                writeRequest = new IndexRequest("index").source(Requests.INDEX_CONTENT_TYPE);
+            }
+            writeRequest.process(Version.CURRENT, null, "index");
+            items[i] = new BulkItemRequest(i, writeRequest);
+        }
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(shardId, RefreshPolicy.NONE, items);
+
+        BulkPrimaryExecutionContext context = new BulkPrimaryExecutionContext(bulkShardRequest, shard);
+        assertTrue(TransportShardBulkAction.executeAppendOnlyBulkItemRequests(context));
+        // the item that requires a mapping update goes through the regular path
+        assertThat(context.getCurrent(), sameInstance(items[3].request()));
+        assertFalse(items[0].getPrimaryResponse().isFailed());
+        assertTrue(items[1].getPrimaryResponse().isFailed());
+        assertThat(items[1].getPrimaryResponse().getFailure().getCause(), instanceOf(MapperParsingException.class));
+        assertThat(items[1].getPrimaryResponse().getFailure().getSeqNo(), equalTo(SequenceNumbers.UNASSIGNED_SEQ_NO));
+        assertFalse(items[2].getPrimaryResponse().isFailed());
+        assertThat(items[3].getPrimaryResponse(), nullValue());
+
+        AtomicInteger updateCalled = new AtomicInteger();
+        TransportShardBulkAction.executeBulkItemRequest(context, null, threadPool::absoluteTimeInMillis,
+            (update, shardId, listener) -> {
+                updateCalled.incrementAndGet();
+                listener.onResponse(null);
+            }, listener -> listener.onResponse(null), ASSERTING_DONE_LISTENER);
+        assertThat(updateCalled.get(), equalTo(1));
+        assertThat(context.getCurrent(), sameInstance(items[3].request()));
+        closeShards(shard);
+    }
+
     public void testExecuteBulkIndexRequestWithMappingUpdates() throws Exception {
 
         BulkItemRequest[] items = new BulkItemRequest[1];
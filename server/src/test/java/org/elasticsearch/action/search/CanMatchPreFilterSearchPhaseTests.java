@@ -19,14 +19,18 @@
 package org.elasticsearch.action.search;
 
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchPhaseResult;
@@ -38,6 +42,7 @@ import org.elasticsearch.search.sort.MinAndMax;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
 import org.elasticsearch.transport.Transport;
 
 import java.io.IOException;
@@ -52,10 +57,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class CanMatchPreFilterSearchPhaseTests extends ESTestCase {
 
@@ -425,4 +433,123 @@ public class CanMatchPreFilterSearchPhaseTests extends ESTestCase {
             assertThat(result.get().size(), equalTo(numShards));
         }
     }
+
+    public void testBatchShardsPerNode() throws InterruptedException {
+        final TransportSearchAction.SearchTimeProvider timeProvider = new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(),
+            System::nanoTime);
+
+        Map<String, Transport.Connection> lookup = new ConcurrentHashMap<>();
+        DiscoveryNode node = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        DiscoveryNode oldNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(),
+            VersionUtils.getPreviousVersion(Version.V_8_0_0));
+        lookup.put(node.getId(), new SearchAsyncActionTests.MockConnection(node));
+        lookup.put(oldNode.getId(), new SearchAsyncActionTests.MockConnection(oldNode));
+        ClusterState clusterState = ClusterState.builder(new ClusterName("test"))
+            .nodes(DiscoveryNodes.builder().add(node).add(oldNode)).build();
+
+        int numShards = randomIntBetween(2, 64);
+        Set<Integer> matchingShards = new HashSet<>();
+        for (int i = 0; i < numShards; i++) {
+            if (randomBoolean()) {
+                matchingShards.add(i);
+            }
+        }
+        AtomicInteger numNodeRequests = new AtomicInteger();
+        Set<ShardId> checkedShards = ConcurrentCollections.newConcurrentSet();
+        SearchTransportService searchTransportService = new SearchTransportService(null, null) {
+            @Override
+            public void sendCanMatch(Transport.Connection connection, ShardSearchRequest request, SearchTask task,
+                                     ActionListener<SearchService.CanMatchResponse> listener) {
+                assertTrue(checkedShards.add(request.shardId()));
+                new Thread(() -> listener.onResponse(
+                    new SearchService.CanMatchResponse(matchingShards.contains(request.shardId().id()), null))).start();
+            }
+
+            @Override
+            void sendCanMatch(Transport.Connection connection, List<ShardSearchRequest> requests, SearchTask task,
+                              List<? extends ActionListener<SearchService.CanMatchResponse>> listeners) {
+                assertThat(connection.getNode(), equalTo(node));
+                assertThat(requests.size(), greaterThanOrEqualTo(2));
+                numNodeRequests.incrementAndGet();
+                new Thread(() -> {
+                    for (int i = 0; i < requests.size(); i++) {
+                        ShardId shardId = requests.get(i).shardId();
+                        assertTrue(checkedShards.add(shardId));
+                        listeners.get(i).onResponse(new SearchService.CanMatchResponse(matchingShards.contains(shardId.id()), null));
+                    }
+                }).start();
+            }
+        };
+
+        AtomicReference<GroupShardsIterator<SearchShardIterator>> result = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        GroupShardsIterator<SearchShardIterator> shardsIter = SearchAsyncActionTests.getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS),
+            numShards, true, node, oldNode);
+        final SearchRequest searchRequest = new SearchRequest();
+        searchRequest.allowPartialSearchResults(true);
+
+        CanMatchPreFilterSearchPhase canMatchPhase = new CanMatchPreFilterSearchPhase(logger,
+            searchTransportService,
+            (clusterAlias, nodeId) -> lookup.get(nodeId),
+            Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
+            Collections.emptyMap(), Collections.emptyMap(), EsExecutors.newDirectExecutorService(),
+            searchRequest, null, shardsIter, timeProvider, clusterState, null,
+            (iter) -> new SearchPhase("test") {
+                @Override
+                public void run() throws IOException {
+                    result.set(iter);
+                    latch.countDown();
+                }}, SearchResponse.Clusters.EMPTY);
+
+        canMatchPhase.start();
+        latch.await();
+
+        assertThat(checkedShards.size(), equalTo(numShards));
+        assertThat(numNodeRequests.get(), lessThanOrEqualTo(1));
+        for (SearchShardIterator iter : result.get()) {
+            if (matchingShards.isEmpty()) {
+                // the first shard is always searched to produce a valid response
+                assertThat(iter.skip(), equalTo(iter.shardId().id() != 0));
+            } else {
+                assertThat(iter.skip(), equalTo(matchingShards.contains(iter.shardId().id()) == false));
+            }
+        }
+    }
+
+    public void testNodeCanMatchResponseSerialization() throws IOException {
+        int numShards = randomIntBetween(1, 130);
+        FixedBitSet canMatch = new FixedBitSet(numShards);
+        MinAndMax<?>[] minAndMaxes = new MinAndMax<?>[numShards];
+        Exception[] failures = new Exception[numShards];
+        for (int i = 0; i < numShards; i++) {
+            if (randomBoolean()) {
+                canMatch.set(i);
+            }
+            if (randomBoolean()) {
+                long min = randomLong();
+                minAndMaxes[i] = new MinAndMax<>(min, randomLongBetween(min, Long.MAX_VALUE));
+            }
+            if (randomBoolean()) {
+                failures[i] = new IllegalStateException("shard [" + i + "] failed");
+            }
+        }
+        NodeCanMatchResponse response = copyWriteable(new NodeCanMatchResponse(canMatch, minAndMaxes, failures),
+            writableRegistry(), NodeCanMatchResponse::new);
+        assertThat(response.size(), equalTo(numShards));
+        for (int i = 0; i < numShards; i++) {
+            if (failures[i] != null) {
+                assertThat(response.getFailure(i).getMessage(), equalTo(failures[i].getMessage()));
+            } else {
+                assertNull(response.getFailure(i));
+                assertThat(response.getResponse(i).canMatch(), equalTo(canMatch.get(i)));
+                if (minAndMaxes[i] == null) {
+                    assertNull(response.getResponse(i).minAndMax());
+                } else {
+                    assertThat(response.getResponse(i).minAndMax().getMin(), equalTo(minAndMaxes[i].getMin()));
+                    assertThat(response.getResponse(i).minAndMax().getMax(), equalTo(minAndMaxes[i].getMax()));
+                }
+            }
+        }
+    }
 }
@@ -204,6 +204,28 @@ public class ExpandSearchPhaseTests extends ESTestCase {
         assertNotNull(mockSearchPhaseContext.searchResponse.get());
     }
 
+    public void testSkipExpandOnShards() throws IOException {
+        MockSearchPhaseContext mockSearchPhaseContext = new MockSearchPhaseContext(1);
+        mockSearchPhaseContext.searchTransport = new SearchTransportService(null, null) {
+            @Override
+            void sendExecuteMultiSearch(MultiSearchRequest request, SearchTask task, ActionListener<MultiSearchResponse> listener) {
+                fail("expand should not run when the shards expanded the collapsed hits");
+            }
+        };
+        mockSearchPhaseContext.getRequest().source(new SearchSourceBuilder()
+            .collapse(new CollapseBuilder("someField").setInnerHits(new InnerHitBuilder().setName("foobarbaz")).setExpandOnShards(true)));
+
+        SearchHit hit = new SearchHit(1, "ID", Collections.singletonMap("someField",
+            new DocumentField("someField", Collections.singletonList("foo"))), Collections.emptyMap());
+        SearchHits hits = new SearchHits(new SearchHit[]{hit}, new TotalHits(1, TotalHits.Relation.EQUAL_TO), 1.0f);
+        InternalSearchResponse internalSearchResponse = new InternalSearchResponse(hits, null, null, null, false, null, 1);
+        ExpandSearchPhase phase = new ExpandSearchPhase(mockSearchPhaseContext, internalSearchResponse, null);
+        phase.run();
+        mockSearchPhaseContext.assertNoFailure();
+        assertNotNull(mockSearchPhaseContext.searchResponse.get());
+        assertNull(mockSearchPhaseContext.searchResponse.get().getHits().getAt(0).getInnerHits());
+    }
+
     public void testExpandRequestOptions() throws IOException {
         MockSearchPhaseContext mockSearchPhaseContext = new MockSearchPhaseContext(1);
         boolean version = randomBoolean();
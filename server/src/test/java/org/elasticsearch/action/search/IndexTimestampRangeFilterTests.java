@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.IndexTimestampRange;
+import org.elasticsearch.cluster.metadata.Metadata;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.test.ESTestCase;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class IndexTimestampRangeFilterTests extends ESTestCase {
+
+    private static final long NOW = millis("2020-04-15T12:00:00Z");
+
+    public void testRequiredBounds() {
+        assertBounds(QueryBuilders.matchAllQuery(), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertBounds(new RangeQueryBuilder("other").gte("2020-01-01"), Long.MIN_VALUE, Long.MAX_VALUE);
+        // partial dates are rounded like the shards do
+        assertBounds(new RangeQueryBuilder("@timestamp").gte("2020-01-01").lte("2020-02-01"),
+            millis("2020-01-01T00:00:00Z"), millis("2020-02-01T23:59:59.999Z"));
+        assertBounds(new RangeQueryBuilder("@timestamp").gt("2020-01-01").lt("2020-02-01"),
+            millis("2020-01-02T00:00:00Z"), millis("2020-01-31T23:59:59.999Z"));
+        assertBounds(new RangeQueryBuilder("@timestamp").gt("2020-01-01T10:00:00.000Z").lt("2020-02-01T10:00:00.000Z"),
+            millis("2020-01-01T10:00:00Z") + 1, millis("2020-02-01T10:00:00Z") - 1);
+        assertBounds(new RangeQueryBuilder("@timestamp").gte("now-1d/d"), millis("2020-04-14T00:00:00Z"), Long.MAX_VALUE);
+        assertBounds(new RangeQueryBuilder("@timestamp").lte("now/d"), Long.MIN_VALUE, millis("2020-04-15T23:59:59.999Z"));
+        assertBounds(new RangeQueryBuilder("@timestamp").gte("01/01/2020").format("dd/MM/yyyy").timeZone("+01:00"),
+            millis("2019-12-31T23:00:00Z"), Long.MAX_VALUE);
+        assertBounds(new RangeQueryBuilder("@timestamp").gte(millis("2020-01-01T00:00:00Z")),
+            millis("2020-01-01T00:00:00Z"), Long.MAX_VALUE);
+
+        // required clauses are intersected, optional and negated clauses are ignored
+        assertBounds(QueryBuilders.boolQuery()
+                .must(new RangeQueryBuilder("@timestamp").gte("2020-01-01"))
+                .filter(QueryBuilders.constantScoreQuery(new RangeQueryBuilder("@timestamp").lte("2020-03-01")))
+                .filter(QueryBuilders.boolQuery().filter(new RangeQueryBuilder("@timestamp").gte("2020-02-01")))
+                .should(new RangeQueryBuilder("@timestamp").gte("2020-02-15"))
+                .mustNot(new RangeQueryBuilder("@timestamp").lte("2020-02-15")),
+            millis("2020-02-01T00:00:00Z"), millis("2020-03-01T23:59:59.999Z"));
+
+        // bounds that can not be parsed are ignored
+        assertBounds(new RangeQueryBuilder("@timestamp").gte("not a date"), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public void testRequiredBoundsWithFieldFormat() {
+        long[] bounds = IndexTimestampRangeFilter.requiredBounds(new RangeQueryBuilder("@timestamp").gte("1577836800"),
+            "@timestamp", "epoch_second", () -> NOW);
+        assertThat(bounds[0], equalTo(millis("2020-01-01T00:00:00Z")));
+        assertThat(bounds[1], equalTo(Long.MAX_VALUE));
+    }
+
+    public void testFindIndicesToSkip() {
+        IndexMetadata january = indexMetadata("january", true, 2, 1, range("2020-01-01T00:00:00Z", "2020-01-31T00:00:00Z", 2, 1));
+        IndexMetadata march = indexMetadata("march", true, 2, 1, range("2020-03-01T00:00:00Z", "2020-03-31T00:00:00Z", 2, 1));
+        IndexMetadata empty = indexMetadata("empty", true, 2, 1, IndexTimestampRange.empty("@timestamp", null, 2, 1));
+        IndexMetadata noRange = indexMetadata("no_range", true, 2, 1, null);
+        IndexMetadata staleRange =
+            indexMetadata("stale_range", true, 3, 1, range("2020-01-01T00:00:00Z", "2020-01-31T00:00:00Z", 2, 1));
+        IndexMetadata staleMapping =
+            indexMetadata("stale_mapping", true, 2, 2, range("2020-01-01T00:00:00Z", "2020-01-31T00:00:00Z", 2, 1));
+        IndexMetadata writable = indexMetadata("writable", false, 2, 1, range("2020-01-01T00:00:00Z", "2020-01-31T00:00:00Z", 2, 1));
+        Metadata.Builder metadata = Metadata.builder();
+        for (IndexMetadata indexMetadata : new IndexMetadata[] { january, march, empty, noRange, staleRange, staleMapping, writable }) {
+            metadata.put(indexMetadata, false);
+        }
+        ClusterState clusterState = ClusterState.builder(new ClusterName("test")).metadata(metadata).build();
+        Index[] indices = new Index[] { january.getIndex(), march.getIndex(), empty.getIndex(), noRange.getIndex(),
+            staleRange.getIndex(), staleMapping.getIndex(), writable.getIndex() };
+
+        SearchSourceBuilder source = new SearchSourceBuilder().query(new RangeQueryBuilder("@timestamp").gte("2020-02-01"));
+        Set<Index> indicesToSkip = IndexTimestampRangeFilter.findIndicesToSkip(clusterState, source, indices, () -> NOW);
+        assertThat(indicesToSkip, equalTo(Set.of(january.getIndex(), empty.getIndex())));
+
+        source = new SearchSourceBuilder().query(new RangeQueryBuilder("@timestamp").gte("2020-01-15").lte("2020-03-15"));
+        indicesToSkip = IndexTimestampRangeFilter.findIndicesToSkip(clusterState, source, indices, () -> NOW);
+        assertThat(indicesToSkip, equalTo(Set.of(empty.getIndex())));
+
+        // aggregations that need to visit all documents prevent the skipping
+        source = new SearchSourceBuilder().query(new RangeQueryBuilder("@timestamp").gte("2020-02-01"))
+            .aggregation(AggregationBuilders.global("global"));
+        indicesToSkip = IndexTimestampRangeFilter.findIndicesToSkip(clusterState, source, indices, () -> NOW);
+        assertThat(indicesToSkip, equalTo(Collections.emptySet()));
+
+        indicesToSkip = IndexTimestampRangeFilter.findIndicesToSkip(clusterState, null, indices, () -> NOW);
+        assertThat(indicesToSkip, equalTo(Collections.emptySet()));
+    }
+
+    private static void assertBounds(QueryBuilder query, long expectedFrom, long expectedTo) {
+        long[] bounds = IndexTimestampRangeFilter.requiredBounds(query, "@timestamp", null, () -> NOW);
+        assertThat(bounds[0], equalTo(expectedFrom));
+        assertThat(bounds[1], equalTo(expectedTo));
+    }
+
+    private static IndexTimestampRange range(String min, String max, long settingsVersion, long mappingVersion) {
+        return new IndexTimestampRange("@timestamp", null, millis(min), millis(max), settingsVersion, mappingVersion);
+    }
+
+    private static IndexMetadata indexMetadata(String name, boolean writeBlock, long settingsVersion, long mappingVersion,
+                                               IndexTimestampRange range) {
+        IndexMetadata.Builder builder = IndexMetadata.builder(name)
+            .settings(Settings.builder()
+                .put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+                .put(IndexMetadata.SETTING_INDEX_UUID, name)
+                .put(IndexMetadata.SETTING_BLOCKS_WRITE, writeBlock))
+            .numberOfShards(1)
+            .numberOfReplicas(0)
+            .settingsVersion(settingsVersion)
+            .mappingVersion(mappingVersion);
+        if (range != null) {
+            builder.putCustom(IndexTimestampRange.CUSTOM_KEY, range.toCustomData());
+        }
+        return builder.build();
+    }
+
+    private static long millis(String date) {
+        return Instant.parse(date).toEpochMilli();
+    }
+}
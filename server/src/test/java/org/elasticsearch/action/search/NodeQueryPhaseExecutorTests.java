@@ -0,0 +1,188 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.breaker.TestCircuitBreaker;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.metrics.InternalMax;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
+import org.elasticsearch.search.internal.SearchContextId;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class NodeQueryPhaseExecutorTests extends ESTestCase {
+
+    public void testTrimTopDocs() {
+        final boolean sortByField = randomBoolean();
+        final int numShards = randomIntBetween(2, 8);
+        final int topN = randomIntBetween(1, 20);
+        final List<QuerySearchResult> results = new ArrayList<>();
+        final List<ScoreDoc> allDocs = new ArrayList<>();
+        final List<Integer> allDocsShard = new ArrayList<>();
+        for (int shard = 0; shard < numShards; shard++) {
+            final int numDocs = randomIntBetween(0, topN);
+            final ScoreDoc[] scoreDocs = new ScoreDoc[numDocs];
+            // hits are sorted by descending score or ascending sort value, ties are broken by doc id
+            int value = randomIntBetween(0, 10);
+            for (int i = 0; i < numDocs; i++) {
+                value += randomIntBetween(0, 3);
+                if (sortByField) {
+                    scoreDocs[i] = new FieldDoc(i, Float.NaN, new Object[] { value });
+                } else {
+                    scoreDocs[i] = new ScoreDoc(i, 100 - value);
+                }
+                allDocs.add(scoreDocs[i]);
+                allDocsShard.add(shard);
+            }
+            final TotalHits totalHits = new TotalHits(numDocs, TotalHits.Relation.EQUAL_TO);
+            final TopDocs topDocs = sortByField
+                ? new TopFieldDocs(totalHits, scoreDocs, new SortField[] { new SortField("field", SortField.Type.INT) })
+                : new TopDocs(totalHits, scoreDocs);
+            results.add(newResult(shard, topDocs, sortByField));
+        }
+
+        // the expected top hits of the node, shards are tie-broken by their position
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < allDocs.size(); i++) {
+            order.add(i);
+        }
+        final Comparator<Integer> byValue = sortByField
+            ? Comparator.comparing(i -> (Integer) ((FieldDoc) allDocs.get(i)).fields[0])
+            : Comparator.comparing(i -> -allDocs.get(i).score);
+        order.sort(byValue.thenComparing(allDocsShard::get).thenComparing(i -> allDocs.get(i).doc));
+        final int[] expectedHits = new int[numShards];
+        for (int i = 0; i < Math.min(topN, order.size()); i++) {
+            expectedHits[allDocsShard.get(order.get(i))]++;
+        }
+
+        final long[] totalHits = results.stream().mapToLong(r -> r.topDocs().topDocs.totalHits.value).toArray();
+        NodeQueryPhaseExecutor.trimTopDocs(results, topN);
+        for (int shard = 0; shard < numShards; shard++) {
+            final TopDocs topDocs = results.get(shard).topDocs().topDocs;
+            assertThat(topDocs.scoreDocs.length, equalTo(expectedHits[shard]));
+            assertThat(topDocs.totalHits.value, equalTo(totalHits[shard]));
+            assertEquals(sortByField, topDocs instanceof TopFieldDocs);
+            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                assertThat(topDocs.scoreDocs[i].doc, equalTo(i));
+                assertThat(topDocs.scoreDocs[i].shardIndex, equalTo(-1));
+            }
+        }
+    }
+
+    public void testReduceAggs() {
+        final int numShards = randomIntBetween(2, 8);
+        final List<QuerySearchResult> results = new ArrayList<>();
+        final double max = addMaxAggs(results, numShards);
+        final AtomicLong used = new AtomicLong();
+        final AtomicLong maxUsed = new AtomicLong();
+        final CircuitBreaker circuitBreaker = new NoopCircuitBreaker(CircuitBreaker.REQUEST) {
+            @Override
+            public double addEstimateBytesAndMaybeBreak(long bytes, String label) {
+                maxUsed.accumulateAndGet(used.addAndGet(bytes), Math::max);
+                return used.get();
+            }
+
+            @Override
+            public long addWithoutBreaking(long bytes) {
+                return used.addAndGet(bytes);
+            }
+        };
+        long aggsSize = 0;
+        for (QuerySearchResult result : results) {
+            aggsSize += result.aggregations().getSerializedSize();
+        }
+        NodeQueryPhaseExecutor.reduceAggs(results, newReduceContext(), circuitBreaker);
+
+        final InternalAggregations reduced = results.get(0).consumeAggs().get();
+        assertThat(((InternalMax) reduced.get("max")).getValue(), equalTo(max));
+        for (int shard = 1; shard < numShards; shard++) {
+            assertTrue(results.get(shard).hasAggs());
+            assertThat(results.get(shard).consumeAggs().get(), sameInstance(InternalAggregations.EMPTY));
+        }
+        assertThat(maxUsed.get(), equalTo(aggsSize + NodeQueryPhaseExecutor.estimateRamBytesUsedForReduce(aggsSize)));
+        assertThat(used.get(), equalTo(0L));
+    }
+
+    public void testReduceAggsTripsCircuitBreaker() {
+        final int numShards = randomIntBetween(2, 8);
+        final List<QuerySearchResult> results = new ArrayList<>();
+        addMaxAggs(results, numShards);
+        final TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+        circuitBreaker.startBreaking();
+        expectThrows(CircuitBreakingException.class,
+            () -> NodeQueryPhaseExecutor.reduceAggs(results, newReduceContext(), circuitBreaker));
+        // the shard aggregations are left untouched when the reduction is rejected
+        for (QuerySearchResult result : results) {
+            assertTrue(result.hasAggs());
+            assertThat(result.consumeAggs().get().asList().size(), equalTo(1));
+        }
+    }
+
+    private static double addMaxAggs(List<QuerySearchResult> results, int numShards) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int shard = 0; shard < numShards; shard++) {
+            final QuerySearchResult result = newResult(shard, new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO),
+                new ScoreDoc[0]), false);
+            final double value = randomDouble();
+            max = Math.max(max, value);
+            result.aggregations(new InternalAggregations(
+                Collections.singletonList(new InternalMax("max", value, DocValueFormat.RAW, null))));
+            results.add(result);
+        }
+        return max;
+    }
+
+    private static InternalAggregation.ReduceContext newReduceContext() {
+        return InternalAggregation.ReduceContext.forPartialReduction(BigArrays.NON_RECYCLING_INSTANCE, null, () -> PipelineTree.EMPTY);
+    }
+
+    private static QuerySearchResult newResult(int shard, TopDocs topDocs, boolean sortByField) {
+        final QuerySearchResult result = new QuerySearchResult(new SearchContextId("", shard),
+            new SearchShardTarget("node", new ShardId("index", "uuid", shard), null, OriginalIndices.NONE));
+        result.topDocs(new TopDocsAndMaxScore(topDocs, Float.NaN),
+            sortByField ? new DocValueFormat[] { DocValueFormat.RAW } : new DocValueFormat[0]);
+        return result;
+    }
+}
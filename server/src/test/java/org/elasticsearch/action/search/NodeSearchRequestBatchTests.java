@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.TestShardRouting;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.SearchService.CanMatchResponse;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.transport.Transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class NodeSearchRequestBatchTests extends ESTestCase {
+
+    private static SearchShardIterator shardIt(int shardId, String nodeId, boolean skip) {
+        final ShardId id = new ShardId("index", "_na_", shardId);
+        final SearchShardIterator shardIt = new SearchShardIterator(null, id,
+            Collections.singletonList(TestShardRouting.newShardRouting(id, nodeId, true, ShardRoutingState.STARTED)),
+            new OriginalIndices(new String[] { "index" }, IndicesOptions.strictExpandOpenAndForbidClosed()));
+        if (skip) {
+            shardIt.resetAndSkip();
+        }
+        return shardIt;
+    }
+
+    private static SearchActionListener<CanMatchResponse> listener(int shardIndex, List<Exception> failures) {
+        return new SearchActionListener<>(null, shardIndex) {
+            @Override
+            protected void innerOnResponse(CanMatchResponse response) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failures.add(e);
+            }
+        };
+    }
+
+    /**
+     * Records the requests that were sent per node, a single shard request is recorded as a list of one request.
+     */
+    private static class RecordingSender implements NodeSearchRequestBatch.Sender<CanMatchResponse> {
+        final List<Transport.Connection> connections = new CopyOnWriteArrayList<>();
+        final List<List<ShardId>> shardRequests = new CopyOnWriteArrayList<>();
+        final List<List<ShardId>> nodeRequests = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void sendShardRequest(Transport.Connection connection, ShardSearchRequest request,
+                                     SearchActionListener<CanMatchResponse> listener) {
+            connections.add(connection);
+            shardRequests.add(List.of(request.shardId()));
+        }
+
+        @Override
+        public void sendNodeRequest(Transport.Connection connection, List<ShardSearchRequest> requests,
+                                    List<SearchActionListener<CanMatchResponse>> listeners) {
+            assertThat(listeners.size(), equalTo(requests.size()));
+            connections.add(connection);
+            nodeRequests.add(requests.stream().map(ShardSearchRequest::shardId).collect(Collectors.toList()));
+        }
+    }
+
+    public void testSendsBatchOnceAllShardsOfTheNodeAreAdded() {
+        final List<SearchShardIterator> shardIts = List.of(shardIt(0, "node_1", false), shardIt(1, "node_2", false),
+            shardIt(2, "node_1", false), shardIt(3, "node_1", true), shardIt(4, "node_3", false));
+        final DiscoveryNode node = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        final Transport.Connection connection = new SearchAsyncActionTests.MockConnection(node);
+        final RecordingSender sender = new RecordingSender();
+        final Map<String, NodeSearchRequestBatch<CanMatchResponse>> batches = NodeSearchRequestBatch.groupByNode(
+            new GroupShardsIterator<>(shardIts), shardIt -> shardIt.shardId().id() != 4, nodeId -> connection,
+            shardIt -> new ShardSearchRequest(shardIt.shardId(), 0L, null), sender);
+        // skipped shards and shards that can't be batched are sent per shard by the caller
+        assertThat(batches.keySet(), equalTo(Set.of("node_1", "node_2")));
+
+        final List<Exception> failures = new ArrayList<>();
+        final NodeSearchRequestBatch<CanMatchResponse> batch = batches.get("node_1");
+        assertTrue(batch.add(shardIts.get(2), listener(2, failures)));
+        assertThat(sender.nodeRequests, equalTo(List.of()));
+        assertTrue(batch.add(shardIts.get(0), listener(0, failures)));
+        assertThat(sender.nodeRequests, equalTo(List.of(List.of(shardIts.get(2).shardId(), shardIts.get(0).shardId()))));
+        assertThat(sender.connections, equalTo(List.of(connection)));
+        // retries of shards that were already sent are sent per shard by the caller
+        assertFalse(batch.add(shardIts.get(0), listener(0, failures)));
+        assertFalse(batch.add(shardIts.get(1), listener(1, failures)));
+
+        // a batch of a single shard is sent as a shard request
+        assertTrue(batches.get("node_2").add(shardIts.get(1), listener(1, failures)));
+        assertThat(sender.shardRequests, equalTo(List.of(List.of(shardIts.get(1).shardId()))));
+        assertThat(failures, equalTo(List.of()));
+    }
+
+    public void testFailures() {
+        final List<SearchShardIterator> shardIts = List.of(shardIt(0, "node_1", false), shardIt(1, "node_1", false),
+            shardIt(2, "node_2", false));
+        final RuntimeException buildFailure = new IllegalArgumentException("simulated");
+        final RuntimeException connectionFailure = new IllegalStateException("simulated");
+        final RecordingSender sender = new RecordingSender();
+        final Map<String, NodeSearchRequestBatch<CanMatchResponse>> batches = NodeSearchRequestBatch.groupByNode(
+            new GroupShardsIterator<>(shardIts), shardIt -> true, nodeId -> {
+                if (nodeId.equals("node_2")) {
+                    throw connectionFailure;
+                }
+                return null;
+            }, shardIt -> {
+                if (shardIt.shardId().id() == 0) {
+                    throw buildFailure;
+                }
+                return new ShardSearchRequest(shardIt.shardId(), 0L, null);
+            }, sender);
+
+        // a shard whose request can't be built fails on its own, the others are still sent
+        final List<Exception> failures = new ArrayList<>();
+        assertTrue(batches.get("node_1").add(shardIts.get(0), listener(0, failures)));
+        assertThat(failures, equalTo(List.of(buildFailure)));
+        assertTrue(batches.get("node_1").add(shardIts.get(1), listener(1, failures)));
+        assertThat(sender.shardRequests, equalTo(List.of(List.of(shardIts.get(1).shardId()))));
+
+        // all the shards of a batch fail if the node can't be reached
+        failures.clear();
+        assertTrue(batches.get("node_2").add(shardIts.get(2), listener(2, failures)));
+        assertThat(failures.size(), equalTo(1));
+        assertThat(failures.get(0), sameInstance(connectionFailure));
+        assertThat(sender.nodeRequests, equalTo(List.of()));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class PointInTimeIT extends ESIntegTestCase {
+
+    private String openPointInTime(String index, TimeValue keepAlive) {
+        final OpenPointInTimeRequest request = new OpenPointInTimeRequest(index).keepAlive(keepAlive);
+        return client().execute(OpenPointInTimeAction.INSTANCE, request).actionGet().getPointInTimeId();
+    }
+
+    private ClosePointInTimeResponse closePointInTime(String id) {
+        return client().execute(ClosePointInTimeAction.INSTANCE, new ClosePointInTimeRequest(id)).actionGet();
+    }
+
+    private SearchRequestBuilder preparePointInTimeSearch(String id) {
+        // the randomizing client may set a preference, which point in time searches don't support
+        return client().prepareSearch().setPreference(null)
+            .setSource(new SearchSourceBuilder().pointInTimeBuilder(new PointInTimeBuilder(id, TimeValue.timeValueMinutes(1))));
+    }
+
+    private int openReaderContexts() {
+        int total = 0;
+        for (SearchService searchService : internalCluster().getInstances(SearchService.class)) {
+            total += searchService.getActiveReaderContexts();
+        }
+        return total;
+    }
+
+    public void testSearchSeesThePointInTime() {
+        final int numShards = randomIntBetween(1, 5);
+        createIndex("test", Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numShards).build());
+        ensureGreen("test");
+        final int numDocs = randomIntBetween(10, 50);
+        for (int i = 0; i < numDocs; i++) {
+            indexDoc("test", Integer.toString(i), "value", i);
+        }
+        refresh("test");
+
+        final String pitId = openPointInTime("test", TimeValue.timeValueMinutes(2));
+        assertThat(openReaderContexts(), equalTo(numShards));
+        final int moreDocs = randomIntBetween(1, 50);
+        for (int i = numDocs; i < numDocs + moreDocs; i++) {
+            indexDoc("test", Integer.toString(i), "value", i);
+        }
+        final boolean deleted = randomBoolean();
+        if (deleted) {
+            client().prepareDelete("test", "0").get();
+        }
+        refresh("test");
+
+        assertHitCount(client().prepareSearch("test").setSize(0).get(), numDocs + moreDocs - (deleted ? 1 : 0));
+        for (int round = 0; round < 3; round++) {
+            final SearchResponse response = preparePointInTimeSearch(pitId).setSize(0).get();
+            assertNoFailures(response);
+            assertHitCount(response, numDocs);
+        }
+        final SearchResponse filtered = preparePointInTimeSearch(pitId)
+            .setQuery(QueryBuilders.rangeQuery("value").gte(numDocs / 2)).setSize(0).get();
+        assertHitCount(filtered, numDocs - numDocs / 2);
+
+        final ClosePointInTimeResponse closeResponse = closePointInTime(pitId);
+        assertTrue(closeResponse.isSucceeded());
+        assertThat(closeResponse.getNumFreed(), equalTo(numShards));
+        assertThat(openReaderContexts(), equalTo(0));
+
+        expectThrows(SearchPhaseExecutionException.class, () -> preparePointInTimeSearch(pitId).get());
+        assertThat(closePointInTime(pitId).getNumFreed(), equalTo(0));
+    }
+
+    public void testRejectIndicesWithPointInTime() {
+        createIndex("test");
+        ensureGreen("test");
+        final String pitId = openPointInTime("test", TimeValue.timeValueMinutes(1));
+        try {
+            final SearchRequest request = new SearchRequest("test")
+                .source(new SearchSourceBuilder().pointInTimeBuilder(new PointInTimeBuilder(pitId, null)));
+            ActionRequestValidationException e = expectThrows(ActionRequestValidationException.class,
+                () -> client().search(request).actionGet());
+            assertThat(e.getMessage(), containsString("[indices] cannot be used with point in time"));
+        } finally {
+            closePointInTime(pitId);
+        }
+    }
+
+    public void testOpenPointInTimeRequiresKeepAlive() {
+        createIndex("test");
+        ActionRequestValidationException e = expectThrows(ActionRequestValidationException.class,
+            () -> client().execute(OpenPointInTimeAction.INSTANCE, new OpenPointInTimeRequest("test")).actionGet());
+        assertThat(e.getMessage(), containsString("[keep_alive] is not specified"));
+    }
+
+    public void testFreeReaderContextsOnIndexDeletion() {
+        createIndex("test");
+        ensureGreen("test");
+        openPointInTime("test", TimeValue.timeValueMinutes(5));
+        assertThat(openReaderContexts(), equalTo(getNumShards("test").numPrimaries));
+        client().admin().indices().prepareDelete("test").get();
+        assertThat(openReaderContexts(), equalTo(0));
+    }
+}
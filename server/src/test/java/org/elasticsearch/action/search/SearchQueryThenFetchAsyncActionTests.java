@@ -25,7 +25,10 @@ import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TotalHits;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
@@ -43,9 +46,11 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.InternalAggregationTestCase;
+import org.elasticsearch.test.VersionUtils;
 import org.elasticsearch.transport.Transport;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -55,6 +60,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
     public void testBottomFieldSort() throws InterruptedException {
@@ -130,7 +136,7 @@ public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
             Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
             Collections.emptyMap(), Collections.emptyMap(), controller, EsExecutors.newDirectExecutorService(), searchRequest,
             null, shardsIter, timeProvider, null, task,
-            SearchResponse.Clusters.EMPTY) {
+            SearchResponse.Clusters.EMPTY, false) {
             @Override
             protected SearchPhase getNextPhase(SearchPhaseResults<SearchPhaseResult> results, SearchPhaseContext context) {
                 return new SearchPhase("test") {
@@ -165,4 +171,119 @@ public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
         assertThat(((FieldDoc) phase.sortedTopDocs.scoreDocs[0]).fields.length, equalTo(1));
         assertThat(((FieldDoc) phase.sortedTopDocs.scoreDocs[0]).fields[0], equalTo(0));
     }
+
+    public void testBatchedQueryPhase() throws InterruptedException {
+        final TransportSearchAction.SearchTimeProvider timeProvider =
+            new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(), System::nanoTime);
+
+        Map<String, Transport.Connection> lookup = new ConcurrentHashMap<>();
+        DiscoveryNode primaryNode = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        DiscoveryNode replicaNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(), Version.CURRENT);
+        lookup.put(primaryNode.getId(), new SearchAsyncActionTests.MockConnection(primaryNode));
+        lookup.put(replicaNode.getId(), new SearchAsyncActionTests.MockConnection(replicaNode));
+        ClusterState clusterState = ClusterState.builder(new ClusterName("test"))
+            .nodes(DiscoveryNodes.builder().add(primaryNode).add(replicaNode)).build();
+
+        int numShards = randomIntBetween(10, 20);
+        int maxConcurrentShardRequests = randomIntBetween(1, 4);
+        Map<String, Integer> shardsPerNode = new ConcurrentHashMap<>();
+        AtomicInteger numShardRequests = new AtomicInteger();
+        SearchTransportService searchTransportService = new SearchTransportService(null, null) {
+            @Override
+            public void sendExecuteQuery(Transport.Connection connection, ShardSearchRequest request,
+                                         SearchTask task, SearchActionListener<SearchPhaseResult> listener) {
+                numShardRequests.incrementAndGet();
+                shardsPerNode.merge(connection.getNode().getId(), 1, Integer::sum);
+                new Thread(() -> listener.onResponse(newQueryResult(request))).start();
+            }
+
+            @Override
+            void sendExecuteNodeQuery(Transport.Connection connection, List<ShardSearchRequest> requests, int maxConcurrentRequests,
+                                      SearchTask task, List<SearchActionListener<SearchPhaseResult>> listeners) {
+                assertThat(requests.size(), greaterThanOrEqualTo(2));
+                // the node throttles the shard executions of the batch
+                assertThat(maxConcurrentRequests, equalTo(maxConcurrentShardRequests));
+                assertNull("expected a single request per node", shardsPerNode.put(connection.getNode().getId(), requests.size()));
+                new Thread(() -> {
+                    for (int i = 0; i < requests.size(); i++) {
+                        listeners.get(i).onResponse(newQueryResult(requests.get(i)));
+                    }
+                }).start();
+            }
+        };
+        CountDownLatch latch = new CountDownLatch(1);
+        GroupShardsIterator<SearchShardIterator> shardsIter = SearchAsyncActionTests.getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS),
+            numShards, randomBoolean(), primaryNode, replicaNode);
+        final SearchRequest searchRequest = new SearchRequest();
+        searchRequest.setMaxConcurrentShardRequests(maxConcurrentShardRequests);
+        searchRequest.source(new SearchSourceBuilder()
+            .size(1)
+            .sort(SortBuilders.fieldSort("timestamp")));
+        searchRequest.allowPartialSearchResults(false);
+        assertTrue(SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest, shardsIter, clusterState));
+        SearchPhaseController controller = new SearchPhaseController(r -> InternalAggregationTestCase.emptyReduceContextBuilder());
+        SearchTask task = new SearchTask(0, "n/a", "n/a", "test", null, Collections.emptyMap());
+        SearchQueryThenFetchAsyncAction action = new SearchQueryThenFetchAsyncAction(logger,
+            searchTransportService, (clusterAlias, node) -> lookup.get(node),
+            Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
+            Collections.emptyMap(), Collections.emptyMap(), controller, EsExecutors.newDirectExecutorService(), searchRequest,
+            null, shardsIter, timeProvider, clusterState, task,
+            SearchResponse.Clusters.EMPTY, true) {
+            @Override
+            protected SearchPhase getNextPhase(SearchPhaseResults<SearchPhaseResult> results, SearchPhaseContext context) {
+                return new SearchPhase("test") {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                };
+            }
+        };
+        action.start();
+        latch.await();
+        assertThat(shardsPerNode.values().stream().mapToInt(Integer::intValue).sum(), equalTo(numShards));
+        // only nodes that hold a single shard receive a shard level request
+        assertThat(numShardRequests.get(), lessThanOrEqualTo(2));
+        SearchPhaseController.ReducedQueryPhase phase = action.results.reduce();
+        assertThat(phase.totalHits.value, equalTo((long) numShards));
+        assertThat(phase.sortedTopDocs.scoreDocs.length, equalTo(1));
+        assertThat(((FieldDoc) phase.sortedTopDocs.scoreDocs[0]).fields[0], equalTo(0));
+    }
+
+    public void testCanBatchQueryPhase() {
+        DiscoveryNode node = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        DiscoveryNode oldNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(),
+            VersionUtils.getPreviousVersion(Version.V_8_0_0));
+        ClusterState clusterState = ClusterState.builder(new ClusterName("test"))
+            .nodes(DiscoveryNodes.builder().add(node).add(oldNode)).build();
+        OriginalIndices originalIndices = new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS);
+        SearchRequest searchRequest = new SearchRequest();
+
+        assertTrue(SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest,
+            SearchAsyncActionTests.getShardsIter("idx", originalIndices, 2, false, node, null), clusterState));
+        // single shard requests fetch in the query phase
+        assertFalse(SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest,
+            SearchAsyncActionTests.getShardsIter("idx", originalIndices, 1, false, node, null), clusterState));
+        // nodes before 8.0 don't handle the node level query phase
+        assertFalse(SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest,
+            SearchAsyncActionTests.getShardsIter("idx", originalIndices, 2, false, oldNode, null), clusterState));
+        // scroll requests track their state per shard
+        searchRequest.scroll(TimeValue.timeValueMillis(100));
+        assertFalse(SearchQueryThenFetchAsyncAction.canBatchQueryPhase(searchRequest,
+            SearchAsyncActionTests.getShardsIter("idx", originalIndices, 2, false, node, null), clusterState));
+    }
+
+    private static QuerySearchResult newQueryResult(ShardSearchRequest request) {
+        int shardId = request.shardId().id();
+        QuerySearchResult queryResult = new QuerySearchResult(new SearchContextId("N/A", 123),
+            new SearchShardTarget("node1", new ShardId("idx", "na", shardId), null, OriginalIndices.NONE));
+        queryResult.topDocs(new TopDocsAndMaxScore(new TopFieldDocs(new TotalHits(1, TotalHits.Relation.EQUAL_TO),
+                new FieldDoc[] { new FieldDoc(0, Float.NaN, new Object[] { shardId }) },
+                new SortField[] { new SortField("timestamp", SortField.Type.LONG) }), Float.NaN),
+            new DocValueFormat[] { DocValueFormat.RAW });
+        queryResult.from(0);
+        queryResult.size(1);
+        return queryResult;
+    }
 }
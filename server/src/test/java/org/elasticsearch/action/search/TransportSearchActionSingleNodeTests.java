@@ -23,7 +23,11 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.IndexTimestampRange;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
@@ -32,8 +36,13 @@ import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.aggregations.support.ValueType;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.greaterThan;
+
 public class TransportSearchActionSingleNodeTests extends ESSingleNodeTestCase {
 
     public void testLocalClusterAlias() {
@@ -174,4 +183,128 @@ public class TransportSearchActionSingleNodeTests extends ESSingleNodeTestCase {
             assertEquals(2, longTerms.getBuckets().size());
         }
     }
+
+    public void testBatchedQueryPhase() {
+        int numShards = randomIntBetween(2, 6);
+        client().admin().indices().prepareCreate("test")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numShards)).get();
+        int numDocs = randomIntBetween(1, 50);
+        for (int i = 0; i < numDocs; i++) {
+            client().prepareIndex("test").setId(Integer.toString(i)).setSource("price", i % 7, "rank", i).get();
+        }
+        client().admin().indices().prepareRefresh("test").get();
+
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .size(randomIntBetween(1, 10))
+            .from(randomIntBetween(0, 5))
+            .sort("rank", SortOrder.DESC)
+            .aggregation(new TermsAggregationBuilder("terms").userValueTypeHint(ValueType.NUMERIC).field("price"));
+        SearchResponse expected = client().search(new SearchRequest("test").source(source)).actionGet();
+        client().admin().cluster().prepareUpdateSettings()
+            .setTransientSettings(Settings.builder().put(TransportSearchAction.BATCHED_QUERY_PHASE_SETTING.getKey(), true)).get();
+        try {
+            SearchResponse searchResponse = client().search(new SearchRequest("test").source(source)).actionGet();
+            assertEquals(numShards, searchResponse.getSuccessfulShards());
+            assertEquals(numDocs, searchResponse.getHits().getTotalHits().value);
+            assertEquals(expected.getHits().getHits().length, searchResponse.getHits().getHits().length);
+            for (int i = 0; i < searchResponse.getHits().getHits().length; i++) {
+                assertEquals(expected.getHits().getAt(i).getId(), searchResponse.getHits().getAt(i).getId());
+            }
+            LongTerms expectedTerms = expected.getAggregations().get("terms");
+            LongTerms terms = searchResponse.getAggregations().get("terms");
+            assertEquals(expectedTerms.getBuckets().size(), terms.getBuckets().size());
+            for (int i = 0; i < terms.getBuckets().size(); i++) {
+                assertEquals(expectedTerms.getBuckets().get(i).getKey(), terms.getBuckets().get(i).getKey());
+                assertEquals(expectedTerms.getBuckets().get(i).getDocCount(), terms.getBuckets().get(i).getDocCount());
+            }
+        } finally {
+            client().admin().cluster().prepareUpdateSettings()
+                .setTransientSettings(Settings.builder().putNull(TransportSearchAction.BATCHED_QUERY_PHASE_SETTING.getKey())).get();
+        }
+    }
+
+    public void testCanMatchShardsOfNode() {
+        int numShards = randomIntBetween(2, 6);
+        client().admin().indices().prepareCreate("test")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numShards)).get();
+        for (int i = 0; i < numShards * 4; i++) {
+            client().prepareIndex("test").setId(Integer.toString(i)).setSource("date", "2020-01-0" + (i % 9 + 1)).get();
+        }
+        client().admin().indices().prepareRefresh("test").get();
+
+        SearchRequest searchRequest = new SearchRequest("test")
+            .source(new SearchSourceBuilder().query(new RangeQueryBuilder("date").gte("2020-02-01")));
+        searchRequest.setPreFilterShardSize(1);
+        SearchResponse searchResponse = client().search(searchRequest).actionGet();
+        assertEquals(numShards, searchResponse.getTotalShards());
+        assertEquals(numShards, searchResponse.getSuccessfulShards());
+        // the first shard is always searched to produce a valid response
+        assertEquals(numShards - 1, searchResponse.getSkippedShards());
+        assertEquals(0, searchResponse.getHits().getTotalHits().value);
+    }
+
+    public void testSkipIndicesOutsideTimestampRange() throws Exception {
+        int numOldShards = randomIntBetween(1, 3);
+        int numNewShards = randomIntBetween(1, 3);
+        client().admin().indices().prepareCreate("old")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numOldShards)
+                .put(IndexSettings.INDEX_SEARCH_TIMESTAMP_FIELD_SETTING.getKey(), "@timestamp"))
+            .setMapping("@timestamp", "type=date").get();
+        client().admin().indices().prepareCreate("new")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numNewShards)
+                .put(IndexSettings.INDEX_SEARCH_TIMESTAMP_FIELD_SETTING.getKey(), "@timestamp"))
+            .setMapping("@timestamp", "type=date").get();
+        for (int i = 1; i <= 9; i++) {
+            client().prepareIndex("old").setSource("@timestamp", "2020-01-0" + i).get();
+            client().prepareIndex("new").setSource("@timestamp", "2020-03-0" + i).get();
+        }
+        client().admin().indices().prepareRefresh("new").get();
+        client().admin().indices().prepareUpdateSettings("old")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_BLOCKS_WRITE, true)).get();
+        assertBusy(() -> {
+            IndexMetadata indexMetadata = client().admin().cluster().prepareState().get().getState().metadata().index("old");
+            IndexTimestampRange range = IndexTimestampRange.fromIndexMetadata(indexMetadata);
+            assertNotNull(range);
+            assertTrue(range.isCurrent(indexMetadata));
+            assertEquals("@timestamp", range.getField());
+            assertEquals(Instant.parse("2020-01-01T00:00:00Z").toEpochMilli(), range.getMin());
+            assertEquals(Instant.parse("2020-01-09T00:00:00Z").toEpochMilli(), range.getMax());
+        });
+
+        SearchRequest searchRequest = new SearchRequest("old", "new")
+            .source(new SearchSourceBuilder().query(new RangeQueryBuilder("@timestamp").gte("2020-02-01")));
+        // with or without the can_match phase, the shards of the old index must not be hit at all
+        SearchResponse searchResponse = null;
+        for (int preFilterShardSize : new int[] { 1, Integer.MAX_VALUE }) {
+            searchRequest.setPreFilterShardSize(preFilterShardSize);
+            searchResponse = client().search(searchRequest).actionGet();
+            assertEquals(numOldShards + numNewShards, searchResponse.getTotalShards());
+            assertEquals(numOldShards + numNewShards, searchResponse.getSuccessfulShards());
+            assertEquals(numOldShards, searchResponse.getSkippedShards());
+            assertEquals(9, searchResponse.getHits().getTotalHits().value);
+        }
+
+        // the range is computed again once the mapping changes
+        long mappingVersion = client().admin().cluster().prepareState().get().getState().metadata().index("old").getMappingVersion();
+        client().admin().indices().preparePutMapping("old").setSource("message", "type=keyword").get();
+        assertBusy(() -> {
+            IndexMetadata indexMetadata = client().admin().cluster().prepareState().get().getState().metadata().index("old");
+            assertThat(indexMetadata.getMappingVersion(), greaterThan(mappingVersion));
+            IndexTimestampRange range = IndexTimestampRange.fromIndexMetadata(indexMetadata);
+            assertNotNull(range);
+            assertTrue(range.isCurrent(indexMetadata));
+            assertEquals(indexMetadata.getMappingVersion(), range.getMappingVersion());
+        });
+
+        client().admin().indices().prepareUpdateSettings("old")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_BLOCKS_WRITE, false)).get();
+        assertBusy(() -> {
+            IndexMetadata indexMetadata = client().admin().cluster().prepareState().get().getState().metadata().index("old");
+            assertNull(IndexTimestampRange.fromIndexMetadata(indexMetadata));
+        });
+        searchResponse = client().search(searchRequest).actionGet();
+        assertEquals(numOldShards + numNewShards, searchResponse.getSuccessfulShards());
+        assertEquals(0, searchResponse.getSkippedShards());
+        assertEquals(9, searchResponse.getHits().getTotalHits().value);
+    }
 }
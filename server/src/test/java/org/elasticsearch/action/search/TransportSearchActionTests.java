@@ -203,6 +203,48 @@ public class TransportSearchActionTests extends ESTestCase {
         assertEquals(expected, result);
     }
 
+    public void testSkipIndicesOutsideTimestampRange() {
+        Index january = new Index("january", "january_uuid");
+        Index march = new Index("march", "march_uuid");
+        String localClusterAlias = randomBoolean() ? null : "local";
+        OriginalIndices localIndices = OriginalIndicesTests.randomOriginalIndices();
+        List<SearchShardIterator> iterators = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            iterators.add(createSearchShardIterator(i, january, localIndices, localClusterAlias));
+            iterators.add(createSearchShardIterator(i, march, localIndices, localClusterAlias));
+        }
+        // a remote index with the same uuid is not skipped
+        SearchShardIterator remoteIterator = createSearchShardIterator(0, january, OriginalIndicesTests.randomOriginalIndices(),
+            "remote");
+        iterators.add(remoteIterator);
+        GroupShardsIterator<SearchShardIterator> shardIterators = GroupShardsIterator.sortAndCreate(iterators);
+
+        TransportSearchAction.skipIndicesOutsideTimestampRange(shardIterators, localClusterAlias, Collections.emptySet());
+        for (SearchShardIterator iterator : shardIterators) {
+            assertFalse(iterator.skip());
+        }
+
+        TransportSearchAction.skipIndicesOutsideTimestampRange(shardIterators, localClusterAlias, Collections.singleton(january));
+        for (SearchShardIterator iterator : shardIterators) {
+            boolean skipped = iterator != remoteIterator && iterator.shardId().getIndex().equals(january);
+            assertEquals(skipped, iterator.skip());
+        }
+
+        // one shard is kept when all shards can be skipped
+        iterators.clear();
+        for (int i = 0; i < 2; i++) {
+            iterators.add(createSearchShardIterator(i, january, localIndices, localClusterAlias));
+            iterators.add(createSearchShardIterator(i, march, localIndices, localClusterAlias));
+        }
+        shardIterators = GroupShardsIterator.sortAndCreate(iterators);
+        TransportSearchAction.skipIndicesOutsideTimestampRange(shardIterators, localClusterAlias, Set.of(january, march));
+        int numSkipped = 0;
+        for (SearchShardIterator iterator : shardIterators) {
+            numSkipped += iterator.skip() ? 1 : 0;
+        }
+        assertEquals(shardIterators.size() - 1, numSkipped);
+    }
+
     public void testProcessRemoteShards() {
         try (TransportService transportService = MockTransportService.createNewService(Settings.EMPTY, Version.CURRENT, threadPool,
             null)) {
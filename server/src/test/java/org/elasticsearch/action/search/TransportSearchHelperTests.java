@@ -28,6 +28,8 @@ import org.elasticsearch.search.internal.SearchContextId;
 import org.elasticsearch.test.ESTestCase;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.equalTo;
 
@@ -82,4 +84,26 @@ public class TransportSearchHelperTests extends ESTestCase {
             assertThat(parseScrollId.getContext()[2].getContextId().getReaderId(), equalTo(""));
         }
     }
+
+    public void testParsePointInTimeId() throws IOException {
+        final Map<ShardId, ScrollIdForNode> readers = new HashMap<>();
+        final int numShards = randomIntBetween(0, 10);
+        for (int i = 0; i < numShards; i++) {
+            readers.put(new ShardId(randomAlphaOfLength(5), randomAlphaOfLength(8), i),
+                new ScrollIdForNode(null, randomAlphaOfLength(6), new SearchContextId(randomAlphaOfLength(8), randomNonNegativeLong())));
+        }
+        final Map<ShardId, ScrollIdForNode> parsed =
+            TransportSearchHelper.parsePointInTimeId(TransportSearchHelper.buildPointInTimeId(readers));
+        assertThat(parsed.keySet(), equalTo(readers.keySet()));
+        for (Map.Entry<ShardId, ScrollIdForNode> entry : readers.entrySet()) {
+            final ScrollIdForNode reader = parsed.get(entry.getKey());
+            assertNull(reader.getClusterAlias());
+            assertThat(reader.getNode(), equalTo(entry.getValue().getNode()));
+            assertThat(reader.getContextId(), equalTo(entry.getValue().getContextId()));
+        }
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> TransportSearchHelper.parsePointInTimeId(randomAlphaOfLength(10)));
+        assertThat(e.getMessage(), equalTo("Cannot parse point in time id"));
+    }
 }
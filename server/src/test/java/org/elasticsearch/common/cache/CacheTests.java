@@ -42,13 +42,16 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class CacheTests extends ESTestCase {
     private int numberOfEntries;
@@ -943,4 +946,149 @@ public class CacheTests extends ESTestCase {
             assertEquals(RemovalNotification.RemovalReason.INVALIDATED, removalNotifications.get(i).getRemovalReason());
         }
     }
+
+    public void testReadBuffer() {
+        Cache.ReadBuffer<Integer, String> buffer = new Cache.ReadBuffer<>();
+        List<Cache.Entry<Integer, String>> entries = new ArrayList<>();
+        for (int i = 0; i < Cache.ReadBuffer.SIZE; i++) {
+            Cache.Entry<Integer, String> entry = new Cache.Entry<>(i, Integer.toString(i), 0);
+            entries.add(entry);
+            assertEquals(i + 1 >= Cache.ReadBuffer.DRAIN_THRESHOLD, buffer.offer(entry));
+        }
+        // reads are dropped once the buffer is full
+        assertTrue(buffer.offer(new Cache.Entry<>(-1, "-1", 0)));
+
+        List<Cache.Entry<Integer, String>> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        assertEquals(entries, drained);
+        drained.clear();
+        buffer.drain(drained::add);
+        assertThat(drained, empty());
+
+        // the buffer wraps around after it was drained
+        Cache.Entry<Integer, String> entry = new Cache.Entry<>(0, "0", 0);
+        assertFalse(buffer.offer(entry));
+        buffer.drain(drained::add);
+        assertEquals(List.of(entry), drained);
+    }
+
+    // reads are buffered, but they must still protect the entries they read from eviction once the buffers are drained
+    public void testPromotionOfBufferedReads() {
+        int maximumWeight = randomIntBetween(2, 100);
+        List<Integer> evictedKeys = new ArrayList<>();
+        Cache<Integer, String> cache =
+            CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(maximumWeight)
+                .removalListener(notification -> evictedKeys.add(notification.getKey()))
+                .build();
+        for (int i = 0; i < maximumWeight; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        // read the oldest entry fewer times than needed to drain the read buffers
+        int reads = randomIntBetween(1, Cache.ReadBuffer.DRAIN_THRESHOLD - 1);
+        for (int i = 0; i < reads; i++) {
+            assertEquals("0", cache.get(0));
+        }
+        cache.put(maximumWeight, Integer.toString(maximumWeight));
+        assertEquals(List.of(1), evictedKeys);
+        assertEquals("0", cache.get(0));
+        assertEquals(maximumWeight, cache.count());
+    }
+
+    // every write must be applied to the LRU list even if the lock is held by another thread at the time of the write
+    public void testConcurrentReadsAndWrites() throws BrokenBarrierException, InterruptedException {
+        int maximumWeight = randomIntBetween(1, 1000);
+        LongAdder removals = new LongAdder();
+        Cache<Integer, String> cache =
+            CacheBuilder.<Integer, String>builder()
+                .setMaximumWeight(maximumWeight)
+                .removalListener(notification -> removals.increment())
+                .build();
+        int numberOfThreads = randomIntBetween(2, 32);
+        AtomicLong puts = new AtomicLong();
+        CyclicBarrier barrier = new CyclicBarrier(1 + numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    Random random = new Random(random().nextInt());
+                    for (int j = 0; j < numberOfEntries; j++) {
+                        int key = random.nextInt(2 * maximumWeight);
+                        if (random.nextInt(4) == 0) {
+                            cache.put(key, Integer.toString(key));
+                            puts.incrementAndGet();
+                        } else {
+                            String value = cache.get(key);
+                            if (value != null) {
+                                assertEquals(Integer.toString(key), value);
+                            }
+                        }
+                    }
+                    barrier.await();
+                } catch (BrokenBarrierException | InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+        }
+
+        // wait for all threads to be ready
+        barrier.await();
+        // wait for all threads to finish
+        barrier.await();
+
+        cache.refresh();
+        assertThat(cache.count(), lessThanOrEqualTo(maximumWeight));
+        assertEquals(cache.count(), cache.weight());
+        // every entry that was put is either still cached or was replaced or evicted
+        assertEquals(puts.get(), cache.count() + removals.sum());
+        int cached = 0;
+        for (Integer key : cache.keys()) {
+            assertEquals(Integer.toString(key), cache.get(key));
+            cached++;
+        }
+        assertEquals(cache.count(), cached);
+    }
+
+    // writers must not buffer writes without bounds while another thread holds the lock
+    public void testWritersWaitForTheLockWhenTheWriteBufferIsFull() throws Exception {
+        CountDownLatch holdLock = new CountDownLatch(1);
+        CountDownLatch lockHeld = new CountDownLatch(1);
+        Cache<Integer, String> cache =
+            CacheBuilder.<Integer, String>builder()
+                .removalListener(notification -> {
+                    // the replaced entry is unlinked and notified about under the lock
+                    lockHeld.countDown();
+                    try {
+                        assertTrue(holdLock.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                })
+                .build();
+        cache.put(0, "0");
+        Thread holder = new Thread(() -> cache.put(0, "replaced"));
+        holder.start();
+        assertTrue(lockHeld.await(10, TimeUnit.SECONDS));
+
+        AtomicInteger puts = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= Cache.WRITE_BUFFER_SIZE + 1; i++) {
+                cache.put(i, Integer.toString(i));
+                puts.incrementAndGet();
+            }
+        });
+        writer.start();
+        assertBusy(() -> {
+            assertEquals(Cache.WRITE_BUFFER_SIZE, puts.get());
+            assertEquals(Thread.State.WAITING, writer.getState());
+        });
+
+        holdLock.countDown();
+        holder.join();
+        writer.join();
+        cache.refresh();
+        assertEquals(Cache.WRITE_BUFFER_SIZE + 2, cache.count());
+        assertEquals("replaced", cache.get(0));
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.cache;
+
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class FrequencySketchTests extends ESTestCase {
+
+    public void testFrequency() {
+        final FrequencySketch sketch = new FrequencySketch(512);
+        final int item = randomInt();
+        assertThat(sketch.frequency(item), equalTo(0));
+        final int uses = randomIntBetween(1, FrequencySketch.MAX_FREQUENCY);
+        for (int i = 0; i < uses; i++) {
+            sketch.increment(item);
+        }
+        // collisions can only make an item look more frequent
+        assertThat(sketch.frequency(item), greaterThanOrEqualTo(uses));
+        for (int i = uses; i < FrequencySketch.MAX_FREQUENCY + 10; i++) {
+            sketch.increment(item);
+        }
+        assertThat(sketch.frequency(item), equalTo(FrequencySketch.MAX_FREQUENCY));
+    }
+
+    public void testDistinguishesItems() {
+        final FrequencySketch sketch = new FrequencySketch(512);
+        for (int item = 0; item < 100; item++) {
+            for (int i = 0; i <= item % 10; i++) {
+                sketch.increment(item);
+            }
+        }
+        int exact = 0;
+        for (int item = 0; item < 100; item++) {
+            assertThat(sketch.frequency(item), greaterThanOrEqualTo(item % 10 + 1));
+            if (sketch.frequency(item) == item % 10 + 1) {
+                exact++;
+            }
+        }
+        assertThat(exact, greaterThanOrEqualTo(90));
+    }
+
+    public void testAging() {
+        final int capacity = 64;
+        final FrequencySketch sketch = new FrequencySketch(capacity);
+        final int item = randomInt();
+        for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+            sketch.increment(item);
+        }
+        assertThat(sketch.frequency(item), equalTo(FrequencySketch.MAX_FREQUENCY));
+        // other items fill the sample, which halves all counters
+        for (int i = 0; i < 10 * capacity; i++) {
+            sketch.increment(item + 1 + i);
+        }
+        assertThat(sketch.frequency(item), lessThanOrEqualTo(FrequencySketch.MAX_FREQUENCY / 2 + 1));
+    }
+
+    public void testInvalidCapacity() {
+        expectThrows(IllegalArgumentException.class, () -> new FrequencySketch(0));
+    }
+}
@@ -166,6 +166,7 @@ public class DelayableWriteableTests extends ESTestCase {
         DelayableWriteable<T> roundTripped = roundTrip(original, reader, Version.CURRENT);
         assertTrue(roundTripped.isDelayed());
         assertThat(roundTripped.get(), equalTo(original.get()));
+        assertThat(roundTripped.getSerializedSize(), equalTo(original.getSerializedSize()));
     }
 
     private <T extends Writeable> DelayableWriteable<T> roundTrip(DelayableWriteable<T> original,
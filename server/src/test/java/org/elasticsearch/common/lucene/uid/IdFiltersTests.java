@@ -0,0 +1,193 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.uid;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.index.mapper.SeqNoFieldMapper;
+import org.elasticsearch.index.mapper.VersionFieldMapper;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+
+import static org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.loadDocIdAndVersion;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class IdFiltersTests extends ESTestCase {
+
+    private static Document newDocument(String id, long version) {
+        final Document doc = new Document();
+        doc.add(new Field(IdFieldMapper.NAME, id, IdFieldMapper.Defaults.FIELD_TYPE));
+        doc.add(new NumericDocValuesField(VersionFieldMapper.NAME, version));
+        doc.add(new NumericDocValuesField(SeqNoFieldMapper.NAME, randomNonNegativeLong()));
+        doc.add(new NumericDocValuesField(SeqNoFieldMapper.PRIMARY_TERM_NAME, randomLongBetween(1, Long.MAX_VALUE)));
+        return doc;
+    }
+
+    public void testLookupsConsultFilters() throws IOException {
+        final int size = IdFilters.filters.size();
+        final IdFilters.Counters counters = new IdFilters.Counters();
+        final Directory dir = newDirectory();
+        final IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER)
+            .setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(1, 5);
+        final int docsPerSegment = randomIntBetween(1, 500);
+        for (int s = 0; s < numSegments; s++) {
+            for (int i = 0; i < docsPerSegment; i++) {
+                final int id = s * docsPerSegment + i;
+                writer.addDocument(newDocument(Integer.toString(id), id));
+            }
+            writer.flush();
+        }
+        final DirectoryReader reader = DirectoryReader.open(writer);
+        assertThat(reader.leaves().size(), equalTo(numSegments));
+        for (LeafReaderContext leaf : reader.leaves()) {
+            assertThat(IdFilters.build(leaf.reader(), IdFieldMapper.NAME, counters), greaterThan(0L));
+            assertThat(IdFilters.getFilter(leaf.reader(), IdFieldMapper.NAME), notNullValue());
+            // filters are only built once per segment
+            assertThat(IdFilters.build(leaf.reader(), IdFieldMapper.NAME, counters), equalTo(0L));
+        }
+        assertThat(IdFilters.filters.size(), equalTo(size + numSegments));
+
+        final int numDocs = numSegments * docsPerSegment;
+        for (int i = 0; i < 100; i++) {
+            final int id = randomIntBetween(0, numDocs - 1);
+            assertThat(loadDocIdAndVersion(reader, new Term(IdFieldMapper.NAME, Integer.toString(id)), randomBoolean()).version,
+                equalTo((long) id));
+        }
+        // filters have no false negatives, so every segment that holds an id is searched
+        assertThat(counters.hits(), greaterThanOrEqualTo(100L));
+        final long hits = counters.hits();
+        final long misses = counters.misses();
+        final int numMissingLookups = randomIntBetween(1, 100);
+        for (int i = 0; i < numMissingLookups; i++) {
+            final String id = Integer.toString(randomIntBetween(numDocs, Integer.MAX_VALUE));
+            assertThat(loadDocIdAndVersion(reader, new Term(IdFieldMapper.NAME, id), randomBoolean()), nullValue());
+        }
+        assertThat(counters.hits() + counters.misses() - hits - misses, equalTo((long) numMissingLookups * numSegments));
+        // with a false positive probability of 1%, at most a few lookups should search the terms of a segment
+        assertThat(counters.misses() - misses, greaterThanOrEqualTo(numMissingLookups * numSegments / 2L));
+
+        reader.close();
+        writer.close();
+        // filters are dropped when the segments are closed
+        assertThat(IdFilters.filters.size(), equalTo(size));
+        dir.close();
+    }
+
+    public void testFilterOfMergedSegmentIsSharedWithReaders() throws IOException {
+        final int size = IdFilters.filters.size();
+        final IdFilters.Counters counters = new IdFilters.Counters();
+        final Directory dir = newDirectory();
+        final IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER)
+            .setReaderPooling(true)
+            .setMergedSegmentWarmer(reader -> IdFilters.build(reader, IdFieldMapper.NAME, counters)));
+        final int numDocs = randomIntBetween(2, 500);
+        for (int i = 0; i < numDocs; i++) {
+            writer.addDocument(newDocument(Integer.toString(i), i));
+            if (i == numDocs / 2 || rarely()) {
+                // makes sure there is something to merge
+                writer.flush();
+            }
+        }
+        writer.flush();
+        DirectoryReader reader = DirectoryReader.open(writer);
+        writer.forceMerge(1);
+        final DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        if (newReader != null) {
+            reader.close();
+            reader = newReader;
+        }
+        assertThat(reader.leaves().size(), equalTo(1));
+        assertThat(IdFilters.getFilter(reader.leaves().get(0).reader(), IdFieldMapper.NAME), notNullValue());
+        final int id = randomIntBetween(0, numDocs - 1);
+        assertThat(loadDocIdAndVersion(reader, new Term(IdFieldMapper.NAME, Integer.toString(id)), randomBoolean()).version,
+            equalTo((long) id));
+        assertThat(counters.hits(), equalTo(1L));
+
+        reader.close();
+        writer.close();
+        assertThat(IdFilters.filters.size(), equalTo(size));
+        dir.close();
+    }
+
+    public void testLookupsWithFiltersOnSomeSegments() throws IOException {
+        final IdFilters.Counters counters = new IdFilters.Counters();
+        final Directory dir = newDirectory();
+        final IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER)
+            .setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(2, 5);
+        final int docsPerSegment = randomIntBetween(1, 100);
+        for (int s = 0; s < numSegments; s++) {
+            for (int i = 0; i < docsPerSegment; i++) {
+                final int id = s * docsPerSegment + i;
+                writer.addDocument(newDocument(Integer.toString(id), id));
+            }
+            writer.flush();
+        }
+        final DirectoryReader reader = DirectoryReader.open(writer);
+        int numFilteredSegments = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            if (randomBoolean()) {
+                IdFilters.build(leaf.reader(), IdFieldMapper.NAME, counters);
+                numFilteredSegments++;
+            }
+        }
+
+        // the id is only hashed once a segment has a filter, which may come after segments without one
+        final int numDocs = numSegments * docsPerSegment;
+        for (int id = 0; id < numDocs; id++) {
+            assertThat(loadDocIdAndVersion(reader, new Term(IdFieldMapper.NAME, Integer.toString(id)), randomBoolean()).version,
+                equalTo((long) id));
+        }
+        final String missingId = Integer.toString(randomIntBetween(numDocs, Integer.MAX_VALUE));
+        final long consulted = counters.hits() + counters.misses();
+        assertThat(loadDocIdAndVersion(reader, new Term(IdFieldMapper.NAME, missingId), randomBoolean()), nullValue());
+        assertThat(counters.hits() + counters.misses() - consulted, equalTo((long) numFilteredSegments));
+
+        reader.close();
+        writer.close();
+        dir.close();
+    }
+
+    public void testHashReusesScratch() {
+        final BytesRef uid = new BytesRef(randomAlphaOfLengthBetween(1, 40));
+        final long expected = MurmurHash3.hash128(uid.bytes, uid.offset, uid.length, 0, new MurmurHash3.Hash128()).h1;
+        assertThat(IdFilters.hash(uid), equalTo(expected));
+        IdFilters.hash(new BytesRef(randomAlphaOfLengthBetween(1, 40)));
+        assertThat(IdFilters.hash(uid), equalTo(expected));
+    }
+}
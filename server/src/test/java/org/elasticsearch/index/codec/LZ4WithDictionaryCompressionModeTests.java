@@ -0,0 +1,120 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class LZ4WithDictionaryCompressionModeTests extends ESTestCase {
+
+    private static byte[] randomData(int length) {
+        final byte[] data = new byte[length];
+        switch (randomInt(2)) {
+            case 0:
+                random().nextBytes(data);
+                break;
+            case 1:
+                // few distinct bytes, lots of short matches
+                for (int i = 0; i < length; i++) {
+                    data[i] = (byte) randomIntBetween('a', 'c');
+                }
+                break;
+            default:
+                final byte[] log = logLines(length);
+                System.arraycopy(log, 0, data, 0, length);
+                break;
+        }
+        return data;
+    }
+
+    private static byte[] logLines(int length) {
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            builder.append("{\"@timestamp\":\"2020-04-0").append(randomIntBetween(1, 9)).append("T12:").append(randomIntBetween(10, 59))
+                .append(":00Z\",\"host\":\"web-").append(randomIntBetween(1, 20)).append("\",\"level\":\"")
+                .append(randomFrom("INFO", "WARN", "ERROR")).append("\",\"message\":\"GET /api/v1/items/")
+                .append(randomIntBetween(1, 100000)).append(" ").append(randomFrom(200, 404, 500)).append("\"}\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void testRoundTripWithDictionary() throws IOException {
+        final LZ4WithDictionary.Compressor compressor = new LZ4WithDictionary.Compressor();
+        for (int iter = 0; iter < 20; iter++) {
+            final int dictLength = randomBoolean() ? 0 : randomIntBetween(1, 1 << 15);
+            final int length = randomIntBetween(0, 1 << 16);
+            final byte[] buffer = randomData(dictLength + length);
+            final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+            compressor.compress(buffer, dictLength, length, out);
+
+            final byte[] restored = new byte[dictLength + length];
+            System.arraycopy(buffer, 0, restored, 0, dictLength);
+            LZ4WithDictionary.decompress(out.toArrayCopy(), 0, restored, dictLength, length);
+            assertArrayEquals(buffer, restored);
+        }
+    }
+
+    public void testDictionaryImprovesCompression() throws IOException {
+        final byte[] buffer = logLines(1 << 15);
+        final int dictLength = 1 << 12;
+        final int length = 1 << 10;
+        final LZ4WithDictionary.Compressor compressor = new LZ4WithDictionary.Compressor();
+        final ByteBuffersDataOutput withoutDictionary = new ByteBuffersDataOutput();
+        compressor.compress(Arrays.copyOfRange(buffer, dictLength, dictLength + length), 0, length, withoutDictionary);
+        final ByteBuffersDataOutput withDictionary = new ByteBuffersDataOutput();
+        compressor.compress(buffer, dictLength, length, withDictionary);
+        assertThat(withDictionary.size(), lessThan(withoutDictionary.size()));
+    }
+
+    public void testDecompressRanges() throws IOException {
+        final Compressor compressor = LZ4WithDictionaryCompressionMode.INSTANCE.newCompressor();
+        final Decompressor decompressor = LZ4WithDictionaryCompressionMode.INSTANCE.newDecompressor();
+        for (int iter = 0; iter < 10; iter++) {
+            final int length = randomIntBetween(0, DictionaryCompressionCodec.CHUNK_SIZE);
+            final byte[] data = randomData(length);
+            final int offset = randomIntBetween(0, 10);
+            final byte[] input = new byte[offset + length];
+            System.arraycopy(data, 0, input, offset, length);
+            final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+            compressor.compress(input, offset, length, out);
+            final byte[] compressed = out.toArrayCopy();
+
+            final Decompressor decompressorToUse = randomBoolean() ? decompressor : decompressor.clone();
+            for (int i = 0; i < 10; i++) {
+                final int from = randomIntBetween(0, length);
+                final int to = randomIntBetween(from, length);
+                final BytesRef bytes = new BytesRef();
+                decompressorToUse.decompress(new ByteArrayDataInput(compressed), length, from, to - from, bytes);
+                assertThat(new BytesRef(bytes.bytes, bytes.offset, bytes.length), equalTo(new BytesRef(data, from, to - from)));
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
@@ -94,6 +95,7 @@ import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.uid.IdFilters;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndSeqNo;
@@ -1273,6 +1275,53 @@ public class InternalEngineTests extends EngineTestCase {
         }
     }
 
+    public void testIdFilters() throws Exception {
+        assertNull(engine.getIdFilterCounters());
+        Settings.Builder settings = Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_ID_FILTER_SETTING.getKey(), true);
+        final IndexMetadata indexMetadata = IndexMetadata.builder(defaultSettings.getIndexMetadata()).settings(settings).build();
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings(indexMetadata);
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(config(indexSettings, store, createTempDir(), newMergePolicy(), null))) {
+            final IdFilters.Counters counters = engine.getIdFilterCounters();
+            assertNotNull(counters);
+            final int numSegments = randomIntBetween(2, 5);
+            final int docsPerSegment = randomIntBetween(1, 50);
+            for (int s = 0; s < numSegments; s++) {
+                for (int i = 0; i < docsPerSegment; i++) {
+                    final String id = Integer.toString(s * docsPerSegment + i);
+                    engine.index(indexForDoc(testParsedDocument(id, null, testDocument(), B_1, null)));
+                }
+                engine.flush();
+            }
+            engine.refresh("test");
+            if (randomBoolean()) {
+                // the merged segment gets its filter while it is warmed
+                engine.forceMerge(true, 1, false, false, false, UUIDs.randomBase64UUID());
+                engine.refresh("test");
+            }
+            final int numDocs = numSegments * docsPerSegment;
+            final int numUpdates = randomIntBetween(1, 20);
+            for (int i = 0; i < numUpdates; i++) {
+                final String id = Integer.toString(randomIntBetween(0, numDocs - 1));
+                final Engine.IndexResult result = engine.index(indexForDoc(testParsedDocument(id, null, testDocument(), B_1, null)));
+                assertThat(result.isCreated(), equalTo(false));
+                // refresh so that the next update of the same id is resolved from segments rather than the version map
+                engine.refresh("test");
+            }
+            final long missesBeforeDeletes = counters.misses();
+            final int numDeletes = randomIntBetween(1, 20);
+            for (int i = 0; i < numDeletes; i++) {
+                final String id = Integer.toString(numDocs + i);
+                final Engine.DeleteResult result = engine.delete(new Engine.Delete(id, newUid(id), primaryTerm.get()));
+                assertThat(result.isFound(), equalTo(false));
+            }
+            assertThat(counters.hits(), greaterThanOrEqualTo((long) numUpdates));
+            assertThat(counters.misses(), greaterThan(missesBeforeDeletes));
+        }
+    }
+
     public void testForceMergeWithSoftDeletesRetention() throws Exception {
         final long retainedExtraOps = randomLongBetween(0, 10);
         Settings.Builder settings = Settings.builder()
@@ -3609,6 +3658,77 @@ public class InternalEngineTests extends EngineTestCase {
         return engine.getNumIndexVersionsLookups();
     }
 
+    public void testIndexBatchOfAppends() throws IOException {
+        if (randomBoolean()) {
+            // documents with an older timestamp than a retry might have been indexed before, they still go into the batch
+            final ParsedDocument doc = testParsedDocument("retry", null, testDocumentWithTextField(), B_1, null);
+            engine.index(appendOnlyPrimary(doc, true, randomLongBetween(0, 100)));
+        }
+        final long startSeqNo = engine.getLocalCheckpointTracker().getMaxSeqNo() + 1;
+        final long appendsBefore = engine.getNumDocAppends();
+        final int numDocs = randomIntBetween(2, 50);
+        final List<Engine.Index> operations = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocumentWithTextField(), B_1, null);
+            operations.add(appendOnlyPrimary(doc, false, randomLongBetween(0, 100)));
+        }
+        final List<Engine.IndexResult> results = engine.indexBatch(operations);
+        assertThat(results, hasSize(numDocs));
+        for (int i = 0; i < numDocs; i++) {
+            final Engine.IndexResult result = results.get(i);
+            assertThat(result.getResultType(), equalTo(Engine.Result.Type.SUCCESS));
+            assertThat(result.getSeqNo(), equalTo(startSeqNo + i));
+            assertThat(result.getVersion(), equalTo(1L));
+            assertTrue(result.isCreated());
+            assertNotNull(result.getTranslogLocation());
+        }
+        assertThat(engine.getNumDocAppends(), equalTo(appendsBefore + numDocs));
+        assertThat(engine.getLocalCheckpointTracker().getProcessedCheckpoint(), equalTo(startSeqNo + numDocs - 1));
+        assertThat(engine.getTranslog().stats().getUncommittedOperations(), equalTo((int) startSeqNo + numDocs));
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            assertEquals(startSeqNo + numDocs, searcher.count(new MatchAllDocsQuery()));
+        }
+    }
+
+    public void testIndexBatchWithDocumentFailure() throws IOException {
+        final int numDocs = randomIntBetween(2, 20);
+        final int failingDoc = randomIntBetween(0, numDocs - 1);
+        final List<Engine.Index> operations = new ArrayList<>();
+        final Set<String> expectedIds = new HashSet<>();
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocumentWithTextField(), B_1, null);
+            if (i == failingDoc) {
+                doc.rootDoc().add(new StringField("immense", "x".repeat(IndexWriter.MAX_TERM_LENGTH + 1), Field.Store.NO));
+            } else {
+                expectedIds.add(doc.id());
+            }
+            operations.add(appendOnlyPrimary(doc, false, i));
+        }
+        final List<Engine.IndexResult> results = engine.indexBatch(operations);
+        assertThat(results, hasSize(numDocs));
+        final Set<Long> seqNos = new HashSet<>();
+        for (int i = 0; i < numDocs; i++) {
+            final Engine.IndexResult result = results.get(i);
+            if (i == failingDoc) {
+                assertThat(result.getResultType(), equalTo(Engine.Result.Type.FAILURE));
+                assertThat(result.getFailure(), instanceOf(IllegalArgumentException.class));
+            } else {
+                assertThat(result.getResultType(), equalTo(Engine.Result.Type.SUCCESS));
+            }
+            // the failure is recorded as a no-op
+            assertNotNull(result.getTranslogLocation());
+            seqNos.add(result.getSeqNo());
+        }
+        assertThat(seqNos, hasSize(numDocs));
+        assertThat(engine.getLocalCheckpointTracker().getProcessedCheckpoint(), equalTo(numDocs - 1L));
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            assertEquals(numDocs - 1, searcher.count(new MatchAllDocsQuery()));
+        }
+        assertThat(getDocIds(engine, true).stream().map(DocIdSeqNoAndSource::getId).collect(Collectors.toSet()), equalTo(expectedIds));
+    }
+
     public void testFailEngineOnRandomIO() throws IOException, InterruptedException {
         MockDirectoryWrapper wrapper = newMockDirectory();
         final Path translogPath = createTempDir("testFailEngineOnRandomIO");
@@ -5911,6 +6031,61 @@ public class InternalEngineTests extends EngineTestCase {
         }
     }
 
+    public void testRealtimeGetFromTranslogWithTrackedLocations() throws Exception {
+        final AtomicInteger refreshCount = new AtomicInteger();
+        final ReferenceManager.RefreshListener refreshListener = new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    refreshCount.incrementAndGet();
+                }
+            }
+        };
+        final Settings settings = Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_TRANSLOG_TRACK_LOCATIONS_SETTING.getKey(), true)
+            .build();
+        final IndexSettings indexSettings =
+            IndexSettingsModule.newIndexSettings(IndexMetadata.builder(defaultSettings.getIndexMetadata()).settings(settings).build());
+        try (Store store = createStore()) {
+            final EngineConfig config = config(indexSettings, store, createTempDir(), newMergePolicy(), null,
+                refreshListener, null, null, engine.config().getCircuitBreakerService());
+            try (InternalEngine engine = createEngine(config)) {
+                final int refreshCountBeforeGet = refreshCount.get();
+                final long lastRefreshedCheckpoint = engine.lastRefreshedCheckpoint();
+                final int numDocs = randomIntBetween(10, 100);
+                for (int i = 0; i < numDocs; i++) {
+                    engine.index(indexForDoc(createParsedDoc(Integer.toString(i), null)));
+                }
+                // get-then-update on hot ids must not refresh
+                final int iters = randomIntBetween(10, 100);
+                for (int i = 0; i < iters; i++) {
+                    ParsedDocument doc = createParsedDoc(Integer.toString(randomIntBetween(0, numDocs - 1)), null);
+                    try (Engine.GetResult getResult = engine.get(newGet(true, doc), engine::acquireSearcher)) {
+                        assertThat(getResult.exists(), equalTo(true));
+                        assertThat(getResult.isFromTranslog(), equalTo(true));
+                    }
+                    engine.index(indexForDoc(doc));
+                }
+                assertThat(refreshCount.get(), equalTo(refreshCountBeforeGet));
+                assertThat(engine.lastRefreshedCheckpoint(), equalTo(lastRefreshedCheckpoint));
+
+                // once refreshed, documents are read from the index again
+                ParsedDocument doc = createParsedDoc("0", null);
+                engine.refresh("test");
+                try (Engine.GetResult getResult = engine.get(newGet(true, doc), engine::acquireSearcher)) {
+                    assertThat(getResult.exists(), equalTo(true));
+                    assertThat(getResult.isFromTranslog(), equalTo(false));
+                }
+            }
+        }
+    }
+
     public void testRefreshDoesNotBlockClosing() throws Exception {
         final CountDownLatch refreshStarted = new CountDownLatch(1);
         final CountDownLatch engineClosed = new CountDownLatch(1);
@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageTester;
+import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.common.util.MockPageCacheRecycler;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PagedVersionMapTests extends ESTestCase {
+
+    private static BigArrays mockBigArrays() {
+        return new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService());
+    }
+
+    private static VersionValue randomVersionValue() {
+        final long version = randomNonNegativeLong();
+        final long seqNo = randomNonNegativeLong();
+        final long term = randomNonNegativeLong();
+        switch (randomIntBetween(0, 2)) {
+            case 0:
+                return new IndexVersionValue(null, version, seqNo, term);
+            case 1:
+                final Translog.Location location = new Translog.Location(randomNonNegativeLong(), randomNonNegativeLong(),
+                    randomIntBetween(0, Integer.MAX_VALUE));
+                return new IndexVersionValue(location, version, seqNo, term);
+            default:
+                return new DeleteVersionValue(version, seqNo, term, randomNonNegativeLong());
+        }
+    }
+
+    private static List<BytesRef> randomUids(int numUids, int maxLength) {
+        final List<BytesRef> uids = new ArrayList<>(numUids);
+        for (int i = 0; i < numUids; i++) {
+            uids.add(new BytesRef(TestUtil.randomSimpleString(random(), 1, maxLength)));
+        }
+        return uids;
+    }
+
+    public void testBehavesLikeAMap() {
+        final List<BytesRef> uids = randomUids(randomIntBetween(1, 500), 40);
+        final Map<BytesRef, VersionValue> expected = new HashMap<>();
+        try (PagedVersionMap map = new PagedVersionMap(mockBigArrays())) {
+            final int numOps = randomIntBetween(1, 5000);
+            for (int i = 0; i < numOps; i++) {
+                // copy the uid to make sure that keys are compared by value
+                final BytesRef uid = BytesRef.deepCopyOf(randomFrom(uids));
+                if (rarely()) {
+                    assertThat(map.remove(uid), equalTo(expected.remove(uid)));
+                } else if (randomBoolean()) {
+                    final VersionValue value = randomVersionValue();
+                    assertThat(map.put(uid, value), equalTo(expected.put(uid, value)));
+                } else {
+                    assertThat(map.get(uid), equalTo(expected.get(uid)));
+                }
+                assertThat(map.size(), equalTo(expected.size()));
+            }
+            assertThat(map.isEmpty(), equalTo(expected.isEmpty()));
+            assertThat(new HashMap<>(map), equalTo(expected));
+        }
+    }
+
+    public void testReleasedMapIsEmpty() {
+        final PagedVersionMap map = new PagedVersionMap(mockBigArrays());
+        final BytesRef uid = new BytesRef(randomAlphaOfLength(10));
+        map.put(uid, randomVersionValue());
+        map.close();
+        assertThat(map.get(uid), nullValue());
+        assertThat(map.put(uid, randomVersionValue()), nullValue());
+        assertThat(map.get(uid), nullValue());
+        assertTrue(map.isEmpty());
+        map.clear();
+        assertThat(map.put(uid, randomVersionValue()), nullValue());
+        assertTrue(map.isEmpty());
+        // releasing twice is fine
+        map.close();
+    }
+
+    public void testClear() {
+        final List<BytesRef> uids = randomUids(randomIntBetween(1, 500), 40);
+        try (PagedVersionMap map = new PagedVersionMap(mockBigArrays())) {
+            final long emptyRamBytesUsed = map.ramBytesUsed();
+            for (BytesRef uid : uids) {
+                map.put(uid, randomVersionValue());
+            }
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertThat(map.size(), equalTo(0));
+            assertThat(map.ramBytesUsed(), equalTo(emptyRamBytesUsed));
+            for (BytesRef uid : uids) {
+                assertThat(map.get(uid), nullValue());
+            }
+            // the map is still usable after it was cleared
+            final Map<BytesRef, VersionValue> expected = new HashMap<>();
+            for (BytesRef uid : uids) {
+                final VersionValue value = randomVersionValue();
+                assertThat(map.put(uid, value), equalTo(expected.put(uid, value)));
+            }
+            assertThat(new HashMap<>(map), equalTo(expected));
+        }
+    }
+
+    public void testRamBytesUsed() {
+        // keeps the uids of a segment within a single page, since the hash might hold on to the small array that a page replaced
+        final List<BytesRef> uids = randomUids(randomIntBetween(1000, 5000), 20);
+        try (PagedVersionMap map = new PagedVersionMap(BigArrays.NON_RECYCLING_INSTANCE)) {
+            final long emptyRamBytesUsed = map.ramBytesUsed();
+            for (BytesRef uid : uids) {
+                map.put(uid, randomVersionValue());
+            }
+            assertThat(map.ramBytesUsed(), greaterThan(emptyRamBytesUsed));
+            final long actualRamBytesUsed = RamUsageTester.sizeOf(map);
+            // the only thing that is not accounted for is the shared big arrays instance
+            assertEquals(actualRamBytesUsed, map.ramBytesUsed(), actualRamBytesUsed / 20);
+        }
+    }
+
+    public void testConcurrentOperationsOnDistinctUids() throws Exception {
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final List<List<BytesRef>> uidsPerThread = new ArrayList<>();
+        for (int t = 0; t < threads.length; t++) {
+            final List<BytesRef> uids = new ArrayList<>();
+            for (int i = 0; i < randomIntBetween(1, 1000); i++) {
+                uids.add(new BytesRef(t + "_" + i));
+            }
+            uidsPerThread.add(uids);
+        }
+        try (PagedVersionMap map = new PagedVersionMap(mockBigArrays())) {
+            final List<Map<BytesRef, VersionValue>> expectedPerThread = new ArrayList<>();
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            for (int t = 0; t < threads.length; t++) {
+                final List<BytesRef> uids = uidsPerThread.get(t);
+                final Map<BytesRef, VersionValue> expected = new HashMap<>();
+                expectedPerThread.add(expected);
+                threads[t] = new Thread(() -> {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    for (int i = 0; i < uids.size() * 5; i++) {
+                        final BytesRef uid = uids.get(i % uids.size());
+                        if (i % 7 == 0) {
+                            assertThat(map.remove(uid), equalTo(expected.remove(uid)));
+                        } else {
+                            final VersionValue value = new IndexVersionValue(null, i, i, 1);
+                            assertThat(map.put(uid, value), equalTo(expected.put(uid, value)));
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            startLatch.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            final Map<BytesRef, VersionValue> expected = new HashMap<>();
+            expectedPerThread.forEach(expected::putAll);
+            assertThat(new HashMap<>(map), equalTo(expected));
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.BufferedChecksumIndexInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.lucene.store.ByteArrayIndexInput;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.translog.Translog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+public class SegmentReplicaEngineTests extends EngineTestCase {
+
+    private SegmentReplicaEngine createReplicaEngine(Store store) throws IOException {
+        final Path translogPath = createTempDir();
+        store.createEmpty(Version.CURRENT.luceneVersion);
+        final String translogUUID = Translog.createEmptyTranslog(translogPath, SequenceNumbers.NO_OPS_PERFORMED, shardId,
+            primaryTerm.get());
+        store.associateIndexWithNewTranslog(translogUUID);
+        return new SegmentReplicaEngine(config(defaultSettings, store, translogPath, newMergePolicy(), null));
+    }
+
+    private void indexDocs(int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocument(), new BytesArray("{}"), null);
+            engine.index(indexForDoc(doc));
+        }
+    }
+
+    /**
+     * Copies the files of the segments of the last refresh of the primary that the replica is missing, like segment replication.
+     */
+    private SegmentInfos copyRefreshedSegments(Store replicaStore) throws IOException {
+        engine.refresh("test");
+        try (Engine.SegmentInfosRef segmentInfosRef = engine.acquireLastRefreshedSegmentInfos()) {
+            final SegmentInfos primarySegmentInfos = segmentInfosRef.getSegmentInfos();
+            final ByteBuffersDataOutput buffer = new ByteBuffersDataOutput();
+            try (ByteBuffersIndexOutput output = new ByteBuffersIndexOutput(buffer, "segment infos", "segment infos")) {
+                primarySegmentInfos.write(store.directory(), output);
+            }
+            final byte[] bytes = buffer.toArrayCopy();
+            final Set<String> existingFiles = new HashSet<>(Arrays.asList(replicaStore.directory().listAll()));
+            for (String file : primarySegmentInfos.files(false)) {
+                if (existingFiles.contains(file) == false) {
+                    try (IndexInput input = store.directory().openInput(file, IOContext.READONCE);
+                         IndexOutput output = replicaStore.directory().createOutput(file, IOContext.DEFAULT)) {
+                        output.copyBytes(input, input.length());
+                    }
+                }
+            }
+            // read the segments like the replica does after a copy, so that they point to the directory of the replica
+            final SegmentInfos segmentInfos;
+            try (ChecksumIndexInput input = new BufferedChecksumIndexInput(new ByteArrayIndexInput("segment infos", bytes))) {
+                segmentInfos = SegmentInfos.readCommit(replicaStore.directory(), input, primarySegmentInfos.getGeneration());
+            }
+            return segmentInfos;
+        }
+    }
+
+    private static List<String> segmentNames(SegmentInfos segmentInfos) {
+        final List<String> names = new ArrayList<>();
+        for (SegmentCommitInfo info : segmentInfos) {
+            names.add(info.info.name);
+        }
+        return names;
+    }
+
+    public void testInstallSegments() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            final int numDocs = randomIntBetween(1, 50);
+            indexDocs(0, numDocs);
+            final SegmentInfos first = copyRefreshedSegments(replicaStore);
+            final String primaryTranslogUUID = first.getUserData().get(Translog.TRANSLOG_UUID_KEY);
+            replica.installSegments(first);
+            assertVisibleCount(replica, numDocs, false);
+            assertThat(segmentNames(replica.getLastCommittedSegmentInfos()), equalTo(segmentNames(first)));
+            assertThat(replica.getMinRetainedSeqNo(),
+                equalTo(Long.parseLong(first.getUserData().get(SequenceNumbers.LOCAL_CHECKPOINT_KEY)) + 1));
+            // the installed commit points to the translog of the replica
+            assertThat(replica.getLastCommittedSegmentInfos().getUserData().get(Translog.TRANSLOG_UUID_KEY),
+                not(equalTo(primaryTranslogUUID)));
+
+            try (Engine.IndexCommitRef acquired = replica.acquireLastIndexCommit(false)) {
+                engine.delete(new Engine.Delete("0", newUid("0"), primaryTerm.get()));
+                final int moreDocs = randomIntBetween(1, 50);
+                indexDocs(numDocs, numDocs + moreDocs);
+                engine.forceMerge(true, 1, false, false, false, null);
+                final SegmentInfos second = copyRefreshedSegments(replicaStore);
+                replica.installSegments(second);
+                assertVisibleCount(replica, numDocs - 1 + moreDocs, false);
+                // the files of an acquired commit are only deleted once it is released
+                assertThat(Arrays.asList(replicaStore.directory().listAll()),
+                    hasItems(acquired.getIndexCommit().getFileNames().toArray(new String[0])));
+            }
+
+            engine.refresh("test");
+            final SegmentInfos third = copyRefreshedSegments(replicaStore);
+            replica.installSegments(third);
+            final Set<String> files = new HashSet<>(Arrays.asList(replicaStore.directory().listAll()));
+            files.removeAll(third.files(true));
+            for (String file : files) {
+                assertFalse("unreferenced file [" + file + "] was not deleted", file.startsWith("segments") || file.startsWith("_"));
+            }
+        }
+    }
+
+    public void testFailedCopyKeepsPreviousSegments() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            final int numDocs = randomIntBetween(1, 50);
+            indexDocs(0, numDocs);
+            final SegmentInfos first = copyRefreshedSegments(replicaStore);
+            replica.installSegments(first);
+
+            final int moreDocs = randomIntBetween(1, 50);
+            indexDocs(numDocs, numDocs + moreDocs);
+            final SegmentInfos incomplete = copyRefreshedSegments(replicaStore);
+            // simulate a copy that failed half-way
+            final List<String> copiedFiles = new ArrayList<>(incomplete.files(false));
+            copiedFiles.removeAll(first.files(false));
+            final String missingFile = randomFrom(copiedFiles);
+            replicaStore.directory().deleteFile(missingFile);
+            final IllegalStateException e = expectThrows(IllegalStateException.class, () -> replica.installSegments(incomplete));
+            assertThat(e.getMessage(), containsString("files [" + missingFile + "] are missing"));
+            assertThat(segmentNames(replica.getLastCommittedSegmentInfos()), equalTo(segmentNames(first)));
+            assertThat(replica.getLastCommittedSegmentInfos().getGeneration(), equalTo(SegmentInfos.getLastCommitGeneration(
+                replicaStore.directory())));
+            assertVisibleCount(replica, numDocs, true);
+
+            // the next copy succeeds
+            final SegmentInfos complete = copyRefreshedSegments(replicaStore);
+            replica.installSegments(complete);
+            assertVisibleCount(replica, numDocs + moreDocs, false);
+        }
+    }
+
+    public void testAcquireLastRefreshedSegmentInfosOfReplica() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            indexDocs(0, randomIntBetween(1, 50));
+            final SegmentInfos installed = copyRefreshedSegments(replicaStore);
+            replica.installSegments(installed);
+            final Engine.SegmentInfosRef segmentInfosRef = replica.acquireLastRefreshedSegmentInfos();
+            try {
+                assertThat(segmentNames(segmentInfosRef.getSegmentInfos()), equalTo(segmentNames(installed)));
+                assertThat(segmentInfosRef.getSegmentInfos().getUserData().get(SequenceNumbers.LOCAL_CHECKPOINT_KEY),
+                    equalTo(installed.getUserData().get(SequenceNumbers.LOCAL_CHECKPOINT_KEY)));
+
+                indexDocs(0, randomIntBetween(1, 50));
+                engine.forceMerge(true, 1, false, false, false, null);
+                replica.installSegments(copyRefreshedSegments(replicaStore));
+                // the segments are retained until the reference is released
+                assertThat(Arrays.asList(replicaStore.directory().listAll()),
+                    hasItems(segmentInfosRef.getSegmentInfos().files(false).toArray(new String[0])));
+            } finally {
+                IOUtils.close(segmentInfosRef);
+            }
+        }
+    }
+
+    public void testFillSeqNoGaps() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            final int maxSeqNo = randomIntBetween(1, 20);
+            final List<Long> seqNos = new ArrayList<>();
+            for (long seqNo = 0; seqNo <= maxSeqNo; seqNo++) {
+                if (seqNo == maxSeqNo || randomBoolean()) {
+                    seqNos.add(seqNo);
+                }
+            }
+            for (long seqNo : seqNos) {
+                final ParsedDocument doc = testParsedDocument(Long.toString(seqNo), null, testDocument(), new BytesArray("{}"), null);
+                replica.index(replicaIndexForDoc(doc, 1, seqNo, false));
+            }
+            final int numNoOps = replica.fillSeqNoGaps(primaryTerm.get());
+            assertThat(numNoOps, equalTo(maxSeqNo + 1 - seqNos.size()));
+            assertThat(replica.getProcessedLocalCheckpoint(), equalTo((long) maxSeqNo));
+            assertThat(replica.getPersistedLocalCheckpoint(), equalTo((long) maxSeqNo));
+            try (Translog.Snapshot snapshot = replica.newChangesSnapshot("test", null, 0, maxSeqNo, true)) {
+                int noOps = 0;
+                Translog.Operation operation;
+                while ((operation = snapshot.next()) != null) {
+                    if (operation.opType() == Translog.Operation.Type.NO_OP) {
+                        noOps++;
+                    }
+                }
+                assertThat(noOps, equalTo(numNoOps));
+            }
+        }
+    }
+
+    public void testLastRefreshableLocation() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            assertThat(replica.getTranslogLastRefreshableLocation(), equalTo(replica.getTranslogLastWriteLocation()));
+            final int numDocs = randomIntBetween(1, 20);
+            final List<Translog.Location> locations = new ArrayList<>();
+            for (int i = 0; i < numDocs; i++) {
+                final ParsedDocument doc = testParsedDocument(Integer.toString(i), null, testDocument(), new BytesArray("{}"), null);
+                engine.index(indexForDoc(doc));
+                locations.add(replica.index(replicaIndexForDoc(doc, 1, i, false)).getTranslogLocation());
+            }
+            // the operations only become visible once the segments of the primary that contain them are installed
+            replica.refresh("test");
+            assertThat(replica.getTranslogLastRefreshableLocation(), lessThan(locations.get(0)));
+
+            replica.installSegments(copyRefreshedSegments(replicaStore));
+            assertThat(replica.getTranslogLastRefreshableLocation(), equalTo(replica.getTranslogLastWriteLocation()));
+            assertThat(replica.getTranslogLastRefreshableLocation(), greaterThanOrEqualTo(locations.get(numDocs - 1)));
+
+            final ParsedDocument doc = testParsedDocument(Integer.toString(numDocs), null, testDocument(), new BytesArray("{}"), null);
+            final Translog.Location location = replica.index(replicaIndexForDoc(doc, 1, numDocs, false)).getTranslogLocation();
+            assertThat(replica.getTranslogLastRefreshableLocation(), lessThan(location));
+            assertThat(replica.getTranslogLastRefreshableLocation(), greaterThanOrEqualTo(locations.get(numDocs - 1)));
+        }
+    }
+}
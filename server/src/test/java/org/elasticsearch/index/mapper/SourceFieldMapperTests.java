@@ -189,6 +189,58 @@ public class SourceFieldMapperTests extends ESSingleNodeTestCase {
         assertConflicts(mapping1, mapping1, parser);
     }
 
+    public void testModeNotUpdateable() throws Exception {
+        DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+        String defaultMapping = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type").endObject().endObject());
+        String mapping1 = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type")
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .endObject().endObject());
+        assertConflicts(defaultMapping, mapping1, parser, "Cannot update mode setting for [_source]");
+        assertConflicts(mapping1, defaultMapping, parser, "Cannot update mode setting for [_source]");
+
+        // not changing is ok
+        assertConflicts(mapping1, mapping1, parser);
+    }
+
+    public void testSyntheticMode() throws Exception {
+        DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
+        String mapping = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type")
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .startObject("properties").startObject("field").field("type", "keyword").endObject().endObject()
+            .endObject().endObject());
+        DocumentMapper documentMapper = parser.parse("type", new CompressedXContent(mapping));
+        assertTrue(documentMapper.sourceMapper().isSynthetic());
+        assertTrue(documentMapper.sourceMapper().isComplete());
+        assertNotNull(documentMapper.syntheticSourceLoader());
+        assertThat(documentMapper.mappingSource().toString(), containsString("\"_source\":{\"mode\":\"synthetic\"}"));
+
+        // the source isn't stored, but kept in the recovery source for operation-based recoveries
+        ParsedDocument doc = documentMapper.parse(new SourceToParse("test", "1",
+            BytesReference.bytes(XContentFactory.jsonBuilder().startObject().field("field", "value").endObject()),
+            XContentType.JSON));
+        assertNull(doc.rootDoc().getField(SourceFieldMapper.NAME));
+        assertNotNull(doc.rootDoc().getField(SourceFieldMapper.RECOVERY_SOURCE_NAME));
+
+        String disabled = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type")
+            .startObject("_source").field("mode", "synthetic").field("enabled", false).endObject()
+            .endObject().endObject());
+        MapperParsingException e = expectThrows(MapperParsingException.class,
+            () -> parser.parse("type", new CompressedXContent(disabled)));
+        assertThat(e.getMessage(), containsString("[_source] can't be disabled when using mode [synthetic]"));
+
+        String filtered = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type")
+            .startObject("_source").field("mode", "synthetic").array("includes", "foo.*").endObject()
+            .endObject().endObject());
+        e = expectThrows(MapperParsingException.class, () -> parser.parse("type", new CompressedXContent(filtered)));
+        assertThat(e.getMessage(), containsString("[_source] can't define includes or excludes when using mode [synthetic]"));
+
+        String unknown = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type")
+            .startObject("_source").field("mode", "compressed").endObject()
+            .endObject().endObject());
+        e = expectThrows(MapperParsingException.class, () -> parser.parse("type", new CompressedXContent(unknown)));
+        assertThat(e.getMessage(), containsString("Unknown mode [compressed] for [_source]"));
+    }
+
     public void testComplete() throws Exception {
         DocumentMapperParser parser = createIndex("test").mapperService().documentMapperParser();
         String mapping = Strings.toString(XContentFactory.jsonBuilder().startObject().startObject("type").endObject().endObject());
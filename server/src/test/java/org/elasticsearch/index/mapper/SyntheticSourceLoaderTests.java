@@ -0,0 +1,205 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SyntheticSourceLoaderTests extends ESSingleNodeTestCase {
+
+    private static XContentBuilder syntheticMapping() throws IOException {
+        return XContentFactory.jsonBuilder().startObject()
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .startObject("properties")
+                .startObject("keyword").field("type", "keyword").endObject()
+                .startObject("long").field("type", "long").endObject()
+                .startObject("double").field("type", "double").endObject()
+                .startObject("float").field("type", "float").endObject()
+                .startObject("half_float").field("type", "half_float").endObject()
+                .startObject("bool").field("type", "boolean").endObject()
+                .startObject("date").field("type", "date").endObject()
+                .startObject("date_nanos").field("type", "date_nanos").endObject()
+                .startObject("ip").field("type", "ip").endObject()
+                .startObject("object").startObject("properties")
+                    .startObject("keyword").field("type", "keyword").endObject()
+                .endObject().endObject()
+            .endObject()
+            .endObject();
+    }
+
+    private static final String SOURCE = "{\"keyword\":[\"b\",\"a\",\"b\"],\"long\":[3,1],\"double\":1.5,\"float\":2.5,"
+        + "\"half_float\":0.5,\"bool\":true,\"date\":\"2020-01-01T10:00:00.000Z\",\"date_nanos\":\"2020-01-01T10:00:00.123456789Z\","
+        + "\"ip\":\"192.168.0.1\",\"object\":{\"keyword\":\"c\"}}";
+
+    private static void assertSynthetic(Map<String, Object> source) {
+        assertThat(source.get("keyword"), equalTo(List.of("a", "b")));
+        assertThat(source.get("long"), equalTo(List.of(1, 3)));
+        assertThat(source.get("double"), equalTo(1.5));
+        assertThat(source.get("float"), equalTo(2.5));
+        assertThat(source.get("half_float"), equalTo(0.5));
+        assertThat(source.get("bool"), equalTo(true));
+        assertThat(source.get("date"), equalTo("2020-01-01T10:00:00.000Z"));
+        assertThat(source.get("date_nanos"), equalTo("2020-01-01T10:00:00.123456789Z"));
+        assertThat(source.get("ip"), equalTo("192.168.0.1"));
+        assertThat(source.get("object"), equalTo(Map.of("keyword", "c")));
+        assertThat(source.size(), equalTo(10));
+    }
+
+    public void testFetchAndGet() throws IOException {
+        createIndex("test", Settings.EMPTY, syntheticMapping());
+        client().prepareIndex("test").setId("1").setSource(SOURCE, XContentType.JSON).get();
+        client().prepareIndex("test").setId("2").setSource("{}", XContentType.JSON).get();
+        client().admin().indices().prepareRefresh("test").get();
+
+        SearchResponse response = client().prepareSearch("test").setQuery(idsQuery().addIds("1")).get();
+        assertHitCount(response, 1);
+        assertSynthetic(response.getHits().getAt(0).getSourceAsMap());
+
+        response = client().prepareSearch("test").setQuery(idsQuery().addIds("1"))
+            .setFetchSource("object.*", null).get();
+        assertThat(response.getHits().getAt(0).getSourceAsMap(), equalTo(Map.of("object", Map.of("keyword", "c"))));
+
+        response = client().prepareSearch("test").setQuery(idsQuery().addIds("2")).get();
+        assertThat(response.getHits().getAt(0).getSourceAsString(), equalTo("{}"));
+
+        // the doc values iterators of a segment are shared by its hits, whatever order they're fetched in
+        for (SortOrder order : SortOrder.values()) {
+            response = client().prepareSearch("test").addSort("_seq_no", order).get();
+            assertHitCount(response, 2);
+            for (SearchHit hit : response.getHits()) {
+                if (hit.getId().equals("1")) {
+                    assertSynthetic(hit.getSourceAsMap());
+                } else {
+                    assertThat(hit.getSourceAsString(), equalTo("{}"));
+                }
+            }
+        }
+
+        GetResponse get = client().prepareGet("test", "1").setRealtime(false).get();
+        assertSynthetic(get.getSourceAsMap());
+        get = client().prepareGet("test", "1").setRealtime(false).setFetchSource("long", null).get();
+        assertThat(get.getSourceAsMap(), equalTo(Map.of("long", List.of(1, 3))));
+    }
+
+    public void testRealtimeGet() throws IOException {
+        createIndex("test", Settings.EMPTY, syntheticMapping());
+        client().prepareIndex("test").setId("1").setSource(SOURCE, XContentType.JSON).get();
+        GetResponse get = client().prepareGet("test", "1").setRealtime(true).get();
+        assertSynthetic(get.getSourceAsMap());
+    }
+
+    public void testUpdate() throws IOException {
+        createIndex("test", Settings.EMPTY, syntheticMapping());
+        client().prepareIndex("test").setId("1").setSource(SOURCE, XContentType.JSON).get();
+        client().admin().indices().prepareRefresh("test").get();
+        client().prepareUpdate("test", "1").setDoc("{\"long\":5}", XContentType.JSON).get();
+        client().admin().indices().prepareRefresh("test").get();
+
+        Map<String, Object> source = client().prepareGet("test", "1").setRealtime(false).get().getSourceAsMap();
+        assertThat(source.get("long"), equalTo(5));
+        assertThat(source.get("keyword"), equalTo(List.of("a", "b")));
+    }
+
+    public void testRejectsMappingsThatCantRoundTrip() throws IOException {
+        assertRejected(Map.of("type", "text"),
+            "field [field] can't be used with a synthetic [_source] because it doesn't have doc values");
+        assertRejected(Map.of("type", "keyword", "doc_values", false),
+            "field [field] can't be used with a synthetic [_source] because it doesn't have doc values");
+        assertRejected(Map.of("type", "keyword", "ignore_above", 10),
+            "field [field] can't be used with a synthetic [_source] because it uses [ignore_above]");
+        assertRejected(Map.of("type", "long", "null_value", 0),
+            "field [field] can't be used with a synthetic [_source] because it defines a [null_value]");
+        assertRejected(Map.of("type", "long", "ignore_malformed", true),
+            "field [field] can't be used with a synthetic [_source] because it uses [ignore_malformed]");
+        assertRejected(Map.of("type", "keyword", "copy_to", "other"),
+            "field [field] can't be used with a synthetic [_source] because it uses [copy_to]");
+        assertRejected(Map.of("type", "date", "format", "yyyy"),
+            "field [field] can't be used with a synthetic [_source] because it uses a custom [format]");
+        assertRejected(Map.of("type", "nested"),
+            "field [field] can't be used with a synthetic [_source] because nested objects can't be rebuilt from doc values");
+        assertRejected(Map.of("type", "object", "enabled", false),
+            "field [field] can't be used with a synthetic [_source] because the values of disabled objects aren't indexed");
+        assertRejected(Map.of("type", "binary", "doc_values", true),
+            "field [field] can't be used with a synthetic [_source] because fields of type [binary] can't be rebuilt from doc values");
+    }
+
+    public void testRejectsNonDynamicObjects() throws IOException {
+        assertRejected(Map.of("type", "object", "dynamic", false),
+            "field [field] can't be used with a synthetic [_source] because it sets [dynamic] to [false], "
+                + "unmapped fields would only be kept in the [_source]");
+        // sub-objects inherit the setting of their parent
+        assertRejected(Map.of("type", "object", "dynamic", false, "properties", Map.of("sub", Map.of("type", "object"))),
+            "field [field] can't be used with a synthetic [_source] because it sets [dynamic] to [false]");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .field("dynamic", false)
+            .startObject("properties").startObject("field").field("type", "keyword").endObject().endObject()
+            .endObject();
+        Exception e = expectThrows(MapperParsingException.class,
+            () -> client().admin().indices().prepareCreate("test").setMapping(mapping).get());
+        assertThat(e.getMessage(), containsString("[dynamic] can't be [false] with a synthetic [_source] because unmapped fields "
+            + "would only be kept in the [_source], use [true] or [strict] instead"));
+
+        // strict objects reject unmapped fields, and objects can re-enable dynamic mappings under a non-dynamic parent
+        XContentBuilder strict = XContentFactory.jsonBuilder().startObject()
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .field("dynamic", "strict")
+            .startObject("properties")
+                .startObject("object").field("type", "object").field("dynamic", true).startObject("properties")
+                    .startObject("keyword").field("type", "keyword").endObject()
+                .endObject().endObject()
+            .endObject()
+            .endObject();
+        createIndex("test", Settings.EMPTY, strict);
+        expectThrows(StrictDynamicMappingException.class,
+            () -> client().prepareIndex("test").setId("1").setSource("{\"unmapped\":1}", XContentType.JSON).get());
+        client().prepareIndex("test").setId("1").setSource("{\"object\":{\"keyword\":\"a\",\"long\":2}}", XContentType.JSON).get();
+        client().admin().indices().prepareRefresh("test").get();
+        Map<String, Object> source = client().prepareGet("test", "1").setRealtime(false).get().getSourceAsMap();
+        assertThat(source, equalTo(Map.of("object", Map.of("keyword", "a", "long", 2))));
+    }
+
+    private void assertRejected(Map<String, Object> field, String message) throws IOException {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject()
+            .startObject("_source").field("mode", "synthetic").endObject()
+            .startObject("properties").field("field", field).endObject()
+            .endObject();
+        Exception e = expectThrows(MapperParsingException.class,
+            () -> client().admin().indices().prepareCreate("test").setMapping(mapping).get());
+        assertThat(e.getMessage(), containsString(message));
+    }
+}
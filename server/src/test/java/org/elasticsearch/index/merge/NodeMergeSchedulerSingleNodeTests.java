@@ -0,0 +1,76 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.merge;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+import java.util.List;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class NodeMergeSchedulerSingleNodeTests extends ESSingleNodeTestCase {
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder()
+            .put(super.nodeSettings())
+            .put(NodeMergeScheduler.ENABLED_SETTING.getKey(), true)
+            .put(NodeMergeScheduler.MAX_THREAD_COUNT_SETTING.getKey(), 1)
+            .put(NodeMergeScheduler.MAX_BYTES_PER_SEC_SETTING.getKey(), randomBoolean() ? "0b" : "100mb")
+            .build();
+    }
+
+    public void testMergesAreScheduledThroughTheNodeScheduler() {
+        final int numIndices = randomIntBetween(1, 3);
+        for (int i = 0; i < numIndices; i++) {
+            createIndex("index-" + i, Settings.builder()
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                .build());
+            final int numSegments = randomIntBetween(2, 5);
+            for (int s = 0; s < numSegments; s++) {
+                client().prepareIndex("index-" + i).setSource("{\"field\": " + s + "}", XContentType.JSON).get();
+                client().admin().indices().prepareRefresh("index-" + i).get();
+            }
+        }
+        final ForceMergeResponse response = client().admin().indices().prepareForceMerge("index-*").setMaxNumSegments(1).get();
+        assertNoFailures(response);
+        client().admin().indices().prepareRefresh("index-*").get();
+        for (int i = 0; i < numIndices; i++) {
+            assertThat(client().admin().indices().prepareSegments("index-" + i).get().getIndices().get("index-" + i)
+                .getShards().get(0).getShards()[0].getSegments().size(), equalTo(1));
+        }
+
+        final NodesStatsResponse nodesStats = client().admin().cluster().prepareNodesStats().clear().setMergeScheduler(true).get();
+        final NodeMergeStats stats = nodesStats.getNodes().get(0).getNodeMergeStats();
+        assertThat(stats, notNullValue());
+        assertThat(stats.getTotal(), greaterThan(0L));
+        assertThat(stats.getRunning(), equalTo(0L));
+        assertThat(stats.getQueued(), equalTo(0L));
+        assertThat(stats.getShards(), equalTo(List.of()));
+    }
+}
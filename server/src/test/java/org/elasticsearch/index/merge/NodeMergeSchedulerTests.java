@@ -0,0 +1,334 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.merge;
+
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class NodeMergeSchedulerTests extends ESTestCase {
+
+    private ClusterSettings clusterSettings;
+
+    private NodeMergeScheduler newScheduler(Settings settings, int numDataPaths) {
+        return newScheduler(settings, numDataPaths, System::nanoTime);
+    }
+
+    private NodeMergeScheduler newScheduler(Settings settings, int numDataPaths, LongSupplier relativeTimeInNanosSupplier) {
+        final Settings nodeSettings = Settings.builder()
+            .put(NodeMergeScheduler.ENABLED_SETTING.getKey(), true)
+            .put(settings)
+            .build();
+        clusterSettings = new ClusterSettings(nodeSettings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS);
+        return new NodeMergeScheduler(nodeSettings, clusterSettings, numDataPaths, relativeTimeInNanosSupplier);
+    }
+
+    private static Settings maxThreadCount(int maxThreadCount) {
+        return Settings.builder().put(NodeMergeScheduler.MAX_THREAD_COUNT_SETTING.getKey(), maxThreadCount).build();
+    }
+
+    private static Thread startMerge(NodeMergeScheduler.ShardScheduler scheduler, long sizeInBytes, Runnable whileRunning) {
+        final Thread thread = new Thread(() -> {
+            try (Releasable ignored = scheduler.acquire(sizeInBytes, () -> false)) {
+                whileRunning.run();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    public void testLimitsConcurrentMerges() throws Exception {
+        final int maxThreadCount = randomIntBetween(1, 4);
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(maxThreadCount), 1);
+        final Path dataPath = createTempDir();
+        final int numShards = randomIntBetween(1, 10);
+        final NodeMergeScheduler.ShardScheduler[] shards = new NodeMergeScheduler.ShardScheduler[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", i), ESTestCase::randomBoolean);
+        }
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Thread[] threads = new Thread[randomIntBetween(2, 20)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = startMerge(randomFrom(shards), randomNonNegativeLong(), () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(maxRunning.get(), lessThanOrEqualTo(maxThreadCount));
+
+        final NodeMergeStats stats = scheduler.stats();
+        assertThat(stats.getTotal(), equalTo((long) threads.length));
+        assertThat(stats.getRunning(), equalTo(0L));
+        assertThat(stats.getQueued(), equalTo(0L));
+        assertThat(stats.getShards(), equalTo(List.of()));
+    }
+
+    public void testPrioritizesSearchActiveShardsAndSmallMerges() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final Path dataPath = createTempDir();
+        final NodeMergeScheduler.ShardScheduler active = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 0),
+            () -> true);
+        final NodeMergeScheduler.ShardScheduler idle = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 1),
+            () -> false);
+
+        final Releasable slot = idle.acquire(1, () -> false);
+        final List<String> order = new CopyOnWriteArrayList<>();
+        final Thread[] threads = new Thread[] {
+            startMerge(idle, 10, () -> order.add("idle-small")),
+            startMerge(active, 1000, () -> order.add("active-large")),
+            startMerge(idle, 1000, () -> order.add("idle-large")),
+            startMerge(active, 10, () -> order.add("active-small"))
+        };
+        assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(4L)));
+        slot.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(order, equalTo(List.of("active-small", "active-large", "idle-small", "idle-large")));
+    }
+
+    public void testWaitingMergesAge() throws Exception {
+        final AtomicLong relativeTimeInNanos = new AtomicLong(randomNonNegativeLong() / 2);
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1, relativeTimeInNanos::get);
+        final Path dataPath = createTempDir();
+        final NodeMergeScheduler.ShardScheduler active = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 0),
+            () -> true);
+        final NodeMergeScheduler.ShardScheduler idle = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 1),
+            () -> false);
+
+        final Releasable slot = active.acquire(1, () -> false);
+        final List<String> order = new CopyOnWriteArrayList<>();
+        final Thread oldMerge = startMerge(idle, 1000, () -> order.add("idle-old"));
+        assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(1L)));
+        // waiting five intervals makes the merge of the idle shard compete like a merge of an active shard of a 32th of its size
+        relativeTimeInNanos.addAndGet(5 * NodeMergeScheduler.AGING_INTERVAL_NANOS);
+        final Thread newMerge = startMerge(active, 100, () -> order.add("active-new"));
+        assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(2L)));
+        slot.close();
+        oldMerge.join();
+        newMerge.join();
+        assertThat(order, equalTo(List.of("idle-old", "active-new")));
+    }
+
+    public void testAbortedMergesStopWaiting() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final NodeMergeScheduler.ShardScheduler shard = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", 0),
+            () -> false);
+        try (Releasable ignored = shard.acquire(1, () -> false)) {
+            final AtomicBoolean aborted = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(1);
+            final Thread thread = new Thread(() -> {
+                try (Releasable slot = shard.acquire(1, aborted::get)) {
+                    done.countDown();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+            assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(1L)));
+            assertThat(done.getCount(), equalTo(1L));
+            aborted.set(true);
+            // aborted merges only stop waiting once they are told to check
+            assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+            shard.abortQueuedMerges();
+            thread.join();
+            assertThat(done.getCount(), equalTo(0L));
+            assertThat(scheduler.stats().getQueued(), equalTo(0L));
+            assertThat(scheduler.stats().getRunning(), equalTo(1L));
+        }
+        assertThat(scheduler.stats().getRunning(), equalTo(0L));
+        assertThat(scheduler.stats().getTotal(), equalTo(1L));
+    }
+
+    public void testAbortingQueuedMergesOnlyWakesUpTheShard() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final Path dataPath = createTempDir();
+        final NodeMergeScheduler.ShardScheduler first = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 0),
+            () -> false);
+        final NodeMergeScheduler.ShardScheduler second = scheduler.newShardScheduler(dataPath, new ShardId("index", "_na_", 1),
+            () -> false);
+        final Releasable slot = first.acquire(1, () -> false);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final AtomicBoolean ran = new AtomicBoolean();
+        final Thread firstMerge = new Thread(() -> {
+            try (Releasable ignored = first.acquire(1, aborted::get)) {
+                assertNotNull(ignored);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        firstMerge.start();
+        final Thread secondMerge = startMerge(second, 1, () -> ran.set(true));
+        assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(2L)));
+        aborted.set(true);
+        first.abortQueuedMerges();
+        firstMerge.join();
+        second.abortQueuedMerges();
+        assertThat(scheduler.stats().getQueued(), equalTo(1L));
+        assertFalse(ran.get());
+        slot.close();
+        secondMerge.join();
+        assertTrue(ran.get());
+        assertThat(scheduler.stats().getTotal(), equalTo(2L));
+    }
+
+    public void testInterruptedMergesLeaveTheQueue() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final NodeMergeScheduler.ShardScheduler shard = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", 0),
+            () -> false);
+        try (Releasable ignored = shard.acquire(1, () -> false)) {
+            final AtomicBoolean interrupted = new AtomicBoolean();
+            final Thread thread = new Thread(() -> {
+                try {
+                    shard.acquire(1, () -> false);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            });
+            thread.start();
+            assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(1L)));
+            thread.interrupt();
+            thread.join();
+            assertTrue(interrupted.get());
+            assertThat(scheduler.stats().getQueued(), equalTo(0L));
+        }
+        assertThat(scheduler.stats().getRunning(), equalTo(0L));
+    }
+
+    public void testStatsReportBacklogPerShard() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final Path dataPath = createTempDir();
+        final ShardId firstShardId = new ShardId("index", "_na_", 0);
+        final ShardId secondShardId = new ShardId("index", "_na_", 1);
+        final NodeMergeScheduler.ShardScheduler first = scheduler.newShardScheduler(dataPath, firstShardId, () -> false);
+        final NodeMergeScheduler.ShardScheduler second = scheduler.newShardScheduler(dataPath, secondShardId, () -> false);
+
+        final Releasable slot = first.acquire(randomNonNegativeLong(), () -> false);
+        final Thread[] threads = new Thread[] {
+            startMerge(second, 10, () -> {}),
+            startMerge(second, 20, () -> {})
+        };
+        assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(2L)));
+        final NodeMergeStats stats = scheduler.stats();
+        assertThat(stats.getRunning(), equalTo(1L));
+        assertThat(stats.getQueuedSize().getBytes(), equalTo(30L));
+        assertThat(stats.getShards(), equalTo(List.of(
+            new NodeMergeStats.ShardBacklog(firstShardId, 1, 0, 0),
+            new NodeMergeStats.ShardBacklog(secondShardId, 0, 2, 30))));
+        slot.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(scheduler.stats().getShards(), equalTo(List.of()));
+    }
+
+    public void testThreadBudgetIsSplitAcrossDataPaths() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(2), 2);
+        final NodeMergeScheduler.ShardScheduler first = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", 0),
+            () -> false);
+        final NodeMergeScheduler.ShardScheduler second = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", 1),
+            () -> false);
+        try (Releasable firstSlot = first.acquire(1, () -> false); Releasable secondSlot = second.acquire(1, () -> false)) {
+            assertThat(scheduler.stats().getRunning(), equalTo(2L));
+            // the first data path already runs its share of the budget
+            final Thread thread = startMerge(first, 1, () -> {});
+            assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(1L)));
+            firstSlot.close();
+            thread.join();
+        }
+        assertThat(scheduler.stats().getTotal(), equalTo(3L));
+    }
+
+    public void testNodeWideBudgetIsEnforcedWithMoreDataPathsThanThreads() throws Exception {
+        final int numDataPaths = randomIntBetween(2, 4);
+        final int maxThreadCount = randomIntBetween(1, numDataPaths - 1);
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(maxThreadCount), numDataPaths);
+        final NodeMergeScheduler.ShardScheduler[] shards = new NodeMergeScheduler.ShardScheduler[numDataPaths];
+        for (int i = 0; i < numDataPaths; i++) {
+            shards[i] = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", i), () -> false);
+        }
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread[] threads = new Thread[numDataPaths];
+        for (int i = 0; i < numDataPaths; i++) {
+            // each data path would get a slot of its own if only the per path share was enforced
+            threads[i] = startMerge(shards[i], 1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                running.decrementAndGet();
+            });
+        }
+        assertBusy(() -> {
+            final NodeMergeStats stats = scheduler.stats();
+            assertThat(stats.getRunning(), equalTo((long) maxThreadCount));
+            assertThat(stats.getQueued(), equalTo((long) (numDataPaths - maxThreadCount)));
+        });
+        // the freed slots go to the merges that wait on the other data paths
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(maxRunning.get(), equalTo(maxThreadCount));
+        assertThat(scheduler.stats().getTotal(), equalTo((long) numDataPaths));
+    }
+
+    public void testRaisingMaxThreadCountStartsQueuedMerges() throws Exception {
+        final NodeMergeScheduler scheduler = newScheduler(maxThreadCount(1), 1);
+        final NodeMergeScheduler.ShardScheduler shard = scheduler.newShardScheduler(createTempDir(), new ShardId("index", "_na_", 0),
+            () -> false);
+        try (Releasable ignored = shard.acquire(1, () -> false)) {
+            final Thread thread = startMerge(shard, 1, () -> {});
+            assertBusy(() -> assertThat(scheduler.stats().getQueued(), equalTo(1L)));
+            clusterSettings.applySettings(maxThreadCount(2));
+            thread.join();
+            assertThat(scheduler.stats().getQueued(), equalTo(0L));
+        }
+        assertThat(scheduler.stats().getTotal(), equalTo(2L));
+    }
+}
@@ -20,9 +20,17 @@ package org.elasticsearch.index.replication;
 
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.BufferedChecksumIndexInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteResponse;
@@ -32,6 +40,7 @@ import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.lucene.store.ByteArrayIndexInput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.iterable.Iterables;
@@ -42,6 +51,7 @@ import org.elasticsearch.index.engine.EngineFactory;
 import org.elasticsearch.index.engine.EngineTestCase;
 import org.elasticsearch.index.engine.InternalEngine;
 import org.elasticsearch.index.engine.InternalEngineTests;
+import org.elasticsearch.index.engine.SegmentReplicaEngine;
 import org.elasticsearch.index.engine.SegmentsStats;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.mapper.SeqNoFieldMapper;
@@ -59,6 +69,7 @@ import org.hamcrest.Matcher;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -320,6 +331,55 @@ public class IndexLevelReplicationTests extends ESIndexLevelReplicationTestCase
         }
     }
 
+    public void testPromoteSegmentReplica() throws Exception {
+        final Settings settings = Settings.builder().put(IndexSettings.INDEX_REPLICATION_TYPE_SETTING.getKey(), "segment").build();
+        try (ReplicationGroup shards = createGroup(1, settings)) {
+            shards.startAll();
+            final IndexShard replica = shards.getReplicas().get(0);
+            assertThat(getEngine(replica), instanceOf(SegmentReplicaEngine.class));
+            final int copiedDocs = shards.indexDocs(randomInt(20));
+            if (randomBoolean()) {
+                copyRefreshedSegments(shards.getPrimary(), replica);
+                assertDocCount(replica, copiedDocs);
+            }
+            // operations that were only written to the translog of the replica are replayed on promotion
+            final int pendingDocs = shards.indexDocs(randomIntBetween(1, 20));
+            shards.promoteReplicaToPrimary(replica).get();
+            assertThat(getEngine(replica), instanceOf(InternalEngine.class));
+            assertDocCount(replica, copiedDocs + pendingDocs);
+            assertThat(replica.seqNoStats().getLocalCheckpoint(), equalTo((long) copiedDocs + pendingDocs - 1));
+            final int moreDocs = shards.indexDocs(randomInt(20));
+            assertDocCount(replica, copiedDocs + pendingDocs + moreDocs);
+        }
+    }
+
+    private static void copyRefreshedSegments(IndexShard primary, IndexShard replica) throws IOException {
+        primary.refresh("test");
+        try (Engine.SegmentInfosRef segmentInfosRef = getEngine(primary).acquireLastRefreshedSegmentInfos()) {
+            final SegmentInfos primarySegmentInfos = segmentInfosRef.getSegmentInfos();
+            final ByteBuffersDataOutput buffer = new ByteBuffersDataOutput();
+            try (ByteBuffersIndexOutput output = new ByteBuffersIndexOutput(buffer, "segment infos", "segment infos")) {
+                primarySegmentInfos.write(primary.store().directory(), output);
+            }
+            final byte[] bytes = buffer.toArrayCopy();
+            final Set<String> existingFiles = new HashSet<>(Arrays.asList(replica.store().directory().listAll()));
+            for (String file : primarySegmentInfos.files(false)) {
+                if (existingFiles.contains(file) == false) {
+                    try (IndexInput input = primary.store().directory().openInput(file, IOContext.READONCE);
+                         IndexOutput output = replica.store().directory().createOutput(file, IOContext.DEFAULT)) {
+                        output.copyBytes(input, input.length());
+                    }
+                }
+            }
+            // read the segments like the replica does after a copy, so that they point to the directory of the replica
+            final SegmentInfos segmentInfos;
+            try (ChecksumIndexInput input = new BufferedChecksumIndexInput(new ByteArrayIndexInput("segment infos", bytes))) {
+                segmentInfos = SegmentInfos.readCommit(replica.store().directory(), input, primarySegmentInfos.getGeneration());
+            }
+            replica.installSegments(segmentInfos);
+        }
+    }
+
     public void testReplicaTermIncrementWithConcurrentPrimaryPromotion() throws Exception {
         String mappings = "{ \"_doc\": { \"properties\": { \"f\": { \"type\": \"keyword\"} }}}";
         try (ReplicationGroup shards = new ReplicationGroup(buildIndexMetadata(2, mappings))) {
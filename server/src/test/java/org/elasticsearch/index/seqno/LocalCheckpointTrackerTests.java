@@ -31,14 +31,22 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.elasticsearch.index.seqno.LocalCheckpointTracker.BIT_SET_SIZE;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.isOneOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class LocalCheckpointTrackerTests extends ESTestCase {
 
@@ -158,7 +166,7 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         assertThat(tracker.processedCheckpoint.get(), equalTo(maxOps - 1L));
         assertThat(tracker.processedSeqNo.size(), equalTo(aligned ? 0 : 1));
         if (aligned == false) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
+            assertThat(tracker.processedSeqNo.keySet().iterator().next(), equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
         }
         assertThat(tracker.hasProcessed(randomFrom(seqNoList)), equalTo(true));
         final long notCompletedSeqNo = randomValueOtherThanMany(seqNoList::contains, ESTestCase::randomNonNegativeLong);
@@ -204,7 +212,7 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         assertThat(tracker.getProcessedCheckpoint(), equalTo(maxOps - 1L));
         assertThat(tracker.processedSeqNo.size(), isOneOf(0, 1));
         if (tracker.processedSeqNo.size() == 1) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
+            assertThat(tracker.processedSeqNo.keySet().iterator().next(), equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
         }
     }
 
@@ -258,10 +266,117 @@ public class LocalCheckpointTrackerTests extends ESTestCase {
         assertThat(tracker.hasProcessed(randomLongBetween(maxOps, Long.MAX_VALUE)), equalTo(false));
         assertThat(tracker.processedSeqNo.size(), isOneOf(0, 1));
         if (tracker.processedSeqNo.size() == 1) {
-            assertThat(tracker.processedSeqNo.keys().iterator().next().value, equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
+            assertThat(tracker.processedSeqNo.keySet().iterator().next(), equalTo(tracker.processedCheckpoint.get() / BIT_SET_SIZE));
         }
     }
 
+    public void testConcurrentMarkingAcrossBitSets() throws Exception {
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final int maxOps = BIT_SET_SIZE * randomIntBetween(2, 20) + randomIntBetween(0, BIT_SET_SIZE - 1);
+        final List<Long> seqNos = LongStream.range(0, maxOps).boxed().collect(Collectors.toList());
+        // replayed operations mark the same sequence number more than once
+        seqNos.addAll(randomSubsetOf(randomIntBetween(0, maxOps / 10), LongStream.range(0, maxOps).boxed().collect(Collectors.toList())));
+        Collections.shuffle(seqNos, random());
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier(threads.length + 1);
+        final List<AssertionError> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new AbstractRunnable() {
+                @Override
+                public void onFailure(Exception e) {
+                    throw new ElasticsearchException("failure in background thread", e);
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    barrier.await();
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < seqNos.size()) {
+                        final long seqNo = seqNos.get(index);
+                        tracker.markSeqNoAsProcessed(seqNo);
+                        tracker.markSeqNoAsPersisted(seqNo);
+                    }
+                }
+            }, "testConcurrentMarkingAcrossBitSets_" + t);
+            threads[t].start();
+        }
+        final Thread checker = new Thread(() -> {
+            try {
+                barrier.await();
+                long lastProcessedCheckpoint = SequenceNumbers.NO_OPS_PERFORMED;
+                long lastPersistedCheckpoint = SequenceNumbers.NO_OPS_PERFORMED;
+                while (done.get() == false) {
+                    final SeqNoStats stats = tracker.getStats(SequenceNumbers.UNASSIGNED_SEQ_NO);
+                    assertThat(stats.getLocalCheckpoint(), lessThanOrEqualTo(stats.getMaxSeqNo()));
+                    assertThat(stats.getLocalCheckpoint(), greaterThanOrEqualTo(lastPersistedCheckpoint));
+                    lastPersistedCheckpoint = stats.getLocalCheckpoint();
+                    final long processedCheckpoint = tracker.getProcessedCheckpoint();
+                    assertThat(processedCheckpoint, greaterThanOrEqualTo(lastProcessedCheckpoint));
+                    lastProcessedCheckpoint = processedCheckpoint;
+                    if (processedCheckpoint >= 0) {
+                        assertTrue(tracker.hasProcessed(randomLongBetween(0, processedCheckpoint)));
+                    }
+                }
+            } catch (AssertionError e) {
+                failures.add(e);
+            } catch (BrokenBarrierException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, "testConcurrentMarkingAcrossBitSets_checker");
+        checker.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        checker.join();
+        assertThat(failures, empty());
+        assertThat(tracker.getMaxSeqNo(), equalTo(maxOps - 1L));
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(maxOps - 1L));
+        assertThat(tracker.getPersistedCheckpoint(), equalTo(maxOps - 1L));
+        assertThat(tracker.processedSeqNo.size(), isOneOf(0, 1));
+        assertThat(tracker.persistedSeqNo.size(), isOneOf(0, 1));
+        assertThat(tracker.hasProcessed(randomLongBetween(0, maxOps - 1)), equalTo(true));
+        assertThat(tracker.hasProcessed(randomLongBetween(maxOps, Long.MAX_VALUE)), equalTo(false));
+    }
+
+    public void testWaitForOpsToCompleteWhileMarkingConcurrently() throws Exception {
+        final int maxOps = BIT_SET_SIZE * randomIntBetween(1, 4);
+        final Thread[] waiters = new Thread[randomIntBetween(1, 4)];
+        final CountDownLatch completed = new CountDownLatch(waiters.length);
+        for (int w = 0; w < waiters.length; w++) {
+            final long seqNo = randomIntBetween(0, maxOps - 1);
+            waiters[w] = new Thread(() -> {
+                try {
+                    tracker.waitForProcessedOpsToComplete(seqNo);
+                    assertThat(tracker.getProcessedCheckpoint(), greaterThanOrEqualTo(seqNo));
+                    completed.countDown();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "testWaitForOpsToCompleteWhileMarkingConcurrently_waiter_" + w);
+            waiters[w].start();
+        }
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadId = t;
+            threads[t] = new Thread(() -> {
+                for (long seqNo = threadId; seqNo < maxOps; seqNo += threads.length) {
+                    tracker.markSeqNoAsProcessed(seqNo);
+                }
+            }, "testWaitForOpsToCompleteWhileMarkingConcurrently_" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(maxOps - 1L));
+    }
+
     public void testWaitForOpsToComplete() throws BrokenBarrierException, InterruptedException {
         final int seqNo = randomIntBetween(0, 32);
         final CyclicBarrier barrier = new CyclicBarrier(2);
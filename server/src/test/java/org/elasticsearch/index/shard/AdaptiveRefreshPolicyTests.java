@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.shard;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AdaptiveRefreshPolicyTests extends ESTestCase {
+
+    private static final TimeValue MIN = TimeValue.timeValueSeconds(1);
+    private static final TimeValue MAX = TimeValue.timeValueSeconds(30);
+
+    public void testIntervalIsBounded() {
+        assertThat(AdaptiveRefreshPolicy.intervalInNanos(0, randomDoubleBetween(0, 1000, true), MIN, MAX), equalTo(MAX.nanos()));
+        assertThat(AdaptiveRefreshPolicy.intervalInNanos(randomDoubleBetween(0, 1000, true), 0, MIN, MAX), equalTo(MAX.nanos()));
+        assertThat(AdaptiveRefreshPolicy.intervalInNanos(100, 1000, MIN, MAX), equalTo(MIN.nanos()));
+        // one search every 10 seconds and one document per second
+        assertThat(AdaptiveRefreshPolicy.intervalInNanos(0.1, 1, MIN, MAX), equalTo((long) (TimeUnit.SECONDS.toNanos(1) / Math.sqrt(0.1))));
+        // a maximum below the minimum is ignored
+        assertThat(AdaptiveRefreshPolicy.intervalInNanos(0, 1, MAX, MIN), equalTo(MAX.nanos()));
+    }
+
+    public void testUnsearchedShardIsRefreshedAtMaxInterval() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(0);
+        long writes = 0;
+        for (int i = 1; i < 30; i++) {
+            writes += randomIntBetween(1, 1000);
+            assertFalse(policy.isRefreshDue(i * second, writes, 0, MIN, MAX));
+        }
+        assertTrue(policy.isRefreshDue(30 * second, writes, 0, MIN, MAX));
+        assertThat(policy.getInterval(MIN, MAX), equalTo(MAX));
+        policy.onRefresh(30 * second);
+        assertFalse(policy.isRefreshDue(31 * second, writes, 0, MIN, MAX));
+    }
+
+    public void testSearchedShardIsRefreshedMoreOften() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(0);
+        long writes = 0;
+        long now = 0;
+        // five minutes of ten searches and a hundred writes per second
+        for (int i = 0; i < 300; i++) {
+            for (int s = 0; s < 10; s++) {
+                policy.onSearch();
+            }
+            writes += 100;
+            now += second;
+            policy.isRefreshDue(now, writes, 0, MIN, MAX);
+        }
+        assertThat(policy.getInterval(MIN, MAX), equalTo(MIN));
+        policy.onRefresh(now);
+        assertFalse(policy.isRefreshDue(now + second / 2, writes, 0, MIN, MAX));
+        assertTrue(policy.isRefreshDue(now + second, writes, 0, MIN, MAX));
+
+        // searches stop, the interval grows back to the maximum
+        for (int i = 0; i < 600; i++) {
+            now += second;
+            writes += 100;
+            policy.isRefreshDue(now, writes, 0, MIN, MAX);
+        }
+        assertThat(policy.getInterval(MIN, MAX).nanos(), greaterThan(MIN.nanos()));
+        for (int i = 0; i < 600; i++) {
+            now += second;
+            writes += 100;
+            policy.isRefreshDue(now, writes, 0, MIN, MAX);
+        }
+        assertThat(policy.getInterval(MIN, MAX), equalTo(MAX));
+    }
+
+    public void testIntervalShrinksWithSearchRate() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final TimeValue min = TimeValue.timeValueMillis(100);
+        final TimeValue max = TimeValue.timeValueMinutes(10);
+        final AdaptiveRefreshPolicy rarelySearched = new AdaptiveRefreshPolicy(0);
+        final AdaptiveRefreshPolicy oftenSearched = new AdaptiveRefreshPolicy(0);
+        for (int i = 1; i <= 120; i++) {
+            if (i % 10 == 0) {
+                rarelySearched.onSearch();
+            }
+            oftenSearched.onSearch();
+            rarelySearched.isRefreshDue(i * second, i, 0, min, max);
+            oftenSearched.isRefreshDue(i * second, i, 0, min, max);
+        }
+        assertThat(oftenSearched.getInterval(min, max).nanos(), lessThan(rarelySearched.getInterval(min, max).nanos()));
+    }
+
+    public void testPendingListenersShortenTheInterval() {
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        final AdaptiveRefreshPolicy withoutListeners = new AdaptiveRefreshPolicy(0);
+        final AdaptiveRefreshPolicy withListeners = new AdaptiveRefreshPolicy(0);
+        long writes = 0;
+        for (int i = 1; i <= 120; i++) {
+            writes += 10;
+            withoutListeners.isRefreshDue(i * second, writes, 0, MIN, MAX);
+            final int pendingListeners = randomIntBetween(1, 10);
+            // pending listeners always need a refresh
+            assertTrue(withListeners.isRefreshDue(i * second, writes, pendingListeners, MIN, MAX));
+            withListeners.onRefresh(i * second);
+        }
+        assertThat(withoutListeners.getInterval(MIN, MAX), equalTo(MAX));
+        assertThat(withListeners.getInterval(MIN, MAX).nanos(), lessThan(MAX.nanos()));
+        assertFalse(withListeners.isRefreshDue(121 * second - 1, writes, 0, MIN, MAX));
+    }
+}
@@ -3423,6 +3423,45 @@ public class IndexShardTests extends IndexShardTestCase {
         closeShards(primary);
     }
 
+    public void testAdaptiveRefresh() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING.getKey(), true)
+            .put(IndexSettings.INDEX_REFRESH_ADAPTIVE_MAX_INTERVAL_SETTING.getKey(), "1h")
+            .build();
+        IndexMetadata metadata = IndexMetadata.builder("test")
+            .putMapping("{ \"properties\": { \"foo\":  { \"type\": \"text\"}}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metadata.getIndex(), 0), true, "n1", metadata, null);
+        recoverShardFromStore(primary);
+        // nobody searched the shard, so it stays at the maximum interval
+        assertThat(primary.getAdaptiveRefreshInterval(), equalTo(TimeValue.timeValueHours(1)));
+        indexDoc(primary, "_doc", "0", "{\"foo\" : \"bar\"}");
+        assertTrue(primary.getEngine().refreshNeeded());
+        assertFalse(primary.scheduledRefresh());
+        assertTrue(primary.getEngine().refreshNeeded());
+
+        // a pending refresh listener forces the refresh
+        Engine.IndexResult doc = indexDoc(primary, "_doc", "1", "{\"foo\" : \"bar\"}");
+        CountDownLatch latch = new CountDownLatch(1);
+        primary.addRefreshListener(doc.getTranslogLocation(), r -> latch.countDown());
+        assertTrue(primary.scheduledRefresh());
+        latch.await();
+        try (Engine.Searcher searcher = primary.acquireSearcher("test")) {
+            assertEquals(2, searcher.getIndexReader().numDocs());
+        }
+
+        // without adaptive refresh the shard is refreshed on every run
+        IndexScopedSettings scopedSettings = primary.indexSettings().getScopedSettings();
+        scopedSettings.applySettings(Settings.builder().put(settings)
+            .put(IndexSettings.INDEX_REFRESH_ADAPTIVE_ENABLED_SETTING.getKey(), false).build());
+        indexDoc(primary, "_doc", "2", "{\"foo\" : \"bar\"}");
+        assertTrue(primary.scheduledRefresh());
+        closeShards(primary);
+    }
+
     public void testRefreshIsNeededWithRefreshListeners() throws IOException, InterruptedException {
         Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
             .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
@@ -20,6 +20,7 @@ package org.elasticsearch.index.shard;
 
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
@@ -31,6 +32,7 @@ import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.elasticsearch.index.seqno.SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
 import static org.elasticsearch.index.seqno.SequenceNumbers.UNASSIGNED_SEQ_NO;
@@ -157,6 +159,45 @@ public class ShardGetServiceTests extends IndexShardTestCase {
         closeShards(primary);
     }
 
+    public void testGetFromTranslogWithSyntheticSource() throws IOException {
+        Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .build();
+        IndexMetadata metadata = IndexMetadata.builder("test")
+            .putMapping("{ \"properties\": { \"foo\":  { \"type\": \"keyword\", \"store\": true }, " +
+                "\"bar\":  { \"type\": \"long\"}}, \"_source\": { \"mode\": \"synthetic\" }}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        IndexShard primary = newShard(new ShardId(metadata.getIndex(), 0), true, "n1", metadata, null);
+        recoverShardFromStore(primary);
+        String docToIndex = "{\"foo\" : [\"b\", \"a\", \"b\"], \"bar\" : [3, 1]}";
+        String expectedResult = "{\"bar\":[1,3],\"foo\":[\"a\",\"b\"]}";
+        indexDoc(primary, "test", "0", docToIndex);
+        // the first realtime get refreshes and starts to track the translog location of the documents
+        GetResult fromIndex = primary.getService().getForUpdate("0", UNASSIGNED_SEQ_NO, UNASSIGNED_PRIMARY_TERM);
+        assertEquals(expectedResult, new String(fromIndex.source(), StandardCharsets.UTF_8));
+
+        indexDoc(primary, "test", "1", docToIndex);
+        assertTrue(primary.getEngine().refreshNeeded());
+        GetResult fromTranslog = primary.getService().getForUpdate("1", UNASSIGNED_SEQ_NO, UNASSIGNED_PRIMARY_TERM);
+        assertEquals(expectedResult, new String(fromTranslog.source(), StandardCharsets.UTF_8));
+        // stored fields that aren't provided by the translog force the document to be parsed again
+        GetResult storedFieldsFromTranslog = primary.getService().get("1", new String[]{"foo"}, true, Versions.MATCH_ANY,
+            VersionType.INTERNAL, FetchSourceContext.FETCH_SOURCE);
+        assertEquals(expectedResult, new String(storedFieldsFromTranslog.source(), StandardCharsets.UTF_8));
+        assertEquals(List.of("b", "a", "b"), storedFieldsFromTranslog.getFields().get("foo").getValues());
+        try (Engine.Searcher searcher = primary.getEngine().acquireSearcher("test", Engine.SearcherScope.INTERNAL)) {
+            assertEquals(searcher.getIndexReader().maxDoc(), 1); // we read from the translog
+        }
+
+        primary.getEngine().refresh("test");
+        fromIndex = primary.getService().getForUpdate("1", UNASSIGNED_SEQ_NO, UNASSIGNED_PRIMARY_TERM);
+        assertEquals(expectedResult, new String(fromIndex.source(), StandardCharsets.UTF_8));
+
+        closeShards(primary);
+    }
+
     public void testTypelessGetForUpdate() throws IOException {
         Settings settings = Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
                 .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
@@ -20,14 +20,19 @@ package org.elasticsearch.index.store;
 
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.MergeInfo;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.SimpleFSDirectory;
 import org.apache.lucene.store.SleepingLockWrapper;
 import org.apache.lucene.util.Constants;
 import org.elasticsearch.Version;
+import org.elasticsearch.bootstrap.NativePageCache;
 import org.elasticsearch.cluster.metadata.IndexMetadata;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
@@ -73,6 +78,53 @@ public class FsDirectoryFactoryTests extends ESTestCase {
         }
     }
 
+    public void testPageCacheAdvice() throws IOException {
+        assertTrue(PageCacheAdvisingDirectory.isReadRandomly("_0.tim"));
+        assertTrue(PageCacheAdvisingDirectory.isReadRandomly("_0.dim"));
+        assertFalse(PageCacheAdvisingDirectory.isReadRandomly("_0.fdt"));
+        assertTrue(PageCacheAdvisingDirectory.isReadSequentially(IOContext.READONCE));
+        assertTrue(PageCacheAdvisingDirectory.isReadSequentially(new IOContext(new MergeInfo(1, 1024, false, -1))));
+        assertFalse(PageCacheAdvisingDirectory.isReadSequentially(IOContext.READ));
+
+        Settings settings = Settings.builder()
+            .put(IndexModule.INDEX_STORE_TYPE_SETTING.getKey(), randomFrom("hybridfs", "mmapfs", "niofs"))
+            .put(IndexModule.INDEX_STORE_PAGE_CACHE_ADVICE_SETTING.getKey(), true)
+            .build();
+        try (Directory directory = newDirectory(settings)) {
+            if (NativePageCache.isAvailable() == false) {
+                assertThat(directory, Matchers.not(Matchers.instanceOf(PageCacheAdvisingDirectory.class)));
+                return;
+            }
+            assertThat(directory, Matchers.instanceOf(PageCacheAdvisingDirectory.class));
+            assertSame(directory, PageCacheAdvisingDirectory.find(new FilterDirectory(directory) {}));
+
+            final byte[] bytes = randomByteArrayOfLength(scaledRandomIntBetween(1, 1 << 20));
+            for (String name : new String[] {"_0.tim", "_0.fdt"}) {
+                try (IndexOutput output = directory.createOutput(name, IOContext.DEFAULT)) {
+                    output.writeBytes(bytes, bytes.length);
+                }
+                for (IOContext context : new IOContext[] {IOContext.READ, IOContext.READONCE,
+                    new IOContext(new MergeInfo(1, bytes.length, false, -1))}) {
+                    try (IndexInput input = directory.openInput(name, context)) {
+                        assertThat(input instanceof PageCacheAdvisingDirectory.DropBehindIndexInput,
+                            Matchers.equalTo(PageCacheAdvisingDirectory.isReadSequentially(context)));
+                        final byte[] read = new byte[bytes.length];
+                        input.readBytes(read, 0, read.length);
+                        assertArrayEquals(bytes, read);
+                        final IndexInput slice = input.slice("slice", 1, bytes.length - 1);
+                        slice.seek(bytes.length - 2);
+                        assertEquals(bytes[bytes.length - 1], slice.readByte());
+                    }
+                }
+            }
+            final long residentBytes = ((PageCacheAdvisingDirectory) directory).residentBytes();
+            assertThat(residentBytes, Matchers.greaterThanOrEqualTo(0L));
+            final long pageSize = NativePageCache.pageSize();
+            assertThat(residentBytes, Matchers.lessThanOrEqualTo(2 * ((bytes.length + pageSize - 1) / pageSize) * pageSize
+                + directory.listAll().length * pageSize));
+        }
+    }
+
     private Directory newDirectory(Settings settings) throws IOException {
         IndexSettings idxSettings = IndexSettingsModule.newIndexSettings("foo", settings);
         Path tempDir = createTempDir().resolve(idxSettings.getUUID()).resolve("0");
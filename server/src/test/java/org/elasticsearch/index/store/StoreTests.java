@@ -59,6 +59,9 @@ import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.env.ShardLock;
 import org.elasticsearch.index.Index;
@@ -83,10 +86,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.unmodifiableMap;
@@ -382,6 +388,78 @@ public class StoreTests extends ESTestCase {
 
     }
 
+    public void testCheckIntegrityConcurrently() throws Exception {
+        Directory dir = newDirectory();
+        final int numFiles = randomIntBetween(1, 20);
+        final List<StoreFileMetadata> files = new ArrayList<>();
+        final Set<String> corruptedFiles = new HashSet<>();
+        for (int i = 0; i < numFiles; i++) {
+            final String name = "file_" + i + ".bin";
+            try (IndexOutput output = dir.createOutput(name, IOContext.DEFAULT)) {
+                final int iters = scaledRandomIntBetween(1, 100);
+                for (int j = 0; j < iters; j++) {
+                    BytesRef bytesRef = new BytesRef(TestUtil.randomRealisticUnicodeString(random(), 10, 1024));
+                    output.writeBytes(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+                }
+                CodecUtil.writeFooter(output);
+            }
+            final long length;
+            final long checksum;
+            try (IndexInput input = dir.openInput(name, IOContext.DEFAULT)) {
+                length = input.length();
+                checksum = CodecUtil.retrieveChecksum(input);
+            }
+            if (rarely()) {
+                corruptedFiles.add(name);
+                files.add(new StoreFileMetadata(name, length, Store.digestToString(checksum + 1), Version.LATEST));
+            } else {
+                files.add(new StoreFileMetadata(name, length, Store.digestToString(checksum), Version.LATEST));
+            }
+        }
+
+        final int maxConcurrentFiles = randomIntBetween(1, 8);
+        final ExecutorService executor = EsExecutors.newFixed("test", maxConcurrentFiles, -1,
+            EsExecutors.daemonThreadFactory("test"), new ThreadContext(Settings.EMPTY), false);
+        try {
+            final Map<String, IOException> failures = Store.checkIntegrity(files, dir, executor, maxConcurrentFiles);
+            assertThat(failures.keySet(), equalTo(corruptedFiles));
+            for (IOException failure : failures.values()) {
+                assertThat(failure, instanceOf(CorruptIndexException.class));
+                assertThat(failure.getMessage(), containsString("inconsistent metadata"));
+            }
+        } finally {
+            terminate(executor);
+        }
+
+        // the calling thread verifies all files on its own if the executor rejects them
+        final Map<String, IOException> failures = Store.checkIntegrity(files, dir, command -> {
+            throw new EsRejectedExecutionException("rejected");
+        }, maxConcurrentFiles);
+        assertThat(failures.keySet(), equalTo(corruptedFiles));
+
+        // exceptions that are not about reading the files are not reported as corruptions
+        final String brokenFile = randomFrom(files).name();
+        final Directory brokenDir = new FilterDirectory(dir) {
+            @Override
+            public IndexInput openInput(String name, IOContext context) throws IOException {
+                if (name.equals(brokenFile)) {
+                    throw new IllegalStateException("boom");
+                }
+                return super.openInput(name, context);
+            }
+        };
+        final ExecutorService otherExecutor = EsExecutors.newFixed("test", maxConcurrentFiles, -1,
+            EsExecutors.daemonThreadFactory("test"), new ThreadContext(Settings.EMPTY), false);
+        try {
+            final IllegalStateException e = expectThrows(IllegalStateException.class,
+                () -> Store.checkIntegrity(files, brokenDir, otherExecutor, maxConcurrentFiles));
+            assertThat(e.getMessage(), equalTo("boom"));
+        } finally {
+            terminate(otherExecutor);
+        }
+        dir.close();
+    }
+
     public void testVerifyingIndexInput() throws IOException {
         Directory dir = newDirectory();
         IndexOutput output = dir.createOutput("foo.bar", IOContext.DEFAULT);
@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class TranslogSyncCoordinatorSingleNodeTests extends ESSingleNodeTestCase {
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder()
+            .put(super.nodeSettings())
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_ENABLED_SETTING.getKey(), true)
+            .build();
+    }
+
+    public void testWritesAreSyncedThroughTheCoordinator() {
+        final int numIndices = randomIntBetween(1, 3);
+        for (int i = 0; i < numIndices; i++) {
+            createIndex("index-" + i, Settings.builder()
+                .put(IndexSettings.INDEX_TRANSLOG_DURABILITY_SETTING.getKey(), Translog.Durability.REQUEST)
+                .build());
+        }
+        final int numRequests = randomIntBetween(1, 10);
+        for (int r = 0; r < numRequests; r++) {
+            final BulkRequestBuilder bulk = client().prepareBulk();
+            for (int i = 0; i < numIndices; i++) {
+                bulk.add(client().prepareIndex("index-" + i).setSource("{\"field\": " + r + "}", XContentType.JSON));
+            }
+            assertNoFailures(bulk.get());
+        }
+        for (int i = 0; i < numIndices; i++) {
+            assertThat(client().admin().indices().prepareStats("index-" + i).get().getTotal().getTranslog().getUncommittedOperations(),
+                equalTo(numRequests));
+        }
+
+        final NodesStatsResponse response = client().admin().cluster().prepareNodesStats().clear().setTranslogSync(true).get();
+        final TranslogSyncStats stats = response.getNodes().get(0).getTranslogSyncStats();
+        assertThat(stats, notNullValue());
+        // each bulk request syncs the translog of every index it wrote to
+        assertThat(stats.getRequests(), equalTo((long) numRequests * numIndices));
+        assertThat(stats.getRounds(), greaterThan(0L));
+        assertThat(stats.getShardSyncs(), greaterThanOrEqualTo(stats.getRounds()));
+    }
+}
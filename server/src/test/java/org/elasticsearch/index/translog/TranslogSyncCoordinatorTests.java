@@ -0,0 +1,301 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TranslogSyncCoordinatorTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        terminate(threadPool);
+    }
+
+    private TranslogSyncCoordinator newCoordinator(Settings settings) {
+        final Settings nodeSettings = Settings.builder()
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_ENABLED_SETTING.getKey(), true)
+            .put(settings)
+            .build();
+        return new TranslogSyncCoordinator(nodeSettings, new ClusterSettings(nodeSettings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS),
+            threadPool);
+    }
+
+    // rounds are processed right away, by a single thread
+    private static Settings synchronous() {
+        return Settings.builder()
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_WAIT_SETTING.getKey(), TimeValue.ZERO)
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING.getKey(), 1)
+            .build();
+    }
+
+    public void testSyncsEachShardOncePerRound() throws Exception {
+        final TranslogSyncCoordinator coordinator = newCoordinator(Settings.builder()
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_WAIT_SETTING.getKey(), TimeValue.timeValueMillis(randomIntBetween(0, 5)))
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING.getKey(), randomIntBetween(1, 4))
+            .build());
+        final Path dataPath = createTempDir();
+        final int numShards = randomIntBetween(1, 10);
+        final AtomicLong syncedLocations = new AtomicLong();
+        final AtomicInteger shardSyncs = new AtomicInteger();
+        final List<TranslogSyncCoordinator.ShardSyncer> syncers = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            syncers.add(coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", i), locations -> {
+                shardSyncs.incrementAndGet();
+                syncedLocations.addAndGet(locations.count());
+            }));
+        }
+
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final int requestsPerThread = randomIntBetween(10, 200);
+        final CountDownLatch notified = new CountDownLatch(threads.length * requestsPerThread);
+        final List<Exception> failures = new CopyOnWriteArrayList<>();
+        final Phaser phaser = new Phaser(threads.length + 1);
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                phaser.arriveAndAwaitAdvance();
+                for (int i = 0; i < requestsPerThread; i++) {
+                    randomFrom(syncers).sync(new Translog.Location(randomNonNegativeLong(), i, 1), e -> {
+                        if (e != null) {
+                            failures.add(e);
+                        }
+                        notified.countDown();
+                    });
+                }
+            });
+            threads[t].start();
+        }
+        phaser.arriveAndAwaitAdvance();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+        assertThat(failures, equalTo(List.of()));
+
+        final TranslogSyncStats stats = coordinator.stats();
+        assertThat(stats.getRequests(), equalTo((long) threads.length * requestsPerThread));
+        assertThat(syncedLocations.get(), equalTo(stats.getRequests()));
+        assertThat(stats.getShardSyncs(), equalTo((long) shardSyncs.get()));
+        // requests that did not fit in the queue are synced one by one, outside of the rounds
+        final long roundShardSyncs = stats.getShardSyncs() - stats.getDirectSyncs();
+        assertThat(stats.getRounds(), lessThanOrEqualTo(roundShardSyncs));
+        assertThat(roundShardSyncs, lessThanOrEqualTo(Math.min(stats.getRequests(), stats.getRounds() * numShards)));
+        assertThat(stats.getMaxBatchSize(), lessThanOrEqualTo(stats.getRequests()));
+    }
+
+    public void testFailureOnlyFailsRequestsOfTheSameShard() {
+        final TranslogSyncCoordinator coordinator = newCoordinator(synchronous());
+        final Path dataPath = createTempDir();
+        final TranslogSyncCoordinator.ShardSyncer failing = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 0),
+            locations -> {
+                throw new IOException("simulated");
+            });
+        final AtomicInteger syncs = new AtomicInteger();
+        final TranslogSyncCoordinator.ShardSyncer succeeding = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 1),
+            locations -> syncs.incrementAndGet());
+
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        failing.sync(new Translog.Location(1, 0, 1), failure::set);
+        assertThat(failure.get(), instanceOf(IOException.class));
+
+        final AtomicReference<Exception> success = new AtomicReference<>(new Exception("not notified"));
+        succeeding.sync(new Translog.Location(1, 0, 1), success::set);
+        assertThat(success.get(), nullValue());
+        assertThat(syncs.get(), equalTo(1));
+    }
+
+    public void testMaxWaitGroupsRequestsOfDifferentShards() throws Exception {
+        final TranslogSyncCoordinator coordinator = newCoordinator(Settings.builder()
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_WAIT_SETTING.getKey(), "1s")
+            .build());
+        final Path dataPath = createTempDir();
+        final List<String> syncThreads = new CopyOnWriteArrayList<>();
+        final TranslogSyncCoordinator.ShardSyncer first = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 0),
+            locations -> syncThreads.add(Thread.currentThread().getName()));
+        final TranslogSyncCoordinator.ShardSyncer second = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 1),
+            locations -> syncThreads.add(Thread.currentThread().getName()));
+
+        final CountDownLatch notified = new CountDownLatch(2);
+        // the callers return right away rather than waiting for the round
+        first.sync(new Translog.Location(1, 0, 1), e -> notified.countDown());
+        second.sync(new Translog.Location(1, 0, 1), e -> notified.countDown());
+        assertThat(notified.getCount(), equalTo(2L));
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+
+        final TranslogSyncStats stats = coordinator.stats();
+        assertThat(stats.getRounds(), equalTo(1L));
+        assertThat(stats.getRequests(), equalTo(2L));
+        assertThat(stats.getShardSyncs(), equalTo(2L));
+        assertThat(stats.getMaxBatchSize(), equalTo(2L));
+        assertThat(syncThreads.size(), equalTo(2));
+        for (String syncThread : syncThreads) {
+            assertThat(syncThread, containsString("[" + ThreadPool.Names.GENERIC + "]"));
+        }
+    }
+
+    public void testSyncsShardsOfARoundInParallel() throws Exception {
+        final int maxConcurrentSyncs = randomIntBetween(2, 4);
+        final TranslogSyncCoordinator coordinator = newCoordinator(Settings.builder()
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_WAIT_SETTING.getKey(), TimeValue.ZERO)
+            .put(TranslogSyncCoordinator.GROUP_COMMIT_MAX_CONCURRENT_SYNCS_SETTING.getKey(), maxConcurrentSyncs)
+            .build());
+        final Path dataPath = createTempDir();
+
+        // holds the first round so that the requests of all the other shards end up in the next one
+        final CountDownLatch blockFirstRound = new CountDownLatch(1);
+        final TranslogSyncCoordinator.ShardSyncer blocking = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 0),
+            locations -> {
+                try {
+                    assertTrue(blockFirstRound.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        final Thread thread = new Thread(() -> blocking.sync(new Translog.Location(1, 0, 1), e -> {}));
+        thread.start();
+        assertBusy(() -> assertThat(thread.getState(), equalTo(Thread.State.TIMED_WAITING)));
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final CountDownLatch allInFlight = new CountDownLatch(maxConcurrentSyncs);
+        final int numShards = maxConcurrentSyncs + randomIntBetween(0, 3);
+        final CountDownLatch notified = new CountDownLatch(numShards);
+        final List<Exception> failures = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= numShards; i++) {
+            final TranslogSyncCoordinator.ShardSyncer syncer = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", i),
+                locations -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    allInFlight.countDown();
+                    try {
+                        // only returns once as many shards as allowed are synced at the same time
+                        assertTrue(allInFlight.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            syncer.sync(new Translog.Location(1, 0, 1), e -> {
+                if (e != null) {
+                    failures.add(e);
+                }
+                notified.countDown();
+            });
+        }
+        blockFirstRound.countDown();
+        thread.join();
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+        assertThat(failures, equalTo(List.of()));
+        assertThat(maxInFlight.get(), equalTo(maxConcurrentSyncs));
+        assertThat(coordinator.stats().getRounds(), equalTo(2L));
+        assertThat(coordinator.stats().getMaxBatchSize(), equalTo((long) numShards));
+    }
+
+    public void testSyncsOnCallerThreadWhenQueueIsFull() throws Exception {
+        final TranslogSyncCoordinator coordinator = newCoordinator(synchronous());
+        final Path dataPath = createTempDir();
+
+        // holds the first round so that the queue of the data path fills up
+        final CountDownLatch blockFirstRound = new CountDownLatch(1);
+        final TranslogSyncCoordinator.ShardSyncer blocking = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 0),
+            locations -> {
+                try {
+                    assertTrue(blockFirstRound.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        final Thread thread = new Thread(() -> blocking.sync(new Translog.Location(1, 0, 1), e -> {}));
+        thread.start();
+        assertBusy(() -> assertThat(thread.getState(), equalTo(Thread.State.TIMED_WAITING)));
+
+        final List<Thread> syncingThreads = new CopyOnWriteArrayList<>();
+        final TranslogSyncCoordinator.ShardSyncer syncer = coordinator.newShardSyncer(dataPath, new ShardId("index", "_na_", 1),
+            locations -> syncingThreads.add(Thread.currentThread()));
+        final int numDirectSyncs = randomIntBetween(1, 10);
+        final AtomicInteger notified = new AtomicInteger();
+        final List<Exception> failures = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < TranslogSyncCoordinator.QUEUE_SIZE + numDirectSyncs; i++) {
+            syncer.sync(new Translog.Location(1, i, 1), e -> {
+                if (e != null) {
+                    failures.add(e);
+                }
+                notified.incrementAndGet();
+            });
+        }
+        // the requests that did not fit in the queue are synced right away instead of blocking the caller
+        assertThat(notified.get(), equalTo(numDirectSyncs));
+        assertThat(syncingThreads, equalTo(Collections.nCopies(numDirectSyncs, Thread.currentThread())));
+        assertThat(coordinator.stats().getDirectSyncs(), equalTo((long) numDirectSyncs));
+
+        blockFirstRound.countDown();
+        thread.join();
+        assertBusy(() -> assertThat(notified.get(), equalTo(TranslogSyncCoordinator.QUEUE_SIZE + numDirectSyncs)));
+        assertThat(failures, equalTo(List.of()));
+        assertThat(coordinator.stats().getRequests(), equalTo((long) TranslogSyncCoordinator.QUEUE_SIZE + numDirectSyncs + 1));
+        assertThat(coordinator.stats().getShardSyncs(), equalTo(2L + numDirectSyncs));
+    }
+
+    public void testDataPathsAreSyncedIndependently() {
+        final TranslogSyncCoordinator coordinator = newCoordinator(synchronous());
+        final AtomicInteger syncs = new AtomicInteger();
+        final TranslogSyncCoordinator.ShardSyncer first = coordinator.newShardSyncer(createTempDir(), new ShardId("index", "_na_", 0),
+            locations -> syncs.incrementAndGet());
+        final TranslogSyncCoordinator.ShardSyncer second = coordinator.newShardSyncer(createTempDir(), new ShardId("index", "_na_", 1),
+            locations -> syncs.incrementAndGet());
+        first.sync(new Translog.Location(1, 0, 1), e -> {});
+        second.sync(new Translog.Location(1, 0, 1), e -> {});
+        assertThat(syncs.get(), equalTo(2));
+        assertThat(coordinator.stats().getRounds(), equalTo(2L));
+    }
+}
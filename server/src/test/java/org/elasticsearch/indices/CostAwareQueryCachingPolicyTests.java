@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.common.cache.FrequencySketch;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+
+public class CostAwareQueryCachingPolicyTests extends ESTestCase {
+
+    public void testUnknownCost() throws IOException {
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy(256, query -> Double.NaN);
+        final Query range = LongPoint.newRangeQuery("field", 1, 10);
+        final Query bool = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("field", "a")), Occur.FILTER)
+            .add(new TermQuery(new Term("field", "b")), Occur.FILTER)
+            .build();
+        final Query phrase = new PhraseQuery("field", "a", "b");
+        assertEquals(2, policy.minFrequencyToCache(range));
+        assertEquals(4, policy.minFrequencyToCache(bool));
+        assertEquals(5, policy.minFrequencyToCache(phrase));
+
+        policy.onUse(range);
+        assertFalse(policy.shouldCache(range));
+        policy.onUse(range);
+        assertTrue(policy.shouldCache(range));
+        for (int i = 0; i < 4; i++) {
+            policy.onUse(phrase);
+            assertFalse(policy.shouldCache(phrase));
+        }
+        policy.onUse(phrase);
+        assertTrue(policy.shouldCache(phrase));
+    }
+
+    public void testNeverCache() throws IOException {
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy(256, query -> 100d);
+        for (Query query : new Query[] { new TermQuery(new Term("field", "value")), new MatchAllDocsQuery(),
+                new BooleanQuery.Builder().build() }) {
+            for (int i = 0; i < 10; i++) {
+                policy.onUse(query);
+            }
+            assertFalse(policy.shouldCache(query));
+        }
+    }
+
+    public void testMeasuredCost() throws IOException {
+        final Query expensive = new PhraseQuery("field", "a", "b");
+        final Query average = new PhraseQuery("field", "c", "d");
+        final Query cheap = LongPoint.newRangeQuery("field", 1, 10);
+        final Query free = LongPoint.newRangeQuery("field", 11, 20);
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy(256, query -> {
+            if (query == expensive) {
+                return 10d;
+            } else if (query == average) {
+                return 1d;
+            } else if (query == cheap) {
+                return 0.5d;
+            } else {
+                return 0d;
+            }
+        });
+        // expensive filters are still never cached after a single use
+        assertEquals(2, policy.minFrequencyToCache(expensive));
+        assertEquals(CostAwareQueryCachingPolicy.DEFAULT_MIN_FREQUENCY, policy.minFrequencyToCache(average));
+        // a cheap point query needs more uses than when its cost is unknown
+        assertEquals(2 * CostAwareQueryCachingPolicy.DEFAULT_MIN_FREQUENCY, policy.minFrequencyToCache(cheap));
+        assertEquals(FrequencySketch.MAX_FREQUENCY, policy.minFrequencyToCache(free));
+
+        policy.onUse(expensive);
+        assertFalse(policy.shouldCache(expensive));
+        policy.onUse(expensive);
+        assertTrue(policy.shouldCache(expensive));
+        for (int i = 1; i < 2 * CostAwareQueryCachingPolicy.DEFAULT_MIN_FREQUENCY; i++) {
+            policy.onUse(cheap);
+            assertFalse(policy.shouldCache(cheap));
+        }
+        policy.onUse(cheap);
+        assertTrue(policy.shouldCache(cheap));
+    }
+}
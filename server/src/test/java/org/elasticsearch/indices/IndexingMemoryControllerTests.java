@@ -32,6 +32,7 @@ import org.elasticsearch.index.engine.InternalEngine;
 import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.threadpool.Scheduler.Cancellable;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -67,6 +69,11 @@ public class IndexingMemoryControllerTests extends IndexShardTestCase {
         // Shards that are currently throttled
         final Set<IndexShard> throttled = new HashSet<>();
 
+        // The share of the indexing buffer that each shard is targeted to use
+        final Map<IndexShard, Long> targets = new HashMap<>();
+
+        long timeNanos;
+
         MockController(Settings settings) {
             super(Settings.builder()
                             .put("indices.memory.interval", "200h") // disable it
@@ -110,6 +117,16 @@ public class IndexingMemoryControllerTests extends IndexShardTestCase {
             indexBufferRAMBytesUsed.put(shard, 0L);
         }
 
+        @Override
+        protected void setIndexBufferTargetBytes(IndexShard shard, long targetBytes) {
+            targets.put(shard, targetBytes);
+        }
+
+        @Override
+        protected long relativeTimeInNanos() {
+            return timeNanos;
+        }
+
         @Override
         public void activateThrottling(IndexShard shard) {
             assertTrue(throttled.add(shard));
@@ -342,6 +359,88 @@ public class IndexingMemoryControllerTests extends IndexShardTestCase {
         closeShards(shard0, shard1);
     }
 
+    private IndexShard newStartedShard(ShardId shardId) throws IOException {
+        IndexShard shard = newShard(shardId, true);
+        recoverShardFromStore(shard);
+        return shard;
+    }
+
+    public void testRateAwareAllocationSharesBufferByIndexingRate() throws IOException {
+        MockController controller = new MockController(Settings.builder()
+            .put("indices.memory.index_buffer_size", "10mb")
+            .put(IndexingMemoryController.RATE_AWARE_ALLOCATION_SETTING.getKey(), true).build());
+        IndexShard shard0 = newStartedShard(new ShardId("index0", "_na_", 0));
+        IndexShard shard1 = newStartedShard(new ShardId("index1", "_na_", 0));
+        controller.simulateIndexing(shard0);
+        controller.simulateIndexing(shard1);
+        // no shard indexed anything the controller knows about yet, so they get the same share
+        assertEquals(5 * 1024 * 1024, controller.targets.get(shard0).longValue());
+        assertEquals(5 * 1024 * 1024, controller.targets.get(shard1).longValue());
+
+        controller.recordIndexingBytes(shard0.shardId(), 3 * 1024 * 1024);
+        controller.recordIndexingBytes(shard1.shardId(), 1024 * 1024);
+        controller.timeNanos += TimeUnit.SECONDS.toNanos(1);
+        controller.forceCheck();
+        assertEquals((long) (0.75 * 10 * 1024 * 1024), controller.targets.get(shard0).longValue());
+        assertEquals((long) (0.25 * 10 * 1024 * 1024), controller.targets.get(shard1).longValue());
+        closeShards(shard0, shard1);
+    }
+
+    public void testRateAwareAllocationWritesColdShardsEarly() throws IOException {
+        MockController controller = new MockController(Settings.builder()
+            .put("indices.memory.index_buffer_size", "10mb")
+            .put(IndexingMemoryController.RATE_AWARE_ALLOCATION_SETTING.getKey(), true).build());
+        IndexShard hot = newStartedShard(new ShardId("index0", "_na_", 0));
+        IndexShard cold = newStartedShard(new ShardId("index1", "_na_", 0));
+        // the cold shard indexed a while ago and then stopped
+        for (int i = 0; i < 4; i++) {
+            controller.simulateIndexing(cold);
+        }
+        controller.assertBuffer(cold, 4);
+
+        for (int i = 0; i < 7; i++) {
+            controller.recordIndexingBytes(hot.shardId(), 1024 * 1024);
+            controller.timeNanos += TimeUnit.SECONDS.toNanos(1);
+            controller.simulateIndexing(hot);
+        }
+        // we never went over budget, but the cold shard wrote its buffer once more than half of the budget was used
+        controller.assertWriting(cold, 4);
+        controller.assertBuffer(cold, 0);
+        controller.assertWriting(hot, 0);
+        controller.assertBuffer(hot, 7);
+        assertEquals(10 * 1024 * 1024, controller.targets.get(hot).longValue());
+        assertEquals(0, controller.targets.get(cold).longValue());
+        closeShards(hot, cold);
+    }
+
+    public void testRateAwareAllocationWritesShardsOverTheirTargetFirst() throws IOException {
+        final boolean rateAware = randomBoolean();
+        MockController controller = new MockController(Settings.builder()
+            .put("indices.memory.index_buffer_size", "10mb")
+            .put(IndexingMemoryController.RATE_AWARE_ALLOCATION_SETTING.getKey(), rateAware).build());
+        IndexShard hot = newStartedShard(new ShardId("index0", "_na_", 0));
+        IndexShard cold = newStartedShard(new ShardId("index1", "_na_", 0));
+        controller.writingBytes.put(hot, 0L);
+        controller.writingBytes.put(cold, 0L);
+        controller.indexBufferRAMBytesUsed.put(hot, 7L * 1024 * 1024);
+        controller.indexBufferRAMBytesUsed.put(cold, 4L * 1024 * 1024);
+        controller.recordIndexingBytes(hot.shardId(), 7 * 1024 * 1024);
+        controller.timeNanos += TimeUnit.SECONDS.toNanos(7);
+        controller.forceCheck();
+
+        if (rateAware) {
+            // the cold shard uses way more than its share, writing it is enough to get back under budget
+            controller.assertWriting(cold, 4);
+            controller.assertBuffer(hot, 7);
+        } else {
+            // the largest shard is written first
+            controller.assertWriting(hot, 7);
+            controller.assertBuffer(cold, 4);
+            assertTrue(controller.targets.isEmpty());
+        }
+        closeShards(hot, cold);
+    }
+
     public void testTranslogRecoveryWorksWithIMC() throws IOException {
         IndexShard shard = newStartedShard(true);
         for (int i = 0; i < 100; i++) {
@@ -20,6 +20,7 @@
 package org.elasticsearch.indices;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LeafReaderContext;
@@ -45,8 +46,14 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.test.ESTestCase;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+
 public class IndicesQueryCacheTests extends ESTestCase {
 
     private static class DummyQuery extends Query {
@@ -90,6 +97,50 @@ public class IndicesQueryCacheTests extends ESTestCase {
 
     }
 
+    private static class ExpensiveQuery extends Query {
+
+        private final int id;
+
+        ExpensiveQuery(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameClassAs(obj) && id == ((ExpensiveQuery) obj).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * classHash() + id;
+        }
+
+        @Override
+        public String toString(String field) {
+            return "expensive";
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+            return new ConstantScoreWeight(this, boost) {
+                @Override
+                public Scorer scorer(LeafReaderContext context) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    return new ConstantScoreScorer(this, score(), scoreMode, DocIdSetIterator.all(context.reader().maxDoc()));
+                }
+
+                @Override
+                public boolean isCacheable(LeafReaderContext ctx) {
+                    return true;
+                }
+            };
+        }
+    }
+
     private static QueryCachingPolicy alwaysCachePolicy() {
         return new QueryCachingPolicy() {
             @Override
@@ -427,4 +478,94 @@ public class IndicesQueryCacheTests extends ESTestCase {
         cache.onClose(shard);
         cache.close();
     }
+
+    public void testStatsByQueryType() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        ShardId shard = new ShardId("index", "_na_", 0);
+        r = ElasticsearchDirectoryReader.wrap(r, shard);
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+
+        Settings settings = Settings.builder()
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_COUNT_SETTING.getKey(), 10)
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.getKey(), true)
+                .build();
+        IndicesQueryCache cache = new IndicesQueryCache(settings);
+        s.setQueryCache(cache);
+        assertTrue(cache.getStatsByQueryType().isEmpty());
+
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(1, s.count(new DummyQuery(i)));
+        }
+        assertEquals(1, s.count(new DummyQuery(19)));
+        assertEquals(0, s.count(LongPoint.newRangeQuery("field", 1, 10)));
+
+        Map<String, QueryCacheStats.TypeStats> stats = cache.getStatsByQueryType();
+        assertEquals(Set.of("DummyQuery", "PointRangeQuery"), stats.keySet());
+        QueryCacheStats.TypeStats dummyStats = stats.get("DummyQuery");
+        assertEquals(1L, dummyStats.getHitCount());
+        assertEquals(20L, dummyStats.getMissCount());
+        assertEquals(20L, dummyStats.getCacheCount());
+        assertEquals(11L, dummyStats.getEvictions());
+        QueryCacheStats.TypeStats rangeStats = stats.get("PointRangeQuery");
+        assertEquals(0L, rangeStats.getHitCount());
+        assertEquals(1L, rangeStats.getMissCount());
+        assertEquals(1L, rangeStats.getCacheCount());
+        assertEquals(0L, rangeStats.getEvictions());
+
+        IOUtils.close(r, dir);
+        cache.onClose(shard);
+        cache.close();
+    }
+
+    public void testCostAwareEviction() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        ShardId shard = new ShardId("index", "_na_", 0);
+        r = ElasticsearchDirectoryReader.wrap(r, shard);
+        IndexSearcher s = new IndexSearcher(r);
+        s.setQueryCachingPolicy(alwaysCachePolicy());
+
+        Settings settings = Settings.builder()
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_COUNT_SETTING.getKey(), 10)
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.getKey(), true)
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_POLICY_SETTING.getKey(), "cost_aware")
+                .build();
+        IndicesQueryCache cache = new IndicesQueryCache(settings);
+        s.setQueryCache(cache);
+        assertThat(cache.createCachingPolicy(), instanceOf(CostAwareQueryCachingPolicy.class));
+
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(1, s.count(new ExpensiveQuery(i)));
+        }
+        assertThat(cache.relativeCost(new ExpensiveQuery(0)), greaterThan(0d));
+        assertTrue(Double.isNaN(cache.relativeCost(new DummyQuery(0))));
+
+        // the least recently used filters are expensive, cheap filters are evicted instead
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(1, s.count(new DummyQuery(i)));
+        }
+        assertThat(cache.relativeCost(new DummyQuery(0)), lessThan(cache.relativeCost(new ExpensiveQuery(0))));
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(1, s.count(new ExpensiveQuery(i)));
+        }
+
+        Map<String, QueryCacheStats.TypeStats> stats = cache.getStatsByQueryType();
+        assertEquals(3L, stats.get("ExpensiveQuery").getHitCount());
+        assertEquals(0L, stats.get("ExpensiveQuery").getEvictions());
+        assertEquals(20L, stats.get("DummyQuery").getCacheCount());
+        assertThat(stats.get("DummyQuery").getEvictions(), greaterThanOrEqualTo(11L));
+        assertThat(cache.getStats(shard).getCacheSize(), lessThan(10L));
+
+        IOUtils.close(r, dir);
+        cache.onClose(shard);
+        cache.close();
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.MergePolicyConfig;
+import org.elasticsearch.index.cache.request.RequestCacheStats;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.metrics.Avg;
+import org.elasticsearch.search.aggregations.metrics.Max;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.List;
+
+import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class IndicesSegmentAggregationCacheIT extends ESIntegTestCase {
+
+    private void createIndex(String index, boolean segmentCache) {
+        assertAcked(client().admin().indices().prepareCreate(index)
+            .setMapping("value", "type=long", "tag", "type=keyword")
+            .setSettings(Settings.builder()
+                .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0)
+                // few enough segments to not be merged
+                .put(MergePolicyConfig.INDEX_MERGE_POLICY_SEGMENTS_PER_TIER_SETTING.getKey(), 20)
+                // only the explicit refreshes create segments
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                // keeps the shard level cache from answering the requests before they reach the segments
+                .put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                .put(IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING.getKey(), segmentCache)));
+    }
+
+    private void indexSegment(int from, int to) {
+        for (int i = from; i < to; i++) {
+            for (String index : new String[] { "cached", "control" }) {
+                client().prepareIndex(index).setId(Integer.toString(i)).setSource("value", i, "tag", "t" + (i % 3)).get();
+            }
+        }
+        refresh("cached", "control");
+    }
+
+    private static SearchRequestBuilder prepareAggregations(Client client, String index) {
+        return client.prepareSearch(index).setSize(0)
+            .setQuery(QueryBuilders.rangeQuery("value").gte(5))
+            .addAggregation(histogram("histo").field("value").interval(10).subAggregation(avg("avg").field("value")))
+            .addAggregation(max("max").field("value"));
+    }
+
+    private RequestCacheStats cacheStats(String index) {
+        return client().admin().indices().prepareStats(index).setRequestCache(true).get().getTotal().getRequestCache();
+    }
+
+    private static void assertSameAggregations(Aggregations expected, Aggregations actual) {
+        final List<? extends Histogram.Bucket> expectedBuckets = ((Histogram) expected.get("histo")).getBuckets();
+        final List<? extends Histogram.Bucket> actualBuckets = ((Histogram) actual.get("histo")).getBuckets();
+        assertThat(actualBuckets.size(), equalTo(expectedBuckets.size()));
+        for (int i = 0; i < expectedBuckets.size(); i++) {
+            assertThat(actualBuckets.get(i).getKey(), equalTo(expectedBuckets.get(i).getKey()));
+            assertThat(actualBuckets.get(i).getDocCount(), equalTo(expectedBuckets.get(i).getDocCount()));
+            final double expectedAvg = ((Avg) expectedBuckets.get(i).getAggregations().get("avg")).getValue();
+            assertThat(((Avg) actualBuckets.get(i).getAggregations().get("avg")).getValue(), closeTo(expectedAvg, 0.000001));
+        }
+        assertThat(((Max) actual.get("max")).getValue(), equalTo(((Max) expected.get("max")).getValue()));
+    }
+
+    public void testOnlyNewSegmentsAreCollected() {
+        // the same client keeps the randomized request options, and so the cache key, stable across requests
+        final Client client = client();
+        createIndex("cached", true);
+        createIndex("control", false);
+        final int numSegments = randomIntBetween(1, 4);
+        int numDocs = 0;
+        for (int i = 0; i < numSegments; i++) {
+            final int segmentDocs = randomIntBetween(1, 30);
+            indexSegment(numDocs, numDocs + segmentDocs);
+            numDocs += segmentDocs;
+        }
+
+        SearchResponse response = prepareAggregations(client, "cached").get();
+        assertSearchResponse(response);
+        assertSameAggregations(prepareAggregations(client, "control").get().getAggregations(), response.getAggregations());
+        RequestCacheStats stats = cacheStats("cached");
+        assertThat(stats.getSegmentAggregationsHitCount(), equalTo(0L));
+        assertThat(stats.getSegmentAggregationsMissCount(), equalTo((long) numSegments));
+        assertThat(stats.getSegmentAggregationsMemorySize().getBytes(), greaterThan(0L));
+
+        response = prepareAggregations(client, "cached").get();
+        assertSameAggregations(prepareAggregations(client, "control").get().getAggregations(), response.getAggregations());
+        stats = cacheStats("cached");
+        assertThat(stats.getSegmentAggregationsHitCount(), equalTo((long) numSegments));
+        assertThat(stats.getSegmentAggregationsMissCount(), equalTo((long) numSegments));
+
+        // a refresh adds a segment, the results of the previous ones are still cached
+        indexSegment(numDocs, numDocs + randomIntBetween(1, 30));
+        response = prepareAggregations(client, "cached").get();
+        assertSameAggregations(prepareAggregations(client, "control").get().getAggregations(), response.getAggregations());
+        stats = cacheStats("cached");
+        assertThat(stats.getSegmentAggregationsHitCount(), equalTo(2L * numSegments));
+        assertThat(stats.getSegmentAggregationsMissCount(), equalTo(numSegments + 1L));
+
+        // deletes change the live docs of a segment, so its results are computed again, as are those of the tombstone's segment
+        client().prepareDelete("cached", "0").get();
+        client().prepareDelete("control", "0").get();
+        refresh("cached", "control");
+        response = prepareAggregations(client, "cached").get();
+        assertSameAggregations(prepareAggregations(client, "control").get().getAggregations(), response.getAggregations());
+        stats = cacheStats("cached");
+        assertThat(stats.getSegmentAggregationsHitCount(), equalTo(3L * numSegments));
+        assertThat(stats.getSegmentAggregationsMissCount(), equalTo(numSegments + 3L));
+
+        client().admin().indices().prepareClearCache("cached").setRequestCache(true).get();
+        assertThat(cacheStats("cached").getSegmentAggregationsMemorySize().getBytes(), equalTo(0L));
+    }
+
+    public void testUnsupportedAggregationsAreNotCached() {
+        // the same client keeps the randomized request options, and so the cache key, stable across requests
+        final Client client = client();
+        createIndex("cached", true);
+        createIndex("control", false);
+        indexSegment(0, randomIntBetween(1, 30));
+
+        assertSearchResponse(client.prepareSearch("cached").setSize(0)
+            .addAggregation(histogram("histo").field("value").interval(10).subAggregation(terms("tags").field("tag"))).get());
+        assertSearchResponse(prepareAggregations(client, "cached").setRequestCache(false).get());
+        final RequestCacheStats stats = cacheStats("cached");
+        assertThat(stats.getSegmentAggregationsHitCount(), equalTo(0L));
+        assertThat(stats.getSegmentAggregationsMissCount(), equalTo(0L));
+        assertThat(stats.getSegmentAggregationsMemorySize().getBytes(), equalTo(0L));
+    }
+}
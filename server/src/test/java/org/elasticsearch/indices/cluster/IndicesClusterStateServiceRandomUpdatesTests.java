@@ -514,6 +514,7 @@ public class IndicesClusterStateServiceRandomUpdatesTests extends AbstractIndice
                 null,
                 null,
                 null,
+                null,
                 primaryReplicaSyncer,
                 RetentionLeaseSyncer.EMPTY,
                 client) {
@@ -0,0 +1,173 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.InternalEngine;
+import org.elasticsearch.index.engine.Segment;
+import org.elasticsearch.index.engine.SegmentReplicaEngine;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.InternalTestCluster;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+
+@ESIntegTestCase.ClusterScope(numDataNodes = 2)
+public class SegmentReplicationIT extends ESIntegTestCase {
+
+    private static final String INDEX_NAME = "test";
+
+    private void createSegmentReplicationIndex() {
+        assertAcked(prepareCreate(INDEX_NAME).setSettings(Settings.builder()
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 1)
+            .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+            .put(IndexSettings.INDEX_REPLICATION_TYPE_SETTING.getKey(), "segment")));
+        ensureGreen(INDEX_NAME);
+    }
+
+    private IndexShard getShard(boolean primary) {
+        final ClusterState state = clusterService().state();
+        final ShardRouting shardRouting = primary
+            ? state.routingTable().index(INDEX_NAME).shard(0).primaryShard()
+            : state.routingTable().index(INDEX_NAME).shard(0).replicaShards().get(0);
+        final String nodeName = state.nodes().get(shardRouting.currentNodeId()).getName();
+        return internalCluster().getInstance(IndicesService.class, nodeName).indexServiceSafe(shardRouting.index()).getShard(0);
+    }
+
+    private String replicaPreference() {
+        return "_only_nodes:" + clusterService().state().routingTable().index(INDEX_NAME).shard(0).replicaShards().get(0).currentNodeId();
+    }
+
+    private static Set<String> segmentNames(IndexShard indexShard) {
+        return indexShard.segments(false).stream().map(Segment::getName).collect(Collectors.toSet());
+    }
+
+    public void testReplicaCopiesSegmentsOfPrimary() throws Exception {
+        createSegmentReplicationIndex();
+        final IndexShard primary = getShard(true);
+        final IndexShard replica = getShard(false);
+        assertThat(IndexShardTestCase.getEngine(primary), instanceOf(InternalEngine.class));
+        assertThat(IndexShardTestCase.getEngine(replica), instanceOf(SegmentReplicaEngine.class));
+
+        final int numDocs = randomIntBetween(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            indexDoc(INDEX_NAME, Integer.toString(i), "field", i);
+        }
+        refresh(INDEX_NAME);
+        assertBusy(() -> {
+            assertHitCount(client().prepareSearch(INDEX_NAME).setPreference(replicaPreference()).setSize(0).get(), numDocs);
+            assertThat(segmentNames(replica), equalTo(segmentNames(primary)));
+        });
+
+        final int numDeletes = randomIntBetween(1, numDocs);
+        for (int i = 0; i < numDeletes; i++) {
+            client().prepareDelete(INDEX_NAME, Integer.toString(i)).get();
+        }
+        if (randomBoolean()) {
+            flush(INDEX_NAME);
+        }
+        final int moreDocs = randomIntBetween(1, 100);
+        for (int i = numDocs; i < numDocs + moreDocs; i++) {
+            indexDoc(INDEX_NAME, Integer.toString(i), "field", i);
+        }
+        refresh(INDEX_NAME);
+        final long expectedDocs = numDocs - numDeletes + moreDocs;
+        assertBusy(() -> {
+            assertHitCount(client().prepareSearch(INDEX_NAME).setPreference(replicaPreference()).setSize(0).get(), expectedDocs);
+            assertThat(segmentNames(replica), equalTo(segmentNames(primary)));
+        });
+        // the translog might be synced asynchronously
+        assertBusy(() -> {
+            assertThat(replica.seqNoStats().getMaxSeqNo(), equalTo(primary.seqNoStats().getMaxSeqNo()));
+            assertThat(replica.getLocalCheckpoint(), equalTo(primary.getLocalCheckpoint()));
+        });
+    }
+
+    public void testPromotedReplicaRestoresOperationsFromTranslog() throws Exception {
+        createSegmentReplicationIndex();
+        final int numDocs = randomIntBetween(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            indexDoc(INDEX_NAME, Integer.toString(i), "field", i);
+        }
+        refresh(INDEX_NAME);
+        assertBusy(() -> assertHitCount(client().prepareSearch(INDEX_NAME).setPreference(replicaPreference()).setSize(0).get(), numDocs));
+
+        // these operations are only in the translog of the replica since the primary did not refresh
+        final int unrefreshedDocs = randomIntBetween(1, 100);
+        for (int i = numDocs; i < numDocs + unrefreshedDocs; i++) {
+            indexDoc(INDEX_NAME, Integer.toString(i), "field", i);
+        }
+
+        final String primaryNode = clusterService().state().nodes()
+            .get(clusterService().state().routingTable().index(INDEX_NAME).shard(0).primaryShard().currentNodeId()).getName();
+        internalCluster().stopRandomNode(InternalTestCluster.nameFilter(primaryNode));
+        ensureYellowAndNoInitializingShards(INDEX_NAME);
+
+        final IndexShard promoted = getShard(true);
+        assertBusy(() -> assertThat(IndexShardTestCase.getEngine(promoted), instanceOf(InternalEngine.class)));
+        refresh(INDEX_NAME);
+        assertHitCount(client().prepareSearch(INDEX_NAME).setSize(0).get(), numDocs + unrefreshedDocs);
+
+        indexDoc(INDEX_NAME, "new", "field", numDocs);
+        refresh(INDEX_NAME);
+        assertHitCount(client().prepareSearch(INDEX_NAME).setSize(0).get(), numDocs + unrefreshedDocs + 1);
+    }
+
+    public void testRealtimeGetsAreExecutedOnPrimary() {
+        createSegmentReplicationIndex();
+        // the primary did not refresh, the replica does not see the document yet
+        indexDoc(INDEX_NAME, "0", "field", 0);
+        assertThat(client().prepareGet(INDEX_NAME, "0").setPreference(replicaPreference()).get().isExists(), equalTo(true));
+        assertThat(client().prepareGet(INDEX_NAME, "0").setPreference(replicaPreference()).setRealtime(false).get().isExists(),
+            equalTo(false));
+        final MultiGetResponse response = client().prepareMultiGet().add(INDEX_NAME, "0").setPreference(replicaPreference()).get();
+        assertThat(response.getResponses()[0].getResponse().isExists(), equalTo(true));
+    }
+
+    public void testWaitForRefreshCompletesOnceReplicaCopiedSegments() throws Exception {
+        createSegmentReplicationIndex();
+        final ActionFuture<IndexResponse> future = client().prepareIndex(INDEX_NAME).setId("0").setSource("field", 0)
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL).execute();
+        assertBusy(() -> assertThat(getShard(false).getLocalCheckpoint(), equalTo(0L)));
+        // the refresh of the replica alone does not make the operation visible
+        getShard(false).refresh("test");
+        assertThat(future.isDone(), equalTo(false));
+        refresh(INDEX_NAME);
+        assertThat(future.get().status(), equalTo(RestStatus.CREATED));
+        assertHitCount(client().prepareSearch(INDEX_NAME).setPreference(replicaPreference()).setSize(0).get(), 1);
+    }
+}
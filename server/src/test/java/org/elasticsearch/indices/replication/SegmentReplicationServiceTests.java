@@ -0,0 +1,147 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices.replication;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.EngineTestCase;
+import org.elasticsearch.index.engine.InternalEngine;
+import org.elasticsearch.index.engine.SegmentReplicaEngine;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetadata;
+import org.elasticsearch.index.translog.Translog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+
+public class SegmentReplicationServiceTests extends EngineTestCase {
+
+    private SegmentReplicaEngine createReplicaEngine(Store store) throws IOException {
+        final Path translogPath = createTempDir();
+        store.createEmpty(Version.CURRENT.luceneVersion);
+        final String translogUUID = Translog.createEmptyTranslog(translogPath, SequenceNumbers.NO_OPS_PERFORMED, shardId,
+            primaryTerm.get());
+        store.associateIndexWithNewTranslog(translogUUID);
+        return new SegmentReplicaEngine(config(defaultSettings, store, translogPath, newMergePolicy(), null));
+    }
+
+    private void indexDocs(Engine primary, String prefix, int numDocs) throws IOException {
+        for (int i = 0; i < numDocs; i++) {
+            final ParsedDocument doc = testParsedDocument(prefix + i, null, testDocument(), new BytesArray("{}"), null);
+            primary.index(indexForDoc(doc));
+        }
+    }
+
+    /**
+     * Copies the segments of the last refresh of the given primary to the replica like {@link SegmentReplicationService} does.
+     */
+    private SegmentReplicationService.CopyPlan copySegments(Engine primary, Store primaryStore, SegmentReplicaEngine replica,
+                                                            Store replicaStore, Map<String, String> renamedSegments) throws IOException {
+        primary.refresh("test");
+        try (Engine.SegmentInfosRef segmentInfosRef = primary.acquireLastRefreshedSegmentInfos()) {
+            final SegmentInfos primarySegmentInfos = segmentInfosRef.getSegmentInfos();
+            final SegmentReplicationService.CopyPlan plan = SegmentReplicationService.planCopy(
+                primaryStore.getSegmentsMetadata(primarySegmentInfos), replicaStore.getMetadata(null),
+                new HashSet<>(Arrays.asList(replicaStore.directory().listAll())), renamedSegments);
+            for (StoreFileMetadata md : plan.filesToCopy) {
+                final String localName = plan.localFileNames.get(md.name());
+                try (IndexInput input = primaryStore.directory().openInput(md.name(), IOContext.READONCE);
+                     IndexOutput output = replicaStore.directory().createOutput(localName, IOContext.DEFAULT)) {
+                    output.copyBytes(input, input.length());
+                }
+            }
+            final ByteBuffersDataOutput buffer = new ByteBuffersDataOutput();
+            try (ByteBuffersIndexOutput output = new ByteBuffersIndexOutput(buffer, "segment infos", "segment infos")) {
+                primarySegmentInfos.write(primaryStore.directory(), output);
+            }
+            replica.installSegments(SegmentReplicationService.readSegmentInfos(replicaStore.directory(),
+                new BytesArray(buffer.toArrayCopy()), primarySegmentInfos.getGeneration(), plan.renamedSegments));
+            return plan;
+        }
+    }
+
+    public void testCopyNeverOverwritesExistingFiles() throws IOException {
+        try (Store replicaStore = createStore(); SegmentReplicaEngine replica = createReplicaEngine(replicaStore)) {
+            final int numDocs = randomIntBetween(1, 50);
+            indexDocs(engine, "first-", numDocs);
+            final SegmentReplicationService.CopyPlan first = copySegments(engine, store, replica, replicaStore, Collections.emptyMap());
+            assertThat(first.renamedSegments.isEmpty(), equalTo(true));
+            assertVisibleCount(replica, numDocs, false);
+
+            // another primary writes segments with the same names, e.g. after the promotion of another copy
+            try (Store otherStore = createStore();
+                 InternalEngine otherPrimary = createEngine(otherStore, createTempDir());
+                 Engine.IndexCommitRef acquired = replica.acquireLastIndexCommit(false)) {
+                final IndexCommit commit = acquired.getIndexCommit();
+                final Store.MetadataSnapshot committed = replicaStore.getMetadata(commit);
+                final int otherDocs = randomIntBetween(1, 50);
+                indexDocs(otherPrimary, "other-", otherDocs);
+                final SegmentReplicationService.CopyPlan second =
+                    copySegments(otherPrimary, otherStore, replica, replicaStore, first.renamedSegments);
+                assertThat(second.renamedSegments, hasKey("_0"));
+                assertThat(second.renamedSegments.get("_0"), not(equalTo("_0")));
+                for (String localName : second.localFileNames.values()) {
+                    assertThat(localName, committed.get(localName), equalTo(null));
+                }
+                assertVisibleCount(replica, otherDocs, false);
+                // the files of the previous commit are untouched
+                assertThat(replicaStore.getMetadata(commit).recoveryDiff(committed).different, empty());
+                try (DirectoryReader reader = DirectoryReader.open(commit)) {
+                    assertThat(reader.numDocs(), equalTo(numDocs));
+                }
+
+                // the renamed segments are reused by the next copy
+                final int moreDocs = randomIntBetween(1, 50);
+                indexDocs(otherPrimary, "more-", moreDocs);
+                final SegmentReplicationService.CopyPlan third =
+                    copySegments(otherPrimary, otherStore, replica, replicaStore, second.renamedSegments);
+                for (Map.Entry<String, String> renamed : third.renamedSegments.entrySet()) {
+                    if (second.renamedSegments.containsKey(renamed.getKey())) {
+                        assertThat(renamed.getValue(), equalTo(second.renamedSegments.get(renamed.getKey())));
+                    }
+                }
+                for (StoreFileMetadata md : third.filesToCopy) {
+                    assertThat(second.renamedSegments, not(hasKey(IndexFileNames.parseSegmentName(md.name()))));
+                }
+                assertVisibleCount(replica, otherDocs + moreDocs, false);
+            }
+        }
+    }
+}
@@ -34,6 +34,7 @@ import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.yaml.YamlXContent;
+import org.elasticsearch.http.HttpBodyStream;
 import org.elasticsearch.http.HttpInfo;
 import org.elasticsearch.http.HttpRequest;
 import org.elasticsearch.http.HttpResponse;
@@ -604,6 +605,95 @@ public class RestControllerTests extends ESTestCase {
     }
 
 
+    public void testDispatchStreamedContentToHandlerWithoutIncrementalSupport() {
+        final boolean supportsIncrementalContent = randomBoolean();
+        restController.registerHandler(RestRequest.Method.POST, "/streamed", new RestHandler() {
+            @Override
+            public void handleRequest(RestRequest request, RestChannel channel, NodeClient client) {
+                assertNotNull(request.contentStream());
+                channel.sendResponse(new BytesRestResponse(RestStatus.OK, BytesRestResponse.TEXT_CONTENT_TYPE, BytesArray.EMPTY));
+            }
+
+            @Override
+            public boolean supportsIncrementalContent() {
+                return supportsIncrementalContent;
+            }
+        });
+        final HttpBodyStream contentStream = new HttpBodyStream() {
+            @Override
+            public void setHandler(ChunkHandler handler) {
+            }
+
+            @Override
+            public void next() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final RestRequest request = RestRequest.request(xContentRegistry(), new HttpRequest() {
+            @Override
+            public RestRequest.Method method() {
+                return RestRequest.Method.POST;
+            }
+
+            @Override
+            public String uri() {
+                return "/streamed";
+            }
+
+            @Override
+            public BytesReference content() {
+                return BytesArray.EMPTY;
+            }
+
+            @Override
+            public HttpBodyStream contentStream() {
+                return contentStream;
+            }
+
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return Collections.singletonMap("Content-Type", Collections.singletonList("application/json"));
+            }
+
+            @Override
+            public List<String> strictCookies() {
+                return null;
+            }
+
+            @Override
+            public HttpVersion protocolVersion() {
+                return randomFrom(HttpVersion.values());
+            }
+
+            @Override
+            public HttpRequest removeHeader(String header) {
+                return this;
+            }
+
+            @Override
+            public HttpResponse createResponse(RestStatus status, BytesReference content) {
+                return null;
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public HttpRequest releaseAndCopy() {
+                return this;
+            }
+        }, null);
+
+        final AssertingChannel channel = new AssertingChannel(request, true,
+            supportsIncrementalContent ? RestStatus.OK : RestStatus.BAD_REQUEST);
+        restController.dispatchRequest(request, channel, new ThreadContext(Settings.EMPTY));
+        assertTrue(channel.getSendResponseCalled());
+    }
+
     private static final class TestHttpServerTransport extends AbstractLifecycleComponent implements
         HttpServerTransport {
 
@@ -0,0 +1,283 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.document;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ReleasableBytesReference;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.http.HttpBodyStream;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class IncrementalBulkRequestHandlerTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+    private final List<BulkRequest> batches = new ArrayList<>();
+    private final List<ActionListener<BulkResponse>> batchListeners = new ArrayList<>();
+    private boolean respondImmediately = true;
+    private final AtomicReference<BulkResponse> response = new AtomicReference<>();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    @Before
+    public void setUpThreadPool() {
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @After
+    public void tearDownThreadPool() {
+        terminate(threadPool);
+    }
+
+    private IncrementalBulkRequestHandler newHandler(HttpBodyStream stream, CircuitBreaker breaker, int batchSizeInBytes) {
+        final NodeClient client = new NodeClient(Settings.EMPTY, threadPool) {
+            @Override
+            public void bulk(BulkRequest request, ActionListener<BulkResponse> listener) {
+                batches.add(request);
+                if (respondImmediately) {
+                    respond(request, listener);
+                } else {
+                    batchListeners.add(listener);
+                }
+            }
+        };
+        return new IncrementalBulkRequestHandler(stream, client, breaker, BulkRequest::new, "index", null, null, null, true,
+            XContentType.JSON, batchSizeInBytes, ActionListener.wrap(response::set, failure::set));
+    }
+
+    private static void respond(BulkRequest request, ActionListener<BulkResponse> listener) {
+        final BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+            final DocWriteRequest<?> item = request.requests().get(i);
+            items[i] = new BulkItemResponse(i, item.opType(),
+                new BulkItemResponse.Failure(item.index(), item.id(), new ElasticsearchException("test")));
+        }
+        listener.onResponse(new BulkResponse(items, 1));
+    }
+
+    private static CircuitBreaker inFlightRequestsBreaker(String limit) {
+        final Settings settings = Settings.builder()
+            .put(HierarchyCircuitBreakerService.USE_REAL_MEMORY_USAGE_SETTING.getKey(), false)
+            .put(HierarchyCircuitBreakerService.IN_FLIGHT_REQUESTS_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), limit)
+            .put(HierarchyCircuitBreakerService.IN_FLIGHT_REQUESTS_CIRCUIT_BREAKER_OVERHEAD_SETTING.getKey(), 1.0d)
+            .build();
+        return new HierarchyCircuitBreakerService(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS))
+            .getBreaker(CircuitBreaker.IN_FLIGHT_REQUESTS);
+    }
+
+    private static List<String> itemIds(int numItems) {
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < numItems; i++) {
+            ids.add(Integer.toString(i));
+        }
+        return ids;
+    }
+
+    private static String body(List<String> ids) {
+        final StringBuilder body = new StringBuilder();
+        for (String id : ids) {
+            if (randomBoolean()) {
+                body.append("{\"delete\":{\"_id\":\"").append(id).append("\"}}\n");
+            } else {
+                body.append("{\"index\":{\"_id\":\"").append(id).append("\"}}\n{\"field\":\"").append(randomAlphaOfLength(10))
+                    .append("\"}\n");
+            }
+        }
+        return body.toString();
+    }
+
+    private static List<String> sentIds(List<BulkRequest> batches) {
+        final List<String> ids = new ArrayList<>();
+        for (BulkRequest batch : batches) {
+            for (DocWriteRequest<?> request : batch.requests()) {
+                ids.add(request.id());
+            }
+        }
+        return ids;
+    }
+
+    public void testItemsAreSentInBatches() {
+        final List<String> ids = itemIds(randomIntBetween(1, 200));
+        final FakeBodyStream stream = new FakeBodyStream(body(ids), randomIntBetween(5, 100), true);
+        final CircuitBreaker breaker = inFlightRequestsBreaker("100mb");
+        newHandler(stream, breaker, randomIntBetween(1, 1000)).start();
+
+        assertNull(failure.get());
+        assertThat(sentIds(batches), equalTo(ids));
+        assertThat(response.get().getItems().length, equalTo(ids.size()));
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat(response.get().getItems()[i].getItemId(), equalTo(i));
+            assertThat(response.get().getItems()[i].getId(), equalTo(ids.get(i)));
+        }
+        assertFalse(stream.closed);
+        assertThat(stream.released.get(), equalTo(stream.chunks.size()));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testStopsReadingWhileBreakerIsTripped() {
+        final List<String> ids = itemIds(randomIntBetween(50, 200));
+        final int chunkSize = randomIntBetween(10, 100);
+        final FakeBodyStream stream = new FakeBodyStream(body(ids), chunkSize, false);
+        final long limit = randomLongBetween(200, 1000);
+        final CircuitBreaker breaker = inFlightRequestsBreaker(limit + "b");
+        respondImmediately = false;
+        // batches larger than the breaker limit so that the breaker, rather than the batch size, triggers them
+        newHandler(stream, breaker, Math.toIntExact(randomLongBetween(2 * limit, 10 * limit))).start();
+
+        int pausedReads = 0;
+        while (response.get() == null && failure.get() == null) {
+            if (stream.requested) {
+                if (batchListeners.isEmpty() == false) {
+                    // there is a batch in flight, so only read if the breaker is not tripped
+                    assertThat(breaker.getUsed(), lessThanOrEqualTo(limit));
+                }
+                stream.deliverNext();
+            } else {
+                assertThat("not reading and no batch in flight", batchListeners.size(), equalTo(1));
+                if (breaker.getUsed() > limit) {
+                    pausedReads++;
+                }
+                respond(batches.get(batches.size() - 1), batchListeners.remove(0));
+            }
+        }
+
+        assertNull(failure.get());
+        assertThat(pausedReads, greaterThan(0));
+        assertThat(sentIds(batches), equalTo(ids));
+        assertThat(response.get().getItems().length, equalTo(ids.size()));
+        assertThat(stream.released.get(), equalTo(stream.chunks.size()));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testMalformedItemFailsRequest() {
+        final List<String> ids = itemIds(randomIntBetween(1, 100));
+        final int malformedItem = randomIntBetween(0, ids.size() - 1);
+        final String valid = body(ids.subList(0, malformedItem));
+        final String body = valid + "{\"index\":{\"_id\":\"x\",\"unknown\":1}}\n{}\n" + body(ids.subList(malformedItem, ids.size()));
+        final FakeBodyStream stream = new FakeBodyStream(body, randomIntBetween(5, 100), true);
+        final CircuitBreaker breaker = inFlightRequestsBreaker("100mb");
+        newHandler(stream, breaker, randomIntBetween(1, 1000)).start();
+
+        assertNull(response.get());
+        assertThat(failure.get(), instanceOf(IllegalArgumentException.class));
+        final int line = (int) valid.chars().filter(c -> c == '\n').count() + 1;
+        assertThat(failure.get().getMessage(), containsString("line [" + line + "] contains an unknown parameter [unknown]"));
+        // the items before the malformed one were applied
+        assertThat(sentIds(batches), equalTo(ids.subList(0, sentIds(batches).size())));
+        assertThat(stream.released.get(), equalTo(stream.delivered));
+        assertThat(stream.closed, equalTo(stream.delivered < stream.chunks.size()));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testTrippedBreakerWithoutBatchInFlightFailsRequest() {
+        final FakeBodyStream stream = new FakeBodyStream("{\"index\":{\"_id\":\"1\"}}\n{\"field\":\"value\"}\n", 10, true);
+        final CircuitBreaker breaker = inFlightRequestsBreaker("5b");
+        newHandler(stream, breaker, 1000).start();
+
+        assertNull(response.get());
+        assertThat(failure.get(), instanceOf(CircuitBreakingException.class));
+        assertThat(batches.size(), equalTo(0));
+        assertTrue(stream.closed);
+        assertThat(stream.released.get(), equalTo(stream.delivered));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testEmptyBodyFailsRequest() {
+        final FakeBodyStream stream = new FakeBodyStream("", 1, true);
+        newHandler(stream, inFlightRequestsBreaker("100mb"), 1000).start();
+        assertNull(response.get());
+        assertThat(failure.get().getMessage(), equalTo("request body is required"));
+        assertThat(batches.size(), equalTo(0));
+    }
+
+    private static class FakeBodyStream implements HttpBodyStream {
+        private final List<BytesReference> chunks = new ArrayList<>();
+        private final boolean deliverOnRequest;
+        private final AtomicInteger released = new AtomicInteger();
+        private ChunkHandler handler;
+        private boolean requested;
+        private int delivered;
+        private boolean closed;
+
+        FakeBodyStream(String body, int chunkSize, boolean deliverOnRequest) {
+            final BytesArray bytes = new BytesArray(body);
+            for (int from = 0; from < bytes.length(); from += chunkSize) {
+                chunks.add(bytes.slice(from, Math.min(chunkSize, bytes.length() - from)));
+            }
+            if (chunks.isEmpty()) {
+                chunks.add(BytesArray.EMPTY);
+            }
+            this.deliverOnRequest = deliverOnRequest;
+        }
+
+        @Override
+        public void setHandler(ChunkHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void next() {
+            assertFalse(requested);
+            assertFalse(closed);
+            requested = true;
+            if (deliverOnRequest) {
+                deliverNext();
+            }
+        }
+
+        void deliverNext() {
+            assertTrue(requested);
+            requested = false;
+            final BytesReference chunk = chunks.get(delivered++);
+            handler.onNext(new ReleasableBytesReference(chunk, released::incrementAndGet), delivered == chunks.size());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
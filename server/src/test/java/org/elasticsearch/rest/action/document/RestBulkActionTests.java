@@ -20,21 +20,33 @@
 package org.elasticsearch.rest.action.document;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestParser;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.rest.FakeRestRequest;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.hamcrest.CustomMatcher;
 import org.mockito.Mockito;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -73,4 +85,39 @@ public class RestBulkActionTests extends ESTestCase {
                 }
             }), any());
     }
+
+    public void testLargeBulkIsParsedOnWritePool() throws Exception {
+        final ThreadPool threadPool = new TestThreadPool(getTestName());
+        try {
+            final AtomicReference<String> threadName = new AtomicReference<>();
+            final AtomicInteger numberOfActions = new AtomicInteger();
+            final CountDownLatch executed = new CountDownLatch(1);
+            final NodeClient client = new NodeClient(Settings.EMPTY, threadPool) {
+                @Override
+                public void bulk(BulkRequest request, ActionListener<BulkResponse> listener) {
+                    threadName.set(Thread.currentThread().getName());
+                    numberOfActions.set(request.numberOfActions());
+                    executed.countDown();
+                }
+            };
+
+            final StringBuilder content = new StringBuilder();
+            int numItems = 0;
+            while (content.length() < 2 * BulkRequestParser.PARALLEL_PARSE_CHUNK_SIZE_IN_BYTES) {
+                content.append("{\"index\":{\"_id\":\"").append(numItems++).append("\"}}\n{\"field1\":\"val1\"}\n");
+            }
+            new RestBulkAction(settings(Version.CURRENT).build())
+                .handleRequest(
+                    new FakeRestRequest.Builder(xContentRegistry()).withPath("my_index/_bulk")
+                        .withContent(new BytesArray(content.toString()), XContentType.JSON)
+                        .withMethod(RestRequest.Method.POST).build(),
+                    mock(RestChannel.class), client
+                );
+            assertTrue(executed.await(10, TimeUnit.SECONDS));
+            assertThat(numberOfActions.get(), equalTo(numItems));
+            assertThat(threadName.get(), containsString("[" + ThreadPool.Names.WRITE + "]"));
+        } finally {
+            terminate(threadPool);
+        }
+    }
 }
@@ -529,6 +529,74 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
             ex.getMessage());
     }
 
+    public void testMaxOpenReaderContexts() throws Exception {
+        createIndex("index");
+        client().prepareIndex("index").setId("1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        final SearchService service = getInstanceFromNode(SearchService.class);
+        final ShardId shardId = new ShardId(resolveIndex("index"), 0);
+        final int maxReaderContexts = randomIntBetween(1, 10);
+        assertAcked(client().admin().cluster().prepareUpdateSettings()
+            .setTransientSettings(Settings.builder().put(SearchService.MAX_OPEN_READER_CONTEXT.getKey(), maxReaderContexts)));
+        try {
+            final List<SearchContextId> readerIds = new ArrayList<>();
+            for (int i = 0; i < maxReaderContexts; i++) {
+                final PlainActionFuture<SearchContextId> future = new PlainActionFuture<>();
+                service.openReaderContext(shardId, AliasFilter.EMPTY, TimeValue.timeValueMinutes(1), future);
+                readerIds.add(future.get());
+            }
+            assertThat(service.getActiveReaderContexts(), equalTo(maxReaderContexts));
+
+            final PlainActionFuture<SearchContextId> rejected = new PlainActionFuture<>();
+            service.openReaderContext(shardId, AliasFilter.EMPTY, TimeValue.timeValueMinutes(1), rejected);
+            ElasticsearchException e = expectThrows(ElasticsearchException.class, rejected::actionGet);
+            assertEquals("Trying to create too many point in time reader contexts. Must be less than or equal to: [" +
+                maxReaderContexts + "]. This limit can be set by changing the [search.max_open_reader_context] setting.",
+                e.getMessage());
+
+            final SearchContextId freed = randomFrom(readerIds);
+            assertTrue(service.freeReaderContext(freed));
+            assertFalse(service.freeReaderContext(freed));
+            final PlainActionFuture<SearchContextId> reopened = new PlainActionFuture<>();
+            service.openReaderContext(shardId, AliasFilter.EMPTY, TimeValue.timeValueMinutes(1), reopened);
+            assertNotNull(reopened.get());
+            assertThat(service.getActiveReaderContexts(), equalTo(maxReaderContexts));
+
+            final PlainActionFuture<SearchContextId> tooLong = new PlainActionFuture<>();
+            service.openReaderContext(shardId, AliasFilter.EMPTY, TimeValue.timeValueDays(2), tooLong);
+            IllegalArgumentException iae = expectThrows(IllegalArgumentException.class, tooLong::actionGet);
+            assertThat(iae.getMessage(), startsWith("Keep alive for point in time"));
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings()
+                .setTransientSettings(Settings.builder().putNull(SearchService.MAX_OPEN_READER_CONTEXT.getKey())));
+        }
+    }
+
+    public void testReaderWrapperAppliesToEachPointInTimeSearch() throws Exception {
+        createIndex("index");
+        client().prepareIndex("index").setId("1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        final SearchService service = getInstanceFromNode(SearchService.class);
+        final IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("index")).getShard(0);
+        final PlainActionFuture<SearchContextId> future = new PlainActionFuture<>();
+        service.openReaderContext(indexShard.shardId(), AliasFilter.EMPTY, TimeValue.timeValueMinutes(1), future);
+        final SearchContextId readerId = future.get();
+        try {
+            // the reader of the point in time is wrapped in the context of each search, not in the context that opened it
+            assertEquals(0, numWrapInvocations.get());
+            final int numSearches = randomIntBetween(1, 3);
+            for (int i = 0; i < numSearches; i++) {
+                final ShardSearchRequest request = new ShardSearchRequest(OriginalIndices.NONE,
+                    new SearchRequest().allowPartialSearchResults(true), indexShard.shardId(), 1, AliasFilter.EMPTY, 1.0f, -1, null, null);
+                request.readerId(readerId, null);
+                try (SearchContext context = service.createSearchContext(request, SearchService.NO_TIMEOUT)) {
+                    assertEquals(1, context.searcher().getIndexReader().numDocs());
+                }
+                assertEquals(i + 1, numWrapInvocations.get());
+            }
+        } finally {
+            assertTrue(service.freeReaderContext(readerId));
+        }
+    }
+
     public void testOpenScrollContextsConcurrently() throws Exception {
         createIndex("index");
         final IndicesService indicesService = getInstanceFromNode(IndicesService.class);
@@ -29,12 +29,14 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.query.TermsQueryBuilder;
 import org.elasticsearch.index.query.WrapperQueryBuilder;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.search.SearchModule;
 import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
 import org.elasticsearch.search.aggregations.pipeline.BucketScriptPipelineAggregationBuilder;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
@@ -90,6 +92,20 @@ public class AggregatorFactoriesTests extends ESTestCase {
             () -> pipelineAggregatorFactories.add(PipelineAggregatorBuilders.avgBucket("bar", "path2")));
     }
 
+    public void testSupportsSegmentLevelResults() {
+        AggregatorFactories.Builder builder = new AggregatorFactories.Builder()
+            .addAggregator(AggregationBuilders.dateHistogram("histo").field("date").calendarInterval(DateHistogramInterval.DAY)
+                .subAggregation(AggregationBuilders.avg("avg").field("value")))
+            .addAggregator(AggregationBuilders.filter("filter", QueryBuilders.matchAllQuery())
+                .subAggregation(AggregationBuilders.cardinality("cardinality").field("tag")));
+        assertTrue(builder.supportsSegmentLevelResults());
+
+        builder.addAggregator(AggregationBuilders.range("range").field("value").addRange(0, 10)
+            .subAggregation(AggregationBuilders.terms("terms").field("tag")));
+        assertFalse(builder.supportsSegmentLevelResults());
+        assertFalse(new AggregatorFactories.Builder().addAggregator(AggregationBuilders.global("global")).supportsSegmentLevelResults());
+    }
+
     public void testTwoTypes() throws Exception {
         XContentBuilder source = JsonXContent.contentBuilder()
                 .startObject()
@@ -44,6 +44,7 @@ import org.junit.BeforeClass;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static java.util.Collections.emptyList;
@@ -74,6 +75,7 @@ public class CollapseBuilderTests extends AbstractSerializingTestCase<CollapseBu
     public static CollapseBuilder randomCollapseBuilder(boolean multiInnerHits) {
         CollapseBuilder builder = new CollapseBuilder(randomAlphaOfLength(10));
         builder.setMaxConcurrentGroupRequests(randomIntBetween(1, 48));
+        builder.setExpandOnShards(randomBoolean());
         int numInnerHits = randomIntBetween(0, multiInnerHits ? 5 : 1);
         if (numInnerHits == 1) {
             InnerHitBuilder innerHit = InnerHitBuilderTests.randomInnerHits();
@@ -103,12 +105,17 @@ public class CollapseBuilderTests extends AbstractSerializingTestCase<CollapseBu
     @Override
     protected CollapseBuilder mutateInstance(CollapseBuilder instance) throws IOException {
         CollapseBuilder newBuilder;
-        switch (between(0, 2)) {
+        switch (between(0, 3)) {
         case 0:
             newBuilder = new CollapseBuilder(instance.getField() + randomAlphaOfLength(10));
             newBuilder.setMaxConcurrentGroupRequests(instance.getMaxConcurrentGroupRequests());
+            newBuilder.setExpandOnShards(instance.isExpandOnShards());
             newBuilder.setInnerHits(instance.getInnerHits());
             break;
+        case 3:
+            newBuilder = copyInstance(instance);
+            newBuilder.setExpandOnShards(instance.isExpandOnShards() == false);
+            break;
         case 1:
             newBuilder = copyInstance(instance);
             newBuilder.setMaxConcurrentGroupRequests(instance.getMaxConcurrentGroupRequests() + between(1, 20));
@@ -170,6 +177,16 @@ public class CollapseBuilderTests extends AbstractSerializingTestCase<CollapseBu
                 assertEquals(exc.getMessage(),
                     "cannot expand `inner_hits` for collapse field `field`, " +
                         "only indexed field can retrieve `inner_hits`");
+
+                fieldType.setIndexOptions(IndexOptions.DOCS);
+                builder.setInnerHits(new InnerHitBuilder().setInnerCollapse(new CollapseBuilder("other_field")));
+                collapseContext = builder.build(shardContext);
+                assertEquals(collapseContext.getFieldType(), fieldType);
+                builder.setExpandOnShards(true);
+                exc = expectThrows(IllegalArgumentException.class, () -> builder.build(shardContext));
+                assertEquals(exc.getMessage(), "cannot collapse `inner_hits` of collapse field `field` when [expand_on_shards] is set");
+                builder.setExpandOnShards(false);
+                builder.setInnerHits(Collections.emptyList());
             }
         }
     }
@@ -0,0 +1,177 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.routing.OperationRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class ExpandOnShardsIT extends ESIntegTestCase {
+
+    public void testExpandOnShardsMatchesExpandOnCoordinator() throws Exception {
+        final int numShards = between(1, 5);
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder()
+                .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, numShards)
+                .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0))
+            .setMapping("group", "type=keyword", "value", "type=long", "tag", "type=keyword"));
+        ensureGreen("test");
+
+        final int numGroups = randomIntBetween(1, 20);
+        final int numDocs = randomIntBetween(1, 200);
+        List<IndexRequestBuilder> requests = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            final String tag = randomFrom("a", "b");
+            if (rarely()) {
+                // documents without a collapse value are collapsed in their own group
+                requests.add(client().prepareIndex("test").setId(Integer.toString(i)).setSource("value", i, "tag", tag));
+            } else {
+                // the documents of a group are spread over all shards
+                final String group = "group_" + randomIntBetween(0, numGroups - 1);
+                requests.add(client().prepareIndex("test").setId(Integer.toString(i)).setSource("group", group, "value", i, "tag", tag));
+            }
+        }
+        indexRandom(true, requests);
+
+        final int from = randomIntBetween(0, 2);
+        final QueryBuilder query = randomBoolean() ? null : QueryBuilders.rangeQuery("value").gte(randomIntBetween(0, numDocs));
+        final QueryBuilder postFilter = randomBoolean() ? null : QueryBuilders.termQuery("tag", "a");
+        final List<InnerHitBuilder> innerHits = Arrays.asList(
+            new InnerHitBuilder("lowest").setSize(randomIntBetween(0, 5)).addSort(new FieldSortBuilder("value").order(SortOrder.ASC)),
+            new InnerHitBuilder("highest").setSize(randomIntBetween(1, 5)).setFrom(randomIntBetween(0, 2))
+                .addSort(new FieldSortBuilder("value").order(SortOrder.DESC)));
+        // pin the client so that both searches use the same request options
+        final Client client = client();
+        SearchResponse onCoordinator = client.prepareSearch("test")
+            .setQuery(query)
+            .setPostFilter(postFilter)
+            .addSort("value", SortOrder.DESC)
+            .setFrom(from)
+            .setSize(numGroups + 1)
+            .setCollapse(new CollapseBuilder("group").setInnerHits(innerHits))
+            .get();
+        assertNoFailures(onCoordinator);
+        SearchResponse onShards = client.prepareSearch("test")
+            .setQuery(query)
+            .setPostFilter(postFilter)
+            .addSort("value", SortOrder.DESC)
+            .setFrom(from)
+            .setSize(numGroups + 1)
+            .setCollapse(new CollapseBuilder("group").setInnerHits(innerHits).setExpandOnShards(true))
+            .get();
+        assertNoFailures(onShards);
+
+        assertThat(onShards.getHits().getHits().length, equalTo(onCoordinator.getHits().getHits().length));
+        for (int i = 0; i < onCoordinator.getHits().getHits().length; i++) {
+            SearchHit expected = onCoordinator.getHits().getAt(i);
+            SearchHit actual = onShards.getHits().getAt(i);
+            assertThat(actual.getId(), equalTo(expected.getId()));
+            assertThat(actual.getInnerHits(), notNullValue());
+            assertThat(actual.getInnerHits().keySet(), equalTo(expected.getInnerHits().keySet()));
+            for (InnerHitBuilder innerHit : innerHits) {
+                SearchHits expectedInnerHits = expected.getInnerHits().get(innerHit.getName());
+                SearchHits actualInnerHits = actual.getInnerHits().get(innerHit.getName());
+                assertThat(actualInnerHits.getTotalHits(), equalTo(expectedInnerHits.getTotalHits()));
+                assertThat(actualInnerHits.getHits().length, equalTo(expectedInnerHits.getHits().length));
+                for (int j = 0; j < expectedInnerHits.getHits().length; j++) {
+                    assertThat(actualInnerHits.getAt(j).getId(), equalTo(expectedInnerHits.getAt(j).getId()));
+                    assertThat(actualInnerHits.getAt(j).getSortValues(), equalTo(expectedInnerHits.getAt(j).getSortValues()));
+                }
+            }
+        }
+    }
+
+    public void testShardsWithoutReturnedHitsExpandGroups() throws Exception {
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder()
+                .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 2)
+                .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0))
+            .setMapping("group", "type=keyword", "value", "type=long"));
+        ensureGreen("test");
+
+        // the collapsed hit of the group is on one shard, the other shard only holds a document of the group that is not returned
+        final OperationRouting operationRouting = clusterService().operationRouting();
+        final ClusterState state = clusterService().state();
+        final ShardId topShard = operationRouting.shardId(state, "test", "top", null);
+        String otherId = null;
+        for (int i = 0; otherId == null; i++) {
+            if (operationRouting.shardId(state, "test", Integer.toString(i), null).equals(topShard) == false) {
+                otherId = Integer.toString(i);
+            }
+        }
+        indexRandom(true,
+            client().prepareIndex("test").setId("top").setSource("group", "a", "value", 10),
+            client().prepareIndex("test").setId(otherId).setSource("group", "a", "value", 1));
+
+        SearchResponse response = client().prepareSearch("test")
+            .addSort("value", SortOrder.DESC)
+            .setCollapse(new CollapseBuilder("group").setExpandOnShards(true)
+                .setInnerHits(new InnerHitBuilder("inner").addSort(new FieldSortBuilder("value").order(SortOrder.ASC))))
+            .get();
+        assertNoFailures(response);
+        assertThat(response.getHits().getHits().length, equalTo(1));
+        assertThat(response.getHits().getAt(0).getId(), equalTo("top"));
+        SearchHits innerHits = response.getHits().getAt(0).getInnerHits().get("inner");
+        assertThat(innerHits.getTotalHits().value, equalTo(2L));
+        assertThat(innerHits.getHits().length, equalTo(2));
+        assertThat(innerHits.getAt(0).getId(), equalTo(otherId));
+        assertThat(innerHits.getAt(0).getShard().getShardId(), not(equalTo(topShard)));
+        assertThat(innerHits.getAt(1).getId(), equalTo("top"));
+        assertThat(innerHits.getAt(1).getShard().getShardId(), equalTo(topShard));
+    }
+
+    public void testExpandOnShardsRejectsInnerCollapse() {
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder().put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1))
+            .setMapping("group", "type=keyword", "other", "type=keyword"));
+        client().prepareIndex("test").setId("1").setSource("group", "a", "other", "b").get();
+        refresh("test");
+
+        Exception e = expectThrows(Exception.class, () -> client().prepareSearch("test")
+            .setCollapse(new CollapseBuilder("group").setExpandOnShards(true)
+                .setInnerHits(new InnerHitBuilder("inner").setInnerCollapse(new CollapseBuilder("other"))))
+            .get());
+        assertThat(e.getCause().getMessage(),
+            equalTo("cannot collapse `inner_hits` of collapse field `group` when [expand_on_shards] is set"));
+    }
+}
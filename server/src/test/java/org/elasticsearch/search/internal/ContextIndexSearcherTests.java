@@ -38,6 +38,8 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
@@ -48,6 +50,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.Weight;
@@ -72,16 +75,25 @@ import org.elasticsearch.test.IndexSettingsModule;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.elasticsearch.search.internal.ContextIndexSearcher.intersectScorerAndBitSet;
 import static org.elasticsearch.search.internal.ExitableDirectoryReader.ExitableLeafReader;
 import static org.elasticsearch.search.internal.ExitableDirectoryReader.ExitablePointValues;
 import static org.elasticsearch.search.internal.ExitableDirectoryReader.ExitableTerms;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class ContextIndexSearcherTests extends ESTestCase {
     public void testIntersectScorerAndRoleBits() throws Exception {
@@ -169,6 +181,177 @@ public class ContextIndexSearcherTests extends ESTestCase {
         directory.close();
     }
 
+    public void testComputeSlices() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(null).setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(1, 20);
+        for (int i = 0; i < numSegments; i++) {
+            final int numDocs = randomIntBetween(1, 20);
+            for (int j = 0; j < numDocs; j++) {
+                w.addDocument(new Document());
+            }
+            w.commit();
+        }
+        DirectoryReader reader = DirectoryReader.open(w);
+        final int maxDocsPerSlice = randomIntBetween(1, 50);
+        final int maxSegmentsPerSlice = randomIntBetween(1, 5);
+        IndexSearcher.LeafSlice[] slices = ContextIndexSearcher.computeSlices(reader.leaves(), maxDocsPerSlice, maxSegmentsPerSlice);
+        Set<LeafReaderContext> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (IndexSearcher.LeafSlice slice : slices) {
+            assertThat(slice.leaves.length, greaterThan(0));
+            assertThat(slice.leaves.length, lessThanOrEqualTo(maxSegmentsPerSlice));
+            int docs = 0;
+            for (LeafReaderContext ctx : slice.leaves) {
+                assertTrue(seen.add(ctx));
+                docs += ctx.reader().maxDoc();
+            }
+            if (slice.leaves.length > 1) {
+                // only the last segment of a slice can make it exceed the max number of documents
+                assertThat(docs - slice.leaves[slice.leaves.length - 1].reader().maxDoc(), lessThanOrEqualTo(maxDocsPerSlice));
+            }
+        }
+        assertEquals(reader.leaves().size(), seen.size());
+        IOUtils.close(reader, w, dir);
+    }
+
+    public void testConcurrentSearchWaitsForAllSlices() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(null).setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(2, 10);
+        for (int i = 0; i < numSegments; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("foo", "bar", Field.Store.NO));
+            w.addDocument(doc);
+            w.commit();
+        }
+        DirectoryReader reader = DirectoryReader.open(w);
+        ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        try {
+            ContextIndexSearcher searcher = new ContextIndexSearcher(reader, IndexSearcher.getDefaultSimilarity(),
+                IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true, executor) {
+                @Override
+                protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                    // one slice per segment
+                    return computeSlices(leaves, 1, 1);
+                }
+            };
+            assertTrue(searcher.hasConcurrentSlices());
+            assertEquals(numSegments, searcher.count(new TermQuery(new Term("foo", "bar"))));
+
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger collected = new AtomicInteger();
+            IllegalStateException exc = expectThrows(IllegalStateException.class,
+                () -> searcher.search(new MatchAllDocsQuery(), new CollectorManager<Collector, Void>() {
+                    @Override
+                    public Collector newCollector() {
+                        return new SimpleCollector() {
+                            @Override
+                            public void collect(int doc) {
+                                running.incrementAndGet();
+                                try {
+                                    collected.incrementAndGet();
+                                    if (doc == 0) {
+                                        throw new IllegalStateException("boom");
+                                    }
+                                } finally {
+                                    running.decrementAndGet();
+                                }
+                            }
+
+                            @Override
+                            public ScoreMode scoreMode() {
+                                return ScoreMode.COMPLETE_NO_SCORES;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public Void reduce(Collection<Collector> collectors) {
+                        throw new AssertionError("reduce should not be called on failures");
+                    }
+                }));
+            assertThat(exc.getMessage(), equalTo("boom"));
+            // all slices completed before the failure was rethrown
+            assertEquals(0, running.get());
+            assertEquals(numSegments, collected.get());
+        } finally {
+            terminate(executor);
+            IOUtils.close(reader, w, dir);
+        }
+    }
+
+    public void testSlicesAreFinishedOnTheirThread() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(null).setMergePolicy(NoMergePolicy.INSTANCE));
+        final int numSegments = randomIntBetween(2, 10);
+        for (int i = 0; i < numSegments; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("foo", "bar", Field.Store.NO));
+            w.addDocument(doc);
+            w.commit();
+        }
+        DirectoryReader reader = DirectoryReader.open(w);
+        ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        try {
+            ContextIndexSearcher searcher = new ContextIndexSearcher(reader, IndexSearcher.getDefaultSimilarity(),
+                IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true, executor) {
+                @Override
+                protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                    // one slice per segment
+                    return computeSlices(leaves, 1, 1);
+                }
+            };
+            final boolean fail = randomBoolean();
+            final Map<Collector, Thread> collectingThreads = new ConcurrentHashMap<>();
+            final AtomicInteger finished = new AtomicInteger();
+            final SliceCollectorManager<Collector, Integer> manager = new SliceCollectorManager<Collector, Integer>() {
+                @Override
+                public Collector newCollector() {
+                    return new SimpleCollector() {
+                        @Override
+                        protected void doSetNextReader(LeafReaderContext context) {
+                            collectingThreads.put(this, Thread.currentThread());
+                        }
+
+                        @Override
+                        public void collect(int doc) {
+                            if (fail) {
+                                throw new IllegalStateException("boom");
+                            }
+                        }
+
+                        @Override
+                        public ScoreMode scoreMode() {
+                            return ScoreMode.COMPLETE_NO_SCORES;
+                        }
+                    };
+                }
+
+                @Override
+                public void finishSlice(Collector collector) {
+                    assertSame(collectingThreads.get(collector), Thread.currentThread());
+                    finished.incrementAndGet();
+                }
+
+                @Override
+                public Integer reduce(Collection<Collector> collectors) {
+                    return collectors.size();
+                }
+            };
+            if (fail) {
+                expectThrows(IllegalStateException.class, () -> searcher.search(new MatchAllDocsQuery(), manager));
+            } else {
+                assertEquals(numSegments, searcher.search(new MatchAllDocsQuery(), manager).intValue());
+            }
+            // failed slices are finished as well
+            assertEquals(numSegments, finished.get());
+            assertEquals(numSegments, collectingThreads.size());
+        } finally {
+            terminate(executor);
+            IOUtils.close(reader, w, dir);
+        }
+    }
+
     public void testContextIndexSearcherSparseNoDeletions() throws IOException {
         doTestContextIndexSearcher(true, false);
     }
@@ -19,7 +19,10 @@
 
 package org.elasticsearch.search.profile.query;
 
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -30,6 +33,7 @@ import org.apache.lucene.search.Weight;
 import org.elasticsearch.test.ESTestCase;
 
 import java.io.IOException;
+import java.util.Collections;
 
 public class ProfileScorerTests extends ESTestCase {
 
@@ -73,7 +77,7 @@ public class ProfileScorerTests extends ESTestCase {
         FakeScorer fakeScorer = new FakeScorer(weight);
         QueryProfileBreakdown profile = new QueryProfileBreakdown();
         ProfileWeight profileWeight = new ProfileWeight(query, weight, profile);
-        ProfileScorer profileScorer = new ProfileScorer(profileWeight, fakeScorer, profile);
+        ProfileScorer profileScorer = new ProfileScorer(profileWeight, fakeScorer, profile, newLeafReaderContext());
         profileScorer.setMinCompetitiveScore(0.42f);
         assertEquals(0.42f, fakeScorer.minCompetitiveScore, 0f);
     }
@@ -84,9 +88,14 @@ public class ProfileScorerTests extends ESTestCase {
         FakeScorer fakeScorer = new FakeScorer(weight);
         QueryProfileBreakdown profile = new QueryProfileBreakdown();
         ProfileWeight profileWeight = new ProfileWeight(query, weight, profile);
-        ProfileScorer profileScorer = new ProfileScorer(profileWeight, fakeScorer, profile);
+        ProfileScorer profileScorer = new ProfileScorer(profileWeight, fakeScorer, profile, newLeafReaderContext());
         profileScorer.setMinCompetitiveScore(0.42f);
         fakeScorer.maxScore = 42f;
         assertEquals(42f, profileScorer.getMaxScore(DocIdSetIterator.NO_MORE_DOCS), 0f);
     }
+
+    private static LeafReaderContext newLeafReaderContext() {
+        return MemoryIndex.fromDocument(Collections.emptyList(), new MockAnalyzer(random()))
+            .createSearcher().getIndexReader().leaves().get(0);
+    }
 }
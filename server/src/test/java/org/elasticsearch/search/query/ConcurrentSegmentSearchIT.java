@@ -0,0 +1,121 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.MergePolicyConfig;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.aggregation.AggregationTimingType;
+import org.elasticsearch.search.profile.query.CollectorResult;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.cardinality;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.range;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.stats;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class ConcurrentSegmentSearchIT extends ESIntegTestCase {
+
+    public void testAggregationsCollectedInSlices() throws Exception {
+        createIndexWithSeveralSlices();
+        final SearchResponse sequential = searchWithAggregations(false).get();
+        assertSearchResponse(sequential);
+        final SearchResponse concurrent = searchWithAggregations(true).get();
+        assertSearchResponse(concurrent);
+        assertThat(concurrent.getHits().getTotalHits().value, equalTo(sequential.getHits().getTotalHits().value));
+        assertThat(Strings.toString(concurrent.getAggregations()), equalTo(Strings.toString(sequential.getAggregations())));
+    }
+
+    public void testProfileReportsSlices() throws Exception {
+        createIndexWithSeveralSlices();
+        final SearchResponse response = searchWithAggregations(true).setProfile(true).get();
+        assertSearchResponse(response);
+        for (ProfileShardResult shardResult : response.getProfileResults().values()) {
+            final CollectorResult collector = shardResult.getQueryProfileResults().get(0).getCollectorResult();
+            assertThat(collector.getReason(), equalTo(CollectorResult.REASON_SEARCH_SLICES));
+            assertThat(collector.getProfiledChildren().size(), greaterThan(1));
+            long childrenTime = 0;
+            for (CollectorResult slice : collector.getProfiledChildren()) {
+                assertThat(slice.getReason(), equalTo(CollectorResult.REASON_SEARCH_MULTI));
+                assertThat(slice.getProfiledChildren().get(1).getReason(), equalTo(CollectorResult.REASON_AGGREGATION));
+                childrenTime += slice.getTime();
+            }
+            assertThat(collector.getTime(), equalTo(childrenTime));
+
+            // every slice collected its segments with its own aggregators
+            final ProfileResult histogram = shardResult.getAggregationProfileResults().getProfileResults().get(0);
+            assertThat(histogram.getLuceneDescription(), equalTo("histo"));
+            assertThat(histogram.getTimeBreakdown().get(AggregationTimingType.COLLECT + "_count"),
+                equalTo(response.getHits().getTotalHits().value));
+            assertThat(histogram.getTimeBreakdown().get(AggregationTimingType.INITIALIZE + "_count"),
+                equalTo((long) collector.getProfiledChildren().size()));
+        }
+    }
+
+    private void createIndexWithSeveralSlices() throws Exception {
+        assertAcked(prepareCreate("idx")
+            .setSettings(Settings.builder()
+                .put(IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING.getKey(), false)
+                .put(MergePolicyConfig.INDEX_MERGE_POLICY_SEGMENTS_PER_TIER_SETTING.getKey(), 100)
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0))
+            .setMapping("number", "type=integer", "tag", "type=keyword"));
+        // at most 5 segments per slice, so that the shard has several slices
+        final int numSegments = randomIntBetween(11, 20);
+        for (int i = 0; i < numSegments; i++) {
+            final int segmentDocs = randomIntBetween(1, 20);
+            for (int j = 0; j < segmentDocs; j++) {
+                client().prepareIndex("idx").setSource(jsonBuilder().startObject()
+                    .field("number", randomIntBetween(0, 100))
+                    .field("tag", randomFrom("a", "b", "c", "d"))
+                    .endObject()).get();
+            }
+            refresh("idx");
+        }
+    }
+
+    private SearchRequestBuilder searchWithAggregations(boolean concurrentSegmentSearch) {
+        assertAcked(client().admin().indices().prepareUpdateSettings("idx").setSettings(Settings.builder()
+            .put(IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING.getKey(), concurrentSegmentSearch)));
+        return client().prepareSearch("idx")
+            .setRequestCache(false)
+            .setQuery(QueryBuilders.rangeQuery("number").gte(10))
+            .setSize(5)
+            .addAggregation(histogram("histo").field("number").interval(10).subAggregation(avg("avg").field("number")))
+            .addAggregation(stats("stats").field("number"))
+            .addAggregation(cardinality("tags").field("tag"))
+            .addAggregation(filter("tag_a", QueryBuilders.termQuery("tag", "a")).subAggregation(max("max").field("number")))
+            .addAggregation(range("range").field("number").addUnboundedTo(50).addUnboundedFrom(50));
+    }
+}
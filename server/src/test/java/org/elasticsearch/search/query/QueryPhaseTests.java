@@ -90,6 +90,7 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.profile.Profilers;
 import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.test.TestSearchContext;
@@ -98,6 +99,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.elasticsearch.search.query.QueryPhase.pointsHaveDuplicateData;
 import static org.elasticsearch.search.query.TopDocsCollectorContext.hasInfMaxScore;
@@ -105,6 +108,7 @@ import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
@@ -861,6 +865,126 @@ public class QueryPhaseTests extends IndexShardTestCase {
         dir.close();
     }
 
+    public void testConcurrentSliceCollection() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        IndexWriter w = new IndexWriter(dir, iwc);
+        final int numSegments = randomIntBetween(2, 10);
+        int numDocs = 0;
+        for (int i = 0; i < numSegments; i++) {
+            final int segmentDocs = randomIntBetween(1, 50);
+            for (int j = 0; j < segmentDocs; j++) {
+                Document doc = new Document();
+                doc.add(new TextField("foo", randomFrom("bar", "bar baz", "bar bar baz", "qux"), Store.NO));
+                doc.add(new NumericDocValuesField("rank", randomIntBetween(0, 10)));
+                w.addDocument(doc);
+            }
+            w.commit();
+            numDocs += segmentDocs;
+        }
+        w.close();
+        final IndexReader reader = DirectoryReader.open(dir);
+        final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        try {
+            final ContextIndexSearcher concurrentSearcher = new ContextIndexSearcher(reader, IndexSearcher.getDefaultSimilarity(),
+                IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true, executor) {
+                @Override
+                protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                    // one slice per segment
+                    LeafSlice[] slices = new LeafSlice[leaves.size()];
+                    for (int i = 0; i < slices.length; i++) {
+                        slices[i] = new LeafSlice(leaves.get(i));
+                    }
+                    return slices;
+                }
+            };
+            assertTrue(concurrentSearcher.hasConcurrentSlices());
+            for (int iter = 0; iter < 20; iter++) {
+                final Query query = randomFrom(new MatchAllDocsQuery(), new TermQuery(new Term("foo", "bar")),
+                    new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("foo", "bar")), Occur.SHOULD)
+                        .add(new TermQuery(new Term("foo", "baz")), Occur.SHOULD)
+                        .build());
+                final int size = randomIntBetween(0, 20);
+                final SortAndFormats sort = randomBoolean() ? null :
+                    new SortAndFormats(new Sort(new SortField("rank", SortField.Type.INT)), new DocValueFormat[] { DocValueFormat.RAW });
+                final int terminateAfter = randomBoolean() ? SearchContext.DEFAULT_TERMINATE_AFTER : randomIntBetween(1, numDocs);
+                final Float minScore = randomBoolean() ? null : 0.5f;
+
+                final TopDocs expected = executeTopDocs(newContextSearcher(reader), query, size, sort, terminateAfter, minScore);
+                final TopDocs actual = executeTopDocs(concurrentSearcher, query, size, sort, terminateAfter, minScore);
+                if (terminateAfter == SearchContext.DEFAULT_TERMINATE_AFTER) {
+                    assertEquals(expected.totalHits, actual.totalHits);
+                    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+                    for (int i = 0; i < expected.scoreDocs.length; i++) {
+                        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+                        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+                        assertEquals(-1, actual.scoreDocs[i].shardIndex);
+                    }
+                } else {
+                    // the slices that collect the first matching documents depend on the scheduling of the threads
+                    assertEquals(expected.totalHits.value, actual.totalHits.value);
+                    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+                    assertThat(actual.totalHits.value, lessThanOrEqualTo((long) terminateAfter));
+                }
+            }
+        } finally {
+            terminate(executor);
+            reader.close();
+            dir.close();
+        }
+    }
+
+    public void testSearchesCollectedInSlices() throws Exception {
+        Directory dir = newDirectory();
+        new IndexWriter(dir, newIndexWriterConfig()).close();
+        try (IndexReader reader = DirectoryReader.open(dir)) {
+            TestSearchContext context = new TestSearchContext(null, indexShard, newContextSearcher(reader));
+            assertTrue(SliceQueryCollectorManager.canCollectSlices(context));
+            // query collectors other than the aggregations need a single collector for the whole shard
+            context.queryCollectors().put(TotalHitCountCollector.class, new TotalHitCountCollector());
+            assertFalse(SliceQueryCollectorManager.canCollectSlices(context));
+
+            // each slice has its own profiled collectors
+            final ContextIndexSearcher searcher = newContextSearcher(reader);
+            final Profilers profilers = new Profilers(searcher);
+            context = new TestSearchContext(null, indexShard, searcher) {
+                @Override
+                public Profilers getProfilers() {
+                    return profilers;
+                }
+            };
+            assertTrue(SliceQueryCollectorManager.canCollectSlices(context));
+
+            context = new TestSearchContext(null, indexShard, newContextSearcher(reader));
+            context.scrollContext(new ScrollContext());
+            assertFalse(SliceQueryCollectorManager.canCollectSlices(context));
+        } finally {
+            dir.close();
+        }
+    }
+
+    private TopDocs executeTopDocs(ContextIndexSearcher searcher, Query query, int size, SortAndFormats sort,
+                                   int terminateAfter, Float minScore) throws Exception {
+        TestSearchContext context = new TestSearchContext(null, indexShard, searcher);
+        context.setTask(new SearchShardTask(123L, "", "", "", null, Collections.emptyMap()));
+        context.parsedQuery(new ParsedQuery(query));
+        context.setSize(size);
+        context.trackTotalHitsUpTo(SearchContext.TRACK_TOTAL_HITS_ACCURATE);
+        context.terminateAfter(terminateAfter);
+        if (sort != null) {
+            context.sort(sort);
+        }
+        if (minScore != null) {
+            context.minimumScore(minScore);
+        }
+        QueryPhase.executeInternal(context);
+        if (terminateAfter != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            assertNotNull(context.queryResult().terminatedEarly());
+        }
+        return context.queryResult().topDocs().topDocs;
+    }
+
     public void testCancellationDuringPreprocess() throws IOException {
         try (Directory dir = newDirectory();
              RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig())) {
@@ -161,6 +161,7 @@ import org.elasticsearch.indices.mapper.MapperRegistry;
 import org.elasticsearch.indices.recovery.PeerRecoverySourceService;
 import org.elasticsearch.indices.recovery.PeerRecoveryTargetService;
 import org.elasticsearch.indices.recovery.RecoverySettings;
+import org.elasticsearch.indices.replication.SegmentReplicationService;
 import org.elasticsearch.ingest.IngestService;
 import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.plugins.PluginsService;
@@ -1366,6 +1367,7 @@ public class SnapshotResiliencyTests extends ESTestCase {
                     mock(SearchService.class),
                     new PeerRecoverySourceService(transportService, indicesService, recoverySettings),
                     snapshotShardsService,
+                    new SegmentReplicationService(transportService, indicesService, clusterService, recoverySettings),
                     new PrimaryReplicaSyncer(
                         transportService,
                         new TransportResyncReplicationAction(
@@ -1148,8 +1148,13 @@ public abstract class EngineTestCase extends ESTestCase {
         for (LeafReaderContext leaf : wrappedReader.leaves()) {
             NumericDocValues primaryTermDocValues = leaf.reader().getNumericDocValues(SeqNoFieldMapper.PRIMARY_TERM_NAME);
             NumericDocValues seqNoDocValues = leaf.reader().getNumericDocValues(SeqNoFieldMapper.NAME);
+            final Bits liveDocs = leaf.reader().getLiveDocs();
             int docId;
             while ((docId = seqNoDocValues.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && liveDocs.get(docId) == false) {
+                    // hard-deleted by IndexWriter after a non-aborting failure, e.g. of a batch of appends
+                    continue;
+                }
                 assertTrue(seqNoDocValues.advanceExact(docId));
                 long seqNo = seqNoDocValues.longValue();
                 assertThat(seqNo, greaterThanOrEqualTo(0L));
@@ -21,6 +21,7 @@ import org.elasticsearch.action.delete.DeleteAction;
 import org.elasticsearch.action.get.MultiGetAction;
 import org.elasticsearch.action.index.IndexAction;
 import org.elasticsearch.action.search.ClearScrollAction;
+import org.elasticsearch.action.search.ClosePointInTimeAction;
 import org.elasticsearch.action.search.MultiSearchAction;
 import org.elasticsearch.action.search.SearchScrollAction;
 import org.elasticsearch.action.search.SearchTransportService;
@@ -583,6 +584,9 @@ public class RBACEngine implements AuthorizationEngine {
             action.equals(SearchTransportService.QUERY_SCROLL_ACTION_NAME) ||
             action.equals(SearchTransportService.FREE_CONTEXT_SCROLL_ACTION_NAME) ||
             action.equals(ClearScrollAction.NAME) ||
+            // like scrolls, the reader contexts of a point in time hold the authentication of the user that opened it
+            action.equals(ClosePointInTimeAction.NAME) ||
+            action.equals(SearchTransportService.FREE_READER_CONTEXT_ACTION_NAME) ||
             action.equals("indices:data/read/sql/close_cursor") ||
             action.equals(SearchTransportService.CLEAR_SCROLL_CONTEXTS_ACTION_NAME);
     }
@@ -106,6 +106,11 @@ public class SecurityRestFilter implements RestHandler {
         return restHandler.allowsUnsafeBuffers();
     }
 
+    @Override
+    public boolean supportsIncrementalContent() {
+        return restHandler.supportsIncrementalContent();
+    }
+
     @Override
     public List<Route> routes() {
         return restHandler.routes();
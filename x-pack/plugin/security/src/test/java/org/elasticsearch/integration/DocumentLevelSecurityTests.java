@@ -8,12 +8,20 @@ package org.elasticsearch.integration;
 import org.apache.lucene.search.join.ScoreMode;
 import org.apache.lucene.util.LuceneTestCase;
 import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.ClosePointInTimeAction;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.ClosePointInTimeResponse;
 import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.OpenPointInTimeAction;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
 import org.elasticsearch.action.termvectors.MultiTermVectorsResponse;
 import org.elasticsearch.action.termvectors.TermVectorsRequest;
 import org.elasticsearch.action.termvectors.TermVectorsResponse;
@@ -33,9 +41,12 @@ import org.elasticsearch.indices.IndicesRequestCache;
 import org.elasticsearch.join.ParentJoinPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchContextMissingException;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.global.Global;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.profile.query.QueryProfileShardResult;
 import org.elasticsearch.search.sort.SortBuilders;
@@ -188,6 +199,52 @@ public class DocumentLevelSecurityTests extends SecurityIntegTestCase {
         assertSearchHits(response, "1", "2");
     }
 
+    public void testPointInTime() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test")
+                        .setMapping("field1", "type=text", "field2", "type=text")
+        );
+        client().prepareIndex("test").setId("1").setSource("field1", "value1")
+                .setRefreshPolicy(IMMEDIATE)
+                .get();
+        client().prepareIndex("test").setId("2").setSource("field2", "value2")
+                .setRefreshPolicy(IMMEDIATE)
+                .get();
+
+        final Map<String, String> user1 = Collections.singletonMap(BASIC_AUTH_HEADER, basicAuthHeaderValue("user1", USERS_PASSWD));
+        final Map<String, String> user2 = Collections.singletonMap(BASIC_AUTH_HEADER, basicAuthHeaderValue("user2", USERS_PASSWD));
+        final String pitId = client().filterWithHeader(user1).execute(OpenPointInTimeAction.INSTANCE,
+            new OpenPointInTimeRequest("test").keepAlive(TimeValue.timeValueMinutes(1))).actionGet().getPointInTimeId();
+        final SearchSourceBuilder pointInTime =
+            new SearchSourceBuilder().pointInTimeBuilder(new PointInTimeBuilder(pitId, TimeValue.timeValueMinutes(1)));
+        try {
+            // the randomizing client may set a preference, which point in time searches don't support
+            SearchResponse response = client().filterWithHeader(user1).prepareSearch().setPreference(null)
+                .setSource(pointInTime.query(QueryBuilders.matchAllQuery()))
+                .get();
+            assertNoFailures(response);
+            assertHitCount(response, 1);
+            assertSearchHits(response, "1");
+
+            // another user can neither search nor close the point in time, even though it could read the index
+            SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class,
+                () -> client().filterWithHeader(user2).prepareSearch().setPreference(null).setSource(pointInTime).get());
+            for (ShardSearchFailure failure : e.shardFailures()) {
+                assertThat(ExceptionsHelper.unwrapCause(failure.getCause()), instanceOf(SearchContextMissingException.class));
+            }
+            final ClosePointInTimeResponse closeResponse = client().filterWithHeader(user2)
+                .execute(ClosePointInTimeAction.INSTANCE, new ClosePointInTimeRequest(pitId)).actionGet();
+            assertThat(closeResponse.getNumFreed(), equalTo(0));
+
+            response = client().filterWithHeader(user1).prepareSearch().setPreference(null).setSource(pointInTime).get();
+            assertHitCount(response, 1);
+            assertSearchHits(response, "1");
+        } finally {
+            final ClosePointInTimeResponse closeResponse = client().filterWithHeader(user1)
+                .execute(ClosePointInTimeAction.INSTANCE, new ClosePointInTimeRequest(pitId)).actionGet();
+            assertThat(closeResponse.getNumFreed(), equalTo(getNumShards("test").numPrimaries));
+        }
+    }
+
     public void testGetApi() throws Exception {
         assertAcked(client().admin().indices().prepareCreate("test")
                         .setMapping("field1", "type=text", "field2", "type=text", "field3", "type=text")
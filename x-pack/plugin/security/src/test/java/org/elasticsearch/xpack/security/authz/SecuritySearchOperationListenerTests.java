@@ -10,13 +10,16 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.license.XPackLicenseState;
 import org.elasticsearch.search.Scroll;
 import org.elasticsearch.search.SearchContextMissingException;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
+import org.elasticsearch.search.internal.ReaderContext;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.SearchContextId;
+import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.TestSearchContext;
 import org.elasticsearch.transport.TransportRequest;
@@ -175,6 +178,41 @@ public class SecuritySearchOperationListenerTests extends ESTestCase {
         }
     }
 
+    public void testReaderContextIsPerUser() {
+        final ReaderContext readerContext = new ReaderContext(new SearchContextId(UUIDs.randomBase64UUID(), randomLong()),
+            mock(IndexShard.class), null, null, TimeValue.timeValueMinutes(1).millis(), () -> 0L);
+        XPackLicenseState licenseState = mock(XPackLicenseState.class);
+        when(licenseState.isAuthAllowed()).thenReturn(true);
+        when(licenseState.isAuditingAllowed()).thenReturn(true);
+        ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final SecurityContext securityContext = new SecurityContext(Settings.EMPTY, threadContext);
+        AuditTrail auditTrail = mock(AuditTrail.class);
+        AuditTrailService auditTrailService = new AuditTrailService(Collections.singletonList(auditTrail), licenseState);
+        SecuritySearchOperationListener listener = new SecuritySearchOperationListener(securityContext, licenseState, auditTrailService);
+
+        final Authentication authentication = new Authentication(new User("test", "role"), new RealmRef("realm", "file", "node"), null);
+        try (StoredContext ignore = threadContext.newStoredContext(false)) {
+            authentication.writeToContext(threadContext);
+            listener.onNewReaderContext(readerContext);
+            assertEquals(authentication, readerContext.getFromContext(AuthenticationField.AUTHENTICATION_KEY));
+            listener.validateReaderContext(readerContext, Empty.INSTANCE);
+            verifyZeroInteractions(auditTrail);
+        }
+
+        try (StoredContext ignore = threadContext.newStoredContext(false)) {
+            Authentication other = new Authentication(new User("other", "role"), new RealmRef("realm", "file", "node"), null);
+            other.writeToContext(threadContext);
+            threadContext.putTransient(ORIGINATING_ACTION_KEY, "action");
+            threadContext.putTransient(AUTHORIZATION_INFO_KEY,
+                (AuthorizationInfo) () -> Collections.singletonMap(PRINCIPAL_ROLES_FIELD_NAME, other.getUser().roles()));
+            final ShardSearchRequest request = mock(ShardSearchRequest.class);
+            SearchContextMissingException expected =
+                expectThrows(SearchContextMissingException.class, () -> listener.validateReaderContext(readerContext, request));
+            assertEquals(readerContext.id(), expected.contextId());
+            verify(auditTrail).accessDenied(eq(null), eq(other), eq("action"), eq(request), authzInfoRoles(other.getUser().roles()));
+        }
+    }
+
     public void testEnsuredAuthenticatedUserIsSame() {
         Authentication original = new Authentication(new User("test", "role"), new RealmRef("realm", "file", "node"), null);
         Authentication current =